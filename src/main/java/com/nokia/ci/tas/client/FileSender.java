@@ -1,6 +1,5 @@
 package com.nokia.ci.tas.client;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
@@ -9,10 +8,14 @@ import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.Socket;
 
+import java.util.ArrayList;
+
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import com.nokia.ci.tas.commons.Constant;
+import com.nokia.ci.tas.commons.ContentHash;
 import com.nokia.ci.tas.commons.FileDescription;
+import com.nokia.ci.tas.commons.FileTransfer;
 import com.nokia.ci.tas.commons.Test;
 import com.nokia.ci.tas.commons.TestAutomationServiceListener;
 
@@ -33,6 +36,11 @@ public class FileSender extends Thread {
      */
     private boolean isRunning = true;
 
+    /**
+     * Number of files being send right now.
+     */
+    private int numberOfFileSendings = 0;
+
     /**
      * Instance of the Test Automation Client.
      */
@@ -62,7 +70,7 @@ public class FileSender extends Thread {
 
         while (isRunning) {
             try {
-                if (!messagePool.isEmpty()) {
+                if (!messagePool.isEmpty() && canHandleNextMessage()) {
                     FileOperation message = messagePool.poll(); // Always get the first message
 
                     if (message != null) {
@@ -75,263 +83,9 @@ public class FileSender extends Thread {
                         if (testRegistry != null) {
                             if (fileTransfer.getId() == FileOperation.Id.PUT) {
                                 // Test Automation Client is sending a copy of specified file to the remote part
-                                try {
-                                    Test test = testRegistry.getTest();
-                                    String testWorkspacePath = test.getWorkspacePath();
-                                    FileDescription fileDescription = fileTransfer.getFileDescription();
-                                    File file = new File(testWorkspacePath + System.getProperty("file.separator") + fileDescription.getFileName());
-
-                                    boolean hadSuccessfulFileReply = false;
-                                    BufferedInputStream fileData = null;
-                                    InputStream inputStreamFromListener = null;
-                                    long fileSize = FileDescription.UNKNOWN_FILE_SIZE;
-
-                                    // Always try to get input stream to specified file from the test listener,
-                                    // and use file objects only if listener didn't helped with file access
-
-                                    TestAutomationServiceListener testListener = testRegistry.getListener();
-
-                                    if (testListener != null) {
-                                        p("Trying to read file " + fileDescription.getFileName() + " with help from the listener...");
-                                        inputStreamFromListener = testListener.readFile(testWorkspacePath, fileDescription.getFileName());
-                                    }
-
-                                    if (inputStreamFromListener != null) {
-                                        fileData = new BufferedInputStream(inputStreamFromListener);
-                                        p("Listener has helped with resolving a path to file " + fileDescription.getFileName());
-                                    } else {
-                                        p("Listener couldn't help with resolving a path to file " + fileDescription.getFileName()
-                                                + " Trying to solve this problem with plain file streams");
-
-                                        if (file.exists() && file.canRead()) {
-                                            try {
-                                                fileData = new BufferedInputStream(new FileInputStream(file));
-                                                fileSize = file.length();
-                                                if (fileDescription.getFileSize() != fileSize) {
-                                                    fileDescription.setFileSize(fileSize);
-                                                }
-                                                p("File " + file.getName() + " does exists and can be send back as REPLY, file is " + fileSize + " bytes in length");
-                                            } catch (Exception e) {
-                                                p("Test Automation Client couldn't resolve access issues to file " + fileDescription.getFileName());
-                                                fileData = null;
-                                            }
-                                        }
-                                    }
-
-                                    if (fileData != null) {
-                                        // Send file transfer reply together with file data
-                                        for (int i = 0; i < Constant.NUMBER_OF_RETRIES; i++) {
-                                            p("Trying to send file " + fileDescription.getFileName() + " to remote part at "
-                                                    + fileTransfer.getReceiverHostname() + ":" + fileTransfer.getReceiverPort()
-                                                    + " regarding the test '" + fileTransfer.getTest().getRuntimeId() + "'");
-
-                                            Socket socket = null;
-                                            OutputStream output = null;
-
-                                            try {
-                                                socket = new Socket(InetAddress.getByName(fileTransfer.getReceiverHostname()), fileTransfer.getReceiverPort());
-                                                output = socket.getOutputStream();
-
-                                                // Send file transfer message first
-                                                output.write(fileTransfer.toXML().getBytes("UTF-8"));
-                                                output.flush();
-
-                                                // Send file data after
-                                                p("File Transfer message was successfully send, now should also send file's " + fileDescription.getFileName() + " data...");
-
-                                                // The send all bytes that file has
-                                                int numberOfBytesInBuffer = 0;
-                                                long numberOfActuallySendBytes = 0L;
-                                                byte[] buffer = new byte[Constant.DEFAULT_BUFFER_SIZE];
-
-                                                long fileTransferStartedAt = System.currentTimeMillis();
-
-                                                do {
-                                                    numberOfBytesInBuffer = fileData.read(buffer);
-
-                                                    if (numberOfBytesInBuffer > 0) {
-                                                        output.write(buffer, 0, numberOfBytesInBuffer);
-                                                        output.flush();
-                                                        numberOfActuallySendBytes += numberOfBytesInBuffer;
-                                                    } else {
-                                                        // Safety against possible deadlocks in read()
-                                                        break;
-                                                    }
-                                                } while (numberOfBytesInBuffer > 0);
-
-                                                output.flush();
-
-                                                output.close();
-                                                socket.close();
-
-                                                fileData.close();
-
-                                                // Just show a nice message about bytes and time of transfer
-                                                long time = System.currentTimeMillis() - fileTransferStartedAt;
-                                                time /= 1000L; // Turn milliseconds into seconds
-
-                                                String size = "";
-
-                                                if (numberOfActuallySendBytes > 1048576) { // Turn bytes into megabytes
-                                                    size = "" + (numberOfActuallySendBytes / 1048576L ) + " MB";
-                                                } else if (numberOfActuallySendBytes > 1024) { // Turn bytes into kilobytes
-                                                    size = "" + (numberOfActuallySendBytes / 1024L ) + " KB";
-                                                } else {
-                                                    size = "" + numberOfActuallySendBytes + " bytes";
-                                                }
-
-                                                p("Has send " + numberOfActuallySendBytes + " bytes (" + size + ") of file's " + fileDescription.getFileName()
-                                                    + " data in about " + time + " seconds");
-
-                                                hadSuccessfulFileReply = true;
-
-                                                break; // Stop any other trials
-
-                                            } catch (Exception e) {
-                                                p("Got troubles while tried to send a file " + fileDescription.getFileName()
-                                                        + " regarding the test '" + test.getId() + "': "
-                                                        + e.getClass() + " " + e.getMessage());
-
-                                                p("Will attempt to re-send file transfer reply for " + (Constant.NUMBER_OF_RETRIES - i) + " more times...");
-                                            } finally {
-                                                // Always ensure that output stream is closed
-                                                if (output != null) {
-                                                    try {
-                                                        output.close();
-                                                    } catch (Exception e) {
-                                                        p("Got troubles while tried to close output stream to "
-                                                            + fileTransfer.getReceiverHostname() + ":" + fileTransfer.getReceiverPort()
-                                                            + " regarding the test '" + test.getId() + "': "
-                                                            + e.getClass() + " " + e.getMessage());
-                                                    }
-                                                }
-
-                                                // Always ensure that socket is closed
-                                                if (socket != null && !socket.isClosed()) {
-                                                    try {
-                                                        socket.close();
-                                                    } catch (Exception e) {
-                                                        p("Got troubles while tried to close a connection to "
-                                                            + socket.getInetAddress().getHostName() + ":" + socket.getPort()
-                                                            + " regarding the test '" + test.getId() + "': "
-                                                            + e.getClass() + " " + e.getMessage());
-                                                    }
-                                                }
-                                            }
-                                        }
-                                    }
-
-                                    if (!hadSuccessfulFileReply) {
-                                        // Send a notification reply about unsuccessful file transfer
-                                        FileOperation fileTransferReply = new FileOperation(FileOperation.Id.ABORT, fileTransfer.getTest(), fileDescription);
-                                        fileTransferReply.setSender(testAutomationClient.getHostname(), testAutomationClient.getPort());
-                                        fileTransferReply.setReceiver(fileTransfer.getReceiverHostname(), fileTransfer.getReceiverPort());
-
-                                        for (int i = 0; i < Constant.NUMBER_OF_RETRIES; i++) {
-                                            p("Trying to send notification about unresolvable file transfer request back to "
-                                                    + fileTransfer.getReceiverHostname() + ":" + fileTransfer.getReceiverPort()
-                                                    + " regarding the test '" + test.getId() + "'");
-
-                                            Socket socket = null;
-                                            OutputStream output = null;
-
-                                            try {
-                                                socket = new Socket(InetAddress.getByName(fileTransfer.getReceiverHostname()), fileTransfer.getReceiverPort());
-                                                output = socket.getOutputStream();
-
-                                                // Send file transfer reply
-                                                output.write(fileTransferReply.toXML().getBytes("UTF-8"));
-                                                output.flush();
-
-                                                output.close();
-                                                socket.close();
-
-                                                // Send file data
-                                                p("File Transfer message was successfully send");
-
-                                                hadSuccessfulFileReply = true;
-
-                                                break; // Stop any other trials
-
-                                            } catch (Exception e) {
-                                                p("Got troubles while tried to send a notification about unresolvable send of file " + fileDescription.getFileName()
-                                                        + " regarding the test '" + test.getId() + "': "
-                                                        + e.getClass() + " " + e.getMessage());
-
-                                                p("Will attempt to re-send notification for " + (Constant.NUMBER_OF_RETRIES - i) + " more times...");
-                                            } finally {
-                                                // Always ensure that output stream is closed
-                                                if (output != null) {
-                                                    try {
-                                                        output.close();
-                                                    } catch (Exception e) {
-                                                        p("Got troubles while tried to close output stream to "
-                                                            + fileTransfer.getReceiverHostname() + ":" + fileTransfer.getReceiverPort()
-                                                            + " regarding the test '" + test.getId() + "': "
-                                                            + e.getClass() + " " + e.getMessage());
-                                                    }
-                                                }
-
-                                                // Always ensure that socket is closed
-                                                if (socket != null && !socket.isClosed()) {
-                                                    try {
-                                                        socket.close();
-                                                    } catch (Exception e) {
-                                                        p("Got troubles while tried to close a connection to "
-                                                            + socket.getInetAddress().getHostName() + ":" + socket.getPort()
-                                                            + " regarding the test '" + test.getId() + "': "
-                                                            + e.getClass() + " " + e.getMessage());
-                                                    }
-                                                }
-                                            }
-                                        }
-                                    }
-
-                                    // Perform all possible cleanups
-
-                                    if (fileData != null) {
-                                        try {
-                                            fileData.close();
-                                        } catch (Exception e) {
-                                            // Ignore
-                                        }
-                                    }
-
-                                    if (inputStreamFromListener != null) {
-                                        try {
-                                            inputStreamFromListener.close();
-                                        } catch (Exception e) {
-                                            // Ignore
-                                        }
-                                    }
-
-                                    // Make a final decision about networking failures
-                                    if (!hadSuccessfulFileReply) {
-                                        // Something went terribly wrong, so send a Test Stop message to the Test Automation Service
-                                        for (int i = 0; i < Constant.NUMBER_OF_RETRIES; i++) {
-                                            p("Got networking issues and cannot continue the test '" + test.getId() + "'. Test will be stopped");
-
-                                            try {
-                                                testAutomationClient.stopTest(testRegistry.getTest(),
-                                                                              testRegistry.getRemoteServiceHostname(),
-                                                                              testRegistry.getRemoteServicePort(),
-                                                                              testRegistry.getListener());
-                                                p("Successfully issued a request to stop the test '" + test.getId() + "'");
-                                                break; // Stop any other trials
-
-                                            } catch (Exception e) {
-                                                p("Got troubles while tried to issue a request to stop the test '" + test.getId() + "': "
-                                                        + e.getClass() + " " + e.getMessage());
-                                                p("Will attempt to issue request for " + (Constant.NUMBER_OF_RETRIES - i) + " more times...");
-                                            }
-                                        }
-                                    }
-
-                                } catch (Exception e) {
-                                    p("Got troubles while tried to process outcoming file transfer message for file " + fileTransfer.getFileDescription().getFileName()
-                                            + " regarding the test '" + fileTransfer.getTest().getId() + "': "
-                                            + e.getClass() + " " + e.getMessage());
-                                }
+                                // Files are send in parallel, each one over its own connection
+                                startFileSending();
+                                new FileSending(fileTransfer, testRegistry).start();
                            } else {
                                 // All other file transfers messages are simply forwarded to remote part
                                 for (int i = 0; i < Constant.NUMBER_OF_RETRIES; i++) {
@@ -419,6 +173,390 @@ public class FileSender extends Thread {
         }
     }
 
+    /**
+     * Sends a copy of the file requested by remote part, together with a file transfer message.
+     *
+     * @param fileTransfer File transfer message
+     * @param testRegistry Registry of the test the file belongs to
+     */
+    private void sendFile(FileOperation fileTransfer, TestRegistry testRegistry) {
+        try {
+            Test test = testRegistry.getTest();
+            String testWorkspacePath = test.getWorkspacePath();
+            FileDescription fileDescription = fileTransfer.getFileDescription();
+            File file = new File(testWorkspacePath + System.getProperty("file.separator") + fileDescription.getFileName());
+
+            boolean hadSuccessfulFileReply = false;
+            boolean isStoredByRemotePart = false;
+            InputStream fileData = null;
+            FileInputStream fileInputStream = null;
+            InputStream inputStreamFromListener = null;
+            long fileSize = FileDescription.UNKNOWN_FILE_SIZE;
+
+            // Always try to get input stream to specified file from the test listener,
+            // and use file objects only if listener didn't helped with file access
+
+            TestAutomationServiceListener testListener = testRegistry.getListener();
+
+            if (testListener != null) {
+                p("Trying to read file " + fileDescription.getFileName() + " with help from the listener...");
+                inputStreamFromListener = testListener.readFile(testWorkspacePath, fileDescription.getFileName());
+            }
+
+            if (inputStreamFromListener != null) {
+                fileData = inputStreamFromListener;
+                p("Listener has helped with resolving a path to file " + fileDescription.getFileName());
+
+                // Streams from the listener are always send whole and without chunk checksums
+                fileDescription.setOffset(0L);
+                fileDescription.setLength(FileDescription.UNTIL_END_OF_FILE);
+                fileDescription.setChunkSize(0L);
+                fileDescription.setChunkChecksums(new ArrayList<String>(0));
+                fileDescription.setContentHash(null);
+            } else {
+                p("Listener couldn't help with resolving a path to file " + fileDescription.getFileName()
+                        + " Trying to solve this problem with plain file streams");
+
+                if (file.exists() && file.canRead()) {
+                    try {
+                        fileInputStream = new FileInputStream(file);
+                        fileData = fileInputStream;
+
+                        // Content hashes are mentioned only for whole files, so the remote part could store them by their content
+                        String requestedContentHash = fileDescription.getContentHash();
+                        fileDescription.setContentHash(null);
+
+                        if (fileDescription.getOffset() == 0L && fileDescription.getLength() == FileDescription.UNTIL_END_OF_FILE) {
+                            fileDescription.setContentHash(ContentHash.of(file));
+
+                            if (fileDescription.getContentHash().equals(requestedContentHash)) {
+                                p("Remote part already has a copy of file " + file.getName() + " with content hash " + requestedContentHash + ", file data won't be send");
+                                isStoredByRemotePart = true;
+                            }
+                        }
+
+                        // Describe the requested range together with checksums of its chunks,
+                        // so the receiver could verify them and ask again only for the missing or corrupted ones
+                        if (!isStoredByRemotePart) {
+                            FileTransfer.prepareChunkedTransfer(fileInputStream.getChannel(), fileDescription);
+                        }
+
+                        fileSize = fileDescription.getFileSize();
+
+                        p("File " + file.getName() + " does exists and can be send back as REPLY, file is " + fileSize + " bytes in length."
+                            + " Will send " + fileDescription.getLength() + " bytes starting from byte " + fileDescription.getOffset());
+                    } catch (Exception e) {
+                        p("Test Automation Client couldn't resolve access issues to file " + fileDescription.getFileName());
+                        fileData = null;
+                    }
+                }
+            }
+
+            if (isStoredByRemotePart) {
+                // Just tell remote part to use its own copy, like any other file transfer message
+                FileOperation fileTransferReply = new FileOperation(FileOperation.Id.STORED, fileTransfer.getTest(), fileDescription);
+                fileTransferReply.setSender(fileTransfer.getSenderHostname(), fileTransfer.getSenderPort());
+                fileTransferReply.setReceiver(fileTransfer.getReceiverHostname(), fileTransfer.getReceiverPort());
+
+                handle(fileTransferReply);
+
+                hadSuccessfulFileReply = true;
+
+            } else if (fileData != null) {
+                // Send file transfer reply together with file data
+                for (int i = 0; i < Constant.NUMBER_OF_RETRIES; i++) {
+                    p("Trying to send file " + fileDescription.getFileName() + " to remote part at "
+                            + fileTransfer.getReceiverHostname() + ":" + fileTransfer.getReceiverPort()
+                            + " regarding the test '" + fileTransfer.getTest().getRuntimeId() + "'");
+
+                    Socket socket = null;
+                    OutputStream output = null;
+                    boolean isFileDataStarted = false;
+
+                    try {
+                        socket = FileTransfer.openSocket(fileTransfer.getReceiverHostname(), fileTransfer.getReceiverPort());
+                        output = socket.getOutputStream();
+
+                        // Send file transfer message first
+                        output.write(fileTransfer.toXML().getBytes("UTF-8"));
+                        output.flush();
+
+                        // Send file data after
+                        p("File Transfer message was successfully send, now should also send file's " + fileDescription.getFileName() + " data...");
+
+                        // The send all bytes that file has
+                        long numberOfActuallySendBytes = 0L;
+                        long fileTransferStartedAt = System.currentTimeMillis();
+
+                        if (fileInputStream != null) {
+                            // Plain files are moved directly from the file into the connection
+                            isFileDataStarted = true;
+                            numberOfActuallySendBytes = FileTransfer.send(fileInputStream, socket, fileDescription.getOffset(), fileDescription.getLength());
+                        } else {
+                            // Streams provided by the listener are send through a large buffer
+                            numberOfActuallySendBytes = FileTransfer.copy(fileData, output);
+                        }
+
+                        output.close();
+                        socket.close();
+
+                        fileData.close();
+
+                        // Just show a nice message about bytes and time of transfer
+                        long time = System.currentTimeMillis() - fileTransferStartedAt;
+                        time /= 1000L; // Turn milliseconds into seconds
+
+                        String size = "";
+
+                        if (numberOfActuallySendBytes > 1048576) { // Turn bytes into megabytes
+                            size = "" + (numberOfActuallySendBytes / 1048576L ) + " MB";
+                        } else if (numberOfActuallySendBytes > 1024) { // Turn bytes into kilobytes
+                            size = "" + (numberOfActuallySendBytes / 1024L ) + " KB";
+                        } else {
+                            size = "" + numberOfActuallySendBytes + " bytes";
+                        }
+
+                        p("Has send " + numberOfActuallySendBytes + " bytes (" + size + ") of file's " + fileDescription.getFileName()
+                            + " data in about " + time + " seconds");
+
+                        hadSuccessfulFileReply = true;
+
+                        break; // Stop any other trials
+
+                    } catch (Exception e) {
+                        p("Got troubles while tried to send a file " + fileDescription.getFileName()
+                                + " regarding the test '" + test.getId() + "': "
+                                + e.getClass() + " " + e.getMessage());
+
+                        if (isFileDataStarted) {
+                            // Once the receiver has got the chunk checksums, it will verify what has arrived and ask for the rest itself
+                            p("Remote part will request the missing chunks of file " + fileDescription.getFileName());
+                            hadSuccessfulFileReply = true;
+                            break; // Don't re-send the chunks which were already delivered
+                        }
+
+                        p("Will attempt to re-send file transfer reply for " + (Constant.NUMBER_OF_RETRIES - i) + " more times...");
+                    } finally {
+                        // Always ensure that output stream is closed
+                        if (output != null) {
+                            try {
+                                output.close();
+                            } catch (Exception e) {
+                                p("Got troubles while tried to close output stream to "
+                                    + fileTransfer.getReceiverHostname() + ":" + fileTransfer.getReceiverPort()
+                                    + " regarding the test '" + test.getId() + "': "
+                                    + e.getClass() + " " + e.getMessage());
+                            }
+                        }
+
+                        // Always ensure that socket is closed
+                        if (socket != null && !socket.isClosed()) {
+                            try {
+                                socket.close();
+                            } catch (Exception e) {
+                                p("Got troubles while tried to close a connection to "
+                                    + socket.getInetAddress().getHostName() + ":" + socket.getPort()
+                                    + " regarding the test '" + test.getId() + "': "
+                                    + e.getClass() + " " + e.getMessage());
+                            }
+                        }
+                    }
+                }
+
+                // Always ensure that file data stream is closed
+                try {
+                    fileData.close();
+                } catch (Exception e) {
+                    p("Got troubles while tried to close file data stream: " + e.getClass() + " " + e.getMessage());
+                }
+            }
+
+            if (!hadSuccessfulFileReply) {
+                // Send a notification reply about unsuccessful file transfer
+                FileOperation fileTransferReply = new FileOperation(FileOperation.Id.ABORT, fileTransfer.getTest(), fileDescription);
+                fileTransferReply.setSender(testAutomationClient.getHostname(), testAutomationClient.getPort());
+                fileTransferReply.setReceiver(fileTransfer.getReceiverHostname(), fileTransfer.getReceiverPort());
+
+                for (int i = 0; i < Constant.NUMBER_OF_RETRIES; i++) {
+                    p("Trying to send notification about unresolvable file transfer request back to "
+                            + fileTransfer.getReceiverHostname() + ":" + fileTransfer.getReceiverPort()
+                            + " regarding the test '" + test.getId() + "'");
+
+                    Socket socket = null;
+                    OutputStream output = null;
+
+                    try {
+                        socket = new Socket(InetAddress.getByName(fileTransfer.getReceiverHostname()), fileTransfer.getReceiverPort());
+                        output = socket.getOutputStream();
+
+                        // Send file transfer reply
+                        output.write(fileTransferReply.toXML().getBytes("UTF-8"));
+                        output.flush();
+
+                        output.close();
+                        socket.close();
+
+                        // Send file data
+                        p("File Transfer message was successfully send");
+
+                        hadSuccessfulFileReply = true;
+
+                        break; // Stop any other trials
+
+                    } catch (Exception e) {
+                        p("Got troubles while tried to send a notification about unresolvable send of file " + fileDescription.getFileName()
+                                + " regarding the test '" + test.getId() + "': "
+                                + e.getClass() + " " + e.getMessage());
+
+                        p("Will attempt to re-send notification for " + (Constant.NUMBER_OF_RETRIES - i) + " more times...");
+                    } finally {
+                        // Always ensure that output stream is closed
+                        if (output != null) {
+                            try {
+                                output.close();
+                            } catch (Exception e) {
+                                p("Got troubles while tried to close output stream to "
+                                    + fileTransfer.getReceiverHostname() + ":" + fileTransfer.getReceiverPort()
+                                    + " regarding the test '" + test.getId() + "': "
+                                    + e.getClass() + " " + e.getMessage());
+                            }
+                        }
+
+                        // Always ensure that socket is closed
+                        if (socket != null && !socket.isClosed()) {
+                            try {
+                                socket.close();
+                            } catch (Exception e) {
+                                p("Got troubles while tried to close a connection to "
+                                    + socket.getInetAddress().getHostName() + ":" + socket.getPort()
+                                    + " regarding the test '" + test.getId() + "': "
+                                    + e.getClass() + " " + e.getMessage());
+                            }
+                        }
+                    }
+                }
+            }
+
+            // Perform all possible cleanups
+
+            if (fileData != null) {
+                try {
+                    fileData.close();
+                } catch (Exception e) {
+                    // Ignore
+                }
+            }
+
+            if (inputStreamFromListener != null) {
+                try {
+                    inputStreamFromListener.close();
+                } catch (Exception e) {
+                    // Ignore
+                }
+            }
+
+            // Make a final decision about networking failures
+            if (!hadSuccessfulFileReply) {
+                // Something went terribly wrong, so send a Test Stop message to the Test Automation Service
+                for (int i = 0; i < Constant.NUMBER_OF_RETRIES; i++) {
+                    p("Got networking issues and cannot continue the test '" + test.getId() + "'. Test will be stopped");
+
+                    try {
+                        testAutomationClient.stopTest(testRegistry.getTest(),
+                                                      testRegistry.getRemoteServiceHostname(),
+                                                      testRegistry.getRemoteServicePort(),
+                                                      testRegistry.getListener());
+                        p("Successfully issued a request to stop the test '" + test.getId() + "'");
+                        break; // Stop any other trials
+
+                    } catch (Exception e) {
+                        p("Got troubles while tried to issue a request to stop the test '" + test.getId() + "': "
+                                + e.getClass() + " " + e.getMessage());
+                        p("Will attempt to issue request for " + (Constant.NUMBER_OF_RETRIES - i) + " more times...");
+                    }
+                }
+            }
+
+        } catch (Exception e) {
+            p("Got troubles while tried to process outcoming file transfer message for file " + fileTransfer.getFileDescription().getFileName()
+                    + " regarding the test '" + fileTransfer.getTest().getId() + "': "
+                    + e.getClass() + " " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sends a single file over its own connection, without blocking other file transfers.
+     */
+    private class FileSending extends Thread {
+
+        /**
+         * File transfer message.
+         */
+        private FileOperation fileTransfer;
+
+        /**
+         * Registry of the test the file belongs to.
+         */
+        private TestRegistry testRegistry;
+
+        /**
+         * Constructor.
+         *
+         * @param fileTransfer File transfer message
+         * @param testRegistry Registry of the test the file belongs to
+         */
+        public FileSending(FileOperation fileTransfer, TestRegistry testRegistry) {
+            super(); // Start as anonymous thread
+
+            this.fileTransfer = fileTransfer;
+            this.testRegistry = testRegistry;
+
+            setPriority(MIN_PRIORITY); // Always work with minimal priority
+        }
+
+        /**
+         * Sends the file.
+         */
+        @Override
+        public void run() {
+            try {
+                sendFile(fileTransfer, testRegistry);
+            } finally {
+                finishFileSending();
+            }
+        }
+    }
+
+    /**
+     * Tells whenever the next message in the pool can be handled right now.
+     * File transfers are postponed while the maximal number of files is being send.
+     *
+     * @return True if the next message can be handled or false otherwise
+     */
+    private synchronized boolean canHandleNextMessage() {
+        FileOperation message = messagePool.peek();
+
+        if (message != null && message.getId() == FileOperation.Id.PUT) {
+            return numberOfFileSendings < Constant.DEFAULT_MAXIMAL_NUMBER_OF_FILE_TRANSFERS;
+        }
+
+        return true;
+    }
+
+    /**
+     * Remembers that one more file is being send.
+     */
+    private synchronized void startFileSending() {
+        numberOfFileSendings++;
+    }
+
+    /**
+     * Remembers that sending of a file has finished.
+     */
+    private synchronized void finishFileSending() {
+        numberOfFileSendings--;
+    }
+
     /**
      * Handles specified message.
      *
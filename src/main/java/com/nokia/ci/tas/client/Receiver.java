@@ -1,28 +1,39 @@
 package com.nokia.ci.tas.client;
 
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 
 import java.net.Socket;
 
+import java.nio.channels.Channels;
+
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import com.nokia.ci.tas.commons.Constant;
 import com.nokia.ci.tas.commons.Converter;
+import com.nokia.ci.tas.commons.FileChunks;
 import com.nokia.ci.tas.commons.FileDescription;
+import com.nokia.ci.tas.commons.FileTransfer;
+import com.nokia.ci.tas.commons.MessageInputStream;
+import com.nokia.ci.tas.commons.PersistentConnection;
+import com.nokia.ci.tas.commons.PersistentConnectionListener;
+import com.nokia.ci.tas.commons.PersistentConnectionReader;
 import com.nokia.ci.tas.commons.Test;
 import com.nokia.ci.tas.commons.TestAutomationServiceListener;
 
 import com.nokia.ci.tas.commons.message.FileOperation;
+import com.nokia.ci.tas.commons.message.RegistryOperation;
 import com.nokia.ci.tas.commons.message.TestOperation;
 import com.nokia.ci.tas.commons.message.TextMessage;
 
 /**
  * Handles and dispatches all messages received by the instance of Testing Automation Client.
  */
-public class Receiver extends Thread {
+public class Receiver extends Thread implements PersistentConnectionListener {
 
     /**
      * Pool of all received connections to be handled.
@@ -59,6 +70,16 @@ public class Receiver extends Thread {
      */
     private Converter converter;
 
+    /**
+     * Lock serializing handling of messages received over single-use and persistent connections.
+     */
+    private final Object messageLock = new Object();
+
+    /**
+     * Verified chunks of all files which are received in chunks and are not yet complete, stored by absolute file paths.
+     */
+    private ConcurrentHashMap<String, FileChunks> receivedFileChunks = new ConcurrentHashMap<String, FileChunks>();
+
     /**
      * Default constructor.
      */
@@ -90,238 +111,34 @@ public class Receiver extends Thread {
 
                     if (connection != null) {
                         InputStream inputStream = null;
+                        boolean keepConnection = false;
 
                         try {
-                            inputStream = connection.getInputStream();
-                            Object message = converter.handle(inputStream);
-
-                            if (message != null) {
-                                if (message instanceof FileOperation) {
-                                    FileOperation fileTransfer = (FileOperation) message;
-                                    p("Processing incoming file transfer:" + fileTransfer);
-
-                                    // Test Automation Clients may receive file transfer messages only from remote Test Automation Communicators
-                                    TestRegistry testRegistry = testAutomationClient.getTestRegistry(fileTransfer.getTest().getId());
-
-                                    if (testRegistry != null) {
-                                        String senderHostname = fileTransfer.getSenderHostname();
-                                        int senderPort = fileTransfer.getSenderPort();
-
-                                        if (senderHostname != null && !senderHostname.isEmpty() && senderPort > 0) {
-                                            if (fileTransfer.getId() == FileOperation.Id.GET) {
-                                                // Remote part requests a copy of specified file from this Test Automation Client
-                                                p("Should now send file " + fileTransfer.getFileDescription().getFileName() + " back to " + fileTransfer.getSenderHostname() + ":" + fileTransfer.getSenderPort());
-
-                                                FileDescription fileDescription = new FileDescription();
-                                                fileDescription.setFileName(fileTransfer.getFileDescription().getFileName());
-                                                fileDescription.setFileSize(FileDescription.UNKNOWN_FILE_SIZE);
-
-                                                FileOperation fileTransferReply = new FileOperation(FileOperation.Id.PUT, fileTransfer.getTest(), fileDescription);
-                                                fileTransferReply.setSender(testAutomationClientHostname, testAutomationClientPort);
-                                                fileTransferReply.setReceiver(senderHostname, senderPort);
-
-                                                fileSender.handle(fileTransferReply);
-
-                                                p("File sender is notified about a request to transfer file " + fileTransferReply.getFileDescription().getFileName()
-                                                    + " back to " + fileTransferReply.getReceiverHostname() + ":" + fileTransferReply.getReceiverPort());
-
-                                            } else if (fileTransfer.getId() == FileOperation.Id.PUT) {
-                                                // Remote part sends a copy of specified file to this Test Automation Client
-                                                p("Should now receive file " + fileTransfer.getFileDescription().getFileName() + " from " + fileTransfer.getSenderHostname() + ":" + fileTransfer.getSenderPort());
-
-                                                try {
-                                                    Test test = testRegistry.getTest();
-                                                    String testWorkspacePath = test.getWorkspacePath();
-                                                    FileDescription fileDescription = fileTransfer.getFileDescription();
-                                                    File file = new File(testWorkspacePath + System.getProperty("file.separator") + fileDescription.getFileName());
-
-                                                    boolean isSuccess = false;
-                                                    OutputStream fileData = null;
-                                                    OutputStream outputStreamFromListener = null;
-
-                                                    // Always try to get output stream to file from the test listener,
-                                                    // and use file objects only if listener didn't helped with file access
-
-                                                    TestAutomationServiceListener testListener = testRegistry.getListener();
-
-                                                    if (testListener != null) {
-                                                        p("Trying to create file " + fileDescription.getFileName() + " with help from the listener...");
-                                                        outputStreamFromListener = testListener.createFile(testWorkspacePath, fileDescription.getFileName());
-                                                    }
-
-                                                    if (outputStreamFromListener != null) {
-                                                        fileData = outputStreamFromListener;
-                                                        p("Listener has helped with resolving a path to file " + fileDescription.getFileName());
-                                                    } else {
-                                                        p("Listener couldn't help with resolving a path to file " + fileDescription.getFileName()
-                                                                + " Trying to solve this problem with plain file streams");
-                                                        // Try to use file streams
-                                                        if (file.exists()) {
-                                                            if (file.delete()) {
-                                                                p("File was already existed at " + file.getAbsolutePath() + " but was deleted up on a new file send");
-                                                            } else {
-                                                                p("Warning: couldn't delete old version of file at " + file.getAbsolutePath() + " probably due to insuficient access rights!");
-                                                            }
-                                                        }
-
-                                                        p("Trying to create an empty file at " + file.getAbsolutePath());
-
-                                                        try {
-                                                            file.createNewFile();
-                                                            p("An empty file was successfully created at " + file.getAbsolutePath());
-                                                        } catch (Exception e) {
-                                                            p("Got troubles during creation of empty file at "
-                                                              + file.getAbsolutePath() + " - " + e.getClass() + " " + e.getMessage());
-                                                        }
-
-                                                        fileData = new FileOutputStream(file);
-                                                    }
-
-                                                    if (fileData != null) {
-                                                        try {
-                                                            p("Trying to receive file data from " + senderHostname + ":" + senderPort + " regarding the test '" + fileTransfer.getTest().getId() + "':");
-
-                                                            int numberOfBytesInBuffer = 0;
-                                                            long numberOfActuallyReceivedBytes = 0L;
-                                                            byte[] buffer = new byte[Constant.DEFAULT_BUFFER_SIZE];
-
-                                                            long fileTransferStartedAt = System.currentTimeMillis();
-
-                                                            do {
-                                                                numberOfBytesInBuffer = inputStream.read(buffer);
-
-                                                                if (numberOfBytesInBuffer > 0) {
-                                                                    fileData.write(buffer, 0, numberOfBytesInBuffer);
-                                                                    fileData.flush();
-                                                                    numberOfActuallyReceivedBytes += numberOfBytesInBuffer;
-                                                                } else {
-                                                                    // Safety against possible deadlocks in read()
-                                                                    break;
-                                                                }
-                                                            } while (numberOfBytesInBuffer > 0);
-
-                                                            // Just show a nice message about bytes and time of transfer
-                                                            long time = System.currentTimeMillis() - fileTransferStartedAt;
-                                                            time /= 1000L; // Turn milliseconds into seconds
-
-                                                            String size = "";
-
-                                                            if (numberOfActuallyReceivedBytes > 1048576) { // Turn bytes into megabytes
-                                                                size = "" + (numberOfActuallyReceivedBytes / 1048576L ) + " MB";
-                                                            } else if (numberOfActuallyReceivedBytes > 1024) { // Turn bytes into kilobytes
-                                                                size = "" + (numberOfActuallyReceivedBytes / 1024L ) + " KB";
-                                                            } else {
-                                                                size = "" + numberOfActuallyReceivedBytes + " bytes";
-                                                            }
-
-                                                            p("Has received " + numberOfActuallyReceivedBytes + " bytes (" + size + ") out of " + fileDescription.getFileSize()
-                                                                + " specified bytes. File's " + fileDescription.getFileName()
-                                                                + " transfer took about " + time + " seconds");
-
-                                                            if (numberOfActuallyReceivedBytes == fileDescription.getFileSize()) {
-                                                                isSuccess = true;
-                                                                p("File " + fileDescription.getFileName() + " was successfully received over network");
-                                                            } else {
-                                                                p("Failed to receive file over the network: "
-                                                                    + fileDescription.getFileSize() + " bytes were supposed to be transferred, but has managed to send only "
-                                                                    + numberOfActuallyReceivedBytes + " bytes. The file itself actually contains " + file.length() + " bytes");
-                                                            }
-
-                                                            // Perform all possible cleanups
-
-                                                            if (fileData != null) {
-                                                                try {
-                                                                    fileData.flush();
-                                                                    fileData.close();
-                                                                    p("File data stream was successfully closed");
-                                                                } catch (Exception e) {
-                                                                    p("Got troubles while tried to close file data stream: " + e.getClass() + " " + e.getMessage());
-                                                                }
-                                                            }
-
-                                                            if (outputStreamFromListener != null) {
-                                                                try {
-                                                                    outputStreamFromListener.flush();
-                                                                    outputStreamFromListener.close();
-                                                                    p("Output stream from listener was successfully closed");
-                                                                } catch (Exception e) {
-                                                                    p("Got troubles while tried to close output stream from listener: " + e.getClass() + " " + e.getMessage());
-                                                                }
-                                                            }
-
-                                                        } catch (Exception e) {
-                                                            p("Got troubles while tried to process incoming file transfer for file " + fileDescription.getFileName()
-                                                                    + " regarding the test '" + fileTransfer.getTest().getId() + "': "
-                                                                    + e.getClass() + " " + e.getMessage());
-                                                        }
-                                                    }
-
-                                                    // Perform all possible cleanups
-
-                                                    if (outputStreamFromListener != null) {
-                                                        try {
-                                                            outputStreamFromListener.close();
-                                                        } catch (Exception e) {
-                                                            // Ignore
-                                                        }
-                                                    }
-
-                                                    if (fileData != null) {
-                                                        try {
-                                                            fileData.close();
-                                                        } catch (Exception e) {
-                                                            // Ignore
-                                                        }
-                                                    }
-
-                                                    if (!isSuccess) {
-                                                        p("Issuing a request to re-transfer file " + fileDescription.getFileName() + " from remote part at "
-                                                            + senderHostname + ":" + senderPort);
-                                                        FileOperation fileTransferRequest = new FileOperation(FileOperation.Id.GET, fileTransfer.getTest(), fileTransfer.getFileDescription());
-                                                        fileTransferRequest.setSender(testAutomationClientHostname, testAutomationClientPort);
-                                                        fileTransferRequest.setReceiver(senderHostname, senderPort);
-
-                                                        fileSender.handle(fileTransferRequest);
-                                                    }
-                                                } catch (Exception e) {
-                                                    p("Got troubles while tried to process incoming file transfer for file " + fileTransfer.getFileDescription().getFileName()
-                                                            + " regarding the test '" + fileTransfer.getTest().getId() + "': "
-                                                            + e.getClass() + " " + e.getMessage());
-                                                }
-                                            }
-                                        }
-                                    } else {
-                                        // This client hasn't test registries for mentioned test id
-                                        p("This clietn hasn't a test registy for mentioned test '" + fileTransfer.getTest().getId() + "'");
-
-                                        FileOperation fileTransferReply = fileTransfer;
-                                        fileTransferReply.setId(FileOperation.Id.ABORT);
-
-                                        if (fileTransferReply != null) {
-                                            // Send reply about unsuccessful file transfer
-                                            fileTransferReply.setSender(testAutomationClientHostname, testAutomationClientPort);
-                                            fileTransferReply.setReceiver(fileTransfer.getSenderHostname(), fileTransfer.getSenderPort());
-
-                                            fileSender.handle(fileTransferReply);
+                            MessageInputStream messageInputStream = new MessageInputStream(connection.getInputStream(), connection.getChannel());
+                            inputStream = messageInputStream;
 
-                                            p("File sender will send a reply with ABORT for requested file operation");
-                                        }
-                                    }
-                                } else if (message instanceof TestOperation) {
+                            // Check the first line, leaving it in the stream
+                            String firstLine = messageInputStream.peekLine();
 
-                                    testAutomationClient.handleTestOperation((TestOperation) message);
+                            if (PersistentConnection.HEADER.equals(firstLine)) {
+                                // Remote part wants to send all its messages over a persistent connection
+                                // The connection will be closed by the reader once remote part has finished
+                                // Nothing is send after the header until it is confirmed, so the reader can use the socket directly
+                                keepConnection = true;
 
-                                } else if (message instanceof TextMessage) {
+                                new PersistentConnectionReader(connection, this).start();
 
-                                    testAutomationClient.handleTextMessage((TextMessage) message);
+                            } else if (firstLine != null) {
+                                // File data following the message will be read from the same message stream
+                                Object message = converter.handle(inputStream);
 
-                                } else {
-                                    p("The received message is of unsupported type and will be ignored:\n" + message + "\n");
+                                if (message != null) {
+                                    handleMessage(message, inputStream);
                                 }
-                            }
 
-                            inputStream.close();
-                            connection.close();
+                                inputStream.close();
+                                connection.close();
+                            }
 
                         } catch (Exception e) {
                             p("Got troubles during processing incoming connection from "
@@ -332,8 +149,8 @@ public class Receiver extends Thread {
                             // Don't tell anything to Test Automation Client,
                             // since a broken connection may come from any remote part
                         } finally {
-                            // Always ensure that input stream is closed
-                            if (inputStream != null) {
+                            // Always ensure that input stream is closed, unless connection is handled by a persistent connection reader
+                            if (inputStream != null && !keepConnection) {
                                 try {
                                     inputStream.close();
                                 } catch (Exception e) {
@@ -344,7 +161,7 @@ public class Receiver extends Thread {
                             }
 
                             // Always ensure that connection is closed
-                            if (connection != null && !connection.isClosed()) {
+                            if (connection != null && !connection.isClosed() && !keepConnection) {
                                 try {
                                     connection.close();
                                 } catch (Exception e) {
@@ -379,6 +196,322 @@ public class Receiver extends Thread {
         }
     }
 
+    /**
+     * Handles a message received over a persistent connection.
+     *
+     * @param inputStream Input stream containing XML representation of received message
+     * @param connection Persistent connection this message was received from
+     */
+    @Override
+    public void messageReceived(InputStream inputStream, PersistentConnectionReader connection) {
+        try {
+            Object message = converter.handle(inputStream);
+
+            if (message != null) {
+                handleMessage(message, inputStream);
+            }
+        } catch (Exception e) {
+            p("Got troubles during processing a message received over persistent connection from "
+                + connection.getConnection().getInetAddress().getHostName() + ":" + connection.getConnection().getPort()
+                + " - " + e.getClass() + " " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Handles specified incoming message.
+     * Messages received over all connections are handled one after another.
+     *
+     * @param message Received message
+     * @param inputStream Input stream the message was received from, which may also contain the data of transferred file
+     */
+    private void handleMessage(Object message, InputStream inputStream) {
+        synchronized (messageLock) {
+            if (message instanceof FileOperation) {
+                FileOperation fileTransfer = (FileOperation) message;
+                p("Processing incoming file transfer:" + fileTransfer);
+
+                // Test Automation Clients may receive file transfer messages only from remote Test Automation Communicators
+                TestRegistry testRegistry = testAutomationClient.getTestRegistry(fileTransfer.getTest().getId());
+
+                if (testRegistry != null) {
+                    String senderHostname = fileTransfer.getSenderHostname();
+                    int senderPort = fileTransfer.getSenderPort();
+
+                    if (senderHostname != null && !senderHostname.isEmpty() && senderPort > 0) {
+                        if (fileTransfer.getId() == FileOperation.Id.GET) {
+                            // Remote part requests a copy of specified file from this Test Automation Client
+                            p("Should now send file " + fileTransfer.getFileDescription().getFileName() + " back to " + fileTransfer.getSenderHostname() + ":" + fileTransfer.getSenderPort());
+
+                            FileDescription fileDescription = new FileDescription();
+                            fileDescription.setFileName(fileTransfer.getFileDescription().getFileName());
+                            fileDescription.setFileSize(FileDescription.UNKNOWN_FILE_SIZE);
+
+                            // Remote part may request only the chunks it is still missing
+                            fileDescription.setOffset(fileTransfer.getFileDescription().getOffset());
+                            fileDescription.setLength(fileTransfer.getFileDescription().getLength());
+
+                            // Remote part may already have a copy of the file with mentioned content hash
+                            fileDescription.setContentHash(fileTransfer.getFileDescription().getContentHash());
+
+                            FileOperation fileTransferReply = new FileOperation(FileOperation.Id.PUT, fileTransfer.getTest(), fileDescription);
+                            fileTransferReply.setSender(testAutomationClientHostname, testAutomationClientPort);
+                            fileTransferReply.setReceiver(senderHostname, senderPort);
+
+                            fileSender.handle(fileTransferReply);
+
+                            p("File sender is notified about a request to transfer file " + fileTransferReply.getFileDescription().getFileName()
+                                + " back to " + fileTransferReply.getReceiverHostname() + ":" + fileTransferReply.getReceiverPort());
+
+                        } else if (fileTransfer.getId() == FileOperation.Id.PUT) {
+                            // Remote part sends a copy of specified file to this Test Automation Client
+                            p("Should now receive file " + fileTransfer.getFileDescription().getFileName() + " from " + fileTransfer.getSenderHostname() + ":" + fileTransfer.getSenderPort());
+
+                            try {
+                                Test test = testRegistry.getTest();
+                                String testWorkspacePath = test.getWorkspacePath();
+                                FileDescription fileDescription = fileTransfer.getFileDescription();
+                                File file = new File(testWorkspacePath + System.getProperty("file.separator") + fileDescription.getFileName());
+
+                                boolean isSuccess = false;
+                                OutputStream fileData = null;
+                                OutputStream outputStreamFromListener = null;
+                                RandomAccessFile randomAccessFile = null;
+
+                                // Chunked transfers may carry only the chunks which were missing or corrupted in previous transfers
+                                FileChunks fileChunks = receivedFileChunks.get(file.getAbsolutePath());
+                                boolean isResumed = fileChunks != null && fileChunks.isContinuedBy(fileDescription);
+
+                                if (!isResumed) {
+                                    receivedFileChunks.remove(file.getAbsolutePath());
+                                    fileChunks = null;
+                                }
+
+                                // Always try to get output stream to file from the test listener,
+                                // and use file objects only if listener didn't helped with file access
+                                // Files which are already partially received are always continued in place
+
+                                TestAutomationServiceListener testListener = testRegistry.getListener();
+
+                                if (testListener != null && !isResumed) {
+                                    p("Trying to create file " + fileDescription.getFileName() + " with help from the listener...");
+                                    outputStreamFromListener = testListener.createFile(testWorkspacePath, fileDescription.getFileName());
+                                }
+
+                                if (outputStreamFromListener != null) {
+                                    fileData = outputStreamFromListener;
+                                    p("Listener has helped with resolving a path to file " + fileDescription.getFileName());
+                                } else {
+                                    p("Listener couldn't help with resolving a path to file " + fileDescription.getFileName()
+                                            + " Trying to solve this problem with plain file streams");
+                                    // Try to use file streams
+                                    if (file.exists() && !isResumed) {
+                                        if (file.delete()) {
+                                            p("File was already existed at " + file.getAbsolutePath() + " but was deleted up on a new file send");
+                                        } else {
+                                            p("Warning: couldn't delete old version of file at " + file.getAbsolutePath() + " probably due to insuficient access rights!");
+                                        }
+                                    }
+
+                                    if (isResumed) {
+                                        p("Continuing to receive file " + file.getAbsolutePath() + " with " + fileChunks
+                                            + ", now from byte " + fileDescription.getOffset() + " (" + fileDescription.getLength() + " bytes)");
+                                    } else {
+                                        p("Trying to create an empty file at " + file.getAbsolutePath());
+
+                                        try {
+                                            file.createNewFile();
+                                            p("An empty file was successfully created at " + file.getAbsolutePath());
+                                        } catch (Exception e) {
+                                            p("Got troubles during creation of empty file at "
+                                              + file.getAbsolutePath() + " - " + e.getClass() + " " + e.getMessage());
+                                        }
+
+                                        if (fileDescription.isChunked()) {
+                                            fileChunks = new FileChunks(fileDescription);
+                                            receivedFileChunks.put(file.getAbsolutePath(), fileChunks);
+                                        }
+                                    }
+
+                                    randomAccessFile = new RandomAccessFile(file, "rw");
+                                    randomAccessFile.getChannel().position(fileDescription.getOffset());
+                                    fileData = Channels.newOutputStream(randomAccessFile.getChannel());
+                                }
+
+                                if (fileData != null) {
+                                    try {
+                                        p("Trying to receive file data from " + senderHostname + ":" + senderPort + " regarding the test '" + fileTransfer.getTest().getId() + "':");
+
+                                        long fileTransferStartedAt = System.currentTimeMillis();
+                                        long numberOfActuallyReceivedBytes = 0L;
+
+                                        if (randomAccessFile != null) {
+                                            // File data is moved directly from the connection into the file
+                                            try {
+                                                numberOfActuallyReceivedBytes = FileTransfer.receive(inputStream, randomAccessFile.getChannel());
+                                            } catch (IOException e) {
+                                                if (fileChunks == null) {
+                                                    throw e;
+                                                }
+
+                                                // All the chunks which have arrived before the failure are still verified
+                                                p("Got troubles during receiving file data: " + e.getClass() + " " + e.getMessage());
+                                            }
+
+                                            if (fileChunks != null) {
+                                                p("Got " + fileChunks.verify(randomAccessFile.getChannel(), fileDescription) + " more verified chunks of file "
+                                                    + file.getName() + ", now " + fileChunks);
+                                            }
+                                        } else {
+                                            // Streams provided by the listener are filled through a large buffer
+                                            numberOfActuallyReceivedBytes = FileTransfer.copy(inputStream, fileData);
+                                        }
+
+                                        // Just show a nice message about bytes and time of transfer
+                                        long time = System.currentTimeMillis() - fileTransferStartedAt;
+                                        time /= 1000L; // Turn milliseconds into seconds
+
+                                        String size = "";
+
+                                        if (numberOfActuallyReceivedBytes > 1048576) { // Turn bytes into megabytes
+                                            size = "" + (numberOfActuallyReceivedBytes / 1048576L ) + " MB";
+                                        } else if (numberOfActuallyReceivedBytes > 1024) { // Turn bytes into kilobytes
+                                            size = "" + (numberOfActuallyReceivedBytes / 1024L ) + " KB";
+                                        } else {
+                                            size = "" + numberOfActuallyReceivedBytes + " bytes";
+                                        }
+
+                                        p("Has received " + numberOfActuallyReceivedBytes + " bytes (" + size + ") out of " + fileDescription.getFileSize()
+                                            + " specified bytes. File's " + fileDescription.getFileName()
+                                            + " transfer took about " + time + " seconds");
+
+                                        if (fileChunks != null) {
+                                            // Chunked transfers are successful only when all the chunks are verified
+                                            if (fileChunks.isComplete()) {
+                                                isSuccess = true;
+                                                p("File " + fileDescription.getFileName() + " was successfully received over network, all its chunks are verified");
+                                            }
+                                        } else if (numberOfActuallyReceivedBytes == fileDescription.getFileSize()) {
+                                            isSuccess = true;
+                                            p("File " + fileDescription.getFileName() + " was successfully received over network");
+                                        } else {
+                                            p("Failed to receive file over the network: "
+                                                + fileDescription.getFileSize() + " bytes were supposed to be transferred, but has managed to send only "
+                                                + numberOfActuallyReceivedBytes + " bytes. The file itself actually contains " + file.length() + " bytes");
+                                        }
+
+                                        // Perform all possible cleanups
+
+                                        if (fileData != null) {
+                                            try {
+                                                fileData.flush();
+                                                fileData.close();
+                                                p("File data stream was successfully closed");
+                                            } catch (Exception e) {
+                                                p("Got troubles while tried to close file data stream: " + e.getClass() + " " + e.getMessage());
+                                            }
+                                        }
+
+                                        if (outputStreamFromListener != null) {
+                                            try {
+                                                outputStreamFromListener.flush();
+                                                outputStreamFromListener.close();
+                                                p("Output stream from listener was successfully closed");
+                                            } catch (Exception e) {
+                                                p("Got troubles while tried to close output stream from listener: " + e.getClass() + " " + e.getMessage());
+                                            }
+                                        }
+
+                                    } catch (Exception e) {
+                                        p("Got troubles while tried to process incoming file transfer for file " + fileDescription.getFileName()
+                                                + " regarding the test '" + fileTransfer.getTest().getId() + "': "
+                                                + e.getClass() + " " + e.getMessage());
+                                    }
+                                }
+
+                                // Perform all possible cleanups
+
+                                if (outputStreamFromListener != null) {
+                                    try {
+                                        outputStreamFromListener.close();
+                                    } catch (Exception e) {
+                                        // Ignore
+                                    }
+                                }
+
+                                if (fileData != null) {
+                                    try {
+                                        fileData.close();
+                                    } catch (Exception e) {
+                                        // Ignore
+                                    }
+                                }
+
+                                if (fileChunks != null && (isSuccess || fileChunks.isAbandoned())) {
+                                    receivedFileChunks.remove(file.getAbsolutePath());
+
+                                    if (!isSuccess) {
+                                        p("Failed to receive file " + fileDescription.getFileName() + " over the network: no more chunks were verified in "
+                                            + fileChunks.getNumberOfAttemptsWithoutProgress() + " attempts, " + fileChunks);
+                                    }
+                                } else if (!isSuccess) {
+                                    // Request either the whole file or only its missing and corrupted chunks
+                                    FileDescription requestedFileDescription = fileTransfer.getFileDescription();
+
+                                    if (fileChunks != null) {
+                                        requestedFileDescription = fileChunks.describeMissingRange(fileDescription.getFileName());
+                                    }
+
+                                    p("Issuing a request to re-transfer file " + fileDescription.getFileName() + " from remote part at "
+                                        + senderHostname + ":" + senderPort + " starting from byte " + requestedFileDescription.getOffset());
+                                    FileOperation fileTransferRequest = new FileOperation(FileOperation.Id.GET, fileTransfer.getTest(), requestedFileDescription);
+                                    fileTransferRequest.setSender(testAutomationClientHostname, testAutomationClientPort);
+                                    fileTransferRequest.setReceiver(senderHostname, senderPort);
+
+                                    fileSender.handle(fileTransferRequest);
+                                }
+                            } catch (Exception e) {
+                                p("Got troubles while tried to process incoming file transfer for file " + fileTransfer.getFileDescription().getFileName()
+                                        + " regarding the test '" + fileTransfer.getTest().getId() + "': "
+                                        + e.getClass() + " " + e.getMessage());
+                            }
+                        }
+                    }
+                } else {
+                    // This client hasn't test registries for mentioned test id
+                    p("This clietn hasn't a test registy for mentioned test '" + fileTransfer.getTest().getId() + "'");
+
+                    FileOperation fileTransferReply = fileTransfer;
+                    fileTransferReply.setId(FileOperation.Id.ABORT);
+
+                    if (fileTransferReply != null) {
+                        // Send reply about unsuccessful file transfer
+                        fileTransferReply.setSender(testAutomationClientHostname, testAutomationClientPort);
+                        fileTransferReply.setReceiver(fileTransfer.getSenderHostname(), fileTransfer.getSenderPort());
+
+                        fileSender.handle(fileTransferReply);
+
+                        p("File sender will send a reply with ABORT for requested file operation");
+                    }
+                }
+            } else if (message instanceof TestOperation) {
+
+                testAutomationClient.handleTestOperation((TestOperation) message);
+
+            } else if (message instanceof TextMessage) {
+
+                testAutomationClient.handleTextMessage((TextMessage) message);
+
+            } else if (message instanceof RegistryOperation) {
+
+                testAutomationClient.handleRegistryOperation((RegistryOperation) message);
+
+            } else {
+                p("The received message is of unsupported type and will be ignored:\n" + message + "\n");
+            }
+        }
+    }
+
     /**
      * Puts specified socket to be handled by receiver.
      *
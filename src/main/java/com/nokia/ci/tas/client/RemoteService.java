@@ -1,13 +1,9 @@
 package com.nokia.ci.tas.client;
 
-import java.io.OutputStream;
-
-import java.net.InetAddress;
-import java.net.Socket;
-
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import com.nokia.ci.tas.commons.Constant;
+import com.nokia.ci.tas.commons.PersistentConnection;
 import com.nokia.ci.tas.commons.Test;
 import com.nokia.ci.tas.commons.Util;
 import com.nokia.ci.tas.commons.message.Message;
@@ -33,6 +29,11 @@ public class RemoteService extends Thread {
      */
     private ConcurrentLinkedQueue<Message> messagePool;
 
+    /**
+     * Persistent connection used for sending all messages to remote service.
+     */
+    private PersistentConnection connection;
+
     /**
      * Variable which keeps this remote service instance running on the client side.
      */
@@ -66,6 +67,8 @@ public class RemoteService extends Thread {
 
         messagePool = new ConcurrentLinkedQueue();
 
+        connection = new PersistentConnection(serviceHostname, servicePort);
+
         this.testAutomationClient = testAutomationClient;
 
         // Creation of remote service means that it is online
@@ -102,6 +105,15 @@ public class RemoteService extends Thread {
         return serviceHostname + ":" + servicePort;
     }
 
+    /**
+     * Enables or disables sending of messages to remote service in the binary encoding.
+     *
+     * @param isBinaryEncodingEnabled True if remote service has confirmed it reads binary messages or false otherwise
+     */
+    public void setBinaryEncodingEnabled(boolean isBinaryEncodingEnabled) {
+        connection.setBinaryEncodingEnabled(isBinaryEncodingEnabled);
+    }
+
     /**
      * Main routine of remote service.
      */
@@ -118,19 +130,9 @@ public class RemoteService extends Thread {
                         p("Sending a message to Test Automation Service at " + serviceHostname + ":" + servicePort);
 
                         for (int i = 0; i < Constant.NUMBER_OF_RETRIES; i++) {
-                            Socket socket = null;
-                            OutputStream output = null;
-
                             try {
-                                socket = new Socket(InetAddress.getByName(serviceHostname), servicePort);
-                                output = socket.getOutputStream();
-
-                                // Send message and close connection immediately
-                                output.write(message.toXML().getBytes("UTF-8"));
-                                output.flush();
-
-                                output.close();
-                                socket.close();
+                                // Send message over the persistent connection
+                                connection.send(message);
 
                                 p("Message was successfully send");
 
@@ -155,28 +157,6 @@ public class RemoteService extends Thread {
                                     p("Will try to re-send message after " + Util.convert(Constant.THIRTY_SECONDS));
                                     sleep(Constant.THIRTY_SECONDS);
                                 }
-                            } finally {
-                                // Always ensure that output stream is closed
-                                if (output != null) {
-                                    try {
-                                        output.close();
-                                    } catch (Exception e) {
-                                        p("Got troubles while tried to close output stream to remote Test Automation Service at "
-                                            + serviceHostname + ":" + servicePort
-                                            + " - " + e.getClass() + " " + e.getMessage());
-                                    }
-                                }
-
-                                // Always ensure that connection is closed
-                                if (socket != null && !socket.isClosed()) {
-                                    try {
-                                        socket.close();
-                                    } catch (Exception e) {
-                                        p("Got troubles while tried to close a connection to remote Test Automation Service at "
-                                            + serviceHostname + ":" + servicePort + " (" + socket.getInetAddress() + ") - "
-                                            + e.getClass() + " - " + e.getMessage());
-                                    }
-                                }
                             }
                         }
                     }
@@ -195,23 +175,13 @@ public class RemoteService extends Thread {
                                 Test test = testRegistry.getTest();
 
                                 for (int i = 0; i < Constant.NUMBER_OF_RETRIES; i++) {
-                                    Socket socket = null;
-                                    OutputStream output = null;
-
                                     try {
                                         TestOperation checkTestOperation = new TestOperation(TestOperation.Id.CHECK, test);
                                         checkTestOperation.setReceiver(serviceHostname, servicePort);
                                         checkTestOperation.setSender(testAutomationClient.getHostname(), testAutomationClient.getPort());
 
                                         // Send message
-                                        socket = new Socket(InetAddress.getByName(checkTestOperation.getReceiverHostname()), checkTestOperation.getReceiverPort());
-                                        output = socket.getOutputStream();
-
-                                        output.write(checkTestOperation.toXML().getBytes("UTF-8"));
-                                        output.flush();
-
-                                        output.close();
-                                        socket.close();
+                                        connection.send(checkTestOperation);
 
                                         // If we don't get any exceptions at this point, it means that Test Automation Service is still online
                                         p("Connection check between this Test Automation Client and remote Test Automation Service at " + serviceHostname + ":" + servicePort + " is OK");
@@ -240,28 +210,6 @@ public class RemoteService extends Thread {
                                                 + " once again after " + Util.convert(Constant.THIRTY_SECONDS));
                                             sleep(Constant.THIRTY_SECONDS);
                                         }
-                                    } finally {
-                                        // Always ensure that output stream is closed
-                                        if (output != null) {
-                                            try {
-                                                output.close();
-                                            } catch (Exception e) {
-                                                p("Got troubles while tried to close output stream to remote Test Automation Service at "
-                                                    + serviceHostname + ":" + servicePort
-                                                    + " - " + e.getClass() + " " + e.getMessage());
-                                            }
-                                        }
-
-                                        // Always ensure that connection is closed
-                                        if (socket != null && !socket.isClosed()) {
-                                            try {
-                                                socket.close();
-                                            } catch (Exception e) {
-                                                p("Got troubles while tried to close a connection to remote Test Automation Service at "
-                                                    + serviceHostname + ":" + servicePort + " (" + socket.getInetAddress() + "): "
-                                                    + e.getClass() + " - " + e.getMessage());
-                                            }
-                                        }
                                     }
                                 }
                             }
@@ -281,6 +229,8 @@ public class RemoteService extends Thread {
                 stopWorking();
             }
         }
+
+        connection.close();
     }
 
     /**
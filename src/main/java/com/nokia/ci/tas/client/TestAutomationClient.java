@@ -17,6 +17,7 @@ import java.util.Random;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import com.nokia.ci.tas.commons.Constant;
+import com.nokia.ci.tas.commons.FileTransfer;
 import com.nokia.ci.tas.commons.Product;
 import com.nokia.ci.tas.commons.Test;
 import com.nokia.ci.tas.commons.TestAutomationServiceListener;
@@ -238,7 +239,7 @@ public class TestAutomationClient extends Thread {
         // Find a free port number and create listening socket
         while (true) {
             try {
-                socketListener = new ServerSocket(clientPort);
+                socketListener = FileTransfer.openServerSocket(clientPort);
                 p("Test Automation Client will work on " + clientHostname + ":" + clientPort);
                 break;
             } catch (Exception e) {
@@ -789,6 +790,7 @@ public class TestAutomationClient extends Thread {
                 RegistryOperation registerClient = new RegistryOperation(RegistryOperation.Id.REGISTER, RegistryOperation.Remote.CLIENT);
                 registerClient.setReceiver(serviceHostname, servicePort);
                 registerClient.setSender(clientHostname, clientPort);
+                registerClient.setEncoding(RegistryOperation.Encoding.BINARY);
 
                 p("Sending a registration message:" + registerClient);
                 p("Test Automation Client will register itself as " + clientHostname + ":" + clientPort);
@@ -996,6 +998,46 @@ public class TestAutomationClient extends Thread {
         }
     }
 
+    /**
+     * Handles a registry operation received from a remote Test Automation Service.
+     * Such operations are confirming that the service reads binary messages too.
+     *
+     * @param message Registry operation received from a remote Test Automation Service
+     */
+    protected synchronized void handleRegistryOperation(RegistryOperation message) {
+        boolean isBinaryEncodingEnabled = (message.getEncoding() == RegistryOperation.Encoding.BINARY);
+
+        for (RemoteService remoteService : remoteServices) {
+            if (remoteService.getServicePort() == message.getSenderPort()) {
+                if (isSameHost(remoteService.getServiceHostname(), message.getSenderHostname())) {
+                    remoteService.setBinaryEncodingEnabled(isBinaryEncodingEnabled);
+                    return;
+                }
+            }
+        }
+
+        p("Got a registry operation from unknown Test Automation Service at " + message.getSenderHostname() + ":" + message.getSenderPort());
+    }
+
+    /**
+     * Checks if two hostnames are referring to the same host.
+     *
+     * @param hostname The first hostname
+     * @param otherHostname The second hostname
+     * @return True if both hostnames are referring to the same host or false otherwise
+     */
+    private boolean isSameHost(String hostname, String otherHostname) {
+        if (hostname.equalsIgnoreCase(otherHostname)) {
+            return true;
+        }
+
+        try {
+            return InetAddress.getByName(hostname).equals(InetAddress.getByName(otherHostname));
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
     /**
      * Handles disconnection of a remote Test Automation Service.
      *
@@ -0,0 +1,257 @@
+package com.nokia.ci.tas.commons;
+
+import java.util.Queue;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Long-living entity driven by events instead of its own thread.
+ *
+ * An actor is run on a worker thread of the shared runtime only when it has been woken up,
+ * either by a message put into its mailbox or by a timed wake up. The runtime never runs the same actor
+ * on two threads at the same time, so the work done in act() doesn't need any extra synchronization.
+ *
+ * @param <M> Type of messages accepted by the actor
+ */
+public abstract class Actor<M> implements Runnable {
+
+    /**
+     * Name of the actor.
+     */
+    private String name;
+
+    /**
+     * Runtime running this actor.
+     */
+    private ActorRuntime runtime;
+
+    /**
+     * Messages waiting to be handled by this actor.
+     */
+    private ConcurrentLinkedQueue<M> mailbox;
+
+    /**
+     * True when this actor is waiting to be run or is running right now.
+     */
+    private AtomicBoolean isScheduled = new AtomicBoolean(false);
+
+    /**
+     * True when this actor was woken up and should be run again.
+     */
+    private volatile boolean isWakeUpRequested = false;
+
+    /**
+     * True after the actor was run for the first time.
+     */
+    private volatile boolean isStarted = false;
+
+    /**
+     * True after the actor has ended its work.
+     */
+    private volatile boolean isEnded = false;
+
+    /**
+     * Handle of periodic wake ups.
+     */
+    private ScheduledFuture<?> timer;
+
+    /**
+     * Lock guarding the handle of periodic wake ups.
+     */
+    private final Object timerLock = new Object();
+
+    /**
+     * Task waking this actor up.
+     */
+    private Runnable wakeUpTask = new Runnable() {
+        @Override
+        public void run() {
+            wakeUp();
+        }
+    };
+
+    /**
+     * Constructor.
+     *
+     * @param name Name of the actor
+     * @param runtime Runtime which should run the actor
+     */
+    protected Actor(String name, ActorRuntime runtime) {
+        this.name = name;
+        this.runtime = runtime;
+        mailbox = new ConcurrentLinkedQueue<M>();
+    }
+
+    /**
+     * Returns name of this actor.
+     *
+     * @return Name of this actor
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Starts this actor.
+     */
+    public void start() {
+        wakeUp();
+    }
+
+    /**
+     * Puts specified message into the mailbox and wakes the actor up.
+     *
+     * @param message Message to be handled
+     * @return True if message was accepted or false otherwise
+     */
+    public boolean tell(M message) {
+        boolean isAccepted = mailbox.add(message);
+        wakeUp();
+        return isAccepted;
+    }
+
+    /**
+     * Makes the runtime run this actor as soon as possible.
+     * Calling it from the running actor makes the runtime run it once again.
+     */
+    public void wakeUp() {
+        if (isEnded) {
+            return;
+        }
+
+        isWakeUpRequested = true;
+
+        if (isScheduled.compareAndSet(false, true)) {
+            runtime.execute(this);
+        }
+    }
+
+    /**
+     * Tells whenever this actor has ended its work.
+     *
+     * @return True if actor has ended its work or false otherwise
+     */
+    public boolean isEnded() {
+        return isEnded;
+    }
+
+    /**
+     * Runs the actor once. Should be called only by the runtime.
+     */
+    @Override
+    public final void run() {
+        try {
+            isWakeUpRequested = false;
+
+            if (!isEnded) {
+                if (!isStarted) {
+                    isStarted = true;
+                    started();
+                }
+
+                if (!act()) {
+                    end();
+                }
+            }
+        } catch (Throwable t) {
+            p("Got troubles during its work: " + t.getClass() + " - " + t.getMessage());
+            t.printStackTrace();
+        } finally {
+            isScheduled.set(false);
+
+            // Something could have happened while the actor was running
+            if (isWakeUpRequested || !mailbox.isEmpty()) {
+                wakeUp();
+            }
+        }
+    }
+
+    /**
+     * Returns the next message from the mailbox.
+     *
+     * @return The next message or null if mailbox is empty
+     */
+    protected M nextMessage() {
+        return mailbox.poll();
+    }
+
+    /**
+     * Returns the mailbox of this actor.
+     *
+     * @return Mailbox of this actor
+     */
+    protected Queue<M> getMailbox() {
+        return mailbox;
+    }
+
+    /**
+     * Makes the actor be woken up periodically, replacing any previous period.
+     *
+     * @param period Period of wake ups in milliseconds
+     */
+    protected void wakeUpEvery(long period) {
+        synchronized (timerLock) {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+
+            timer = runtime.scheduleWithFixedDelay(wakeUpTask, period);
+        }
+    }
+
+    /**
+     * Makes the actor be woken up once after specified delay.
+     *
+     * @param delay Delay in milliseconds
+     */
+    protected void wakeUpAfter(long delay) {
+        runtime.schedule(wakeUpTask, delay);
+    }
+
+    /**
+     * Ends the work of this actor.
+     */
+    private void end() {
+        isEnded = true;
+
+        synchronized (timerLock) {
+            if (timer != null) {
+                timer.cancel(false);
+                timer = null;
+            }
+        }
+
+        ended();
+    }
+
+    /**
+     * Called once before the first run of the actor.
+     */
+    protected void started() {
+    }
+
+    /**
+     * Handles messages and performs any timed work of the actor.
+     * Should never wait for anything, but rather return and let the actor be woken up later.
+     *
+     * @return True if actor should continue working or false if it has ended its work
+     */
+    protected abstract boolean act();
+
+    /**
+     * Called once after the actor has ended its work.
+     */
+    protected void ended() {
+    }
+
+    /**
+     * Prints specified text to output stream.
+     *
+     * @param text A text to be printed to output stream
+     */
+    private void p(String text) {
+        System.out.println("Actor " + name + ": " + text);
+    }
+}
@@ -0,0 +1,140 @@
+package com.nokia.ci.tas.commons;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared runtime of actors.
+ *
+ * Actors which have something to do are run by a bounded pool of worker threads,
+ * while a single scheduler thread wakes actors up for their timed work.
+ * Idle worker threads are released, so an idle runtime doesn't keep any threads busy.
+ */
+public class ActorRuntime {
+
+    /**
+     * Default number of worker threads.
+     * Actors may block on network operations, so there are more workers than processors.
+     */
+    public static final int DEFAULT_NUMBER_OF_THREADS = Math.max(8, 4 * Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Time after which idle worker threads are released.
+     */
+    private static final long WORKER_KEEP_ALIVE_TIME = Constant.ONE_MINUTE;
+
+    /**
+     * Pool of worker threads running actors.
+     */
+    private ThreadPoolExecutor executor;
+
+    /**
+     * Scheduler of timed wake ups.
+     */
+    private ScheduledThreadPoolExecutor scheduler;
+
+    /**
+     * Constructor.
+     *
+     * @param name Name of the runtime, used in names of its threads
+     * @param numberOfThreads Maximal number of worker threads
+     */
+    public ActorRuntime(String name, int numberOfThreads) {
+        executor = new ThreadPoolExecutor(numberOfThreads, numberOfThreads, WORKER_KEEP_ALIVE_TIME, TimeUnit.MILLISECONDS,
+                                          new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory(name + " worker"));
+        executor.allowCoreThreadTimeOut(true);
+
+        scheduler = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory(name + " scheduler"));
+    }
+
+    /**
+     * Runs specified task on one of the worker threads.
+     *
+     * @param task Task to be run
+     */
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Runs specified task once after specified delay.
+     *
+     * @param task Task to be run
+     * @param delay Delay in milliseconds
+     * @return Handle of the scheduled task
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delay) {
+        return scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs specified task periodically, with specified delay between the runs.
+     *
+     * @param task Task to be run
+     * @param period Delay between the runs in milliseconds
+     * @return Handle of the scheduled task
+     */
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long period) {
+        return scheduler.scheduleWithFixedDelay(task, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns current number of worker threads.
+     *
+     * @return Current number of worker threads
+     */
+    public int getNumberOfThreads() {
+        return executor.getPoolSize();
+    }
+
+    /**
+     * Stops all the threads of this runtime.
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+        executor.shutdown();
+    }
+
+    /**
+     * Creates threads of the runtime with meaningful names.
+     */
+    private static class NamedThreadFactory implements ThreadFactory {
+
+        /**
+         * Prefix of thread names.
+         */
+        private String prefix;
+
+        /**
+         * Number of the next created thread.
+         */
+        private AtomicInteger threadNumber = new AtomicInteger(1);
+
+        /**
+         * Constructor.
+         *
+         * @param prefix Prefix of thread names
+         */
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        /**
+         * Creates a new thread running specified task.
+         *
+         * @param task Task to be run by the thread
+         * @return Created thread
+         */
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, prefix + " " + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
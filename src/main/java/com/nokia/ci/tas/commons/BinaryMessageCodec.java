@@ -0,0 +1,845 @@
+package com.nokia.ci.tas.commons;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.nokia.ci.tas.commons.message.FileOperation;
+import com.nokia.ci.tas.commons.message.Message;
+import com.nokia.ci.tas.commons.message.ProductOperation;
+import com.nokia.ci.tas.commons.message.RegistryOperation;
+import com.nokia.ci.tas.commons.message.TestOperation;
+import com.nokia.ci.tas.commons.message.TextMessage;
+
+/**
+ * Compact binary encoding of messages, used as an alternative to XML between parts which have negotiated it.
+ *
+ * The binary format of a single message:
+
+    [1 byte MAGIC]                       <- Never a valid first byte of an XML message
+    [1 byte VERSION]
+    [4 bytes length][length bytes]       <- Body of the message
+       body:
+       [string type]
+       [string sender hostname][varint sender port]
+       [string receiver hostname][varint receiver port]
+       [type-specific fields]            <- Operation ids, tests, products, file and test node descriptions, texts
+
+ * Strings are written as a varint of (UTF-8 length + 1) followed by UTF-8 bytes, where zero stands for null.
+ * Lists and maps are written as a varint of (number of items + 1) followed by items, where zero stands for null.
+ * Enumerations are written as a single byte with the ordinal, so their order is a part of the format version.
+ * Objects which may be absent are preceded by a single byte telling whenever they are present.
+ *
+ * Registry operations are always send as XML, since they are used for negotiating the encoding itself.
+ */
+public class BinaryMessageCodec {
+
+    /**
+     * First byte of all binary messages.
+     */
+    public static final int MAGIC = 0xB1;
+
+    /**
+     * Version of the binary format.
+     */
+    public static final int VERSION = 6;
+
+    /**
+     * Maximal size of a single message body in bytes.
+     */
+    public static final int MAXIMAL_MESSAGE_SIZE = PersistentConnection.MAXIMAL_FRAME_SIZE;
+
+    /**
+     * Private constructor, since all methods are static.
+     */
+    private BinaryMessageCodec() {
+    }
+
+    /**
+     * Tells whenever specified first byte of a message starts a binary message.
+     *
+     * @param firstByte The first byte of a message
+     * @return True if the byte starts a binary message or false otherwise
+     */
+    public static boolean isBinary(int firstByte) {
+        return firstByte == MAGIC;
+    }
+
+    /**
+     * Encodes specified message into binary format.
+     *
+     * @param message Message to be encoded
+     * @return Binary representation of the message
+     * @throws IOException If message couldn't be encoded
+     */
+    public static byte[] encode(Message message) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(Constant.DEFAULT_BUFFER_SIZE);
+        DataOutputStream output = new DataOutputStream(body);
+
+        writeString(output, message.getType());
+        writeString(output, message.getSenderHostname());
+        writeVarint(output, message.getSenderPort());
+        writeString(output, message.getReceiverHostname());
+        writeVarint(output, message.getReceiverPort());
+
+        if (message instanceof TestOperation) {
+            TestOperation testOperation = (TestOperation) message;
+            output.writeByte(testOperation.getId().ordinal());
+            writeTest(output, testOperation.getTest());
+
+        } else if (message instanceof ProductOperation) {
+            ProductOperation productOperation = (ProductOperation) message;
+            output.writeByte(productOperation.getId().ordinal());
+            writeTest(output, productOperation.getTest());
+            writeProduct(output, productOperation.getProduct());
+            writeProductList(output, productOperation.getProducts());
+            output.writeLong(productOperation.getSequenceNumber());
+            output.writeBoolean(productOperation.isFullSync());
+            writeVarint(output, productOperation.getNumberOfProducts());
+            output.writeLong(productOperation.getDigest());
+
+        } else if (message instanceof FileOperation) {
+            FileOperation fileOperation = (FileOperation) message;
+            output.writeByte(fileOperation.getId().ordinal());
+            writeTest(output, fileOperation.getTest());
+            writeFileDescription(output, fileOperation.getFileDescription());
+
+        } else if (message instanceof RegistryOperation) {
+            RegistryOperation registryOperation = (RegistryOperation) message;
+            output.writeByte(registryOperation.getId().ordinal());
+            output.writeByte(registryOperation.getRemote().ordinal());
+            output.writeByte(registryOperation.getEncoding().ordinal());
+            writeTestNodeDescription(output, registryOperation.getTestNodeDescription());
+
+        } else if (message instanceof TextMessage) {
+            TextMessage textMessage = (TextMessage) message;
+            writeTest(output, textMessage.getTest());
+            writeString(output, textMessage.getText());
+
+        } else {
+            writeString(output, message.getEnvelope());
+        }
+
+        output.flush();
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream(body.size() + 6);
+        DataOutputStream resultOutput = new DataOutputStream(result);
+        resultOutput.writeByte(MAGIC);
+        resultOutput.writeByte(VERSION);
+        resultOutput.writeInt(body.size());
+        body.writeTo(resultOutput);
+        resultOutput.flush();
+
+        return result.toByteArray();
+    }
+
+    /**
+     * Decodes a single binary message from specified input stream.
+     * Only the bytes of the message are consumed, so any data following it remains in the stream.
+     *
+     * @param inputStream Input stream positioned at the first byte of a binary message
+     * @return Decoded message
+     * @throws IOException If message couldn't be decoded
+     */
+    public static Message decode(InputStream inputStream) throws IOException {
+        DataInputStream header = new DataInputStream(inputStream);
+
+        int magic = header.readUnsignedByte();
+
+        if (magic != MAGIC) {
+            throw new IOException("Not a binary message");
+        }
+
+        int version = header.readUnsignedByte();
+
+        if (version != VERSION) {
+            throw new IOException("Unsupported version " + version + " of binary message");
+        }
+
+        int length = header.readInt();
+
+        if (length < 0 || length > MAXIMAL_MESSAGE_SIZE) {
+            throw new IOException("Binary message has invalid length " + length);
+        }
+
+        byte[] body = new byte[length];
+        header.readFully(body);
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(body));
+
+        Message message = new Message(readString(input));
+        message.setSender(readString(input), readVarint(input));
+        message.setReceiver(readString(input), readVarint(input));
+
+        String type = message.getType();
+
+        if (Message.TYPE_TEST_OPERATION.equals(type)) {
+            TestOperation testOperation = new TestOperation(message);
+            testOperation.setId(readEnum(input, TestOperation.Id.values()));
+            testOperation.setTest(readTest(input));
+            return testOperation;
+
+        } else if (Message.TYPE_PRODUCT_OPERATION.equals(type)) {
+            ProductOperation productOperation = new ProductOperation(message);
+            productOperation.setId(readEnum(input, ProductOperation.Id.values()));
+            productOperation.setTest(readTest(input));
+            productOperation.setProduct(readProduct(input));
+            List<Product> products = readProductList(input);
+            if (products != null) {
+                productOperation.setProducts(products);
+            }
+            productOperation.setSequenceNumber(input.readLong());
+            productOperation.setFullSync(input.readBoolean());
+            productOperation.setNumberOfProducts(readVarint(input));
+            productOperation.setDigest(input.readLong());
+            return productOperation;
+
+        } else if (Message.TYPE_FILE_OPERATION.equals(type)) {
+            FileOperation fileOperation = new FileOperation(message);
+            fileOperation.setId(readEnum(input, FileOperation.Id.values()));
+            fileOperation.setTest(readTest(input));
+            fileOperation.setFileDescription(readFileDescription(input));
+            return fileOperation;
+
+        } else if (Message.TYPE_REGISTRY_OPERATION.equals(type)) {
+            RegistryOperation registryOperation = new RegistryOperation(message);
+            registryOperation.setId(readEnum(input, RegistryOperation.Id.values()));
+            registryOperation.setRemote(readEnum(input, RegistryOperation.Remote.values()));
+            registryOperation.setEncoding(readEnum(input, RegistryOperation.Encoding.values()));
+            registryOperation.setTestNodeDescription(readTestNodeDescription(input));
+            return registryOperation;
+
+        } else if (Message.TYPE_TEXT_MESSAGE.equals(type)) {
+            TextMessage textMessage = new TextMessage(message);
+            textMessage.setTest(readTest(input));
+            textMessage.setText(readString(input));
+            return textMessage;
+        }
+
+        message.setEnvelope(readString(input));
+        return message;
+    }
+
+    /**
+     * Writes a test, which may be null.
+     *
+     * @param output Output stream
+     * @param test Test to be written
+     * @throws IOException If writing has failed
+     */
+    private static void writeTest(DataOutputStream output, Test test) throws IOException {
+        output.writeBoolean(test != null);
+
+        if (test == null) {
+            return;
+        }
+
+        writeString(output, test.getId());
+        writeString(output, test.getSubId());
+        writeString(output, test.getWorkspacePath());
+        writeString(output, test.getURL());
+        writeString(output, test.getExecutorApplication());
+        writeString(output, test.getExecutorScript());
+        writeStringMap(output, test.getExecutorEnvparams());
+        writeStringList(output, test.getExecutorParameters());
+        writeString(output, test.getResultsFilename());
+        output.writeByte(test.getStatus().ordinal());
+        writeString(output, test.getStatusDetails());
+        writeStringList(output, test.getArtifacts());
+
+        List<TestPackage> testPackages = test.getTestPackages();
+        writeSize(output, testPackages);
+        if (testPackages != null) {
+            for (TestPackage testPackage : testPackages) {
+                writeString(output, testPackage.getId());
+                writeStringList(output, testPackage.getFiles());
+                writeString(output, testPackage.getRequiredEnvironment());
+            }
+        }
+
+        output.writeByte(test.getProductReleasingMode().ordinal());
+        output.writeLong(test.getProductDisconnectionTimeout());
+        output.writeByte(test.getTarget().ordinal());
+        writeProductList(output, test.getRequiredProducts());
+        writeString(output, test.getRequiredEnvironment());
+        writeProductList(output, test.getReservedProducts());
+        output.writeLong(test.getStartTime());
+        output.writeLong(test.getTimeout());
+        output.writeInt(test.getPriority());
+    }
+
+    /**
+     * Reads a test, which may be null.
+     *
+     * @param input Input stream
+     * @return Read test or null
+     * @throws IOException If reading has failed
+     */
+    private static Test readTest(DataInputStream input) throws IOException {
+        if (!input.readBoolean()) {
+            return null;
+        }
+
+        Test test = new Test(readString(input));
+        test.setSubId(readString(input));
+        test.setWorkspacePath(readString(input));
+        test.setURL(readString(input));
+        test.setExecutorApplication(readString(input));
+        test.setExecutorScript(readString(input));
+
+        Map<String, String> executorEnvparams = readStringMap(input);
+        if (executorEnvparams != null) {
+            test.setExecutorEnvparams(executorEnvparams);
+        }
+
+        List<String> executorParameters = readStringList(input);
+        if (executorParameters != null) {
+            test.setExecutorParameters(executorParameters);
+        }
+
+        test.setResultsFilename(readString(input));
+        test.setStatus(readEnum(input, Test.Status.values()));
+        test.setStatusDetails(readString(input));
+
+        List<String> artifacts = readStringList(input);
+        if (artifacts != null) {
+            test.setArtifacts(artifacts);
+        }
+
+        int numberOfTestPackages = readSize(input);
+        if (numberOfTestPackages >= 0) {
+            List<TestPackage> testPackages = new ArrayList<TestPackage>(numberOfTestPackages);
+            for (int i = 0; i < numberOfTestPackages; i++) {
+                String id = readString(input);
+                List<String> files = readStringList(input);
+                String requiredEnvironment = readString(input);
+                testPackages.add(new TestPackage(id, files, requiredEnvironment));
+            }
+            test.setTestPackages(testPackages);
+        }
+
+        test.setProductReleasingMode(readEnum(input, Test.ProductReleasingMode.values()));
+        test.setProductDisconnectionTimeout(input.readLong());
+        test.setTarget(readEnum(input, Test.Target.values()));
+
+        List<Product> requiredProducts = readProductList(input);
+        if (requiredProducts != null) {
+            test.setRequiredProducts(requiredProducts);
+        }
+
+        test.setRequiredEnvironment(readString(input));
+
+        List<Product> reservedProducts = readProductList(input);
+        if (reservedProducts != null) {
+            test.setReservedProducts(reservedProducts);
+        }
+
+        test.setStartTime(input.readLong());
+        test.setTimeout(input.readLong());
+        test.setPriority(input.readInt());
+
+        return test;
+    }
+
+    /**
+     * Writes a list of products, which may be null.
+     *
+     * @param output Output stream
+     * @param products List of products to be written
+     * @throws IOException If writing has failed
+     */
+    private static void writeProductList(DataOutputStream output, List<Product> products) throws IOException {
+        writeSize(output, products);
+
+        if (products != null) {
+            for (Product product : products) {
+                writeProduct(output, product);
+            }
+        }
+    }
+
+    /**
+     * Reads a list of products, which may be null.
+     *
+     * @param input Input stream
+     * @return Read list of products or null
+     * @throws IOException If reading has failed
+     */
+    private static List<Product> readProductList(DataInputStream input) throws IOException {
+        int numberOfProducts = readSize(input);
+
+        if (numberOfProducts < 0) {
+            return null;
+        }
+
+        List<Product> products = new ArrayList<Product>(numberOfProducts);
+
+        for (int i = 0; i < numberOfProducts; i++) {
+            products.add(readProduct(input));
+        }
+
+        return products;
+    }
+
+    /**
+     * Writes a product, which may be null.
+     *
+     * @param output Output stream
+     * @param product Product to be written
+     * @throws IOException If writing has failed
+     */
+    private static void writeProduct(DataOutputStream output, Product product) throws IOException {
+        output.writeBoolean(product != null);
+
+        if (product == null) {
+            return;
+        }
+
+        writeString(output, product.getIMEI());
+        writeString(output, product.getRMCode());
+        writeString(output, product.getHardwareType());
+        writeString(output, product.getFuseConnectionName());
+        writeString(output, product.getFuseConnectionId());
+        writeString(output, product.getTraceConnectionId());
+        writeString(output, product.getHostname());
+        writeString(output, product.getIPAddress());
+        writeString(output, product.getPort());
+        output.writeByte(product.getRole().ordinal());
+        output.writeByte(product.getStatus().ordinal());
+        writeString(output, product.getStatusDetails());
+        output.writeLong(product.getReservationTimeout());
+        output.writeLong(product.getReservationTime());
+        output.writeLong(product.getDisconnectionTime());
+        writeString(output, product.getTestAutomationServiceHostname());
+        writeVarint(output, product.getTestAutomationServicePort());
+        writeString(output, product.getEnvironment());
+        writeSimCard(output, product.getSim1());
+        writeSimCard(output, product.getSim2());
+        writeString(output, product.getSn());
+        writeString(output, product.getSwVer());
+        writeString(output, product.getFingerprint());
+        writeString(output, product.getProductCode());
+    }
+
+    /**
+     * Reads a product, which may be null.
+     *
+     * @param input Input stream
+     * @return Read product or null
+     * @throws IOException If reading has failed
+     */
+    private static Product readProduct(DataInputStream input) throws IOException {
+        if (!input.readBoolean()) {
+            return null;
+        }
+
+        Product product = new Product();
+        product.setIMEI(readString(input));
+        product.setRMCode(readString(input));
+        product.setHardwareType(readString(input));
+        product.setFuseConnectionName(readString(input));
+        product.setFuseConnectionId(readString(input));
+        product.setTraceConnectionId(readString(input), false);
+        product.setHostname(readString(input));
+        product.setIPAddress(readString(input));
+        product.setPort(readString(input));
+        product.setRole(readEnum(input, Product.Role.values()));
+        product.setStatus(readEnum(input, Product.Status.values()), readString(input));
+        product.setReservationTimeout(input.readLong());
+        product.setReservationTime(input.readLong());
+        product.setDisconnectionTime(input.readLong());
+        product.setTestAutomationService(readString(input), readVarint(input));
+        product.setEnvironment(readString(input));
+
+        SimCard sim1 = readSimCard(input, SimCard.XML_ELEMENT_SIM_CARD_1);
+        if (sim1 != null) {
+            product.setSim1(sim1);
+        }
+
+        SimCard sim2 = readSimCard(input, SimCard.XML_ELEMENT_SIM_CARD_2);
+        if (sim2 != null) {
+            product.setSim2(sim2);
+        }
+
+        product.setSn(readString(input));
+        product.setSwVer(readString(input));
+        product.setFingerprint(readString(input));
+        product.setProductCode(readString(input));
+
+        return product;
+    }
+
+    /**
+     * Writes a SIM card, which may be null.
+     *
+     * @param output Output stream
+     * @param simCard SIM card to be written
+     * @throws IOException If writing has failed
+     */
+    private static void writeSimCard(DataOutputStream output, SimCard simCard) throws IOException {
+        output.writeBoolean(simCard != null);
+
+        if (simCard == null) {
+            return;
+        }
+
+        writeString(output, simCard.getPhoneNumber());
+        writeString(output, simCard.getPin1Code());
+        writeString(output, simCard.getPin2Code());
+        writeString(output, simCard.getPuk1Code());
+        writeString(output, simCard.getPuk2Code());
+        writeString(output, simCard.getSecurityCode());
+        writeString(output, simCard.getIMSI());
+        writeString(output, simCard.getServiceDiallingNumber());
+        writeString(output, simCard.getVoiceMailboxNumber());
+        writeString(output, simCard.getOperator());
+        writeString(output, simCard.getOperatorCode());
+        writeString(output, simCard.getOperatorCountry());
+        writeString(output, simCard.getSignal());
+    }
+
+    /**
+     * Reads a SIM card, which may be null.
+     *
+     * @param input Input stream
+     * @param identificator Identificator of the SIM card
+     * @return Read SIM card or null
+     * @throws IOException If reading has failed
+     */
+    private static SimCard readSimCard(DataInputStream input, String identificator) throws IOException {
+        if (!input.readBoolean()) {
+            return null;
+        }
+
+        SimCard simCard = new SimCard(identificator);
+        simCard.setPhoneNumber(readString(input));
+        simCard.setPin1Code(readString(input));
+        simCard.setPin2Code(readString(input));
+        simCard.setPuk1Code(readString(input));
+        simCard.setPuk2Code(readString(input));
+        simCard.setSecurityCode(readString(input));
+        simCard.setIMSI(readString(input));
+        simCard.setServiceDiallingNumber(readString(input));
+        simCard.setVoiceMailboxNumber(readString(input));
+        simCard.setOperator(readString(input));
+        simCard.setOperatorCode(readString(input));
+        simCard.setOperatorCountry(readString(input));
+        simCard.setSignal(readString(input));
+
+        return simCard;
+    }
+
+    /**
+     * Writes a file description, which may be null.
+     *
+     * @param output Output stream
+     * @param fileDescription File description to be written
+     * @throws IOException If writing has failed
+     */
+    private static void writeFileDescription(DataOutputStream output, FileDescription fileDescription) throws IOException {
+        output.writeBoolean(fileDescription != null);
+
+        if (fileDescription == null) {
+            return;
+        }
+
+        writeString(output, fileDescription.getFileName());
+        writeString(output, fileDescription.getFilePath());
+        output.writeLong(fileDescription.getFileSize());
+        output.writeLong(fileDescription.getOffset());
+        output.writeLong(fileDescription.getLength());
+        output.writeLong(fileDescription.getChunkSize());
+        writeStringList(output, fileDescription.getChunkChecksums());
+        writeString(output, fileDescription.getContentHash());
+    }
+
+    /**
+     * Reads a file description, which may be null.
+     *
+     * @param input Input stream
+     * @return Read file description or null
+     * @throws IOException If reading has failed
+     */
+    private static FileDescription readFileDescription(DataInputStream input) throws IOException {
+        if (!input.readBoolean()) {
+            return null;
+        }
+
+        FileDescription fileDescription = new FileDescription();
+        fileDescription.setFileName(readString(input));
+        fileDescription.setFilePath(readString(input));
+        fileDescription.setFileSize(input.readLong());
+        fileDescription.setOffset(input.readLong());
+        fileDescription.setLength(input.readLong());
+        fileDescription.setChunkSize(input.readLong());
+
+        List<String> chunkChecksums = readStringList(input);
+
+        if (chunkChecksums != null) {
+            fileDescription.setChunkChecksums(chunkChecksums);
+        }
+
+        fileDescription.setContentHash(readString(input));
+
+        return fileDescription;
+    }
+
+    /**
+     * Writes a test node description, which may be null.
+     *
+     * @param output Output stream
+     * @param testNodeDescription Test node description to be written
+     * @throws IOException If writing has failed
+     */
+    private static void writeTestNodeDescription(DataOutputStream output, TestNodeDescription testNodeDescription) throws IOException {
+        output.writeBoolean(testNodeDescription != null);
+
+        if (testNodeDescription == null) {
+            return;
+        }
+
+        writeString(output, testNodeDescription.getHostname());
+        writeVarint(output, testNodeDescription.getPort());
+        writeString(output, testNodeDescription.getDescription());
+        writeString(output, testNodeDescription.getTestAutomationSoftwareVersion());
+    }
+
+    /**
+     * Reads a test node description, which may be null.
+     *
+     * @param input Input stream
+     * @return Read test node description or null
+     * @throws IOException If reading has failed
+     */
+    private static TestNodeDescription readTestNodeDescription(DataInputStream input) throws IOException {
+        if (!input.readBoolean()) {
+            return null;
+        }
+
+        TestNodeDescription testNodeDescription = new TestNodeDescription();
+        testNodeDescription.setHostname(readString(input));
+        testNodeDescription.setPort(readVarint(input));
+        testNodeDescription.setDescription(readString(input));
+        testNodeDescription.setTestAutomationSoftwareVersion(readString(input));
+
+        return testNodeDescription;
+    }
+
+    /**
+     * Writes a list of strings, which may be null.
+     *
+     * @param output Output stream
+     * @param strings List of strings to be written
+     * @throws IOException If writing has failed
+     */
+    private static void writeStringList(DataOutputStream output, List<String> strings) throws IOException {
+        writeSize(output, strings);
+
+        if (strings != null) {
+            for (String string : strings) {
+                writeString(output, string);
+            }
+        }
+    }
+
+    /**
+     * Reads a list of strings, which may be null.
+     *
+     * @param input Input stream
+     * @return Read list of strings or null
+     * @throws IOException If reading has failed
+     */
+    private static List<String> readStringList(DataInputStream input) throws IOException {
+        int numberOfStrings = readSize(input);
+
+        if (numberOfStrings < 0) {
+            return null;
+        }
+
+        List<String> strings = new ArrayList<String>(numberOfStrings);
+
+        for (int i = 0; i < numberOfStrings; i++) {
+            strings.add(readString(input));
+        }
+
+        return strings;
+    }
+
+    /**
+     * Writes a map of strings, which may be null.
+     *
+     * @param output Output stream
+     * @param strings Map of strings to be written
+     * @throws IOException If writing has failed
+     */
+    private static void writeStringMap(DataOutputStream output, Map<String, String> strings) throws IOException {
+        writeVarint(output, strings == null ? 0 : strings.size() + 1);
+
+        if (strings != null) {
+            for (Map.Entry<String, String> entry : strings.entrySet()) {
+                writeString(output, entry.getKey());
+                writeString(output, entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Reads a map of strings, which may be null.
+     *
+     * @param input Input stream
+     * @return Read map of strings or null
+     * @throws IOException If reading has failed
+     */
+    private static Map<String, String> readStringMap(DataInputStream input) throws IOException {
+        int numberOfEntries = readSize(input);
+
+        if (numberOfEntries < 0) {
+            return null;
+        }
+
+        Map<String, String> strings = new HashMap<String, String>();
+
+        for (int i = 0; i < numberOfEntries; i++) {
+            String key = readString(input);
+            strings.put(key, readString(input));
+        }
+
+        return strings;
+    }
+
+    /**
+     * Writes size of a list, which may be null.
+     *
+     * @param output Output stream
+     * @param list List which size should be written
+     * @throws IOException If writing has failed
+     */
+    private static void writeSize(DataOutputStream output, List<?> list) throws IOException {
+        writeVarint(output, list == null ? 0 : list.size() + 1);
+    }
+
+    /**
+     * Reads size of a list or a map.
+     *
+     * @param input Input stream
+     * @return Size of a list or -1 for null
+     * @throws IOException If reading has failed
+     */
+    private static int readSize(DataInputStream input) throws IOException {
+        int size = readVarint(input) - 1;
+
+        if (size > input.available()) {
+            // Each item takes at least one byte
+            throw new IOException("Binary message has invalid number of items " + size);
+        }
+
+        return size;
+    }
+
+    /**
+     * Writes a string, which may be null.
+     *
+     * @param output Output stream
+     * @param string String to be written
+     * @throws IOException If writing has failed
+     */
+    private static void writeString(DataOutputStream output, String string) throws IOException {
+        if (string == null) {
+            writeVarint(output, 0);
+            return;
+        }
+
+        byte[] bytes = string.getBytes("UTF-8");
+        writeVarint(output, bytes.length + 1);
+        output.write(bytes);
+    }
+
+    /**
+     * Reads a string, which may be null.
+     *
+     * @param input Input stream
+     * @return Read string or null
+     * @throws IOException If reading has failed
+     */
+    private static String readString(DataInputStream input) throws IOException {
+        int length = readVarint(input) - 1;
+
+        if (length < 0) {
+            return null;
+        }
+
+        if (length > input.available()) {
+            throw new EOFException("Binary message has truncated string of length " + length);
+        }
+
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * Reads an enumeration value stored as its ordinal.
+     *
+     * @param input Input stream
+     * @param values All values of the enumeration
+     * @return Read enumeration value
+     * @throws IOException If reading has failed or ordinal is unknown
+     */
+    private static <E extends Enum<E>> E readEnum(DataInputStream input, E[] values) throws IOException {
+        int ordinal = input.readUnsignedByte();
+
+        if (ordinal >= values.length) {
+            throw new IOException("Binary message has unknown value " + ordinal + " of " + values[0].getDeclaringClass().getSimpleName());
+        }
+
+        return values[ordinal];
+    }
+
+    /**
+     * Writes a non-negative integer using 7 bits per byte.
+     *
+     * @param output Output stream
+     * @param value Non-negative value to be written
+     * @throws IOException If writing has failed
+     */
+    private static void writeVarint(DataOutputStream output, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            output.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        output.writeByte(value);
+    }
+
+    /**
+     * Reads a non-negative integer written with 7 bits per byte.
+     *
+     * @param input Input stream
+     * @return Read value
+     * @throws IOException If reading has failed
+     */
+    private static int readVarint(DataInputStream input) throws IOException {
+        int value = 0;
+
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = input.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Binary message has malformed number");
+    }
+}
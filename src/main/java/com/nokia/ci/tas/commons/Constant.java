@@ -90,6 +90,26 @@ public class Constant {
      */
     public static final int DEFAULT_BUFFER_SIZE = 4096;
 
+    /**
+     * Default size of the buffer used in receiving files and in file transfers between streams.
+     */
+    public static final int FILE_TRANSFER_DEFAULT_BUFFER_SIZE = 262144;
+
+    /**
+     * Size of a single chunk in file transfers, which is verified with its own checksum and can be re-transferred alone.
+     */
+    public static final long FILE_TRANSFER_CHUNK_SIZE = 4194304L;
+
+    /**
+     * Default maximal number of files transferred at the same time from or to a single remote part.
+     */
+    public static final int DEFAULT_MAXIMAL_NUMBER_OF_FILE_TRANSFERS_PER_REMOTE = 4;
+
+    /**
+     * Default maximal number of files transferred at the same time from or to all remote parts together.
+     */
+    public static final int DEFAULT_MAXIMAL_NUMBER_OF_FILE_TRANSFERS = 8;
+
     /**
      * Number of tries to perform unsuccessful operations once again before issuing a failure.
      */
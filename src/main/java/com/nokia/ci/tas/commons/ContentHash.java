@@ -0,0 +1,125 @@
+package com.nokia.ci.tas.commons;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Calculates hashes of file contents, which identify files independently of their names and locations.
+ *
+ * Hashing a large file takes a while, so calculated hashes are remembered together with
+ * the size and modification time of the file, and are calculated again only when the file has changed.
+ */
+public class ContentHash {
+
+    /**
+     * Name of the hashing algorithm.
+     */
+    public static final String ALGORITHM = "SHA-256";
+
+    /**
+     * Remembered hashes, stored by absolute file paths.
+     */
+    private static ConcurrentHashMap<String, ContentHash> hashes = new ConcurrentHashMap<String, ContentHash>();
+
+    /**
+     * Size of the file at the moment of hashing.
+     */
+    private long fileSize;
+
+    /**
+     * Modification time of the file at the moment of hashing.
+     */
+    private long lastModified;
+
+    /**
+     * Hash of the file content.
+     */
+    private String hash;
+
+    /**
+     * Constructor.
+     *
+     * @param fileSize Size of the file at the moment of hashing
+     * @param lastModified Modification time of the file at the moment of hashing
+     * @param hash Hash of the file content
+     */
+    private ContentHash(long fileSize, long lastModified, String hash) {
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.hash = hash;
+    }
+
+    /**
+     * Returns hash of specified file content, calculating it only if the file has changed since the last time.
+     *
+     * @param file File to be hashed
+     * @return Hash of the file content as a hexadecimal string
+     * @throws IOException If file cannot be read
+     */
+    public static String of(File file) throws IOException {
+        String absoluteFilePath = file.getAbsolutePath();
+        long fileSize = file.length();
+        long lastModified = file.lastModified();
+
+        ContentHash contentHash = hashes.get(absoluteFilePath);
+
+        if (contentHash != null && contentHash.fileSize == fileSize && contentHash.lastModified == lastModified) {
+            return contentHash.hash;
+        }
+
+        String hash = calculate(file);
+
+        // Don't remember hashes of files which were modified during hashing
+        if (file.length() == fileSize && file.lastModified() == lastModified) {
+            hashes.put(absoluteFilePath, new ContentHash(fileSize, lastModified, hash));
+        }
+
+        return hash;
+    }
+
+    /**
+     * Calculates hash of specified file content.
+     *
+     * @param file File to be hashed
+     * @return Hash of the file content as a hexadecimal string
+     * @throws IOException If file cannot be read
+     */
+    public static String calculate(File file) throws IOException {
+        MessageDigest digest = null;
+
+        try {
+            digest = MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("Hashing algorithm " + ALGORITHM + " is not supported: " + e.getMessage());
+        }
+
+        FileInputStream input = new FileInputStream(file);
+
+        try {
+            byte[] buffer = new byte[FileTransfer.getBufferSize()];
+            int numberOfBytes = 0;
+
+            while ((numberOfBytes = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, numberOfBytes);
+            }
+        } finally {
+            input.close();
+        }
+
+        byte[] bytes = digest.digest();
+        StringBuilder hash = new StringBuilder(bytes.length * 2);
+
+        for (byte b : bytes) {
+            hash.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hash.append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return hash.toString();
+    }
+}
@@ -0,0 +1,204 @@
+package com.nokia.ci.tas.commons;
+
+import java.io.IOException;
+
+import java.nio.channels.FileChannel;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Keeps track of verified chunks of a file received in a chunked transfer.
+ *
+ * Every received range is verified chunk after chunk against the checksums send together with it.
+ * Chunks which were not received or were corrupted on their way stay unverified,
+ * and can be requested again from the sender as a single range, until the whole file is verified.
+ */
+public class FileChunks {
+
+    /**
+     * Size of the whole file in bytes.
+     */
+    private long fileSize;
+
+    /**
+     * Size of a single chunk in bytes.
+     */
+    private long chunkSize;
+
+    /**
+     * Number of chunks in the file.
+     */
+    private int numberOfChunks;
+
+    /**
+     * Chunks which were received and verified.
+     */
+    private BitSet verifiedChunks;
+
+    /**
+     * Number of received ranges in a row, which haven't added any verified chunks.
+     */
+    private int numberOfAttemptsWithoutProgress = 0;
+
+    /**
+     * Hash of the whole file content or null if it is not known.
+     */
+    private String contentHash;
+
+    /**
+     * Creates a tracker for a file described in a chunked transfer.
+     *
+     * @param fileDescription Description of the chunked transfer
+     */
+    public FileChunks(FileDescription fileDescription) {
+        fileSize = fileDescription.getFileSize();
+        chunkSize = fileDescription.getChunkSize();
+        numberOfChunks = (int) ((fileSize + chunkSize - 1) / chunkSize);
+        verifiedChunks = new BitSet(numberOfChunks);
+        contentHash = fileDescription.getContentHash();
+    }
+
+    /**
+     * Tells whenever specified chunked transfer continues receiving of this file,
+     * instead of sending the whole file from scratch.
+     *
+     * @param fileDescription Description of the chunked transfer
+     * @return True if transfer carries only a range of this file
+     */
+    public boolean isContinuedBy(FileDescription fileDescription) {
+        return fileDescription.isChunked()
+            && fileDescription.getFileSize() == fileSize
+            && fileDescription.getChunkSize() == chunkSize
+            && (fileDescription.getOffset() > 0L
+                || (fileDescription.getLength() != FileDescription.UNTIL_END_OF_FILE && fileDescription.getLength() < fileSize));
+    }
+
+    /**
+     * Verifies all the chunks of received range against their checksums.
+     *
+     * @param file Received file
+     * @param fileDescription Description of the received range
+     * @return Number of chunks verified for the first time
+     * @throws IOException If file cannot be read
+     */
+    public synchronized int verify(FileChannel file, FileDescription fileDescription) throws IOException {
+        int numberOfVerifiedChunks = 0;
+        int firstChunk = (int) (fileDescription.getOffset() / chunkSize);
+        List<String> checksums = fileDescription.getChunkChecksums();
+        byte[] buffer = new byte[FileTransfer.getBufferSize()];
+
+        for (int i = 0; i < checksums.size() && firstChunk + i < numberOfChunks; i++) {
+            int chunk = firstChunk + i;
+
+            if (!verifiedChunks.get(chunk)) {
+                long offset = chunk * chunkSize;
+                String checksum = FileTransfer.calculateChecksum(file, offset, Math.min(chunkSize, fileSize - offset), buffer);
+
+                if (checksum != null && checksum.equals(checksums.get(i))) {
+                    verifiedChunks.set(chunk);
+                    numberOfVerifiedChunks++;
+                }
+            }
+        }
+
+        if (numberOfVerifiedChunks > 0) {
+            numberOfAttemptsWithoutProgress = 0;
+        } else {
+            numberOfAttemptsWithoutProgress++;
+        }
+
+        return numberOfVerifiedChunks;
+    }
+
+    /**
+     * Tells whenever all the chunks of the file are verified.
+     *
+     * @return True if all the chunks of the file are verified
+     */
+    public synchronized boolean isComplete() {
+        return verifiedChunks.cardinality() == numberOfChunks;
+    }
+
+    /**
+     * Tells whenever receiving of the file should be given up,
+     * since the last Constant.NUMBER_OF_RETRIES received ranges haven't added any verified chunks.
+     *
+     * @return True if no more missing ranges should be requested
+     */
+    public synchronized boolean isAbandoned() {
+        return numberOfAttemptsWithoutProgress >= Constant.NUMBER_OF_RETRIES;
+    }
+
+    /**
+     * Returns number of verified chunks.
+     *
+     * @return Number of verified chunks
+     */
+    public synchronized int getNumberOfVerifiedChunks() {
+        return verifiedChunks.cardinality();
+    }
+
+    /**
+     * Returns number of chunks in the file.
+     *
+     * @return Number of chunks in the file
+     */
+    public int getNumberOfChunks() {
+        return numberOfChunks;
+    }
+
+    /**
+     * Returns number of received ranges in a row, which haven't added any verified chunks.
+     *
+     * @return Number of received ranges in a row, which haven't added any verified chunks
+     */
+    public synchronized int getNumberOfAttemptsWithoutProgress() {
+        return numberOfAttemptsWithoutProgress;
+    }
+
+    /**
+     * Returns hash of the whole file content, as it was described when the transfer has started.
+     *
+     * @return Hash of the whole file content or null if it is not known
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * Describes the first range of unverified chunks, which should be requested from the sender.
+     *
+     * @param fileName Name of the file
+     * @return Description of the first range of unverified chunks
+     */
+    public synchronized FileDescription describeMissingRange(String fileName) {
+        int firstChunk = verifiedChunks.nextClearBit(0);
+        int lastChunk = verifiedChunks.nextSetBit(firstChunk);
+
+        if (lastChunk == -1) {
+            lastChunk = numberOfChunks;
+        }
+
+        long offset = firstChunk * chunkSize;
+
+        FileDescription fileDescription = new FileDescription();
+        fileDescription.setFileName(fileName);
+        fileDescription.setFileSize(fileSize);
+        fileDescription.setOffset(offset);
+        fileDescription.setLength(Math.min(lastChunk * chunkSize, fileSize) - offset);
+        fileDescription.setChunkSize(chunkSize);
+
+        return fileDescription;
+    }
+
+    /**
+     * Returns a textual representation of verified chunks.
+     *
+     * @return A textual representation of verified chunks
+     */
+    @Override
+    public synchronized String toString() {
+        return verifiedChunks.cardinality() + " of " + numberOfChunks + " chunks verified";
+    }
+}
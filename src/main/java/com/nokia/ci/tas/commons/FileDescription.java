@@ -1,5 +1,8 @@
 package com.nokia.ci.tas.commons;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Incapsulates all information related to file descriptions used inside the Test Automation Service.
  *
@@ -12,6 +15,15 @@ package com.nokia.ci.tas.commons;
         <path>/path/to/file/</path>
         <!-- Number of bytes in file or -1 if size is unknow -->
         <size>123456</size>
+        <!-- Only in chunked transfers: position of the first transferred byte and number of transferred bytes or -1 if up to the end of file -->
+        <offset>0</offset>
+        <length>-1</length>
+        <!-- Only in chunked transfers: size of a single chunk and checksums of all the chunks in transferred range -->
+        <chunk-size>4194304</chunk-size>
+        <chunk-checksum>1a2b3c4d</chunk-checksum>
+        <chunk-checksum>5e6f7a8b</chunk-checksum>
+        <!-- Only if known: SHA-256 hash of the whole file content -->
+        <content-hash>9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08</content-hash>
     </file>
  */
 public class FileDescription {
@@ -36,11 +48,41 @@ public class FileDescription {
      */
     public static final String XML_ELEMENT_FILESIZE = "size";
 
+    /**
+     * XML tag indicating position of the first byte in transferred range of the file.
+     */
+    public static final String XML_ELEMENT_OFFSET = "offset";
+
+    /**
+     * XML tag indicating number of bytes in transferred range of the file.
+     */
+    public static final String XML_ELEMENT_LENGTH = "length";
+
+    /**
+     * XML tag indicating size of a single chunk in chunked transfers.
+     */
+    public static final String XML_ELEMENT_CHUNK_SIZE = "chunk-size";
+
+    /**
+     * XML tag indicating checksum of a single chunk in chunked transfers.
+     */
+    public static final String XML_ELEMENT_CHUNK_CHECKSUM = "chunk-checksum";
+
+    /**
+     * XML tag indicating hash of the whole file content.
+     */
+    public static final String XML_ELEMENT_CONTENT_HASH = "content-hash";
+
     /**
      * Indication about unknown file size.
      */
     public static final long UNKNOWN_FILE_SIZE = -1;
 
+    /**
+     * Indication about a range lasting up to the end of file.
+     */
+    public static final long UNTIL_END_OF_FILE = -1;
+
     /**
      * Name of the file.
      */
@@ -56,6 +98,31 @@ public class FileDescription {
      */
     private long fileSize = UNKNOWN_FILE_SIZE;
 
+    /**
+     * Position of the first byte in transferred range of the file.
+     */
+    private long offset = 0L;
+
+    /**
+     * Number of bytes in transferred range of the file or UNTIL_END_OF_FILE.
+     */
+    private long length = UNTIL_END_OF_FILE;
+
+    /**
+     * Size of a single chunk in bytes or 0 if transfer is not chunked.
+     */
+    private long chunkSize = 0L;
+
+    /**
+     * Hash of the whole file content or null if it is not known.
+     */
+    private String contentHash = null;
+
+    /**
+     * Checksums of all the chunks in transferred range, starting from the chunk at offset.
+     */
+    private List<String> chunkChecksums = new ArrayList<String>(0);
+
     /**
      * Constructor.
      */
@@ -116,6 +183,114 @@ public class FileDescription {
         return fileSize;
     }
 
+    /**
+     * Sets position of the first byte in transferred range of the file.
+     *
+     * @param offset Position of the first byte in transferred range of the file
+     */
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
+    /**
+     * Returns position of the first byte in transferred range of the file.
+     *
+     * @return Position of the first byte in transferred range of the file
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Sets number of bytes in transferred range of the file or UNTIL_END_OF_FILE.
+     *
+     * @param length Number of bytes in transferred range of the file or UNTIL_END_OF_FILE
+     */
+    public void setLength(long length) {
+        this.length = length;
+    }
+
+    /**
+     * Returns number of bytes in transferred range of the file or UNTIL_END_OF_FILE.
+     *
+     * @return Number of bytes in transferred range of the file or UNTIL_END_OF_FILE
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Sets size of a single chunk in bytes or 0 if transfer is not chunked.
+     *
+     * @param chunkSize Size of a single chunk in bytes or 0 if transfer is not chunked
+     */
+    public void setChunkSize(long chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Returns size of a single chunk in bytes or 0 if transfer is not chunked.
+     *
+     * @return Size of a single chunk in bytes or 0 if transfer is not chunked
+     */
+    public long getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Tells whenever file is transferred in chunks with checksums.
+     *
+     * @return True if file is transferred in chunks with checksums
+     */
+    public boolean isChunked() {
+        return chunkSize > 0L && fileSize != UNKNOWN_FILE_SIZE;
+    }
+
+    /**
+     * Sets checksums of all the chunks in transferred range, starting from the chunk at offset.
+     *
+     * @param chunkChecksums Checksums of all the chunks in transferred range
+     */
+    public void setChunkChecksums(List<String> chunkChecksums) {
+        this.chunkChecksums = chunkChecksums;
+    }
+
+    /**
+     * Adds checksum of the next chunk in transferred range.
+     *
+     * @param chunkChecksum Checksum of the next chunk in transferred range
+     */
+    public void addChunkChecksum(String chunkChecksum) {
+        chunkChecksums.add(chunkChecksum);
+    }
+
+    /**
+     * Returns checksums of all the chunks in transferred range, starting from the chunk at offset.
+     *
+     * @return Checksums of all the chunks in transferred range
+     */
+    public List<String> getChunkChecksums() {
+        return chunkChecksums;
+    }
+
+    /**
+     * Sets hash of the whole file content.
+     *
+     * @param contentHash Hash of the whole file content or null if it is not known
+     */
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    /**
+     * Returns hash of the whole file content.
+     *
+     * @return Hash of the whole file content or null if it is not known
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
     /**
      * Returns a textual representation of the file description.
      *
@@ -141,6 +316,15 @@ public class FileDescription {
             string.append("\n\t File size:         " + fileSize + " bytes");
         }
 
+        if (chunkSize > 0L) {
+            string.append("\n\t Range:             " + offset + " - " + (length == UNTIL_END_OF_FILE ? "end of file" : "" + (offset + length)));
+            string.append("\n\t Chunks:            " + chunkChecksums.size() + " of " + chunkSize + " bytes");
+        }
+
+        if (contentHash != null) {
+            string.append("\n\t Content hash:      " + contentHash);
+        }
+
         return string.toString();
     }
 
@@ -174,6 +358,21 @@ public class FileDescription {
 
         xml.append(indentation + "\t<" + XML_ELEMENT_FILESIZE + ">" + fileSize + "</" + XML_ELEMENT_FILESIZE + ">\n");
 
+        // Plain transfers are described just like before, so older parts can still handle them
+        if (offset > 0L || length != UNTIL_END_OF_FILE || chunkSize > 0L) {
+            xml.append(indentation + "\t<" + XML_ELEMENT_OFFSET + ">" + offset + "</" + XML_ELEMENT_OFFSET + ">\n");
+            xml.append(indentation + "\t<" + XML_ELEMENT_LENGTH + ">" + length + "</" + XML_ELEMENT_LENGTH + ">\n");
+            xml.append(indentation + "\t<" + XML_ELEMENT_CHUNK_SIZE + ">" + chunkSize + "</" + XML_ELEMENT_CHUNK_SIZE + ">\n");
+
+            for (String chunkChecksum : chunkChecksums) {
+                xml.append(indentation + "\t<" + XML_ELEMENT_CHUNK_CHECKSUM + ">" + chunkChecksum + "</" + XML_ELEMENT_CHUNK_CHECKSUM + ">\n");
+            }
+        }
+
+        if (contentHash != null) {
+            xml.append(indentation + "\t<" + XML_ELEMENT_CONTENT_HASH + ">" + contentHash + "</" + XML_ELEMENT_CONTENT_HASH + ">\n");
+        }
+
         xml.append(indentation + "</" + XML_ELEMENT_FILE + ">\n");
 
         return xml.toString();
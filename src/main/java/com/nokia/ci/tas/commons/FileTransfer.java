@@ -0,0 +1,374 @@
+package com.nokia.ci.tas.commons;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.zip.CRC32;
+
+/**
+ * Moves file data between files and network connections.
+ *
+ * Files are send with FileChannel.transferTo(), so the operating system can copy the data directly
+ * from the file into the socket without passing it through the Java heap.
+ * Incoming file data is read from the connection channel into a large direct buffer and written from there into the file,
+ * since transfers from sockets into files are done by the platform through a small temporary buffer and are much slower.
+ * Streams without channels (like the ones provided by test listeners) are copied through a single large buffer.
+ * Size of both buffers can be configured, and the data is flushed only once at the end of transfer.
+ *
+ * Plain files are send in chunks of Constant.FILE_TRANSFER_CHUNK_SIZE bytes, each described by its own CRC32 checksum,
+ * so the receiver can verify every chunk and ask again only for the missing or corrupted ones.
+ */
+public class FileTransfer {
+
+    /**
+     * Maximal number of bytes moved by a single channel transfer call.
+     * Some platforms fail on larger transfers, so the big files are always moved in pieces.
+     */
+    private static final long MAXIMAL_TRANSFER_SIZE = 8L * 1048576L;
+
+    /**
+     * Size of the buffer used in receiving and in transfers between streams.
+     */
+    private static volatile int bufferSize = Constant.FILE_TRANSFER_DEFAULT_BUFFER_SIZE;
+
+    /**
+     * Returns size of the buffer used in receiving and in transfers between streams.
+     *
+     * @return Size of the buffer in bytes
+     */
+    public static int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Sets size of the buffer used in receiving and in transfers between streams.
+     * Sizes smaller than the default networking buffer size are ignored.
+     *
+     * @param size Size of the buffer in bytes
+     */
+    public static void setBufferSize(int size) {
+        if (size >= Constant.DEFAULT_BUFFER_SIZE) {
+            bufferSize = size;
+        }
+    }
+
+    /**
+     * Opens a socket for incoming file transfers.
+     * Connections accepted by such socket will have channels, so the received file data can be moved directly into files.
+     *
+     * @param port Port number to listen on
+     * @return Bound server socket
+     * @throws IOException If socket cannot be bound to specified port
+     */
+    public static ServerSocket openServerSocket(int port) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+
+        try {
+            channel.socket().bind(new InetSocketAddress(port));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        return channel.socket();
+    }
+
+    /**
+     * Opens a connection for outgoing file transfer.
+     * Such connection has a channel, so the file data can be send directly from the file.
+     *
+     * @param hostname Hostname of the receiver
+     * @param port Port number of the receiver
+     * @return Connected socket
+     * @throws IOException If connection cannot be established
+     */
+    public static Socket openSocket(String hostname, int port) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+
+        try {
+            channel.connect(new InetSocketAddress(InetAddress.getByName(hostname), port));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        return channel.socket();
+    }
+
+    /**
+     * Sends the whole content of a file over specified connection, starting from the beginning of the file.
+     *
+     * @param file File to be send
+     * @param socket Connection to the receiver
+     * @return Number of send bytes
+     * @throws IOException If sending has failed
+     */
+    public static long send(FileInputStream file, Socket socket) throws IOException {
+        return send(file, socket, 0L, file.getChannel().size());
+    }
+
+    /**
+     * Sends a range of file over specified connection.
+     *
+     * @param file File to be send
+     * @param socket Connection to the receiver
+     * @param offset Position of the first byte to be send
+     * @param length Number of bytes to be send
+     * @return Number of send bytes
+     * @throws IOException If sending has failed
+     */
+    public static long send(FileInputStream file, Socket socket, long offset, long length) throws IOException {
+        SocketChannel socketChannel = socket.getChannel();
+
+        if (socketChannel == null) {
+            FileChannel fileChannel = file.getChannel();
+            fileChannel.position(offset);
+            return copy(file, socket.getOutputStream(), length);
+        }
+
+        return transfer(file.getChannel(), offset, length, socketChannel);
+    }
+
+    /**
+     * Describes a chunked transfer of the range mentioned in specified file description.
+     * The range is aligned to the chunk boundaries and limited by the file size,
+     * and a checksum is calculated for each chunk in the range.
+     *
+     * @param file File to be send
+     * @param fileDescription Description of the file, which may already specify a range to be send
+     * @return Number of bytes in the range
+     * @throws IOException If file cannot be read
+     */
+    public static long prepareChunkedTransfer(FileChannel file, FileDescription fileDescription) throws IOException {
+        long fileSize = file.size();
+        long chunkSize = Constant.FILE_TRANSFER_CHUNK_SIZE;
+        long offset = Math.min(fileDescription.getOffset() - (fileDescription.getOffset() % chunkSize), fileSize);
+        long length = fileSize - offset;
+
+        if (fileDescription.getLength() != FileDescription.UNTIL_END_OF_FILE) {
+            length = Math.min(fileDescription.getOffset() + fileDescription.getLength() - offset, length);
+        }
+
+        fileDescription.setFileSize(fileSize);
+        fileDescription.setOffset(offset);
+        fileDescription.setLength(length);
+        fileDescription.setChunkSize(chunkSize);
+        fileDescription.setChunkChecksums(calculateChecksums(file, offset, length, chunkSize));
+
+        return length;
+    }
+
+    /**
+     * Calculates checksums of all the chunks in specified range of file.
+     *
+     * @param file File to be read
+     * @param offset Position of the first byte in the range
+     * @param length Number of bytes in the range
+     * @param chunkSize Size of a single chunk
+     * @return Checksums of all the chunks in the range
+     * @throws IOException If file cannot be read
+     */
+    public static List<String> calculateChecksums(FileChannel file, long offset, long length, long chunkSize) throws IOException {
+        List<String> checksums = new ArrayList<String>((int) ((length + chunkSize - 1) / chunkSize));
+        byte[] buffer = new byte[bufferSize];
+
+        for (long position = offset; position < offset + length; position += chunkSize) {
+            checksums.add(calculateChecksum(file, position, Math.min(chunkSize, offset + length - position), buffer));
+        }
+
+        return checksums;
+    }
+
+    /**
+     * Calculates checksum of a single chunk of file.
+     *
+     * @param file File to be read
+     * @param offset Position of the first byte in the chunk
+     * @param length Number of bytes in the chunk
+     * @param buffer Buffer to be used in reading
+     * @return Checksum of the chunk or null if file doesn't contain the whole chunk
+     * @throws IOException If file cannot be read
+     */
+    static String calculateChecksum(FileChannel file, long offset, long length, byte[] buffer) throws IOException {
+        CRC32 checksum = new CRC32();
+        long position = offset;
+
+        while (position < offset + length) {
+            ByteBuffer wrapper = ByteBuffer.wrap(buffer, 0, (int) Math.min(buffer.length, offset + length - position));
+            int numberOfBytes = file.read(wrapper, position);
+
+            if (numberOfBytes <= 0) {
+                return null;
+            }
+
+            checksum.update(buffer, 0, numberOfBytes);
+            position += numberOfBytes;
+        }
+
+        return Long.toHexString(checksum.getValue());
+    }
+
+    /**
+     * Moves the whole content of one file into another.
+     *
+     * @param source File to be copied
+     * @param destination File to receive the copy
+     * @return Number of copied bytes
+     * @throws IOException If copying has failed
+     */
+    public static long copy(FileInputStream source, FileOutputStream destination) throws IOException {
+        FileChannel sourceChannel = source.getChannel();
+        return transfer(sourceChannel, 0L, sourceChannel.size(), destination.getChannel());
+    }
+
+    /**
+     * Receives all the data remaining in specified stream into a file.
+     * Bytes already buffered by the message stream are written first,
+     * and the rest is moved from the connection channel through a direct buffer whenever the stream has a channel.
+     *
+     * @param input Stream of the connection, which may already contain some buffered file data
+     * @param file File to receive the data
+     * @return Number of received bytes
+     * @throws IOException If receiving has failed
+     */
+    public static long receive(InputStream input, FileOutputStream file) throws IOException {
+        return receive(input, file.getChannel());
+    }
+
+    /**
+     * Receives all the data remaining in specified stream into a file, starting from the current position of the file.
+     *
+     * @param input Stream of the connection, which may already contain some buffered file data
+     * @param fileChannel File to receive the data
+     * @return Number of received bytes
+     * @throws IOException If receiving has failed
+     */
+    public static long receive(InputStream input, FileChannel fileChannel) throws IOException {
+        if (!(input instanceof MessageInputStream) || ((MessageInputStream) input).getChannel() == null) {
+            return copy(input, Channels.newOutputStream(fileChannel));
+        }
+
+        MessageInputStream messageInputStream = (MessageInputStream) input;
+        long numberOfReceivedBytes = messageInputStream.transferBufferedBytes(fileChannel);
+
+        if (!messageInputStream.isEndOfStream()) {
+            ReadableByteChannel channel = messageInputStream.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+            int numberOfBytes = 0;
+
+            while ((numberOfBytes = channel.read(buffer)) != -1) {
+                numberOfReceivedBytes += numberOfBytes;
+
+                if (!buffer.hasRemaining()) {
+                    buffer.flip();
+                    write(buffer, fileChannel);
+                    buffer.clear();
+                }
+            }
+
+            buffer.flip();
+            write(buffer, fileChannel);
+        }
+
+        return numberOfReceivedBytes;
+    }
+
+    /**
+     * Copies all the data remaining in input stream into output stream through a single large buffer.
+     * Output is flushed only once, after all the data is written.
+     *
+     * @param input Stream to be read until its end
+     * @param output Stream to receive the data
+     * @return Number of copied bytes
+     * @throws IOException If reading or writing has failed
+     */
+    public static long copy(InputStream input, OutputStream output) throws IOException {
+        return copy(input, output, Long.MAX_VALUE);
+    }
+
+    /**
+     * Copies up to specified number of bytes from input stream into output stream through a single large buffer.
+     * Output is flushed only once, after all the data is written.
+     *
+     * @param input Stream to be read
+     * @param output Stream to receive the data
+     * @param length Maximal number of bytes to be copied
+     * @return Number of copied bytes
+     * @throws IOException If reading or writing has failed
+     */
+    public static long copy(InputStream input, OutputStream output, long length) throws IOException {
+        byte[] buffer = new byte[bufferSize];
+        long numberOfCopiedBytes = 0L;
+        int numberOfBytesInBuffer = 0;
+
+        while (numberOfCopiedBytes < length
+            && (numberOfBytesInBuffer = input.read(buffer, 0, (int) Math.min(buffer.length, length - numberOfCopiedBytes))) > 0) {
+            output.write(buffer, 0, numberOfBytesInBuffer);
+            numberOfCopiedBytes += numberOfBytesInBuffer;
+        }
+
+        output.flush();
+
+        return numberOfCopiedBytes;
+    }
+
+    /**
+     * Moves a range of file into specified channel.
+     *
+     * @param source File channel to be read
+     * @param offset Position of the first byte to be moved
+     * @param length Number of bytes to be moved
+     * @param destination Channel to receive the data
+     * @return Number of moved bytes
+     * @throws IOException If transfer has failed
+     */
+    private static long transfer(FileChannel source, long offset, long length, WritableByteChannel destination) throws IOException {
+        long end = Math.min(offset + length, source.size());
+        long position = offset;
+
+        while (position < end) {
+            long numberOfBytes = source.transferTo(position, Math.min(end - position, MAXIMAL_TRANSFER_SIZE), destination);
+
+            if (numberOfBytes > 0L) {
+                position += numberOfBytes;
+            } else {
+                // Safety against files truncated during transfer
+                break;
+            }
+        }
+
+        return position - offset;
+    }
+
+    /**
+     * Writes the whole content of a buffer into specified channel.
+     *
+     * @param buffer Buffer with data
+     * @param channel Channel to receive the data
+     * @throws IOException If writing has failed
+     */
+    static void write(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package com.nokia.ci.tas.commons;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Buffered input stream used for reading XML messages line after line.
+ *
+ * The underlying stream is read in bulk into a reusable buffer, and lines are decoded from that buffer as UTF-8.
+ * All the bytes which were read from the underlying stream but not consumed as lines
+ * are still available through the usual read() methods, so the binary file data
+ * following an XML message is never lost.
+ *
+ * When the underlying connection has a channel, the file data following a message
+ * can be moved directly from that channel once the buffered bytes are consumed.
+ */
+public class MessageInputStream extends FilterInputStream {
+
+    /**
+     * Charset of all XML messages.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Initial size of the buffer.
+     */
+    private static final int INITIAL_BUFFER_SIZE = 2 * Constant.DEFAULT_BUFFER_SIZE;
+
+    /**
+     * Buffer with data read from the underlying stream.
+     */
+    private byte[] buffer;
+
+    /**
+     * Position of the first unconsumed byte in the buffer.
+     */
+    private int position = 0;
+
+    /**
+     * Position following the last valid byte in the buffer.
+     */
+    private int limit = 0;
+
+    /**
+     * Tells whenever the underlying stream has ended.
+     */
+    private boolean isEndOfStream = false;
+
+    /**
+     * Channel of the underlying connection or null if connection has no channel.
+     */
+    private ReadableByteChannel channel;
+
+    /**
+     * Creates a buffered message stream over specified input stream.
+     *
+     * @param inputStream Underlying input stream
+     */
+    public MessageInputStream(InputStream inputStream) {
+        this(inputStream, null);
+    }
+
+    /**
+     * Creates a buffered message stream over specified input stream and the channel it reads from.
+     *
+     * @param inputStream Underlying input stream
+     * @param channel Channel of the underlying connection or null if connection has no channel
+     */
+    public MessageInputStream(InputStream inputStream, ReadableByteChannel channel) {
+        super(inputStream);
+        this.channel = channel;
+        buffer = new byte[INITIAL_BUFFER_SIZE];
+    }
+
+    /**
+     * Returns channel of the underlying connection.
+     *
+     * @return Channel of the underlying connection or null if connection has no channel
+     */
+    public ReadableByteChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Tells whenever the underlying stream is known to be ended.
+     *
+     * @return True if the underlying stream has ended
+     */
+    public boolean isEndOfStream() {
+        return isEndOfStream;
+    }
+
+    /**
+     * Writes all the bytes read from the underlying stream but not yet consumed into specified channel.
+     * After that all the following data can be read directly from the underlying stream or channel.
+     *
+     * @param target Channel to receive the buffered bytes
+     * @return Number of written bytes
+     * @throws IOException If writing has failed
+     */
+    public int transferBufferedBytes(WritableByteChannel target) throws IOException {
+        int numberOfBytes = limit - position;
+
+        if (numberOfBytes > 0) {
+            FileTransfer.write(ByteBuffer.wrap(buffer, position, numberOfBytes), target);
+            position = limit;
+        }
+
+        return numberOfBytes;
+    }
+
+    /**
+     * Returns specified stream as a message stream, wrapping it only when necessary.
+     *
+     * @param inputStream Input stream
+     * @return Message stream reading from specified stream
+     */
+    public static MessageInputStream wrap(InputStream inputStream) {
+        if (inputStream instanceof MessageInputStream) {
+            return (MessageInputStream) inputStream;
+        }
+
+        return new MessageInputStream(inputStream);
+    }
+
+    /**
+     * Reads a single line ended with the new-line symbol.
+     *
+     * @return A line without the new-line symbol or null if stream has ended before any data
+     * @throws IOException If reading has failed
+     */
+    public String readLine() throws IOException {
+        int endOfLine = findEndOfLine();
+
+        if (endOfLine == -1) {
+            if (position == limit) {
+                return null;
+            }
+
+            // The last line of the stream has no new-line symbol
+            String line = new String(buffer, position, limit - position, UTF_8);
+            position = limit;
+            return line;
+        }
+
+        String line = new String(buffer, position, endOfLine - position, UTF_8);
+        position = endOfLine + 1;
+        return line;
+    }
+
+    /**
+     * Returns the next line without consuming it.
+     *
+     * @return The next line without the new-line symbol or null if stream has ended before any data
+     * @throws IOException If reading has failed
+     */
+    public String peekLine() throws IOException {
+        int endOfLine = findEndOfLine();
+
+        if (endOfLine == -1) {
+            if (position == limit) {
+                return null;
+            }
+
+            return new String(buffer, position, limit - position, UTF_8);
+        }
+
+        return new String(buffer, position, endOfLine - position, UTF_8);
+    }
+
+    /**
+     * Returns the next byte without consuming it.
+     *
+     * @return The next byte or -1 if stream has ended
+     * @throws IOException If reading has failed
+     */
+    public int peek() throws IOException {
+        if (position == limit && !isEndOfStream) {
+            position = 0;
+            limit = 0;
+
+            int numberOfReadBytes = in.read(buffer, 0, buffer.length);
+
+            if (numberOfReadBytes == -1) {
+                isEndOfStream = true;
+            } else {
+                limit = numberOfReadBytes;
+            }
+        }
+
+        if (position < limit) {
+            return buffer[position] & 0xFF;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Finds position of the next new-line symbol, reading more data if necessary.
+     *
+     * @return Position of the next new-line symbol in the buffer or -1 if stream has ended before it
+     * @throws IOException If reading has failed
+     */
+    private int findEndOfLine() throws IOException {
+        int scanned = position;
+
+        while (true) {
+            for (int i = scanned; i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    return i;
+                }
+            }
+
+            scanned = limit;
+
+            if (isEndOfStream) {
+                return -1;
+            }
+
+            // Make space for more data
+            if (limit == buffer.length) {
+                if (position > 0) {
+                    System.arraycopy(buffer, position, buffer, 0, limit - position);
+                    scanned -= position;
+                    limit -= position;
+                    position = 0;
+                } else {
+                    byte[] largerBuffer = new byte[buffer.length * 2];
+                    System.arraycopy(buffer, 0, largerBuffer, 0, limit);
+                    buffer = largerBuffer;
+                }
+            }
+
+            int numberOfReadBytes = in.read(buffer, limit, buffer.length - limit);
+
+            if (numberOfReadBytes == -1) {
+                isEndOfStream = true;
+            } else {
+                limit += numberOfReadBytes;
+            }
+        }
+    }
+
+    /**
+     * Reads a single byte, taking buffered bytes first.
+     *
+     * @return The next byte or -1 if stream has ended
+     * @throws IOException If reading has failed
+     */
+    @Override
+    public int read() throws IOException {
+        if (position < limit) {
+            return buffer[position++] & 0xFF;
+        }
+
+        if (isEndOfStream) {
+            return -1;
+        }
+
+        return in.read();
+    }
+
+    /**
+     * Reads a number of bytes, taking buffered bytes first.
+     *
+     * @param bytes Destination array
+     * @param offset Offset in the destination array
+     * @param length Maximal number of bytes to be read
+     * @return Number of read bytes or -1 if stream has ended
+     * @throws IOException If reading has failed
+     */
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+
+        if (position < limit) {
+            int numberOfBytes = Math.min(length, limit - position);
+            System.arraycopy(buffer, position, bytes, offset, numberOfBytes);
+            position += numberOfBytes;
+            return numberOfBytes;
+        }
+
+        if (isEndOfStream) {
+            return -1;
+        }
+
+        return in.read(bytes, offset, length);
+    }
+
+    /**
+     * Skips a number of bytes, taking buffered bytes first.
+     *
+     * @param number Number of bytes to be skipped
+     * @return Number of actually skipped bytes
+     * @throws IOException If reading has failed
+     */
+    @Override
+    public long skip(long number) throws IOException {
+        if (number <= 0L) {
+            return 0L;
+        }
+
+        if (position < limit) {
+            int numberOfBytes = (int) Math.min(number, (long) (limit - position));
+            position += numberOfBytes;
+            return numberOfBytes;
+        }
+
+        return in.skip(number);
+    }
+
+    /**
+     * Returns number of bytes available without blocking.
+     *
+     * @return Number of bytes available without blocking
+     * @throws IOException If underlying stream has failed
+     */
+    @Override
+    public int available() throws IOException {
+        return (limit - position) + (isEndOfStream ? 0 : in.available());
+    }
+
+    /**
+     * Marks are not supported by message streams.
+     *
+     * @return Always false
+     */
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Marks are not supported by message streams.
+     *
+     * @param readLimit Ignored
+     */
+    @Override
+    public void mark(int readLimit) {
+        // Not supported
+    }
+
+    /**
+     * Marks are not supported by message streams.
+     *
+     * @throws IOException Always
+     */
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("Marks are not supported by message streams");
+    }
+}
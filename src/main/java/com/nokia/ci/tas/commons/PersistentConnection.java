@@ -0,0 +1,492 @@
+package com.nokia.ci.tas.commons;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import com.nokia.ci.tas.commons.message.Message;
+import com.nokia.ci.tas.commons.message.RegistryOperation;
+
+/**
+ * Long-lived outgoing connection to a single remote part of the Test Automation Service.
+ *
+ * Instead of opening a new socket for each message, persistent connection keeps one socket open
+ * and sends all messages addressed to the same remote part over it.
+ *
+ * The protocol used over persistent connections:
+
+    TAS-PERSISTENT-CONNECTION/1          <- Sender opens connection with the header line
+    TAS-PERSISTENT-CONNECTION/1          <- Receiver confirms that it supports persistent connections
+    [4 bytes length][length bytes]       <- Each message is a frame with UTF-8 encoded XML representation of the message
+                                            or with its binary representation, if remote part has negotiated it
+    [1 byte acknowledgement]             <- Receiver acknowledges each frame before handling it
+    [4 bytes zero length]                <- Frame of zero length is a connection check, which is also acknowledged
+       ...
+
+ * If remote part doesn't confirm the header line, it is treated as a legacy one
+ * and all messages are send to it over single-use connections, just like before.
+ *
+ * Broken connections are re-established automatically, with exponentially growing delays between failed attempts.
+ *
+ * Binary encoding of messages is only used after remote part has confirmed it is able to read it
+ * by the means of registry operations, and never for legacy remote parts.
+ */
+public class PersistentConnection {
+
+    /**
+     * Header line opening all persistent connections.
+     */
+    public static final String HEADER = "TAS-PERSISTENT-CONNECTION/1";
+
+    /**
+     * Byte used by receiver for acknowledging received frames.
+     */
+    public static final int ACKNOWLEDGEMENT = 0x06;
+
+    /**
+     * Maximal size of a single frame in bytes.
+     */
+    public static final int MAXIMAL_FRAME_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Timeout for opening a socket to the remote part.
+     */
+    public static final int CONNECTION_TIMEOUT = (int) Constant.FIVE_SECONDS;
+
+    /**
+     * Timeout for the receiver to confirm the header line.
+     */
+    public static final int HANDSHAKE_TIMEOUT = (int) Constant.FIVE_SECONDS;
+
+    /**
+     * Timeout for the receiver to acknowledge a single frame.
+     */
+    public static final int ACKNOWLEDGEMENT_TIMEOUT = (int) Constant.THIRTY_SECONDS;
+
+    /**
+     * Period of inactivity after which receiver closes persistent connection.
+     */
+    public static final int IDLE_TIMEOUT = (int) Constant.FIFTEEN_MINUTES;
+
+    /**
+     * Initial delay before re-connection after a failed connection attempt.
+     */
+    public static final long INITIAL_RECONNECTION_DELAY = Constant.ONE_SECOND;
+
+    /**
+     * Maximal delay before re-connection after a failed connection attempt.
+     */
+    public static final long MAXIMAL_RECONNECTION_DELAY = Constant.THIRTY_SECONDS;
+
+    /**
+     * Period after which remote part detected as a legacy one will be checked again for persistent connections support.
+     */
+    public static final long LEGACY_PEER_RECHECKING_PERIOD = Constant.ONE_HOUR;
+
+    /**
+     * Hostname of the remote part.
+     */
+    private String hostname;
+
+    /**
+     * Port number of the remote part.
+     */
+    private int port;
+
+    /**
+     * Currently open socket or null if connection is not established.
+     */
+    private Socket socket;
+
+    /**
+     * Output stream of currently open socket.
+     */
+    private DataOutputStream output;
+
+    /**
+     * Input stream of currently open socket.
+     */
+    private InputStream input;
+
+    /**
+     * Tells whenever remote part doesn't support persistent connections.
+     */
+    private boolean isLegacyPeer = false;
+
+    /**
+     * Tells whenever messages should be send in the binary encoding.
+     */
+    private boolean isBinaryEncodingEnabled = false;
+
+    /**
+     * A moment of time when remote part was detected as a legacy one.
+     */
+    private long timeOfLegacyPeerDetection = 0L;
+
+    /**
+     * Current delay before the next connection attempt.
+     */
+    private long reconnectionDelay = INITIAL_RECONNECTION_DELAY;
+
+    /**
+     * A moment of time before which no connection attempts are performed.
+     */
+    private long timeOfNextConnectionAttempt = 0L;
+
+    /**
+     * Total number of sockets opened by this connection.
+     */
+    private long numberOfOpenedSockets = 0L;
+
+    /**
+     * Total number of messages send over this connection.
+     */
+    private long numberOfSendMessages = 0L;
+
+    /**
+     * Creates a persistent connection to specified remote part.
+     * The socket itself will be opened on the first send.
+     *
+     * @param hostname Hostname of the remote part
+     * @param port Port number of the remote part
+     */
+    public PersistentConnection(String hostname, int port) {
+        this.hostname = hostname;
+        this.port = port;
+    }
+
+    /**
+     * Returns hostname of the remote part.
+     *
+     * @return Hostname of the remote part
+     */
+    public String getHostname() {
+        return hostname;
+    }
+
+    /**
+     * Returns port number of the remote part.
+     *
+     * @return Port number of the remote part
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Sends specified message to the remote part.
+     * If remote part will not acknowledge the message, an exception is thrown
+     * and the sender may decide to try sending it again.
+     *
+     * @param message Message to be send
+     * @throws IOException If message couldn't be delivered
+     */
+    public synchronized void send(Message message) throws IOException {
+        deliver(message);
+    }
+
+    /**
+     * Checks that remote part is still accessible.
+     *
+     * @throws IOException If remote part is not accessible
+     */
+    public synchronized void check() throws IOException {
+        deliver(null);
+    }
+
+    /**
+     * Enables or disables sending of messages in the binary encoding.
+     *
+     * @param isBinaryEncodingEnabled True if remote part has confirmed it reads binary messages or false otherwise
+     */
+    public synchronized void setBinaryEncodingEnabled(boolean isBinaryEncodingEnabled) {
+        this.isBinaryEncodingEnabled = isBinaryEncodingEnabled;
+    }
+
+    /**
+     * Tells whenever messages are send in the binary encoding.
+     *
+     * @return True if messages are send in the binary encoding or false otherwise
+     */
+    public synchronized boolean isBinaryEncodingEnabled() {
+        return isBinaryEncodingEnabled;
+    }
+
+    /**
+     * Delivers specified message or a connection check to the remote part.
+     *
+     * @param message Message to be send or null for a connection check
+     * @throws IOException If message couldn't be delivered
+     */
+    private void deliver(Message message) throws IOException {
+
+        if (isLegacyPeer && (System.currentTimeMillis() - timeOfLegacyPeerDetection) > LEGACY_PEER_RECHECKING_PERIOD) {
+            // Remote part may have been updated meanwhile
+            isLegacyPeer = false;
+        }
+
+        boolean wasConnected = (socket != null);
+
+        if (!wasConnected) {
+            connect();
+        }
+
+        if (isLegacyPeer) {
+            sendOverSingleUseConnection(message);
+            return;
+        }
+
+        byte[] data = encode(message);
+
+        try {
+            writeFrame(data);
+        } catch (IOException e) {
+            close();
+
+            if (!wasConnected) {
+                throw e;
+            }
+
+            // Remote part has most probably closed an idle connection, so try once again over a fresh one
+            connect();
+
+            if (isLegacyPeer) {
+                sendOverSingleUseConnection(message);
+                return;
+            }
+
+            try {
+                writeFrame(data);
+            } catch (IOException ioe) {
+                close();
+                throw ioe;
+            }
+        }
+    }
+
+    /**
+     * Encodes specified message for sending over a persistent connection.
+     * Registry operations are always encoded in XML, since they are used in negotiating the encoding.
+     *
+     * @param message Message to be encoded or null for a connection check
+     * @return Frame data
+     * @throws IOException If message couldn't be encoded
+     */
+    private byte[] encode(Message message) throws IOException {
+        if (message == null) {
+            return new byte[0];
+        }
+
+        if (isBinaryEncodingEnabled && !(message instanceof RegistryOperation)) {
+            return BinaryMessageCodec.encode(message);
+        }
+
+        return message.toXML().getBytes("UTF-8");
+    }
+
+    /**
+     * Writes a single frame into currently open connection and waits for its acknowledgement.
+     *
+     * @param data Frame data to be written
+     * @throws IOException If frame wasn't acknowledged
+     */
+    private void writeFrame(byte[] data) throws IOException {
+        output.writeInt(data.length);
+        output.write(data);
+        output.flush();
+
+        int acknowledgement = input.read();
+
+        if (acknowledgement != ACKNOWLEDGEMENT) {
+            throw new IOException("Remote part at " + hostname + ":" + port + " hasn't acknowledged the message");
+        }
+
+        if (data.length > 0) {
+            numberOfSendMessages++;
+        }
+    }
+
+    /**
+     * Opens a new connection to the remote part and performs the handshake.
+     * No connection attempts are made until the delay after the last failed attempt is over,
+     * so that callers would fail fast and retry the sending later on their own.
+     *
+     * @throws IOException If connection couldn't be established or re-connection is postponed
+     */
+    private void connect() throws IOException {
+        long delay = timeOfNextConnectionAttempt - System.currentTimeMillis();
+
+        if (delay > 0L) {
+            throw new IOException("Re-connection to " + hostname + ":" + port + " is postponed for " + delay + " ms after a failed attempt");
+        }
+
+        if (isLegacyPeer) {
+            return;
+        }
+
+        Socket newSocket = null;
+
+        try {
+            newSocket = openSocket();
+            newSocket.setSoTimeout(HANDSHAKE_TIMEOUT);
+
+            OutputStream newOutput = newSocket.getOutputStream();
+            newOutput.write((HEADER + "\n").getBytes("UTF-8"));
+            newOutput.flush();
+
+            String reply = null;
+
+            try {
+                reply = readLine(newSocket.getInputStream());
+            } catch (IOException e) {
+                // Legacy parts are simply not replying
+            }
+
+            if (!HEADER.equals(reply)) {
+                // Remote part doesn't support persistent connections
+                newSocket.close();
+
+                isLegacyPeer = true;
+                timeOfLegacyPeerDetection = System.currentTimeMillis();
+                reconnectionDelay = INITIAL_RECONNECTION_DELAY;
+                timeOfNextConnectionAttempt = 0L;
+
+                return;
+            }
+
+            newSocket.setSoTimeout(ACKNOWLEDGEMENT_TIMEOUT);
+
+            socket = newSocket;
+            output = new DataOutputStream(newOutput);
+            input = newSocket.getInputStream();
+
+            reconnectionDelay = INITIAL_RECONNECTION_DELAY;
+            timeOfNextConnectionAttempt = 0L;
+
+        } catch (IOException e) {
+            if (newSocket != null) {
+                try {
+                    newSocket.close();
+                } catch (Exception ce) {
+                    // Ignore
+                }
+            }
+
+            // Postpone the next connection attempt
+            timeOfNextConnectionAttempt = System.currentTimeMillis() + reconnectionDelay;
+            reconnectionDelay = Math.min(reconnectionDelay * 2L, MAXIMAL_RECONNECTION_DELAY);
+
+            throw e;
+        }
+    }
+
+    /**
+     * Sends specified message to a legacy remote part over a single-use connection.
+     * Legacy remote parts are always receiving messages in XML.
+     *
+     * @param message Message to be send or null for a connection check
+     * @throws IOException If message couldn't be send
+     */
+    private void sendOverSingleUseConnection(Message message) throws IOException {
+        byte[] data = (message != null) ? message.toXML().getBytes("UTF-8") : new byte[0];
+
+        Socket singleUseSocket = openSocket();
+
+        try {
+            OutputStream singleUseOutput = singleUseSocket.getOutputStream();
+            singleUseOutput.write(data);
+            singleUseOutput.flush();
+            singleUseOutput.close();
+
+            if (data.length > 0) {
+                numberOfSendMessages++;
+            }
+        } finally {
+            singleUseSocket.close();
+        }
+    }
+
+    /**
+     * Opens a new socket to the remote part.
+     *
+     * @return Opened socket
+     * @throws IOException If socket couldn't be opened
+     */
+    private Socket openSocket() throws IOException {
+        Socket newSocket = new Socket();
+        newSocket.setTcpNoDelay(true); // Less buffering, more packets
+        newSocket.connect(new InetSocketAddress(InetAddress.getByName(hostname), port), CONNECTION_TIMEOUT);
+        numberOfOpenedSockets++;
+        return newSocket;
+    }
+
+    /**
+     * Closes currently open socket, if any.
+     * The next send will automatically re-establish the connection.
+     */
+    public synchronized void close() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (Exception e) {
+                // Ignore
+            }
+        }
+
+        socket = null;
+        output = null;
+        input = null;
+    }
+
+    /**
+     * Returns total number of sockets opened by this connection.
+     *
+     * @return Total number of sockets opened by this connection
+     */
+    public synchronized long getNumberOfOpenedSockets() {
+        return numberOfOpenedSockets;
+    }
+
+    /**
+     * Returns total number of messages send over this connection.
+     *
+     * @return Total number of messages send over this connection
+     */
+    public synchronized long getNumberOfSendMessages() {
+        return numberOfSendMessages;
+    }
+
+    /**
+     * Reads a single line ended with the new-line symbol from specified input stream.
+     * The stream is read byte after byte, so no data following the line will be consumed.
+     *
+     * @param inputStream Input stream to read from
+     * @return A line without the new-line symbol or null if stream has ended before any data
+     * @throws IOException If reading has failed
+     */
+    public static String readLine(InputStream inputStream) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int ch = -1;
+
+        do {
+            ch = inputStream.read();
+
+            if (ch != '\n' && ch != -1) {
+                line.append((char) ch);
+            } else {
+                break;
+            }
+        } while (ch != -1);
+
+        if (ch == -1 && line.length() == 0) {
+            return null;
+        }
+
+        return line.toString();
+    }
+}
@@ -0,0 +1,17 @@
+package com.nokia.ci.tas.commons;
+
+import java.io.InputStream;
+
+/**
+ * This interface must be implemented by all parts accepting persistent connections.
+ */
+public interface PersistentConnectionListener {
+
+    /**
+     * Called for each message received over a persistent connection.
+     *
+     * @param inputStream Input stream containing XML representation of received message
+     * @param connection Persistent connection this message was received from
+     */
+    public void messageReceived(InputStream inputStream, PersistentConnectionReader connection);
+}
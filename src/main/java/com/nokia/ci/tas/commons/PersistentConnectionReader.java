@@ -0,0 +1,169 @@
+package com.nokia.ci.tas.commons;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+/**
+ * Reads all messages send by remote part over a single persistent connection.
+ *
+ * Reader is started once remote part has issued the persistent connection header line
+ * and keeps running until remote part closes the connection or remains idle for too long.
+ */
+public class PersistentConnectionReader extends Thread {
+
+    /**
+     * Accepted connection.
+     */
+    private Socket connection;
+
+    /**
+     * Listener of all messages received over this connection.
+     */
+    private PersistentConnectionListener listener;
+
+    /**
+     * Variable which keeps reader running.
+     * Written under the reader's lock by stopWorking() and read without it by the reader's own thread.
+     */
+    private volatile boolean isRunning = true;
+
+    /**
+     * Total number of messages received over this connection.
+     */
+    private long numberOfReceivedMessages = 0L;
+
+    /**
+     * Default constructor.
+     *
+     * @param connection Accepted connection, which has already issued the persistent connection header line
+     * @param listener Listener of all messages received over this connection
+     */
+    public PersistentConnectionReader(Socket connection, PersistentConnectionListener listener) {
+        super(); // Start as anonymous thread
+
+        this.connection = connection;
+        this.listener = listener;
+
+        setDaemon(true);
+    }
+
+    /**
+     * Reader's main routine.
+     */
+    @Override
+    public void run() {
+        try {
+            connection.setSoTimeout(PersistentConnection.IDLE_TIMEOUT);
+
+            DataInputStream input = new DataInputStream(connection.getInputStream());
+            OutputStream output = connection.getOutputStream();
+
+            // Confirm that persistent connections are supported
+            output.write((PersistentConnection.HEADER + "\n").getBytes("UTF-8"));
+            output.flush();
+
+            while (isRunning) {
+                int length = 0;
+
+                try {
+                    length = input.readInt();
+                } catch (EOFException e) {
+                    // Remote part has closed the connection
+                    break;
+                } catch (SocketTimeoutException e) {
+                    // Remote part has been idle for too long
+                    break;
+                }
+
+                if (length < 0 || length > PersistentConnection.MAXIMAL_FRAME_SIZE) {
+                    p("Remote part at " + getRemoteAddress() + " has send a frame of unsupported length " + length);
+                    break;
+                }
+
+                byte[] frame = new byte[length];
+                input.readFully(frame);
+
+                // Acknowledge the frame before handling it, so the remote part could continue sending
+                output.write(PersistentConnection.ACKNOWLEDGEMENT);
+                output.flush();
+
+                if (length > 0) {
+                    incrementNumberOfReceivedMessages();
+                    listener.messageReceived(new ByteArrayInputStream(frame), this);
+                }
+            }
+        } catch (Exception e) {
+            if (isRunning) {
+                p("Got troubles while reading persistent connection from " + getRemoteAddress() + " - " + e.getClass() + " - " + e.getMessage());
+            }
+        } finally {
+            try {
+                connection.close();
+            } catch (Exception e) {
+                // Ignore
+            }
+        }
+    }
+
+    /**
+     * Returns connection handled by this reader.
+     *
+     * @return Connection handled by this reader
+     */
+    public Socket getConnection() {
+        return connection;
+    }
+
+    /**
+     * Returns total number of messages received over this connection.
+     *
+     * @return Total number of messages received over this connection
+     */
+    public synchronized long getNumberOfReceivedMessages() {
+        return numberOfReceivedMessages;
+    }
+
+    /**
+     * Counts a single received message.
+     */
+    private synchronized void incrementNumberOfReceivedMessages() {
+        numberOfReceivedMessages++;
+    }
+
+    /**
+     * Stops reader running and closes the connection.
+     */
+    public synchronized void stopWorking() {
+        isRunning = false;
+
+        try {
+            connection.close();
+        } catch (Exception e) {
+            // Ignore
+        }
+    }
+
+    /**
+     * Returns address of the remote part in textual form.
+     *
+     * @return Address of the remote part
+     */
+    private String getRemoteAddress() {
+        return connection.getInetAddress().getHostName() + ":" + connection.getPort();
+    }
+
+    /**
+     * Print specified text on debugging output stream.
+     *
+     * @param text A text to be printed on debugging output stream
+     */
+    private void p(String text) {
+        System.out.println("PersistentConnectionReader: " + text);
+    }
+}
@@ -1217,6 +1217,64 @@ public class Product {
         return false;
     }
 
+    /**
+     * Returns a hash of the product description, which is maintained by the Test Automation Communicator.
+     * Only the parts send in messages are taken into account, so the same product has the same hash on both sides.
+     *
+     * @return A hash of the product description
+     */
+    public long getDescriptionHash() {
+        StringBuilder description = new StringBuilder();
+
+        description.append(imei).append('|').append(rmCode).append('|').append(hardwareType).append('|').append(role).append('|');
+        description.append(sn).append('|').append(swVer).append('|').append(fingerprint).append('|').append(productCode).append('|');
+        description.append(hostname).append('|').append(ipAddress).append('|').append(port).append('|').append(environment).append('|');
+        description.append(testAutomationServiceHostname).append('|').append(testAutomationServicePort).append('|');
+
+        if (sim1 != null) {
+            description.append(sim1.toXML());
+        }
+
+        description.append('|');
+
+        if (sim2 != null) {
+            description.append(sim2.toXML());
+        }
+
+        return hash(description);
+    }
+
+    /**
+     * Returns a hash of the product status and reservation, which are maintained by the Test Automation Service.
+     *
+     * @return A hash of the product status and reservation
+     */
+    public long getStatusHash() {
+        StringBuilder status = new StringBuilder();
+
+        status.append(imei).append('|').append(this.status).append('|').append(statusDetails).append('|');
+        status.append(reservationTime).append('|').append(reservationTimeout);
+
+        return hash(status);
+    }
+
+    /**
+     * Returns a 64-bit FNV-1a hash of specified characters.
+     *
+     * @param characters Characters to be hashed
+     * @return A 64-bit hash of the characters
+     */
+    private static long hash(CharSequence characters) {
+        long hash = 0xcbf29ce484222325L;
+
+        for (int i = 0; i < characters.length(); i++) {
+            hash ^= characters.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        return hash;
+    }
+
     /**
      * Returns a textual representation of the object.
      *
@@ -0,0 +1,200 @@
+package com.nokia.ci.tas.commons;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import com.nokia.ci.tas.commons.message.ProductOperation;
+
+/**
+ * Keeps track of products synchronized between the Test Automation Communicator and the Test Automation Service.
+ *
+ * Each side is responsible for its own part of the products: the communicator for product descriptions,
+ * the service for product statuses and reservations. A sync operation carries only the products whose part
+ * has changed since the previous sync, together with a digest of all the products. The receiver compares the digest
+ * against its own copies of the products and asks for a full sync only if they are different.
+ */
+public class ProductSync {
+
+    /**
+     * Parts of the products synchronized by a side.
+     *
+     * DESCRIPTION - Product descriptions, maintained by the Test Automation Communicator
+     * STATUS      - Product statuses and reservations, maintained by the Test Automation Service
+     */
+    public enum Part {
+        DESCRIPTION,
+        STATUS
+    };
+
+    /**
+     * Part of the products send by this side.
+     */
+    private Part part;
+
+    /**
+     * Sequence number of the next sync operation.
+     * Starts from the current time, so sync operations send after a restart are never considered as stale ones.
+     */
+    private long sequenceNumber;
+
+    /**
+     * Sequence number of the last sync operation received from the other side.
+     */
+    private long lastReceivedSequenceNumber = 0L;
+
+    /**
+     * Hashes of the products as they were send with the last sync operations, stored by IMEI codes.
+     */
+    private HashMap<String, Long> sendHashes;
+
+    /**
+     * True if the next sync operation should carry all the products.
+     */
+    private boolean isFullSyncRequested = true;
+
+    /**
+     * Constructor.
+     *
+     * @param part Part of the products send by this side
+     */
+    public ProductSync(Part part) {
+        this.part = part;
+        sequenceNumber = System.currentTimeMillis();
+        sendHashes = new HashMap<String, Long>(0);
+    }
+
+    /**
+     * Creates a sync operation carrying the products changed since the previous sync operation,
+     * or all of them if a full sync was requested.
+     *
+     * @param products All the products of a test node
+     * @return Sync operation
+     */
+    public synchronized ProductOperation createSync(Collection<Product> products) {
+        List<Product> syncedProducts = new ArrayList<Product>(0);
+        boolean isFullSync = isFullSyncRequested;
+
+        if (isFullSync) {
+            sendHashes.clear();
+            isFullSyncRequested = false;
+        }
+
+        HashSet<String> imeis = new HashSet<String>();
+
+        for (Product product : products) {
+            if (!isSynced(product)) {
+                continue;
+            }
+
+            Long hash = Long.valueOf(getHash(product, part));
+            imeis.add(product.getIMEI());
+
+            if (isFullSync || !hash.equals(sendHashes.get(product.getIMEI()))) {
+                syncedProducts.add(product);
+                sendHashes.put(product.getIMEI(), hash);
+            }
+        }
+
+        // Forget the products which are gone
+        sendHashes.keySet().retainAll(imeis);
+
+        ProductOperation syncProductOperation = new ProductOperation(syncedProducts, sequenceNumber++);
+        syncProductOperation.setFullSync(isFullSync);
+        syncProductOperation.setNumberOfProducts(imeis.size());
+        syncProductOperation.setDigest(getDigest(products, part));
+
+        return syncProductOperation;
+    }
+
+    /**
+     * Makes the next sync operation carry all the products.
+     */
+    public synchronized void requestFullSync() {
+        isFullSyncRequested = true;
+    }
+
+    /**
+     * Tells whenever specified sync operation received from the other side should be handled.
+     * Sync operations having smaller sequence numbers than the last received one are stale.
+     *
+     * @param syncProductOperation Received sync operation
+     * @return True if sync operation should be handled or false if it is stale
+     */
+    public synchronized boolean accept(ProductOperation syncProductOperation) {
+        if (syncProductOperation.getSequenceNumber() <= lastReceivedSequenceNumber) {
+            return false;
+        }
+
+        lastReceivedSequenceNumber = syncProductOperation.getSequenceNumber();
+        return true;
+    }
+
+    /**
+     * Tells whenever local copies of the products are matching the digest of specified sync operation.
+     *
+     * @param syncProductOperation Received sync operation
+     * @param products Local copies of the products
+     * @param part Part of the products synchronized by the other side
+     * @return True if local copies of the products are matching the digest or false otherwise
+     */
+    public static boolean matches(ProductOperation syncProductOperation, Collection<Product> products, Part part) {
+        int numberOfProducts = 0;
+
+        for (Product product : products) {
+            if (isSynced(product)) {
+                numberOfProducts++;
+            }
+        }
+
+        return numberOfProducts == syncProductOperation.getNumberOfProducts() && getDigest(products, part) == syncProductOperation.getDigest();
+    }
+
+    /**
+     * Returns a digest of specified part of all the products.
+     * The digest doesn't depend on the order of the products.
+     *
+     * @param products Products to be digested
+     * @param part Part of the products
+     * @return Digest of the products
+     */
+    public static long getDigest(Collection<Product> products, Part part) {
+        long digest = 0L;
+
+        for (Product product : products) {
+            if (isSynced(product)) {
+                digest += getHash(product, part);
+            }
+        }
+
+        return digest;
+    }
+
+    /**
+     * Returns a hash of specified part of the product.
+     *
+     * @param product Product to be hashed
+     * @param part Part of the product
+     * @return Hash of the product part
+     */
+    private static long getHash(Product product, Part part) {
+        if (part == Part.STATUS) {
+            return product.getStatusHash();
+        }
+
+        return product.getDescriptionHash();
+    }
+
+    /**
+     * Tells whenever specified product takes part in synchronization.
+     * Products without IMEI codes are never accepted by the Test Automation Service.
+     *
+     * @param product Product to be examined
+     * @return True if product takes part in synchronization or false otherwise
+     */
+    private static boolean isSynced(Product product) {
+        return product.getIMEI() != null && !product.getIMEI().isEmpty();
+    }
+}
@@ -60,6 +60,9 @@ import java.util.Map;
         <!-- Timeout of the test in milliseconds -->
         <timeout>1234567890</timeout>
 
+        <!-- Priority of the test among the tests of the same issuer, higher priorities are allocated first. Zero by default, when the element is omitted -->
+        <priority>0</priority>
+
         <!-- A list of all files involved in the test, called "test artifacts" in Test Automation Service terminology. Test artifacts also include the executor script, since it is also delivered to the test node. But the executor application is assumed to be a resident of the test node, like Iron Python or Perl. Otherwise it should be also delivered to the test node as one of the test's artifacts -->
         <artifacts>
             <!-- Each test artifact is identificated by the name of corresponding file existing in test's workspace directory -->
@@ -211,6 +214,16 @@ public class Test {
      */
     public static final String XML_ELEMENT_TIMEOUT = "timeout";
 
+    /**
+     * XML tag indicating the priority of the test.
+     */
+    public static final String XML_ELEMENT_PRIORITY = "priority";
+
+    /**
+     * Default priority of a test.
+     */
+    public static final int DEFAULT_PRIORITY = 0;
+
     /**
      * XML tag indicating the name of file which should contain test results.
      */
@@ -455,6 +468,11 @@ public class Test {
      */
     private long timeout = Constant.DEFAULT_TEST_TIMEOUT;
 
+    /**
+     * Priority of the test among the tests of the same issuer. Tests of higher priorities are allocated first.
+     */
+    private int priority = DEFAULT_PRIORITY;
+
     /**
      * Default constructor.
      *
@@ -522,6 +540,7 @@ public class Test {
         this.requiredEnvironment = other.getRequiredEnvironment();
         this.startTime = other.getStartTime();
         this.timeout = other.getTimeout();
+        this.priority = other.getPriority();
 
         this.artifacts = new ArrayList<String>(other.getArtifacts());
         this.requiredProducts = new ArrayList<Product>(other.getRequiredProducts());
@@ -706,6 +725,25 @@ public class Test {
         return timeout;
     }
 
+    /**
+     * Sets priority of the test.
+     * Tests of higher priorities are allocated before the other tests of the same issuer.
+     *
+     * @param priority Priority of the test
+     */
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * Returns priority of the test.
+     *
+     * @return Priority of the test
+     */
+    public int getPriority() {
+        return priority;
+    }
+
     /**
      * Utility method for checking if test has expired or not.
      *
@@ -1043,6 +1081,8 @@ public class Test {
             string.append("\n\t Timeout:                not specified");
         }
 
+        string.append("\n\t Priority:               " + priority);
+
         if (artifacts != null && !artifacts.isEmpty()) {
             string.append("\n\t Has " + artifacts.size() + " artifacts:");
 
@@ -1165,6 +1205,12 @@ public class Test {
         xml.append(indentation + "\t<" + XML_ELEMENT_STATUS_DETAILS + ">" + statusDetails + "</" + XML_ELEMENT_STATUS_DETAILS + ">\n");
         xml.append(indentation + "\t<" + XML_ELEMENT_START_TIME + ">" + startTime + "</" + XML_ELEMENT_START_TIME + ">\n");
         xml.append(indentation + "\t<" + XML_ELEMENT_TIMEOUT + ">" + timeout + "</" + XML_ELEMENT_TIMEOUT + ">\n");
+
+        // Tests of the default priority are described as before priorities were introduced
+        if (priority != DEFAULT_PRIORITY) {
+            xml.append(indentation + "\t<" + XML_ELEMENT_PRIORITY + ">" + priority + "</" + XML_ELEMENT_PRIORITY + ">\n");
+        }
+
         xml.append(indentation + "\t<" + XML_ELEMENT_EXECUTOR_APPLICATION + ">" + executorApplication + "</" + XML_ELEMENT_EXECUTOR_APPLICATION + ">\n");
         xml.append(indentation + "\t<" + XML_ELEMENT_EXECUTOR_SCRIPT + ">" + executorScript + "</" + XML_ELEMENT_EXECUTOR_SCRIPT + ">\n");
 
@@ -0,0 +1,389 @@
+package com.nokia.ci.tas.commons;
+
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Central registry of timeouts, such as test timeouts, product reservation timeouts and product disconnection timeouts.
+ *
+ * Timeouts are kept in a hierarchy of wheels, each having 64 slots. The first wheel has a slot for each tick,
+ * the second one for each 64 ticks and so on. Adding and cancelling of a timeout costs the same no matter how many
+ * timeouts are registered, and on each tick only the timeouts of a single slot are handled. Timeouts of the upper wheels
+ * are moved down to the lower ones when their time is getting close, so each timeout is moved at most once per wheel.
+ *
+ * Expired timeouts are run on the worker threads of the actor runtime, at most one tick after their deadlines.
+ */
+public class TimingWheel {
+
+    /**
+     * Number of bits in a slot index.
+     */
+    private static final int WHEEL_BITS = 6;
+
+    /**
+     * Number of slots in a wheel.
+     */
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+
+    /**
+     * Mask of a slot index.
+     */
+    private static final long WHEEL_MASK = WHEEL_SIZE - 1;
+
+    /**
+     * Number of wheels. With ticks of 100 milliseconds the wheels cover about 19 days,
+     * longer timeouts are simply moved around the last wheel until their time is getting close.
+     */
+    private static final int NUMBER_OF_WHEELS = 4;
+
+    /**
+     * Timeout registered in the timing wheel.
+     */
+    public static class Timeout {
+
+        /**
+         * Task to be run when timeout expires.
+         */
+        private Runnable task;
+
+        /**
+         * Moment of time when timeout expires.
+         */
+        private long deadline;
+
+        /**
+         * Number of the tick when timeout expires.
+         */
+        private long deadlineTick;
+
+        /**
+         * Previous timeout in the same slot.
+         */
+        private Timeout previous;
+
+        /**
+         * Next timeout in the same slot.
+         */
+        private Timeout next;
+
+        /**
+         * True if timeout was cancelled.
+         */
+        private volatile boolean isCancelled = false;
+
+        /**
+         * True if timeout has expired.
+         */
+        private volatile boolean isExpired = false;
+
+        /**
+         * Timing wheel holding this timeout.
+         */
+        private TimingWheel timingWheel;
+
+        /**
+         * Constructor.
+         *
+         * @param timingWheel Timing wheel holding the timeout
+         * @param task Task to be run when timeout expires
+         * @param deadline Moment of time when timeout expires
+         */
+        private Timeout(TimingWheel timingWheel, Runnable task, long deadline) {
+            this.timingWheel = timingWheel;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Returns the moment of time when timeout expires.
+         *
+         * @return Moment of time when timeout expires
+         */
+        public long getDeadline() {
+            return deadline;
+        }
+
+        /**
+         * Cancels the timeout, unless it has already expired.
+         *
+         * @return True if timeout was cancelled or false if it has already expired or was cancelled before
+         */
+        public boolean cancel() {
+            return timingWheel.cancel(this);
+        }
+
+        /**
+         * Tells whenever timeout was cancelled.
+         *
+         * @return True if timeout was cancelled or false otherwise
+         */
+        public boolean isCancelled() {
+            return isCancelled;
+        }
+
+        /**
+         * Tells whenever timeout has expired.
+         *
+         * @return True if timeout has expired or false otherwise
+         */
+        public boolean isExpired() {
+            return isExpired;
+        }
+    }
+
+    /**
+     * Runtime running expired timeouts.
+     */
+    private ActorRuntime runtime;
+
+    /**
+     * Duration of a single tick in milliseconds.
+     */
+    private long tickDuration;
+
+    /**
+     * Moment of time when the first tick has started.
+     */
+    private long startTime;
+
+    /**
+     * Number of the next tick to be handled.
+     */
+    private long nextTick = 0L;
+
+    /**
+     * Heads of the slots in all the wheels. Each head is a sentinel of a circular list of timeouts.
+     */
+    private Timeout[][] slots;
+
+    /**
+     * Number of registered timeouts.
+     */
+    private int numberOfTimeouts = 0;
+
+    /**
+     * Handle of periodic ticks.
+     */
+    private ScheduledFuture<?> ticker;
+
+    /**
+     * Constructor.
+     *
+     * @param runtime Runtime which should run expired timeouts
+     * @param tickDuration Duration of a single tick in milliseconds
+     */
+    public TimingWheel(ActorRuntime runtime, long tickDuration) {
+        this.runtime = runtime;
+        this.tickDuration = Math.max(tickDuration, Constant.MILLISECOND);
+
+        startTime = System.currentTimeMillis();
+
+        slots = new Timeout[NUMBER_OF_WHEELS][WHEEL_SIZE];
+
+        for (int wheel = 0; wheel < NUMBER_OF_WHEELS; wheel++) {
+            for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+                Timeout head = new Timeout(this, null, 0L);
+                head.previous = head;
+                head.next = head;
+                slots[wheel][slot] = head;
+            }
+        }
+
+        ticker = runtime.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }, this.tickDuration);
+    }
+
+    /**
+     * Registers a task to be run at specified moment of time.
+     *
+     * @param task Task to be run when timeout expires
+     * @param deadline Moment of time when timeout expires
+     * @return Registered timeout
+     */
+    public synchronized Timeout scheduleAt(Runnable task, long deadline) {
+        Timeout timeout = new Timeout(this, task, deadline);
+
+        // Never expire before the deadline
+        timeout.deadlineTick = (Math.max(deadline - startTime, 0L) + tickDuration - 1L) / tickDuration;
+
+        add(timeout);
+        numberOfTimeouts++;
+
+        return timeout;
+    }
+
+    /**
+     * Registers a task to be run after specified delay.
+     *
+     * @param task Task to be run when timeout expires
+     * @param delay Delay in milliseconds
+     * @return Registered timeout
+     */
+    public Timeout schedule(Runnable task, long delay) {
+        return scheduleAt(task, System.currentTimeMillis() + delay);
+    }
+
+    /**
+     * Returns the number of registered timeouts.
+     *
+     * @return Number of registered timeouts
+     */
+    public synchronized int size() {
+        return numberOfTimeouts;
+    }
+
+    /**
+     * Stops the ticks. Registered timeouts will never expire.
+     */
+    public void shutdown() {
+        ticker.cancel(false);
+    }
+
+    /**
+     * Cancels specified timeout.
+     *
+     * @param timeout Timeout to be cancelled
+     * @return True if timeout was cancelled or false if it has already expired or was cancelled before
+     */
+    private synchronized boolean cancel(Timeout timeout) {
+        if (timeout.isCancelled || timeout.isExpired) {
+            return false;
+        }
+
+        timeout.isCancelled = true;
+        remove(timeout);
+        numberOfTimeouts--;
+
+        return true;
+    }
+
+    /**
+     * Handles all the ticks which are due by now.
+     */
+    private void tick() {
+        long currentTick = (System.currentTimeMillis() - startTime) / tickDuration;
+
+        while (true) {
+            Timeout expired = null;
+
+            synchronized (this) {
+                if (nextTick > currentTick) {
+                    break;
+                }
+
+                int index = (int) (nextTick & WHEEL_MASK);
+
+                // Move timeouts of the upper wheels down, when the lower wheels have completed a round
+                if (index == 0) {
+                    for (int wheel = 1; wheel < NUMBER_OF_WHEELS; wheel++) {
+                        int upperIndex = (int) ((nextTick >> (wheel * WHEEL_BITS)) & WHEEL_MASK);
+                        cascade(wheel, upperIndex);
+
+                        if (upperIndex != 0) {
+                            break;
+                        }
+                    }
+                }
+
+                // Take all timeouts of the current slot
+                Timeout head = slots[0][index];
+
+                if (head.next != head) {
+                    expired = head.next;
+                    head.previous.next = null;
+                    head.next = head;
+                    head.previous = head;
+                }
+
+                for (Timeout timeout = expired; timeout != null; timeout = timeout.next) {
+                    timeout.isExpired = true;
+                    numberOfTimeouts--;
+                }
+
+                nextTick++;
+            }
+
+            // Run expired timeouts outside of the lock
+            while (expired != null) {
+                Timeout timeout = expired;
+                expired = timeout.next;
+                timeout.previous = null;
+                timeout.next = null;
+
+                runtime.execute(timeout.task);
+            }
+        }
+    }
+
+    /**
+     * Moves all the timeouts of specified slot to the lower wheels.
+     *
+     * @param wheel Index of the wheel
+     * @param index Index of the slot
+     */
+    private void cascade(int wheel, int index) {
+        Timeout head = slots[wheel][index];
+        Timeout timeout = head.next;
+
+        head.next = head;
+        head.previous = head;
+
+        while (timeout != head) {
+            Timeout next = timeout.next;
+            add(timeout);
+            timeout = next;
+        }
+    }
+
+    /**
+     * Puts specified timeout into a slot matching its deadline.
+     *
+     * @param timeout Timeout to be put
+     */
+    private void add(Timeout timeout) {
+        long ticks = timeout.deadlineTick - nextTick;
+        long deadlineTick = timeout.deadlineTick;
+        Timeout head = null;
+
+        if (ticks < 0L) {
+            // Already due, expire on the next tick
+            head = slots[0][(int) (nextTick & WHEEL_MASK)];
+        } else {
+            int wheel = 0;
+
+            while (wheel < NUMBER_OF_WHEELS - 1 && ticks >= (1L << ((wheel + 1) * WHEEL_BITS))) {
+                wheel++;
+            }
+
+            if (ticks >= (1L << (NUMBER_OF_WHEELS * WHEEL_BITS))) {
+                // Too far away, put it to the last slot of the last wheel for now
+                deadlineTick = nextTick + (1L << (NUMBER_OF_WHEELS * WHEEL_BITS)) - 1L;
+            }
+
+            head = slots[wheel][(int) ((deadlineTick >> (wheel * WHEEL_BITS)) & WHEEL_MASK)];
+        }
+
+        timeout.previous = head.previous;
+        timeout.next = head;
+        head.previous.next = timeout;
+        head.previous = timeout;
+    }
+
+    /**
+     * Takes specified timeout out of its slot.
+     *
+     * @param timeout Timeout to be taken out
+     */
+    private void remove(Timeout timeout) {
+        if (timeout.previous != null && timeout.next != null) {
+            timeout.previous.next = timeout.next;
+            timeout.next.previous = timeout.previous;
+        }
+
+        timeout.previous = null;
+        timeout.next = null;
+    }
+}
@@ -24,7 +24,7 @@ import com.nokia.ci.tas.commons.FileDescription;
         </receiver>
         <envelope>
             <!-- Code of the operation a sender would like the receiver to perform on the specified file -->
-            <operation>get | put | abort</operation>
+            <operation>get | put | abort | stored</operation>
             <!-- File operation messages must contain description of related file and possibly related test -->
             <test>
                 <!-- At least test id should be presented to describe the possibly related test -->
@@ -67,20 +67,29 @@ public class FileOperation extends Message {
      */
     public static final String OPERATION_ABORT = "abort";
 
+    /**
+     * Id for indicating that requested file is already stored by the requester.
+     * Namely, when content of the file has the hash mentioned in the "get" file operation.
+     */
+    public static final String OPERATION_STORED = "stored";
+
     /**
      * Enumeration of supported file operation ids.
      *
      * GET - Used in cases when sender requests a copy of described file from the receiver
      * PUT - Used in cases when sender requests receiver to store a copy of specified file and its data
      * ABORT - Used in cases when file operation has failed or cannot be performed for some reasons
+     * STORED - Used in cases when GET file operation has mentioned a content hash, and the file content still has that hash
      *
-     * Any part which has received a GET file operation must reply either with the PUT or ABORT file operations
+     * Any part which has received a GET file operation must reply either with the PUT or ABORT file operations,
+     * or with the STORED file operation if GET has mentioned the current content hash of the file
      * Any part which has received a PUT file operation must either store delivered file data or reply back with the ABORT file operation
      */
     public enum Id {
         GET,
         PUT,
-        ABORT
+        ABORT,
+        STORED
     };
 
     /**
@@ -225,6 +234,8 @@ public class FileOperation extends Message {
             xml.append(OPERATION_GET);
         } else if (id == Id.ABORT) {
             xml.append(OPERATION_ABORT);
+        } else if (id == Id.STORED) {
+            xml.append(OPERATION_STORED);
         }
         xml.append("</" + XML_ELEMENT_OPERATION + ">\n");
 
@@ -1,5 +1,8 @@
 package com.nokia.ci.tas.commons.message;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.nokia.ci.tas.commons.Test;
 import com.nokia.ci.tas.commons.Product;
 
@@ -24,7 +27,7 @@ import com.nokia.ci.tas.commons.Product;
         </receiver>
         <envelope>
             <!-- Code of the operation a sender would like the receiver to perform on the specified product -->
-            <operation>add | remove | update</operation>
+            <operation>add | remove | update | sync | resync</operation>
             <!-- Product operation messages must contain description of related product and possibly related test -->
             <test>
                 <!-- At least test id should be presented to describe the possibly related test -->
@@ -35,6 +38,29 @@ import com.nokia.ci.tas.commons.Product;
             </product>
         </envelope>
     </message>
+
+ * Sync operations are carrying products of a test node in a single message instead of a single product.
+ * A full sync carries all the products, while a delta sync carries only the products changed since the previous sync.
+ * Both are also carrying a digest of all the products, so the receiver could ask for a full sync with the resync operation
+ * once its own copies of the products are not matching the digest anymore:
+
+        <envelope>
+            <operation>sync</operation>
+            <!-- Sequence number of the sync operation, growing with each sync send by the same sender -->
+            <sequence-number>1234567890</sequence-number>
+            <sync-mode>full | delta</sync-mode>
+            <!-- Total number of products and a hash calculated over all of them -->
+            <number-of-products>2</number-of-products>
+            <digest>-1234567890123456789</digest>
+            <products>
+                <product>
+                    Description of the first product...
+                </product>
+                <product>
+                    Description of the second product...
+                </product>
+            </products>
+        </envelope>
  */
 public class ProductOperation extends Message {
 
@@ -65,17 +91,70 @@ public class ProductOperation extends Message {
      */
     public static final String OPERATION_UPDATE = "update";
 
+    /**
+     * Id for indicating product sync operation.
+     * Sync operation is used for periodical updates of all the products handled by a test node,
+     * which are all carried in a single message.
+     */
+    public static final String OPERATION_SYNC = "sync";
+
+    /**
+     * Id for indicating product resync operation.
+     * Resync operation is used in cases when receiver of a sync operation has found its copies of the products
+     * being different from the ones of the sender, and requests the sender to send a full sync.
+     */
+    public static final String OPERATION_RESYNC = "resync";
+
+    /**
+     * XML tag indicating a list of products carried by sync operation.
+     */
+    public static final String XML_ELEMENT_PRODUCTS = "products";
+
+    /**
+     * XML tag indicating sequence number of sync operation.
+     */
+    public static final String XML_ELEMENT_SEQUENCE_NUMBER = "sequence-number";
+
+    /**
+     * XML tag indicating whenever sync operation carries all the products or only the changed ones.
+     */
+    public static final String XML_ELEMENT_SYNC_MODE = "sync-mode";
+
+    /**
+     * Sync mode of the operation carrying all the products.
+     */
+    public static final String SYNC_MODE_FULL = "full";
+
+    /**
+     * Sync mode of the operation carrying only the products changed since the previous sync.
+     */
+    public static final String SYNC_MODE_DELTA = "delta";
+
+    /**
+     * XML tag indicating total number of products on the side of sync operation sender.
+     */
+    public static final String XML_ELEMENT_NUMBER_OF_PRODUCTS = "number-of-products";
+
+    /**
+     * XML tag indicating digest of all products on the side of sync operation sender.
+     */
+    public static final String XML_ELEMENT_DIGEST = "digest";
+
     /**
      * Enumeration of supported product operation ids.
      *
      * ADD     - Used in cases when sender of product operation requests receiver to add specifed product as available one
      * REMOVE  - Used in cases when sender of product operation requests receiver to remove specifed product from the list of available ones
      * UPDATE  - Used in cases when sender of product operation requests receiver to update local copy of product information according to specified one
+     * SYNC    - Used in cases when sender of product operation requests receiver to update local copies of all products carried by the message
+     * RESYNC  - Used in cases when sender of product operation requests receiver to send a full sync
      */
     public enum Id {
         ADD,
         REMOVE,
-        UPDATE
+        UPDATE,
+        SYNC,
+        RESYNC
     };
 
     /**
@@ -93,6 +172,32 @@ public class ProductOperation extends Message {
      */
     private Id id = Id.UPDATE;
 
+    /**
+     * Products carried by sync operation.
+     */
+    private List<Product> products = new ArrayList<Product>(0);
+
+    /**
+     * Sequence number of sync operation.
+     * Receiver ignores sync operations having smaller sequence numbers than the last one received from the same sender.
+     */
+    private long sequenceNumber = 0L;
+
+    /**
+     * True if sync operation carries all the products or false if only the changed ones.
+     */
+    private boolean isFullSync = true;
+
+    /**
+     * Total number of products on the side of sync operation sender.
+     */
+    private int numberOfProducts = 0;
+
+    /**
+     * Digest of all products on the side of sync operation sender.
+     */
+    private long digest = 0L;
+
     /**
      * Constructs Product Operation from the specified message.
      *
@@ -115,6 +220,19 @@ public class ProductOperation extends Message {
         this.product = product;
     }
 
+    /**
+     * Constructor of sync operation.
+     *
+     * @param products All the products of a test node
+     * @param sequenceNumber Sequence number of sync operation
+     */
+    public ProductOperation(List<Product> products, long sequenceNumber) {
+        super(Message.TYPE_PRODUCT_OPERATION);
+        this.id = Id.SYNC;
+        this.products = products;
+        this.sequenceNumber = sequenceNumber;
+    }
+
     /**
      * Sets product operation id.
      *
@@ -169,6 +287,96 @@ public class ProductOperation extends Message {
         return product;
     }
 
+    /**
+     * Sets the products carried by sync operation.
+     *
+     * @param products Products carried by sync operation
+     */
+    public void setProducts(List<Product> products) {
+        this.products = products;
+    }
+
+    /**
+     * Returns the products carried by sync operation.
+     *
+     * @return Products carried by sync operation
+     */
+    public List<Product> getProducts() {
+        return products;
+    }
+
+    /**
+     * Sets sequence number of sync operation.
+     *
+     * @param sequenceNumber Sequence number of sync operation
+     */
+    public void setSequenceNumber(long sequenceNumber) {
+        this.sequenceNumber = sequenceNumber;
+    }
+
+    /**
+     * Returns sequence number of sync operation.
+     *
+     * @return Sequence number of sync operation
+     */
+    public long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    /**
+     * Sets whenever sync operation carries all the products or only the changed ones.
+     *
+     * @param isFullSync True if sync operation carries all the products or false if only the changed ones
+     */
+    public void setFullSync(boolean isFullSync) {
+        this.isFullSync = isFullSync;
+    }
+
+    /**
+     * Returns true if sync operation carries all the products or false if only the changed ones.
+     *
+     * @return True if sync operation carries all the products or false if only the changed ones
+     */
+    public boolean isFullSync() {
+        return isFullSync;
+    }
+
+    /**
+     * Sets total number of products on the side of sync operation sender.
+     *
+     * @param numberOfProducts Total number of products
+     */
+    public void setNumberOfProducts(int numberOfProducts) {
+        this.numberOfProducts = numberOfProducts;
+    }
+
+    /**
+     * Returns total number of products on the side of sync operation sender.
+     *
+     * @return Total number of products
+     */
+    public int getNumberOfProducts() {
+        return numberOfProducts;
+    }
+
+    /**
+     * Sets digest of all products on the side of sync operation sender.
+     *
+     * @param digest Digest of all products
+     */
+    public void setDigest(long digest) {
+        this.digest = digest;
+    }
+
+    /**
+     * Returns digest of all products on the side of sync operation sender.
+     *
+     * @return Digest of all products
+     */
+    public long getDigest() {
+        return digest;
+    }
+
     /**
      * Returns a textual representation of this message.
      *
@@ -193,6 +401,19 @@ public class ProductOperation extends Message {
             string.append(product.toString());
         }
 
+        if (id == Id.SYNC) {
+            string.append("\n\t Sequence number:   " + sequenceNumber);
+            string.append("\n\t Sync mode:         " + (isFullSync ? SYNC_MODE_FULL : SYNC_MODE_DELTA));
+            string.append("\n\t Digest:            " + numberOfProducts + " products, " + digest);
+            string.append("\n\t Products:          " + (products != null ? products.size() : 0));
+
+            if (products != null) {
+                for (Product syncedProduct : products) {
+                    string.append(syncedProduct.toString());
+                }
+            }
+        }
+
         return string.toString();
     }
 
@@ -213,9 +434,20 @@ public class ProductOperation extends Message {
             xml.append(OPERATION_ADD);
         } else if (id == Id.REMOVE) {
             xml.append(OPERATION_REMOVE);
+        } else if (id == Id.SYNC) {
+            xml.append(OPERATION_SYNC);
+        } else if (id == Id.RESYNC) {
+            xml.append(OPERATION_RESYNC);
         }
         xml.append("</" + XML_ELEMENT_OPERATION + ">\n");
 
+        if (id == Id.SYNC) {
+            xml.append(indentation + "<" + XML_ELEMENT_SEQUENCE_NUMBER + ">" + sequenceNumber + "</" + XML_ELEMENT_SEQUENCE_NUMBER + ">\n");
+            xml.append(indentation + "<" + XML_ELEMENT_SYNC_MODE + ">" + (isFullSync ? SYNC_MODE_FULL : SYNC_MODE_DELTA) + "</" + XML_ELEMENT_SYNC_MODE + ">\n");
+            xml.append(indentation + "<" + XML_ELEMENT_NUMBER_OF_PRODUCTS + ">" + numberOfProducts + "</" + XML_ELEMENT_NUMBER_OF_PRODUCTS + ">\n");
+            xml.append(indentation + "<" + XML_ELEMENT_DIGEST + ">" + digest + "</" + XML_ELEMENT_DIGEST + ">\n");
+        }
+
         if (test != null) {
             xml.append(test.toXML(indentation));
         }
@@ -224,6 +456,14 @@ public class ProductOperation extends Message {
             xml.append(product.toXML(indentation));
         }
 
+        if (products != null && !products.isEmpty()) {
+            xml.append(indentation + "<" + XML_ELEMENT_PRODUCTS + ">\n");
+            for (Product syncedProduct : products) {
+                xml.append(syncedProduct.toXML(indentation + "\t"));
+            }
+            xml.append(indentation + "</" + XML_ELEMENT_PRODUCTS + ">\n");
+        }
+
         // Store created envelope
         setEnvelope(xml.toString());
 
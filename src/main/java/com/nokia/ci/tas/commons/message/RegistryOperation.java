@@ -38,6 +38,9 @@ import com.nokia.ci.tas.commons.TestNodeDescription;
                  "test-node" must be used by the Test Automation Communicators
                  "client" must be used by the Test Automation Client -->
             <remote>test-node | client</remote>
+            <!-- Optional element telling that sender is able to read messages in the binary encoding as well
+                 When send by the Test Automation Service, it confirms that the service reads binary messages too -->
+            <encoding>binary</encoding>
             <!-- Test node can put more details about itself inside this block -->
             <test-node>
                 Description of related test node...
@@ -82,6 +85,21 @@ public class RegistryOperation extends Message {
      */
     public static final String REMOTE_CLIENT = "client";
 
+    /**
+     * XML tag indicating the richest message encoding supported by the sender.
+     */
+    public static final String XML_ELEMENT_ENCODING = "encoding";
+
+    /**
+     * Id for indicating the XML encoding of messages.
+     */
+    public static final String ENCODING_XML = "xml";
+
+    /**
+     * Id for indicating the binary encoding of messages.
+     */
+    public static final String ENCODING_BINARY = "binary";
+
     /**
      * Enumeration of supported registry operation ids.
      *
@@ -108,6 +126,17 @@ public class RegistryOperation extends Message {
         UNKNOWN
     }
 
+    /**
+     * Enumeration of supported message encodings.
+     *
+     * XML - Used in cases when sender reads only XML messages
+     * BINARY - Used in cases when sender reads binary messages as well
+     */
+    public enum Encoding {
+        XML,
+        BINARY
+    }
+
     /**
      * Id of related registry operation.
      */
@@ -118,6 +147,11 @@ public class RegistryOperation extends Message {
      */
     private Remote remote = Remote.UNKNOWN;
 
+    /**
+     * The richest message encoding supported by the sender.
+     */
+    private Encoding encoding = Encoding.XML;
+
     /**
      * Description of a test node.
      */
@@ -181,6 +215,26 @@ public class RegistryOperation extends Message {
         return remote;
     }
 
+    /**
+     * Sets the richest message encoding supported by the sender.
+     *
+     * @param encoding The richest message encoding supported by the sender
+     */
+    public void setEncoding(Encoding encoding) {
+        if (encoding != null) {
+            this.encoding = encoding;
+        }
+    }
+
+    /**
+     * Returns the richest message encoding supported by the sender.
+     *
+     * @return The richest message encoding supported by the sender
+     */
+    public Encoding getEncoding() {
+        return encoding;
+    }
+
     /**
      * Sets the test node description.
      *
@@ -217,6 +271,7 @@ public class RegistryOperation extends Message {
         string.append("\n\t Receiver port:        " + receiverPort);
         string.append("\n\t Operation id:         " + id.name());
         string.append("\n\t Remote part category: " + remote.name());
+        string.append("\n\t Message encoding:     " + encoding.name());
 
         if (testNodeDescription != null) {
             string.append(testNodeDescription.toString());
@@ -255,6 +310,11 @@ public class RegistryOperation extends Message {
         }
         xml.append("</" + XML_ELEMENT_REMOTE + ">\n");
 
+        if (encoding == Encoding.BINARY) {
+            // Older parts are simply ignoring this element and keep using XML
+            xml.append(indentation + "<" + XML_ELEMENT_ENCODING + ">" + ENCODING_BINARY + "</" + XML_ELEMENT_ENCODING + ">\n");
+        }
+
         if (testNodeDescription != null) {
             xml.append(testNodeDescription.toXML("\t\t")); // With identation for a nicer printouts
         }
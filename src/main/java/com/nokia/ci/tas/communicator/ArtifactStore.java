@@ -0,0 +1,342 @@
+package com.nokia.ci.tas.communicator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.nokia.ci.tas.commons.FileTransfer;
+import com.nokia.ci.tas.commons.Util;
+
+/**
+ * Persistent store of test artifacts, shared by all the tests executed on this Test Automation Communicator.
+ *
+ * Artifacts are stored by hashes of their contents, so the same flash image used by many tests is kept only once.
+ * Workspaces of the tests are filled with hard links to the stored artifacts, or with their copies if links are not supported.
+ * For each artifact name received from a client the store remembers the hash of its last content,
+ * so the next request of that artifact can tell the client which content is already here.
+ *
+ * Total size of stored artifacts is kept under the quota by removing the least recently used ones.
+ */
+public class ArtifactStore {
+
+    /**
+     * Name of the file keeping hashes of the last received artifact contents.
+     */
+    private static final String INDEX_FILENAME = "index.properties";
+
+    /**
+     * Directory of the store.
+     */
+    private File directory;
+
+    /**
+     * Maximal total size of stored artifacts in bytes, or 0 if store is disabled.
+     */
+    private long quota;
+
+    /**
+     * Total size of stored artifacts in bytes.
+     */
+    private long size = 0L;
+
+    /**
+     * All stored artifacts by their content hashes, from the least to the most recently used.
+     */
+    private LinkedHashMap<String, File> artifacts;
+
+    /**
+     * Hashes of the last received artifact contents, stored by client hostnames and artifact names.
+     */
+    private Properties index;
+
+    /**
+     * Instance of the Test Automation Communicator's global logger.
+     */
+    private Logger logger = Logger.getLogger(TestAutomationCommunicator.GLOBAL_LOGGER_NAME);
+
+    /**
+     * Constructor.
+     * All the artifacts already existing in specified directory are taken into the store.
+     *
+     * @param directory Directory of the store
+     * @param quota Maximal total size of stored artifacts in bytes, or 0 if store should be disabled
+     */
+    public ArtifactStore(File directory, long quota) {
+        this.directory = directory;
+        this.quota = quota;
+
+        artifacts = new LinkedHashMap<String, File>(16, 0.75f, true);
+        index = new Properties();
+
+        if (quota <= 0L) {
+            p("Artifact store is disabled");
+            return;
+        }
+
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+
+        File indexFile = new File(directory, INDEX_FILENAME);
+
+        if (indexFile.exists()) {
+            try {
+                FileInputStream input = new FileInputStream(indexFile);
+
+                try {
+                    index.load(input);
+                } finally {
+                    input.close();
+                }
+            } catch (Exception e) {
+                p("Got troubles while tried to load the index of artifact store: " + e.getClass() + " - " + e.getMessage());
+            }
+        }
+
+        File[] files = directory.listFiles();
+
+        if (files != null) {
+            // The least recently used artifacts go first
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(File first, File second) {
+                    return Long.valueOf(first.lastModified()).compareTo(Long.valueOf(second.lastModified()));
+                }
+            });
+
+            for (File file : files) {
+                if (file.isFile() && !file.getName().equals(INDEX_FILENAME)) {
+                    artifacts.put(file.getName(), file);
+                    size += file.length();
+                }
+            }
+        }
+
+        p("Artifact store at " + directory.getAbsolutePath() + " contains " + artifacts.size() + " artifacts of " + (size / 1048576L)
+            + " MB out of " + (quota / 1048576L) + " MB allowed");
+
+        evict();
+    }
+
+    /**
+     * Returns hash of the artifact content last received from specified client, if that content is still stored.
+     *
+     * @param hostname Hostname of the client
+     * @param fileName Name of the artifact
+     * @return Hash of the stored artifact content or null if there is no such artifact in the store
+     */
+    public synchronized String getContentHash(String hostname, String fileName) {
+        String contentHash = index.getProperty(getKey(hostname, fileName));
+
+        if (contentHash != null && artifacts.containsKey(contentHash)) {
+            return contentHash;
+        }
+
+        return null;
+    }
+
+    /**
+     * Takes a copy of specified artifact into the store, unless the same content is already there.
+     *
+     * @param file Received artifact
+     * @param contentHash Hash of the artifact content
+     * @param hostname Hostname of the client which has send the artifact
+     * @param fileName Name of the artifact
+     * @return True if artifact content is stored or false otherwise
+     */
+    public synchronized boolean store(File file, String contentHash, String hostname, String fileName) {
+        if (quota <= 0L || contentHash == null || file.length() > quota) {
+            return false;
+        }
+
+        File storedFile = artifacts.get(contentHash);
+
+        if (storedFile == null) {
+            storedFile = new File(directory, contentHash);
+
+            if (!link(file, storedFile)) {
+                p("Couldn't store artifact " + fileName + " with content hash " + contentHash);
+                storedFile.delete();
+                return false;
+            }
+
+            artifacts.put(contentHash, storedFile);
+            size += storedFile.length();
+
+            p("Stored artifact " + fileName + " from " + hostname + " with content hash " + contentHash + ", now " + artifacts.size() + " artifacts of "
+                + (size / 1048576L) + " MB");
+        }
+
+        storedFile.setLastModified(System.currentTimeMillis());
+
+        index.setProperty(getKey(hostname, fileName), contentHash);
+
+        evict();
+        saveIndex();
+
+        return artifacts.containsKey(contentHash);
+    }
+
+    /**
+     * Puts the stored artifact with specified content hash into specified location.
+     *
+     * @param contentHash Hash of the artifact content
+     * @param destination Location of the artifact, like in a test workspace
+     * @return True if artifact was successfully restored or false otherwise
+     */
+    public synchronized boolean restore(String contentHash, File destination) {
+        File storedFile = artifacts.get(contentHash);
+
+        if (storedFile == null || !storedFile.exists()) {
+            p("Artifact with content hash " + contentHash + " is not stored anymore");
+            return false;
+        }
+
+        if (destination.exists() && !destination.delete()) {
+            p("Couldn't delete old version of file at " + destination.getAbsolutePath());
+            return false;
+        }
+
+        if (destination.getParentFile() != null && !destination.getParentFile().exists()) {
+            destination.getParentFile().mkdirs();
+        }
+
+        if (!link(storedFile, destination)) {
+            p("Couldn't restore artifact with content hash " + contentHash + " into " + destination.getAbsolutePath());
+            return false;
+        }
+
+        storedFile.setLastModified(System.currentTimeMillis());
+        destination.setReadable(true, false);
+
+        return true;
+    }
+
+    /**
+     * Removes the least recently used artifacts until the total size of the store is under quota.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, File>> iterator = artifacts.entrySet().iterator();
+        List<String> removedHashes = new ArrayList<String>(0);
+
+        while (size > quota && iterator.hasNext()) {
+            Map.Entry<String, File> artifact = iterator.next();
+            File storedFile = artifact.getValue();
+            long length = storedFile.length();
+
+            if (storedFile.delete() || !storedFile.exists()) {
+                iterator.remove();
+                removedHashes.add(artifact.getKey());
+                size -= length;
+                p("Removed the least recently used artifact with content hash " + artifact.getKey() + " (" + (length / 1048576L) + " MB)");
+            }
+        }
+
+        if (!removedHashes.isEmpty()) {
+            index.values().removeAll(removedHashes);
+        }
+    }
+
+    /**
+     * Makes a hard link to specified file, or a copy of it if links are not supported.
+     *
+     * @param source File to be linked
+     * @param destination Location of the link
+     * @return True if link or copy was made or false otherwise
+     */
+    private boolean link(File source, File destination) {
+        try {
+            ProcessBuilder processBuilder = null;
+
+            if (Util.isWindows()) {
+                processBuilder = new ProcessBuilder("cmd", "/c", "mklink", "/H", destination.getAbsolutePath(), source.getAbsolutePath());
+            } else {
+                processBuilder = new ProcessBuilder("ln", source.getAbsolutePath(), destination.getAbsolutePath());
+            }
+
+            processBuilder.redirectErrorStream(true);
+            Process process = processBuilder.start();
+
+            // Output of the command is not interesting
+            process.getOutputStream().close();
+            while (process.getInputStream().read() != -1) {
+                // Skip
+            }
+
+            if (process.waitFor() == 0 && destination.length() == source.length()) {
+                return true;
+            }
+        } catch (Exception e) {
+            p("Couldn't make a link to " + source.getAbsolutePath() + ": " + e.getClass() + " - " + e.getMessage());
+        }
+
+        try {
+            destination.delete();
+
+            FileInputStream input = new FileInputStream(source);
+            FileOutputStream output = new FileOutputStream(destination);
+
+            try {
+                FileTransfer.copy(input, output);
+            } finally {
+                output.close();
+                input.close();
+            }
+
+            return destination.length() == source.length();
+        } catch (Exception e) {
+            p("Couldn't copy " + source.getAbsolutePath() + " to " + destination.getAbsolutePath() + ": " + e.getClass() + " - " + e.getMessage());
+        }
+
+        return false;
+    }
+
+    /**
+     * Saves hashes of the last received artifact contents.
+     */
+    private void saveIndex() {
+        try {
+            FileOutputStream output = new FileOutputStream(new File(directory, INDEX_FILENAME));
+
+            try {
+                index.store(output, "Hashes of the last received artifact contents");
+            } finally {
+                output.close();
+            }
+        } catch (Exception e) {
+            p("Got troubles while tried to save the index of artifact store: " + e.getClass() + " - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns key of specified artifact in the index.
+     *
+     * @param hostname Hostname of the client
+     * @param fileName Name of the artifact
+     * @return Key of the artifact in the index
+     */
+    private String getKey(String hostname, String fileName) {
+        return hostname + "/" + fileName;
+    }
+
+    /**
+     * Prints specified text to output stream.
+     *
+     * @param text A text to be printed to output stream
+     */
+    private void p(String text) {
+        logger.log(Level.ALL, "Artifact Store: " + text);
+    }
+}
@@ -4,28 +4,51 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 
-import java.util.List;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
 
-import com.nokia.ci.tas.commons.Constant;
+import com.nokia.ci.tas.commons.FileTransfer;
 import com.nokia.ci.tas.commons.Test;
 import com.nokia.ci.tas.commons.Util;
 
 /**
  * File cache is a list of all file requests issued by test executors.
  * The primary task of file cache is to help with eliminating unnecessary duplicates of file request send outside.
+ *
+ * Entries are indexed by their absolute file paths, by runtime ids of their tests and by test ids together with file names,
+ * so none of the lookups has to go through the whole cache.
+ * Unrequested entries are also kept in a queue, from which the sender takes them in the order they were added.
  */
 public class FileCache {
 
     /**
-     * A list of all file requests issued from this Test Automation Communicator.
+     * All file requests issued from this Test Automation Communicator, stored by absolute file paths.
+     */
+    private ConcurrentHashMap<String, FileCacheEntry> entries;
+
+    /**
+     * Entries of each test, stored by runtime ids of the tests and then by absolute file paths.
+     */
+    private ConcurrentHashMap<String, ConcurrentHashMap<String, FileCacheEntry>> entriesByTest;
+
+    /**
+     * Entries of the same file requested for different workspaces of the same test,
+     * stored by test ids together with file names and then by absolute file paths.
+     */
+    private ConcurrentHashMap<String, ConcurrentHashMap<String, FileCacheEntry>> similarEntries;
+
+    /**
+     * Entries whose file transfer requests weren't yet send, in the order they should be requested.
+     * May also contain entries which were removed or requested in some other way, those are simply skipped.
      */
-    private ConcurrentLinkedQueue<FileCacheEntry> cache;
+    private LinkedBlockingDeque<FileCacheEntry> unrequestedEntries;
 
     /**
      * Instance of the Test Automation Communicator's global logger.
@@ -36,32 +59,38 @@ public class FileCache {
      * Constructor.
      */
     public FileCache() {
-        cache = new ConcurrentLinkedQueue();
+        entries = new ConcurrentHashMap<String, FileCacheEntry>();
+        entriesByTest = new ConcurrentHashMap<String, ConcurrentHashMap<String, FileCacheEntry>>();
+        similarEntries = new ConcurrentHashMap<String, ConcurrentHashMap<String, FileCacheEntry>>();
+        unrequestedEntries = new LinkedBlockingDeque<FileCacheEntry>();
     }
 
     /**
      * Adds specified entry to the cache.
+     * Entry with the same absolute file path is replaced.
      *
      * @param entry Entry to be added to the cache
      */
-    public void add(FileCacheEntry entry) {
-        if (cache.add(entry)) {
-            p("Added entry for " + entry.getAbsoluteFilePath() + " (Requested:" + entry.isRequested() + ", Transferred:" + entry.isTransferred() + ")");
+    public synchronized void add(FileCacheEntry entry) {
+        put(entry);
+
+        if (!entry.isRequested()) {
+            unrequestedEntries.offer(entry);
         }
+
+        p("Added entry for " + entry.getAbsoluteFilePath() + " (Requested:" + entry.isRequested() + ", Transferred:" + entry.isTransferred() + ")");
     }
 
     /**
      * Updates the corresponding entry in cache.
+     * Does nothing if cache doesn't contain an entry with the same absolute file path.
      *
      * @param entry Entry to be updated
      */
-    public void update(FileCacheEntry entry) {
-        for (FileCacheEntry existing : cache) {
-            if (existing.getAbsoluteFilePath().equals(entry.getAbsoluteFilePath())) {
-                p("Updating entry for " + entry.getAbsoluteFilePath() + " (Requested:" + entry.isRequested() + ", Transferred:" + entry.isTransferred() + ")");
-                existing = entry;
-                break;
-            }
+    public synchronized void update(FileCacheEntry entry) {
+        if (entries.containsKey(entry.getAbsoluteFilePath())) {
+            p("Updating entry for " + entry.getAbsoluteFilePath() + " (Requested:" + entry.isRequested() + ", Transferred:" + entry.isTransferred() + ")");
+            put(entry);
         }
     }
 
@@ -72,64 +101,84 @@ public class FileCache {
      * @return True if cache contains at least one unrequested entry and false otherwise
      */
     public boolean hasUnrequestedEntries() {
-        for (FileCacheEntry entry : cache) {
-            if (!entry.isRequested()) {
-                return true;
-            }
+        FileCacheEntry entry = unrequestedEntries.peek();
+
+        while (entry != null && !isUnrequested(entry)) {
+            // Drop entries which were removed or requested in some other way
+            unrequestedEntries.remove(entry);
+            entry = unrequestedEntries.peek();
         }
 
-        return false;
+        return entry != null;
     }
 
     /**
-     * Returns the first unrequested entry in cache.
+     * Takes the first unrequested entry out of the queue of unrequested entries.
      * The "unrequested" entry means that its corresponding file transfer request wasn't yet send.
+     * An entry which couldn't be requested right now should be given back with the returnUnrequestedEntries() method.
      *
-     * @return The first unrequested entry in cache
+     * @return The first unrequested entry in cache or null if there are no such entries
      */
-    public FileCacheEntry getUnrequestedEntry() {
-        for (FileCacheEntry entry : cache) {
-            if (!entry.isRequested()) {
-                p("Returning unrequested entry for " + entry.getAbsoluteFilePath() + " (Requested:" + entry.isRequested() + ", Transferred:" + entry.isTransferred() + ")");
-                return entry;
-            }
+    public FileCacheEntry takeUnrequestedEntry() {
+        FileCacheEntry entry = unrequestedEntries.poll();
+
+        while (entry != null && !isUnrequested(entry)) {
+            entry = unrequestedEntries.poll();
         }
 
-        //p("Returning NULL instead of unrequested entry");
-        return null;
+        return entry;
     }
 
     /**
-     * Returns a list of unrequested file cache entries.
-     * 
-     * @return A list of unrequested file cache entries
+     * Gives back specified unrequested entries, which will be the first ones taken next time.
+     *
+     * @param entries Unrequested entries in the order they were taken
      */
-    public List<FileCacheEntry> getUnrequestedEntries() {
-        List<FileCacheEntry> entries = new ArrayList<FileCacheEntry>(0);
+    public void returnUnrequestedEntries(List<FileCacheEntry> entries) {
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            FileCacheEntry entry = entries.get(i);
 
-        for (FileCacheEntry entry : cache) {
-            if (!entry.isRequested()) {
-                entries.add(entry);
+            if (isUnrequested(entry)) {
+                unrequestedEntries.offerFirst(entry);
             }
         }
-
-        return entries;
     }
 
     /**
-     * Removes all entries from the cache that are refering to the same absolute file path.
+     * Removes an entry from the cache that is refering to the same absolute file path.
      *
      * @param absoluteFilePath Absolute file path to be examined
      */
-    public void removeEntryFor(String absoluteFilePath) {
-        p("Removing entries with file path " + absoluteFilePath);
-        for (FileCacheEntry entry : cache) {
-            if (entry.getAbsoluteFilePath().equals(absoluteFilePath)) {
-                if (cache.remove(entry)) {
-                    p("Removed an entry with file path " + absoluteFilePath + " (Requested:" + entry.isRequested() + ", Transferred:" + entry.isTransferred() + ")");
-                }
+    public synchronized void removeEntryFor(String absoluteFilePath) {
+        FileCacheEntry entry = entries.remove(absoluteFilePath);
+
+        if (entry != null) {
+            removeFromIndex(entriesByTest, entry.getTest().getRuntimeId(), entry);
+            removeFromIndex(similarEntries, getSimilarityKey(entry.getTest(), entry.getFileName()), entry);
+
+            p("Removed an entry with file path " + absoluteFilePath + " (Requested:" + entry.isRequested() + ", Transferred:" + entry.isTransferred() + ")");
+        }
+    }
+
+    /**
+     * Removes all entries of specified test from the cache.
+     *
+     * @param test Test whose entries should be removed
+     * @return A list of removed entries
+     */
+    public synchronized List<FileCacheEntry> removeEntriesOf(Test test) {
+        List<FileCacheEntry> result = new ArrayList<FileCacheEntry>(0);
+        Map<String, FileCacheEntry> entriesOfTest = entriesByTest.get(test.getRuntimeId());
+
+        if (entriesOfTest != null) {
+            result.addAll(entriesOfTest.values());
+
+            for (FileCacheEntry entry : result) {
+                removeEntryFor(entry.getAbsoluteFilePath());
             }
         }
+
+        return result;
     }
 
     /**
@@ -139,19 +188,11 @@ public class FileCache {
      * @return An entry refering to specified absolute file path or null if such entry is not existing
      */
     public FileCacheEntry getEntry(String absoluteFilePath) {
-        for (FileCacheEntry entry : cache) {
-            if (entry.getAbsoluteFilePath().equals(absoluteFilePath)) {
-                p("Returning entry for " + entry.getAbsoluteFilePath() + " (Requested:" + entry.isRequested() + ", Transferred:" + entry.isTransferred() + ")");
-                return entry;
-            }
-        }
-
-        return null;
+        return entries.get(absoluteFilePath);
     }
 
     /**
      * Returns a list of all untransferred entries that are corresponding to specified test and file name.
-     * The "unrequested" entry means that its corresponding file transfer request wasn't yet send.
      *
      * @param test Test that entries should be referring to
      * @param fileName File name that entries should referring to
@@ -159,15 +200,12 @@ public class FileCache {
      */
     public List<FileCacheEntry> getUntransferredEntries(Test test, String fileName) {
         List<FileCacheEntry> result = new ArrayList<FileCacheEntry>(0);
+        Map<String, FileCacheEntry> entriesOfFile = similarEntries.get(getSimilarityKey(test, fileName));
 
-        for (FileCacheEntry entry : cache) {
-            if (!entry.isTransferred()) {
-                if (entry.getFileName().equals(fileName)) {
-                    Test existingTest = entry.getTest();
-                    if (existingTest.getId().equals(test.getId())) {
-                        // File name and test id are the same
-                        result.add(entry);
-                    }
+        if (entriesOfFile != null) {
+            for (FileCacheEntry entry : entriesOfFile.values()) {
+                if (!entry.isTransferred()) {
+                    result.add(entry);
                 }
             }
         }
@@ -175,6 +213,15 @@ public class FileCache {
         return result;
     }
 
+    /**
+     * Returns total number of entries in the cache.
+     *
+     * @return Total number of entries in the cache
+     */
+    public int size() {
+        return entries.size();
+    }
+
     /**
      * Performs a file copy from one specified absolute path to another.
      * Returns true if file copying was successful or false otherwise.
@@ -220,26 +267,11 @@ public class FileCache {
                     FileOutputStream destinationStream = new FileOutputStream(destinationFile);
                     p("Empty destination file was successfully created at " + destinationFile.getAbsolutePath());
 
-                    int numberOfBytesInBuffer = 0;
-                    long numberOfCopiedBytes = 0L;
-                    byte[] buffer = new byte[Constant.DEFAULT_BUFFER_SIZE];
-
                     long fileCopyingStartedAt = System.currentTimeMillis();
 
-                    do {
-                        numberOfBytesInBuffer = sourceStream.read(buffer);
-
-                        if (numberOfBytesInBuffer > 0) {
-                            destinationStream.write(buffer, 0, numberOfBytesInBuffer);
-                            destinationStream.flush();
-                            numberOfCopiedBytes += numberOfBytesInBuffer;
-                        } else {
-                            // Safety against possible deadlocks in read()
-                            break;
-                        }
-                    } while (numberOfBytesInBuffer > 0);
+                    // File data is moved directly between the files
+                    long numberOfCopiedBytes = FileTransfer.copy(sourceStream, destinationStream);
 
-                    destinationStream.flush();
                     destinationStream.close();
                     sourceStream.close();
 
@@ -295,6 +327,81 @@ public class FileCache {
         return isSuccess;
     }
 
+    /**
+     * Puts specified entry into all the indexes, replacing any entry with the same absolute file path.
+     *
+     * @param entry Entry to be stored
+     */
+    private void put(FileCacheEntry entry) {
+        FileCacheEntry existing = entries.put(entry.getAbsoluteFilePath(), entry);
+
+        if (existing != null && existing != entry) {
+            removeFromIndex(entriesByTest, existing.getTest().getRuntimeId(), existing);
+            removeFromIndex(similarEntries, getSimilarityKey(existing.getTest(), existing.getFileName()), existing);
+        }
+
+        addToIndex(entriesByTest, entry.getTest().getRuntimeId(), entry);
+        addToIndex(similarEntries, getSimilarityKey(entry.getTest(), entry.getFileName()), entry);
+    }
+
+    /**
+     * Adds specified entry to specified index.
+     *
+     * @param index Index of entries
+     * @param key Key of the entry in the index
+     * @param entry Entry to be added
+     */
+    private void addToIndex(ConcurrentHashMap<String, ConcurrentHashMap<String, FileCacheEntry>> index, String key, FileCacheEntry entry) {
+        ConcurrentHashMap<String, FileCacheEntry> indexedEntries = index.get(key);
+
+        if (indexedEntries == null) {
+            indexedEntries = new ConcurrentHashMap<String, FileCacheEntry>();
+            index.put(key, indexedEntries);
+        }
+
+        indexedEntries.put(entry.getAbsoluteFilePath(), entry);
+    }
+
+    /**
+     * Removes specified entry from specified index.
+     *
+     * @param index Index of entries
+     * @param key Key of the entry in the index
+     * @param entry Entry to be removed
+     */
+    private void removeFromIndex(ConcurrentHashMap<String, ConcurrentHashMap<String, FileCacheEntry>> index, String key, FileCacheEntry entry) {
+        ConcurrentHashMap<String, FileCacheEntry> indexedEntries = index.get(key);
+
+        if (indexedEntries != null) {
+            indexedEntries.remove(entry.getAbsoluteFilePath(), entry);
+
+            if (indexedEntries.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Returns key of the entries referring to the same file of the same test.
+     *
+     * @param test Test of the entries
+     * @param fileName Name of the file
+     * @return Key of the entries referring to the same file of the same test
+     */
+    private String getSimilarityKey(Test test, String fileName) {
+        return test.getId() + "/" + fileName;
+    }
+
+    /**
+     * Tells whenever specified entry is still in the cache and still waits for its file transfer request to be send.
+     *
+     * @param entry Entry to be examined
+     * @return True if entry is still unrequested or false otherwise
+     */
+    private boolean isUnrequested(FileCacheEntry entry) {
+        return !entry.isRequested() && entries.get(entry.getAbsoluteFilePath()) == entry;
+    }
+
     /**
      * Prints specified text to output stream.
      *
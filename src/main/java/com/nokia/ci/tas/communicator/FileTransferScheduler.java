@@ -0,0 +1,230 @@
+package com.nokia.ci.tas.communicator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.nokia.ci.tas.commons.message.FileOperation;
+
+/**
+ * Decides which of the requested files can be transferred right now.
+ *
+ * Files are requested from remote clients in parallel, each transfer using its own connection.
+ * The number of transfers running at the same time is limited separately for each remote client and for all clients together,
+ * so a single test with many artifacts cannot take all the network capacity of a test node.
+ * A slot taken by a transfer is given back as soon as the file is received or its transfer has failed.
+ */
+public class FileTransferScheduler {
+
+    /**
+     * Maximal number of files transferred at the same time from a single remote client.
+     */
+    private int maximalNumberOfTransfersPerRemote;
+
+    /**
+     * Maximal number of files transferred at the same time from all remote clients together.
+     */
+    private int maximalNumberOfTransfers;
+
+    /**
+     * All running transfers, stored by absolute paths of the transferred files.
+     */
+    private HashMap<String, FileCacheEntry> transfers;
+
+    /**
+     * Moments of the last activity of running transfers, stored by absolute paths of the transferred files.
+     */
+    private HashMap<String, Long> timesOfLastActivity;
+
+    /**
+     * Number of running transfers from each remote client, stored by "hostname:port" of the clients.
+     */
+    private HashMap<String, Integer> numberOfTransfersPerRemote;
+
+    /**
+     * Instance of the Test Automation Communicator's global logger.
+     */
+    private Logger logger = Logger.getLogger(TestAutomationCommunicator.GLOBAL_LOGGER_NAME);
+
+    /**
+     * Constructor.
+     *
+     * @param maximalNumberOfTransfersPerRemote Maximal number of files transferred at the same time from a single remote client
+     * @param maximalNumberOfTransfers Maximal number of files transferred at the same time from all remote clients together
+     */
+    public FileTransferScheduler(int maximalNumberOfTransfersPerRemote, int maximalNumberOfTransfers) {
+        this.maximalNumberOfTransfersPerRemote = maximalNumberOfTransfersPerRemote;
+        this.maximalNumberOfTransfers = maximalNumberOfTransfers;
+
+        transfers = new HashMap<String, FileCacheEntry>();
+        timesOfLastActivity = new HashMap<String, Long>();
+        numberOfTransfersPerRemote = new HashMap<String, Integer>();
+    }
+
+    /**
+     * Tells whenever at least one more transfer can be started.
+     *
+     * @return True if at least one more transfer can be started or false otherwise
+     */
+    public synchronized boolean hasFreeSlots() {
+        return transfers.size() < maximalNumberOfTransfers;
+    }
+
+    /**
+     * Tries to take a slot for the transfer of specified file cache entry.
+     * The slot is not given if the limit of transfers is reached, either for the remote client or in total,
+     * or if the same file of the same test is already transferred into another workspace.
+     * In the last case the file will be simply copied from that workspace once it is received.
+     *
+     * @param entry File cache entry to be transferred
+     * @return True if transfer can be started or false otherwise
+     */
+    public synchronized boolean start(FileCacheEntry entry) {
+        String absoluteFilePath = entry.getAbsoluteFilePath();
+
+        if (transfers.containsKey(absoluteFilePath)) {
+            return false;
+        }
+
+        if (transfers.size() >= maximalNumberOfTransfers) {
+            return false;
+        }
+
+        String remote = getRemote(entry);
+        int numberOfTransfersFromRemote = getNumberOfTransfers(remote);
+
+        if (numberOfTransfersFromRemote >= maximalNumberOfTransfersPerRemote) {
+            return false;
+        }
+
+        for (FileCacheEntry transfer : transfers.values()) {
+            if (transfer.getFileName().equals(entry.getFileName()) && transfer.getTest().getId().equals(entry.getTest().getId())) {
+                return false;
+            }
+        }
+
+        transfers.put(absoluteFilePath, entry);
+        timesOfLastActivity.put(absoluteFilePath, System.currentTimeMillis());
+        numberOfTransfersPerRemote.put(remote, numberOfTransfersFromRemote + 1);
+
+        p("Started transfer of " + absoluteFilePath + " from " + remote + ", now " + (numberOfTransfersFromRemote + 1) + " transfers from the client and "
+            + transfers.size() + " transfers in total");
+
+        return true;
+    }
+
+    /**
+     * Remembers that transfer of specified file is still in progress,
+     * like when missing chunks of the file are requested once again.
+     *
+     * @param absoluteFilePath Absolute path of the transferred file
+     */
+    public synchronized void touch(String absoluteFilePath) {
+        if (transfers.containsKey(absoluteFilePath)) {
+            timesOfLastActivity.put(absoluteFilePath, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Gives back the slot taken by transfer of specified file.
+     * Does nothing if such file is not transferred.
+     *
+     * @param absoluteFilePath Absolute path of the transferred file
+     * @return True if a running transfer was finished or false otherwise
+     */
+    public synchronized boolean finish(String absoluteFilePath) {
+        FileCacheEntry entry = transfers.remove(absoluteFilePath);
+
+        if (entry == null) {
+            return false;
+        }
+
+        timesOfLastActivity.remove(absoluteFilePath);
+
+        String remote = getRemote(entry);
+        int numberOfTransfersFromRemote = getNumberOfTransfers(remote) - 1;
+
+        if (numberOfTransfersFromRemote > 0) {
+            numberOfTransfersPerRemote.put(remote, numberOfTransfersFromRemote);
+        } else {
+            numberOfTransfersPerRemote.remove(remote);
+        }
+
+        p("Finished transfer of " + absoluteFilePath + ", now " + transfers.size() + " transfers in total");
+
+        return true;
+    }
+
+    /**
+     * Gives back slots of all the transfers which haven't shown any activity during specified period of time.
+     * This prevents lost replies from blocking new transfers forever.
+     *
+     * @param timeout Period of time in milliseconds
+     * @return A list of absolute paths of the expired transfers
+     */
+    public synchronized List<String> expire(long timeout) {
+        List<String> expiredTransfers = new ArrayList<String>(0);
+        long currentTime = System.currentTimeMillis();
+
+        for (String absoluteFilePath : timesOfLastActivity.keySet()) {
+            if ((currentTime - timesOfLastActivity.get(absoluteFilePath)) > timeout) {
+                expiredTransfers.add(absoluteFilePath);
+            }
+        }
+
+        for (String absoluteFilePath : expiredTransfers) {
+            p("Transfer of " + absoluteFilePath + " haven't shown any activity for too long and is considered as finished");
+            finish(absoluteFilePath);
+        }
+
+        return expiredTransfers;
+    }
+
+    /**
+     * Returns number of running transfers from all remote clients together.
+     *
+     * @return Number of running transfers
+     */
+    public synchronized int getNumberOfTransfers() {
+        return transfers.size();
+    }
+
+    /**
+     * Returns number of running transfers from specified remote client.
+     *
+     * @param remote Remote client as "hostname:port"
+     * @return Number of running transfers from specified remote client
+     */
+    public synchronized int getNumberOfTransfers(String remote) {
+        Integer numberOfTransfers = numberOfTransfersPerRemote.get(remote);
+
+        if (numberOfTransfers == null) {
+            return 0;
+        }
+
+        return numberOfTransfers.intValue();
+    }
+
+    /**
+     * Returns remote client which will send the file of specified entry.
+     *
+     * @param entry File cache entry
+     * @return Remote client as "hostname:port"
+     */
+    private String getRemote(FileCacheEntry entry) {
+        FileOperation fileTransferRequest = entry.getFileTransferRequest();
+        return fileTransferRequest.getReceiverHostname() + ":" + fileTransferRequest.getReceiverPort();
+    }
+
+    /**
+     * Prints specified text to output stream.
+     *
+     * @param text A text to be printed to output stream
+     */
+    private void p(String text) {
+        logger.log(Level.ALL, "File Transfer Scheduler: " + text);
+    }
+}
@@ -2,6 +2,7 @@ package com.nokia.ci.tas.communicator;
 
 import java.text.SimpleDateFormat;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
@@ -15,6 +16,7 @@ import java.util.logging.Logger;
 
 import com.nokia.ci.tas.commons.Constant;
 import com.nokia.ci.tas.commons.Product;
+import com.nokia.ci.tas.commons.ProductSync;
 import com.nokia.ci.tas.commons.Util;
 
 import com.nokia.ci.tas.commons.message.Message;
@@ -81,6 +83,11 @@ public class ProductExplorer extends Thread {
      */
     private long lastNotificationTime;
 
+    /**
+     * Keeps track of product descriptions synchronized with the Test Automation Service.
+     */
+    private ProductSync productSync;
+
     /**
      * Instance of the Test Automation Communicator's global logger.
      */
@@ -130,6 +137,7 @@ public class ProductExplorer extends Thread {
         productDetector = new ProductDetector(this);
 
         lastNotificationTime = System.currentTimeMillis();
+        productSync = new ProductSync(ProductSync.Part.DESCRIPTION);
 
         p("Product Explorer was successfully created");
     }
@@ -151,45 +159,33 @@ public class ProductExplorer extends Thread {
                     if (message != null) {
                         if (message instanceof ProductOperation) {
                             ProductOperation productOperation = (ProductOperation) message;
-                            Product product = productOperation.getProduct();
-
-                            if (product != null) {
-                                if (products.containsKey(product.getIMEI())) {
-                                    Product alreadyAvailableProduct = products.get(product.getIMEI());
-
-                                    alreadyAvailableProduct.setStatus(product.getStatus());
-                                    alreadyAvailableProduct.setStatusDetails(product.getStatusDetails());
-                                    alreadyAvailableProduct.setReservation(product.getReservationTime(), product.getReservationTimeout());
-
-                                    String productCurrentStatus = "Test Automation Service sets a product with IMEI " + alreadyAvailableProduct.getIMEI()
-                                                + " and of type " + alreadyAvailableProduct.getRMCode()
-                                                + " into status " + alreadyAvailableProduct.getStatus();
-
-                                    if (product.getStatus() == Product.Status.BUSY) {
-                                        productCurrentStatus += " - " + alreadyAvailableProduct.getStatusDetails();
-
-                                        if (alreadyAvailableProduct.getReservationTime() > 0L) {
-                                            SimpleDateFormat simpleDateFormat = new SimpleDateFormat(Constant.TIMESTAMP_FORMAT);
-                                            productCurrentStatus += ", reserved at " + simpleDateFormat.format(new Date(alreadyAvailableProduct.getReservationTime()));
-                                        } else {
-                                            productCurrentStatus += ", reserved at unknown date and time";
-                                        }
-
-                                        if (alreadyAvailableProduct.getReservationTimeout() > 0L) {
-                                            productCurrentStatus += ", reservation timeout is " + Util.convert(alreadyAvailableProduct.getReservationTimeout());
-                                        } else {
-                                            productCurrentStatus += ", reservation timeout is not specified";
-                                        }
-                                    }
 
-                                    // Update configuration file
-                                    alreadyAvailableProduct = productConfigurationHandler.update(alreadyAvailableProduct);
+                            if (productOperation.getId() == ProductOperation.Id.SYNC) {
+                                if (productSync.accept(productOperation)) {
+                                    for (Product product : productOperation.getProducts()) {
+                                        updateProductStatus(product);
+                                    }
 
-                                    // Store any changes
-                                    products.put(product.getIMEI(), alreadyAvailableProduct);
+                                    if (!productOperation.isFullSync() && !matchesProductSync(productOperation)) {
+                                        p("Product statuses are different from the ones in the Test Automation Service, requesting a full product sync...");
 
-                                    // Print current status
-                                    p(productCurrentStatus);
+                                        ProductOperation resyncProductOperation = new ProductOperation(ProductOperation.Id.RESYNC, null);
+                                        resyncProductOperation.setSender(testAutomationCommunicatorHostname, testAutomationCommunicatorPort);
+                                        resyncProductOperation.setReceiver(testAutomationServiceHostname, testAutomationServicePort);
+                                        sender.handle(resyncProductOperation);
+                                    }
+                                } else {
+                                    p("Ignoring a stale product sync with sequence number " + productOperation.getSequenceNumber());
+                                }
+                            } else if (productOperation.getId() == ProductOperation.Id.RESYNC) {
+                                p("Test Automation Service has requested a full product sync");
+                                productSync.requestFullSync();
+                                lastNotificationTime = 0L;
+                            } else {
+                                Product product = productOperation.getProduct();
+
+                                if (product != null) {
+                                    updateProductStatus(product);
                                 }
                             }
                         } else {
@@ -200,13 +196,8 @@ public class ProductExplorer extends Thread {
                     // If nothing has happened for the last 30 seconds, notify Test Automation Service about current products
                     if ((System.currentTimeMillis() - lastNotificationTime) > Constant.THIRTY_SECONDS) {
 
-                        // Notify Test Automation Service about all currently available products
-                        for (Product product : products.values()) {
-                            ProductOperation updateProductOperation = new ProductOperation(ProductOperation.Id.UPDATE, product);
-                            updateProductOperation.setSender(testAutomationCommunicatorHostname, testAutomationCommunicatorPort);
-                            updateProductOperation.setReceiver(testAutomationServiceHostname, testAutomationServicePort);
-                            sender.handle(updateProductOperation);
-                        }
+                        // Notify Test Automation Service about changed products and send a digest of all the products
+                        sender.handle(createProductSync());
 
                         lastNotificationTime = System.currentTimeMillis();
                     }
@@ -221,6 +212,73 @@ public class ProductExplorer extends Thread {
         }
     }
 
+    /**
+     * Applies the status and reservation of a product, as they are set by the Test Automation Service.
+     *
+     * @param product Product as it is seen by the Test Automation Service
+     */
+    private synchronized void updateProductStatus(Product product) {
+        if (products.containsKey(product.getIMEI())) {
+            Product alreadyAvailableProduct = products.get(product.getIMEI());
+
+            alreadyAvailableProduct.setStatus(product.getStatus());
+            alreadyAvailableProduct.setStatusDetails(product.getStatusDetails());
+            alreadyAvailableProduct.setReservation(product.getReservationTime(), product.getReservationTimeout());
+
+            String productCurrentStatus = "Test Automation Service sets a product with IMEI " + alreadyAvailableProduct.getIMEI()
+                        + " and of type " + alreadyAvailableProduct.getRMCode()
+                        + " into status " + alreadyAvailableProduct.getStatus();
+
+            if (product.getStatus() == Product.Status.BUSY) {
+                productCurrentStatus += " - " + alreadyAvailableProduct.getStatusDetails();
+
+                if (alreadyAvailableProduct.getReservationTime() > 0L) {
+                    SimpleDateFormat simpleDateFormat = new SimpleDateFormat(Constant.TIMESTAMP_FORMAT);
+                    productCurrentStatus += ", reserved at " + simpleDateFormat.format(new Date(alreadyAvailableProduct.getReservationTime()));
+                } else {
+                    productCurrentStatus += ", reserved at unknown date and time";
+                }
+
+                if (alreadyAvailableProduct.getReservationTimeout() > 0L) {
+                    productCurrentStatus += ", reservation timeout is " + Util.convert(alreadyAvailableProduct.getReservationTimeout());
+                } else {
+                    productCurrentStatus += ", reservation timeout is not specified";
+                }
+            }
+
+            // Update configuration file
+            alreadyAvailableProduct = productConfigurationHandler.update(alreadyAvailableProduct);
+
+            // Store any changes
+            products.put(product.getIMEI(), alreadyAvailableProduct);
+
+            // Print current status
+            p(productCurrentStatus);
+        }
+    }
+
+    /**
+     * Creates a sync operation carrying currently available products changed since the previous sync.
+     *
+     * @return Sync operation carrying changed products
+     */
+    private synchronized ProductOperation createProductSync() {
+        ProductOperation syncProductOperation = productSync.createSync(new ArrayList<Product>(products.values()));
+        syncProductOperation.setSender(testAutomationCommunicatorHostname, testAutomationCommunicatorPort);
+        syncProductOperation.setReceiver(testAutomationServiceHostname, testAutomationServicePort);
+        return syncProductOperation;
+    }
+
+    /**
+     * Tells whenever statuses of currently available products are matching the digest of specified sync operation.
+     *
+     * @param syncProductOperation Sync operation received from the Test Automation Service
+     * @return True if product statuses are matching the digest or false otherwise
+     */
+    private synchronized boolean matchesProductSync(ProductOperation syncProductOperation) {
+        return ProductSync.matches(syncProductOperation, products.values(), ProductSync.Part.STATUS);
+    }
+
     /**
      * Handles specified message.
      *
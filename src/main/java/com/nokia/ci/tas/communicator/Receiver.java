@@ -1,13 +1,17 @@
 package com.nokia.ci.tas.communicator;
 
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 
 import java.net.Socket;
 
+import java.nio.channels.FileChannel;
+
 import java.util.List;
 
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import java.util.logging.Level;
@@ -15,16 +19,23 @@ import java.util.logging.Logger;
 
 import com.nokia.ci.tas.commons.Constant;
 import com.nokia.ci.tas.commons.Converter;
+import com.nokia.ci.tas.commons.FileChunks;
 import com.nokia.ci.tas.commons.FileDescription;
+import com.nokia.ci.tas.commons.FileTransfer;
+import com.nokia.ci.tas.commons.MessageInputStream;
+import com.nokia.ci.tas.commons.PersistentConnection;
+import com.nokia.ci.tas.commons.PersistentConnectionListener;
+import com.nokia.ci.tas.commons.PersistentConnectionReader;
 
 import com.nokia.ci.tas.commons.message.FileOperation;
 import com.nokia.ci.tas.commons.message.ProductOperation;
+import com.nokia.ci.tas.commons.message.RegistryOperation;
 import com.nokia.ci.tas.commons.message.TestOperation;
 
 /**
  * Asynchronous handler of a single incoming message
  */
-public class Receiver extends Thread {
+public class Receiver extends Thread implements PersistentConnectionListener {
 
     /**
      * A pool of all incoming connections that needs to be handled.
@@ -66,6 +77,16 @@ public class Receiver extends Thread {
      */
     private String fileSeparator;
 
+    /**
+     * Lock serializing handling of messages received over single-use and persistent connections.
+     */
+    private final Object messageLock = new Object();
+
+    /**
+     * Verified chunks of all files which are received in chunks and are not yet complete, stored by absolute file paths.
+     */
+    private ConcurrentHashMap<String, FileChunks> receivedFileChunks = new ConcurrentHashMap<String, FileChunks>();
+
     /**
      * Instance of the Test Automation Communicator's global logger.
      */
@@ -110,249 +131,54 @@ public class Receiver extends Thread {
                     // Always ensure that connection is not already closed
                     if (connection != null && !connection.isClosed()) {
                         InputStream inputStream = null;
+                        boolean keepConnection = false;
 
                         try {
-                            inputStream = connection.getInputStream();
-                            Object message = converter.handle(inputStream);
+                            MessageInputStream messageInputStream = new MessageInputStream(connection.getInputStream(), connection.getChannel());
+                            inputStream = messageInputStream;
 
-                            if (message != null) {
-                                p("Handling incoming message of type " + message.getClass().getSimpleName() + " from " + connection.getInetAddress().getCanonicalHostName());
+                            // Check the first line, leaving it in the stream
+                            String firstLine = messageInputStream.peekLine();
 
-                                if (message instanceof FileOperation) {
-                                    FileOperation fileTransfer = (FileOperation) message;
-                                    p("Processing incoming file transfer:\n" + fileTransfer);
+                            if (PersistentConnection.HEADER.equals(firstLine)) {
+                                // Remote part wants to send all its messages over a persistent connection
+                                // The connection will be closed by the reader once remote part has finished
+                                // Nothing is send after the header until it is confirmed, so the reader can use the socket directly
+                                keepConnection = true;
 
-                                    // Test Automation Communicator may receive file transfer messages only from remote Test Automation Clients
-                                    TestExecutor testExecutor = testAutomationCommunicator.getTestExecutor(fileTransfer.getTest().getRuntimeId());
-
-                                    if (testExecutor != null) {
-                                        if (fileTransfer.getId() == FileOperation.Id.GET) {
-                                            // Remote client has requested a file from this Test Automation Communicator
-                                            p("Should now send file " + fileTransfer.getFileDescription().getFileName() + " back to " + fileTransfer.getSenderHostname() + ":" + fileTransfer.getSenderPort());
-
-                                            File file = new File(testExecutor.getTestWorkspace().getAbsolutePath() + fileSeparator + fileTransfer.getFileDescription().getFileName());
-
-                                            if (file.exists() && file.canRead()) {
-                                                p("File " + file.getAbsolutePath() + " exists and can be send back to " + fileTransfer.getSenderHostname() + ":" + fileTransfer.getSenderPort());
-
-                                                FileDescription fileDescription = fileTransfer.getFileDescription();
-                                                fileDescription.setFileSize(file.length());
-
-                                                FileOperation fileTransferReply = new FileOperation(FileOperation.Id.PUT, fileTransfer.getTest(), fileDescription);
-                                                fileTransferReply.setSender(testAutomationCommunicatorHostname, testAutomationCommunicatorPort);
-                                                fileTransferReply.setReceiver(fileTransfer.getSenderHostname(), fileTransfer.getSenderPort());
-
-                                                testAutomationCommunicator.getSender().handle(fileTransferReply);
-
-                                            } else {
-                                                p("Couldn't access file " + file.getAbsolutePath() + " due to its unexistence or not sufficient access rights");
-
-                                                FileOperation fileTransferReply = fileTransfer;
-                                                fileTransferReply.setId(FileOperation.Id.ABORT);
-                                                fileTransferReply.setSender(testAutomationCommunicatorHostname, testAutomationCommunicatorPort);
-                                                fileTransferReply.setReceiver(fileTransfer.getSenderHostname(), fileTransfer.getSenderPort());
-
-                                                testAutomationCommunicator.getSender().handle(fileTransferReply);
-                                                p("A reply about this issue is send back to " + fileTransfer.getSenderHostname() + ":" + fileTransfer.getSenderPort());
-                                            }
-
-                                        } else if (fileTransfer.getId() == FileOperation.Id.PUT) {
-                                            // Remote client is sending a copy of specified file to this Test Automation Communicator
-                                            boolean isSuccess = false;
-                                            FileDescription fileDescription = fileTransfer.getFileDescription();
-                                            p("Should now receive file " + fileDescription.getFileName() + " from " + fileTransfer.getSenderHostname() + ":" + fileTransfer.getSenderPort());
-
-                                            // Try to create file in the workspace of mentioned test
-                                            File file = new File(testExecutor.getTestWorkspace().getAbsolutePath() + fileSeparator + fileDescription.getFileName());
-
-                                            if (file.exists()) {
-                                                if (file.delete()) {
-                                                    p("File was already existed at " + file.getAbsolutePath() + " but was deleted up on a new file transfer");
-                                                } else {
-                                                    p("Warning: couldn't delete old version of file at " + file.getAbsolutePath() + " probably due to insuficient access rights!");
-                                                }
-                                            }
-
-                                            if (!file.exists()) {
-                                                try {
-                                                    file.createNewFile();
-                                                    FileOutputStream fileOutputStream = new FileOutputStream(file);
-                                                    p("File " + file.getAbsolutePath() + " was successfully created");
-
-                                                    int numberOfBytesInBuffer = 0;
-                                                    long numberOfReceivedBytes = 0L;
-                                                    byte[] buffer = new byte[Constant.DEFAULT_BUFFER_SIZE];
-
-                                                    long fileTransferStartedAt = System.currentTimeMillis();
-
-                                                    do {
-                                                        numberOfBytesInBuffer = inputStream.read(buffer);
-
-                                                        if (numberOfBytesInBuffer > 0) {
-                                                            fileOutputStream.write(buffer, 0, numberOfBytesInBuffer);
-                                                            fileOutputStream.flush();
-                                                            numberOfReceivedBytes += numberOfBytesInBuffer;
-                                                        } else {
-                                                            // Safety against possible deadlocks in read()
-                                                            break;
-                                                        }
-                                                    } while (numberOfBytesInBuffer > 0);
-
-                                                    fileOutputStream.flush();
-                                                    fileOutputStream.close();
-
-                                                    // Make transferred file readable by anyone on this system
-                                                    file.setReadable(true, false);
-
-                                                    // Just show a nice message about bytes and time of transfer
-                                                    long time = System.currentTimeMillis() - fileTransferStartedAt;
-                                                    time /= 1000L; // Turn milliseconds into seconds
-
-                                                    String size = "";
-
-                                                    if (numberOfReceivedBytes > 1048576) { // Turn bytes into megabytes
-                                                        size = "" + (numberOfReceivedBytes / 1048576L ) + " MB";
-                                                    } else if (numberOfReceivedBytes > 1024) { // Turn bytes into kilobytes
-                                                        size = "" + (numberOfReceivedBytes / 1024L ) + " KB";
-                                                    } else {
-                                                        size = "" + numberOfReceivedBytes + " bytes";
-                                                    }
-
-                                                    p("Has received " + numberOfReceivedBytes + " bytes (" + size + ") of file's " + file.getName()
-                                                        + " data over network in about " + time + " seconds");
-
-                                                    if (fileDescription.getFileSize() != FileDescription.UNKNOWN_FILE_SIZE) {
-                                                        // Check if number of send bytes equals the number of bytes mentioned in the file transfer message
-                                                        if (file.length() == fileDescription.getFileSize()) {
-                                                            isSuccess = true;
-                                                            p("Successfully received file over the network");
-                                                        } else {
-                                                            p("Failed to receive file over the network: "
-                                                                + fileDescription.getFileSize() + " bytes were supposed to be transferred, but has managed to send only "
-                                                                + numberOfReceivedBytes + " bytes. And file itself actually contained " + file.length() + " bytes");
-                                                        }
-                                                    } else {
-                                                        // Assume that everything was fine
-                                                        isSuccess = true;
-                                                        p("Sender of the file " + fileDescription.getFileName() + " hasn't specified file size."
-                                                            + " Assuming that file transfer was successful, since no problems has occured during file transfer");
-                                                    }
-
-                                                    // Notify test executor about file transfer success or failure
-                                                    if (isSuccess) {
-                                                        p("Notifying executor of the test '" + testExecutor.getName() + "' about successful receive of file " + file.getName() + "'...");
-                                                        testExecutor.fileReceived(file.getName(), isSuccess);
-                                                    } else {
-                                                        p("Notifying executor of the test '" + testExecutor.getName() + "' about unsuccessful receive of file " + file.getName() + "'...");
-                                                    }
-
-                                                    // Update file cache entry
-                                                    if (isSuccess) {
-                                                        p("Updating the corresponding file cache entry for " + file.getAbsolutePath());
-
-                                                        FileCacheEntry fileCacheEntry = fileCache.getEntry(file.getAbsolutePath());
-
-                                                        if (fileCacheEntry != null) {
-                                                            fileCacheEntry.setIsTransferred(true);
-                                                            fileCacheEntry.setTimeWhenTransferred(System.currentTimeMillis());
-
-                                                            fileCache.update(fileCacheEntry);
-
-                                                            p("Checking file cache against similar file requests...");
-
-                                                            List<FileCacheEntry> untransferredSimilarEntries = fileCache.getUntransferredEntries(testExecutor.getTest(), file.getName());
-
-                                                            p("Got " + untransferredSimilarEntries.size() + " similar untransferred entries");
-
-                                                            for (FileCacheEntry entry : untransferredSimilarEntries) {
-                                                                p("Processing entry for " + entry.getAbsoluteFilePath());
-                                                                p("Copying file from " + file.getAbsolutePath() + " to " + entry.getAbsoluteFilePath());
-
-                                                                try {
-                                                                    if (fileCache.copyFile(file.getAbsolutePath(), entry.getAbsoluteFilePath())) {
-                                                                        p("Got a successful copy of file " + file.getAbsolutePath() + " into file " + entry.getAbsoluteFilePath());
-
-                                                                        entry.setIsRequested(true);
-                                                                        entry.setTimeWhenRequested(System.currentTimeMillis());
-                                                                        entry.setIsTransferred(true);
-                                                                        entry.setTimeWhenTransferred(System.currentTimeMillis());
-
-                                                                        fileCache.update(entry);
-
-                                                                        // Notify test executor about successful file transfer
-                                                                        TestExecutor executor =
-                                                                            testAutomationCommunicator.getTestExecutor(entry.getTest().getRuntimeId());
-
-                                                                        if (executor != null) {
-                                                                            p("Notifying test executor '" + executor.getName() + "' about successful file copy");
-                                                                            executor.fileReceived(file.getName(), true);
-                                                                        }
-
-                                                                    } else {
-                                                                        p("Error: Couldn't get a successful copy of file " + file.getAbsolutePath() + " into file " + entry.getAbsoluteFilePath());
-                                                                    }
-
-                                                                } catch (Exception e) {
-                                                                    e.printStackTrace();
-                                                                }
-                                                            }
-                                                        } else {
-                                                            p("Got NULL instead of file cache entry for " + file.getAbsolutePath());
-                                                        }
-                                                    }
-
-                                                    p("Enabling file transferes in sender once again");
-                                                    testAutomationCommunicator.getSender().enableFileTransfers();
-
-                                                } catch (Exception e) {
-                                                    p("Got troubles during receiving a file " + file.getAbsolutePath());
-                                                    e.printStackTrace();
-
-                                                    p("Notifying executor of the test '" + testExecutor.getName() + "' about failed file receive...");
-                                                    testExecutor.fileReceived(file.getName(), false);
-                                                }
-                                            } else {
-                                                p("Couldn't re-create file at " + file.getAbsolutePath() + " probably due to insufficient access rights");
-                                                p("Notifying executor of the test '" + testExecutor.getName() + "' about troubles with file access during the file receive...");
-                                                testExecutor.fileReceived(file.getName(), false);
-                                            }
-                                        } else {
-                                            p("Notifying executor of the test '" + testExecutor.getName() + "' about file transfer of type " + fileTransfer.getType()
-                                                + " regarding the file " + fileTransfer.getFileDescription().getFileName());
-
-                                            if (fileTransfer.getId() == FileOperation.Id.ABORT) {
-                                                testExecutor.fileReceived(fileTransfer.getFileDescription().getFileName(), false);
-                                                testExecutor.fileSend(fileTransfer.getFileDescription().getFileName(), false);
-                                            }
-                                        }
-                                    } else {
-                                        p("Test '" + fileTransfer.getTest().getRuntimeId() + "' is not handled by this Test Automation Communicator."
-                                            + " The following file transfer message will be ignored:\n" + fileTransfer);
-                                    }
-                                } else if (message instanceof TestOperation) {
+                                new PersistentConnectionReader(connection, this).start();
 
-                                    testAutomationCommunicator.handleTestOperation((TestOperation) message);
+                            } else if (firstLine != null) {
+                                // File data following the message will be read from the same message stream
+                                Object message = converter.handle(inputStream);
 
-                                } else if (message instanceof ProductOperation) {
+                                if (message instanceof FileOperation && ((FileOperation) message).getId() == FileOperation.Id.PUT) {
+                                    // Files are received in parallel, each one over its own connection
+                                    // The connection will be closed once the file data is received
+                                    p("Receiving incoming file transfer from " + connection.getInetAddress().getCanonicalHostName());
+                                    keepConnection = true;
 
-                                    testAutomationCommunicator.handleProductOperation((ProductOperation) message);
+                                    new FileReceiving((FileOperation) message, connection, inputStream).start();
 
                                 } else {
-                                    p("Message is of type " + message.getClass().getName() + " are not supported and will be ignored");
+                                    if (message != null) {
+                                        p("Handling incoming message of type " + message.getClass().getSimpleName() + " from " + connection.getInetAddress().getCanonicalHostName());
+                                        handleMessage(message, inputStream);
+                                    }
+
+                                    inputStream.close();
+                                    connection.close();
                                 }
                             }
 
-                            inputStream.close();
-                            connection.close();
-
                         } catch (Exception e) {
                             p("Got troubles during processing incoming connection from "
                                 + connection.getInetAddress().getHostName() + ":" + connection.getPort()
                                 + " - " + e.getClass() + " - " + e.getMessage());
                             e.printStackTrace();
                         } finally {
-                            // Always ensure that input stream is closed
-                            if (inputStream != null) {
+                            // Always ensure that input stream is closed, unless connection is handled by a persistent connection reader
+                            if (inputStream != null && !keepConnection) {
                                 try {
                                     inputStream.close();
                                 } catch (Exception e) {
@@ -363,7 +189,7 @@ public class Receiver extends Thread {
                             }
 
                             // Always ensure that connection is closed
-                            if (connection != null && !connection.isClosed()) {
+                            if (connection != null && !connection.isClosed() && !keepConnection) {
                                 try {
                                     connection.close();
                                 } catch (Exception e) {
@@ -396,6 +222,474 @@ public class Receiver extends Thread {
         }
     }
 
+    /**
+     * Handles a message received over a persistent connection.
+     *
+     * @param inputStream Input stream containing XML representation of received message
+     * @param connection Persistent connection this message was received from
+     */
+    @Override
+    public void messageReceived(InputStream inputStream, PersistentConnectionReader connection) {
+        try {
+            Object message = converter.handle(inputStream);
+
+            if (message != null) {
+                p("Handling incoming message of type " + message.getClass().getSimpleName() + " from " + connection.getConnection().getInetAddress().getCanonicalHostName());
+                handleMessage(message, inputStream);
+            }
+        } catch (Exception e) {
+            p("Got troubles during processing a message received over persistent connection from "
+                + connection.getConnection().getInetAddress().getHostName() + ":" + connection.getConnection().getPort()
+                + " - " + e.getClass() + " - " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Handles specified incoming message.
+     * Messages received over all connections are handled one after another,
+     * except for the file data which is received by its own thread.
+     *
+     * @param message Received message
+     * @param inputStream Input stream the message was received from, which may also contain the data of transferred file
+     */
+    private void handleMessage(Object message, InputStream inputStream) {
+        synchronized (messageLock) {
+            if (message instanceof FileOperation) {
+                FileOperation fileTransfer = (FileOperation) message;
+                p("Processing incoming file transfer:\n" + fileTransfer);
+
+                // Test Automation Communicator may receive file transfer messages only from remote Test Automation Clients
+                TestExecutor testExecutor = testAutomationCommunicator.getTestExecutor(fileTransfer.getTest().getRuntimeId());
+
+                if (testExecutor != null) {
+                    if (fileTransfer.getId() == FileOperation.Id.GET) {
+                        // Remote client has requested a file from this Test Automation Communicator
+                        p("Should now send file " + fileTransfer.getFileDescription().getFileName() + " back to " + fileTransfer.getSenderHostname() + ":" + fileTransfer.getSenderPort());
+
+                        File file = new File(testExecutor.getTestWorkspace().getAbsolutePath() + fileSeparator + fileTransfer.getFileDescription().getFileName());
+
+                        if (file.exists() && file.canRead()) {
+                            p("File " + file.getAbsolutePath() + " exists and can be send back to " + fileTransfer.getSenderHostname() + ":" + fileTransfer.getSenderPort());
+
+                            FileDescription fileDescription = fileTransfer.getFileDescription();
+                            fileDescription.setFileSize(file.length());
+
+                            FileOperation fileTransferReply = new FileOperation(FileOperation.Id.PUT, fileTransfer.getTest(), fileDescription);
+                            fileTransferReply.setSender(testAutomationCommunicatorHostname, testAutomationCommunicatorPort);
+                            fileTransferReply.setReceiver(fileTransfer.getSenderHostname(), fileTransfer.getSenderPort());
+
+                            testAutomationCommunicator.getSender().handle(fileTransferReply);
+
+                        } else {
+                            p("Couldn't access file " + file.getAbsolutePath() + " due to its unexistence or not sufficient access rights");
+
+                            FileOperation fileTransferReply = fileTransfer;
+                            fileTransferReply.setId(FileOperation.Id.ABORT);
+                            fileTransferReply.setSender(testAutomationCommunicatorHostname, testAutomationCommunicatorPort);
+                            fileTransferReply.setReceiver(fileTransfer.getSenderHostname(), fileTransfer.getSenderPort());
+
+                            testAutomationCommunicator.getSender().handle(fileTransferReply);
+                            p("A reply about this issue is send back to " + fileTransfer.getSenderHostname() + ":" + fileTransfer.getSenderPort());
+                        }
+
+                    } else if (fileTransfer.getId() == FileOperation.Id.PUT) {
+                        // Remote client is sending a copy of specified file to this Test Automation Communicator
+                        receiveFile(fileTransfer, testExecutor, inputStream);
+                    } else if (fileTransfer.getId() == FileOperation.Id.STORED) {
+                        // Remote client has confirmed that the stored copy of requested file is still up to date
+                        restoreFile(fileTransfer, testExecutor);
+                    } else {
+                        p("Notifying executor of the test '" + testExecutor.getName() + "' about file transfer of type " + fileTransfer.getType()
+                            + " regarding the file " + fileTransfer.getFileDescription().getFileName());
+
+                        if (fileTransfer.getId() == FileOperation.Id.ABORT) {
+                            testAutomationCommunicator.getSender().fileTransferFinished(
+                                testExecutor.getTestWorkspace().getAbsolutePath() + fileSeparator + fileTransfer.getFileDescription().getFileName());
+                            testExecutor.fileReceived(fileTransfer.getFileDescription().getFileName(), false);
+                            testExecutor.fileSend(fileTransfer.getFileDescription().getFileName(), false);
+                        }
+                    }
+                } else {
+                    p("Test '" + fileTransfer.getTest().getRuntimeId() + "' is not handled by this Test Automation Communicator."
+                        + " The following file transfer message will be ignored:\n" + fileTransfer);
+                }
+            } else if (message instanceof TestOperation) {
+
+                testAutomationCommunicator.handleTestOperation((TestOperation) message);
+
+            } else if (message instanceof ProductOperation) {
+
+                testAutomationCommunicator.handleProductOperation((ProductOperation) message);
+
+            } else if (message instanceof RegistryOperation) {
+
+                testAutomationCommunicator.handleRegistryOperation((RegistryOperation) message);
+
+            } else {
+                p("Message is of type " + message.getClass().getName() + " are not supported and will be ignored");
+            }
+        }
+    }
+
+    /**
+     * Receives data of the file send by remote client together with specified file transfer message.
+     *
+     * @param fileTransfer File transfer message
+     * @param testExecutor Executor of the test the file belongs to
+     * @param inputStream Input stream containing data of the transferred file
+     */
+    private void receiveFile(FileOperation fileTransfer, TestExecutor testExecutor, InputStream inputStream) {
+        boolean isSuccess = false;
+        boolean isWaitingForChunks = false;
+        FileDescription fileDescription = fileTransfer.getFileDescription();
+        p("Should now receive file " + fileDescription.getFileName() + " from " + fileTransfer.getSenderHostname() + ":" + fileTransfer.getSenderPort());
+
+        // Try to create file in the workspace of mentioned test
+        File file = new File(testExecutor.getTestWorkspace().getAbsolutePath() + fileSeparator + fileDescription.getFileName());
+
+        // Chunked transfers may carry only the chunks which were missing or corrupted in previous transfers
+        FileChunks fileChunks = receivedFileChunks.get(file.getAbsolutePath());
+        boolean isResumed = fileChunks != null && fileChunks.isContinuedBy(fileDescription);
+
+        if (isResumed) {
+            p("Continuing to receive file " + file.getAbsolutePath() + " with " + fileChunks
+                + ", now from byte " + fileDescription.getOffset() + " (" + fileDescription.getLength() + " bytes)");
+        } else {
+            receivedFileChunks.remove(file.getAbsolutePath());
+            fileChunks = null;
+
+            if (fileDescription.isChunked()) {
+                fileChunks = new FileChunks(fileDescription);
+                receivedFileChunks.put(file.getAbsolutePath(), fileChunks);
+            }
+        }
+
+        if (file.exists() && !isResumed) {
+            if (file.delete()) {
+                p("File was already existed at " + file.getAbsolutePath() + " but was deleted up on a new file transfer");
+            } else {
+                p("Warning: couldn't delete old version of file at " + file.getAbsolutePath() + " probably due to insuficient access rights!");
+            }
+        }
+
+        if (!file.exists() || isResumed) {
+            try {
+                if (!isResumed) {
+                    file.createNewFile();
+                    p("File " + file.getAbsolutePath() + " was successfully created");
+                }
+
+                RandomAccessFile fileData = new RandomAccessFile(file, "rw");
+
+                long fileTransferStartedAt = System.currentTimeMillis();
+
+                // File data is moved directly from the connection into the file
+                long numberOfReceivedBytes = 0L;
+
+                try {
+                    FileChannel fileChannel = fileData.getChannel();
+                    fileChannel.position(fileDescription.getOffset());
+
+                    try {
+                        numberOfReceivedBytes = FileTransfer.receive(inputStream, fileChannel);
+                    } catch (IOException e) {
+                        if (fileChunks == null) {
+                            throw e;
+                        }
+
+                        // All the chunks which have arrived before the failure are still verified
+                        p("Got troubles during receiving file data: " + e.getClass() + " " + e.getMessage());
+                    }
+
+                    if (fileChunks != null) {
+                        p("Got " + fileChunks.verify(fileChannel, fileDescription) + " more verified chunks of file " + file.getName()
+                            + ", now " + fileChunks);
+                    }
+                } finally {
+                    fileData.close();
+                }
+
+                // Make transferred file readable by anyone on this system
+                file.setReadable(true, false);
+
+                // Just show a nice message about bytes and time of transfer
+                long time = System.currentTimeMillis() - fileTransferStartedAt;
+                time /= 1000L; // Turn milliseconds into seconds
+
+                String size = "";
+
+                if (numberOfReceivedBytes > 1048576) { // Turn bytes into megabytes
+                    size = "" + (numberOfReceivedBytes / 1048576L ) + " MB";
+                } else if (numberOfReceivedBytes > 1024) { // Turn bytes into kilobytes
+                    size = "" + (numberOfReceivedBytes / 1024L ) + " KB";
+                } else {
+                    size = "" + numberOfReceivedBytes + " bytes";
+                }
+
+                p("Has received " + numberOfReceivedBytes + " bytes (" + size + ") of file's " + file.getName()
+                    + " data over network in about " + time + " seconds");
+
+                if (fileChunks != null) {
+                    // Chunked transfers are successful only when all the chunks are verified
+                    if (fileChunks.isComplete()) {
+                        isSuccess = true;
+                        receivedFileChunks.remove(file.getAbsolutePath());
+                        p("Successfully received file over the network, all its chunks are verified");
+                    } else if (!fileChunks.isAbandoned()) {
+                        FileOperation fileTransferRequest =
+                            new FileOperation(FileOperation.Id.GET, fileTransfer.getTest(), fileChunks.describeMissingRange(file.getName()));
+                        fileTransferRequest.setSender(testAutomationCommunicatorHostname, testAutomationCommunicatorPort);
+                        fileTransferRequest.setReceiver(fileTransfer.getSenderHostname(), fileTransfer.getSenderPort());
+
+                        p("Requesting missing chunks of file " + file.getName() + " from byte " + fileTransferRequest.getFileDescription().getOffset()
+                            + " (" + fileTransferRequest.getFileDescription().getLength() + " bytes)");
+
+                        testAutomationCommunicator.getSender().handle(fileTransferRequest);
+                        testAutomationCommunicator.getSender().getFileTransferScheduler().touch(file.getAbsolutePath());
+                        isWaitingForChunks = true;
+                    } else {
+                        receivedFileChunks.remove(file.getAbsolutePath());
+                        p("Failed to receive file over the network: no more chunks were verified in "
+                            + fileChunks.getNumberOfAttemptsWithoutProgress() + " attempts, " + fileChunks);
+                    }
+                } else if (fileDescription.getFileSize() != FileDescription.UNKNOWN_FILE_SIZE) {
+                    // Check if number of send bytes equals the number of bytes mentioned in the file transfer message
+                    if (file.length() == fileDescription.getFileSize()) {
+                        isSuccess = true;
+                        p("Successfully received file over the network");
+                    } else {
+                        p("Failed to receive file over the network: "
+                            + fileDescription.getFileSize() + " bytes were supposed to be transferred, but has managed to send only "
+                            + numberOfReceivedBytes + " bytes. And file itself actually contained " + file.length() + " bytes");
+                    }
+                } else {
+                    // Assume that everything was fine
+                    isSuccess = true;
+                    p("Sender of the file " + fileDescription.getFileName() + " hasn't specified file size."
+                        + " Assuming that file transfer was successful, since no problems has occured during file transfer");
+                }
+
+                // Keep the received artifact for the following tests, unless its content is already stored
+                if (isSuccess) {
+                    String contentHash = (fileChunks != null) ? fileChunks.getContentHash() : fileDescription.getContentHash();
+
+                    if (contentHash != null) {
+                        testAutomationCommunicator.getArtifactStore().store(file, contentHash, testExecutor.getRemoteClientHostname(), fileDescription.getFileName());
+                    }
+                }
+
+                // Notify test executor about file transfer success or failure
+                if (isSuccess) {
+                    p("Notifying executor of the test '" + testExecutor.getName() + "' about successful receive of file " + file.getName() + "'...");
+                    testExecutor.fileReceived(file.getName(), isSuccess);
+                } else {
+                    p("Notifying executor of the test '" + testExecutor.getName() + "' about unsuccessful receive of file " + file.getName() + "'...");
+                }
+
+                // Update file cache entry
+                if (isSuccess) {
+                    updateFileCache(file, testExecutor);
+                }
+
+                if (!isWaitingForChunks) {
+                    // Let sender request the next file from the same client
+                    testAutomationCommunicator.getSender().fileTransferFinished(file.getAbsolutePath());
+                }
+
+            } catch (Exception e) {
+                p("Got troubles during receiving a file " + file.getAbsolutePath());
+                e.printStackTrace();
+
+                testAutomationCommunicator.getSender().fileTransferFinished(file.getAbsolutePath());
+
+                p("Notifying executor of the test '" + testExecutor.getName() + "' about failed file receive...");
+                testExecutor.fileReceived(file.getName(), false);
+            }
+        } else {
+            p("Couldn't re-create file at " + file.getAbsolutePath() + " probably due to insufficient access rights");
+            testAutomationCommunicator.getSender().fileTransferFinished(file.getAbsolutePath());
+            p("Notifying executor of the test '" + testExecutor.getName() + "' about troubles with file access during the file receive...");
+            testExecutor.fileReceived(file.getName(), false);
+        }
+    }
+
+    /**
+     * Takes the requested file from the artifact store, instead of receiving it from remote client.
+     * If the stored copy has disappeared in between, the whole file is requested once again.
+     *
+     * @param fileTransfer File transfer message confirming the stored copy
+     * @param testExecutor Executor of the test the file belongs to
+     */
+    private void restoreFile(FileOperation fileTransfer, TestExecutor testExecutor) {
+        FileDescription fileDescription = fileTransfer.getFileDescription();
+        File file = new File(testExecutor.getTestWorkspace().getAbsolutePath() + fileSeparator + fileDescription.getFileName());
+
+        if (testAutomationCommunicator.getArtifactStore().restore(fileDescription.getContentHash(), file)) {
+            p("File " + file.getAbsolutePath() + " was taken from the artifact store instead of receiving it from "
+                + fileTransfer.getSenderHostname() + ":" + fileTransfer.getSenderPort());
+
+            testAutomationCommunicator.getSender().fileTransferFinished(file.getAbsolutePath());
+
+            p("Notifying executor of the test '" + testExecutor.getName() + "' about successful receive of file " + file.getName() + "'...");
+            testExecutor.fileReceived(file.getName(), true);
+
+            updateFileCache(file, testExecutor);
+        } else {
+            FileDescription requestedFileDescription = new FileDescription();
+            requestedFileDescription.setFileName(fileDescription.getFileName());
+            requestedFileDescription.setFileSize(FileDescription.UNKNOWN_FILE_SIZE);
+
+            FileOperation fileTransferRequest = new FileOperation(FileOperation.Id.GET, fileTransfer.getTest(), requestedFileDescription);
+            fileTransferRequest.setSender(testAutomationCommunicatorHostname, testAutomationCommunicatorPort);
+            fileTransferRequest.setReceiver(fileTransfer.getSenderHostname(), fileTransfer.getSenderPort());
+
+            p("Stored copy of file " + file.getName() + " is not available anymore, requesting the whole file once again");
+
+            testAutomationCommunicator.getSender().handle(fileTransferRequest);
+            testAutomationCommunicator.getSender().getFileTransferScheduler().touch(file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Marks the file cache entry of successfully received file as transferred,
+     * and copies the file into workspaces of all the other tests waiting for the same file.
+     *
+     * @param file Received file
+     * @param testExecutor Executor of the test the file belongs to
+     */
+    private void updateFileCache(File file, TestExecutor testExecutor) {
+        p("Updating the corresponding file cache entry for " + file.getAbsolutePath());
+
+        FileCacheEntry fileCacheEntry = fileCache.getEntry(file.getAbsolutePath());
+
+        if (fileCacheEntry != null) {
+            fileCacheEntry.setIsTransferred(true);
+            fileCacheEntry.setTimeWhenTransferred(System.currentTimeMillis());
+
+            fileCache.update(fileCacheEntry);
+
+            p("Checking file cache against similar file requests...");
+
+            List<FileCacheEntry> untransferredSimilarEntries = fileCache.getUntransferredEntries(testExecutor.getTest(), file.getName());
+
+            p("Got " + untransferredSimilarEntries.size() + " similar untransferred entries");
+
+            for (FileCacheEntry entry : untransferredSimilarEntries) {
+                p("Processing entry for " + entry.getAbsoluteFilePath());
+                p("Copying file from " + file.getAbsolutePath() + " to " + entry.getAbsoluteFilePath());
+
+                try {
+                    if (fileCache.copyFile(file.getAbsolutePath(), entry.getAbsoluteFilePath())) {
+                        p("Got a successful copy of file " + file.getAbsolutePath() + " into file " + entry.getAbsoluteFilePath());
+
+                        entry.setIsRequested(true);
+                        entry.setTimeWhenRequested(System.currentTimeMillis());
+                        entry.setIsTransferred(true);
+                        entry.setTimeWhenTransferred(System.currentTimeMillis());
+
+                        fileCache.update(entry);
+
+                        // Notify test executor about successful file transfer
+                        TestExecutor executor =
+                            testAutomationCommunicator.getTestExecutor(entry.getTest().getRuntimeId());
+
+                        if (executor != null) {
+                            p("Notifying test executor '" + executor.getName() + "' about successful file copy");
+                            executor.fileReceived(file.getName(), true);
+                        }
+
+                    } else {
+                        p("Error: Couldn't get a successful copy of file " + file.getAbsolutePath() + " into file " + entry.getAbsoluteFilePath());
+                    }
+
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        } else {
+            p("Got NULL instead of file cache entry for " + file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Receives a single file over its own connection, without blocking handling of other messages and file transfers.
+     */
+    private class FileReceiving extends Thread {
+
+        /**
+         * File transfer message preceding the file data.
+         */
+        private FileOperation fileTransfer;
+
+        /**
+         * Connection the file is received over.
+         */
+        private Socket connection;
+
+        /**
+         * Input stream of the connection, containing data of the transferred file.
+         */
+        private InputStream inputStream;
+
+        /**
+         * Constructor.
+         *
+         * @param fileTransfer File transfer message preceding the file data
+         * @param connection Connection the file is received over
+         * @param inputStream Input stream of the connection, containing data of the transferred file
+         */
+        public FileReceiving(FileOperation fileTransfer, Socket connection, InputStream inputStream) {
+            super(); // Start as anonymous thread
+
+            this.fileTransfer = fileTransfer;
+            this.connection = connection;
+            this.inputStream = inputStream;
+
+            setPriority(MIN_PRIORITY); // Always work with minimal priority
+        }
+
+        /**
+         * Receives the file and closes its connection.
+         */
+        @Override
+        public void run() {
+            try {
+                p("Processing incoming file transfer:\n" + fileTransfer);
+
+                TestExecutor testExecutor = testAutomationCommunicator.getTestExecutor(fileTransfer.getTest().getRuntimeId());
+
+                if (testExecutor != null) {
+                    receiveFile(fileTransfer, testExecutor, inputStream);
+                } else {
+                    p("Test '" + fileTransfer.getTest().getRuntimeId() + "' is not handled by this Test Automation Communicator."
+                        + " The following file transfer message will be ignored:\n" + fileTransfer);
+                }
+            } catch (Exception e) {
+                p("Got troubles during receiving a file from "
+                    + connection.getInetAddress().getHostName() + ":" + connection.getPort()
+                    + " - " + e.getClass() + " - " + e.getMessage());
+                e.printStackTrace();
+            } finally {
+                try {
+                    inputStream.close();
+                } catch (Exception e) {
+                    p("Got troubles while tried to close input stream from "
+                        + connection.getInetAddress().getHostName() + ":" + connection.getPort()
+                        + " - " + e.getClass() + " " + e.getMessage());
+                }
+
+                try {
+                    connection.close();
+                } catch (Exception e) {
+                    p("Got troubles during closing incoming connection from "
+                        + connection.getInetAddress().getHostName() + ":" + connection.getPort()
+                        + " - " + e.getClass() + " - " + e.getMessage());
+                }
+            }
+        }
+    }
+
     /**
      * Handles specified connection.
      *
@@ -4,11 +4,12 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.OutputStream;
 
-import java.net.InetAddress;
 import java.net.Socket;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import java.util.logging.Level;
@@ -16,6 +17,8 @@ import java.util.logging.Logger;
 
 import com.nokia.ci.tas.commons.Constant;
 import com.nokia.ci.tas.commons.FileDescription;
+import com.nokia.ci.tas.commons.FileTransfer;
+import com.nokia.ci.tas.commons.PersistentConnection;
 import com.nokia.ci.tas.commons.TestNodeDescription;
 
 import com.nokia.ci.tas.commons.Util;
@@ -38,6 +41,12 @@ public class Sender extends Thread {
      */
     private ConcurrentLinkedQueue<Message> messagePool;
 
+    /**
+     * Persistent connections to all remote parts, mapped by their "hostname:port".
+     * File data is still send over dedicated connections.
+     */
+    private ConcurrentHashMap<String, PersistentConnection> connections;
+
     /**
      * Variable what keeps sender running.
      */
@@ -88,8 +97,21 @@ public class Sender extends Thread {
      */
     private Logger logger = Logger.getLogger(TestAutomationCommunicator.GLOBAL_LOGGER_NAME);
 
-    private boolean canSendFileRequests = true;
-    private long timeOfLastFileRequest = 0L;
+    /**
+     * Scheduler of parallel file transfers requested from remote clients.
+     */
+    private FileTransferScheduler fileTransferScheduler;
+
+    /**
+     * The moment of time until which no new file requests are send, after all tries to send one have failed.
+     */
+    private long fileRequestsArePostponedUntil = 0L;
+
+    /**
+     * True if new files were added to the file cache or some file transfer slots were given back,
+     * since the last time sender has tried to request files.
+     */
+    private boolean areFileRequestsUpdated = true;
 
     /**
      * Constrcutor.
@@ -102,6 +124,7 @@ public class Sender extends Thread {
         this.fileCache = fileCache;
 
         messagePool = new ConcurrentLinkedQueue();
+        connections = new ConcurrentHashMap<String, PersistentConnection>();
 
         testAutomationCommunicator = TestAutomationCommunicator.getInstance();
 
@@ -112,7 +135,8 @@ public class Sender extends Thread {
         testAutomationCommunicatorPort = testAutomationCommunicator.getPort();
         fileSeparator = testAutomationCommunicator.getFileSeparator();
 
-        timeOfLastFileRequest = System.currentTimeMillis();
+        fileTransferScheduler = new FileTransferScheduler(testAutomationCommunicator.getMaximalNumberOfFileTransfersPerClient(),
+                                                          testAutomationCommunicator.getMaximalNumberOfFileTransfers());
 
         // Always work with minimal priority
         setPriority(MIN_PRIORITY);
@@ -144,12 +168,14 @@ public class Sender extends Thread {
                                     FileDescription fileDescription = fileOperation.getFileDescription();
 
                                     boolean isSuccess = false;
+                                    boolean isLeftToReceiver = false;
                                     String reasonOfFailure = Constant.UNSPECIFIED_REASON_OF_FAILURE;
 
                                     for (int i = 0; i < Constant.NUMBER_OF_RETRIES; i++) {
                                         Socket socket = null;
                                         OutputStream output = null;
                                         FileInputStream fileInputStream = null;
+                                        boolean isFileDataStarted = false;
 
                                         try {
                                             File file = new File(testExecutor.getTestWorkspace().getAbsolutePath() + fileSeparator + fileDescription.getFileName());
@@ -159,38 +185,23 @@ public class Sender extends Thread {
 
                                                 fileInputStream = new FileInputStream(file);
 
-                                                socket = new Socket(InetAddress.getByName(fileOperation.getReceiverHostname()), fileOperation.getReceiverPort());
+                                                // Describe the range to be send together with checksums of its chunks,
+                                                // so the receiver could verify them and ask again only for the missing or corrupted ones
+                                                long numberOfBytesToSend = FileTransfer.prepareChunkedTransfer(fileInputStream.getChannel(), fileDescription);
+
+                                                socket = FileTransfer.openSocket(fileOperation.getReceiverHostname(), fileOperation.getReceiverPort());
                                                 output = socket.getOutputStream();
 
                                                 // First send the file transfer message itself
                                                 output.write(fileOperation.toXML().getBytes("UTF-8"));
                                                 output.flush();
-                                                p("File Transfer message was successfully send, now should also send " + fileDescription.getFileSize() + " bytes of file data...");
-
-                                                // The send all bytes that file has
-                                                long numberOfBytesToSend = fileDescription.getFileSize();
-                                                int numberOfBytesInBuffer = 0;
-                                                long numberOfActuallySendBytes = 0L;
-                                                byte[] buffer = new byte[Constant.DEFAULT_BUFFER_SIZE];
+                                                p("File Transfer message was successfully send, now should also send " + numberOfBytesToSend + " bytes of file data"
+                                                    + " starting from byte " + fileDescription.getOffset() + "...");
 
+                                                // The send all bytes of the range, directly from the file into the connection
                                                 long fileTransferStartedAt = System.currentTimeMillis();
-
-                                                do {
-                                                    numberOfBytesInBuffer = fileInputStream.read(buffer);
-
-                                                    if (numberOfBytesInBuffer > 0) {
-                                                        output.write(buffer, 0, numberOfBytesInBuffer);
-                                                        output.flush();
-
-                                                        numberOfBytesToSend -= numberOfBytesInBuffer;
-                                                        numberOfActuallySendBytes += numberOfBytesInBuffer;
-                                                    } else {
-                                                        // Safety against possible deadlocks in read()
-                                                        break;
-                                                    }
-                                                } while (numberOfBytesToSend > 0);
-
-                                                output.flush();
+                                                isFileDataStarted = true;
+                                                long numberOfActuallySendBytes = FileTransfer.send(fileInputStream, socket, fileDescription.getOffset(), numberOfBytesToSend);
 
                                                 output.close();
                                                 socket.close();
@@ -214,12 +225,12 @@ public class Sender extends Thread {
                                                 p("Has send " + size + " of file's " + fileDescription.getFileName() + " data over network in about " + time + " seconds");
 
                                                 // Check if number of send bytes equals the number of bytes mentioned in the file transfer message
-                                                if (file.length() == numberOfActuallySendBytes) {
+                                                if (numberOfBytesToSend == numberOfActuallySendBytes) {
                                                     p("File " + fileDescription.getFileName() + " was successfully transferred over network");
                                                     isSuccess = true;
                                                 } else {
                                                     reasonOfFailure = "Failed to send file over the network: "
-                                                            + fileDescription.getFileSize() + " bytes were supposed to be transferred, but has managed to send only "
+                                                            + numberOfBytesToSend + " bytes were supposed to be transferred, but has managed to send only "
                                                             + numberOfActuallySendBytes + " bytes. The file itself actually contained " + file.length() + " bytes";
                                                 }
                                             } else {
@@ -229,6 +240,9 @@ public class Sender extends Thread {
                                             reasonOfFailure = "Got troubles while tried to send a file to remote part at "
                                                 + fileOperation.getReceiverHostname() + ":" + fileOperation.getReceiverPort()
                                                 + " - " + e.getClass() + ": " + e.getMessage();
+
+                                            // Once the receiver has got the chunk checksums, it will verify what has arrived and ask for the rest itself
+                                            isLeftToReceiver = isFileDataStarted;
                                         } finally {
                                             // Always ensure that file input stream is closed
                                             if (fileInputStream != null) {
@@ -265,6 +279,10 @@ public class Sender extends Thread {
 
                                         if (isSuccess) {
                                             break; // Stop any other tries
+                                        } else if (isLeftToReceiver) {
+                                            p("Got a failure during sending file data: " + reasonOfFailure
+                                                + ". Remote part will request the missing chunks of file " + fileDescription.getFileName());
+                                            break; // Don't re-send the chunks which were already delivered
                                         } else {
                                             p("Got a failure on attempt #" + (i + 1) + ": " + reasonOfFailure);
                                             continue; // For preventing any chances of a deadlock
@@ -274,6 +292,9 @@ public class Sender extends Thread {
                                     // Notify test executor about successful or failed file transfer
                                     if (isSuccess) {
                                         testExecutor.fileSend(fileDescription.getFileName(), true);
+                                    } else if (isLeftToReceiver) {
+                                        // Test executor will be notified once the missing chunks are requested and send
+                                        p("Waiting for remote part to request the missing chunks of file " + fileDescription.getFileName());
                                     } else {
                                         // Notify test executor about failed file transfer
                                         testExecutor.fileSend(fileDescription.getFileName(), false);
@@ -284,58 +305,19 @@ public class Sender extends Thread {
                                     String reasonOfFailure = Constant.UNSPECIFIED_REASON_OF_FAILURE;
 
                                     for (int i = 0; i < Constant.NUMBER_OF_RETRIES; i++) {
-                                        Socket socket = null;
-                                        OutputStream output = null;
-
                                         try {
                                             p("Trying to send a file transfer message to remote part at " + fileOperation.getReceiverHostname() + ":" + fileOperation.getReceiverPort());
 
-                                            socket = new Socket(InetAddress.getByName(fileOperation.getReceiverHostname()), fileOperation.getReceiverPort());
-                                            output = socket.getOutputStream();
-
-                                            p("Connection to remote part at " + fileOperation.getReceiverHostname() + ":" + fileOperation.getReceiverPort() + " is OK");
-
-                                            output.write(fileOperation.toXML().getBytes("UTF-8"));
-                                            output.flush();
+                                            getConnection(fileOperation.getReceiverHostname(), fileOperation.getReceiverPort()).send(fileOperation);
 
                                             p("File transfer message was successfully send");
 
-                                            output.close();
-                                            socket.close();
-
-                                            p("File transfer message handling is over");
-
                                             isSuccess = true;
-                                            canSendFileRequests = false; // Will be de-blocked after reply
-                                            timeOfLastFileRequest = System.currentTimeMillis();
 
                                         } catch (Exception e) {
                                             reasonOfFailure = "Got troubles while tried to send a file transfer message to remote part at "
                                                 + fileOperation.getReceiverHostname() + ":" + fileOperation.getReceiverPort()
                                                 + " - " + e.getClass() + ": " + e.getMessage();
-                                        } finally {
-                                            // Always ensure that output stream is closed
-                                            if (output != null) {
-                                                try {
-                                                    output.close();
-                                                } catch (Exception e) {
-                                                    p("Got troubles while tried to close output stream to "
-                                                        + fileOperation.getReceiverHostname() + ":" + fileOperation.getReceiverPort()
-                                                        + " - " + e.getClass() + " " + e.getMessage());
-                                                }
-                                            }
-
-                                            // Always ensure that connection is closed
-                                            if (socket != null && !socket.isClosed()) {
-                                                try {
-                                                    socket.close();
-                                                } catch (Exception e) {
-                                                    p("Got troubles during closing outcoming connection to "
-                                                        + socket.getInetAddress().getHostName() + ":" + socket.getPort()
-                                                        + " - " + e.getClass() + " - " + e.getMessage());
-                                                    e.printStackTrace();
-                                                }
-                                            }
                                         }
 
                                         if (isSuccess) {
@@ -353,45 +335,12 @@ public class Sender extends Thread {
                             // Text messages are only of informative nature, so there is no need to resend them if sending has failed
                             TextMessage textMessage = (TextMessage) message;
 
-                            Socket socket = null;
-                            OutputStream outputStream = null;
-
                             try {
-                                socket = new Socket(textMessage.getReceiverHostname(), textMessage.getReceiverPort());
-                                outputStream = socket.getOutputStream();
-
                                 // Send message
-                                outputStream.write(textMessage.toXML().getBytes("UTF-8"));
-                                outputStream.flush();
-
-                                outputStream.close();
-                                socket.close();
+                                getConnection(textMessage.getReceiverHostname(), textMessage.getReceiverPort()).send(textMessage);
 
                             } catch (Exception e) {
                                 p("Got troubles during processing a text message: " + message, e);
-                            } finally {
-                                // Always ensure that output stream is closed
-                                if (outputStream != null) {
-                                    try {
-                                        outputStream.close();
-                                    } catch (Exception e) {
-                                        p("Got troubles while tried to close output stream to "
-                                            + textMessage.getReceiverHostname() + ":" + textMessage.getReceiverPort()
-                                            + " - " + e.getClass() + " " + e.getMessage());
-                                    }
-                                }
-
-                                // Always ensure that connection is closed
-                                if (socket != null && !socket.isClosed()) {
-                                    try {
-                                        socket.close();
-                                    } catch (Exception e) {
-                                        p("Got troubles during closing outcoming connection to "
-                                            + socket.getInetAddress().getHostName() + ":" + socket.getPort()
-                                            + " - " + e.getClass() + " - " + e.getMessage());
-                                        e.printStackTrace();
-                                    }
-                                }
                             }
                         } else {
                             // Send other types of messages
@@ -399,19 +348,9 @@ public class Sender extends Thread {
                             String reasonOfFailure = Constant.UNSPECIFIED_REASON_OF_FAILURE;
 
                             for (int i = 0; i < Constant.NUMBER_OF_RETRIES; i++) {
-                                Socket socket = null;
-                                OutputStream output = null;
-
                                 try {
-                                    socket = new Socket(InetAddress.getByName(message.getReceiverHostname()), message.getReceiverPort());
-                                    output = socket.getOutputStream();
-
                                     // Send message
-                                    output.write(message.toXML().getBytes("UTF-8"));
-                                    output.flush();
-
-                                    output.close();
-                                    socket.close();
+                                    getConnection(message.getReceiverHostname(), message.getReceiverPort()).send(message);
 
                                     isSuccess = true;
 
@@ -420,29 +359,6 @@ public class Sender extends Thread {
                                     reasonOfFailure = "Got troubles while tried to send a message to remote part at "
                                         + message.getReceiverHostname() + ":" + message.getReceiverPort()
                                         + " - " + e.getClass() + ": " + e.getMessage();
-                                } finally {
-                                    // Always ensure that output stream is closed
-                                    if (output != null) {
-                                        try {
-                                            output.close();
-                                        } catch (Exception e) {
-                                            p("Got troubles while tried to close output stream to "
-                                                + message.getReceiverHostname() + ":" + message.getReceiverPort()
-                                                + " - " + e.getClass() + " " + e.getMessage());
-                                        }
-                                    }
-
-                                    // Always ensure that connection is closed
-                                    if (socket != null && !socket.isClosed()) {
-                                        try {
-                                            socket.close();
-                                        } catch (Exception e) {
-                                            p("Got troubles during closing outcoming connection to "
-                                                + socket.getInetAddress().getHostName() + ":" + socket.getPort()
-                                                + " - " + e.getClass() + " - " + e.getMessage());
-                                            e.printStackTrace();
-                                        }
-                                    }
                                 }
 
                                 if (isSuccess) {
@@ -456,146 +372,222 @@ public class Sender extends Thread {
                     }
                 }
 
-                // Process outcoming file requests
-                if (canSendFileRequests && fileCache.hasUnrequestedEntries()) {
-                    List<FileCacheEntry> fileCacheEntries = fileCache.getUnrequestedEntries();
+                // Process outcoming file requests, as many of them in parallel as the scheduler allows
+                if (System.currentTimeMillis() >= fileRequestsArePostponedUntil && takeFileRequestUpdates()) {
+                    requestFiles();
+                }
 
-                    for (FileCacheEntry fileCacheEntry : fileCacheEntries) {
-                        p("Processing unrequested entry from the file cache...");
+                // Ensure that we don't have any deadlocks with file transfer requests whose replies were lost
+                if (!fileTransferScheduler.expire(Constant.FIVE_MINUTES).isEmpty()) {
+                    fileRequestsUpdated();
+                }
 
-                        FileOperation fileTransferRequest = fileCacheEntry.getFileTransferRequest();
+                // Send test node registry update each minute, no matter what the communication state is
+                if ((System.currentTimeMillis() - timeOfLastRegistration) > Constant.ONE_MINUTE) {
+                    p("Adding a registry operation into the messaging pool...");
 
-                        p("Processing a file transfer request:\n" + fileTransferRequest);
+                    timeOfLastRegistration = System.currentTimeMillis();
 
-                        // All the other file transfers messages are simply forwarded to remote part
-                        boolean isSuccess = false;
-                        String reasonOfFailure = Constant.UNSPECIFIED_REASON_OF_FAILURE;
+                    TestNodeDescription testNodeDescription = testAutomationCommunicator.getTestNodeDescription();
 
-                        for (int i = 0; i < Constant.NUMBER_OF_RETRIES; i++) {
-                            Socket socket = null;
-                            OutputStream output = null;
+                    RegistryOperation registryOperation = new RegistryOperation(RegistryOperation.Id.UPDATE, RegistryOperation.Remote.TEST_NODE);
+                    registryOperation.setSender(testAutomationCommunicatorHostname, testAutomationCommunicatorPort);
+                    registryOperation.setReceiver(testAutomationServiceHostname, testAutomationServicePort);
+                    registryOperation.setTestNodeDescription(testNodeDescription);
+                    registryOperation.setEncoding(RegistryOperation.Encoding.BINARY);
 
-                            try {
-                                p("Trying to send a file transfer message to remote part at " + fileTransferRequest.getReceiverHostname() + ":" + fileTransferRequest.getReceiverPort());
+                    handle(registryOperation);
+                }
 
-                                socket = new Socket(InetAddress.getByName(fileTransferRequest.getReceiverHostname()), fileTransferRequest.getReceiverPort());
-                                output = socket.getOutputStream();
+                waitForUpdates();
 
-                                p("Connection to remote part at " + fileTransferRequest.getReceiverHostname() + ":" + fileTransferRequest.getReceiverPort() + " is OK");
+            } catch (Exception e) {
+                isRunning = false;
+                p("Having troubles during work", e);
+            }
+        }
 
-                                output.write(fileTransferRequest.toXML().getBytes("UTF-8"));
-                                output.flush();
+        // Close all persistent connections
+        for (PersistentConnection connection : connections.values()) {
+            connection.close();
+        }
 
-                                p("File transfer message was successfully send");
+        connections.clear();
 
-                                output.close();
-                                socket.close();
+        p("Ended work");
+    }
 
-                                p("File transfer message handling is over");
+    /**
+     * Sends requests for the unrequested files in the file cache, as many of them as the file transfer scheduler allows.
+     * Files which cannot be requested right now are given back to the file cache and are requested once some slots are free again.
+     */
+    private void requestFiles() {
+        List<FileCacheEntry> waitingEntries = new ArrayList<FileCacheEntry>(0);
+        FileCacheEntry fileCacheEntry = null;
+
+        // The rest of unrequested entries will wait in the file cache until some slots are free again
+        while (fileTransferScheduler.hasFreeSlots() && (fileCacheEntry = fileCache.takeUnrequestedEntry()) != null) {
+            // Remote client may already send as many files as allowed, or the same file is already on its way
+            if (!fileTransferScheduler.start(fileCacheEntry)) {
+                waitingEntries.add(fileCacheEntry);
+                continue;
+            }
 
-                                // Update file cache entry
-                                fileCacheEntry.setIsRequested(true);
-                                fileCacheEntry.setTimeWhenRequested(System.currentTimeMillis());
+            p("Processing unrequested entry from the file cache...");
 
-                                fileCache.update(fileCacheEntry);
+            FileOperation fileTransferRequest = fileCacheEntry.getFileTransferRequest();
 
-                                isSuccess = true;
-                                canSendFileRequests = false;
-                                timeOfLastFileRequest = System.currentTimeMillis();
+            p("Processing a file transfer request:\n" + fileTransferRequest);
 
-                            } catch (Exception e) {
-                                reasonOfFailure = "Got troubles while tried to send a file transfer message to remote part at "
-                                    + fileTransferRequest.getReceiverHostname() + ":" + fileTransferRequest.getReceiverPort()
-                                    + " - " + e.getClass() + ": " + e.getMessage();
-                            } finally {
-                                // Always ensure that output stream is closed
-                                if (output != null) {
-                                    try {
-                                        output.close();
-                                    } catch (Exception e) {
-                                        p("Got troubles while tried to close output stream to "
-                                            + fileTransferRequest.getReceiverHostname() + ":" + fileTransferRequest.getReceiverPort()
-                                            + " - " + e.getClass() + " " + e.getMessage());
-                                    }
-                                }
+            // All the other file transfers messages are simply forwarded to remote part
+            boolean isSuccess = false;
+            String reasonOfFailure = Constant.UNSPECIFIED_REASON_OF_FAILURE;
 
-                                // Always ensure that connection is closed
-                                if (socket != null && !socket.isClosed()) {
-                                    try {
-                                        socket.close();
-                                    } catch (Exception e) {
-                                        p("Got troubles during closing outcoming connection to "
-                                            + socket.getInetAddress().getHostName() + ":" + socket.getPort()
-                                            + " - " + e.getClass() + " - " + e.getMessage());
-                                        e.printStackTrace();
-                                    }
-                                }
-                            }
+            for (int i = 0; i < Constant.NUMBER_OF_RETRIES; i++) {
+                try {
+                    p("Trying to send a file transfer message to remote part at " + fileTransferRequest.getReceiverHostname() + ":" + fileTransferRequest.getReceiverPort());
 
-                            if (isSuccess) {
-                                break; // Stop any other tries
-                            } else {
-                                p("Got a failure on attempt #" + (i + 1) + ": " + reasonOfFailure);
-                                continue; // For preventing any chances of a deadlock
-                            }
-                        }
+                    getConnection(fileTransferRequest.getReceiverHostname(), fileTransferRequest.getReceiverPort()).send(fileTransferRequest);
 
-                        // At least one file request was successfully send
-                        if (!canSendFileRequests) {
-                            p("Stop processing unrequested entries from the file cache...");
-                            break;
-                        }
-                    }
+                    p("File transfer message was successfully send");
 
-                    // If we have some unrequested file requests and none of them has been successfully send, postpond new file request retries for some time
-                    if (canSendFileRequests && fileCache.hasUnrequestedEntries()) {
-                        p("None of the file requests was proceeded successfully. Postponding new file requests for at least " + Util.convert(Constant.FIVE_MINUTES));
-                        canSendFileRequests = false;
-                        timeOfLastFileRequest = System.currentTimeMillis();
-                    }
+                    // Update file cache entry
+                    fileCacheEntry.setIsRequested(true);
+                    fileCacheEntry.setTimeWhenRequested(System.currentTimeMillis());
+
+                    fileCache.update(fileCacheEntry);
+
+                    isSuccess = true;
+
+                } catch (Exception e) {
+                    reasonOfFailure = "Got troubles while tried to send a file transfer message to remote part at "
+                        + fileTransferRequest.getReceiverHostname() + ":" + fileTransferRequest.getReceiverPort()
+                        + " - " + e.getClass() + ": " + e.getMessage();
                 }
 
-                // Ensure that we don't have any deadlocks with file transfer requests
-                if (!canSendFileRequests && ((System.currentTimeMillis() - timeOfLastFileRequest) > Constant.FIVE_MINUTES)) {
-                    canSendFileRequests = true;
-                    timeOfLastFileRequest = System.currentTimeMillis();
-                    p("Allowing file transfer requests again, since the last file transfer was more than " + Util.convert(Constant.FIVE_MINUTES) + " ago");
+                if (isSuccess) {
+                    break; // Stop any other tries
+                } else {
+                    p("Got a failure on attempt #" + (i + 1) + ": " + reasonOfFailure);
+                    continue; // For preventing any chances of a deadlock
                 }
+            }
 
-                // Send test node registry update each minute, no matter what the communication state is
-                if ((System.currentTimeMillis() - timeOfLastRegistration) > Constant.ONE_MINUTE) {
-                    p("Adding a registry operation into the messaging pool...");
+            // If the file request couldn't be send, postpone new file request retries for some time
+            if (!isSuccess) {
+                fileTransferScheduler.finish(fileCacheEntry.getAbsoluteFilePath());
+                waitingEntries.add(fileCacheEntry);
 
-                    timeOfLastRegistration = System.currentTimeMillis();
+                p("File request wasn't proceeded successfully. Postponding new file requests for at least " + Util.convert(Constant.FIVE_MINUTES));
+                fileRequestsArePostponedUntil = System.currentTimeMillis() + Constant.FIVE_MINUTES;
+                fileRequestsUpdated();
+                break;
+            }
+        }
 
-                    TestNodeDescription testNodeDescription = testAutomationCommunicator.getTestNodeDescription();
+        fileCache.returnUnrequestedEntries(waitingEntries);
+    }
 
-                    RegistryOperation registryOperation = new RegistryOperation(RegistryOperation.Id.UPDATE, RegistryOperation.Remote.TEST_NODE);
-                    registryOperation.setSender(testAutomationCommunicatorHostname, testAutomationCommunicatorPort);
-                    registryOperation.setReceiver(testAutomationServiceHostname, testAutomationServicePort);
-                    registryOperation.setTestNodeDescription(testNodeDescription);
+    /**
+     * Waits until there is a message to send, or the file requests can be send, or the time comes for the periodic checks.
+     *
+     * @throws InterruptedException If waiting was interrupted
+     */
+    private synchronized void waitForUpdates() throws InterruptedException {
+        if (!isRunning || !messagePool.isEmpty()) {
+            return;
+        }
 
-                    handle(registryOperation);
-                }
+        long timeout = Constant.ONE_SECOND;
 
-                sleep(Constant.MILLISECOND); // Wait for any updates
+        if (areFileRequestsUpdated) {
+            long timeUntilFileRequests = fileRequestsArePostponedUntil - System.currentTimeMillis();
 
-            } catch (Exception e) {
-                isRunning = false;
-                p("Having troubles during work", e);
+            if (timeUntilFileRequests <= 0L) {
+                return;
             }
+
+            timeout = Math.min(timeout, timeUntilFileRequests);
         }
 
-        p("Ended work");
+        wait(timeout);
     }
 
     /**
-     * Allows sender be send outcoming file transfer requests once again.
+     * Tells whenever the file requests were updated since the last call of this method.
+     *
+     * @return True if new files were added or some file transfer slots were given back, or false otherwise
      */
-    public void enableFileTransfers() {
-        canSendFileRequests = true;
-        timeOfLastFileRequest = System.currentTimeMillis();
-        p("File transfers are enabled again");
+    private synchronized boolean takeFileRequestUpdates() {
+        boolean result = areFileRequestsUpdated;
+        areFileRequestsUpdated = false;
+        return result;
+    }
+
+    /**
+     * Wakes up the sender to request new files added to the file cache,
+     * or the files which were waiting for free file transfer slots.
+     */
+    public synchronized void fileRequestsUpdated() {
+        areFileRequestsUpdated = true;
+        notify();
+    }
+
+    /**
+     * Returns persistent connection to specified remote part.
+     * The connection is created if this sender hasn't yet send anything to that remote part.
+     *
+     * @param hostname Hostname of the remote part
+     * @param port Port number of the remote part
+     * @return Persistent connection to specified remote part
+     */
+    private PersistentConnection getConnection(String hostname, int port) {
+        String key = hostname + ":" + port;
+        PersistentConnection connection = connections.get(key);
+
+        if (connection == null) {
+            connection = new PersistentConnection(hostname, port);
+            PersistentConnection existingConnection = connections.putIfAbsent(key, connection);
+
+            if (existingConnection != null) {
+                connection = existingConnection;
+            }
+        }
+
+        return connection;
+    }
+
+    /**
+     * Enables or disables sending of messages to specified remote part in the binary encoding.
+     *
+     * @param hostname Hostname of the remote part
+     * @param port Port number of the remote part
+     * @param isBinaryEncodingEnabled True if remote part has confirmed it reads binary messages or false otherwise
+     */
+    public void setBinaryEncodingEnabled(String hostname, int port, boolean isBinaryEncodingEnabled) {
+        getConnection(hostname, port).setBinaryEncodingEnabled(isBinaryEncodingEnabled);
+    }
+
+    /**
+     * Returns scheduler of parallel file transfers requested from remote clients.
+     *
+     * @return Scheduler of parallel file transfers
+     */
+    public FileTransferScheduler getFileTransferScheduler() {
+        return fileTransferScheduler;
+    }
+
+    /**
+     * Allows sender to request another file from the same remote client,
+     * once the transfer of specified file has finished either successfully or not.
+     *
+     * @param absoluteFilePath Absolute path of the transferred file
+     */
+    public void fileTransferFinished(String absoluteFilePath) {
+        if (fileTransferScheduler.finish(absoluteFilePath)) {
+            p("File transfer slot of " + absoluteFilePath + " is free again");
+            fileRequestsUpdated();
+        }
     }
 
     /**
@@ -619,6 +611,7 @@ public class Sender extends Thread {
     protected synchronized void shutdown() {
         p("Got a request to shutdown...");
         isRunning = false;
+        notify();
     }
 
     /**
@@ -21,7 +21,9 @@ import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.nokia.ci.tas.commons.ActorRuntime;
 import com.nokia.ci.tas.commons.Constant;
+import com.nokia.ci.tas.commons.FileTransfer;
 import com.nokia.ci.tas.commons.Product;
 import com.nokia.ci.tas.commons.SimCard;
 import com.nokia.ci.tas.commons.Test;
@@ -112,11 +114,61 @@ public class TestAutomationCommunicator extends Thread {
      */
     private static long cleanupPeriod = DEFAULT_CLEANUP_PERIOD_IN_DAYS * Constant.ONE_DAY;
 
+    /**
+     * Startup setting for defining the size of buffer used in receiving files and in file transfers between streams.
+     */
+    private static final String FILE_TRANSFER_BUFFER_SIZE_IN_KILOBYTES = "--file-transfer-buffer-size-in-kilobytes";
+
+    /**
+     * Startup setting for defining the maximal size of the artifact store in megabytes.
+     */
+    private static final String ARTIFACT_STORE_QUOTA_IN_MEGABYTES = "--artifact-store-quota-in-megabytes";
+
+    /**
+     * Constant which defines the default maximal size of the artifact store in megabytes.
+     */
+    private static final long DEFAULT_ARTIFACT_STORE_QUOTA_IN_MEGABYTES = 10240L;
+
+    /**
+     * Maximal size of the artifact store in bytes, or 0 if store is disabled.
+     */
+    private static long artifactStoreQuota = DEFAULT_ARTIFACT_STORE_QUOTA_IN_MEGABYTES * 1048576L;
+
+    /**
+     * Startup setting for defining the maximal number of files transferred at the same time from a single remote client.
+     */
+    private static final String MAX_FILE_TRANSFERS_PER_CLIENT = "--max-file-transfers-per-client";
+
+    /**
+     * Maximal number of files transferred at the same time from a single remote client.
+     */
+    private static int maximalNumberOfFileTransfersPerClient = Constant.DEFAULT_MAXIMAL_NUMBER_OF_FILE_TRANSFERS_PER_REMOTE;
+
+    /**
+     * Startup setting for defining the maximal number of files transferred at the same time from all remote clients together.
+     */
+    private static final String MAX_FILE_TRANSFERS_IN_TOTAL = "--max-file-transfers-in-total";
+
+    /**
+     * Maximal number of files transferred at the same time from all remote clients together.
+     */
+    private static int maximalNumberOfFileTransfers = Constant.DEFAULT_MAXIMAL_NUMBER_OF_FILE_TRANSFERS;
+
     /**
      * Reference to a workspace directory of the Test Automation Communicator.
      */
     private File communicatorWorkspace;
 
+    /**
+     * Name of the directory where Test Automation Communicator keeps artifacts shared by all the tests.
+     */
+    private static final String COMMUNICATOR_ARTIFACTS_DIRECTORY = "artifacts";
+
+    /**
+     * Store of artifacts shared by all the tests.
+     */
+    private ArtifactStore artifactStore;
+
     /**
      * Name of the directory where Test Automation Communicator keeps all product specific configuration files.
      */
@@ -155,10 +207,15 @@ public class TestAutomationCommunicator extends Thread {
     /**
      * Dynamic list of currently available test executors.
      * Each test executor takes care about a single test
-     * and works as an independend thread having its own workspace directory.
+     * and works as an independend actor having its own workspace directory.
      */
     private ConcurrentLinkedQueue<TestExecutor> testExecutors;
 
+    /**
+     * Shared runtime of all test executors.
+     */
+    private ActorRuntime runtime;
+
     /**
      * Receiver is Test Automation Communicator's component responsible
      * for caching and processing all incoming connections.
@@ -406,8 +463,12 @@ public class TestAutomationCommunicator extends Thread {
             return;
         }
 
-        // Create a list of test executors
+        // Create a list of test executors and their shared runtime
         testExecutors = new ConcurrentLinkedQueue();
+        runtime = new ActorRuntime("Test Automation Communicator", ActorRuntime.DEFAULT_NUMBER_OF_THREADS);
+
+        // Initialize store of artifacts shared by all the tests, which is never erased
+        artifactStore = new ArtifactStore(new File(COMMUNICATOR_ARTIFACTS_DIRECTORY), artifactStoreQuota);
 
         // Initialize and start file cache
         fileCache = new FileCache();
@@ -447,7 +508,7 @@ public class TestAutomationCommunicator extends Thread {
         // Find a free port number and create listening socket
         while (isRunning) {
             try {
-                listener = new ServerSocket(communicatorPort);
+                listener = FileTransfer.openServerSocket(communicatorPort);
                 p("Test Automation Communicator will work on " + communicatorHostname + ":" + communicatorPort);
                 break;
             } catch (Exception e) {
@@ -474,6 +535,7 @@ public class TestAutomationCommunicator extends Thread {
             registryOperation.setReceiver(testAutomationServiceHostname, testAutomationServicePort);
             registryOperation.setSender(communicatorHostname, communicatorPort);
             registryOperation.setTestNodeDescription(testNodeDescription);
+            registryOperation.setEncoding(RegistryOperation.Encoding.BINARY);
 
             sender.handle(registryOperation);
 
@@ -801,6 +863,17 @@ public class TestAutomationCommunicator extends Thread {
         }
     }
 
+    /**
+     * Handles a registry operation received from the Test Automation Service.
+     * Such operations are confirming that the service reads binary messages too.
+     *
+     * @param message Registry operation received from the Test Automation Service
+     */
+    public synchronized void handleRegistryOperation(RegistryOperation message) {
+        boolean isBinaryEncodingEnabled = (message.getEncoding() == RegistryOperation.Encoding.BINARY);
+        sender.setBinaryEncodingEnabled(testAutomationServiceHostname, testAutomationServicePort, isBinaryEncodingEnabled);
+    }
+
     /**
      * Handles a situation of permanently disconnected product.
      *
@@ -853,11 +926,15 @@ public class TestAutomationCommunicator extends Thread {
         // Set all products free
         productExplorer.setAllProductsFree();
 
+        // The service may have been replaced meanwhile, so use XML until it confirms the binary encoding again
+        sender.setBinaryEncodingEnabled(testAutomationServiceHostname, testAutomationServicePort, false);
+
         // Try to register to the Test Automation Service once again
         RegistryOperation registryOperation = new RegistryOperation(RegistryOperation.Id.REGISTER, RegistryOperation.Remote.TEST_NODE);
         registryOperation.setReceiver(testAutomationServiceHostname, testAutomationServicePort);
         registryOperation.setSender(communicatorHostname, communicatorPort);
         registryOperation.setTestNodeDescription(testNodeDescription);
+        registryOperation.setEncoding(RegistryOperation.Encoding.BINARY);
         sender.handle(registryOperation);
     }
 
@@ -941,6 +1018,42 @@ public class TestAutomationCommunicator extends Thread {
         return cleanupPeriod;
     }
 
+    /**
+     * Returns shared runtime of all test executors.
+     *
+     * @return Shared runtime of all test executors
+     */
+    protected ActorRuntime getRuntime() {
+        return runtime;
+    }
+
+    /**
+     * Returns store of artifacts shared by all the tests.
+     *
+     * @return Store of artifacts shared by all the tests
+     */
+    protected ArtifactStore getArtifactStore() {
+        return artifactStore;
+    }
+
+    /**
+     * Returns maximal number of files transferred at the same time from a single remote client.
+     *
+     * @return Maximal number of files transferred at the same time from a single remote client
+     */
+    protected synchronized int getMaximalNumberOfFileTransfersPerClient() {
+        return maximalNumberOfFileTransfersPerClient;
+    }
+
+    /**
+     * Returns maximal number of files transferred at the same time from all remote clients together.
+     *
+     * @return Maximal number of files transferred at the same time from all remote clients together
+     */
+    protected synchronized int getMaximalNumberOfFileTransfers() {
+        return maximalNumberOfFileTransfers;
+    }
+
     /**
      * Tells whenever a workspace of the test is allowed to be deleted or not.
      *
@@ -1093,6 +1206,74 @@ public class TestAutomationCommunicator extends Thread {
                             communicatorCanBeStarted = false;
                             break;
                         }
+                    } else if (parameter.indexOf(FILE_TRANSFER_BUFFER_SIZE_IN_KILOBYTES) != -1) {
+
+                        // Parse size of the file transfer buffer
+                        try {
+                            int bufferSize = Integer.parseInt(parameter.substring(parameter.indexOf("=") + 1));
+
+                            if (bufferSize <= 0 || bufferSize > 0xffff) {
+                                System.out.println("Specified file transfer buffer size " + bufferSize + " KB is out of allowed range.");
+                                System.out.println("File transfer buffer size will be kept at its default value: " + (FileTransfer.getBufferSize() / 1024) + " KB");
+                            } else {
+                                FileTransfer.setBufferSize(bufferSize * 1024);
+                            }
+                        } catch (Exception e) {
+                            System.out.println(FILE_TRANSFER_BUFFER_SIZE_IN_KILOBYTES + " parameter is probably incorrectly specified. Please type command \"java -jar TestAutomationCommunicator.jar -help\" for getting more information.");
+                            communicatorCanBeStarted = false;
+                            break;
+                        }
+                    } else if (parameter.indexOf(ARTIFACT_STORE_QUOTA_IN_MEGABYTES) != -1) {
+
+                        // Parse maximal size of the artifact store
+                        try {
+                            long quota = Long.parseLong(parameter.substring(parameter.indexOf("=") + 1));
+
+                            if (quota < 0L) {
+                                System.out.println("Specified artifact store quota " + quota + " MB cannot be negative.");
+                                System.out.println("Artifact store quota will be kept at its default value: " + DEFAULT_ARTIFACT_STORE_QUOTA_IN_MEGABYTES + " MB");
+                            } else {
+                                artifactStoreQuota = quota * 1048576L;
+                            }
+                        } catch (Exception e) {
+                            System.out.println(ARTIFACT_STORE_QUOTA_IN_MEGABYTES + " parameter is probably incorrectly specified. Please type command \"java -jar TestAutomationCommunicator.jar -help\" for getting more information.");
+                            communicatorCanBeStarted = false;
+                            break;
+                        }
+                    } else if (parameter.indexOf(MAX_FILE_TRANSFERS_PER_CLIENT) != -1) {
+
+                        // Parse maximal number of parallel file transfers from a single client
+                        try {
+                            int numberOfFileTransfers = Integer.parseInt(parameter.substring(parameter.indexOf("=") + 1));
+
+                            if (numberOfFileTransfers <= 0) {
+                                System.out.println("Specified maximal number of file transfers per client " + numberOfFileTransfers + " cannot be zero or negative.");
+                                System.out.println("Maximal number of file transfers per client will be kept at its default value: " + maximalNumberOfFileTransfersPerClient);
+                            } else {
+                                maximalNumberOfFileTransfersPerClient = numberOfFileTransfers;
+                            }
+                        } catch (Exception e) {
+                            System.out.println(MAX_FILE_TRANSFERS_PER_CLIENT + " parameter is probably incorrectly specified. Please type command \"java -jar TestAutomationCommunicator.jar -help\" for getting more information.");
+                            communicatorCanBeStarted = false;
+                            break;
+                        }
+                    } else if (parameter.indexOf(MAX_FILE_TRANSFERS_IN_TOTAL) != -1) {
+
+                        // Parse maximal number of parallel file transfers from all clients together
+                        try {
+                            int numberOfFileTransfers = Integer.parseInt(parameter.substring(parameter.indexOf("=") + 1));
+
+                            if (numberOfFileTransfers <= 0) {
+                                System.out.println("Specified maximal number of file transfers in total " + numberOfFileTransfers + " cannot be zero or negative.");
+                                System.out.println("Maximal number of file transfers in total will be kept at its default value: " + maximalNumberOfFileTransfers);
+                            } else {
+                                maximalNumberOfFileTransfers = numberOfFileTransfers;
+                            }
+                        } catch (Exception e) {
+                            System.out.println(MAX_FILE_TRANSFERS_IN_TOTAL + " parameter is probably incorrectly specified. Please type command \"java -jar TestAutomationCommunicator.jar -help\" for getting more information.");
+                            communicatorCanBeStarted = false;
+                            break;
+                        }
                     } else if (parameter.indexOf(CLEANUP_PERIOD_IN_DAYS) != -1) {
 
                         // Parse number of days for a cleanup period
@@ -1215,6 +1396,13 @@ public class TestAutomationCommunicator extends Thread {
         stringBuilder.append(" " + KEEP_WORKSPACES_OF_FAILED_TESTS + " - Will force Communicator to preserve workspaces of failed tests only\n\n");
         stringBuilder.append(" " + KEEP_WORKSPACES_OF_ALL_TESTS + " - Will force Communicator to preserve workspaces of all tests ever issued on this test node\n\n");
         stringBuilder.append(" " + CLEANUP_PERIOD_IN_DAYS + "=<number of days> - Specify a number of days that test artifacts and log files will be preserved by this Communicator\n\n");
+        stringBuilder.append(" " + FILE_TRANSFER_BUFFER_SIZE_IN_KILOBYTES + "=<number of kilobytes> - Specify a size of buffer used in receiving files over network, the default is 256 KB\n\n");
+        stringBuilder.append(" " + ARTIFACT_STORE_QUOTA_IN_MEGABYTES + "=<number of megabytes> - Specify how much disk space may be used for keeping test artifacts shared by all the tests,"
+            + " the default is " + DEFAULT_ARTIFACT_STORE_QUOTA_IN_MEGABYTES + " MB and 0 disables sharing of artifacts\n\n");
+        stringBuilder.append(" " + MAX_FILE_TRANSFERS_PER_CLIENT + "=<number of files> - Specify how many test artifacts may be received at the same time from a single client, the default is "
+            + Constant.DEFAULT_MAXIMAL_NUMBER_OF_FILE_TRANSFERS_PER_REMOTE + "\n\n");
+        stringBuilder.append(" " + MAX_FILE_TRANSFERS_IN_TOTAL + "=<number of files> - Specify how many test artifacts may be received at the same time from all clients together, the default is "
+            + Constant.DEFAULT_MAXIMAL_NUMBER_OF_FILE_TRANSFERS + "\n\n");
         stringBuilder.append("If no cleanup flags are specified, the test workspaces will be always deleted.\n\n");
         stringBuilder.append("Please remember that Test Automation Communicator will always clean its workspace up on restart.\n");
 
@@ -4,6 +4,7 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
@@ -13,14 +14,11 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
-
-import java.util.concurrent.ConcurrentLinkedQueue;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.nokia.ci.tas.commons.Actor;
 import com.nokia.ci.tas.commons.Constant;
 import com.nokia.ci.tas.commons.FileDescription;
 import com.nokia.ci.tas.commons.Product;
@@ -33,8 +31,13 @@ import com.nokia.ci.tas.commons.message.TextMessage;
 
 /**
  * Executor of a single Test issued by the Testing Automation Service on a testing machine.
+ *
+ * Executor goes through the states of the test whenever an awaited event happens:
+ * a requested file is received, results file is send, the test execution process has written outputs or exited,
+ * or some waiting time is over. Executors of all the tests share the runtime of the communicator,
+ * so no executor keeps a thread while it is waiting for anything.
  */
-public class TestExecutor extends Thread {
+public class TestExecutor extends Actor<Object> {
 
     /**
      * Supported operations.
@@ -60,46 +63,16 @@ public class TestExecutor extends Thread {
      */
     private File testWorkspace;
 
-    /**
-     * A pool of received messages related to test handling.
-     */
-    private ConcurrentLinkedQueue<Object> messagePool;
-
-    /**
-     * Variable that keeps test executor running.
-     */
-    private boolean isRunning = true;
-
     /**
      * Indication of a started and running test execution.
      */
     private boolean isTestRunning = false;
 
-    /**
-     * Indication of whenever the test has failed.
-     */
-    private boolean isTestFailed = false;
-
     /**
      * Result code that test execution script has returned.
      */
     private int testExecutionResultCode = -1;
 
-    /**
-     * Holder of textual explanation why test has failed.
-     */
-    private String reasonOfTestFailure;
-
-    /**
-     * Keeps a list of file names which should be received by test handler.
-     */
-    private ConcurrentLinkedQueue<String> listOfFilesToBeReceived;
-
-    /**
-     * Keeps a list of file names which should be send by test handler.
-     */
-    private ConcurrentLinkedQueue<String> listOfFilesToBeSend;
-
     /**
      * Instance of the Test Automation Communicator.
      */
@@ -135,70 +108,65 @@ public class TestExecutor extends Thread {
      */
     private int testAutomationCommunicatorPort;
 
-    /**
-     * Moment of time when the last message was send.
-     */
-    private long timeOfLastSuccessfulFileTransfer = 0L;
-
     /**
      * Tells what test executor is doing currently
      */
     private Operation currentOperation;
 
     /**
-     * A pool containing all the operations that test executor should handle.
+     * Progress of the test through its states.
      */
-    private ConcurrentLinkedQueue<Operation> operations;
+    private TestProgress progress;
 
     /**
-     * Instance of test process which does the actual testing.
+     * Moment of time when executor has started working.
      */
-    private Process testProcess;
+    private long testExecutionStartedAt = 0L;
 
     /**
-     * A reference to the directory where all product configurations are stored.
+     * Moment of time when log buffer should be flushed the next time.
      */
-    private File productConfigurationsDirectory;
+    private long timeOfNextLogFlush = 0L;
 
     /**
-     * Reference to the log file associated with this test executor.
+     * Moment of time when test listener was last told about files this executor is waiting for.
      */
-    private File logFile;
+    private long timeOfLastWaitingNotification = 0L;
 
     /**
-     * Log writer for the executor.
+     * Watcher of the test process which does the actual testing.
      */
-    private PrintWriter logWriter;
+    private TestProcessWatcher testProcessWatcher;
 
     /**
-     * Date format used in logging.
+     * Moment of time in nanoseconds when the test process should be checked the next time.
      */
-    private SimpleDateFormat dateFormat;
+    private long timeOfNextProcessCheck = 0L;
 
     /**
-     * Dynamic buffer for log messages.
+     * A reference to the directory where all product configurations are stored.
      */
-    private StringBuffer logBuffer;
+    private File productConfigurationsDirectory;
 
     /**
-     * Timer used for various tasks.
+     * Reference to the log file associated with this test executor.
      */
-    private Timer timer;
+    private File logFile;
 
     /**
-     * Timer task for flushing log buffer.
+     * Log writer for the executor.
      */
-    private TimerTask flushLogBuffer;
+    private PrintWriter logWriter;
 
     /**
-     * Indicator of a failed file receive.
+     * Date format used in logging.
      */
-    private boolean hasGotFailureInFileReceive = false;
+    private SimpleDateFormat dateFormat;
 
     /**
-     * Indicator of a failed file send.
+     * Dynamic buffer for log messages.
      */
-    private boolean hasGotFailureInFileSend = false;
+    private StringBuffer logBuffer;
 
     /**
      * Instance of file caching utility.
@@ -211,19 +179,14 @@ public class TestExecutor extends Thread {
     private String fileSeparator;
 
     /**
-     * Timer task for checking existency of the external test execution process.
-     */
-    private TimerTask checkExistencyOfTestExecutionProcess;
-
-    /**
-     * Variable for indicating if external test execution process is alive or not.
+     * Name of the test results file.
      */
-    private boolean isTestExecutionProcessAlive = false;
+    private String testResultsFileName;
 
     /**
-     * Reader of outputs from the external test execution process.
+     * Test results file to be send back to remote client.
      */
-    private BufferedReader testProcessOutputReader = null;
+    private File testResultsFile;
 
     /**
      * Instance of the Test Automation Communicator's global logger.
@@ -241,7 +204,8 @@ public class TestExecutor extends Thread {
      */
     //public TestExecutor(Test test, Sender sender, FileCache fileCache, String remoteClientHostname, int remoteClientPort) {
     public TestExecutor(Test test, Sender sender, FileCache fileCache, String remoteClientHostname, int remoteClientPort) {
-        super(test.getRuntimeId()); // Executor's id is the same as test's runtime id
+        // Executor's id is the same as test's runtime id
+        super(test.getRuntimeId(), TestAutomationCommunicator.getInstance().getRuntime());
 
         this.test = test;
         this.sender = sender;
@@ -249,11 +213,6 @@ public class TestExecutor extends Thread {
         this.remoteClientHostname = remoteClientHostname;
         this.remoteClientPort = remoteClientPort;
 
-        messagePool = new ConcurrentLinkedQueue();
-
-        listOfFilesToBeReceived = new ConcurrentLinkedQueue();
-        listOfFilesToBeSend = new ConcurrentLinkedQueue();
-
         testAutomationCommunicator = TestAutomationCommunicator.getInstance();
         testAutomationServiceHostname = testAutomationCommunicator.getTestAutomationServiceHostname();
         testAutomationServicePort = testAutomationCommunicator.getTestAutomationServicePort();
@@ -265,740 +224,666 @@ public class TestExecutor extends Thread {
 
         fileSeparator = testAutomationCommunicator.getFileSeparator();
 
-        p("Successfully created for test '" + test.getRuntimeId() + "' and client " + remoteClientHostname + ":" + remoteClientPort);
+        progress = new TestProgress(testAutomationCommunicatorHostname + ":" + testAutomationCommunicatorPort);
 
-        operations = new ConcurrentLinkedQueue();
+        p("Successfully created for test '" + test.getRuntimeId() + "' and client " + remoteClientHostname + ":" + remoteClientPort);
 
         logBuffer = new StringBuffer("");
 
-        timer = new Timer();
+        // Basic workflow of the test starts from its initialization
+        currentOperation = Operation.INIT_TEST;
+    }
 
-        // Create log flushing task
-        flushLogBuffer = new TimerTask() {
-            @Override
-            public void run() {
-                flushLogBuffer();
-            }
-        };
+    /**
+     * Initializes the test as soon as executor is started.
+     */
+    @Override
+    protected void started() {
+        p("Started working");
 
-        // Flush log buffer each 5 seconds
-        timer.scheduleAtFixedRate(flushLogBuffer, 0L, Constant.FIVE_SECONDS);
+        // Remember the moment when executor started working
+        testExecutionStartedAt = System.currentTimeMillis();
 
-        // Basic workflow of the test
-        operations.add(Operation.INIT_TEST);
-        operations.add(Operation.EXECUTE_TEST);
-        operations.add(Operation.FINALIZE_TEST);
+        // Flush log buffer and check timeouts each second, all other events will wake executor up by themselves
+        wakeUpEvery(Constant.ONE_SECOND);
 
-        // Always put executor's thread into minimal priority
-        setPriority(MIN_PRIORITY);
+        initTest();
     }
 
     /**
-     * Test executor's main routine.
+     * Performs the next step of the test, if an awaited event has happened.
+     *
+     * @return True if test is still going on or false if it is over
      */
     @Override
-    public void run() {
-        p("Started working");
+    protected boolean act() {
+        // Test executor doesn't handle any messages by itself
+        getMailbox().clear();
 
-        // Remember the moment when executor started working
-        long testExecutionStartedAt = System.currentTimeMillis();
+        return proceed();
+    }
 
-        while (isRunning) {
-            try {
-                if (!operations.isEmpty()) { // If executor has got something to do
-                    currentOperation = operations.poll(); // Get the next operation to do
+    /**
+     * Reports the result of the test and releases all its resources.
+     */
+    @Override
+    protected void ended() {
+        // Notify Test Automation Service about success or failure
+        if (progress.isFailed()) {
+            String reasonOfTestFailure = progress.getReasonOfFailure();
 
-                    // Handle it
-                    if (currentOperation == Operation.INIT_TEST) {
-                        p("Initializing the test");
+            p("Ended work. Test execution took totally " + Util.convert(System.currentTimeMillis() - testExecutionStartedAt)
+                + ". Test execution was unsuccessful and has failed becase: " + reasonOfTestFailure);
 
-                        // Create a workspace for the test
-                        try {
-                            testWorkspace = testAutomationCommunicator.createWorkspaceForTest(test.getRuntimeId());
+            test.setStatus(Test.Status.FAILED, reasonOfTestFailure);
 
-                            if (testWorkspace != null) {
-                                // Create log file and log writer
+            TestOperation testFailedMessage = new TestOperation(TestOperation.Id.UPDATE, test);
+            testFailedMessage.setReceiver(testAutomationServiceHostname, testAutomationServicePort);
+            testFailedMessage.setSender(testAutomationCommunicatorHostname, testAutomationCommunicatorPort);
 
-                                // The reason why we don't use the official Java Logger or Log4j is fairly simple:
-                                // The log file will be deleted as soon as the test is successfully executed
-                                // Since we could have many test executors running in parallel,
-                                // we should simply let only the local thread to update its log file
-                                // without interferencing any other executors through static Loggers
+            sender.handle(testFailedMessage);
 
-                                try {
-                                    logFile = new File(testWorkspace.getAbsolutePath() + fileSeparator + test.getRuntimeId() + ".log");
+            p("Has send a message about test failure:\n" + testFailedMessage);
 
-                                    if (!logFile.exists()) {
-                                        logFile.createNewFile();
-                                    }
+        } else {
+            // Check what was the executor's return code
+            if (testExecutionResultCode == 0) {
+                p("Ended work. Test execution took totally " + Util.convert(System.currentTimeMillis() - testExecutionStartedAt)
+                    + ". Test execution was successful");
 
-                                    logWriter = new PrintWriter(logFile);
+                test.setStatus(Test.Status.FINISHED, "");
 
-                                    dateFormat = new SimpleDateFormat(Constant.TIMESTAMP_FORMAT);
+                TestOperation testFinishedMessage = new TestOperation(TestOperation.Id.UPDATE, test);
+                testFinishedMessage.setReceiver(testAutomationServiceHostname, testAutomationServicePort);
+                testFinishedMessage.setSender(testAutomationCommunicatorHostname, testAutomationCommunicatorPort);
 
-                                } catch (Exception e) {
-                                    p("Got troubles with creation logger for the test: " + e.getClass() + " " + e.getMessage());
-                                }
+                sender.handle(testFinishedMessage);
 
-                                p("Workspace for the test " + test.getRuntimeId() +
-                                    " was successfully created at " + testWorkspace.getAbsolutePath()
-                                    + " on test node " + testAutomationCommunicatorHostname + ":" + testAutomationCommunicatorPort);
-                                isRunning = true;
-                                isTestFailed = false;
-                            } else {
-                                p("Error: Couldn't create a workspace for the test '" + test.getRuntimeId() + "'"
-                                    + " on test node " + testAutomationCommunicatorHostname + ":" + testAutomationCommunicatorPort);
+                p("Has send a test finished message:\n" + testFinishedMessage);
 
-                                isRunning = false;
-                                isTestFailed = true;
-                                reasonOfTestFailure = "Couldn't create a workspace for the test '" + test.getRuntimeId() + "'";
-                            }
-                        } catch (Exception e) {
-                            p("Got troubles while tried to create a workspace for the test: "
-                                    + e.getClass() + " " + e.getMessage());
-                            isRunning = false;
-                            isTestFailed = true;
-                            reasonOfTestFailure = "Couldn't create a workspace for the test '" + test.getRuntimeId() + "'";
-                        }
+            } else {
+                String reasonOfTestFailure = "Test executor returned code " + testExecutionResultCode;
 
-                        // Request copies of all test artifacts
-                        if (!isTestFailed) {
-                            p("Trying to copy all required test artifacts from remote client " + remoteClientHostname + ":" + remoteClientPort
-                                + " to the test node " + testAutomationCommunicatorHostname + ":" + testAutomationCommunicatorPort
-                                + " and into test workspace at " + testWorkspace.getAbsolutePath());
+                p("Ended work. Test execution took totally " + Util.convert(System.currentTimeMillis() - testExecutionStartedAt)
+                    + ". Test execution was unsuccessful and has failed becase: " + reasonOfTestFailure);
 
-                            // Issue a transfer request for each of required files and ensure that such transfers were tried for at least Constant.NUMBER_OF_RETRIES
-                            List<String> fileNamesToReceive = test.getArtifacts();
+                test.setStatus(Test.Status.FAILED, reasonOfTestFailure);
 
-                            for (String fileName : fileNamesToReceive) {
-                                // Create a file transfer request
-                                FileDescription fileDescription = new FileDescription();
-                                fileDescription.setFileName(fileName);
-                                fileDescription.setFileSize(FileDescription.UNKNOWN_FILE_SIZE);
+                TestOperation testFailedMessage = new TestOperation(TestOperation.Id.UPDATE, test);
+                testFailedMessage.setReceiver(testAutomationServiceHostname, testAutomationServicePort);
+                testFailedMessage.setSender(testAutomationCommunicatorHostname, testAutomationCommunicatorPort);
 
-                                FileOperation fileTransferRequest = new FileOperation(FileOperation.Id.GET, test, fileDescription);
-                                fileTransferRequest.setSender(testAutomationCommunicatorHostname, testAutomationCommunicatorPort);
-                                fileTransferRequest.setReceiver(remoteClientHostname, remoteClientPort);
+                sender.handle(testFailedMessage);
 
-                                // Remember what file we should now receive
-                                listOfFilesToBeReceived.add(fileName);
+                p("Has send a message about test failure:\n" + testFailedMessage);
+            }
+        }
 
-                                FileCacheEntry fileCacheEntry = new FileCacheEntry(fileName, test, testWorkspace.getAbsolutePath() + fileSeparator + fileName, fileTransferRequest);
+        // Remove all cache entries refering to artifacts of this test
+        List<FileCacheEntry> removedEntries = fileCache.removeEntriesOf(test);
 
-                                fileCache.add(fileCacheEntry);
+        for (FileCacheEntry removedEntry : removedEntries) {
+            sender.fileTransferFinished(removedEntry.getAbsoluteFilePath());
+        }
 
-                                // Sender will check later file cache for all file transfer requests
+        // So far we are running exclusively on Windows
+        cleanupWindowsEnvironment();
 
-                                p("Issued a request for file '" + fileName + "'");
-                            }
+        flushLogBuffer();
 
-                            // Now simply wait until all requested files will be delivered
-                            if (!listOfFilesToBeReceived.isEmpty()) {
+        // Stop logging for this test executor
+        if (logWriter != null) {
+            logWriter.close();
+        }
 
-                                long timeOfLastTestListenerNotification = 0L;
+        testAutomationCommunicator.stopTest(test, progress.isFailed());
+    }
 
-                                while (isRunning) {
-                                    try {
-                                        if (listOfFilesToBeReceived.isEmpty()) {
-                                            if (!isTestFailed) {
-                                                p("All requested artifacts were successfully received. Launching test execution");
-                                            }
-                                            break;
-                                        } else {
-                                            if ((System.currentTimeMillis() - timeOfLastTestListenerNotification) > Constant.FIVE_MINUTES) {
+    /**
+     * Moves the test from its current state to the next one, if an awaited event has happened.
+     *
+     * @return True if test is still going on or false if it is over
+     */
+    private synchronized boolean proceed() {
+        long currentTime = System.currentTimeMillis();
 
-                                                // Tell test listener what files this executor is waiting for
-                                                StringBuffer filesToBeDelivered = new StringBuffer("");
+        // Flush log buffer each 5 seconds
+        if (currentTime >= timeOfNextLogFlush) {
+            flushLogBuffer();
+            timeOfNextLogFlush = currentTime + Constant.FIVE_SECONDS;
+        }
 
-                                                for (String fileName : listOfFilesToBeReceived) {
-                                                    filesToBeDelivered.append(fileName + " ");
-                                                }
+        TestProgress.State state = progress.getState();
+
+        if (state == TestProgress.State.RECEIVING_ARTIFACTS) {
+            // Receiver wakes executor up as soon as a requested file is delivered
+            if (progress.areArtifactsReceived()) {
+                if (progress.isFailed()) {
+                    // Don't request artifacts anymore
+                    p("Stopping test due to occured failure in test artifacts delivery");
+                    progress.finish();
+                } else {
+                    p("All test artifacts are finally delivered. Launching test execution...");
+                    executeTest();
+                }
+            } else if ((currentTime - timeOfLastWaitingNotification) > Constant.FIVE_MINUTES) {
+                // Tell test listener what files this executor is waiting for
+                StringBuffer filesToBeDelivered = new StringBuffer("");
 
-                                                p("Waiting for requested files on test node "
-                                                    + testAutomationCommunicatorHostname + ":" + testAutomationCommunicatorPort
-                                                    + ": " + filesToBeDelivered.toString());
+                for (String fileName : progress.getFilesToBeReceived()) {
+                    filesToBeDelivered.append(fileName + " ");
+                }
 
-                                                timeOfLastTestListenerNotification = System.currentTimeMillis();
-                                            }
-                                        }
+                p("Waiting for requested files on test node "
+                    + testAutomationCommunicatorHostname + ":" + testAutomationCommunicatorPort
+                    + ": " + filesToBeDelivered.toString());
 
-                                        sleep(Constant.ONE_SECOND);
+                timeOfLastWaitingNotification = currentTime;
+            }
 
-                                    } catch (Exception e) {
-                                        isRunning = false;
-                                        isTestFailed = true;
-                                        reasonOfTestFailure = "Got troubles while waited for test artifacts: " + e.getClass() + " " + e.getMessage();
-                                        p("Stopping test due to " + reasonOfTestFailure);
-                                    }
-                                }
-                            }
+        } else if (state == TestProgress.State.WAITING_FOR_LAUNCH) {
+            if (progress.isTimeToLaunch(currentTime)) {
+                launchTest();
+            }
 
-                            if (isTestFailed) {
-                                // Don't request artifacts anymore
-                                p("Stopping test due to occured failure in test artifacts delivery");
-                                break;
-                            } else {
-                                p("All test artifacts are finally delivered. Launching test execution...");
-                            }
-                        }
+        } else if (state == TestProgress.State.RUNNING) {
+            // Wake ups caused by other events don't make the process checked more often
+            if (System.nanoTime() - timeOfNextProcessCheck >= 0L) {
+                checkTestProcess();
+            }
 
-                    } else if (currentOperation == Operation.EXECUTE_TEST) {
+        } else if (state == TestProgress.State.SENDING_RESULTS) {
+            // Sender wakes executor up as soon as test results file is send
+            if (progress.areResultsSend()) {
+                if (!progress.hasFailedToSendResults()) {
+                    p("Has successfully send a test results file " + testResultsFileName + " to remote client at " + remoteClientHostname + ":" + remoteClientPort);
+                    completeFinalization();
+                } else {
+                    p("Has failed to send a test results file " + testResultsFileName + " to remote client at " + remoteClientHostname + ":" + remoteClientPort);
+                    p("Got a failure on attempt #" + progress.getNumberOfSendingAttempts() + " to send file " + testResultsFileName);
+
+                    if (progress.canRetrySending()) {
+                        sendTestResults();
+                    } else {
+                        completeFinalization();
+                    }
+                }
+            } else {
+                if ((currentTime - timeOfLastWaitingNotification) > Constant.ONE_MINUTE) {
+                    for (String fileName : progress.getFilesToBeSend()) {
+                        p("Trying to send a file " + fileName);
+                    }
+                    timeOfLastWaitingNotification = currentTime;
+                }
 
-                        p("Executing the test '" + test.getRuntimeId() + "'");
+                if (progress.isResultsSendingTimedOut(currentTime)) {
+                    String reasonOfTestFailure = "Couldn't send test results file " + testResultsFileName + " to remote client at "
+                        + remoteClientHostname + ":" + remoteClientPort + " for more than " + Util.convert(Constant.FIFTEEN_MINUTES);
+                    p("Stopping test due to " + reasonOfTestFailure);
+                    progress.stop(reasonOfTestFailure);
+                    completeFinalization();
+                }
+            }
+        }
 
-                        // Notify Test Automation Service about the started test
-                        test.setStatus(Test.Status.STARTED, "");
+        return !progress.isFinished();
+    }
 
-                        TestOperation testStartedMessage = new TestOperation(TestOperation.Id.UPDATE, test);
-                        testStartedMessage.setReceiver(testAutomationServiceHostname, testAutomationServicePort);
-                        testStartedMessage.setSender(testAutomationCommunicatorHostname, testAutomationCommunicatorPort);
+    /**
+     * Creates a workspace for the test and requests copies of all test artifacts.
+     */
+    private synchronized void initTest() {
+        if (progress.getState() != null) {
+            // Test was stopped before it was started
+            return;
+        }
 
-                        sender.handle(testStartedMessage);
+        p("Initializing the test");
 
-                        // In order to make product flashings safe, we need to keep a short pause between parallel tests
-                        long timeIntervalBetweenThisAndLastTest = System.currentTimeMillis() - testAutomationCommunicator.getTimeWhenLastTestHasStarted();
+        // Create a workspace for the test
+        try {
+            testWorkspace = testAutomationCommunicator.createWorkspaceForTest(test.getRuntimeId());
 
-                        if (timeIntervalBetweenThisAndLastTest < Constant.FIFTEEN_SECONDS) {
-                            p("A time interval between this and the last time is less than 15 seconds");
-                            p("Will wait for about "
-                                    + ((Constant.FIFTEEN_SECONDS - timeIntervalBetweenThisAndLastTest) / 1000L)
-                                    + " seconds before launching the test");
+            if (testWorkspace != null) {
+                // Create log file and log writer
 
-                            try {
-                                sleep(Constant.FIFTEEN_SECONDS - timeIntervalBetweenThisAndLastTest);
-                            } catch (Exception e) {
-                                // Ignore
-                            }
-                        }
+                // The reason why we don't use the official Java Logger or Log4j is fairly simple:
+                // The log file will be deleted as soon as the test is successfully executed
+                // Since we could have many test executors running in parallel,
+                // we should simply let only the local executor to update its log file
+                // without interferencing any other executors through static Loggers
 
-                        p("Launching executor script for test '" + test.getRuntimeId() + "'");
+                try {
+                    logFile = new File(testWorkspace.getAbsolutePath() + fileSeparator + test.getRuntimeId() + ".log");
 
-                        // Create JSON files for all products reserved for this test
-                        // If there is only one product reserved, create a "product.json" file
-                        // Otherwise create a "product.json" file for the main product
-                        // and "remoteProduct.json" and "referenceProduct.json" files
-                        // for the remote and reference products respectively
-                        List<Product> reservedProducts = test.getReservedProducts();
+                    if (!logFile.exists()) {
+                        logFile.createNewFile();
+                    }
 
-                        if (reservedProducts != null && !reservedProducts.isEmpty()) {
-                            // Create "Main.json" file for the main product
-                            // and also "Remote.json" and "Reference.json" files for the remote and reference products respectively
-                            for (Product reservedProduct : reservedProducts) {
-                                try {
-                                    if (reservedProduct != null) {
-                                        String fileName = "Main.json";
-
-                                        if (reservedProduct.getRole() == Product.Role.MAIN) {
-                                            // A product in main role should always get the filename "Main.json"
-                                            fileName = "Main.json";
-                                        } else if (reservedProduct.getRole() == Product.Role.REMOTE) {
-                                            // A product in remove role should always get the filename "Remote.json"
-                                            fileName = "Remote.json";
-                                        } else if (reservedProduct.getRole() == Product.Role.REFERENCE) {
-                                            // A product in reference role should always get the filename "Reference.json"
-                                            fileName = "Reference.json";
-                                        }
+                    logWriter = new PrintWriter(logFile);
 
-                                        String productJSONDescription = reservedProduct.toJSON();
+                    dateFormat = new SimpleDateFormat(Constant.TIMESTAMP_FORMAT);
 
-                                        FileOutputStream fileOutputStream = new FileOutputStream(testWorkspace.getAbsolutePath() + fileSeparator + fileName, false);
-                                        fileOutputStream.write(productJSONDescription.getBytes("UTF-8"));
-                                        fileOutputStream.flush();
-                                        fileOutputStream.close();
+                } catch (Exception e) {
+                    p("Got troubles with creation logger for the test: " + e.getClass() + " " + e.getMessage());
+                }
 
-                                        p("Reserved product's JSON description was successfully stored in the file "
-                                                + testWorkspace.getAbsolutePath() + fileSeparator + fileName);
-                                    }
-                                } catch (Exception e) {
-                                    // Don't stop test
-                                    p("Couldn't create JSON description files for a product with IMEI " + reservedProduct.getIMEI()
-                                            + " and of type " + reservedProduct.getRMCode()
-                                            + " because of " + e.getClass() + " - " + e.getMessage());
-                                }
-                            }
+                p("Workspace for the test " + test.getRuntimeId() +
+                    " was successfully created at " + testWorkspace.getAbsolutePath()
+                    + " on test node " + testAutomationCommunicatorHostname + ":" + testAutomationCommunicatorPort);
+            } else {
+                p("Error: Couldn't create a workspace for the test '" + test.getRuntimeId() + "'"
+                    + " on test node " + testAutomationCommunicatorHostname + ":" + testAutomationCommunicatorPort);
 
-                            // Also create now deprecated "product.json" file for the main product
-                            // and deprecated "<role>Product.json" files for remote and reference products respectively
-                            // Such files generation is now deprecated and will be removed in upcoming versions of Test Automation Communicator
-                            for (Product reservedProduct : reservedProducts) {
-                                try {
-                                    if (reservedProduct != null) {
-                                        String fileName = "Product.json";
-
-                                        if (reservedProduct.getRole() == Product.Role.MAIN) {
-                                            // A product in main role should always get the filename "product.json"
-                                            fileName = "product.json";
-                                        } else if (reservedProduct.getRole() == Product.Role.REMOTE) {
-                                            // A product in remove role should always get the filename "remoteProduct.json"
-                                            fileName = Product.ROLE_REMOTE + fileName;
-                                        } else if (reservedProduct.getRole() == Product.Role.REFERENCE) {
-                                            // A product in reference role should always get the filename "referenceProduct.json"
-                                            fileName = Product.ROLE_REFERENCE + fileName;
-                                        }
+                progress.fail("Couldn't create a workspace for the test '" + test.getRuntimeId() + "'");
+            }
+        } catch (Exception e) {
+            p("Got troubles while tried to create a workspace for the test: "
+                    + e.getClass() + " " + e.getMessage());
+            progress.fail("Couldn't create a workspace for the test '" + test.getRuntimeId() + "'");
+        }
 
-                                        String productJSONDescription = reservedProduct.toDeprecatedJSON();
+        if (progress.isFailed()) {
+            progress.finish();
+            return;
+        }
 
-                                        FileOutputStream fileOutputStream = new FileOutputStream(testWorkspace.getAbsolutePath() + fileSeparator + fileName, false);
-                                        fileOutputStream.write(productJSONDescription.getBytes("UTF-8"));
-                                        fileOutputStream.flush();
-                                        fileOutputStream.close();
+        // Request copies of all test artifacts
+        p("Trying to copy all required test artifacts from remote client " + remoteClientHostname + ":" + remoteClientPort
+            + " to the test node " + testAutomationCommunicatorHostname + ":" + testAutomationCommunicatorPort
+            + " and into test workspace at " + testWorkspace.getAbsolutePath());
 
-                                        p("Reserved product's JSON description was successfully stored in the file "
-                                                + testWorkspace.getAbsolutePath() + fileSeparator + fileName);
-                                    }
-                                } catch (Exception e) {
-                                    // Don't stop test
-                                    p("Couldn't create JSON description files for a product with IMEI " + reservedProduct.getIMEI()
-                                            + " and of type " + reservedProduct.getRMCode()
-                                            + " because of " + e.getClass() + " - " + e.getMessage());
-                                }
-                            }
-                        }
+        // Issue a transfer request for each of required files and ensure that such transfers were tried for at least Constant.NUMBER_OF_RETRIES
+        List<String> fileNamesToReceive = test.getArtifacts();
 
-                        // Tests are performed with specified command and parameters
-                        List<String> executorArguments = new ArrayList<String>(0);
-
-                        // Always nofity communicator about the moment a new test is started
-                        testAutomationCommunicator.newTestStarted();
-
-                        try {
-                            //List<String> executionList = new ArrayList<String>(0);
-                        	StringBuffer executionList = new StringBuffer();
-
-                            //executionList.add(test.getExecutorApplication());
-                        	executionList.append(test.getExecutorApplication()).append( " " );
-                            //executionList.add(testWorkspace.getAbsolutePath() + fileSeparator + test.getExecutorScript());
-                        	if((test.getExecutorApplication()==null||test.getExecutorApplication().trim().isEmpty()) && !Util.isWindows()) {
-                        		executionList.append( "chmod +x \"" ).append( testWorkspace.getAbsolutePath() + fileSeparator + test.getExecutorScript() ).append( "\" && " );
-                        	}
-                        	executionList.append( "\"" ).append(testWorkspace.getAbsolutePath() + fileSeparator + test.getExecutorScript()).append( "\" " );
-
-                        	for (Product reservedProduct : reservedProducts) {
-	                            StringBuilder productArguments = new StringBuilder("");
-	
-	                            // The role is always at the first place
-	                            /*if (reservedProduct.getRole() == Product.Role.MAIN) {
-	                                productArguments.append(Product.ROLE_MAIN);
-	                            } else if (reservedProduct.getRole() == Product.Role.REMOTE) {
-	                                productArguments.append(Product.ROLE_REMOTE);
-	                            } else if (reservedProduct.getRole() == Product.Role.REFERENCE) {
-	                                productArguments.append(Product.ROLE_REFERENCE);
-	                            }*/
-	
-	                            // A path to product's configuration file is following the role
-	                            //productArguments.append(Constant.PRODUCT_PARAMETERS_SEPARATOR_FOR_EXECUTOR_SCRIPT);
-	                            //productArguments.append(productConfigurationsDirectory.getAbsolutePath() + fileSeparator + reservedProduct.getIMEI() + ".xml");
-	
-	                            // Add product parameters into the list of arguments
-	                            executorArguments.add(reservedProduct.getSn());
-                            }
-                        	
-                            for (String currentArgument : executorArguments) {
-                                // Embrace each argument with "" marks, since they might contain white spaces
-                                //executionList.add("\"" + currentArgument + "\"");
-                                executionList.append(" \"" + currentArgument + "\" ");
-                            }
-                            
-                            // Try to backup startup parameters in the /restart_test.bat file for possible re-launches of test in the future
-                            /*try {
-                                File backupLauncherFile = new File(testWorkspace.getAbsolutePath() + fileSeparator + "restart_test.bat");
-
-                                if (!backupLauncherFile.exists()) {
-                                    // Continue only when such file is not existing
-                                    if (backupLauncherFile.createNewFile()) {
-                                        PrintWriter printWriter = new PrintWriter(new FileWriter(backupLauncherFile));
-                                        StringBuilder outputs = new StringBuilder("");
-
-                                        // Startup parameters will be "called" from the generated .bat file
-                                        outputs.append("call");
-                                        outputs.append( " " ).append( executionList.toString() );
-                                        
-
-                                        printWriter.write(outputs.toString());
-                                        printWriter.flush();
-
-                                        p("Test's startup parameters were successfully backuped in the file " + backupLauncherFile.getAbsolutePath());
-                                    }
-                                }
-                            } catch (Exception e) {
-                                // Don't stop test
-                                p("Couldn't backup test's startup parameters because of " + e.getClass() + " - " + e.getMessage());
-                            }*/
-
-                            p("Executing command list:");
-                            /*for (String current : executionList) {
-                                p("\t" + current);
-                            }*/
-                            p(executionList.toString());
-
-                            // Create a process builder for the test execution script
-                            //ProcessBuilder processBuilder = new ProcessBuilder(executionList);
-                            
-                            // Set a working directory for this process
-                            File processWorkingDirectory = new File(testWorkspace.getAbsolutePath());
-                            //processBuilder.directory(processWorkingDirectory);
-
-                            //p("Process run directory will be: " + processBuilder.directory().getAbsolutePath());
-
-                            // Redirect errors to the standard output stream
-                            //processBuilder.redirectErrorStream(true);*/
-                            
-                            p("Launching process...");
-
-                            isTestFailed = false;
-                            isTestRunning = true;
-
-                            // Launch process
-                            //testProcess = processBuilder.start();
-                            testProcess = Util.exec( executionList.toString(), processWorkingDirectory, test.getExecutorEnvparams() );
-
-                            p("Process starts executing...");
-                            p("Launching a task for checking existency of the external test execution process...");
-
-                            isTestExecutionProcessAlive = true; // Assuming so
-
-                            // Create external test execution checking task
-                            checkExistencyOfTestExecutionProcess = new TimerTask() {
-                                @Override
-                                public void run() {
-                                    isTestExecutionProcessAlive();
-                                }
-                            };
+        for (String fileName : fileNamesToReceive) {
+            // Create a file transfer request
+            FileDescription fileDescription = new FileDescription();
+            fileDescription.setFileName(fileName);
+            fileDescription.setFileSize(FileDescription.UNKNOWN_FILE_SIZE);
 
-                            // Activate checks of external test process existency each 5 minutes (but postpond the first check by 5 minutes as well)
-                            timer.scheduleAtFixedRate(checkExistencyOfTestExecutionProcess, Constant.FIVE_MINUTES, Constant.FIVE_MINUTES);
+            // Tell the client which content of this file is already stored here, so it won't be send again if unchanged
+            fileDescription.setContentHash(testAutomationCommunicator.getArtifactStore().getContentHash(remoteClientHostname, fileName));
 
-                            // Read outputs and print them out
-                            InputStream inputStream = testProcess.getInputStream();
-                            InputStreamReader inputStreamReader = new InputStreamReader(inputStream);
-                            testProcessOutputReader = new BufferedReader(inputStreamReader);
+            FileOperation fileTransferRequest = new FileOperation(FileOperation.Id.GET, test, fileDescription);
+            fileTransferRequest.setSender(testAutomationCommunicatorHostname, testAutomationCommunicatorPort);
+            fileTransferRequest.setReceiver(remoteClientHostname, remoteClientPort);
 
-                            String processOutputLine = null;
+            // Remember what file we should now receive
+            progress.expectArtifact(fileName);
 
-                            if (testProcessOutputReader != null) {
-                                try {
-                                    while (isTestExecutionProcessAlive) {
-                                        processOutputLine = testProcessOutputReader.readLine();
-
-                                        if (processOutputLine != null) {
-                                            if (!processOutputLine.isEmpty()) {
-                                                p(processOutputLine);
-                                            }
-                                        } else {
-                                            break;
-                                        }
+            FileCacheEntry fileCacheEntry = new FileCacheEntry(fileName, test, testWorkspace.getAbsolutePath() + fileSeparator + fileName, fileTransferRequest);
 
-                                        // Always go to sleep to prevent any possible deadlocks here
-                                        sleep(Constant.MILLISECOND);
-                                    }
-                                } catch (Exception e) {
-                                    // Ignore
-                                }
-                            }
+            fileCache.add(fileCacheEntry);
 
-                            if (isTestRunning) {
-                                p("Checking exit code from the external test execution process...");
+            // Sender will request the files from the file cache in parallel
 
-                                // Get the result code of test process
-                                testExecutionResultCode = testProcess.exitValue();
+            p("Issued a request for file '" + fileName + "'");
+        }
 
-                                if (testExecutionResultCode == 0)  {
-                                    p("Process has successfully finished its work");
-                                } else {
-                                    isTestFailed = true;
-                                    reasonOfTestFailure = "Test execution process has finished its work with exit code " + testExecutionResultCode;
-                                    p(reasonOfTestFailure);
-                                }
-                            } else {
-                                p("Skipping checks of exit code from the external test execution process...");
-                            }
+        // Now simply wait until all requested files will be delivered
+        progress.receiveArtifacts();
+        timeOfLastWaitingNotification = 0L;
 
-                        } catch (Exception e) {
-                            p("Got troubles while tried to execute test script: " + e.getClass() + " " + e.getMessage());
-                        }
+        sender.fileRequestsUpdated();
+    }
 
-                        isTestRunning = false; // Test is over after its execution
+    /**
+     * Tells Test Automation Service about the started test and prepares launching of the test execution process.
+     */
+    private synchronized void executeTest() {
+        currentOperation = Operation.EXECUTE_TEST;
 
-                        flushLogBuffer();
+        p("Executing the test '" + test.getRuntimeId() + "'");
 
-                        // Remove all unhandled operations
-                        operations.clear();
-                        // And proceed only to test finalization
-                        operations.add(Operation.FINALIZE_TEST);
+        // Notify Test Automation Service about the started test
+        test.setStatus(Test.Status.STARTED, "");
 
-                    } else if (currentOperation == Operation.FINALIZE_TEST) {
+        TestOperation testStartedMessage = new TestOperation(TestOperation.Id.UPDATE, test);
+        testStartedMessage.setReceiver(testAutomationServiceHostname, testAutomationServicePort);
+        testStartedMessage.setSender(testAutomationCommunicatorHostname, testAutomationCommunicatorPort);
 
-                        p("Finalizing the test");
+        sender.handle(testStartedMessage);
 
-                        // Always try to send an archive with results
-                        p("Trying to send a file " + test.getResultsFilename() + " with test results...");
+        // In order to make product flashings safe, we need to keep a short pause between parallel tests
+        long timeIntervalBetweenThisAndLastTest = System.currentTimeMillis() - testAutomationCommunicator.getTimeWhenLastTestHasStarted();
 
-                        // Check if test results file is existing and could be send
-                        String testResultsFileName = test.getResultsFilename();
-                        File testResultsFile = null;
-                        boolean testFileCanBeSend = false;
+        if (timeIntervalBetweenThisAndLastTest < Constant.FIFTEEN_SECONDS) {
+            p("A time interval between this and the last time is less than 15 seconds");
+            p("Will wait for about "
+                    + ((Constant.FIFTEEN_SECONDS - timeIntervalBetweenThisAndLastTest) / 1000L)
+                    + " seconds before launching the test");
 
-                        try {
-                            testResultsFile = new File(testWorkspace.getAbsolutePath() + fileSeparator + testResultsFileName);
+            progress.waitForLaunch(System.currentTimeMillis() + Constant.FIFTEEN_SECONDS - timeIntervalBetweenThisAndLastTest);
+            wakeUpAfter(Constant.FIFTEEN_SECONDS - timeIntervalBetweenThisAndLastTest);
+        } else {
+            launchTest();
+        }
+    }
 
-                            if (testResultsFile.exists() && testResultsFile.canRead()) {
-                                p("Test results file exists at " + testResultsFile.getAbsolutePath() + " and can be send");
-                                testFileCanBeSend = true;
-                            }
+    /**
+     * Launches the test execution process.
+     */
+    private synchronized void launchTest() {
+        p("Launching executor script for test '" + test.getRuntimeId() + "'");
+
+        // Create JSON files for all products reserved for this test
+        // If there is only one product reserved, create a "product.json" file
+        // Otherwise create a "product.json" file for the main product
+        // and "remoteProduct.json" and "referenceProduct.json" files
+        // for the remote and reference products respectively
+        List<Product> reservedProducts = test.getReservedProducts();
+
+        if (reservedProducts != null && !reservedProducts.isEmpty()) {
+            // Create "Main.json" file for the main product
+            // and also "Remote.json" and "Reference.json" files for the remote and reference products respectively
+            for (Product reservedProduct : reservedProducts) {
+                try {
+                    if (reservedProduct != null) {
+                        String fileName = "Main.json";
+
+                        if (reservedProduct.getRole() == Product.Role.MAIN) {
+                            // A product in main role should always get the filename "Main.json"
+                            fileName = "Main.json";
+                        } else if (reservedProduct.getRole() == Product.Role.REMOTE) {
+                            // A product in remove role should always get the filename "Remote.json"
+                            fileName = "Remote.json";
+                        } else if (reservedProduct.getRole() == Product.Role.REFERENCE) {
+                            // A product in reference role should always get the filename "Reference.json"
+                            fileName = "Reference.json";
+                        }
 
-                            // If test was splitted, rename results file according to sub-id
-                            // For example, rename "results.zip" into "results_7.zip" if test's sub-id was "_7"
-                            if (!test.getSubId().isEmpty()) {
-                                String renamedTestResultsFileName = testResultsFileName;
-
-                                if (testResultsFileName.contains(".")) {
-                                    // If test results filename contains extension, add sub id just in front of it
-                                    renamedTestResultsFileName = testResultsFileName.substring(0, testResultsFileName.lastIndexOf("."));
-                                    renamedTestResultsFileName += test.getSubId();
-                                    renamedTestResultsFileName += testResultsFileName.substring(testResultsFileName.lastIndexOf("."));
-                                } else {
-                                    // Else add sub id to the end of filename
-                                    renamedTestResultsFileName = testResultsFileName + test.getId();
-                                }
+                        String productJSONDescription = reservedProduct.toJSON();
 
-                                File renamedTestResultsFile = new File(testWorkspace.getAbsolutePath() + fileSeparator + renamedTestResultsFileName);
+                        FileOutputStream fileOutputStream = new FileOutputStream(testWorkspace.getAbsolutePath() + fileSeparator + fileName, false);
+                        fileOutputStream.write(productJSONDescription.getBytes("UTF-8"));
+                        fileOutputStream.flush();
+                        fileOutputStream.close();
 
-                                p("Trying to rename test results file from " + testResultsFile.getAbsolutePath() + " to " + renamedTestResultsFile.getAbsolutePath());
+                        p("Reserved product's JSON description was successfully stored in the file "
+                                + testWorkspace.getAbsolutePath() + fileSeparator + fileName);
+                    }
+                } catch (Exception e) {
+                    // Don't stop test
+                    p("Couldn't create JSON description files for a product with IMEI " + reservedProduct.getIMEI()
+                            + " and of type " + reservedProduct.getRMCode()
+                            + " because of " + e.getClass() + " - " + e.getMessage());
+                }
+            }
 
-                                if (testResultsFile.renameTo(renamedTestResultsFile)) {
-                                    testResultsFileName = renamedTestResultsFileName;
-                                    testResultsFile = renamedTestResultsFile;
-                                    p("Successfully renamed test results file to " + testResultsFile.getAbsolutePath());
-                                }
-                            }
+            // Also create now deprecated "product.json" file for the main product
+            // and deprecated "<role>Product.json" files for remote and reference products respectively
+            // Such files generation is now deprecated and will be removed in upcoming versions of Test Automation Communicator
+            for (Product reservedProduct : reservedProducts) {
+                try {
+                    if (reservedProduct != null) {
+                        String fileName = "Product.json";
+
+                        if (reservedProduct.getRole() == Product.Role.MAIN) {
+                            // A product in main role should always get the filename "product.json"
+                            fileName = "product.json";
+                        } else if (reservedProduct.getRole() == Product.Role.REMOTE) {
+                            // A product in remove role should always get the filename "remoteProduct.json"
+                            fileName = Product.ROLE_REMOTE + fileName;
+                        } else if (reservedProduct.getRole() == Product.Role.REFERENCE) {
+                            // A product in reference role should always get the filename "referenceProduct.json"
+                            fileName = Product.ROLE_REFERENCE + fileName;
+                        }
 
-                            //DEBUG:
-                            // Add test's name to the test results's filename:
-                            /*
-                                String renamedTestResultsFileName = test.getId() + "-" + testResultsFileName;
-                                File renamedTestResultsFile = new File(testWorkspace.getAbsolutePath() + fileSeparator + renamedTestResultsFileName);
+                        String productJSONDescription = reservedProduct.toDeprecatedJSON();
 
-                                p("DEBUG: Trying to rename test results file from " + testResultsFile.getAbsolutePath() + " to " + renamedTestResultsFile.getAbsolutePath());
+                        FileOutputStream fileOutputStream = new FileOutputStream(testWorkspace.getAbsolutePath() + fileSeparator + fileName, false);
+                        fileOutputStream.write(productJSONDescription.getBytes("UTF-8"));
+                        fileOutputStream.flush();
+                        fileOutputStream.close();
 
-                                if (testResultsFile.renameTo(renamedTestResultsFile)) {
-                                    testResultsFileName = renamedTestResultsFileName;
-                                    testResultsFile = renamedTestResultsFile;
-                                    p("DEBUG: Successfully renamed test results file to " + testResultsFile.getAbsolutePath());
-                                }
-                            */
-                            //END DEBUG
+                        p("Reserved product's JSON description was successfully stored in the file "
+                                + testWorkspace.getAbsolutePath() + fileSeparator + fileName);
+                    }
+                } catch (Exception e) {
+                    // Don't stop test
+                    p("Couldn't create JSON description files for a product with IMEI " + reservedProduct.getIMEI()
+                            + " and of type " + reservedProduct.getRMCode()
+                            + " because of " + e.getClass() + " - " + e.getMessage());
+                }
+            }
+        }
 
-                        } catch (Exception e) {
-                            p("Got troubles while tried to send test results file " + testResultsFileName
-                              + " of the test '" + test.getRuntimeId() + "': " + e.getClass() + " " + e.getMessage());
-                        }
+        // Tests are performed with specified command and parameters
+        List<String> executorArguments = new ArrayList<String>(0);
 
-                        // Send test results file back to remote client
-                        if (testFileCanBeSend) {
-                            for (int i = 0; i < Constant.NUMBER_OF_RETRIES; i++) {
-                                p("Trying to send a test results file " + testResultsFileName);
-                                p("Issuing a file transfer for file " + testResultsFileName);
-
-                                hasGotFailureInFileSend = false;
-
-                                FileDescription fileDescription = new FileDescription();
-                                fileDescription.setFileName(testResultsFileName);
-                                fileDescription.setFileSize(testResultsFile.length());
-
-                                FileOperation fileTransfer = new FileOperation(FileOperation.Id.PUT, test, fileDescription);
-                                fileTransfer.setSender(testAutomationCommunicatorHostname, testAutomationCommunicatorPort);
-                                fileTransfer.setReceiver(remoteClientHostname, remoteClientPort);
-
-                                // Remember what file we should now transfer
-                                listOfFilesToBeSend.clear();
-                                listOfFilesToBeSend.add(testResultsFileName);
-
-                                // Remember the moment when we've tried to send a file
-                                timeOfLastSuccessfulFileTransfer = System.currentTimeMillis();
-                                long timeOfLastNotification = System.currentTimeMillis();
-
-                                // Send file transfer message
-                                sender.handle(fileTransfer);
-
-                                // Start waiting for files
-                                while (!listOfFilesToBeSend.isEmpty()) {
-                                    try {
-                                        if (listOfFilesToBeSend.isEmpty()) {
-                                            if (!hasGotFailureInFileSend) {
-                                                p("Has successfully send a test results file " + testResultsFileName + " to remote client at " + remoteClientHostname + ":" + remoteClientPort);
-                                            } else {
-                                                p("Has failed to send a test results file " + testResultsFileName + " to remote client at " + remoteClientHostname + ":" + remoteClientPort);
-                                            }
-                                            break;
-                                        } else {
-                                            if ((System.currentTimeMillis() - timeOfLastNotification) > Constant.ONE_MINUTE) {
-                                                for (String fileName : listOfFilesToBeSend) {
-                                                    p("Trying to send a file " + fileName);
-                                                }
-                                                timeOfLastNotification = System.currentTimeMillis();
-                                            }
-
-                                            if ((System.currentTimeMillis() - timeOfLastSuccessfulFileTransfer) > Constant.FIFTEEN_MINUTES) {
-                                                isTestFailed = true;
-                                                reasonOfTestFailure = "Couldn't send test results file " + testResultsFileName + " to remote client at "
-                                                    + remoteClientHostname + ":" + remoteClientPort + " for more than " + Util.convert(Constant.FIFTEEN_MINUTES);
-                                                p("Stopping test due to " + reasonOfTestFailure);
-                                                listOfFilesToBeSend.clear();
-                                                break;
-                                            }
-                                        }
+        // Always nofity communicator about the moment a new test is started
+        testAutomationCommunicator.newTestStarted();
 
-                                        sleep(Constant.DECISECOND);
+        try {
+            StringBuffer executionList = new StringBuffer();
 
-                                    } catch (Exception e) {
-                                        isTestFailed = true;
-                                        reasonOfTestFailure = "Got troubles while tried to send test results file " + testResultsFileName
-                                            + " to remote client at " + remoteClientHostname + ":" + remoteClientPort + ": " + e.getClass() + " " + e.getMessage();
-                                        p("Stopping test due to " + reasonOfTestFailure);
-                                    }
-                                }
+            executionList.append(test.getExecutorApplication()).append( " " );
+            if((test.getExecutorApplication()==null||test.getExecutorApplication().trim().isEmpty()) && !Util.isWindows()) {
+                executionList.append( "chmod +x \"" ).append( testWorkspace.getAbsolutePath() + fileSeparator + test.getExecutorScript() ).append( "\" && " );
+            }
+            executionList.append( "\"" ).append(testWorkspace.getAbsolutePath() + fileSeparator + test.getExecutorScript()).append( "\" " );
 
-                                if (isTestFailed) {
-                                    break; // Stop any other attempts
-                                } else {
-                                    if (!hasGotFailureInFileSend) {
-                                        // Specified file was successfully send
-                                        break; // Stop any other tries
-                                    } else {
-                                        p("Got a failure on attempt #" + (i + 1) + " to send file " + fileDescription.getFileName());
-                                    }
-                                }
-                            }
-                        }
+            for (Product reservedProduct : reservedProducts) {
+                // Add product parameters into the list of arguments
+                executorArguments.add(reservedProduct.getSn());
+            }
 
-                        // Clean up test workspace
-                        if (testAutomationCommunicator.canDeleteWorkspace(isTestFailed)) {
-                            p("Trying to delete test's workspace...");
+            for (String currentArgument : executorArguments) {
+                // Embrace each argument with "" marks, since they might contain white spaces
+                executionList.append(" \"" + currentArgument + "\" ");
+            }
 
-                            // Close logger for this test executor
-                            if (logWriter != null) {
-                                logWriter.close();
-                            }
+            p("Executing command list:");
+            p(executionList.toString());
 
-                            if (deleteRecursively(testWorkspace)) {
-                                p("Workspace of the test '" + test.getRuntimeId() + "' was successfully deleted");
-                            }
-                        } else {
-                            p("Workspace deletion is not allowed");
+            // Set a working directory for this process
+            File processWorkingDirectory = new File(testWorkspace.getAbsolutePath());
 
-                            if (isTestFailed) {
-                                // Create a special file for indicating that test has failed
-                                try {
-                                    File failureFile = new File(testWorkspace.getAbsolutePath() + fileSeparator + "TEST_HAS_FAILED.txt");
-                                    failureFile.createNewFile();
-
-                                    // Write the reason of failure into this file
-                                    if (reasonOfTestFailure != null) {
-                                        FileOutputStream fileOutputStream = new FileOutputStream(failureFile);
-                                        fileOutputStream.write(reasonOfTestFailure.getBytes());
-                                        fileOutputStream.flush();
-                                        fileOutputStream.close();
-                                    }
-                                } catch (Exception e) {
-                                    // Ignore
-                                }
-                            }
-                        }
+            p("Launching process...");
 
-                        // Test is over
-                        isRunning = false;
-                        break;
+            isTestRunning = true;
 
-                    } else {
-                        p("Having a not supported operation " + currentOperation + "!");
-                    }
-                }
+            // Launch process
+            testProcessWatcher = new TestProcessWatcher(Util.exec( executionList.toString(), processWorkingDirectory, test.getExecutorEnvparams() ));
 
-                sleep(Constant.DECISECOND); // Wait for any updates
+            p("Process starts executing...");
 
-                p("Waiting any updates...");
+            // Outputs and exit of the process are checked at once and then as often as the watcher tells
+            progress.startRunning();
+            timeOfNextProcessCheck = System.nanoTime();
 
-            } catch (InterruptedException e) {
-                p("Test executor was interrupted. Stop working");
-                isRunning = false;
-            }
+            wakeUp();
+
+        } catch (Exception e) {
+            p("Got troubles while tried to execute test script: " + e.getClass() + " " + e.getMessage());
+            endExecution();
         }
+    }
 
-        // Notify Test Automation Service about success or failure
-        if (isTestFailed) {
-            if (reasonOfTestFailure == null || reasonOfTestFailure.isEmpty()) {
-                reasonOfTestFailure = Constant.UNSPECIFIED_REASON_OF_FAILURE;
+    /**
+     * Prints out all the available outputs of the test execution process and checks whenever the process has exited.
+     * While the process is running, the next check is scheduled after the delay given by the watcher.
+     */
+    private synchronized void checkTestProcess() {
+        try {
+            boolean hasExited = testProcessWatcher.check();
+
+            for (String processOutputLine : testProcessWatcher.takeOutputLines()) {
+                p(processOutputLine);
             }
 
-            p("Ended work. Test execution took totally " + Util.convert(System.currentTimeMillis() - testExecutionStartedAt)
-                + ". Test execution was unsuccessful and has failed becase: " + reasonOfTestFailure);
+            if (!hasExited) {
+                // Silent processes are checked less and less often
+                long checkingDelay = testProcessWatcher.getCheckingDelay();
+                timeOfNextProcessCheck = System.nanoTime() + checkingDelay * 1000000L;
+                wakeUpAfter(checkingDelay);
+                return;
+            }
 
-            test.setStatus(Test.Status.FAILED, reasonOfTestFailure);
+            // Get the result code of test process
+            testExecutionResultCode = testProcessWatcher.getExitCode();
 
-            TestOperation testFailedMessage = new TestOperation(TestOperation.Id.UPDATE, test);
-            testFailedMessage.setReceiver(testAutomationServiceHostname, testAutomationServicePort);
-            testFailedMessage.setSender(testAutomationCommunicatorHostname, testAutomationCommunicatorPort);
+            p("Checking exit code from the external test execution process...");
 
-            sender.handle(testFailedMessage);
+            if (testExecutionResultCode == 0)  {
+                p("Process has successfully finished its work");
+            } else {
+                progress.fail("Test execution process has finished its work with exit code " + testExecutionResultCode);
+                p(progress.getReasonOfFailure());
+            }
 
-            p("Has send a message about test failure:\n" + testFailedMessage);
+            endExecution();
 
-        } else {
-            // Check what was the executor's return code
-            if (testExecutionResultCode == 0) {
-                p("Ended work. Test execution took totally " + Util.convert(System.currentTimeMillis() - testExecutionStartedAt)
-                    + ". Test execution was successful");
+        } catch (Exception e) {
+            p("Got troubles while tried to execute test script: " + e.getClass() + " " + e.getMessage());
+            endExecution();
+        }
+    }
 
-                test.setStatus(Test.Status.FINISHED, "");
+    /**
+     * Ends the test execution and proceeds only to test finalization.
+     */
+    private synchronized void endExecution() {
+        isTestRunning = false; // Test is over after its execution
 
-                TestOperation testFinishedMessage = new TestOperation(TestOperation.Id.UPDATE, test);
-                testFinishedMessage.setReceiver(testAutomationServiceHostname, testAutomationServicePort);
-                testFinishedMessage.setSender(testAutomationCommunicatorHostname, testAutomationCommunicatorPort);
+        flushLogBuffer();
 
-                sender.handle(testFinishedMessage);
+        beginFinalization();
+    }
 
-                p("Has send a test finished message:\n" + testFinishedMessage);
+    /**
+     * Starts sending of test results back to remote client.
+     */
+    private synchronized void beginFinalization() {
+        currentOperation = Operation.FINALIZE_TEST;
 
-            } else {
-                reasonOfTestFailure = "Test executor returned code " + testExecutionResultCode;
+        p("Finalizing the test");
 
-                p("Ended work. Test execution took totally " + Util.convert(System.currentTimeMillis() - testExecutionStartedAt)
-                    + ". Test execution was unsuccessful and has failed becase: " + reasonOfTestFailure);
+        if (testWorkspace == null) {
+            // Nothing to finalize
+            progress.finish();
+            wakeUp();
+            return;
+        }
 
-                test.setStatus(Test.Status.FAILED, reasonOfTestFailure);
+        // Always try to send an archive with results
+        p("Trying to send a file " + test.getResultsFilename() + " with test results...");
 
-                TestOperation testFailedMessage = new TestOperation(TestOperation.Id.UPDATE, test);
-                testFailedMessage.setReceiver(testAutomationServiceHostname, testAutomationServicePort);
-                testFailedMessage.setSender(testAutomationCommunicatorHostname, testAutomationCommunicatorPort);
+        // Check if test results file is existing and could be send
+        testResultsFileName = test.getResultsFilename();
+        testResultsFile = null;
+        boolean testFileCanBeSend = false;
 
-                sender.handle(testFailedMessage);
+        try {
+            testResultsFile = new File(testWorkspace.getAbsolutePath() + fileSeparator + testResultsFileName);
 
-                p("Has send a message about test failure:\n" + testFailedMessage);
+            if (testResultsFile.exists() && testResultsFile.canRead()) {
+                p("Test results file exists at " + testResultsFile.getAbsolutePath() + " and can be send");
+                testFileCanBeSend = true;
             }
-        }
 
-        // Remove all cache entries refering to artifacts of this test
-        List<String> testArtifacts = test.getArtifacts();
+            // If test was splitted, rename results file according to sub-id
+            // For example, rename "results.zip" into "results_7.zip" if test's sub-id was "_7"
+            if (!test.getSubId().isEmpty()) {
+                String renamedTestResultsFileName = testResultsFileName;
+
+                if (testResultsFileName.contains(".")) {
+                    // If test results filename contains extension, add sub id just in front of it
+                    renamedTestResultsFileName = testResultsFileName.substring(0, testResultsFileName.lastIndexOf("."));
+                    renamedTestResultsFileName += test.getSubId();
+                    renamedTestResultsFileName += testResultsFileName.substring(testResultsFileName.lastIndexOf("."));
+                } else {
+                    // Else add sub id to the end of filename
+                    renamedTestResultsFileName = testResultsFileName + test.getId();
+                }
 
-        for (String testArtifact : testArtifacts) {
-            fileCache.removeEntryFor(testWorkspace.getAbsolutePath() + fileSeparator + testArtifact);
-        }
+                File renamedTestResultsFile = new File(testWorkspace.getAbsolutePath() + fileSeparator + renamedTestResultsFileName);
 
-        // So far we are running exclusively on Windows
-        cleanupWindowsEnvironment();
+                p("Trying to rename test results file from " + testResultsFile.getAbsolutePath() + " to " + renamedTestResultsFile.getAbsolutePath());
 
-        flushLogBuffer();
+                if (testResultsFile.renameTo(renamedTestResultsFile)) {
+                    testResultsFileName = renamedTestResultsFileName;
+                    testResultsFile = renamedTestResultsFile;
+                    p("Successfully renamed test results file to " + testResultsFile.getAbsolutePath());
+                }
+            }
 
-        // Stop logging for this test executor
-        if (logWriter != null) {
-            logWriter.close();
+        } catch (Exception e) {
+            p("Got troubles while tried to send test results file " + testResultsFileName
+              + " of the test '" + test.getRuntimeId() + "': " + e.getClass() + " " + e.getMessage());
         }
 
-        if (timer != null) {
-            timer.cancel();
+        // Send test results file back to remote client
+        if (testFileCanBeSend) {
+            sendTestResults();
+        } else {
+            completeFinalization();
+        }
+    }
+
+    /**
+     * Issues the next attempt to send test results file back to remote client.
+     */
+    private synchronized void sendTestResults() {
+        p("Trying to send a test results file " + testResultsFileName);
+        p("Issuing a file transfer for file " + testResultsFileName);
+
+        FileDescription fileDescription = new FileDescription();
+        fileDescription.setFileName(testResultsFileName);
+        fileDescription.setFileSize(testResultsFile.length());
+
+        FileOperation fileTransfer = new FileOperation(FileOperation.Id.PUT, test, fileDescription);
+        fileTransfer.setSender(testAutomationCommunicatorHostname, testAutomationCommunicatorPort);
+        fileTransfer.setReceiver(remoteClientHostname, remoteClientPort);
+
+        // Remember what file we should now transfer and the moment when we've tried to send it
+        progress.sendResults(testResultsFileName, System.currentTimeMillis());
+        timeOfLastWaitingNotification = System.currentTimeMillis();
+
+        // Send file transfer message
+        sender.handle(fileTransfer);
+    }
+
+    /**
+     * Cleans up test workspace and ends the test.
+     */
+    private synchronized void completeFinalization() {
+        // Clean up test workspace
+        if (testAutomationCommunicator.canDeleteWorkspace(progress.isFailed())) {
+            p("Trying to delete test's workspace...");
+
+            // Close logger for this test executor
+            if (logWriter != null) {
+                logWriter.close();
+            }
+
+            if (deleteRecursively(testWorkspace)) {
+                p("Workspace of the test '" + test.getRuntimeId() + "' was successfully deleted");
+            }
+        } else {
+            p("Workspace deletion is not allowed");
+
+            if (progress.isFailed()) {
+                // Create a special file for indicating that test has failed
+                try {
+                    File failureFile = new File(testWorkspace.getAbsolutePath() + fileSeparator + "TEST_HAS_FAILED.txt");
+                    failureFile.createNewFile();
+
+                    // Write the reason of failure into this file
+                    FileOutputStream fileOutputStream = new FileOutputStream(failureFile);
+                    fileOutputStream.write(progress.getReasonOfFailure().getBytes());
+                    fileOutputStream.flush();
+                    fileOutputStream.close();
+                } catch (Exception e) {
+                    // Ignore
+                }
+            }
         }
 
-        testAutomationCommunicator.stopTest(test, isTestFailed);
+        // Test is over
+        progress.finish();
+        wakeUp();
     }
 
     /**
@@ -1006,9 +891,8 @@ public class TestExecutor extends Thread {
      *
      * @param message A message to be handled
      */
-    public synchronized void handle(Object message) {
-        messagePool.add(message);
-        notify();
+    public void handle(Object message) {
+        tell(message);
     }
 
     /**
@@ -1020,6 +904,15 @@ public class TestExecutor extends Thread {
         return testWorkspace;
     }
 
+    /**
+     * Returns hostname of the remote client responsible for the test.
+     *
+     * @return Hostname of the remote client responsible for the test
+     */
+    public String getRemoteClientHostname() {
+        return remoteClientHostname;
+    }
+
     /**
      * Returns a test under execution.
      *
@@ -1063,104 +956,6 @@ public class TestExecutor extends Thread {
         return result;
     }
 
-    /**
-     * Checks that test has a corresponding execution process in test node's memory.
-     * Returns true if such process is existing or false otherwise.
-     *
-     * @return True if the test execution process is existing in test node's memory or false otherwise
-     */
-    private synchronized void isTestExecutionProcessAlive() {
-        p("Checking existency of the external test execution process for '" + test.getRuntimeId() + "'...");
-        List<Integer> pids = new ArrayList<Integer>(0);
-        String windowsCommandLineElement = test.getRuntimeId() + "\\";
-        String linuxCommandLineElement = test.getRuntimeId() + "/";
-
-        try {
-            // Search for any PID which has a command lines containing id of the current test
-            List<String> commands = new ArrayList<String>(0);
-            commands.add("WMIC"); // Use Windows Management Instrumentation for command line
-            commands.add("PROCESS"); // Get all processes
-            commands.add("GET");
-            commands.add("CommandLine,ProcessId"); // With their command lines and PIDs
-            commands.add("/VALUE"); // In a line-after-line format
-
-            ProcessBuilder discoveryProcessBuilder = new ProcessBuilder(commands);
-            discoveryProcessBuilder.redirectErrorStream(true);
-
-            Process discoveryProcess = discoveryProcessBuilder.start();
-
-            // Read outputs and print them out
-            InputStream inputStream = discoveryProcess.getInputStream();
-            InputStreamReader inputStreamReader = new InputStreamReader(inputStream);
-            BufferedReader bufferedReader = new BufferedReader(inputStreamReader);
-
-            String processOutputLine = null;
-            boolean shouldHaveProcessID = false;
-
-            try {
-                do {
-                    processOutputLine = bufferedReader.readLine();
-
-                    if (processOutputLine != null && !processOutputLine.isEmpty()) {
-                        if (shouldHaveProcessID) {
-                            // Check that we actually have a ProcessId
-                            if (processOutputLine.startsWith("ProcessId")) {
-                                try {
-                                    String pidValue = processOutputLine.substring(processOutputLine.indexOf("=") + 1);
-                                    Integer pid = Integer.decode(pidValue);
-                                    if (pid.intValue() > 0) {
-                                        pids.add(pid);
-                                    }
-                                } catch (Exception e) {
-                                    //e.printStackTrace();
-                                }
-                            }
-
-                            shouldHaveProcessID = false;
-                        }
-
-                        if (processOutputLine.startsWith("CommandLine")) {
-                            // Always verify a proper runtime id with Windows and Linux file separating symbols
-                            if (processOutputLine.indexOf(windowsCommandLineElement) != -1) {
-                                // The next line should be process id belonging to this test execution
-                                shouldHaveProcessID = true;
-                            } else if (processOutputLine.indexOf(linuxCommandLineElement) != -1) {
-                                // The next line should be process id belonging to this test execution
-                                shouldHaveProcessID = true;
-                            }
-                        }
-                    }
-                } while (processOutputLine != null);
-
-            } catch (Exception e) {
-                //e.printStackTrace();
-            }
-        } catch (Exception e) {
-            //e.printStackTrace();
-        }
-
-        // If at least one process ID was discovered, the test execution is assumed to be still running
-        if (!pids.isEmpty()) {
-            p("External test execution process for '" + test.getRuntimeId() + "' is still presented");
-
-            isTestExecutionProcessAlive = true;
-
-        } else {
-            p("External test execution process for '" + test.getRuntimeId() + "' is not presented");
-
-            isTestExecutionProcessAlive = false;
-
-            // Close output reader as well
-            try {
-                if (testProcessOutputReader != null) {
-                    testProcessOutputReader.close();
-                }
-            } catch (Exception e) {
-                // Ignore
-            }
-        }
-    }
-
     /**
      * Checks that no process has left for executed test.
      * If it will find one, it will try to kill it along with its sub-processes.
@@ -1324,12 +1119,13 @@ public class TestExecutor extends Thread {
      */
     public synchronized void stopWorking(String reasonOfFailure) {
 
+        // Don't wait for any files anymore
+        progress.stop(reasonOfFailure);
+
         if (reasonOfFailure != null && !reasonOfFailure.isEmpty()) {
-            reasonOfTestFailure = reasonOfFailure;
-            isTestFailed = true;
-            p("Got a request to stop handler of the test '" + test.getRuntimeId() + "' due to failure: " + reasonOfTestFailure);
+            p("Got a request to stop handler of the test '" + test.getRuntimeId() + "' due to failure: " + reasonOfFailure);
 
-            test.setStatus(Test.Status.FAILED, reasonOfTestFailure);
+            test.setStatus(Test.Status.FAILED, reasonOfFailure);
 
             TestOperation testFailedMessage = new TestOperation(TestOperation.Id.UPDATE, test);
             testFailedMessage.setReceiver(testAutomationServiceHostname, testAutomationServicePort);
@@ -1354,7 +1150,7 @@ public class TestExecutor extends Thread {
                 // Ignore
             }
 
-            if (testAutomationCommunicator.canDeleteWorkspace(isTestFailed)) {
+            if (testAutomationCommunicator.canDeleteWorkspace(progress.isFailed())) {
                 p("Trying to delete test's workspace...");
                 if (deleteRecursively(testWorkspace)) {
                     p("Workspace of the test '" + test.getRuntimeId() + "' was successfully deleted");
@@ -1367,25 +1163,23 @@ public class TestExecutor extends Thread {
         }
 
         if (isTestRunning) {
-            if (testProcess != null) {
-                testProcess.destroy();
+            if (testProcessWatcher != null) {
+                testProcessWatcher.destroy();
                 cleanupWindowsEnvironment();
                 p("Test process is killed");
             }
 
             isTestRunning = false;
-            isTestExecutionProcessAlive = false;
 
             flushLogBuffer();
         }
 
-        listOfFilesToBeReceived.clear();
-        listOfFilesToBeSend.clear();
-
-        operations.clear();
-        operations.add(Operation.FINALIZE_TEST);
+        // And proceed only to test finalization
+        if (!progress.isFinished() && currentOperation != Operation.FINALIZE_TEST) {
+            beginFinalization();
+        }
 
-        notify();
+        wakeUp();
     }
 
     /**
@@ -1408,33 +1202,19 @@ public class TestExecutor extends Thread {
 
         if (success) {
             p("Got a notification about successful receive of file " + fileName);
-            for (String expectedFileName : listOfFilesToBeReceived) {
-                if (expectedFileName.equals(fileName)) {
-                    if (listOfFilesToBeReceived.remove(expectedFileName)) {
-                        p("Confirming a successfull receive of file '" + fileName + "'");
-                        hasGotFailureInFileReceive = false;
-                    }
-                    timeOfLastSuccessfulFileTransfer = System.currentTimeMillis();
-                }
+
+            if (progress.fileReceived(fileName, true, System.currentTimeMillis())) {
+                p("Confirming a successfull receive of file '" + fileName + "'");
             }
         } else {
             p("Got a notification about failed receive of file " + fileName);
-            for (String expectedFileName : listOfFilesToBeReceived) {
-                if (expectedFileName.equals(fileName)) {
-                    if (listOfFilesToBeReceived.remove(expectedFileName)) {
-                        p("Confirming a failed receive of file '" + fileName + "'");
-                        hasGotFailureInFileReceive = true;
-                        isTestFailed = true;
-                        reasonOfTestFailure = "Failed to receive file '" + fileName + "' on test node "
-                            + testAutomationCommunicatorHostname + ":" + testAutomationCommunicatorPort;
-                        listOfFilesToBeReceived.clear();
-                        break;
-                    }
-                }
+
+            if (progress.fileReceived(fileName, false, System.currentTimeMillis())) {
+                p("Confirming a failed receive of file '" + fileName + "'");
             }
         }
 
-        notify();
+        wakeUp();
 
         handled = true;
 
@@ -1453,27 +1233,19 @@ public class TestExecutor extends Thread {
 
         if (success) {
             p("Got a notification about successful send of file " + fileName);
-            for (String expectedFileName : listOfFilesToBeSend) {
-                if (expectedFileName.equals(fileName)) {
-                    if (listOfFilesToBeSend.remove(expectedFileName)) {
-                        p("Confirming a successfull send of file " + fileName);
-                    }
-                    timeOfLastSuccessfulFileTransfer = System.currentTimeMillis();
-                }
+
+            if (progress.fileSend(fileName, true, System.currentTimeMillis())) {
+                p("Confirming a successfull send of file " + fileName);
             }
         } else {
             p("Got a notification about failed send of file " + fileName);
-            for (String expectedFileName : listOfFilesToBeSend) {
-                if (expectedFileName.equals(fileName)) {
-                    if (listOfFilesToBeSend.remove(expectedFileName)) {
-                        p("Confirming a failure in send of file " + fileName);
-                        hasGotFailureInFileSend = true;
-                    }
-                }
+
+            if (progress.fileSend(fileName, false, System.currentTimeMillis())) {
+                p("Confirming a failure in send of file " + fileName);
             }
         }
 
-        notify();
+        wakeUp();
 
         handled = true;
 
@@ -1508,7 +1280,7 @@ public class TestExecutor extends Thread {
                         + product.getIMEI() + " and was of type " + product.getRMCode());
         }
 
-        notify();
+        wakeUp();
     }
 
     /**
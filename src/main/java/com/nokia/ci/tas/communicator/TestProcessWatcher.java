@@ -0,0 +1,230 @@
+package com.nokia.ci.tas.communicator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.nokia.ci.tas.commons.Constant;
+
+/**
+ * Watcher of the external test execution process, which collects its outputs line after line
+ * and tells when the process has exited.
+ *
+ * Outputs and exit of the process are checked without blocking, so the watcher doesn't need a thread of its own.
+ * While the process stays silent, its checks are made less and less often,
+ * and any new outputs bring them back to the shortest delay.
+ */
+public class TestProcessWatcher {
+
+    /**
+     * Shortest delay between checks of the test execution process in milliseconds.
+     */
+    public static final long MINIMAL_CHECKING_DELAY = Constant.CENTISECOND;
+
+    /**
+     * Longest delay between checks of the test execution process in milliseconds.
+     */
+    public static final long MAXIMAL_CHECKING_DELAY = Constant.ONE_SECOND;
+
+    /**
+     * Size of the buffer used in reading outputs of the test execution process.
+     */
+    private static final int OUTPUT_BUFFER_SIZE = 8192;
+
+    /**
+     * The external test execution process.
+     */
+    private Process process;
+
+    /**
+     * Outputs of the external test execution process.
+     */
+    private InputStream output;
+
+    /**
+     * Buffer used in reading outputs of the external test execution process.
+     */
+    private byte[] outputBuffer;
+
+    /**
+     * Not yet completed line of outputs from the external test execution process.
+     */
+    private ByteArrayOutputStream outputLine;
+
+    /**
+     * Completed lines of outputs, which are not yet taken.
+     */
+    private List<String> outputLines;
+
+    /**
+     * Delay until the next check of the process in milliseconds.
+     */
+    private long checkingDelay = MINIMAL_CHECKING_DELAY;
+
+    /**
+     * Indication of whenever the process was killed, which also closes its outputs.
+     */
+    private boolean isDestroyed = false;
+
+    /**
+     * Indication of whenever the process has exited.
+     */
+    private boolean hasExited = false;
+
+    /**
+     * Exit code of the process or -1 if it has not exited yet.
+     */
+    private int exitCode = -1;
+
+    /**
+     * Constructor.
+     *
+     * @param process The external test execution process to be watched
+     */
+    public TestProcessWatcher(Process process) {
+        this.process = process;
+        output = process.getInputStream();
+        outputBuffer = new byte[OUTPUT_BUFFER_SIZE];
+        outputLine = new ByteArrayOutputStream();
+        outputLines = new ArrayList<String>(0);
+    }
+
+    /**
+     * Collects all the outputs of the process available without blocking and checks whenever the process has exited.
+     * Delay until the next check is doubled if the process has written nothing, up to MAXIMAL_CHECKING_DELAY.
+     *
+     * @return True if the process has exited or false if it is still running
+     * @throws IOException If outputs cannot be read
+     */
+    public synchronized boolean check() throws IOException {
+        if (hasExited) {
+            return true;
+        }
+
+        boolean hasGotOutputs = readOutput();
+
+        try {
+            exitCode = process.exitValue();
+        } catch (IllegalThreadStateException e) {
+            // Process is still running
+            if (hasGotOutputs) {
+                checkingDelay = MINIMAL_CHECKING_DELAY;
+            } else {
+                checkingDelay = Math.min(checkingDelay * 2L, MAXIMAL_CHECKING_DELAY);
+            }
+
+            return false;
+        }
+
+        // Outputs written just before the exit are still there
+        readOutput();
+        completeOutputLine();
+
+        hasExited = true;
+
+        return true;
+    }
+
+    /**
+     * Reads all the outputs of the process available without blocking.
+     *
+     * @return True if any outputs were read or false otherwise
+     * @throws IOException If outputs cannot be read
+     */
+    private boolean readOutput() throws IOException {
+        boolean hasGotOutputs = false;
+
+        if (isDestroyed) {
+            return hasGotOutputs;
+        }
+
+        int numberOfAvailableBytes = output.available();
+
+        while (numberOfAvailableBytes > 0) {
+            int numberOfBytes = output.read(outputBuffer, 0, Math.min(numberOfAvailableBytes, outputBuffer.length));
+
+            if (numberOfBytes <= 0) {
+                break;
+            }
+
+            hasGotOutputs = true;
+
+            for (int i = 0; i < numberOfBytes; i++) {
+                if (outputBuffer[i] == '\n') {
+                    completeOutputLine();
+                } else {
+                    outputLine.write(outputBuffer[i]);
+                }
+            }
+
+            numberOfAvailableBytes = output.available();
+        }
+
+        return hasGotOutputs;
+    }
+
+    /**
+     * Puts the collected line of outputs into the list of completed lines, unless it is empty.
+     */
+    private void completeOutputLine() {
+        String line = outputLine.toString();
+        outputLine.reset();
+
+        if (line.endsWith("\r")) {
+            line = line.substring(0, line.length() - 1);
+        }
+
+        if (!line.isEmpty()) {
+            outputLines.add(line);
+        }
+    }
+
+    /**
+     * Returns completed lines of outputs collected since the last call.
+     *
+     * @return Completed lines of outputs collected since the last call
+     */
+    public synchronized List<String> takeOutputLines() {
+        List<String> lines = outputLines;
+        outputLines = new ArrayList<String>(0);
+        return lines;
+    }
+
+    /**
+     * Returns delay until the next check of the process.
+     *
+     * @return Delay until the next check of the process in milliseconds
+     */
+    public synchronized long getCheckingDelay() {
+        return checkingDelay;
+    }
+
+    /**
+     * Tells whenever the process has exited.
+     *
+     * @return True if the process has exited or false otherwise
+     */
+    public synchronized boolean hasExited() {
+        return hasExited;
+    }
+
+    /**
+     * Returns exit code of the process.
+     *
+     * @return Exit code of the process or -1 if it has not exited yet
+     */
+    public synchronized int getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * Kills the process. Outputs of the killed process are not collected anymore.
+     */
+    public synchronized void destroy() {
+        isDestroyed = true;
+        process.destroy();
+    }
+}
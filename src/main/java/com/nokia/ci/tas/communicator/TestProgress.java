@@ -0,0 +1,339 @@
+package com.nokia.ci.tas.communicator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.nokia.ci.tas.commons.Constant;
+
+/**
+ * Progress of a single test through its states on a testing machine.
+ *
+ * Keeps the files the test is still waiting for, the failure of the test and the moments of time
+ * its states depend on, so the test executor only has to act on the transitions.
+ */
+public class TestProgress {
+
+    /**
+     * States of the test.
+     */
+    public enum State {
+        RECEIVING_ARTIFACTS, // Waiting until all requested test artifacts are received
+        WAITING_FOR_LAUNCH, // Keeping a pause between launches of parallel tests
+        RUNNING, // Printing outputs of the test execution process until it exits
+        SENDING_RESULTS, // Waiting until test results file is send to remote client
+        FINISHED // Test is over
+    };
+
+    /**
+     * Description of the test node, used in reasons of failures.
+     */
+    private String testNode;
+
+    /**
+     * Current state of the test or null if the test is not yet initialized.
+     */
+    private State state = null;
+
+    /**
+     * Keeps a list of file names which should be received for the test.
+     */
+    private List<String> listOfFilesToBeReceived;
+
+    /**
+     * Keeps a list of file names which should be send for the test.
+     */
+    private List<String> listOfFilesToBeSend;
+
+    /**
+     * Indication of whenever the test has failed.
+     */
+    private boolean isFailed = false;
+
+    /**
+     * Holder of textual explanation why test has failed.
+     */
+    private String reasonOfFailure;
+
+    /**
+     * Indicator of a failed file send.
+     */
+    private boolean hasGotFailureInFileSend = false;
+
+    /**
+     * Number of attempts to send test results file made so far.
+     */
+    private int numberOfSendingAttempts = 0;
+
+    /**
+     * Moment of time when the last file was successfully transferred or its transfer was issued.
+     */
+    private long timeOfLastSuccessfulFileTransfer = 0L;
+
+    /**
+     * Moment of time when the test execution process could be launched.
+     */
+    private long timeOfLaunch = 0L;
+
+    /**
+     * Constructor.
+     *
+     * @param testNode Description of the test node, used in reasons of failures
+     */
+    public TestProgress(String testNode) {
+        this.testNode = testNode;
+        listOfFilesToBeReceived = new ArrayList<String>(0);
+        listOfFilesToBeSend = new ArrayList<String>(0);
+    }
+
+    /**
+     * Returns current state of the test.
+     *
+     * @return Current state of the test or null if the test is not yet initialized
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Remembers a test artifact which should be received before the test is launched.
+     *
+     * @param fileName Name of the requested test artifact
+     */
+    public synchronized void expectArtifact(String fileName) {
+        listOfFilesToBeReceived.add(fileName);
+    }
+
+    /**
+     * Starts waiting for all the expected test artifacts.
+     */
+    public synchronized void receiveArtifacts() {
+        state = State.RECEIVING_ARTIFACTS;
+    }
+
+    /**
+     * Tells whenever no more test artifacts are expected.
+     *
+     * @return True if no more test artifacts are expected or false otherwise
+     */
+    public synchronized boolean areArtifactsReceived() {
+        return listOfFilesToBeReceived.isEmpty();
+    }
+
+    /**
+     * Returns names of the files which are still expected to be received.
+     *
+     * @return Names of the files which are still expected to be received
+     */
+    public synchronized List<String> getFilesToBeReceived() {
+        return new ArrayList<String>(listOfFilesToBeReceived);
+    }
+
+    /**
+     * Handles the end of a file receiving.
+     * A failed receive of any expected file fails the test and no other files are expected anymore.
+     *
+     * @param fileName Name of the received file
+     * @param success True if file was successfully received or false otherwise
+     * @param currentTime Current moment of time
+     * @return True if the file was expected or false otherwise
+     */
+    public synchronized boolean fileReceived(String fileName, boolean success, long currentTime) {
+        if (!listOfFilesToBeReceived.remove(fileName)) {
+            return false;
+        }
+
+        if (success) {
+            timeOfLastSuccessfulFileTransfer = currentTime;
+        } else {
+            fail("Failed to receive file '" + fileName + "' on test node " + testNode);
+            listOfFilesToBeReceived.clear();
+        }
+
+        return true;
+    }
+
+    /**
+     * Keeps the test waiting until specified moment of time before its launch.
+     *
+     * @param timeOfLaunch Moment of time when the test execution process could be launched
+     */
+    public synchronized void waitForLaunch(long timeOfLaunch) {
+        this.timeOfLaunch = timeOfLaunch;
+        state = State.WAITING_FOR_LAUNCH;
+    }
+
+    /**
+     * Tells whenever the test waiting for its launch could be launched now.
+     *
+     * @param currentTime Current moment of time
+     * @return True if the test could be launched now or false otherwise
+     */
+    public synchronized boolean isTimeToLaunch(long currentTime) {
+        return state == State.WAITING_FOR_LAUNCH && currentTime >= timeOfLaunch;
+    }
+
+    /**
+     * Marks the test execution process as launched.
+     */
+    public synchronized void startRunning() {
+        state = State.RUNNING;
+    }
+
+    /**
+     * Starts the next attempt to send specified test results file.
+     *
+     * @param fileName Name of the test results file
+     * @param currentTime Current moment of time
+     */
+    public synchronized void sendResults(String fileName, long currentTime) {
+        numberOfSendingAttempts++;
+        hasGotFailureInFileSend = false;
+
+        listOfFilesToBeSend.clear();
+        listOfFilesToBeSend.add(fileName);
+
+        timeOfLastSuccessfulFileTransfer = currentTime;
+        state = State.SENDING_RESULTS;
+    }
+
+    /**
+     * Handles the end of a file sending.
+     *
+     * @param fileName Name of the send file
+     * @param success True if file was successfully send or false otherwise
+     * @param currentTime Current moment of time
+     * @return True if the file was expected to be send or false otherwise
+     */
+    public synchronized boolean fileSend(String fileName, boolean success, long currentTime) {
+        if (!listOfFilesToBeSend.remove(fileName)) {
+            return false;
+        }
+
+        if (success) {
+            timeOfLastSuccessfulFileTransfer = currentTime;
+        } else {
+            hasGotFailureInFileSend = true;
+        }
+
+        return true;
+    }
+
+    /**
+     * Tells whenever no more files are waiting to be send.
+     *
+     * @return True if no more files are waiting to be send or false otherwise
+     */
+    public synchronized boolean areResultsSend() {
+        return listOfFilesToBeSend.isEmpty();
+    }
+
+    /**
+     * Returns names of the files which are still waiting to be send.
+     *
+     * @return Names of the files which are still waiting to be send
+     */
+    public synchronized List<String> getFilesToBeSend() {
+        return new ArrayList<String>(listOfFilesToBeSend);
+    }
+
+    /**
+     * Tells whenever the last attempt to send test results file has failed.
+     *
+     * @return True if the last attempt to send test results file has failed or false otherwise
+     */
+    public synchronized boolean hasFailedToSendResults() {
+        return hasGotFailureInFileSend;
+    }
+
+    /**
+     * Returns number of attempts to send test results file made so far.
+     *
+     * @return Number of attempts to send test results file made so far
+     */
+    public synchronized int getNumberOfSendingAttempts() {
+        return numberOfSendingAttempts;
+    }
+
+    /**
+     * Tells whenever sending of test results file could be tried once again.
+     *
+     * @return True if sending of test results file could be tried once again or false otherwise
+     */
+    public synchronized boolean canRetrySending() {
+        return numberOfSendingAttempts < Constant.NUMBER_OF_RETRIES;
+    }
+
+    /**
+     * Tells whenever test results file is waiting to be send for too long.
+     *
+     * @param currentTime Current moment of time
+     * @return True if test results file is waiting to be send for more than 15 minutes or false otherwise
+     */
+    public synchronized boolean isResultsSendingTimedOut(long currentTime) {
+        return state == State.SENDING_RESULTS
+            && !listOfFilesToBeSend.isEmpty()
+            && (currentTime - timeOfLastSuccessfulFileTransfer) > Constant.FIFTEEN_MINUTES;
+    }
+
+    /**
+     * Marks the test as failed.
+     *
+     * @param reasonOfFailure Textual explanation why test has failed
+     */
+    public synchronized void fail(String reasonOfFailure) {
+        isFailed = true;
+        this.reasonOfFailure = reasonOfFailure;
+    }
+
+    /**
+     * Stops waiting for any files. A non-empty reason of failure also marks the test as failed.
+     *
+     * @param reasonOfFailure Textual explanation why test was stopped or null
+     */
+    public synchronized void stop(String reasonOfFailure) {
+        if (reasonOfFailure != null && !reasonOfFailure.isEmpty()) {
+            fail(reasonOfFailure);
+        }
+
+        listOfFilesToBeReceived.clear();
+        listOfFilesToBeSend.clear();
+    }
+
+    /**
+     * Tells whenever the test has failed.
+     *
+     * @return True if the test has failed or false otherwise
+     */
+    public synchronized boolean isFailed() {
+        return isFailed;
+    }
+
+    /**
+     * Returns textual explanation why test has failed.
+     *
+     * @return Textual explanation why test has failed or Constant.UNSPECIFIED_REASON_OF_FAILURE if it is not known
+     */
+    public synchronized String getReasonOfFailure() {
+        if (reasonOfFailure == null || reasonOfFailure.isEmpty()) {
+            return Constant.UNSPECIFIED_REASON_OF_FAILURE;
+        }
+
+        return reasonOfFailure;
+    }
+
+    /**
+     * Marks the test as over.
+     */
+    public synchronized void finish() {
+        state = State.FINISHED;
+    }
+
+    /**
+     * Tells whenever the test is over.
+     *
+     * @return True if the test is over or false otherwise
+     */
+    public synchronized boolean isFinished() {
+        return state == State.FINISHED;
+    }
+}
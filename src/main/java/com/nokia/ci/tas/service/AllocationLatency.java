@@ -0,0 +1,115 @@
+package com.nokia.ci.tas.service;
+
+import java.util.Arrays;
+
+/**
+ * Keeps track of the time tests are waiting for testing resources, from the moment they were issued until they got their products.
+ *
+ * Besides the number of allocations, their average and maximal time, the most recent allocations are kept in a ring,
+ * so the median and the 95th percentile tell how quickly tests are allocated right now.
+ */
+public class AllocationLatency {
+
+    /**
+     * Default number of the most recent allocations used for percentiles.
+     */
+    public static final int DEFAULT_NUMBER_OF_RECENT_ALLOCATIONS = 1000;
+
+    /**
+     * Times to allocation of the most recent allocations in milliseconds.
+     */
+    private long[] recentTimes;
+
+    /**
+     * Position of the next recent allocation in the ring.
+     */
+    private int nextPosition = 0;
+
+    /**
+     * Total number of allocations.
+     */
+    private long numberOfAllocations = 0L;
+
+    /**
+     * Total time to allocation of all allocations in milliseconds.
+     */
+    private long totalTime = 0L;
+
+    /**
+     * Maximal time to allocation in milliseconds.
+     */
+    private long maximalTime = 0L;
+
+    /**
+     * Constructor.
+     *
+     * @param numberOfRecentAllocations Number of the most recent allocations used for percentiles
+     */
+    public AllocationLatency(int numberOfRecentAllocations) {
+        recentTimes = new long[Math.max(numberOfRecentAllocations, 1)];
+    }
+
+    /**
+     * Records a single allocation.
+     *
+     * @param timeToAllocation Time the test has waited for its products in milliseconds
+     */
+    public synchronized void record(long timeToAllocation) {
+        timeToAllocation = Math.max(timeToAllocation, 0L);
+
+        recentTimes[nextPosition] = timeToAllocation;
+        nextPosition = (nextPosition + 1) % recentTimes.length;
+
+        numberOfAllocations++;
+        totalTime += timeToAllocation;
+        maximalTime = Math.max(maximalTime, timeToAllocation);
+    }
+
+    /**
+     * Returns the total number of allocations.
+     *
+     * @return Total number of allocations
+     */
+    public synchronized long getNumberOfAllocations() {
+        return numberOfAllocations;
+    }
+
+    /**
+     * Returns the average time to allocation.
+     *
+     * @return Average time to allocation in milliseconds or 0 if nothing was allocated yet
+     */
+    public synchronized long getAverageTime() {
+        return numberOfAllocations > 0L ? totalTime / numberOfAllocations : 0L;
+    }
+
+    /**
+     * Returns the maximal time to allocation.
+     *
+     * @return Maximal time to allocation in milliseconds
+     */
+    public synchronized long getMaximalTime() {
+        return maximalTime;
+    }
+
+    /**
+     * Returns specified percentile of the time to allocation among the most recent allocations.
+     *
+     * @param percentile Percentile between 0 and 100
+     * @return Time to allocation in milliseconds or 0 if nothing was allocated yet
+     */
+    public synchronized long getRecentPercentile(int percentile) {
+        int numberOfRecentAllocations = (int) Math.min(numberOfAllocations, (long) recentTimes.length);
+
+        if (numberOfRecentAllocations == 0) {
+            return 0L;
+        }
+
+        long[] sortedTimes = Arrays.copyOf(recentTimes, numberOfRecentAllocations);
+        Arrays.sort(sortedTimes);
+
+        int index = (int) Math.ceil(numberOfRecentAllocations * Math.min(Math.max(percentile, 0), 100) / 100.0) - 1;
+
+        return sortedTimes[Math.max(index, 0)];
+    }
+}
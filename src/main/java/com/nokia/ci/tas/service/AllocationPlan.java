@@ -0,0 +1,70 @@
+package com.nokia.ci.tas.service;
+
+import java.util.List;
+
+import com.nokia.ci.tas.commons.Product;
+
+/**
+ * Product sets found in the test farm for a single waiting test.
+ *
+ * For each of the environments required by the test a plan keeps the matching product sets
+ * together with the test nodes on which they are available. A plan reserves nothing by itself,
+ * the products are reserved only when the test is launched.
+ */
+public class AllocationPlan {
+
+    /**
+     * True if test farm had some capable test nodes at the moment of search.
+     */
+    private boolean hasCapableTestNodes;
+
+    /**
+     * Test nodes of the found product sets, for each of found environments.
+     */
+    private List<List<TestNode>> testNodeMatches;
+
+    /**
+     * Found product sets, for each of found environments.
+     */
+    private List<List<List<Product>>> productSetMatches;
+
+    /**
+     * Constructor.
+     *
+     * @param hasCapableTestNodes True if test farm had some capable test nodes at the moment of search
+     * @param testNodeMatches Test nodes of the found product sets, for each of found environments
+     * @param productSetMatches Found product sets, for each of found environments
+     */
+    public AllocationPlan(boolean hasCapableTestNodes, List<List<TestNode>> testNodeMatches, List<List<List<Product>>> productSetMatches) {
+        this.hasCapableTestNodes = hasCapableTestNodes;
+        this.testNodeMatches = testNodeMatches;
+        this.productSetMatches = productSetMatches;
+    }
+
+    /**
+     * Tells whenever test farm had some capable test nodes at the moment of search.
+     *
+     * @return True if test farm had some capable test nodes, or false otherwise
+     */
+    public boolean hasCapableTestNodes() {
+        return hasCapableTestNodes;
+    }
+
+    /**
+     * Returns test nodes of the found product sets.
+     *
+     * @return Test nodes of the found product sets, for each of found environments
+     */
+    public List<List<TestNode>> getTestNodeMatches() {
+        return testNodeMatches;
+    }
+
+    /**
+     * Returns found product sets.
+     *
+     * @return Found product sets, for each of found environments
+     */
+    public List<List<List<Product>>> getProductSetMatches() {
+        return productSetMatches;
+    }
+}
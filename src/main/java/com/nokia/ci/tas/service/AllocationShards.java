@@ -0,0 +1,109 @@
+package com.nokia.ci.tas.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import com.nokia.ci.tas.commons.Product;
+
+/**
+ * Splits waiting requests for products into independent shards by the RM codes they require.
+ *
+ * A request goes into a shard only if each of its required products has the same RM code, so requests of different shards
+ * never compete for the same products and could be resolved in parallel. Requests without RM codes or requiring several
+ * RM codes at once could compete with any shard and are kept apart as cross-shard requests.
+ * RM codes are used alone, since shards of RM codes and hardware types would overlap.
+ * Requests keep the order in which they were added, both inside the shards and among cross-shard requests.
+ *
+ * @param <T> Type of the requests
+ */
+public class AllocationShards<T> {
+
+    /**
+     * Name of the product parameter requests are sharded by.
+     */
+    public static final String SHARDING_PARAMETER = Product.XML_ELEMENT_RM_CODE;
+
+    /**
+     * Requests of each shard by their RM codes.
+     */
+    private LinkedHashMap<String, List<T>> shards = new LinkedHashMap<String, List<T>>();
+
+    /**
+     * Requests which could compete with any shard.
+     */
+    private List<T> crossShardRequests = new ArrayList<T>(0);
+
+    /**
+     * Returns the RM code shared by all specified requirements.
+     *
+     * @param requirements Requirements for the products of a single request
+     * @return RM code required by all the products, or null if products have no RM code or several different ones
+     */
+    public static String getShardKey(List<ProductIndex.Requirement> requirements) {
+        String shardKey = null;
+
+        for (ProductIndex.Requirement requirement : requirements) {
+            String value = requirement.getValue(SHARDING_PARAMETER);
+
+            if (value == null || (shardKey != null && !shardKey.equalsIgnoreCase(value))) {
+                return null;
+            }
+
+            shardKey = value.toLowerCase();
+        }
+
+        return shardKey;
+    }
+
+    /**
+     * Adds a request requiring specified products.
+     *
+     * @param request Request for products
+     * @param requirements Requirements for all the products of the request
+     */
+    public void add(T request, List<ProductIndex.Requirement> requirements) {
+        String shardKey = getShardKey(requirements);
+
+        if (shardKey == null) {
+            crossShardRequests.add(request);
+            return;
+        }
+
+        List<T> shard = shards.get(shardKey);
+
+        if (shard == null) {
+            shard = new ArrayList<T>(1);
+            shards.put(shardKey, shard);
+        }
+
+        shard.add(request);
+    }
+
+    /**
+     * Returns requests of all shards.
+     *
+     * @return Requests of each shard, shards in the order of their first requests
+     */
+    public List<List<T>> getShards() {
+        return new ArrayList<List<T>>(shards.values());
+    }
+
+    /**
+     * Returns the number of shards.
+     *
+     * @return Number of shards
+     */
+    public int getNumberOfShards() {
+        return shards.size();
+    }
+
+    /**
+     * Returns requests which could compete with any shard.
+     *
+     * @return Cross-shard requests
+     */
+    public List<T> getCrossShardRequests() {
+        return crossShardRequests;
+    }
+}
@@ -0,0 +1,212 @@
+package com.nokia.ci.tas.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.nokia.ci.tas.commons.Product;
+
+/**
+ * Keeps a future window of products for the first waiting test which needs several products at once,
+ * and lets the other waiting tests use those products only if they are predicted to finish before the window starts.
+ *
+ * Without such a window a test requiring many products has to wait until all of them happen to be free at the same moment,
+ * while tests requiring a single product keep taking them one by one as soon as they are released.
+ * With the window, the wide test gets its products as soon as their current tests are predicted to be finished,
+ * and short tests are still backfilled into the products which would otherwise stay idle until then.
+ *
+ * Products are predicted to be freed when their tests are predicted to finish, by the known durations of executed test packages,
+ * or when their reservations are expiring at the latest. The window is made again on each allocation of waiting tests,
+ * so it follows the actual releases of products.
+ */
+public class BackfillSchedule {
+
+    /**
+     * Predicted finishing times of running tests by their runtime ids.
+     */
+    private Map<String, Long> predictedEndTimes = new HashMap<String, Long>();
+
+    /**
+     * Start times of the window by IMEIs of the products kept for the waiting test.
+     */
+    private Map<String, Long> reservedStartTimes = new HashMap<String, Long>();
+
+    /**
+     * Id of the waiting test which has got the window, or null if there is no window.
+     */
+    private String reservingTestId = null;
+
+    /**
+     * Stores predicted finishing time of a started test.
+     *
+     * @param runtimeId Runtime id of the test
+     * @param predictedEndTime Moment of time when test is predicted to be finished
+     */
+    public synchronized void setPredictedEndTime(String runtimeId, long predictedEndTime) {
+        predictedEndTimes.put(runtimeId, predictedEndTime);
+    }
+
+    /**
+     * Forgets predicted finishing time of a finished test.
+     *
+     * @param runtimeId Runtime id of the test
+     */
+    public synchronized void removePredictedEndTime(String runtimeId) {
+        predictedEndTimes.remove(runtimeId);
+    }
+
+    /**
+     * Returns the moment of time when specified product is predicted to be free.
+     *
+     * @param product Product
+     * @param currentTime Current moment of time
+     * @return Predicted moment of time, current time for free products or Long.MAX_VALUE if product won't be freed by any test
+     */
+    public synchronized long getPredictedFreeTime(Product product, long currentTime) {
+        if (product.isFree()) {
+            return currentTime;
+        }
+
+        if (product.getStatus() != Product.Status.BUSY || product.getReservationTimeout() <= 0L) {
+            // Disabled products and products kept without a timeout can't be predicted
+            return Long.MAX_VALUE;
+        }
+
+        // Test can't keep its products longer than they were reserved
+        long predictedFreeTime = product.getReservationTime() + product.getReservationTimeout();
+
+        Long predictedEndTime = product.getStatusDetails() != null ? predictedEndTimes.get(product.getStatusDetails()) : null;
+
+        if (predictedEndTime != null && predictedEndTime.longValue() < predictedFreeTime) {
+            predictedFreeTime = predictedEndTime.longValue();
+        }
+
+        return Math.max(predictedFreeTime, currentTime);
+    }
+
+    /**
+     * Finds a set of products matching all required patterns, which is predicted to be free as soon as possible.
+     *
+     * @param matchingProducts IMEIs of products matching each of the required patterns
+     * @param products All products of a test node, both free and busy
+     * @param currentTime Current moment of time
+     * @return Matching set of products or null if there is no such set
+     */
+    public List<Product> findEarliestProductSet(List<Set<String>> matchingProducts, List<Product> products, long currentTime) {
+        final Map<Product, Long> predictedFreeTimes = new HashMap<Product, Long>();
+        List<Product> candidateProducts = new ArrayList<Product>(products.size());
+
+        for (Product product : products) {
+            long predictedFreeTime = getPredictedFreeTime(product, currentTime);
+
+            if (predictedFreeTime != Long.MAX_VALUE) {
+                predictedFreeTimes.put(product, predictedFreeTime);
+                candidateProducts.add(product);
+            }
+        }
+
+        // Sooner freed products first
+        Collections.sort(candidateProducts, new Comparator<Product>() {
+            @Override
+            public int compare(Product first, Product second) {
+                return predictedFreeTimes.get(first).compareTo(predictedFreeTimes.get(second));
+            }
+        });
+
+        // If a set can be taken from some number of the soonest freed products, it can be taken from any larger number of them too,
+        // so the smallest such number is found by a binary search
+        int low = matchingProducts.size();
+        int high = candidateProducts.size();
+        List<Product> earliestProductSet = null;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            List<List<Product>> productSets = new ProductSetMatcher(matchingProducts, candidateProducts.subList(0, middle)).findProductSets(1L);
+
+            if (!productSets.isEmpty()) {
+                earliestProductSet = productSets.get(0);
+                high = middle - 1;
+            } else {
+                low = middle + 1;
+            }
+        }
+
+        return earliestProductSet;
+    }
+
+    /**
+     * Returns the moment of time when all specified products are predicted to be free.
+     *
+     * @param products Products
+     * @param currentTime Current moment of time
+     * @return Predicted moment of time or Long.MAX_VALUE if some of products won't be freed by any test
+     */
+    public long getPredictedStartTime(List<Product> products, long currentTime) {
+        long predictedStartTime = currentTime;
+
+        for (Product product : products) {
+            predictedStartTime = Math.max(predictedStartTime, getPredictedFreeTime(product, currentTime));
+        }
+
+        return predictedStartTime;
+    }
+
+    /**
+     * Removes the window, so that it could be made again.
+     */
+    public synchronized void clearReservation() {
+        reservedStartTimes.clear();
+        reservingTestId = null;
+    }
+
+    /**
+     * Keeps specified products for a waiting test since specified moment of time.
+     *
+     * @param testId Id of the waiting test
+     * @param products Products to be kept
+     * @param startTime Moment of time since which products are kept
+     */
+    public synchronized void reserve(String testId, List<Product> products, long startTime) {
+        reservedStartTimes.clear();
+
+        for (Product product : products) {
+            reservedStartTimes.put(product.getIMEI(), startTime);
+        }
+
+        reservingTestId = testId;
+    }
+
+    /**
+     * Tells whenever some waiting test has got a window.
+     *
+     * @return True if there is a window or false otherwise
+     */
+    public synchronized boolean hasReservation() {
+        return reservingTestId != null;
+    }
+
+    /**
+     * Returns the id of the waiting test which has got the window.
+     *
+     * @return Id of the waiting test or null if there is no window
+     */
+    public synchronized String getReservingTestId() {
+        return reservingTestId;
+    }
+
+    /**
+     * Tells whenever specified product can be used by a test predicted to be finished at specified moment of time.
+     *
+     * @param product Product
+     * @param predictedEndTime Moment of time when test is predicted to be finished
+     * @return True if product isn't kept for the waiting test or will be released before the window starts
+     */
+    public synchronized boolean isAvailable(Product product, long predictedEndTime) {
+        Long startTime = reservedStartTimes.get(product.getIMEI());
+        return startTime == null || predictedEndTime <= startTime.longValue();
+    }
+}
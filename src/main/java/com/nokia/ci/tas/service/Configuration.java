@@ -8,13 +8,15 @@ import java.io.PrintWriter;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
+import com.nokia.ci.tas.commons.Actor;
+import com.nokia.ci.tas.commons.ActorRuntime;
 import com.nokia.ci.tas.commons.Constant;
 import com.nokia.ci.tas.commons.Util;
 
 /**
  * Configuration handler for Test Automation Service.
  */
-public class Configuration extends Thread {
+public class Configuration extends Actor<Object> {
 
     /**
      * Name of the configuration file.
@@ -121,6 +123,56 @@ public class Configuration extends Thread {
      */
     private long dailyWorkloadHistorySliceDuration = Constant.FIVE_MINUTES;
 
+    /**
+     * Parameter name for switching between fair share and first come, first served scheduling of waiting tests.
+     */
+    private static final String FAIR_SHARE_SCHEDULING = "fair-share-scheduling";
+
+    /**
+     * Fair share scheduling indicator.
+     */
+    private long fairShareScheduling = 1L;
+
+    /**
+     * Parameter name for storing the period of waiting which raises the effective priority of a test by one.
+     */
+    private static final String TEST_AGING_PERIOD = "test-aging-period";
+
+    /**
+     * Period of waiting which raises the effective priority of a test by one, in milliseconds.
+     */
+    private long testAgingPeriod = FairShareSchedulingPolicy.DEFAULT_AGING_PERIOD;
+
+    /**
+     * Parameter name for switching on and off backfilling of short tests into the products kept for waiting multi-product tests.
+     */
+    private static final String BACKFILL_SCHEDULING = "backfill-scheduling";
+
+    /**
+     * Backfill scheduling indicator.
+     */
+    private long backfillScheduling = 1L;
+
+    /**
+     * Parameter name for switching on and off reserving all environments required by a test together or none of them.
+     */
+    private static final String GANG_RESERVATION = "gang-reservation";
+
+    /**
+     * Gang reservation indicator.
+     */
+    private long gangReservation = 1L;
+
+    /**
+     * Parameter name for switching on and off searching products for the tests of different RM codes in parallel.
+     */
+    private static final String SHARDED_ALLOCATION = "sharded-allocation";
+
+    /**
+     * Sharded allocation indicator.
+     */
+    private long shardedAllocation = 1L;
+
     /**
      * Parameter name for putting Test Automation Service into maintenance mode.
      */
@@ -148,9 +200,11 @@ public class Configuration extends Thread {
 
     /**
      * Constructor.
+     *
+     * @param runtime Runtime of the Test Automation Service
      */
-    public Configuration() {
-        super(); // Start as anonymous thread
+    public Configuration(ActorRuntime runtime) {
+        super("Configuration", runtime);
     }
 
     /**
@@ -243,6 +297,55 @@ public class Configuration extends Thread {
         return dailyWorkloadHistorySliceDuration;
     }
 
+    /**
+     * Return true if waiting tests should be scheduled by fair shares of their remote clients,
+     * or false if they should be scheduled in the order they were issued.
+     *
+     * @return True if fair share scheduling is switched on, or false otherwise
+     */
+    public boolean isFairShareScheduling() {
+        return fairShareScheduling > 0L;
+    }
+
+    /**
+     * Returns the period of waiting which raises the effective priority of a test by one.
+     *
+     * @return Test aging period in milliseconds
+     */
+    public long getTestAgingPeriod() {
+        return testAgingPeriod;
+    }
+
+    /**
+     * Return true if products should be kept for the first waiting test requiring several products at once,
+     * letting only the tests predicted to finish before them to use those products meanwhile.
+     *
+     * @return True if backfill scheduling is switched on, or false otherwise
+     */
+    public boolean isBackfillScheduling() {
+        return backfillScheduling > 0L;
+    }
+
+    /**
+     * Return true if a test requiring several environments should get all of them at once or wait for them,
+     * or false if it could start with the environments which are available right now.
+     *
+     * @return True if gang reservation is switched on, or false otherwise
+     */
+    public boolean isGangReservation() {
+        return gangReservation > 0L;
+    }
+
+    /**
+     * Return true if products for waiting tests requiring different RM codes should be searched in parallel,
+     * before the tests are launched one by one.
+     *
+     * @return True if sharded allocation is switched on, or false otherwise
+     */
+    public boolean isShardedAllocation() {
+        return shardedAllocation > 0L;
+    }
+
     /**
      * Returns code of the current maintenance mode.
      *
@@ -268,10 +371,10 @@ public class Configuration extends Thread {
     }
 
     /**
-     * Configurator's main routine.
+     * Initializes configuration file at start of the configuration handler.
      */
     @Override
-    public void run() {
+    protected void started() {
         p("Started working");
 
         // Try to discover configuration file
@@ -327,6 +430,22 @@ public class Configuration extends Thread {
                                 + dailyWorkloadHistorySliceDuration + ")\n");
                         productConfiguration.append(DAILY_WORKLOAD_HISTORY_SLICE_DURATION + "=" + dailyWorkloadHistorySliceDuration + "\n\n");
 
+                        productConfiguration.append("# Scheduling waiting tests by fair shares of their remote clients (1) or in the order they were issued (0)\n");
+                        productConfiguration.append(FAIR_SHARE_SCHEDULING + "=" + fairShareScheduling + "\n\n");
+
+                        productConfiguration.append("# Period of waiting which raises the effective priority of a test by one, in milliseconds ("
+                                + Util.convert(testAgingPeriod) + " by default, or " + testAgingPeriod + ")\n");
+                        productConfiguration.append(TEST_AGING_PERIOD + "=" + testAgingPeriod + "\n\n");
+
+                        productConfiguration.append("# Keeping products for waiting multi-product tests and backfilling shorter tests before them (1) or not (0)\n");
+                        productConfiguration.append(BACKFILL_SCHEDULING + "=" + backfillScheduling + "\n\n");
+
+                        productConfiguration.append("# Reserving all environments required by a test at once (1) or starting tests with the environments available right now (0)\n");
+                        productConfiguration.append(GANG_RESERVATION + "=" + gangReservation + "\n\n");
+
+                        productConfiguration.append("# Searching products for the tests of different RM codes in parallel (1) or one test after another (0)\n");
+                        productConfiguration.append(SHARDED_ALLOCATION + "=" + shardedAllocation + "\n\n");
+
                         productConfiguration.append("# Enabling (1) and disabling (0) maintenance mode on this Test Automation Service\n");
                         productConfiguration.append(MAINTENANCE_MODE + "=" + maintenanceMode + "\n");
 
@@ -350,7 +469,18 @@ public class Configuration extends Thread {
             e.printStackTrace();
         }
 
-        while (isRunning) {
+        // No matter what will happen, check configuration file again after about five minutes
+        wakeUpEvery(Constant.FIVE_MINUTES + 23456L);
+    }
+
+    /**
+     * Checks configuration file.
+     *
+     * @return True if configuration handler should continue working or false otherwise
+     */
+    @Override
+    protected boolean act() {
+        if (isRunning) {
             BufferedReader reader = null;
 
             try {
@@ -414,6 +544,31 @@ public class Configuration extends Thread {
                             dailyWorkloadHistorySliceDuration = parse(line, dailyWorkloadHistorySliceDuration);
                             p("Daily workload history slice duration is " + Util.convert(dailyWorkloadHistorySliceDuration));
 
+                        } else if (line.startsWith(FAIR_SHARE_SCHEDULING)) {
+
+                            fairShareScheduling = parse(line, fairShareScheduling);
+                            p("Fair share scheduling is " + fairShareScheduling);
+
+                        } else if (line.startsWith(TEST_AGING_PERIOD)) {
+
+                            testAgingPeriod = parse(line, testAgingPeriod);
+                            p("Test aging period is " + Util.convert(testAgingPeriod));
+
+                        } else if (line.startsWith(BACKFILL_SCHEDULING)) {
+
+                            backfillScheduling = parse(line, backfillScheduling);
+                            p("Backfill scheduling is " + backfillScheduling);
+
+                        } else if (line.startsWith(GANG_RESERVATION)) {
+
+                            gangReservation = parse(line, gangReservation);
+                            p("Gang reservation is " + gangReservation);
+
+                        } else if (line.startsWith(SHARDED_ALLOCATION)) {
+
+                            shardedAllocation = parse(line, shardedAllocation);
+                            p("Sharded allocation is " + shardedAllocation);
+
                         } else if (line.startsWith(MAINTENANCE_MODE)) {
                             maintenanceMode = parse(line, maintenanceMode);
                             p("Maintenance mode is " + maintenanceMode);
@@ -439,15 +594,9 @@ public class Configuration extends Thread {
                     e.printStackTrace();
                 }
             }
-
-            // No matter what has happened, go to sleep for about five minutes
-            try {
-                sleep(Constant.FIVE_MINUTES + 23456L);
-            } catch (Exception e) {
-                p("Got interrupted during sleep time: " + e.getClass() + " - " + e.getMessage() + " - " + e.toString());
-                e.printStackTrace();
-            }
         }
+
+        return isRunning;
     }
 
     /**
@@ -489,7 +638,7 @@ public class Configuration extends Thread {
     protected synchronized void shutdown() {
         p("Got a request to shutdown. Stop working...");
         isRunning = false;
-        interrupt();
+        wakeUp();
     }
 
     /**
@@ -0,0 +1,239 @@
+package com.nokia.ci.tas.service;
+
+import java.util.logging.Logger;
+import java.util.logging.Level;
+
+import com.nokia.ci.tas.commons.Actor;
+import com.nokia.ci.tas.commons.ActorRuntime;
+import com.nokia.ci.tas.commons.Constant;
+import com.nokia.ci.tas.commons.PersistentConnection;
+import com.nokia.ci.tas.commons.Util;
+
+import com.nokia.ci.tas.commons.message.Message;
+
+/**
+ * Sends messages over a persistent connection on behalf of a test node or a remote client.
+ *
+ * Writer is run on the peer I/O runtime of the Test Automation Service, so an unreachable peer
+ * keeps only an I/O thread waiting and never a worker of the shared runtime.
+ * Failed messages are re-send after a while, and once a message has failed for the maximal number of retries
+ * or a connection check has failed, the writer ends its work and wakes its owner up.
+ */
+public class ConnectionWriter extends Actor<Message> {
+
+    /**
+     * Persistent connection used for sending all messages to the peer.
+     */
+    private PersistentConnection connection;
+
+    /**
+     * Actor which is woken up once the writer has failed.
+     */
+    private Actor<?> owner;
+
+    /**
+     * A message which couldn't be send to the peer and should be send again.
+     */
+    private volatile Message messageToBeResent = null;
+
+    /**
+     * Number of failed tries to send the current message.
+     */
+    private int numberOfSendingRetries = 0;
+
+    /**
+     * A moment of time when sending of a failed message should be retried.
+     */
+    private long timeOfNextSendingRetry = 0L;
+
+    /**
+     * A moment of time when the last message was successfully send.
+     */
+    private volatile long timeOfLastSuccessfulMessage;
+
+    /**
+     * True when a connection check was requested and not yet performed.
+     */
+    private volatile boolean isCheckRequested = false;
+
+    /**
+     * A message which should be send as a connection check, or null if connection should be checked without any message.
+     */
+    private volatile Message checkMessage = null;
+
+    /**
+     * True when the peer couldn't receive messages anymore.
+     */
+    private volatile boolean isFailed = false;
+
+    /**
+     * True when the owner has asked the writer to end its work.
+     */
+    private volatile boolean isClosed = false;
+
+    /**
+     * Instance of the Test Automation Service's global logger.
+     */
+    private Logger logger = Logger.getLogger(TestAutomationService.GLOBAL_LOGGER_NAME);
+
+    /**
+     * Constructor.
+     *
+     * @param owner Actor which is woken up once the writer has failed
+     * @param runtime Runtime performing peer I/O
+     * @param connection Persistent connection used for sending all messages to the peer
+     */
+    public ConnectionWriter(Actor<?> owner, ActorRuntime runtime, PersistentConnection connection) {
+        super("Writer_" + owner.getName(), runtime);
+
+        this.owner = owner;
+        this.connection = connection;
+
+        // Creation of a writer means that the peer is online
+        timeOfLastSuccessfulMessage = System.currentTimeMillis();
+    }
+
+    /**
+     * Asks the writer to check the connection once all waiting messages are send.
+     * A failed check is not retried.
+     *
+     * @param message A message which should be send as a connection check, or null to check connection without any message
+     */
+    public void check(Message message) {
+        checkMessage = message;
+        isCheckRequested = true;
+        wakeUp();
+    }
+
+    /**
+     * Tells whenever the writer has no waiting messages and no pending connection checks.
+     *
+     * @return True if the writer has nothing to do or false otherwise
+     */
+    public boolean isIdle() {
+        return getMailbox().isEmpty() && messageToBeResent == null && !isCheckRequested;
+    }
+
+    /**
+     * Tells whenever the peer couldn't receive messages anymore.
+     *
+     * @return True if the writer has failed or false otherwise
+     */
+    public boolean isFailed() {
+        return isFailed;
+    }
+
+    /**
+     * Returns a moment of time when the last message was successfully send.
+     *
+     * @return A moment of time when the last message was successfully send
+     */
+    public long getTimeOfLastSuccessfulMessage() {
+        return timeOfLastSuccessfulMessage;
+    }
+
+    /**
+     * Asks the writer to send messages which are already waiting and to close the connection.
+     * Returns at once, connection is closed on the I/O runtime.
+     */
+    public void close() {
+        isClosed = true;
+        wakeUp();
+    }
+
+    /**
+     * Sends all waiting messages to the peer and performs requested connection checks.
+     *
+     * @return True if writer should continue working or false otherwise
+     */
+    @Override
+    protected boolean act() {
+        // Send all waiting messages, unless the peer has troubles with receiving them
+        while (!isFailed && System.currentTimeMillis() >= timeOfNextSendingRetry) {
+            Message message = messageToBeResent;
+
+            if (message == null) {
+                message = nextMessage(); // Always get the first message
+            }
+
+            if (message == null) {
+                break;
+            }
+
+            messageToBeResent = null;
+
+            try {
+                // Send a message over the persistent connection
+                connection.send(message);
+
+                // Message was successfully send
+                timeOfLastSuccessfulMessage = System.currentTimeMillis();
+                numberOfSendingRetries = 0;
+
+            } catch (Exception e) {
+                p("Got a problem during sending a message: " + e.getClass() + " " + e.getMessage());
+
+                numberOfSendingRetries++;
+
+                if (numberOfSendingRetries >= Constant.NUMBER_OF_RETRIES) {
+                    // The peer has some serious network problems
+                    p("Has tried to send message for the maximal number of retries (" + Constant.NUMBER_OF_RETRIES + ")");
+                    isFailed = true;
+                } else {
+                    // Don't keep the I/O thread waiting, just try again after a while
+                    p("Will try to re-send message after " + Util.convert(Constant.THIRTY_SECONDS));
+                    messageToBeResent = message;
+                    timeOfNextSendingRetry = System.currentTimeMillis() + Constant.THIRTY_SECONDS;
+                    wakeUpAfter(Constant.THIRTY_SECONDS);
+                }
+            }
+        }
+
+        // Check the connection only when there is nothing else to send, since re-sending already checks it
+        if (!isFailed && isCheckRequested && messageToBeResent == null && getMailbox().isEmpty()) {
+            Message message = checkMessage;
+            checkMessage = null;
+
+            try {
+                if (message != null) {
+                    connection.send(message);
+                } else {
+                    connection.check();
+                }
+
+                // If we don't get any exceptions at this point, it means that the peer is still online
+                timeOfLastSuccessfulMessage = System.currentTimeMillis();
+
+            } catch (Exception e) {
+                p("Got a problem during connection check: " + e.getClass() + " " + e.getMessage());
+                isFailed = true;
+            }
+
+            isCheckRequested = false;
+        }
+
+        if (isFailed) {
+            owner.wakeUp();
+            return false;
+        }
+
+        return !isClosed;
+    }
+
+    /**
+     * Closes connection to the peer.
+     */
+    @Override
+    protected void ended() {
+        connection.close();
+    }
+
+    /**
+     * Print specified text on debugging output stream.
+     *
+     * @param text A text to be printed on debugging output stream
+     */
+    private void p(String text) {
+        logger.log(Level.ALL, "Writer to " + connection.getHostname() + ":" + connection.getPort() + ": " + text);
+    }
+}
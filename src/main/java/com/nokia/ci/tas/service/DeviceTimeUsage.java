@@ -0,0 +1,126 @@
+package com.nokia.ci.tas.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps track of how much device time each of remote clients has used.
+ *
+ * Device time is the number of devices used by a test multiplied by the time test has kept them, in milliseconds.
+ * Tests are charged with their expected device time when they are allocated, and the charge is corrected
+ * to the actual device time when they are finished. Besides the total device time, a recent device time is kept,
+ * in which older usages are fading out with the specified half-life.
+ */
+public class DeviceTimeUsage {
+
+    /**
+     * Device time used by a single remote client.
+     */
+    private static class Account {
+
+        /**
+         * Total device time in milliseconds.
+         */
+        private long totalDeviceTime = 0L;
+
+        /**
+         * Recent device time in milliseconds, as it was at the moment of the last update.
+         */
+        private double recentDeviceTime = 0.0;
+
+        /**
+         * Moment of time when the recent device time was updated.
+         */
+        private long updatedAt = 0L;
+    }
+
+    /**
+     * Half-life of the recent device time in milliseconds.
+     */
+    private long halfLife;
+
+    /**
+     * Accounts of remote clients by their hostnames and ports.
+     */
+    private Map<String, Account> accounts = new HashMap<String, Account>();
+
+    /**
+     * Constructor.
+     *
+     * @param halfLife Half-life of the recent device time in milliseconds
+     */
+    public DeviceTimeUsage(long halfLife) {
+        this.halfLife = Math.max(halfLife, 1L);
+    }
+
+    /**
+     * Charges specified remote client with some device time.
+     *
+     * @param client Hostname and port of the remote client
+     * @param deviceTime Device time in milliseconds, which may be negative for corrections of earlier charges
+     */
+    public synchronized void charge(String client, long deviceTime) {
+        long currentTime = System.currentTimeMillis();
+        Account account = accounts.get(client);
+
+        if (account == null) {
+            account = new Account();
+            account.updatedAt = currentTime;
+            accounts.put(client, account);
+        }
+
+        account.totalDeviceTime = Math.max(account.totalDeviceTime + deviceTime, 0L);
+        account.recentDeviceTime = Math.max(getRecentDeviceTime(account, currentTime) + deviceTime, 0.0);
+        account.updatedAt = currentTime;
+    }
+
+    /**
+     * Returns total device time used by specified remote client.
+     *
+     * @param client Hostname and port of the remote client
+     * @return Total device time in milliseconds
+     */
+    public synchronized long getTotalDeviceTime(String client) {
+        Account account = accounts.get(client);
+        return account != null ? account.totalDeviceTime : 0L;
+    }
+
+    /**
+     * Returns recent device time used by specified remote client at specified moment of time.
+     *
+     * @param client Hostname and port of the remote client
+     * @param currentTime Current moment of time
+     * @return Recent device time in milliseconds
+     */
+    public synchronized double getRecentDeviceTime(String client, long currentTime) {
+        Account account = accounts.get(client);
+        return account != null ? getRecentDeviceTime(account, currentTime) : 0.0;
+    }
+
+    /**
+     * Returns total device times used by all known remote clients.
+     *
+     * @return Total device times in milliseconds by hostnames and ports of remote clients
+     */
+    public synchronized Map<String, Long> getTotalDeviceTimes() {
+        Map<String, Long> totalDeviceTimes = new HashMap<String, Long>();
+
+        for (Map.Entry<String, Account> account : accounts.entrySet()) {
+            totalDeviceTimes.put(account.getKey(), account.getValue().totalDeviceTime);
+        }
+
+        return totalDeviceTimes;
+    }
+
+    /**
+     * Returns recent device time of specified account at specified moment of time.
+     *
+     * @param account Account of a remote client
+     * @param currentTime Current moment of time
+     * @return Recent device time in milliseconds
+     */
+    private double getRecentDeviceTime(Account account, long currentTime) {
+        long elapsedTime = Math.max(currentTime - account.updatedAt, 0L);
+        return account.recentDeviceTime * Math.pow(0.5, (double) elapsedTime / halfLife);
+    }
+}
@@ -0,0 +1,341 @@
+package com.nokia.ci.tas.service;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+/**
+ * Queue sharing testing resources fairly between remote clients.
+ *
+ * Each remote client has its own queue, ordered by priorities. Waiting elements are aging:
+ * each aging period of waiting raises the effective priority of an element by one, so low priority elements are never starved.
+ * Between the clients, the next element is taken from the client which has used the least of recent device time,
+ * reduced by the time its next element has been waiting, so even the heaviest users get their turns.
+ *
+ * Clients are kept in a heap during the iteration and re-ranked after each of their elements,
+ * so device time charged meanwhile is taken into account at once. Taking the next element costs
+ * a logarithm of the number of clients and waiting elements, no matter how long the queues are.
+ *
+ * @param <T> Type of the waiting elements
+ */
+public class FairShareQueue<T> implements Iterable<T> {
+
+    /**
+     * A single waiting element.
+     */
+    private static class Request<T> {
+
+        /**
+         * Waiting element.
+         */
+        private T element;
+
+        /**
+         * Hostname and port of the remote client which has issued the element.
+         */
+        private String client;
+
+        /**
+         * Rank of the element inside the client's queue, the higher the sooner.
+         */
+        private long rank;
+
+        /**
+         * Moment of time since which element is aging.
+         */
+        private long issuedAt;
+
+        /**
+         * Sequence number keeping the order of elements with equal ranks.
+         */
+        private long sequenceNumber;
+    }
+
+    /**
+     * Orders requests inside a client's queue: the highest rank first, then in the order they were issued.
+     */
+    private static final Comparator<Request<?>> REQUEST_ORDER = new Comparator<Request<?>>() {
+        @Override
+        public int compare(Request<?> first, Request<?> second) {
+            if (first.rank != second.rank) {
+                return first.rank > second.rank ? -1 : 1;
+            }
+
+            if (first.sequenceNumber != second.sequenceNumber) {
+                return first.sequenceNumber < second.sequenceNumber ? -1 : 1;
+            }
+
+            return 0;
+        }
+    };
+
+    /**
+     * Position of the iteration in a client's queue.
+     */
+    private static class Cursor<T> {
+
+        /**
+         * Queue of the client.
+         */
+        private TreeSet<Request<T>> queue;
+
+        /**
+         * Next request of the client.
+         */
+        private Request<T> next;
+
+        /**
+         * Current key of the client, the smaller the sooner.
+         */
+        private double key;
+    }
+
+    /**
+     * Orders clients during the iteration: the smallest key first.
+     */
+    private static final Comparator<Cursor<?>> CURSOR_ORDER = new Comparator<Cursor<?>>() {
+        @Override
+        public int compare(Cursor<?> first, Cursor<?> second) {
+            int result = Double.compare(first.key, second.key);
+
+            if (result == 0) {
+                result = REQUEST_ORDER.compare(first.next, second.next);
+            }
+
+            return result;
+        }
+    };
+
+    /**
+     * Device time used by remote clients.
+     */
+    private DeviceTimeUsage deviceTimeUsage;
+
+    /**
+     * Period of waiting which raises the effective priority of an element by one.
+     */
+    private long agingPeriod;
+
+    /**
+     * Queues of waiting elements by hostnames and ports of remote clients.
+     */
+    private Map<String, TreeSet<Request<T>>> queues = new HashMap<String, TreeSet<Request<T>>>();
+
+    /**
+     * Waiting elements and their requests.
+     */
+    private Map<T, Request<T>> requests = new HashMap<T, Request<T>>();
+
+    /**
+     * Sequence number of the next waiting element.
+     */
+    private long nextSequenceNumber = 0L;
+
+    /**
+     * Constructor.
+     *
+     * @param deviceTimeUsage Device time used by remote clients
+     * @param agingPeriod Period of waiting which raises the effective priority of an element by one
+     */
+    public FairShareQueue(DeviceTimeUsage deviceTimeUsage, long agingPeriod) {
+        this.deviceTimeUsage = deviceTimeUsage;
+        this.agingPeriod = Math.max(agingPeriod, 1L);
+    }
+
+    /**
+     * Returns the period of waiting which raises the effective priority of an element by one.
+     *
+     * @return Aging period in milliseconds
+     */
+    public long getAgingPeriod() {
+        return agingPeriod;
+    }
+
+    /**
+     * Adds an element to the queue of its remote client.
+     *
+     * @param element Waiting element
+     * @param client Hostname and port of the remote client which has issued the element
+     * @param priority Priority of the element among the elements of the same client, the higher the sooner
+     * @param issuedAt Moment of time since which element is aging
+     * @return True if element was added or false if it was already waiting
+     */
+    public synchronized boolean add(T element, String client, int priority, long issuedAt) {
+        if (requests.containsKey(element)) {
+            return false;
+        }
+
+        Request<T> request = new Request<T>();
+        request.element = element;
+        request.client = client;
+        request.issuedAt = issuedAt;
+        request.sequenceNumber = nextSequenceNumber++;
+
+        // Effective priority is the priority plus the number of aging periods spent in waiting,
+        // so ordering by the priority in aging periods minus the moment of issuing never changes in time
+        request.rank = (long) priority * agingPeriod - issuedAt;
+
+        TreeSet<Request<T>> queue = queues.get(client);
+
+        if (queue == null) {
+            queue = new TreeSet<Request<T>>(REQUEST_ORDER);
+            queues.put(client, queue);
+        }
+
+        queue.add(request);
+        requests.put(element, request);
+
+        return true;
+    }
+
+    /**
+     * Removes an element which is not waiting anymore.
+     *
+     * @param element Element to be removed
+     * @return True if element was removed or false if it wasn't waiting
+     */
+    public synchronized boolean remove(T element) {
+        Request<T> request = requests.remove(element);
+
+        if (request == null) {
+            return false;
+        }
+
+        TreeSet<Request<T>> queue = queues.get(request.client);
+        queue.remove(request);
+
+        if (queue.isEmpty()) {
+            queues.remove(request.client);
+        }
+
+        return true;
+    }
+
+    /**
+     * Tells whenever specified element is waiting.
+     *
+     * @param element Element
+     * @return True if element is waiting or false otherwise
+     */
+    public synchronized boolean contains(T element) {
+        return requests.containsKey(element);
+    }
+
+    /**
+     * Tells whenever there are no waiting elements.
+     *
+     * @return True if there are no waiting elements or false otherwise
+     */
+    public synchronized boolean isEmpty() {
+        return requests.isEmpty();
+    }
+
+    /**
+     * Returns the number of waiting elements.
+     *
+     * @return Number of waiting elements
+     */
+    public synchronized int size() {
+        return requests.size();
+    }
+
+    /**
+     * Returns waiting elements in the order of fair shares between remote clients and effective priorities inside their queues.
+     * Clients are re-ranked after each of their elements, so the device time charged meanwhile is taken into account.
+     *
+     * @return Iterator over the waiting elements
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private PriorityQueue<Cursor<T>> cursors = createCursors();
+            private Cursor<T> lastCursor = null;
+            private T lastElement = null;
+
+            @Override
+            public boolean hasNext() {
+                rerank();
+                return !cursors.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                rerank();
+
+                if (cursors.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+
+                lastCursor = cursors.poll();
+                lastElement = lastCursor.next.element;
+
+                return lastElement;
+            }
+
+            @Override
+            public void remove() {
+                if (lastElement == null) {
+                    throw new IllegalStateException();
+                }
+
+                FairShareQueue.this.remove(lastElement);
+                lastElement = null;
+            }
+
+            /**
+             * Puts the client of the last returned element back to the heap, if it has more waiting elements.
+             */
+            private void rerank() {
+                if (lastCursor != null) {
+                    synchronized (FairShareQueue.this) {
+                        lastCursor.next = lastCursor.queue.higher(lastCursor.next);
+
+                        if (lastCursor.next != null) {
+                            lastCursor.key = getKey(lastCursor.next, System.currentTimeMillis());
+                            cursors.add(lastCursor);
+                        }
+                    }
+
+                    lastCursor = null;
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates a heap of clients having waiting elements.
+     *
+     * @return Heap of clients ordered by their keys
+     */
+    private synchronized PriorityQueue<Cursor<T>> createCursors() {
+        PriorityQueue<Cursor<T>> cursors = new PriorityQueue<Cursor<T>>(Math.max(queues.size(), 1), CURSOR_ORDER);
+        long currentTime = System.currentTimeMillis();
+
+        for (TreeSet<Request<T>> queue : queues.values()) {
+            Cursor<T> cursor = new Cursor<T>();
+            cursor.queue = queue;
+            cursor.next = queue.first();
+            cursor.key = getKey(cursor.next, currentTime);
+            cursors.add(cursor);
+        }
+
+        return cursors;
+    }
+
+    /**
+     * Returns the key of a client whose next waiting element is specified.
+     * Key is the recent device time used by the client minus the time its next element has been waiting,
+     * as if waiting was paid with a single device.
+     *
+     * @param next Next waiting element of the client
+     * @param currentTime Current moment of time
+     * @return Key of the client, the smaller the sooner
+     */
+    private double getKey(Request<T> next, long currentTime) {
+        return deviceTimeUsage.getRecentDeviceTime(next.client, currentTime) - (currentTime - next.issuedAt);
+    }
+}
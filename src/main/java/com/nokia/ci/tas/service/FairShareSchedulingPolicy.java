@@ -0,0 +1,155 @@
+package com.nokia.ci.tas.service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.nokia.ci.tas.commons.Constant;
+
+/**
+ * Shares testing resources fairly between remote clients, so that a client issuing many tests at once
+ * can't keep the others waiting until all of its tests are allocated.
+ *
+ * Waiting tests are kept in a fair share queue, in which each remote client has its own queue ordered by test priorities
+ * and aging, and clients take turns by the recent device time they have used.
+ * Tests are aging since their handling has started.
+ */
+public class FairShareSchedulingPolicy implements TestSchedulingPolicy {
+
+    /**
+     * Default period of waiting which raises the effective priority of a test by one.
+     */
+    public static final long DEFAULT_AGING_PERIOD = 10L * Constant.ONE_MINUTE;
+
+    /**
+     * Waiting tests in the order of fair shares.
+     */
+    private FairShareQueue<TestMonitor> queue;
+
+    /**
+     * Constructor.
+     *
+     * @param deviceTimeUsage Device time used by remote clients
+     * @param agingPeriod Period of waiting which raises the effective priority of a test by one
+     */
+    public FairShareSchedulingPolicy(DeviceTimeUsage deviceTimeUsage, long agingPeriod) {
+        queue = new FairShareQueue<TestMonitor>(deviceTimeUsage, agingPeriod);
+    }
+
+    /**
+     * Returns the name of this policy.
+     *
+     * @return Name of the policy
+     */
+    @Override
+    public String getName() {
+        return FAIR_SHARE;
+    }
+
+    /**
+     * Returns the period of waiting which raises the effective priority of a test by one.
+     *
+     * @return Aging period in milliseconds
+     */
+    public long getAgingPeriod() {
+        return queue.getAgingPeriod();
+    }
+
+    /**
+     * Adds a monitor of the test waiting for testing resources to the queue of its remote client.
+     *
+     * @param testMonitor Monitor of the waiting test
+     * @return True if monitor was added or false if it was already waiting
+     */
+    @Override
+    public boolean add(TestMonitor testMonitor) {
+        // Tests are aging since their handling has started, so aging survives switching between policies
+        long issuedAt = testMonitor.getTestHandlingStartTime();
+
+        if (issuedAt <= 0L) {
+            issuedAt = System.currentTimeMillis();
+        }
+
+        return queue.add(testMonitor, getClient(testMonitor), testMonitor.getTest().getPriority(), issuedAt);
+    }
+
+    /**
+     * Removes a monitor of the test which is not waiting for testing resources anymore.
+     *
+     * @param testMonitor Monitor of the test
+     * @return True if monitor was removed or false if it wasn't waiting
+     */
+    @Override
+    public boolean remove(TestMonitor testMonitor) {
+        return queue.remove(testMonitor);
+    }
+
+    /**
+     * Tells whenever specified test monitor is waiting for testing resources.
+     *
+     * @param testMonitor Monitor of the test
+     * @return True if monitor is waiting or false otherwise
+     */
+    @Override
+    public boolean contains(TestMonitor testMonitor) {
+        return queue.contains(testMonitor);
+    }
+
+    /**
+     * Tells whenever there are no waiting tests.
+     *
+     * @return True if there are no waiting tests or false otherwise
+     */
+    @Override
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    /**
+     * Returns the number of waiting tests.
+     *
+     * @return Number of waiting tests
+     */
+    @Override
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * Returns waiting tests in the order of fair shares between remote clients and effective priorities inside their queues.
+     * Clients are re-ranked after each of their tests, so the device time charged meanwhile is taken into account.
+     *
+     * @return Iterator over the monitors of waiting tests
+     */
+    @Override
+    public Iterator<TestMonitor> iterator() {
+        return queue.iterator();
+    }
+
+    /**
+     * Returns a snapshot of waiting tests in the order they would get testing resources right now.
+     *
+     * @return Monitors of waiting tests, the first one having the first position in queue
+     */
+    @Override
+    public List<TestMonitor> getQueue() {
+        List<TestMonitor> snapshot = new ArrayList<TestMonitor>();
+
+        for (TestMonitor testMonitor : this) {
+            snapshot.add(testMonitor);
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Returns hostname and port of the remote client which has issued the test.
+     *
+     * @param testMonitor Monitor of the test
+     * @return Hostname and port of the remote client
+     */
+    static String getClient(TestMonitor testMonitor) {
+        RemoteClient remoteClient = testMonitor.getRemoteClient();
+        return remoteClient != null ? remoteClient.getClientHostnameAndPort() : "";
+    }
+}
@@ -0,0 +1,105 @@
+package com.nokia.ci.tas.service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Allocates waiting tests in the order they were issued.
+ */
+public class FifoSchedulingPolicy implements TestSchedulingPolicy {
+
+    /**
+     * Monitors of waiting tests in the order they were issued.
+     */
+    private ConcurrentLinkedQueue<TestMonitor> testMonitors = new ConcurrentLinkedQueue<TestMonitor>();
+
+    /**
+     * Returns the name of this policy.
+     *
+     * @return Name of the policy
+     */
+    @Override
+    public String getName() {
+        return FIFO;
+    }
+
+    /**
+     * Adds a monitor of the test waiting for testing resources to the end of the queue.
+     *
+     * @param testMonitor Monitor of the waiting test
+     * @return True if monitor was added or false if it was already waiting
+     */
+    @Override
+    public synchronized boolean add(TestMonitor testMonitor) {
+        if (testMonitors.contains(testMonitor)) {
+            return false;
+        }
+
+        return testMonitors.add(testMonitor);
+    }
+
+    /**
+     * Removes a monitor of the test which is not waiting for testing resources anymore.
+     *
+     * @param testMonitor Monitor of the test
+     * @return True if monitor was removed or false if it wasn't waiting
+     */
+    @Override
+    public boolean remove(TestMonitor testMonitor) {
+        return testMonitors.remove(testMonitor);
+    }
+
+    /**
+     * Tells whenever specified test monitor is waiting for testing resources.
+     *
+     * @param testMonitor Monitor of the test
+     * @return True if monitor is waiting or false otherwise
+     */
+    @Override
+    public boolean contains(TestMonitor testMonitor) {
+        return testMonitors.contains(testMonitor);
+    }
+
+    /**
+     * Tells whenever there are no waiting tests.
+     *
+     * @return True if there are no waiting tests or false otherwise
+     */
+    @Override
+    public boolean isEmpty() {
+        return testMonitors.isEmpty();
+    }
+
+    /**
+     * Returns the number of waiting tests.
+     *
+     * @return Number of waiting tests
+     */
+    @Override
+    public int size() {
+        return testMonitors.size();
+    }
+
+    /**
+     * Returns waiting tests in the order they were issued.
+     *
+     * @return Iterator over the monitors of waiting tests
+     */
+    @Override
+    public Iterator<TestMonitor> iterator() {
+        return testMonitors.iterator();
+    }
+
+    /**
+     * Returns a snapshot of waiting tests in the order they were issued.
+     *
+     * @return Monitors of waiting tests, the first one having the first position in queue
+     */
+    @Override
+    public List<TestMonitor> getQueue() {
+        return new ArrayList<TestMonitor>(testMonitors);
+    }
+}
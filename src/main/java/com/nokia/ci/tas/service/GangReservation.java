@@ -0,0 +1,133 @@
+package com.nokia.ci.tas.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.nokia.ci.tas.commons.Product;
+import com.nokia.ci.tas.commons.Test;
+
+/**
+ * Reservation of product sets for all splitted tests of a single test, which succeeds for all of them or for none.
+ *
+ * Product sets are reserved silently one after another. If any of them couldn't be reserved,
+ * the already reserved ones are taken back without any notifications, so the test nodes hear nothing about them.
+ * Only once all product sets are reserved, the reservation is committed by announcing the reserved products
+ * and counting the splitted tests as running.
+ */
+public class GangReservation {
+
+    /**
+     * Parts owning the product sets.
+     */
+    private List<ProductReserver> reservers;
+
+    /**
+     * Splitted tests which should get the product sets.
+     */
+    private List<Test> tests;
+
+    /**
+     * Product sets selected for the splitted tests.
+     */
+    private List<List<Product>> selectedProductSets;
+
+    /**
+     * Product sets reserved so far.
+     */
+    private List<List<Product>> reservedProductSets;
+
+    /**
+     * Index of the splitted test which couldn't get its product set or -1 if there were no failures.
+     */
+    private int indexOfFailure = -1;
+
+    /**
+     * Default constructor.
+     */
+    public GangReservation() {
+        reservers = new ArrayList<ProductReserver>(0);
+        tests = new ArrayList<Test>(0);
+        selectedProductSets = new ArrayList<List<Product>>(0);
+        reservedProductSets = new ArrayList<List<Product>>(0);
+    }
+
+    /**
+     * Adds a product set to be reserved for specified splitted test.
+     *
+     * @param reserver Part owning the product set
+     * @param test Splitted test which should get the product set
+     * @param selectedProducts Products selected for the splitted test
+     */
+    public void add(ProductReserver reserver, Test test, List<Product> selectedProducts) {
+        reservers.add(reserver);
+        tests.add(test);
+        selectedProductSets.add(selectedProducts);
+    }
+
+    /**
+     * Reserves all product sets without notifications. In case of any failure already reserved product sets are taken back.
+     *
+     * @param reservationTimeout Duration of products reservation in milliseconds
+     * @return True if all product sets were reserved or false if none of them is reserved
+     */
+    public boolean reserve(long reservationTimeout) {
+        for (int i = 0; i < tests.size(); i++) {
+            List<Product> selectedProducts = selectedProductSets.get(i);
+            List<Product> reservedProducts = reservers.get(i).reserveProducts(tests.get(i), selectedProducts, reservationTimeout, false);
+
+            if (reservedProducts == null || reservedProducts.isEmpty() || reservedProducts.size() != selectedProducts.size()) {
+                if (reservedProducts != null && !reservedProducts.isEmpty()) {
+                    reservers.get(i).cancelReservations(reservedProducts);
+                }
+
+                indexOfFailure = i;
+                rollback();
+                return false;
+            }
+
+            reservedProductSets.add(reservedProducts);
+        }
+
+        return true;
+    }
+
+    /**
+     * Takes back all product sets reserved so far.
+     */
+    private void rollback() {
+        for (int i = 0; i < reservedProductSets.size(); i++) {
+            reservers.get(i).cancelReservations(reservedProductSets.get(i));
+        }
+
+        reservedProductSets.clear();
+    }
+
+    /**
+     * Announces all reserved products and counts all splitted tests as running.
+     */
+    public void commit() {
+        for (int i = 0; i < reservedProductSets.size(); i++) {
+            reservers.get(i).notifyAboutReservedProducts(reservedProductSets.get(i));
+            reservers.get(i).increaseNumberOfRunningTests(tests.get(i));
+        }
+    }
+
+    /**
+     * Returns index of the splitted test which couldn't get its product set.
+     *
+     * @return Index of the splitted test in the order of addition or -1 if there were no failures
+     */
+    public int getIndexOfFailure() {
+        return indexOfFailure;
+    }
+
+    /**
+     * Returns products reserved for the splitted test with specified index.
+     *
+     * @param index Index of the splitted test in the order of addition
+     * @return Products reserved for the splitted test
+     */
+    public List<Product> getReservedProducts(int index) {
+        return reservedProductSets.get(index);
+    }
+}
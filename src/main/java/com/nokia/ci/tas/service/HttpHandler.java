@@ -5,11 +5,10 @@ import java.io.PrintWriter;
 
 import java.net.Socket;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
-
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
+import com.nokia.ci.tas.commons.Actor;
 import com.nokia.ci.tas.commons.Constant;
 import com.nokia.ci.tas.commons.Product;
 import com.nokia.ci.tas.commons.TestNodeDescription;
@@ -17,7 +16,7 @@ import com.nokia.ci.tas.commons.TestNodeDescription;
 /**
  * Handles and dispatches all the HTTP messages received by the instance of Testing Automation Service.
  */
-public class HttpHandler extends Thread {
+public class HttpHandler extends Actor<HttpRequest> {
 
     /**
      * Token for the test node's hostname.
@@ -59,11 +58,6 @@ public class HttpHandler extends Thread {
      */
     public static final String ACTION_TURN_MAINTENANCE_MODE_OFF = "turn-maintenance-mode-off";
 
-    /**
-     * A pool of requests issued to this HTTP handler.
-     */
-    private ConcurrentLinkedQueue<HttpRequest> requests;
-
     /**
      * Variable which keeps handler running.
      */
@@ -106,12 +100,10 @@ public class HttpHandler extends Thread {
      */
     public HttpHandler(TestAutomationService testAutomationService) {
 
-        super(); // Start as anonymous thread
+        super("HTTP Handler", testAutomationService.getRuntime());
 
         this.testAutomationService = testAutomationService;
 
-        requests = new ConcurrentLinkedQueue();
-
         try {
             status = testAutomationService.getCurrentStatus();
             productDescriptions = testAutomationService.getProductDescriptions();
@@ -121,266 +113,277 @@ public class HttpHandler extends Thread {
         }
 
         lastTimeStatusChecked = System.currentTimeMillis();
-
-        setPriority(Thread.MAX_PRIORITY);
     }
 
     /**
-     * Receiver's main routine.
+     * Starts periodic updates of the main status.
      */
     @Override
-    public void run() {
+    protected void started() {
         p("Started working");
+        wakeUpEvery(Constant.ONE_SECOND);
+    }
 
-        while (isRunning) {
-            try {
-                if (!requests.isEmpty()) {
-                    HttpRequest httpRequest = requests.poll();
-                    
-                    Socket connection = null;
-                    String request = null;
-
-                    if (httpRequest != null) {
-                        connection = httpRequest.getConnection();
-                        request = httpRequest.getRequest();
-                    }
-                    
-                    OutputStream outputStream = null;
+    /**
+     * Handles all waiting HTTP requests and updates the main status.
+     *
+     * @return True if handler should continue working or false otherwise
+     */
+    @Override
+    protected boolean act() {
+        if (!isRunning) {
+            return false;
+        }
 
-                    if (connection != null) {
-                        String response = "";
-
-                        if (request != null) {
-                            p("Handling request " + request + " from " + connection.getInetAddress().getHostName() + ":" + connection.getPort());
-
-                            if (request.contains(ACTION_TOKEN)) {
-                                try {
-                                    // So far all actions are enabled only on test nodes
-                                    String action = request.substring(request.indexOf(Constant.NAME_VALUE_SEPARATOR) + 1, request.indexOf(Constant.NAME_VALUE_PAIR_SEPARATOR));
-                                    request = request.substring(request.indexOf(action) + action.length() + 1);
-
-                                    String hostname = request.substring(request.indexOf(Constant.NAME_VALUE_SEPARATOR) + 1, request.indexOf(Constant.NAME_VALUE_PAIR_SEPARATOR));
-                                    request = request.substring(request.indexOf(hostname) + hostname.length() + 1);
-
-                                    String portNumber = request.substring(request.indexOf(Constant.NAME_VALUE_SEPARATOR) + 1, request.indexOf(Constant.NAME_VALUE_PAIR_SEPARATOR));
-                                    int port = Integer.parseInt(portNumber);
-
-                                    // Get test node mentioned in the action
-                                    TestNode testNode = testAutomationService.getTestNode(hostname, port);
-
-                                    if (testNode != null) {
-                                        // Perform an action
-                                        if (action.equalsIgnoreCase(ACTION_TURN_MAINTENANCE_MODE_ON)) {
-                                            // Turn on the maintenance mode
-                                            testNode.setMaintenanceMode(true);
-                                            p("Got a request to turn maintenance mode ON for the test node " + hostname + ":" + portNumber);
-                                        } else if (action.equalsIgnoreCase(ACTION_TURN_MAINTENANCE_MODE_OFF)) {
-                                            // Turn off the maintenance mode
-                                            testNode.setMaintenanceMode(false);
-                                            p("Got a request to turn maintenance mode OFF for the test node " + hostname + ":" + portNumber);
-                                        } else {
-                                            // Do nothing
-                                            p("Got a request for unsupported action " + action + " on test node " + hostname + ":" + portNumber);
-                                        }
-
-                                        // Return user to test node's page
-                                        response = testNode.getDetailedStatus().toString();
-
-                                    } else {
-                                        // Return user to the main page
-                                        response = status;
-                                    }
-                                } catch (Exception e) {
-                                    p("Got troubles during processing incoming connection from " + connection.getInetAddress() + ": " + e.getClass() + " - " + e.getMessage());
-                                    e.printStackTrace();
+        HttpRequest httpRequest = null;
+
+        while ((httpRequest = nextMessage()) != null) {
+            
+            Socket connection = null;
+            String request = null;
+
+            if (httpRequest != null) {
+                connection = httpRequest.getConnection();
+                request = httpRequest.getRequest();
+            }
+            
+            OutputStream outputStream = null;
+
+            if (connection != null) {
+                String response = "";
+
+                if (request != null) {
+                    p("Handling request " + request + " from " + connection.getInetAddress().getHostName() + ":" + connection.getPort());
+
+                    if (request.contains(ACTION_TOKEN)) {
+                        try {
+                            // So far all actions are enabled only on test nodes
+                            String action = request.substring(request.indexOf(Constant.NAME_VALUE_SEPARATOR) + 1, request.indexOf(Constant.NAME_VALUE_PAIR_SEPARATOR));
+                            request = request.substring(request.indexOf(action) + action.length() + 1);
+
+                            String hostname = request.substring(request.indexOf(Constant.NAME_VALUE_SEPARATOR) + 1, request.indexOf(Constant.NAME_VALUE_PAIR_SEPARATOR));
+                            request = request.substring(request.indexOf(hostname) + hostname.length() + 1);
+
+                            String portNumber = request.substring(request.indexOf(Constant.NAME_VALUE_SEPARATOR) + 1, request.indexOf(Constant.NAME_VALUE_PAIR_SEPARATOR));
+                            int port = Integer.parseInt(portNumber);
+
+                            // Get test node mentioned in the action
+                            TestNode testNode = testAutomationService.getTestNode(hostname, port);
+
+                            if (testNode != null) {
+                                // Perform an action
+                                if (action.equalsIgnoreCase(ACTION_TURN_MAINTENANCE_MODE_ON)) {
+                                    // Turn on the maintenance mode
+                                    testNode.setMaintenanceMode(true);
+                                    p("Got a request to turn maintenance mode ON for the test node " + hostname + ":" + portNumber);
+                                } else if (action.equalsIgnoreCase(ACTION_TURN_MAINTENANCE_MODE_OFF)) {
+                                    // Turn off the maintenance mode
+                                    testNode.setMaintenanceMode(false);
+                                    p("Got a request to turn maintenance mode OFF for the test node " + hostname + ":" + portNumber);
+                                } else {
+                                    // Do nothing
+                                    p("Got a request for unsupported action " + action + " on test node " + hostname + ":" + portNumber);
                                 }
-                            } else if (request.contains(PRODUCT_IMEI_TOKEN)) {
-                                try {
-                                    String hostname = request.substring(request.indexOf(Constant.NAME_VALUE_SEPARATOR) + 1, request.indexOf(Constant.NAME_VALUE_PAIR_SEPARATOR));
-                                    request = request.substring(request.indexOf(hostname) + hostname.length() + 1);
 
-                                    String portNumber = request.substring(request.indexOf(Constant.NAME_VALUE_SEPARATOR) + 1, request.indexOf(Constant.NAME_VALUE_PAIR_SEPARATOR));
-                                    int port = Integer.parseInt(portNumber);
-                                    request = request.substring(request.indexOf(portNumber) + portNumber.length() + 1);
+                                // Return user to test node's page
+                                response = testNode.getDetailedStatus().toString();
 
-                                    String productIMEI = request.substring(request.indexOf(Constant.NAME_VALUE_SEPARATOR) + 1, request.indexOf(Constant.NAME_VALUE_PAIR_SEPARATOR));
+                            } else {
+                                // Return user to the main page
+                                response = status;
+                            }
+                        } catch (Exception e) {
+                            p("Got troubles during processing incoming connection from " + connection.getInetAddress() + ": " + e.getClass() + " - " + e.getMessage());
+                            e.printStackTrace();
+                        }
+                    } else if (request.contains(PRODUCT_IMEI_TOKEN)) {
+                        try {
+                            String hostname = request.substring(request.indexOf(Constant.NAME_VALUE_SEPARATOR) + 1, request.indexOf(Constant.NAME_VALUE_PAIR_SEPARATOR));
+                            request = request.substring(request.indexOf(hostname) + hostname.length() + 1);
 
-                                    TestNode testNode = testAutomationService.getTestNode(hostname, port);
+                            String portNumber = request.substring(request.indexOf(Constant.NAME_VALUE_SEPARATOR) + 1, request.indexOf(Constant.NAME_VALUE_PAIR_SEPARATOR));
+                            int port = Integer.parseInt(portNumber);
+                            request = request.substring(request.indexOf(portNumber) + portNumber.length() + 1);
 
-                                    if (testNode != null) {
+                            String productIMEI = request.substring(request.indexOf(Constant.NAME_VALUE_SEPARATOR) + 1, request.indexOf(Constant.NAME_VALUE_PAIR_SEPARATOR));
 
-                                        if (productIMEI != null && !productIMEI.isEmpty()) {
-                                            response = testNode.getDetailedProductStatus(productIMEI).toString();
-                                        } else {
-                                            response = testNode.getDetailedStatus().toString();
-                                        }
+                            TestNode testNode = testAutomationService.getTestNode(hostname, port);
 
-                                    } else {
-                                        response = status;
-                                    }
-                                } catch (Exception e) {
-                                    p("Got troubles during processing incoming connection from " + connection.getInetAddress() + ": " + e.getClass() + " - " + e.getMessage());
-                                    e.printStackTrace();
-                                }
-                            } else if (request.contains(TEST_NODE_HOSTNAME_TOKEN)) {
-                                try {
-                                    String hostname = request.substring(request.indexOf(Constant.NAME_VALUE_SEPARATOR) + 1, request.indexOf(Constant.NAME_VALUE_PAIR_SEPARATOR));
-                                    request = request.substring(request.indexOf(hostname) + hostname.length() + 1);
-
-                                    String portNumber = request.substring(request.indexOf(Constant.NAME_VALUE_SEPARATOR) + 1, request.indexOf(Constant.NAME_VALUE_PAIR_SEPARATOR));
-                                    int port = Integer.parseInt(portNumber);
-
-                                    TestNode testNode = testAutomationService.getTestNode(hostname, port);
-
-                                    if (testNode != null) {
-                                        response = testNode.getDetailedStatus().toString();
-                                    } else {
-                                        response = status;
-                                    }
-                                } catch (Exception e) {
-                                    p("Got troubles during processing incoming connection from " + connection.getInetAddress() + ": " + e.getClass() + " - " + e.getMessage() + " " + e.getStackTrace());
-                                    e.printStackTrace();
-                                }
-                            } else if (request.contains(DATE_STATISTICS_TOKEN)) {
-                                try {
-                                    String parsedDate = request.substring(request.indexOf(Constant.NAME_VALUE_SEPARATOR) + 1, request.indexOf(Constant.NAME_VALUE_PAIR_SEPARATOR));
-
-                                    if (parsedDate != null) {
-                                        response = testAutomationService.getDateStatus(parsedDate).toString();
-                                    } else {
-                                        response = status;
-                                    }
-                                } catch (Exception e) {
-                                    p("Got troubles during processing incoming connection from " + connection.getInetAddress() + ": " + e.getClass() + " - " + e.getMessage());
-                                    e.printStackTrace();
-                                }
-                            } else if (request.contains(PRODUCTS_TOKEN)) {
-                                try {
-                                    response = productDescriptions;
-                                } catch (Exception e) {
-                                    p("Got troubles during processing incoming connection from " + connection.getInetAddress() + ": " + e.getClass() + " - " + e.getMessage());
-                                    e.printStackTrace();
+                            if (testNode != null) {
+
+                                if (productIMEI != null && !productIMEI.isEmpty()) {
+                                    response = testNode.getDetailedProductStatus(productIMEI).toString();
+                                } else {
+                                    response = testNode.getDetailedStatus().toString();
                                 }
+
                             } else {
                                 response = status;
                             }
-                        } else {
-                            p("Handling invalid request " + request + " from " + connection.getInetAddress());
-                            // Simply put a default status
-                            response = status;
+                        } catch (Exception e) {
+                            p("Got troubles during processing incoming connection from " + connection.getInetAddress() + ": " + e.getClass() + " - " + e.getMessage());
+                            e.printStackTrace();
                         }
-
-                        // Send response back and close connection
+                    } else if (request.contains(TEST_NODE_HOSTNAME_TOKEN)) {
                         try {
-                            outputStream = connection.getOutputStream();
-                            PrintWriter output = new PrintWriter(outputStream);
+                            String hostname = request.substring(request.indexOf(Constant.NAME_VALUE_SEPARATOR) + 1, request.indexOf(Constant.NAME_VALUE_PAIR_SEPARATOR));
+                            request = request.substring(request.indexOf(hostname) + hostname.length() + 1);
 
-                            output.print("HTTP/1.1 200 OK" + CRLF);
-                            output.print("Content-Type: text/html; charset=UTF-8" + CRLF);
-                            output.print("Content-Length: " + response.getBytes("UTF-8").length + CRLF);
-                            output.print(CRLF);
-                            output.print(response + CRLF + CRLF);
-                            output.flush();
+                            String portNumber = request.substring(request.indexOf(Constant.NAME_VALUE_SEPARATOR) + 1, request.indexOf(Constant.NAME_VALUE_PAIR_SEPARATOR));
+                            int port = Integer.parseInt(portNumber);
 
-                            // Don't close connections, input or output streams here immediately, since HTTP 1.1 is using pervasive connections
-                            sleep(Constant.DECISECOND);
+                            TestNode testNode = testAutomationService.getTestNode(hostname, port);
 
+                            if (testNode != null) {
+                                response = testNode.getDetailedStatus().toString();
+                            } else {
+                                response = status;
+                            }
                         } catch (Exception e) {
-                            p("Got troubles during processing incoming connection from " + connection.getInetAddress().getHostName() + ":" + connection.getPort()
-                                + " (" + connection.getInetAddress().getHostAddress() + ":" + connection.getPort() + ") - "
-                                + e.getClass() + " - " + e.getMessage());
+                            p("Got troubles during processing incoming connection from " + connection.getInetAddress() + ": " + e.getClass() + " - " + e.getMessage() + " " + e.getStackTrace());
                             e.printStackTrace();
-                        } finally {
-                            // Always ensure that output stream is closed
-                            if (outputStream != null) {
-                                try {
-                                    outputStream.close();
-                                } catch (Exception e) {
-                                    p("Got troubles while tried to close output stream from "
-                                        + connection.getInetAddress().getHostName() + ":" + connection.getPort()
-                                        + " - " + e.getClass() + " " + e.getMessage());
-                                    e.printStackTrace();
-                                }
-                            }
+                        }
+                    } else if (request.contains(DATE_STATISTICS_TOKEN)) {
+                        try {
+                            String parsedDate = request.substring(request.indexOf(Constant.NAME_VALUE_SEPARATOR) + 1, request.indexOf(Constant.NAME_VALUE_PAIR_SEPARATOR));
 
-                            // Always ensure that connection is closed
-                            if (connection != null) {
-                                try {
-                                    connection.close();
-                                } catch (Exception e) {
-                                    p("Got troubles while tried to close a connection from "
-                                        + connection.getInetAddress().getHostName() + ":" + connection.getPort()
-                                        + " - " + e.getClass() + " - " + e.getMessage());
-                                    e.printStackTrace();
-                                }
+                            if (parsedDate != null) {
+                                response = testAutomationService.getDateStatus(parsedDate).toString();
+                            } else {
+                                response = status;
                             }
+                        } catch (Exception e) {
+                            p("Got troubles during processing incoming connection from " + connection.getInetAddress() + ": " + e.getClass() + " - " + e.getMessage());
+                            e.printStackTrace();
+                        }
+                    } else if (request.contains(PRODUCTS_TOKEN)) {
+                        try {
+                            response = productDescriptions;
+                        } catch (Exception e) {
+                            p("Got troubles during processing incoming connection from " + connection.getInetAddress() + ": " + e.getClass() + " - " + e.getMessage());
+                            e.printStackTrace();
                         }
+                    } else {
+                        response = status;
                     }
+                } else {
+                    p("Handling invalid request " + request + " from " + connection.getInetAddress());
+                    // Simply put a default status
+                    response = status;
+                }
 
-                    // Always perform cleanups, no matter what has happened before
-
+                // Send response back and close connection
+                try {
+                    outputStream = connection.getOutputStream();
+                    PrintWriter output = new PrintWriter(outputStream);
+
+                    output.print("HTTP/1.1 200 OK" + CRLF);
+                    output.print("Content-Type: text/html; charset=UTF-8" + CRLF);
+                    output.print("Content-Length: " + response.getBytes("UTF-8").length + CRLF);
+                    output.print(CRLF);
+                    output.print(response + CRLF + CRLF);
+                    output.flush();
+
+                    // Don't close connections, input or output streams here immediately, since HTTP 1.1 is using pervasive connections
+                    Thread.sleep(Constant.DECISECOND);
+
+                } catch (Exception e) {
+                    p("Got troubles during processing incoming connection from " + connection.getInetAddress().getHostName() + ":" + connection.getPort()
+                        + " (" + connection.getInetAddress().getHostAddress() + ":" + connection.getPort() + ") - "
+                        + e.getClass() + " - " + e.getMessage());
+                    e.printStackTrace();
+                } finally {
+                    // Always ensure that output stream is closed
                     if (outputStream != null) {
                         try {
                             outputStream.close();
                         } catch (Exception e) {
-                            p("Got troubles during closing output stream from connection " + connection.getInetAddress().getHostName() + ":" + connection.getPort()
-                                + " (" + connection.getInetAddress().getHostAddress() + ":" + connection.getPort() + ") - "
-                                + e.getClass() + " - " + e.getMessage());
+                            p("Got troubles while tried to close output stream from "
+                                + connection.getInetAddress().getHostName() + ":" + connection.getPort()
+                                + " - " + e.getClass() + " " + e.getMessage());
                             e.printStackTrace();
                         }
                     }
 
+                    // Always ensure that connection is closed
                     if (connection != null) {
                         try {
                             connection.close();
-                            p("Successfully closed connection from " + connection.getInetAddress().getHostName() + ":" + connection.getPort()
-                                + " (" + connection.getInetAddress().getHostAddress() + ":" + connection.getPort() + ")");
                         } catch (Exception e) {
-                            p("Got troubles during closing connection from " + connection.getInetAddress().getHostName() + ":" + connection.getPort()
-                                + " (" + connection.getInetAddress().getHostAddress() + ":" + connection.getPort() + ") - "
-                                + e.getClass() + " - " + e.getMessage());
+                            p("Got troubles while tried to close a connection from "
+                                + connection.getInetAddress().getHostName() + ":" + connection.getPort()
+                                + " - " + e.getClass() + " - " + e.getMessage());
                             e.printStackTrace();
                         }
                     }
                 }
+            }
 
-                // Update main status each 15 seconds
-                if ((System.currentTimeMillis() - lastTimeStatusChecked) > Constant.FIFTEEN_SECONDS) {
-                    try {
-                        status = testAutomationService.getCurrentStatus();
-                        productDescriptions = testAutomationService.getProductDescriptions();
-                    } catch (Exception e) {
-                        p("Got troubles during extracting current status of the Test Automation Service: " + e.getClass() + " - " + e.getMessage());
-                        e.printStackTrace();
-                    }
+            // Always perform cleanups, no matter what has happened before
 
-                    // Don't overload Test Automation Service in any case
-                    lastTimeStatusChecked = System.currentTimeMillis();
+            if (outputStream != null) {
+                try {
+                    outputStream.close();
+                } catch (Exception e) {
+                    p("Got troubles during closing output stream from connection " + connection.getInetAddress().getHostName() + ":" + connection.getPort()
+                        + " (" + connection.getInetAddress().getHostAddress() + ":" + connection.getPort() + ") - "
+                        + e.getClass() + " - " + e.getMessage());
+                    e.printStackTrace();
                 }
+            }
 
-                sleep(Constant.MILLISECOND); // Wait for any updates
+            if (connection != null) {
+                try {
+                    connection.close();
+                    p("Successfully closed connection from " + connection.getInetAddress().getHostName() + ":" + connection.getPort()
+                        + " (" + connection.getInetAddress().getHostAddress() + ":" + connection.getPort() + ")");
+                } catch (Exception e) {
+                    p("Got troubles during closing connection from " + connection.getInetAddress().getHostName() + ":" + connection.getPort()
+                        + " (" + connection.getInetAddress().getHostAddress() + ":" + connection.getPort() + ") - "
+                        + e.getClass() + " - " + e.getMessage());
+                    e.printStackTrace();
+                }
             }
-            catch (InterruptedException e) {
-                p("HTTP handler was interrupted, stop working");
-                p("Closing all available incoming connections");
+        }
 
-                for (HttpRequest request : requests) {
-                    Socket connection = request.getConnection();
+        // Update main status each 15 seconds
+        if ((System.currentTimeMillis() - lastTimeStatusChecked) > Constant.FIFTEEN_SECONDS) {
+            try {
+                status = testAutomationService.getCurrentStatus();
+                productDescriptions = testAutomationService.getProductDescriptions();
+            } catch (Exception e) {
+                p("Got troubles during extracting current status of the Test Automation Service: " + e.getClass() + " - " + e.getMessage());
+                e.printStackTrace();
+            }
 
-                    if (connection != null) {
-                        try {
-                            connection.close();
-                        } catch (Exception ioe) {
-                            // Ignore
-                        }
-                    }
-                }
+            // Don't overload Test Automation Service in any case
+            lastTimeStatusChecked = System.currentTimeMillis();
+        }
 
-                requests.clear();
+        return isRunning;
+    }
 
-                isRunning = false;
+    /**
+     * Closes all waiting incoming connections.
+     */
+    @Override
+    protected void ended() {
+        p("HTTP handler has stopped working");
+        p("Closing all available incoming connections");
+
+        for (HttpRequest request : getMailbox()) {
+            Socket connection = request.getConnection();
+
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (Exception ioe) {
+                    // Ignore
+                }
             }
         }
+
+        getMailbox().clear();
     }
 
     /**
@@ -389,9 +392,8 @@ public class HttpHandler extends Thread {
      * @param socket Connection to be processed
      * @param request HTTP request to be processed
      */
-    public synchronized void handle(Socket socket, String request) {
-        requests.add(new HttpRequest(socket, request));
-        notify();
+    public void handle(Socket socket, String request) {
+        tell(new HttpRequest(socket, request));
     }
 
     /**
@@ -463,6 +465,7 @@ public class HttpHandler extends Thread {
      */
     public synchronized void stopWorking() {
         isRunning = false;
+        wakeUp();
     }
 
     /**
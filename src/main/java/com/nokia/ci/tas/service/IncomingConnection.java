@@ -0,0 +1,318 @@
+package com.nokia.ci.tas.service;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+
+import java.nio.channels.SocketChannel;
+
+import java.util.Arrays;
+
+import com.nokia.ci.tas.commons.PersistentConnection;
+
+/**
+ * Representation of a connection accepted by the Test Automation Service,
+ * which data is still being collected by the receiver.
+ *
+ * Persistent connections stay with the receiver for their whole life:
+ * their frames are cut out of the collected data one after another,
+ * and the replies to the remote part are kept here until the channel is able to take them.
+ */
+public class IncomingConnection {
+
+    /**
+     * Kind of the connection, which is not yet known.
+     */
+    public static final int KIND_UNKNOWN = 0;
+
+    /**
+     * Kind of the connection carrying a single XML message.
+     */
+    public static final int KIND_XML = 1;
+
+    /**
+     * Kind of the connection carrying HTTP request.
+     */
+    public static final int KIND_HTTP = 2;
+
+    /**
+     * Kind of the connection carrying persistent connection frames.
+     */
+    public static final int KIND_PERSISTENT = 3;
+
+    /**
+     * Kind of the connection carrying a request which is not supported.
+     */
+    public static final int KIND_UNSUPPORTED = 4;
+
+    /**
+     * Initial size of the buffer collecting received data.
+     */
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+
+    /**
+     * Channel of the accepted connection.
+     */
+    private SocketChannel channel;
+
+    /**
+     * Buffer of the data received so far.
+     */
+    private byte[] data;
+
+    /**
+     * Number of received bytes in the buffer.
+     */
+    private int size = 0;
+
+    /**
+     * Data waiting to be written into the channel or null if there is nothing to write.
+     */
+    private ByteBuffer output = null;
+
+    /**
+     * The first line received over the connection or null if it is not yet received.
+     */
+    private String firstLine = null;
+
+    /**
+     * Kind of the connection, resolved from its first line.
+     */
+    private int kind = KIND_UNKNOWN;
+
+    /**
+     * Tells whenever the whole message was already received and handed over for decoding.
+     */
+    private boolean isDecoded = false;
+
+    /**
+     * A moment of time when connection has received any data for the last time.
+     */
+    private long timeOfLastActivity = 0L;
+
+    /**
+     * Default constructor.
+     *
+     * @param channel Channel of the accepted connection
+     */
+    public IncomingConnection(SocketChannel channel) {
+        this.channel = channel;
+        data = new byte[INITIAL_BUFFER_SIZE];
+        timeOfLastActivity = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns channel of the accepted connection.
+     *
+     * @return Channel of the accepted connection
+     */
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Appends specified bytes to the received data.
+     *
+     * @param bytes Received bytes
+     * @param offset Offset of the first received byte
+     * @param length Number of received bytes
+     */
+    public void append(byte[] bytes, int offset, int length) {
+        if (!isDecoded) {
+            if (size + length > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + length));
+            }
+
+            System.arraycopy(bytes, offset, data, size, length);
+            size += length;
+        }
+
+        timeOfLastActivity = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns all the data received so far.
+     *
+     * @return All the data received so far
+     */
+    public byte[] getData() {
+        return Arrays.copyOf(data, size);
+    }
+
+    /**
+     * Returns number of bytes received so far.
+     *
+     * @return Number of bytes received so far
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Resolves kind of the connection by its first line, once the whole line is received.
+     * The header line of a persistent connection is removed from the received data,
+     * so only the frames are left.
+     *
+     * @return True if kind of the connection is resolved or false if the first line is not yet received
+     * @throws IOException If the first line cannot be decoded
+     */
+    public boolean resolveKind() throws IOException {
+        int endOfLine = -1;
+
+        for (int i = 0; i < size; i++) {
+            if (data[i] == '\n') {
+                endOfLine = i;
+                break;
+            }
+        }
+
+        if (endOfLine == -1) {
+            return false; // The first line is not yet received
+        }
+
+        firstLine = new String(data, 0, endOfLine, "UTF-8");
+
+        if (firstLine.isEmpty() || firstLine.startsWith("<?")) {
+            // XML messages always start with the <?xml declaration
+            kind = KIND_XML;
+
+        } else if (firstLine.trim().equals(PersistentConnection.HEADER)) {
+            // Remote part wants to send all its messages over a persistent connection
+            kind = KIND_PERSISTENT;
+            discard(endOfLine + 1);
+
+        } else if (firstLine.contains("HTTP") || firstLine.contains("http")) {
+            // Otherwise we are interpreting them as plain HTTP messages
+            kind = KIND_HTTP;
+
+        } else {
+            kind = KIND_UNSUPPORTED;
+        }
+
+        return true;
+    }
+
+    /**
+     * Cuts the next complete frame of a persistent connection out of the received data.
+     *
+     * @return Data of the next frame, which is empty for a connection check, or null if no complete frame is received yet
+     * @throws IOException If remote part has send a frame of unsupported length
+     */
+    public byte[] nextFrame() throws IOException {
+        if (size < 4) {
+            return null;
+        }
+
+        int length = ((data[0] & 0xFF) << 24) | ((data[1] & 0xFF) << 16) | ((data[2] & 0xFF) << 8) | (data[3] & 0xFF);
+
+        if (length < 0 || length > PersistentConnection.MAXIMAL_FRAME_SIZE) {
+            throw new IOException("Frame of unsupported length " + length);
+        }
+
+        if (size < 4 + length) {
+            return null;
+        }
+
+        byte[] frame = Arrays.copyOfRange(data, 4, 4 + length);
+        discard(4 + length);
+
+        return frame;
+    }
+
+    /**
+     * Removes specified number of bytes from the beginning of the received data.
+     *
+     * @param numberOfBytes Number of bytes to be removed
+     */
+    private void discard(int numberOfBytes) {
+        size -= numberOfBytes;
+        System.arraycopy(data, numberOfBytes, data, 0, size);
+
+        // Release buffers grown by large frames
+        if (size <= INITIAL_BUFFER_SIZE && data.length > INITIAL_BUFFER_SIZE) {
+            data = Arrays.copyOf(data, INITIAL_BUFFER_SIZE);
+        }
+    }
+
+    /**
+     * Puts specified bytes to be written into the channel after all previously queued ones.
+     *
+     * @param bytes Bytes to be written
+     */
+    public void queueOutput(byte[] bytes) {
+        if (output == null) {
+            output = ByteBuffer.wrap(bytes);
+        } else {
+            ByteBuffer merged = ByteBuffer.allocate(output.remaining() + bytes.length);
+            merged.put(output);
+            merged.put(bytes);
+            merged.flip();
+            output = merged;
+        }
+    }
+
+    /**
+     * Writes as much of queued bytes into the channel as it is able to take without blocking.
+     *
+     * @return True if all queued bytes are written or false if some of them are still waiting
+     * @throws IOException If channel is not working anymore
+     */
+    public boolean writeOutput() throws IOException {
+        if (output != null) {
+            channel.write(output);
+
+            if (output.hasRemaining()) {
+                return false;
+            }
+
+            output = null;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the first line received over the connection.
+     *
+     * @return The first line received over the connection or null if it is not yet received
+     */
+    public String getFirstLine() {
+        return firstLine;
+    }
+
+    /**
+     * Returns kind of the connection.
+     *
+     * @return Kind of the connection
+     */
+    public int getKind() {
+        return kind;
+    }
+
+    /**
+     * Tells whenever the whole message was already handed over for decoding.
+     *
+     * @return True if the whole message was already handed over for decoding or false otherwise
+     */
+    public boolean isDecoded() {
+        return isDecoded;
+    }
+
+    /**
+     * Marks the message as handed over for decoding and releases all collected data.
+     */
+    public void setDecoded() {
+        isDecoded = true;
+        data = new byte[0];
+        size = 0;
+    }
+
+    /**
+     * Returns a moment of time when connection has received any data for the last time.
+     *
+     * @return A moment of time when connection has received any data for the last time
+     */
+    public long getTimeOfLastActivity() {
+        return timeOfLastActivity;
+    }
+}
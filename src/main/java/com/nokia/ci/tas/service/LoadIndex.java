@@ -0,0 +1,188 @@
+package com.nokia.ci.tas.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Keeps elements, like test nodes, ordered by their loads.
+ *
+ * Elements report their loads whenever they change, so ordering never has to ask the elements themselves
+ * and take their locks. Each change costs a logarithm of the number of elements. Readers get an immutable
+ * ordered snapshot, which is made again only after some load has changed, so reading an unchanged index takes no locks.
+ * Elements with equal loads keep the order in which they were added.
+ *
+ * @param <T> Type of the elements
+ */
+public class LoadIndex<T> {
+
+    /**
+     * Load of a single element.
+     */
+    private static class Entry<T> {
+
+        /**
+         * Element.
+         */
+        private T element;
+
+        /**
+         * Current load of the element.
+         */
+        private double load;
+
+        /**
+         * Sequence number keeping the order of elements with equal loads.
+         */
+        private long sequenceNumber;
+    }
+
+    /**
+     * Orders entries: the least loaded first, then in the order they were added.
+     */
+    private final Comparator<Entry<T>> entryOrder = new Comparator<Entry<T>>() {
+        @Override
+        public int compare(Entry<T> first, Entry<T> second) {
+            int result = Double.compare(first.load, second.load);
+
+            if (result == 0 && first.sequenceNumber != second.sequenceNumber) {
+                result = first.sequenceNumber < second.sequenceNumber ? -1 : 1;
+            }
+
+            return result;
+        }
+    };
+
+    /**
+     * Entries ordered by loads.
+     */
+    private TreeSet<Entry<T>> orderedEntries = new TreeSet<Entry<T>>(entryOrder);
+
+    /**
+     * Entries by their elements.
+     */
+    private Map<T, Entry<T>> entries = new HashMap<T, Entry<T>>();
+
+    /**
+     * Sequence number of the next added element.
+     */
+    private long nextSequenceNumber = 0L;
+
+    /**
+     * Ordered snapshot of elements or null if some load has changed since it was made.
+     */
+    private volatile List<T> snapshot = Collections.emptyList();
+
+    /**
+     * Adds an element with specified load, or updates the load of already added element.
+     *
+     * @param element Element
+     * @param load Current load of the element
+     */
+    public synchronized void add(T element, double load) {
+        if (!update(element, load)) {
+            Entry<T> entry = new Entry<T>();
+            entry.element = element;
+            entry.load = load;
+            entry.sequenceNumber = nextSequenceNumber++;
+
+            entries.put(element, entry);
+            orderedEntries.add(entry);
+            snapshot = null;
+        }
+    }
+
+    /**
+     * Updates the load of an element, if it was added.
+     *
+     * @param element Element
+     * @param load Current load of the element
+     * @return True if load was updated or false if element wasn't added or was already removed
+     */
+    public synchronized boolean update(T element, double load) {
+        Entry<T> entry = entries.get(element);
+
+        if (entry == null) {
+            return false;
+        }
+
+        if (Double.compare(entry.load, load) != 0) {
+            orderedEntries.remove(entry);
+            entry.load = load;
+            orderedEntries.add(entry);
+            snapshot = null;
+        }
+
+        return true;
+    }
+
+    /**
+     * Removes an element.
+     *
+     * @param element Element
+     * @return True if element was removed or false if it wasn't added
+     */
+    public synchronized boolean remove(T element) {
+        Entry<T> entry = entries.remove(element);
+
+        if (entry == null) {
+            return false;
+        }
+
+        orderedEntries.remove(entry);
+        snapshot = null;
+
+        return true;
+    }
+
+    /**
+     * Returns current load of an element.
+     *
+     * @param element Element
+     * @return Current load or -1.0 if element wasn't added
+     */
+    public synchronized double getLoad(T element) {
+        Entry<T> entry = entries.get(element);
+        return entry != null ? entry.load : -1.0;
+    }
+
+    /**
+     * Returns the number of elements.
+     *
+     * @return Number of elements
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns all elements ordered by their loads, the least loaded first.
+     *
+     * @return Immutable ordered snapshot of elements
+     */
+    public List<T> getElements() {
+        List<T> current = snapshot;
+
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    List<T> elements = new ArrayList<T>(orderedEntries.size());
+
+                    for (Entry<T> entry : orderedEntries) {
+                        elements.add(entry.element);
+                    }
+
+                    snapshot = Collections.unmodifiableList(elements);
+                }
+
+                current = snapshot;
+            }
+        }
+
+        return current;
+    }
+}
@@ -0,0 +1,106 @@
+package com.nokia.ci.tas.service;
+
+import java.io.ByteArrayInputStream;
+
+import java.util.logging.Logger;
+import java.util.logging.Level;
+
+import com.nokia.ci.tas.commons.Actor;
+import com.nokia.ci.tas.commons.ActorRuntime;
+import com.nokia.ci.tas.commons.Converter;
+
+/**
+ * Decodes XML or binary messages collected by the receiver and dispatches them to the Test Automation Service.
+ *
+ * Decoder is run on the shared runtime of the Test Automation Service only when it has messages,
+ * so idle decoders don't keep any threads. Each decoder has its own converter
+ * and handles its messages one after another, so a few decoders may work simultaneously.
+ */
+public class MessageDecoder extends Actor<byte[]> {
+
+    /**
+     * Receiver which has collected the messages.
+     */
+    private Receiver receiver;
+
+    /**
+     * Converter of XML messages owned by this decoder.
+     */
+    private Converter converter;
+
+    /**
+     * True when the receiver has asked the decoder to end its work.
+     */
+    private volatile boolean isStopped = false;
+
+    /**
+     * Instance of the Test Automation Service's global logger.
+     */
+    private Logger logger = Logger.getLogger(TestAutomationService.GLOBAL_LOGGER_NAME);
+
+    /**
+     * Default constructor.
+     *
+     * @param receiver Receiver which collects the messages
+     * @param runtime Runtime running the decoder
+     * @param number Number of this decoder
+     */
+    public MessageDecoder(Receiver receiver, ActorRuntime runtime, int number) {
+        super("MessageDecoder_" + number, runtime);
+
+        this.receiver = receiver;
+
+        converter = new Converter();
+    }
+
+    /**
+     * Decodes and dispatches all waiting messages.
+     *
+     * @return True if decoder should continue working or false otherwise
+     */
+    @Override
+    protected boolean act() {
+        byte[] data = nextMessage();
+
+        while (data != null && !isStopped) {
+            try {
+                if (data.length > 0) {
+                    receiver.dispatch(converter.handle(new ByteArrayInputStream(data)));
+                }
+            } catch (Exception e) {
+                p("Got troubles while tried to decode a message: " + e.getClass() + " - " + e.getMessage());
+                e.printStackTrace();
+            }
+
+            data = nextMessage();
+        }
+
+        return !isStopped;
+    }
+
+    /**
+     * Puts specified raw message to be decoded.
+     *
+     * @param data Raw XML or binary message
+     */
+    public void handle(byte[] data) {
+        tell(data);
+    }
+
+    /**
+     * Stops decoder running.
+     */
+    public void stopWorking() {
+        isStopped = true;
+        wakeUp();
+    }
+
+    /**
+     * Print specified text on debugging output stream.
+     *
+     * @param text A text to be printed on debugging output stream
+     */
+    private void p(String text) {
+        logger.log(Level.ALL, getName() + ": " + text);
+    }
+}
@@ -0,0 +1,138 @@
+package com.nokia.ci.tas.service;
+
+import java.util.List;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Version stamps of product reservations, keyed by IMEI codes of the products.
+ *
+ * Each product has a version which is increased on each reservation and release, so an even version means a free product
+ * and an odd version means a reserved one. Reserving and releasing are compare-and-set operations on the version,
+ * so concurrent reservations of the same product never block each other: exactly one of them wins and the others fail at once.
+ */
+public class ProductClaims {
+
+    /**
+     * Versions of products by their IMEI codes.
+     */
+    private ConcurrentHashMap<String, AtomicLong> versions = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * Returns the version of the product with specified IMEI code, creating a free one if product is not known yet.
+     *
+     * @param imei IMEI code of the product
+     * @return Version of the product
+     */
+    private AtomicLong getVersion(String imei) {
+        AtomicLong version = versions.get(imei);
+
+        if (version == null) {
+            AtomicLong newVersion = new AtomicLong(0L);
+            version = versions.putIfAbsent(imei, newVersion);
+
+            if (version == null) {
+                version = newVersion;
+            }
+        }
+
+        return version;
+    }
+
+    /**
+     * Tries to claim a free product.
+     *
+     * @param imei IMEI code of the product
+     * @return True if product was claimed or false if it is already claimed
+     */
+    public boolean claim(String imei) {
+        AtomicLong version = getVersion(imei);
+
+        while (true) {
+            long current = version.get();
+
+            if ((current & 1L) != 0L) {
+                return false;
+            }
+
+            if (version.compareAndSet(current, current + 1L)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Tries to claim all specified products at once.
+     * If any of products is already claimed, products claimed by this call are released.
+     *
+     * @param imeis IMEI codes of the products
+     * @return True if all products were claimed or false if none of them was
+     */
+    public boolean claimAll(List<String> imeis) {
+        for (int i = 0; i < imeis.size(); i++) {
+            if (!claim(imeis.get(i))) {
+                for (int j = 0; j < i; j++) {
+                    release(imeis.get(j));
+                }
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Releases a claimed product.
+     *
+     * @param imei IMEI code of the product
+     * @return True if product was released or false if it wasn't claimed
+     */
+    public boolean release(String imei) {
+        AtomicLong version = getVersion(imei);
+
+        while (true) {
+            long current = version.get();
+
+            if ((current & 1L) == 0L) {
+                return false;
+            }
+
+            if (version.compareAndSet(current, current + 1L)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Tells whenever specified product is claimed.
+     *
+     * @param imei IMEI code of the product
+     * @return True if product is claimed or false otherwise
+     */
+    public boolean isClaimed(String imei) {
+        AtomicLong version = versions.get(imei);
+        return version != null && (version.get() & 1L) != 0L;
+    }
+
+    /**
+     * Returns current version stamp of specified product.
+     *
+     * @param imei IMEI code of the product
+     * @return Version stamp, even for free and odd for claimed products
+     */
+    public long getStamp(String imei) {
+        AtomicLong version = versions.get(imei);
+        return version != null ? version.get() : 0L;
+    }
+
+    /**
+     * Forgets a product which is not available anymore.
+     *
+     * @param imei IMEI code of the product
+     */
+    public void remove(String imei) {
+        versions.remove(imei);
+    }
+}
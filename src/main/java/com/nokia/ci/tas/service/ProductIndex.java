@@ -0,0 +1,488 @@
+package com.nokia.ci.tas.service;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import java.util.regex.Pattern;
+
+import com.nokia.ci.tas.commons.Constant;
+import com.nokia.ci.tas.commons.Product;
+
+/**
+ * Inverted index of the products available on a test node, used for searching products matching required environments.
+ *
+ * Each product is split into its name-value pairs, and each pair refers to a bitset of the products having it.
+ * Required environments are normally expressed as regular expressions of the form "(.)*name:value;(.)*name:value;(.)*",
+ * which are compiled into a list of name-value pairs and matched by bitset intersections.
+ * Since such regular expression also matches a pair being the ending of a longer one (like "hostname:x;" in "tas-hostname:x;"),
+ * endings of the pairs starting with a parameter name are indexed as well. The order of the pairs is then checked
+ * for the remaining candidates only, so results are always the same as of matching the regular expressions.
+ * Regular expressions of any other form are simply matched against all the products.
+ */
+public class ProductIndex {
+
+    /**
+     * Names of all product parameters, as they are used in required environments.
+     */
+    private static final List<String> PARAMETER_NAMES = new Product().getParameterNames();
+
+    /**
+     * Requirement for a single product, compiled from a regular expression.
+     */
+    public static class Requirement {
+
+        /**
+         * Regular expression of the requirement.
+         */
+        private Pattern pattern;
+
+        /**
+         * Required name-value pairs in the order of their appearance,
+         * or null if regular expression couldn't be compiled into name-value pairs.
+         */
+        private String[] nameValuePairs;
+
+        /**
+         * Constructor.
+         *
+         * @param pattern Regular expression of the requirement
+         * @param nameValuePairs Required name-value pairs or null
+         */
+        private Requirement(Pattern pattern, String[] nameValuePairs) {
+            this.pattern = pattern;
+            this.nameValuePairs = nameValuePairs;
+        }
+
+        /**
+         * Compiles specified regular expression into a requirement.
+         *
+         * @param pattern Regular expression describing a required product
+         * @return Compiled requirement
+         */
+        public static Requirement compile(Pattern pattern) {
+            String expression = pattern.pattern();
+            String any = Constant.REGULAR_EXPRESSION_FOR_ANY_CHARACTER_SEQUENCE;
+
+            if (pattern.flags() != 0 || !expression.startsWith(any) || !expression.endsWith(any) || expression.length() < 2 * any.length()) {
+                return new Requirement(pattern, null);
+            }
+
+            List<String> nameValuePairs = new ArrayList<String>(0);
+            String[] parts = expression.substring(any.length(), expression.length() - any.length()).split(Pattern.quote(any), -1);
+
+            for (String part : parts) {
+                String nameValuePair = unescape(part);
+
+                // Each part must be a single name-value pair
+                if (nameValuePair == null
+                        || !nameValuePair.endsWith(Constant.NAME_VALUE_PAIR_SEPARATOR)
+                        || nameValuePair.indexOf(Constant.NAME_VALUE_PAIR_SEPARATOR) != nameValuePair.length() - 1) {
+                    return new Requirement(pattern, null);
+                }
+
+                nameValuePairs.add(nameValuePair);
+            }
+
+            return new Requirement(pattern, nameValuePairs.toArray(new String[nameValuePairs.size()]));
+        }
+
+        /**
+         * Returns the regular expression of the requirement.
+         *
+         * @return Regular expression of the requirement
+         */
+        public Pattern getPattern() {
+            return pattern;
+        }
+
+        /**
+         * Returns the value required for specified product parameter.
+         *
+         * @param parameterName Name of the product parameter, like "rm-code"
+         * @return Required value or null if parameter isn't required or requirement isn't compiled into name-value pairs
+         */
+        public String getValue(String parameterName) {
+            if (nameValuePairs != null) {
+                String name = parameterName + Constant.NAME_VALUE_SEPARATOR;
+
+                for (String nameValuePair : nameValuePairs) {
+                    if (nameValuePair.startsWith(name)) {
+                        return nameValuePair.substring(name.length(), nameValuePair.length() - Constant.NAME_VALUE_PAIR_SEPARATOR.length());
+                    }
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * Turns escaped regular expression into a plain text.
+         *
+         * @param text Escaped regular expression
+         * @return Plain text or null if regular expression isn't a plain text
+         */
+        private static String unescape(String text) {
+            StringBuilder plainText = new StringBuilder(text.length());
+
+            for (int i = 0; i < text.length(); i++) {
+                char character = text.charAt(i);
+
+                if (character == '\\') {
+                    // Only pluses and dots are escaped in the required environments
+                    if (i + 1 < text.length() && (text.charAt(i + 1) == '+' || text.charAt(i + 1) == '.')) {
+                        plainText.append(text.charAt(++i));
+                    } else {
+                        return null;
+                    }
+                } else if ("[](){}*?|^$+.".indexOf(character) != -1 || isLineTerminator(character)) {
+                    return null;
+                } else {
+                    plainText.append(character);
+                }
+            }
+
+            return plainText.toString();
+        }
+    }
+
+    /**
+     * Slots of the indexed products, stored by IMEI codes.
+     */
+    private HashMap<String, Integer> slots;
+
+    /**
+     * Indexed products stored by their slots.
+     */
+    private List<Product> products;
+
+    /**
+     * Name-value pairs of the indexed products stored by their slots.
+     */
+    private List<String[]> nameValuePairs;
+
+    /**
+     * Slots occupied by the products.
+     */
+    private BitSet occupiedSlots;
+
+    /**
+     * Slots of the products which must be matched by regular expressions only.
+     */
+    private BitSet irregularSlots;
+
+    /**
+     * Slots of the products stored by their name-value pairs.
+     */
+    private HashMap<String, BitSet> pairs;
+
+    /**
+     * Slots of the products stored by endings of their name-value pairs.
+     */
+    private HashMap<String, BitSet> pairEndings;
+
+    /**
+     * Constructor.
+     */
+    public ProductIndex() {
+        slots = new HashMap<String, Integer>(0);
+        products = new ArrayList<Product>(0);
+        nameValuePairs = new ArrayList<String[]>(0);
+        occupiedSlots = new BitSet();
+        irregularSlots = new BitSet();
+        pairs = new HashMap<String, BitSet>(0);
+        pairEndings = new HashMap<String, BitSet>(0);
+    }
+
+    /**
+     * Adds specified product to the index or updates already indexed one.
+     * Should be called each time the product changes.
+     *
+     * @param product Product to be indexed
+     */
+    public synchronized void update(Product product) {
+        String imei = product.getIMEI();
+
+        if (imei == null || imei.isEmpty()) {
+            return;
+        }
+
+        String representation = product.getNameValuePairs();
+        Integer slot = slots.get(imei);
+
+        if (slot != null) {
+            String[] indexedPairs = nameValuePairs.get(slot);
+
+            if (representation.equals(join(indexedPairs))) {
+                // Only the reference to the product has changed
+                products.set(slot, product);
+                return;
+            }
+
+            unindex(slot);
+        } else {
+            slot = Integer.valueOf(occupiedSlots.nextClearBit(0));
+            slots.put(imei, slot);
+            occupiedSlots.set(slot);
+
+            while (products.size() <= slot) {
+                products.add(null);
+                nameValuePairs.add(null);
+            }
+        }
+
+        String[] productPairs = split(representation);
+
+        products.set(slot, product);
+        nameValuePairs.set(slot, productPairs);
+
+        for (int i = 0; i < representation.length(); i++) {
+            if (isLineTerminator(representation.charAt(i))) {
+                // Regular expressions don't match line terminators with a dot
+                irregularSlots.set(slot);
+                break;
+            }
+        }
+
+        for (String pair : productPairs) {
+            getSlots(pairs, pair).set(slot);
+
+            for (String ending : getEndings(pair)) {
+                getSlots(pairEndings, ending).set(slot);
+            }
+        }
+    }
+
+    /**
+     * Removes a product with specified IMEI code from the index.
+     *
+     * @param imei IMEI code of the product
+     */
+    public synchronized void remove(String imei) {
+        Integer slot = slots.remove(imei);
+
+        if (slot != null) {
+            unindex(slot);
+            products.set(slot, null);
+            nameValuePairs.set(slot, null);
+            occupiedSlots.clear(slot);
+        }
+    }
+
+    /**
+     * Returns IMEI codes of all indexed products matching specified requirement.
+     *
+     * @param requirement Requirement for a product
+     * @return IMEI codes of matching products
+     */
+    public synchronized Set<String> getMatchingProducts(Requirement requirement) {
+        Set<String> matchingProducts = new HashSet<String>();
+        BitSet candidates = (BitSet) occupiedSlots.clone();
+
+        if (requirement.nameValuePairs != null) {
+            for (String pair : requirement.nameValuePairs) {
+                BitSet slotsOfPair = new BitSet();
+                BitSet exactSlots = pairs.get(pair);
+                BitSet endingSlots = pairEndings.get(pair);
+
+                if (exactSlots != null) {
+                    slotsOfPair.or(exactSlots);
+                }
+
+                if (endingSlots != null) {
+                    slotsOfPair.or(endingSlots);
+                }
+
+                candidates.and(slotsOfPair);
+
+                if (candidates.isEmpty()) {
+                    return matchingProducts;
+                }
+            }
+        }
+
+        for (int slot = candidates.nextSetBit(0); slot >= 0; slot = candidates.nextSetBit(slot + 1)) {
+            Product product = products.get(slot);
+            boolean matches = false;
+
+            if (requirement.nameValuePairs == null || irregularSlots.get(slot)) {
+                matches = requirement.pattern.matcher(join(nameValuePairs.get(slot))).matches();
+            } else {
+                matches = containsInOrder(nameValuePairs.get(slot), requirement.nameValuePairs);
+            }
+
+            if (matches) {
+                matchingProducts.add(product.getIMEI());
+            }
+        }
+
+        return matchingProducts;
+    }
+
+    /**
+     * Returns the number of indexed products.
+     *
+     * @return Number of indexed products
+     */
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    /**
+     * Removes a product in specified slot from the bitsets of its name-value pairs.
+     *
+     * @param slot Slot of the product
+     */
+    private void unindex(int slot) {
+        for (String pair : nameValuePairs.get(slot)) {
+            clearSlot(pairs, pair, slot);
+
+            for (String ending : getEndings(pair)) {
+                clearSlot(pairEndings, ending, slot);
+            }
+        }
+
+        irregularSlots.clear(slot);
+    }
+
+    /**
+     * Tells whenever required name-value pairs are ending the product's name-value pairs in the same order,
+     * just like the regular expression "(.)*name:value;(.)*name:value;(.)*" would do.
+     *
+     * @param productPairs Name-value pairs of the product
+     * @param requiredPairs Required name-value pairs
+     * @return True if product has all required name-value pairs in the same order or false otherwise
+     */
+    private static boolean containsInOrder(String[] productPairs, String[] requiredPairs) {
+        int index = 0;
+
+        for (String requiredPair : requiredPairs) {
+            while (index < productPairs.length && !productPairs[index].endsWith(requiredPair)) {
+                index++;
+            }
+
+            if (index == productPairs.length) {
+                return false;
+            }
+
+            // Each pair could be used only once
+            index++;
+        }
+
+        return true;
+    }
+
+    /**
+     * Splits specified representation of a product into name-value pairs, each ending with a pair separator.
+     *
+     * @param representation Representation of a product in form of name-value pairs
+     * @return Name-value pairs
+     */
+    private static String[] split(String representation) {
+        List<String> result = new ArrayList<String>(0);
+        int start = 0;
+        int end = 0;
+
+        while ((end = representation.indexOf(Constant.NAME_VALUE_PAIR_SEPARATOR, start)) != -1) {
+            result.add(representation.substring(start, end + 1));
+            start = end + 1;
+        }
+
+        if (start < representation.length()) {
+            // Text after the last separator could never be matched as a pair, but is kept for regular expressions
+            result.add(representation.substring(start));
+        }
+
+        return result.toArray(new String[result.size()]);
+    }
+
+    /**
+     * Joins specified name-value pairs back into a representation of a product.
+     *
+     * @param pairs Name-value pairs
+     * @return Representation of a product
+     */
+    private static String join(String[] pairs) {
+        StringBuilder representation = new StringBuilder();
+
+        for (String pair : pairs) {
+            representation.append(pair);
+        }
+
+        return representation.toString();
+    }
+
+    /**
+     * Returns all endings of specified name-value pair which are starting with a parameter name.
+     *
+     * @param pair Name-value pair
+     * @return Endings of the pair
+     */
+    private static Set<String> getEndings(String pair) {
+        Set<String> endings = new HashSet<String>(0);
+
+        for (int i = 1; i < pair.length(); i++) {
+            if (pair.charAt(i) == Constant.NAME_VALUE_SEPARATOR.charAt(0)) {
+                for (String parameterName : PARAMETER_NAMES) {
+                    int start = i + 1 - parameterName.length();
+
+                    if (start > 0 && pair.startsWith(parameterName, start)) {
+                        endings.add(pair.substring(start));
+                    }
+                }
+            }
+        }
+
+        return endings;
+    }
+
+    /**
+     * Returns a bitset stored under specified key, creating it if necessary.
+     *
+     * @param index Bitsets stored by keys
+     * @param key Key of the bitset
+     * @return Bitset stored under specified key
+     */
+    private static BitSet getSlots(HashMap<String, BitSet> index, String key) {
+        BitSet bitSet = index.get(key);
+
+        if (bitSet == null) {
+            bitSet = new BitSet();
+            index.put(key, bitSet);
+        }
+
+        return bitSet;
+    }
+
+    /**
+     * Clears specified slot in a bitset stored under specified key, and removes empty bitsets.
+     *
+     * @param index Bitsets stored by keys
+     * @param key Key of the bitset
+     * @param slot Slot to be cleared
+     */
+    private static void clearSlot(HashMap<String, BitSet> index, String key, int slot) {
+        BitSet bitSet = index.get(key);
+
+        if (bitSet != null) {
+            bitSet.clear(slot);
+
+            if (bitSet.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Tells whenever specified character is a line terminator, which is never matched by a dot in regular expressions.
+     *
+     * @param character Character to be checked
+     * @return True if character is a line terminator or false otherwise
+     */
+    private static boolean isLineTerminator(char character) {
+        return character == '\n' || character == '\r' || character == '\u0085' || character == '\u2028' || character == '\u2029';
+    }
+}
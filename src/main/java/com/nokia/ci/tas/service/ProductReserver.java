@@ -0,0 +1,45 @@
+package com.nokia.ci.tas.service;
+
+import java.util.List;
+
+import com.nokia.ci.tas.commons.Product;
+import com.nokia.ci.tas.commons.Test;
+
+/**
+ * This interface must be implemented by all parts reserving their products for tests,
+ * so that a gang reservation could reserve products of several parts together or none of them.
+ */
+public interface ProductReserver {
+
+    /**
+     * Reserves specified list of products for specified test, optionally without notifying anybody about reserved products.
+     *
+     * @param test Product reserving test
+     * @param selectedProducts A list of products to be reserved
+     * @param reservationTimeout Duration of products reservation in milliseconds
+     * @param isNotifying True if reserved products should be announced at once
+     * @return A list of successfully reserved products, or empty list in case of any reservation failure
+     */
+    public List<Product> reserveProducts(Test test, List<Product> selectedProducts, long reservationTimeout, boolean isNotifying);
+
+    /**
+     * Announces products reserved without notifications.
+     *
+     * @param reservedProducts A list of products reserved without notifications
+     */
+    public void notifyAboutReservedProducts(List<Product> reservedProducts);
+
+    /**
+     * Takes back reservations of specified products made without notifications.
+     *
+     * @param reservedProducts A list of products reserved without notifications
+     */
+    public void cancelReservations(List<Product> reservedProducts);
+
+    /**
+     * Counts specified test as running on the products of this part.
+     *
+     * @param test A test which will run
+     */
+    public void increaseNumberOfRunningTests(Test test);
+}
@@ -0,0 +1,165 @@
+package com.nokia.ci.tas.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import com.nokia.ci.tas.commons.Product;
+
+/**
+ * Finds sets of products matching all the product patterns of a required environment.
+ *
+ * Each set needs a distinct product for each of the patterns, and the sets must not share any products.
+ * Taking simply the first free product for each pattern may use up a product which is the only match for some later pattern,
+ * even if all the patterns could be matched with some other choice. Instead, the patterns of all the sets are treated as
+ * one side of a bipartite graph and the products as the other one, and a maximum matching is built by augmenting paths.
+ * A new set is accepted only when all of its patterns get a match, earlier accepted sets may change their products
+ * but never lose them. This way the largest possible number of sets is always found.
+ */
+public class ProductSetMatcher {
+
+    /**
+     * Products which can be taken into the sets.
+     */
+    private List<Product> products;
+
+    /**
+     * Indexes of products matching each of the patterns.
+     */
+    private int[][] matchingProductIndexes;
+
+    /**
+     * Index of the pattern slot taking each of the products or -1 if product isn't taken.
+     */
+    private int[] productOwners;
+
+    /**
+     * Index of the product taken by each of the pattern slots.
+     */
+    private int[] slotProducts;
+
+    /**
+     * Products visited during the current search of an augmenting path.
+     */
+    private boolean[] isVisited;
+
+    /**
+     * Constructor.
+     *
+     * @param matchingProducts IMEIs of products matching each of the required patterns
+     * @param products Products which can be taken into the sets, in the order of preference
+     */
+    public ProductSetMatcher(List<Set<String>> matchingProducts, List<Product> products) {
+        this.products = products;
+
+        matchingProductIndexes = new int[matchingProducts.size()][];
+
+        for (int j = 0; j < matchingProducts.size(); j++) {
+            Set<String> productsMatchingPattern = matchingProducts.get(j);
+            List<Integer> indexes = new ArrayList<Integer>(0);
+
+            for (int k = 0; k < products.size(); k++) {
+                if (productsMatchingPattern.contains(products.get(k).getIMEI())) {
+                    indexes.add(k);
+                }
+            }
+
+            matchingProductIndexes[j] = new int[indexes.size()];
+
+            for (int k = 0; k < indexes.size(); k++) {
+                matchingProductIndexes[j][k] = indexes.get(k);
+            }
+        }
+
+        productOwners = new int[products.size()];
+
+        for (int k = 0; k < productOwners.length; k++) {
+            productOwners[k] = -1;
+        }
+
+        isVisited = new boolean[products.size()];
+    }
+
+    /**
+     * Finds as many disjoint product sets as possible, but not more than specified.
+     *
+     * @param maximalNumberOfSets Maximal number of product sets to be found
+     * @return Found product sets, with products ordered as the required patterns
+     */
+    public List<List<Product>> findProductSets(long maximalNumberOfSets) {
+        int numberOfPatterns = matchingProductIndexes.length;
+        List<List<Product>> productSets = new ArrayList<List<Product>>(0);
+
+        if (numberOfPatterns == 0) {
+            return productSets;
+        }
+
+        long possibleNumberOfSets = Math.min(maximalNumberOfSets, products.size() / numberOfPatterns);
+        slotProducts = new int[(int) Math.max(possibleNumberOfSets, 0L) * numberOfPatterns];
+
+        int numberOfSets = 0;
+
+        while (numberOfSets < possibleNumberOfSets) {
+            // Remember current matching, since an incomplete set must not change it
+            int[] previousProductOwners = productOwners.clone();
+            int[] previousSlotProducts = slotProducts.clone();
+            boolean isComplete = true;
+
+            for (int j = 0; j < numberOfPatterns; j++) {
+                for (int k = 0; k < isVisited.length; k++) {
+                    isVisited[k] = false;
+                }
+
+                if (!augment(numberOfSets * numberOfPatterns + j)) {
+                    isComplete = false;
+                    break;
+                }
+            }
+
+            if (!isComplete) {
+                // Since the matching is maximal, no more sets can be found
+                productOwners = previousProductOwners;
+                slotProducts = previousSlotProducts;
+                break;
+            }
+
+            numberOfSets++;
+        }
+
+        for (int set = 0; set < numberOfSets; set++) {
+            List<Product> productSet = new ArrayList<Product>(numberOfPatterns);
+
+            for (int j = 0; j < numberOfPatterns; j++) {
+                productSet.add(products.get(slotProducts[set * numberOfPatterns + j]));
+            }
+
+            productSets.add(productSet);
+        }
+
+        return productSets;
+    }
+
+    /**
+     * Tries to find a product for specified pattern slot, moving products of other slots to their alternatives if needed.
+     *
+     * @param slot Index of the pattern slot
+     * @return True if a product was found or false otherwise
+     */
+    private boolean augment(int slot) {
+        int[] indexes = matchingProductIndexes[slot % matchingProductIndexes.length];
+
+        for (int k : indexes) {
+            if (!isVisited[k]) {
+                isVisited[k] = true;
+
+                if (productOwners[k] < 0 || augment(productOwners[k])) {
+                    productOwners[k] = slot;
+                    slotProducts[slot] = k;
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+}
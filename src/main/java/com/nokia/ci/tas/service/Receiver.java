@@ -1,29 +1,75 @@
 package com.nokia.ci.tas.service;
 
-import java.io.InputStream;
+import java.io.IOException;
 
 import java.net.Socket;
-import java.net.ServerSocket;
+
+import java.nio.ByteBuffer;
+
+import java.nio.channels.Channel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
 import com.nokia.ci.tas.commons.Constant;
-import com.nokia.ci.tas.commons.Converter;
+import com.nokia.ci.tas.commons.PersistentConnection;
 
+import com.nokia.ci.tas.commons.message.Message;
 import com.nokia.ci.tas.commons.message.ProductOperation;
 import com.nokia.ci.tas.commons.message.RegistryOperation;
 import com.nokia.ci.tas.commons.message.TestOperation;
 
 /**
  * Handles and dispatches all messages received by the instance of Testing Automation Service.
+ *
+ * All incoming connections are accepted and read by a single non-blocking selector,
+ * so a slow remote part never blocks the others. Once the whole XML message is collected,
+ * it is handed over to one of the message decoders. Persistent connections are read by the same selector
+ * for their whole life, and each of their frames is handed over to the decoders just like a single-use message.
+ * Only HTTP requests are handed over to the HTTP handler.
+ *
+ * All messages of the same remote host are decoded and dispatched by the same decoder, so their order is kept,
+ * while messages of different remote hosts are dispatched simultaneously.
  */
 public class Receiver extends Thread {
 
     /**
-     * Listening socket for all incoming messages.
+     * Number of message decoders working simultaneously.
+     */
+    public static final int NUMBER_OF_DECODERS = 4;
+
+    /**
+     * Size of the buffer used for reading incoming data.
+     */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Maximal number of bytes in the first line of incoming connection.
+     */
+    private static final int MAXIMAL_FIRST_LINE_LENGTH = 8 * 1024;
+
+    /**
+     * Period of inactivity after which an incoming connection is closed.
      */
-    private ServerSocket listener;
+    private static final long CONNECTION_IDLE_TIMEOUT = Constant.THIRTY_SECONDS;
+
+    /**
+     * Listening channel for all incoming messages.
+     */
+    private ServerSocketChannel listener;
+
+    /**
+     * Selector of all accepted, but not yet fully received connections.
+     */
+    private Selector selector;
 
     /**
      * Variable which keeps receiver running.
@@ -36,15 +82,32 @@ public class Receiver extends Thread {
     private TestAutomationService testAutomationService;
 
     /**
-     * Converter of input XML streams.
+     * Decoders of all received messages, run on the shared runtime of the Test Automation Service.
      */
-    private Converter converter;
+    private MessageDecoder[] decoders;
 
     /**
      * Handler of incoming HTTP streams.
      */
     private HttpHandler httpHandler;
 
+    /**
+     * Connections which should be handed over to the HTTP handler.
+     */
+    private List<IncomingConnection> handovers;
+
+    /**
+     * Lock serializing only those messages, which are registering or removing remote parts and tests.
+     * Such messages are checking and then changing the lists shared by all remote parts,
+     * while all other messages are dispatched simultaneously by the decoders of their remote hosts.
+     */
+    private final Object registrationLock = new Object();
+
+    /**
+     * A moment of time when idle connections were checked for the last time.
+     */
+    private long timeOfLastIdleCheck = 0L;
+
     /**
      * Instance of the Test Automation Service's global logger.
      */
@@ -54,9 +117,9 @@ public class Receiver extends Thread {
      * Default constructor.
      *
      * @param testAutomationService Instance of running Test Automation Service
-     * @param listener Instance of service socket for listening all incoming messages
+     * @param listener Instance of bound service channel for listening all incoming messages
      */
-    public Receiver(TestAutomationService testAutomationService, ServerSocket listener) {
+    public Receiver(TestAutomationService testAutomationService, ServerSocketChannel listener) {
 
         super(); // Start as anonymous thread
 
@@ -64,10 +127,16 @@ public class Receiver extends Thread {
 
         this.listener = listener;
 
-        converter = new Converter();
-
         httpHandler = new HttpHandler(testAutomationService);
 
+        handovers = new ArrayList<IncomingConnection>();
+
+        decoders = new MessageDecoder[NUMBER_OF_DECODERS];
+
+        for (int i = 0; i < decoders.length; i++) {
+            decoders[i] = new MessageDecoder(this, testAutomationService.getRuntime(), i);
+        }
+
         setPriority(Thread.MIN_PRIORITY); // Always work with minimal priority
     }
 
@@ -80,145 +149,457 @@ public class Receiver extends Thread {
 
         httpHandler.start();
 
-        while (isRunning) {
-            try {
-                // Accept incoming request
-                Socket connection = listener.accept();
+        for (MessageDecoder decoder : decoders) {
+            decoder.start();
+        }
 
-                // Always ensure that connection is still alive, since it may be accepted after being closed
-                if (!connection.isClosed()) {
-                    connection.setSoLinger(true, 10); // Socket's close() is allowed to block for 10 seconds in the worst case
-                    connection.setTcpNoDelay(true); // Less buffering, more packets
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
 
-                    InputStream inputStream = null;
-                    boolean immediatelyCloseConnection = true;
+        try {
+            selector = Selector.open();
 
-                    try {
-                        inputStream = connection.getInputStream();
-                        Object message = null;
+            listener.configureBlocking(false);
+            listener.register(selector, SelectionKey.OP_ACCEPT);
 
-                        // Parse the first line
-                        int ch = -1;
-                        StringBuffer buffer = new StringBuffer();
+            while (isRunning) {
+                selector.select(Constant.ONE_SECOND);
 
-                        do {
-                            ch = inputStream.read();
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
 
-                            if (ch != '\n' && ch != -1) {
-                                buffer.append(Character.toChars(ch));
-                            } else {
-                                buffer.trimToSize();
-                                break;
-                            }
-                        } while (ch != -1);
+                while (selectedKeys.hasNext()) {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
 
-                        String request = buffer.toString();
+                    if (!key.isValid()) {
+                        continue;
+                    }
 
-                        if (request != null && !request.isEmpty()) {
-                            // XML messages always start with the <?xml declaration
-                            if (request.startsWith("<?")) {
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        if (key.isWritable()) {
+                            write(key);
+                        }
 
-                                message = converter.handle(inputStream);
+                        if (key.isValid() && key.isReadable()) {
+                            read(key, buffer);
+                        }
+                    }
+                }
 
-                                if (message != null) {
+                if (!handovers.isEmpty()) {
+                    handOver();
+                }
 
-                                    if (message instanceof ProductOperation) {
+                if ((System.currentTimeMillis() - timeOfLastIdleCheck) > Constant.FIVE_SECONDS) {
+                    closeIdleConnections();
+                    timeOfLastIdleCheck = System.currentTimeMillis();
+                }
+            }
+        } catch (Exception e) {
+            if (isRunning) {
+                p("Got troubles while tried to handle incoming connections: " + e.getMessage());
+                e.printStackTrace();
+                isRunning = false;
+            }
+        } finally {
+            if (selector != null) {
+                for (SelectionKey key : selector.keys()) {
+                    close(key.channel());
+                }
 
-                                        testAutomationService.handleProductOperation((ProductOperation) message);
+                close(selector);
+            }
 
-                                    } else if (message instanceof TestOperation) {
+            for (MessageDecoder decoder : decoders) {
+                decoder.stopWorking();
+            }
+        }
 
-                                        testAutomationService.handleTestOperation((TestOperation) message);
+        p("Stopped working");
+    }
 
-                                    } else if (message instanceof RegistryOperation) {
+    /**
+     * Accepts all pending incoming connections.
+     *
+     * @throws Exception If listening channel is not working anymore
+     */
+    private void accept() throws Exception {
+        SocketChannel channel = listener.accept();
 
-                                        testAutomationService.handleRegistryOperation((RegistryOperation) message);
-                                    }
+        while (channel != null) {
+            try {
+                Socket connection = channel.socket();
+                connection.setSoLinger(true, 10); // Socket's close() is allowed to block for 10 seconds in the worst case
+                connection.setTcpNoDelay(true); // Less buffering, more packets
 
-                                    // Any other types of messages are just ignored
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ, new IncomingConnection(channel));
 
-                                    else {
-                                        p("Warning: received message is of type " + message.getClass().getCanonicalName() + " and is not supported!");
-                                    }
-                                }
+            } catch (Exception e) {
+                p("Got troubles while tried to accept incoming connection: " + e.getClass() + " - " + e.getMessage());
+                close(channel);
+            }
 
-                                if (inputStream != null) {
-                                    inputStream.close();
-                                }
+            channel = listener.accept();
+        }
+    }
 
-                                connection.close();
+    /**
+     * Reads all available data from the connection associated with specified key.
+     *
+     * @param key Selection key of the connection
+     * @param buffer Buffer to be used for reading
+     */
+    private void read(SelectionKey key, ByteBuffer buffer) {
+        IncomingConnection connection = (IncomingConnection) key.attachment();
+        SocketChannel channel = connection.getChannel();
+
+        try {
+            int numberOfReadBytes = 0;
+            boolean isEndOfStream = false;
+
+            do {
+                buffer.clear();
+                numberOfReadBytes = channel.read(buffer);
+
+                if (numberOfReadBytes > 0) {
+                    connection.append(buffer.array(), 0, numberOfReadBytes);
+                } else if (numberOfReadBytes < 0) {
+                    isEndOfStream = true;
+                }
+            } while (numberOfReadBytes > 0);
 
-                            } else if (request.contains("HTTP") || request.contains("http")) {
-                                // Otherwise we are interpreting them as plain HTTP messages
-                                // The input stream and connection will be closed by the handler
+            if (connection.getKind() == IncomingConnection.KIND_UNKNOWN) {
+                resolveKind(key, connection);
+            }
 
-                                // Don't close connections, input or output streams immediately here,
-                                // since HTTP 1.1 is using pervasive connections and HTTP handler will make all necessary cleanups
-                                immediatelyCloseConnection = false;
+            if (connection.getKind() == IncomingConnection.KIND_PERSISTENT) {
+                byte[] frame = connection.nextFrame();
 
-                                // Forward connection processing to HTTP handler
-                                httpHandler.handle(connection, request.trim());
+                while (frame != null) {
+                    // Acknowledge the frame before handling it, so the remote part could continue sending
+                    connection.queueOutput(new byte[] { (byte) PersistentConnection.ACKNOWLEDGEMENT });
 
-                            } else {
-                                p("Remote part at " + connection.getInetAddress() + " has issued unsupported request: " + request);
+                    if (frame.length > 0) {
+                        decode(channel, frame);
+                    }
 
-                                if (inputStream != null) {
-                                    inputStream.close();
-                                }
+                    frame = connection.nextFrame();
+                }
 
-                                connection.close();
-                            }
-                        }
-                    } catch (Exception e) {
-                        p("Got troubles during processing incoming connection from "
-                            + connection.getInetAddress().getHostName() + ":" + connection.getPort()
-                            + " (" + connection.getInetAddress().getHostAddress() + ":" + connection.getPort() + ") - "
-                            + e.getClass() + " - " + e.getMessage());
-                        e.printStackTrace();
-                    } finally {
-                        if (immediatelyCloseConnection) {
-                            // Always ensure that input stream is closed
-                            if (inputStream != null) {
-                                try {
-                                    inputStream.close();
-                                } catch (Exception e) {
-                                    p("Got troubles while tried to close input stream from "
-                                        + connection.getInetAddress().getHostName() + ":" + connection.getPort()
-                                        + " - " + e.getClass() + " " + e.getMessage());
-                                    e.printStackTrace();
-                                }
-                            }
-
-                            // Always ensure that connection is closed
-                            if (connection != null) {
-                                try {
-                                    connection.close();
-                                } catch (Exception e) {
-                                    p("Got troubles while tried to close a connection from "
-                                        + connection.getInetAddress().getHostName() + ":" + connection.getPort()
-                                        + " - " + e.getClass() + " - " + e.getMessage());
-                                    e.printStackTrace();
-                                }
-                            }
-                        }
+                if (isEndOfStream) {
+                    // Remote part has closed the connection
+                    key.cancel();
+                    close(channel);
+                } else {
+                    flush(key, connection);
+                }
+
+            } else if (connection.getKind() == IncomingConnection.KIND_XML) {
+                if (!connection.isDecoded()) {
+                    if (connection.getSize() > PersistentConnection.MAXIMAL_FRAME_SIZE) {
+                        p("Remote part at " + getRemoteAddress(channel) + " has send a too large message, closing the connection");
+                        key.cancel();
+                        close(channel);
+                        return;
                     }
+
+                    if (isEndOfStream || isMessageComplete(connection)) {
+                        decode(channel, connection.getData());
+                        connection.setDecoded();
+                    }
+                }
+
+                // Don't close the connection until remote part has closed it, so remote part will never get a reset
+                if (isEndOfStream) {
+                    key.cancel();
+                    close(channel);
+                }
+
+            } else if (connection.getKind() == IncomingConnection.KIND_UNKNOWN) {
+                if (isEndOfStream) {
+                    // Remote part has just checked that Test Automation Service is alive
+                    key.cancel();
+                    close(channel);
+                } else if (connection.getSize() > MAXIMAL_FIRST_LINE_LENGTH) {
+                    p("Remote part at " + getRemoteAddress(channel) + " has issued too long request, closing the connection");
+                    key.cancel();
+                    close(channel);
                 }
-                
-                sleep(Constant.MILLISECOND); // Wait for any updates
+            }
+        } catch (Exception e) {
+            p("Got troubles during processing incoming connection from " + getRemoteAddress(channel) + " - " + e.getClass() + " - " + e.getMessage());
+            key.cancel();
+            close(channel);
+        }
+    }
 
+    /**
+     * Resolves kind of the connection by its first line.
+     * Persistent connections get their header line confirmed and stay with the selector,
+     * while HTTP requests are put to be handed over to the HTTP handler.
+     *
+     * @param key Selection key of the connection
+     * @param connection Connection to be resolved
+     * @throws Exception If first line cannot be decoded
+     */
+    private void resolveKind(SelectionKey key, IncomingConnection connection) throws Exception {
+        if (!connection.resolveKind()) {
+            return; // The first line is not yet received
+        }
+
+        switch (connection.getKind()) {
+            case IncomingConnection.KIND_XML:
+                if (connection.getFirstLine().isEmpty()) {
+                    // Nothing to handle
+                    connection.setDecoded();
+                }
+                break;
+
+            case IncomingConnection.KIND_PERSISTENT:
+                // Confirm that persistent connections are supported, the frames will follow
+                connection.queueOutput((PersistentConnection.HEADER + "\n").getBytes("UTF-8"));
+                flush(key, connection);
+                break;
+
+            case IncomingConnection.KIND_HTTP:
+                key.cancel();
+                handovers.add(connection);
+                break;
+
+            default:
+                p("Remote part at " + getRemoteAddress(connection.getChannel()) + " has issued unsupported request: " + connection.getFirstLine());
+                key.cancel();
+                close(connection.getChannel());
+        }
+    }
+
+    /**
+     * Writes all queued replies of the connection associated with specified key.
+     *
+     * @param key Selection key of the connection
+     */
+    private void write(SelectionKey key) {
+        IncomingConnection connection = (IncomingConnection) key.attachment();
+
+        try {
+            flush(key, connection);
+        } catch (Exception e) {
+            p("Got troubles during replying to " + getRemoteAddress(connection.getChannel()) + " - " + e.getClass() + " - " + e.getMessage());
+            key.cancel();
+            close(connection.getChannel());
+        }
+    }
+
+    /**
+     * Writes as much of queued replies as the channel takes and waits for the channel to take the rest, if any.
+     *
+     * @param key Selection key of the connection
+     * @param connection Connection to be flushed
+     * @throws IOException If channel is not working anymore
+     */
+    private void flush(SelectionKey key, IncomingConnection connection) throws IOException {
+        if (connection.writeOutput()) {
+            key.interestOps(SelectionKey.OP_READ);
+        } else {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Checks whenever connection has already received the whole XML message.
+     *
+     * @param connection Connection to be checked
+     * @return True if connection has already received the whole XML message or false otherwise
+     */
+    private boolean isMessageComplete(IncomingConnection connection) {
+        byte[] data = connection.getData();
+        int end = data.length;
+
+        // Skip trailing white spaces
+        while (end > 0 && Character.isWhitespace((char) data[end - 1])) {
+            end--;
+        }
+
+        String closingTag = "</" + Message.XML_ELEMENT_MESSAGE + ">";
+        int start = end - closingTag.length();
+
+        if (start < 0) {
+            return false;
+        }
+
+        for (int i = 0; i < closingTag.length(); i++) {
+            if (data[start + i] != closingTag.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Hands over specified message to one of the decoders.
+     * Messages from the same remote host are always decoded by the same decoder, so their order is kept.
+     *
+     * @param channel Channel the message was received from
+     * @param data Raw XML or binary message
+     */
+    private void decode(SocketChannel channel, byte[] data) {
+        int hash = channel.socket().getInetAddress().hashCode();
+        decoders[(hash & Integer.MAX_VALUE) % decoders.length].handle(data);
+    }
+
+    /**
+     * Hands over all collected HTTP requests to the HTTP handler.
+     *
+     * @throws Exception If selector is not working anymore
+     */
+    private void handOver() throws Exception {
+        // Channels can be switched back to blocking mode only after their cancelled keys are released by the selector
+        selector.selectNow();
+
+        for (IncomingConnection connection : handovers) {
+            SocketChannel channel = connection.getChannel();
+
+            try {
+                channel.configureBlocking(true);
+
+                // Don't close connections, input or output streams immediately here,
+                // since HTTP 1.1 is using pervasive connections and HTTP handler will make all necessary cleanups
+                httpHandler.handle(channel.socket(), connection.getFirstLine().trim());
             } catch (Exception e) {
-                p("Got troubles while tried to handle incoming connections: " + e.getMessage());
-                e.printStackTrace();
-                isRunning = false;
+                p("Got troubles while tried to hand over incoming connection from " + getRemoteAddress(channel) + " - " + e.getClass() + " - " + e.getMessage());
+                close(channel);
+            }
+        }
+
+        handovers.clear();
+    }
+
+    /**
+     * Closes all connections which haven't received any data for too long.
+     */
+    private void closeIdleConnections() {
+        long now = System.currentTimeMillis();
+
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+
+            if (key.isValid() && attachment instanceof IncomingConnection) {
+                IncomingConnection connection = (IncomingConnection) attachment;
+
+                // Persistent connections are expected to stay silent between the messages
+                long idleTimeout = CONNECTION_IDLE_TIMEOUT;
+
+                if (connection.getKind() == IncomingConnection.KIND_PERSISTENT) {
+                    idleTimeout = PersistentConnection.IDLE_TIMEOUT;
+                }
+
+                if ((now - connection.getTimeOfLastActivity()) > idleTimeout) {
+                    if (connection.getKind() == IncomingConnection.KIND_XML && !connection.isDecoded()) {
+                        // Try to handle whatever was received
+                        decode(connection.getChannel(), connection.getData());
+                        connection.setDecoded();
+                    }
+
+                    key.cancel();
+                    close(connection.getChannel());
+                }
+            }
+        }
+    }
+
+    /**
+     * Dispatches specified message to the Test Automation Service.
+     * Called by the decoders, so messages of different remote hosts may be dispatched simultaneously.
+     *
+     * @param message Received message
+     */
+    protected void dispatch(Object message) {
+        if (message != null) {
+            if (message instanceof ProductOperation) {
+
+                testAutomationService.handleProductOperation((ProductOperation) message);
+
+            } else if (message instanceof TestOperation) {
+                TestOperation testOperation = (TestOperation) message;
+
+                if (testOperation.getId() == TestOperation.Id.START || testOperation.getId() == TestOperation.Id.STOP) {
+                    synchronized (registrationLock) {
+                        testAutomationService.handleTestOperation(testOperation);
+                    }
+                } else {
+                    testAutomationService.handleTestOperation(testOperation);
+                }
+
+            } else if (message instanceof RegistryOperation) {
+
+                synchronized (registrationLock) {
+                    testAutomationService.handleRegistryOperation((RegistryOperation) message);
+                }
+            }
+
+            // Any other types of messages are just ignored
+
+            else {
+                p("Warning: received message is of type " + message.getClass().getCanonicalName() + " and is not supported!");
             }
         }
     }
 
+    /**
+     * Returns address of the remote part in textual form.
+     *
+     * @param channel Channel connected to the remote part
+     * @return Address of the remote part
+     */
+    private String getRemoteAddress(SocketChannel channel) {
+        Socket connection = channel.socket();
+
+        if (connection.getInetAddress() == null) {
+            return "unknown remote part";
+        }
+
+        return connection.getInetAddress().getHostName() + ":" + connection.getPort()
+            + " (" + connection.getInetAddress().getHostAddress() + ":" + connection.getPort() + ")";
+    }
+
+    /**
+     * Closes specified channel, ignoring all possible errors.
+     *
+     * @param channel Channel to be closed
+     */
+    private void close(Channel channel) {
+        try {
+            channel.close();
+        } catch (Exception e) {
+            p("Got troubles while tried to close a connection - " + e.getClass() + " - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Closes specified selector, ignoring all possible errors.
+     *
+     * @param selector Selector to be closed
+     */
+    private void close(Selector selector) {
+        try {
+            selector.close();
+        } catch (Exception e) {
+            // Ignore
+        }
+    }
+
     /**
      * Stops receiver running.
      */
     public synchronized void stopWorking() {
         isRunning = false;
+
+        if (selector != null) {
+            selector.wakeup();
+        }
     }
 
     /**
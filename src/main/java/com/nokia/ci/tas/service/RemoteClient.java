@@ -3,15 +3,14 @@ package com.nokia.ci.tas.service;
 import java.io.InputStream;
 import java.io.OutputStream;
 
-import java.net.InetAddress;
-import java.net.Socket;
-
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
+import com.nokia.ci.tas.commons.Actor;
 import com.nokia.ci.tas.commons.Constant;
+import com.nokia.ci.tas.commons.PersistentConnection;
 import com.nokia.ci.tas.commons.Test;
 import com.nokia.ci.tas.commons.TestAutomationServiceListener;
 import com.nokia.ci.tas.commons.Util;
@@ -24,7 +23,7 @@ import com.nokia.ci.tas.commons.message.TextMessage;
  * Represents an instance of remote Test Automation Client connected
  * to this instance of Test Automation Service.
  */
-public class RemoteClient extends Thread implements TestAutomationServiceListener {
+public class RemoteClient extends Actor<Message> implements TestAutomationServiceListener {
 
     /**
      * Hostname of remote client.
@@ -47,9 +46,14 @@ public class RemoteClient extends Thread implements TestAutomationServiceListene
     private int servicePort;
 
     /**
-     * A pool of messages to be send to remote client.
+     * Persistent connection used for sending all messages to remote client.
      */
-    private ConcurrentLinkedQueue<Message> messagePool;
+    private PersistentConnection connection;
+
+    /**
+     * Writer sending all messages to remote client on the peer I/O runtime.
+     */
+    private ConnectionWriter writer;
 
     /**
      * Variable which keeps this remote client working on the side of Test Automation Service.
@@ -66,11 +70,6 @@ public class RemoteClient extends Thread implements TestAutomationServiceListene
      */
     private TestAutomationService testAutomationService;
 
-    /**
-     * A moment of time when the last message was successfully send or received.
-     */
-    private long timeOfLastSuccessfulMessage = 0L;
-
     /**
      * Current configuration of the Test Automation Service.
      */
@@ -96,7 +95,7 @@ public class RemoteClient extends Thread implements TestAutomationServiceListene
                         String serviceHostname,
                         int servicePort) {
 
-        super("RemoteTestAutomationClient_" + hostname + port); // Use hostname and port as a name of the thread
+        super("RemoteTestAutomationClient_" + hostname + port, testAutomationService.getRuntime()); // Use hostname and port as a name of the remote client
 
         this.testAutomationService = testAutomationService;
         this.clientHostname = hostname;
@@ -105,13 +104,12 @@ public class RemoteClient extends Thread implements TestAutomationServiceListene
         this.servicePort = servicePort;
         this.configuration = testAutomationService.getConfiguration();
 
-        messagePool = new ConcurrentLinkedQueue();
         tests = new ConcurrentLinkedQueue();
 
-        // Creation of remote client means that it is online
-        timeOfLastSuccessfulMessage = System.currentTimeMillis();
+        connection = new PersistentConnection(hostname, port);
 
-        setPriority(Thread.MIN_PRIORITY); // Always run with minimal priority
+        // Creation of remote client means that it is online
+        writer = new ConnectionWriter(this, testAutomationService.getIORuntime(), connection);
     }
 
     /**
@@ -142,139 +140,88 @@ public class RemoteClient extends Thread implements TestAutomationServiceListene
     }
 
     /**
-     * Main routine.
+     * Enables or disables sending of messages to remote client in the binary encoding.
+     *
+     * @param isBinaryEncodingEnabled True if remote client has told it reads binary messages or false otherwise
+     */
+    public void setBinaryEncodingEnabled(boolean isBinaryEncodingEnabled) {
+        connection.setBinaryEncodingEnabled(isBinaryEncodingEnabled);
+    }
+
+    /**
+     * Starts periodic checks of the remote client.
      */
     @Override
-    public void run() {
+    protected void started() {
         p("Started working");
+        writer.start();
+        wakeUpEvery(Constant.ONE_SECOND);
+    }
 
-        while (isRunning) {
-            try {
-                if (!messagePool.isEmpty()) {
-                    Message message = messagePool.poll(); // Always get the first message
-
-                    if (message != null) {
-                        for (int i = 0; i < Constant.NUMBER_OF_RETRIES; i++) {
-                            Socket socket = null;
-                            OutputStream output = null;
-
-                            try {
-                                p("Trying to send a message to remote client at " + clientHostname + ":" + clientPort);
-
-                                socket = new Socket(InetAddress.getByName(clientHostname), clientPort);
-                                output = socket.getOutputStream();
-
-                                // Send message and close connection immediately
-                                output.write(message.toXML().getBytes("UTF-8"));
-                                output.flush();
-
-                                output.close();
-                                socket.close();
-
-                                // Message was successfully send
-                                timeOfLastSuccessfulMessage = System.currentTimeMillis();
-
-                                break; // Stop tries
-
-                            } catch (Exception e) {
-                                p("Got a problem during sending a message to remote client at "
-                                        + clientHostname + ":" + clientPort + " because: " + e.getClass() + " " + e.getMessage());
-
-                                if (i >= (Constant.NUMBER_OF_RETRIES - 1)) {
-                                    // This remote client has some serious network problems
-                                    p("Has tried to send message for the maximal number of retries (" + Constant.NUMBER_OF_RETRIES + ")");
-                                    p("Stopping remote client at " + clientHostname + ":" + clientPort);
-                                    p("Remote client at " + clientHostname + ":" + clientPort + " has " + tests.size() + " issued tests");
-
-                                    for (Test test : tests) {
-                                        p("Trying to stop test '" + test.getId() + "'");
-                                        // Test monitors are always associated with test ids
-                                        TestMonitor testMonitor = testAutomationService.getTestMonitor(test.getId());
-
-                                        if (testMonitor != null) {
-                                            p("Notifying monitor of the test '" + test.getId() + "' about network failures");
-                                            testMonitor.stopTest("Remote client at " + message.getReceiverHostname() + ":" + message.getReceiverPort() + " is not accessible anymore");
-                                        }
-                                    }
-
-                                    if (!tests.isEmpty()) {
-                                        // Notify service about occured failure
-                                        testAutomationService.handleDisconnectedRemoteClient(clientHostname, clientPort, true);
-                                    }
-
-                                    isRunning = false;
-                                    break;
-                                } else {
-                                    p("Will try to re-send message after " + Util.convert(Constant.THIRTY_SECONDS));
-                                    sleep(Constant.THIRTY_SECONDS);
-                                }
-                            } finally {
-                                // Always ensure that output stream is closed
-                                if (output != null) {
-                                    try {
-                                        output.close();
-                                    } catch (Exception e) {
-                                        p("Got troubles while tried to close output stream to remote Test Automation Client at "
-                                            + clientHostname + ":" + clientPort
-                                            + " - " + e.getClass() + " " + e.getMessage());
-                                    }
-                                }
-
-                                // Always ensure that connection is closed
-                                if (socket != null && !socket.isClosed()) {
-                                    try {
-                                        socket.close();
-                                    } catch (Exception e) {
-                                        p("Got troubles while tried to close a connection to remote Test Automation Client at "
-                                            + clientHostname + ":" + clientHostname + " (" + socket.getInetAddress() + ") - "
-                                            + e.getClass() + " - " + e.getMessage());
-                                    }
-                                }
-                            }
-                        }
-                    }
-                } else {
-                    if ((System.currentTimeMillis() - timeOfLastSuccessfulMessage) > configuration.getRemoteClientCheckingPeriod()) {
-                        // Check what tests are still running and what are not
-
-                        // Try to check a connection between Test Automation Service and remote Client
-                        String messageText = "Connection check between Test Automation Service at " + serviceHostname + ":" + servicePort + " and this Test Automation Client is OK";
-
-                        for (Test runningTest : tests) {
-                            TextMessage textMessage = new TextMessage(runningTest, messageText);
-                            textMessage.setSender(serviceHostname, servicePort);
-                            textMessage.setReceiver(clientHostname, clientPort);
-                            handle(textMessage);
-                        }
-                    }
-                }
-
-                sleep(Constant.MILLISECOND); // Wait for any updates
+    /**
+     * Hands all waiting messages over to the writer of remote client and checks connection to it.
+     *
+     * @return True if remote client should continue working or false otherwise
+     */
+    @Override
+    protected boolean act() {
+        // Hand all waiting messages over to the writer, so the worker never waits for the network
+        Message message = nextMessage();
 
-            } catch (InterruptedException e) {
-                p("Remote client was interrupted");
-                e.printStackTrace();
+        while (message != null) {
+            writer.tell(message);
+            message = nextMessage();
+        }
 
-                isRunning = false;
+        if (writer.isFailed()) {
+            // This remote client has some serious network problems
+            p("Couldn't send messages to remote client at " + clientHostname + ":" + clientPort);
+            p("Stopping remote client at " + clientHostname + ":" + clientPort);
+            p("Remote client at " + clientHostname + ":" + clientPort + " has " + tests.size() + " issued tests");
 
-                for (Test test : tests) {
-                    p("Trying to stop test '" + test.getId() + "'");
-                    // Test monitors are always associated with test ids
-                    TestMonitor testMonitor = testAutomationService.getTestMonitor(test.getId());
+            for (Test test : tests) {
+                p("Trying to stop test '" + test.getId() + "'");
+                // Test monitors are always associated with test ids
+                TestMonitor testMonitor = testAutomationService.getTestMonitor(test.getId());
 
-                    if (testMonitor != null) {
-                        p("Notifying monitor of the test '" + test.getId() + "' about network failures");
-                        testMonitor.stopTest("Remote client got a failure on the side of Test Automation Service");
-                    }
+                if (testMonitor != null) {
+                    p("Notifying monitor of the test '" + test.getId() + "' about network failures");
+                    testMonitor.stopTest("Remote client at " + clientHostname + ":" + clientPort + " is not accessible anymore");
                 }
+            }
+
+            if (!tests.isEmpty()) {
+                // Notify service about occured failure
+                testAutomationService.handleDisconnectedRemoteClient(clientHostname, clientPort, true);
+            }
 
-                if (!tests.isEmpty()) {
-                    // Notify service about occured failure
-                    testAutomationService.handleDisconnectedRemoteClient(clientHostname, clientPort, true);
+            isRunning = false;
+        } else if (writer.isIdle()) {
+            if ((System.currentTimeMillis() - writer.getTimeOfLastSuccessfulMessage()) > configuration.getRemoteClientCheckingPeriod()) {
+                // Check what tests are still running and what are not
+
+                // Try to check a connection between Test Automation Service and remote Client
+                String messageText = "Connection check between Test Automation Service at " + serviceHostname + ":" + servicePort + " and this Test Automation Client is OK";
+
+                for (Test runningTest : tests) {
+                    TextMessage textMessage = new TextMessage(runningTest, messageText);
+                    textMessage.setSender(serviceHostname, servicePort);
+                    textMessage.setReceiver(clientHostname, clientPort);
+                    handle(textMessage);
                 }
             }
         }
 
+        return isRunning;
+    }
+
+    /**
+     * Closes connection to remote client.
+     */
+    @Override
+    protected void ended() {
+        writer.close();
+
         p("Successfully ended its work on the side of Test Automation Service");
     }
 
@@ -284,13 +231,12 @@ public class RemoteClient extends Thread implements TestAutomationServiceListene
      *
      * @param message Message to be send
      */
-    public synchronized void handle(Message message) {
-        if (messagePool.add(message)) {
+    public void handle(Message message) {
+        if (tell(message)) {
             //p("Got a message to handle: " + message);
         } else {
             p("Error: Couldn't add a message for handling: " + message);
         }
-        notify();
     }
 
     /**
@@ -0,0 +1,208 @@
+package com.nokia.ci.tas.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import java.util.regex.Pattern;
+
+import com.nokia.ci.tas.commons.Util;
+
+/**
+ * Keeps compiled product requirements of recently used environment specifications.
+ *
+ * Turning an environment specification into regular expressions, patterns and product index requirements is string-heavy work,
+ * while the same specifications are used by the allocator over and over again, for example on each try of restarting a test.
+ * Compiled requirements are immutable, so they are shared by all tests having the same environment specification.
+ * The cache is bounded and the least recently used specifications are dropped first.
+ */
+public class RequirementCache {
+
+    /**
+     * Default maximal number of kept environment specifications.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Compiled requirements of a single environment specification.
+     */
+    public static class CompiledEnvironment {
+
+        /**
+         * Patterns of products required by the environment.
+         */
+        private List<Pattern> patterns;
+
+        /**
+         * Product index requirements compiled from the patterns.
+         */
+        private List<ProductIndex.Requirement> requirements;
+
+        /**
+         * Constructor.
+         *
+         * @param patterns Patterns of products required by the environment
+         * @param requirements Product index requirements compiled from the patterns
+         */
+        private CompiledEnvironment(List<Pattern> patterns, List<ProductIndex.Requirement> requirements) {
+            this.patterns = Collections.unmodifiableList(patterns);
+            this.requirements = Collections.unmodifiableList(requirements);
+        }
+
+        /**
+         * Returns patterns of products required by the environment.
+         *
+         * @return Patterns of required products or an empty list if environment specification has no proper product descriptions
+         */
+        public List<Pattern> getPatterns() {
+            return patterns;
+        }
+
+        /**
+         * Returns product index requirements compiled from the patterns of required products.
+         *
+         * @return Product index requirements in the same order as patterns
+         */
+        public List<ProductIndex.Requirement> getRequirements() {
+            return requirements;
+        }
+    }
+
+    /**
+     * Maximal number of kept environment specifications.
+     */
+    private final int capacity;
+
+    /**
+     * Compiled environments by their specifications, the least recently used first.
+     */
+    private LinkedHashMap<String, CompiledEnvironment> compiledEnvironments;
+
+    /**
+     * Number of requests served from the cache.
+     */
+    private long numberOfHits = 0L;
+
+    /**
+     * Number of requests which required compilation.
+     */
+    private long numberOfMisses = 0L;
+
+    /**
+     * Number of environments dropped from the cache.
+     */
+    private long numberOfEvictions = 0L;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity Maximal number of kept environment specifications
+     */
+    public RequirementCache(int capacity) {
+        this.capacity = Math.max(capacity, 1);
+
+        compiledEnvironments = new LinkedHashMap<String, CompiledEnvironment>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledEnvironment> eldest) {
+                if (size() > RequirementCache.this.capacity) {
+                    numberOfEvictions++;
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns compiled requirements of specified environment specification, compiling them only if they are not kept already.
+     *
+     * @param environment Environment specification
+     * @return Compiled requirements of the environment
+     */
+    public synchronized CompiledEnvironment get(String environment) {
+        String key = environment != null ? environment : "";
+        CompiledEnvironment compiledEnvironment = compiledEnvironments.get(key);
+
+        if (compiledEnvironment != null) {
+            numberOfHits++;
+            return compiledEnvironment;
+        }
+
+        numberOfMisses++;
+
+        List<Pattern> patterns = new ArrayList<Pattern>(0);
+        List<ProductIndex.Requirement> requirements = new ArrayList<ProductIndex.Requirement>(0);
+        List<String> regularExpressions = Util.createRegularExpressions(key);
+
+        if (regularExpressions != null) {
+            for (String regularExpression : regularExpressions) {
+                Pattern pattern = Pattern.compile(regularExpression);
+                patterns.add(pattern);
+                requirements.add(ProductIndex.Requirement.compile(pattern));
+            }
+        }
+
+        compiledEnvironment = new CompiledEnvironment(patterns, requirements);
+        compiledEnvironments.put(key, compiledEnvironment);
+
+        return compiledEnvironment;
+    }
+
+    /**
+     * Returns maximal number of kept environment specifications.
+     *
+     * @return Capacity of the cache
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns current number of kept environment specifications.
+     *
+     * @return Size of the cache
+     */
+    public synchronized int size() {
+        return compiledEnvironments.size();
+    }
+
+    /**
+     * Returns the number of requests served from the cache.
+     *
+     * @return Number of cache hits
+     */
+    public synchronized long getNumberOfHits() {
+        return numberOfHits;
+    }
+
+    /**
+     * Returns the number of requests which required compilation.
+     *
+     * @return Number of cache misses
+     */
+    public synchronized long getNumberOfMisses() {
+        return numberOfMisses;
+    }
+
+    /**
+     * Returns the number of environment specifications dropped from the cache.
+     *
+     * @return Number of evictions
+     */
+    public synchronized long getNumberOfEvictions() {
+        return numberOfEvictions;
+    }
+
+    /**
+     * Returns the share of requests served from the cache.
+     *
+     * @return Hit rate between 0.0 and 1.0, or 0.0 if there were no requests
+     */
+    public synchronized double getHitRate() {
+        long numberOfRequests = numberOfHits + numberOfMisses;
+        return numberOfRequests > 0L ? (double) numberOfHits / numberOfRequests : 0.0;
+    }
+}
@@ -5,19 +5,29 @@ import java.io.FileOutputStream;
 
 import java.net.BindException;
 import java.net.InetAddress;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
+
+import java.nio.channels.ServerSocketChannel;
 
 import java.text.SimpleDateFormat;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Calendar;
 import java.util.Timer;
 import java.util.Collections;
 import java.util.GregorianCalendar;
 
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import java.util.regex.Pattern;
 
@@ -25,12 +35,14 @@ import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.nokia.ci.tas.commons.ActorRuntime;
 import com.nokia.ci.tas.commons.Constant;
 import com.nokia.ci.tas.commons.Product;
 import com.nokia.ci.tas.commons.Test;
 import com.nokia.ci.tas.commons.TestAutomationServiceListener;
 import com.nokia.ci.tas.commons.TestNodeDescription;
 import com.nokia.ci.tas.commons.TestPackage;
+import com.nokia.ci.tas.commons.TimingWheel;
 import com.nokia.ci.tas.commons.Util;
 
 import com.nokia.ci.tas.commons.log.ConsoleFormatter;
@@ -93,9 +105,29 @@ public class TestAutomationService extends Thread {
     private ConcurrentLinkedQueue<TestMonitor> testMonitors;
 
     /**
-     * List of the test handler waiting for any testing resources.
+     * List of the test handler waiting for any testing resources, ordered by the current scheduling policy.
+     */
+    private volatile TestSchedulingPolicy testMonitorsWaitingForTestingResources;
+
+    /**
+     * Half-life of the recent device time used by remote clients for fair share scheduling.
+     */
+    private static final long DEVICE_TIME_HALF_LIFE = 6L * Constant.ONE_HOUR;
+
+    /**
+     * Device time used by remote clients.
+     */
+    private DeviceTimeUsage deviceTimeUsage;
+
+    /**
+     * Time tests are waiting for testing resources until they are allocated.
+     */
+    private AllocationLatency allocationLatency;
+
+    /**
+     * Lock preventing changes of waiting tests while they are moved to another scheduling policy.
      */
-    private ConcurrentLinkedQueue<TestMonitor> testMonitorsWaitingForTestingResources;
+    private final Object schedulingPolicyLock = new Object();
 
 	/**
 	 * List of the test handler waiting for test restarts.
@@ -123,10 +155,53 @@ public class TestAutomationService extends Thread {
     private Configuration configuration;
 
     /**
-     * A moment when the product requests were tried to be resolved last time.
+     * Shared runtime of test nodes, test monitors, test handlers and other service entities.
+     */
+    private ActorRuntime runtime;
+
+    /**
+     * Timing wheel keeping test, reservation and disconnection timeouts of all service entities.
+     */
+    private TimingWheel timingWheel;
+
+    /**
+     * Runtime searching product sets for the shards of waiting tests in parallel, one thread per processor.
+     * Kept apart from the shared runtime, so searches never wait behind service entities and never hold them up.
+     */
+    private ActorRuntime allocationRuntime;
+
+    /**
+     * Runtime sending messages to test nodes and remote clients.
+     * Kept apart from the shared runtime, so unreachable peers keep only I/O threads waiting and never the service entities.
+     */
+    private ActorRuntime ioRuntime;
+
+    /**
+     * Maximal time of waiting for the searches of product sets in parallel, so a stuck search never holds up the allocation.
+     */
+    private static final long SHARDED_ALLOCATION_TIMEOUT = Constant.FIVE_SECONDS;
+
+    /**
+     * A moment when the product requests were periodically tried to be resolved last time.
      */
     private long timeOfLastProductRequestResolvings = 0L;
 
+    /**
+     * Lock used for waking the main loop up when product requests should be resolved.
+     */
+    private final Object productRequestResolvingLock = new Object();
+
+    /**
+     * Tells whenever product requests should be resolved without waiting for the next periodic attempt.
+     */
+    private boolean isProductRequestResolvingRequested = false;
+
+    /**
+     * Delay for gathering requests to resolve product requests coming close to each other,
+     * like the ones about a number of products released by a finished test.
+     */
+    private static final long PRODUCT_REQUEST_RESOLVING_DELAY = Constant.CENTISECOND;
+
     /**
      * Date and time format used for timestamps in logging prints.
      */
@@ -172,6 +247,31 @@ public class TestAutomationService extends Thread {
      */
     private Statistics statistics;
 
+    /**
+     * Name of the file where Test Automation Service keeps durations of executed test packages.
+     */
+    private static final String NAME_OF_TEST_PACKAGE_DURATIONS_FILE = "test-package-durations.dat";
+
+    /**
+     * Durations of executed test packages, used for splitting tests across available product sets.
+     */
+    private TestPackageDurations testPackageDurations;
+
+    /**
+     * Products kept for the first waiting test requiring several products at once and predicted finishing times of running tests.
+     */
+    private BackfillSchedule backfillSchedule = new BackfillSchedule();
+
+    /**
+     * Compiled product requirements of recently used environment specifications.
+     */
+    private RequirementCache requirementCache = new RequirementCache(RequirementCache.DEFAULT_CAPACITY);
+
+    /**
+     * Test nodes ordered by their workloads, the less loaded first.
+     */
+    private LoadIndex<TestNode> testNodeLoadIndex = new LoadIndex<TestNode>();
+
     /**
      * Name of the directory where Test Automation Service keeps all its maintenance messages.
      */
@@ -279,9 +379,15 @@ public class TestAutomationService extends Thread {
             return;
         }
 
+        // Init shared runtime of all service entities
+        runtime = new ActorRuntime("Test Automation Service", ActorRuntime.DEFAULT_NUMBER_OF_THREADS);
+        timingWheel = new TimingWheel(runtime, Constant.DECISECOND);
+        allocationRuntime = new ActorRuntime("Allocation", Runtime.getRuntime().availableProcessors());
+        ioRuntime = new ActorRuntime("Peer I/O", ActorRuntime.DEFAULT_NUMBER_OF_THREADS);
+
         // Init configuration handler
         try {
-            configuration = new Configuration();
+            configuration = new Configuration(runtime);
             configuration.start();
         } catch (Exception e) {
             p("Got troubles while tried to initialize configuration handler:" + e.toString());
@@ -307,6 +413,9 @@ public class TestAutomationService extends Thread {
 
             p("Statistics module was successfully initialized");
 
+            // Read durations of already executed test packages
+            testPackageDurations = new TestPackageDurations(new File(NAME_OF_TEST_PACKAGE_DURATIONS_FILE));
+
         } catch (Exception e) {
             p("Got troubles while tried to initialize statistics: " + e.toString());
             e.printStackTrace();
@@ -412,7 +521,9 @@ public class TestAutomationService extends Thread {
         testMonitors = new ConcurrentLinkedQueue();
 
         // This queue will contain copies of the test monitors waiting for some testing resources
-        testMonitorsWaitingForTestingResources = new ConcurrentLinkedQueue();
+        deviceTimeUsage = new DeviceTimeUsage(DEVICE_TIME_HALF_LIFE);
+        allocationLatency = new AllocationLatency(AllocationLatency.DEFAULT_NUMBER_OF_RECENT_ALLOCATIONS);
+        testMonitorsWaitingForTestingResources = createSchedulingPolicy();
 
 		// This queue will contain copies of the test monitors waiting for test restarts
 		testMonitorsWaitingForTestRestarts = new ConcurrentLinkedQueue();
@@ -425,7 +536,8 @@ public class TestAutomationService extends Thread {
         
         // Create server socket and launch receiver
         try {
-            ServerSocket listener = new ServerSocket(servicePort);
+            ServerSocketChannel listener = ServerSocketChannel.open();
+            listener.socket().bind(new InetSocketAddress(servicePort));
 
             p("Testing Automation Service started working on hostname " + serviceHostname + " and port " + servicePort);
 
@@ -442,15 +554,17 @@ public class TestAutomationService extends Thread {
 
             // Enter into the main loop
             while (isRunning) {
-                // Try to resolve product requests each 15 seconds
-                if ((System.currentTimeMillis() - timeOfLastProductRequestResolvings) > Constant.FIFTEEN_SECONDS) {
-                    resolveRequestsForTestRestarts();
-                    resolveRequestsForTestResources();
+                // Resolve product requests as soon as products or test nodes are released or new requests are issued,
+                // and in any case each 15 seconds
+                boolean isPeriodicResolving = waitForProductRequestResolving();
+
+                resolveRequestsForTestRestarts(isPeriodicResolving);
+                resolveRequestsForTestResources(isPeriodicResolving);
+
+                if (isPeriodicResolving) {
                     timeOfLastProductRequestResolvings = System.currentTimeMillis();
                     updateCurrentStatus();
                 }
-
-                sleep(Constant.DECISECOND); // Wait for any updates
             }
         } catch (Exception e) {
             if (e instanceof BindException) {
@@ -1046,6 +1160,7 @@ public class TestAutomationService extends Thread {
                     testNode.start();
 
                     testNodes.add(testNode);
+                    testNodeLoadIndex.add(testNode, testNode.getLoad());
 
                     String message = "Test node " + testNode.getHostnameAndPort();
 
@@ -1071,6 +1186,7 @@ public class TestAutomationService extends Thread {
                     testNode.start();
 
                     testNodes.add(testNode);
+                    testNodeLoadIndex.add(testNode, testNode.getLoad());
                     
                     String message = "Test node " + testNode.getHostnameAndPort();
 
@@ -1094,6 +1210,16 @@ public class TestAutomationService extends Thread {
                 // Ignore any unsupported operations
             }
 
+            if (testNode != null && operation != RegistryOperation.Id.DEREGISTER) {
+                // Each registration or update is telling which message encoding test node is able to read
+                boolean isBinaryEncodingEnabled = (registryOperation.getEncoding() == RegistryOperation.Encoding.BINARY);
+                testNode.setBinaryEncodingEnabled(isBinaryEncodingEnabled);
+
+                if (isBinaryEncodingEnabled) {
+                    testNode.handle(createEncodingConfirmation(registryOperation, testNode.getHostname(), testNode.getPort()));
+                }
+            }
+
         } else if (remote == RegistryOperation.Remote.CLIENT) {
             // Registry operation relates to a client
 
@@ -1138,11 +1264,38 @@ public class TestAutomationService extends Thread {
                 // Ignore any unsupported operations
             }
 
+            if (client != null && operation != RegistryOperation.Id.DEREGISTER) {
+                // Each registration or update is telling which message encoding remote client is able to read
+                boolean isBinaryEncodingEnabled = (registryOperation.getEncoding() == RegistryOperation.Encoding.BINARY);
+                client.setBinaryEncodingEnabled(isBinaryEncodingEnabled);
+
+                if (isBinaryEncodingEnabled) {
+                    client.handle(createEncodingConfirmation(registryOperation, remoteClientHostname, remoteClientPort));
+                }
+            }
+
         } else {
             // Ignore registry operations related to some unsupported remote parts
         }
     }
 
+    /**
+     * Creates a registry operation confirming to the remote part that this service reads binary messages too.
+     * Until such confirmation is received, remote part keeps sending all its messages in XML.
+     *
+     * @param registryOperation Registry operation received from the remote part
+     * @param hostname Hostname of the remote part
+     * @param port Port number of the remote part
+     * @return Registry operation confirming the binary encoding
+     */
+    private RegistryOperation createEncodingConfirmation(RegistryOperation registryOperation, String hostname, int port) {
+        RegistryOperation confirmation = new RegistryOperation(registryOperation.getId(), registryOperation.getRemote());
+        confirmation.setSender(serviceHostname, servicePort);
+        confirmation.setReceiver(hostname, port);
+        confirmation.setEncoding(RegistryOperation.Encoding.BINARY);
+        return confirmation;
+    }
+
     /**
      * Gets a Test Node with specified hostname and port or null if such node is not existing.
      *
@@ -1256,6 +1409,8 @@ public class TestAutomationService extends Thread {
 
         if (disconnectedTestNode != null) {
             // Remove disconnected test node from the list of available test nodes
+            testNodeLoadIndex.remove(disconnectedTestNode);
+
             if (testNodes.remove(disconnectedTestNode)) {
                 p("Disconnected test node " + disconnectedTestNode.getHostnameAndPort()
                         + " was successfully removed from the list of available test nodes");
@@ -1312,7 +1467,7 @@ public class TestAutomationService extends Thread {
                 // Check test resource requesters
                 for (TestMonitor current : testMonitorsWaitingForTestingResources) {
                     if (current.getRemoteClient().getClientHostnameAndPort().equals(disconnectedRemoteClient.getClientHostnameAndPort())) {
-                        if (testMonitorsWaitingForTestingResources.remove(current)) {
+                        if (removeWaitingTestMonitor(current)) {
                             p("Monitor of the test '" + current.getName() + "' was removed from the list of test resource requesters,"
                                 + " since it was issued from a disconnected remote client at " + disconnectedRemoteClient.getClientHostnameAndPort());
                             message += "\nMonitor of the test '" + current.getName() + "' was removed from the list of test resource requesters due to remote client's disconnection.";
@@ -1445,8 +1600,9 @@ public class TestAutomationService extends Thread {
 
                         testMonitor.setNameValueGroupsForRequiredProducts(matchingNameValueGroups);
 
-                        success = testMonitorsWaitingForTestingResources.add(testMonitor);
+                        success = addWaitingTestMonitor(testMonitor);
                         p("A request for product sets was successfully issued for the test '" + testMonitor.getTest().getId() + "'");
+                        resolveProductRequestsAtOnce();
 
                     } else {
                         p("Couldn't extract expressions for required resources regarding the test '" + test.getId() + "'");
@@ -1454,8 +1610,9 @@ public class TestAutomationService extends Thread {
                     }
                 } else {
                     // Nose targets are not requiring any physical products
-                    success = testMonitorsWaitingForTestingResources.add(testMonitor);
+                    success = addWaitingTestMonitor(testMonitor);
                     p("A request for test nodes was successfully issued for the test '" + testMonitor.getTest().getId() + "'");
+                    resolveProductRequestsAtOnce();
                 }
             }
         }
@@ -1475,6 +1632,7 @@ public class TestAutomationService extends Thread {
         if (!testMonitorsWaitingForTestRestarts.contains(testMonitor)) {
             success = testMonitorsWaitingForTestRestarts.add(testMonitor);
             p("Monitor of the test '" + testMonitor.getTest().getId() + "' was successfully added to the list for test restarters");
+            resolveProductRequestsAtOnce();
         } else {
             p("Monitor of the test '" + testMonitor.getTest().getId() + "' is already on the list for test restarters");
             success = true;
@@ -1501,7 +1659,7 @@ public class TestAutomationService extends Thread {
                 Test requestingTest = requestingTestMonitor.getTest();
 
                 if (requestingTest.getId().equals(testId)) {
-                    success = testMonitorsWaitingForTestingResources.remove(requestingTestMonitor);
+                    success = removeWaitingTestMonitor(requestingTestMonitor);
                     break;
                 }
             }
@@ -1510,13 +1668,132 @@ public class TestAutomationService extends Thread {
         return success;
     }
 
+    /**
+     * Creates a scheduling policy for waiting tests according to current configuration.
+     *
+     * @return Scheduling policy for waiting tests
+     */
+    private TestSchedulingPolicy createSchedulingPolicy() {
+        if (configuration == null || configuration.isFairShareScheduling()) {
+            long agingPeriod = configuration != null ? configuration.getTestAgingPeriod() : FairShareSchedulingPolicy.DEFAULT_AGING_PERIOD;
+            return new FairShareSchedulingPolicy(deviceTimeUsage, agingPeriod);
+        }
+
+        return new FifoSchedulingPolicy();
+    }
+
+    /**
+     * Switches to another scheduling policy, if configuration has changed.
+     * All waiting tests are moved to the new policy in their current order.
+     */
+    private void updateSchedulingPolicy() {
+        if (configuration == null) {
+            return;
+        }
+
+        TestSchedulingPolicy currentPolicy = testMonitorsWaitingForTestingResources;
+        boolean isChanged = false;
+
+        if (configuration.isFairShareScheduling()) {
+            isChanged = !(currentPolicy instanceof FairShareSchedulingPolicy)
+                        || ((FairShareSchedulingPolicy) currentPolicy).getAgingPeriod() != configuration.getTestAgingPeriod();
+        } else {
+            isChanged = !(currentPolicy instanceof FifoSchedulingPolicy);
+        }
+
+        if (isChanged) {
+            TestSchedulingPolicy updatedPolicy = createSchedulingPolicy();
+
+            synchronized (schedulingPolicyLock) {
+                for (TestMonitor testMonitor : currentPolicy.getQueue()) {
+                    updatedPolicy.add(testMonitor);
+                }
+
+                testMonitorsWaitingForTestingResources = updatedPolicy;
+            }
+
+            p("Waiting tests are now scheduled by the '" + updatedPolicy.getName() + "' policy");
+        }
+    }
+
+    /**
+     * Adds specified test monitor to the tests waiting for testing resources.
+     *
+     * @param testMonitor Monitor of the waiting test
+     * @return True if monitor was added or false otherwise
+     */
+    private boolean addWaitingTestMonitor(TestMonitor testMonitor) {
+        synchronized (schedulingPolicyLock) {
+            return testMonitorsWaitingForTestingResources.add(testMonitor);
+        }
+    }
+
+    /**
+     * Removes specified test monitor from the tests waiting for testing resources.
+     *
+     * @param testMonitor Monitor of the test
+     * @return True if monitor was removed or false otherwise
+     */
+    private boolean removeWaitingTestMonitor(TestMonitor testMonitor) {
+        synchronized (schedulingPolicyLock) {
+            return testMonitorsWaitingForTestingResources.remove(testMonitor);
+        }
+    }
+
+    /**
+     * Returns the position of specified test in the queue of tests waiting for testing resources.
+     *
+     * @param testMonitor Monitor of the test
+     * @return Position of the test starting from 1, or 0 if test isn't waiting
+     */
+    public int getQueuePosition(TestMonitor testMonitor) {
+        return testMonitorsWaitingForTestingResources.getQueue().indexOf(testMonitor) + 1;
+    }
+
+    /**
+     * Returns positions of the tests issued by specified remote client in the queue of tests waiting for testing resources.
+     *
+     * @param remoteClient Remote client
+     * @return Positions of the tests issued by remote client, starting from 1
+     */
+    public List<Integer> getQueuePositions(RemoteClient remoteClient) {
+        List<Integer> positions = new ArrayList<Integer>(0);
+        List<TestMonitor> queue = testMonitorsWaitingForTestingResources.getQueue();
+
+        for (int position = 0; position < queue.size(); position++) {
+            if (queue.get(position).getRemoteClient() == remoteClient) {
+                positions.add(position + 1);
+            }
+        }
+
+        return positions;
+    }
+
+    /**
+     * Returns device time used by remote clients.
+     *
+     * @return Device time used by remote clients
+     */
+    public DeviceTimeUsage getDeviceTimeUsage() {
+        return deviceTimeUsage;
+    }
+
     /**
      * Resolves all current requests for products.
+     *
+     * @param isPeriodicResolving True if this is a periodic attempt or false if it was triggered by some event
      */
-    private void resolveRequestsForTestResources() {
+    private void resolveRequestsForTestResources(boolean isPeriodicResolving) {
+        updateSchedulingPolicy();
+
         if (!testMonitorsWaitingForTestingResources.isEmpty()) {
 
             if (configuration == null || configuration.isMaintenanceMode()) {
+                if (!isPeriodicResolving) {
+                    // Waiting tests are notified only once per period, not on each event
+                    return;
+                }
+
                 // Notify test monitors about maintenance mode
                 String notification = "Test Automation Service at " + serviceHostname + ":" + servicePort + " is currently in the maintenace mode."
                                         +" No tests will be allocated until maintenance mode will be switched off...";
@@ -1533,14 +1810,18 @@ public class TestAutomationService extends Thread {
             // Extract all current configuration settings
             long maximalNumberOfTestsPerNode = configuration.getMaximalNumberOfTestsPerNode();
             long testResourcesExpectationTimeout = configuration.getTestResourcesExpectationTimeout();
+            boolean isBackfillScheduling = configuration.isBackfillScheduling();
+
+            // Products are kept again for the first waiting test which will fail to get them
+            backfillSchedule.clearReservation();
+
+            // Tests of different RM codes never compete for the same products, so their product sets are searched in parallel at first
+            Map<TestMonitor, AllocationPlan> allocationPlans = planAllocations();
 
             p("Trying to resolve all current requests for test resources...");
 
-            // Sort test nodes according to their workloads
-            // Test nodes will less number of executed tests will appear first
-            List<TestNode> tempTestNodes = new ArrayList<TestNode>(testNodes);
-            Collections.sort(tempTestNodes);
-            testNodes = new ConcurrentLinkedQueue<TestNode>(tempTestNodes);
+            // Test nodes are taken in the order of their workloads, kept up to date by the test nodes themselves,
+            // so test nodes with less number of executed tests will appear first
 
             List<TestMonitor> resolvedTestingResourceRequests = new ArrayList<TestMonitor>(0);
 
@@ -1572,193 +1853,28 @@ public class TestAutomationService extends Thread {
                 if (target == Test.Target.FLASH) {
                     // Flash target always requires some physical environments: product sets, complementary devices, etc.
 
-                    // Find out all test nodes which has some free products
-                    List<TestNode> availableTestNodes = new ArrayList<TestNode>(0);
-                    List<List<Product>> availableFreeProducts = new ArrayList<List<Product>>(0);
-
-                    for (TestNode testNode : testNodes) {
-                        if (!testNode.isMaintenanceMode()) {
-                            long capacity = maximalNumberOfTestsPerNode - testNode.getNumberOfRunningTests();
-
-                            if (capacity > 0) {
-                                // This test node is able to execute some more tests
-                                List<Product> freeProducts = new ArrayList<Product>(testNode.getFreeProducts());
+                    AllocationPlan allocationPlan = allocationPlans.get(testMonitor);
 
-                                if (!freeProducts.isEmpty()) {
-                                    // This test node has some free products
-                                    availableTestNodes.add(testNode);
-                                    availableFreeProducts.add(freeProducts);
-                                }
-                            }
-                        } else {
-                            p("Test node " + testNode.getHostnameAndPort() + " is in the maintenance mode and cannot be used");
-                        }
+                    if (allocationPlan == null || !isAllocationPlanValid(testMonitor, allocationPlan)) {
+                        // Test wasn't sharded or test farm has changed since the parallel search
+                        allocationPlan = findProductSets(testMonitor, Collections.<String>emptySet(), Collections.<TestNode, Long>emptyMap());
+                    } else {
+                        p("Test '" + test.getId() + "' has got product sets for " + allocationPlan.getProductSetMatches().size() + " environments by the parallel search");
                     }
 
-                    p("Test farm has " + availableTestNodes.size() + " capable test nodes");
-
-                    // Test farm has some capable test nodes
-                    if (!availableTestNodes.isEmpty()) {
-                        // Try to search for each of environments required by the test
-                        for (int i = 0; i < patternsForRequiredEnvironments.size(); i++) {
-                            List<Pattern> patterns = patternsForRequiredEnvironments.get(i);
-                            String requiredEnvironment = requiredEnvironments.get(i);
-
-                            p("Test '" + test.getId() + "' has requested a product set pattern #" + (i + 1) + "/" + patternsForRequiredEnvironments.size() + ": '" + requiredEnvironment + "'");
-
-                            // Right now a single environment set must be allocated from the same test node
-                            // But since the same test may require many different environment sets,
-                            // the same test could be splitted across many different test nodes
-
-                            // Find out the number of test packages requiring current environment
-                            int maximalNumberOfRequestedEnvironments = 0;
-                            int totalNumberOfAvailableEnvironments = 0;
-
-                            if (test.getNumberOfTestPackages() > 0) {
-                                List<TestPackage> testPackages = test.getTestPackages();
-                                for (TestPackage testPackage : testPackages) {
-                                    if (testPackage.getRequiredEnvironment().equalsIgnoreCase(requiredEnvironment)) {
-                                        // One more package has requested current environment
-                                        maximalNumberOfRequestedEnvironments++;
-                                    }
-                                }
-                            } else {
-                                maximalNumberOfRequestedEnvironments = 1; // One and the same environment for the whole test
-                            }
-
-                            p("Test '" + test.getId() + "' has requested environment '" + requiredEnvironment + "' in " + maximalNumberOfRequestedEnvironments + " packages");
-
-                            // Find test nodes and products sets that match current environment
-                            List<TestNode> matchingTestNodes = new ArrayList<TestNode>(0);
-                            List<List<Product>> matchingProductSets = new ArrayList<List<Product>>(0);
-
-                            // Sort available test nodes according to their current workloads,
-                            // so that less buzy test nodes will appear first
-                            Collections.sort(availableTestNodes);
-
-                            // Go through all capable and available test nodes
-                            for (int tn = 0; tn < availableTestNodes.size(); tn++) {
-                                TestNode testNode = availableTestNodes.get(tn);
-                                List<Product> freeProducts = availableFreeProducts.get(tn);
-
-                                // Each pattern stands for a single required product or some complementary physical device
-                                if (freeProducts.size() >= patterns.size()) {
-                                    // Get current capacity once more
-                                    long capacity = maximalNumberOfTestsPerNode - testNode.getNumberOfRunningTests();
-
-                                    do {
-                                        // Try to find a matching set of all required products or complementary physical devices
-                                        List<Product> currentMatchingProductSet = new ArrayList<Product>(0);
-
-                                        // Check each of required product patterns
-                                        for (int j = 0; j < patterns.size(); j++) {
-                                            Pattern pattern = patterns.get(j);
-
-                                            for (Product product : freeProducts) {
-                                                if (pattern.matcher(product.getNameValuePairs()).matches()) {
-                                                    // We've got a product which matches required pattern
-                                                    // Now we must ensure that product isn't already taken by some other matching set
-                                                    boolean canAdd = true;
-
-                                                    for (List<List<Product>> finalProductSetMatch : finalProductSetMatches) {
-                                                        for (List<Product> finalProductSet : finalProductSetMatch) {
-                                                            if (finalProductSet.contains(product)) {
-                                                                // This product is already taken by some product set
-                                                                canAdd = false;
-                                                                break;
-                                                            }
-                                                        }
-                                                    }
-
-                                                    if (canAdd) {
-                                                        // If this product isn't yet taken, ensure that we don't have any dublicates
-                                                        if (!currentMatchingProductSet.contains(product)) {
-                                                            currentMatchingProductSet.add(product);
-                                                            // A match for current pattern is found, now move to the next pattern
-                                                            break;
-                                                        }
-                                                    }
-                                                }
-                                            }
-                                        }
-
-                                        if (currentMatchingProductSet.size() == patterns.size()) {
-                                            // Current product set has got maches for all required patterns
-
-                                            // Remove matching products from the list of free products
-                                            for (Product match : currentMatchingProductSet) {
-                                                if (freeProducts.contains(match)) {
-                                                    freeProducts.remove(match);
-                                                }
-                                            }
-
-                                            // Add current match to the list of final matches
-                                            matchingProductSets.add(currentMatchingProductSet);
-                                            // Also remember on which test node this product set is available
-                                            matchingTestNodes.add(testNode);
-
-                                            // A single matching environment set means a single test: either the whole test or a splitted one
-                                            totalNumberOfAvailableEnvironments++;
-                                            capacity--;
-
-                                            if (totalNumberOfAvailableEnvironments >= maximalNumberOfRequestedEnvironments) {
-                                                // We've discovered just enough of required product sets
-                                                p("Test '" + test.getId() + "' has got " + totalNumberOfAvailableEnvironments
-                                                    + " (enough) product sets for required product set pattern #" + (i + 1) + "/" + patternsForRequiredEnvironments.size()
-                                                    + ": '" + requiredEnvironment + "' on test node " + testNode.getHostnameAndPort());
-                                                break;
-                                            }
-                                        } else {
-                                            // Move to the next test node
-                                            p("Test '" + test.getId() + "' couldn't get enough matches for required environment '"
-                                                + requiredEnvironment + "' on test node " + testNode.getHostnameAndPort());
-                                            break;
-                                        }
-                                    } while (capacity > 0 && freeProducts.size() >= patterns.size());
-                                } else {
-                                    p("Test '" + test.getId() + "' couldn't get enough of products from the test node " + testNode.getHostnameAndPort()
-                                        + " - Test node has " + freeProducts.size() + " free products and " + patterns.size() + " were required at minimum");
-                                }
-
-                                if (totalNumberOfAvailableEnvironments >= maximalNumberOfRequestedEnvironments) {
-                                    // We've discovered just enough of required product sets
-                                    p("Test '" + test.getId() + "' got " + totalNumberOfAvailableEnvironments + " (enough) required product sets."
-                                        + " Stop scanning test farm for a required product set pattern #" + (i + 1) + "/" + patternsForRequiredEnvironments.size()
-                                        + ": '" + requiredEnvironment + "'");
-                                    break;
-                                }
-                            }
-
-                            // Store discovered product sets and the corresponding test nodes
-                            p("Test '" + test.getId() + "' finally got " + totalNumberOfAvailableEnvironments + " available product sets out of "
-                                + maximalNumberOfRequestedEnvironments + " requested, concerning the product set pattern #" + (i + 1) + "/" + patternsForRequiredEnvironments.size()
-                                + ": '" + requiredEnvironment + "'");
-
-                            if (totalNumberOfAvailableEnvironments > 0) {
-                                // We've discovered at least one environment for the test
-                                // Store matches for required environment
-                                finalTestNodeMatches.add(matchingTestNodes);
-                                finalProductSetMatches.add(matchingProductSets);
-                            } else {
-                                // Nothing was discovered at this time
-
-                                if (!finalProductSetMatches.isEmpty()) {
-                                    // At least test farm has something to offer
-                                    p("Test '" + test.getId() + "' didn't get any matches for required environment '" + requiredEnvironment + "'. Stop scanning the test farm...");
-                                    // Stop any other discoveries
-                                    break;
-                                }
-
-                                // Otherwise just continue searches till at least something will be discovered
-                            }
-                        }
+                    if (allocationPlan.hasCapableTestNodes()) {
+                        finalTestNodeMatches = allocationPlan.getTestNodeMatches();
+                        finalProductSetMatches = allocationPlan.getProductSetMatches();
+                    } else if (backfillSchedule.hasReservation()) {
+                        // Shorter tests behind this one could still use the products kept for some earlier test
+                        p("Test farm hasn't any capable test nodes for the test '" + test.getId() + "', which couldn't release kept products in time");
                     } else {
                         p("Test farm hasn't any capable test nodes. Stop scanning the test farm...");
                         break;
                     }
                 } else if (target == Test.Target.NOSE) {
                     // Nose target doesn't require any physical products or complementary physical devices, but just test nodes
-                    for (TestNode testNode : testNodes) {
+                    for (TestNode testNode : testNodeLoadIndex.getElements()) {
                         if (!testNode.isMaintenanceMode()) {
                             long capacity = maximalNumberOfTestsPerNode - testNode.getNumberOfRunningTests();
 
@@ -1791,6 +1907,8 @@ public class TestAutomationService extends Thread {
                         List<TestNode> reservedTestNodes = new ArrayList<TestNode>(0);
                         // Remember which product sets were reserved for them
                         List<List<Product>> reservedProductSets = new ArrayList<List<Product>>(0);
+                        // Which test packages each of them will execute
+                        List<List<TestPackage>> reservedTestPackageSets = new ArrayList<List<TestPackage>>(0);
                         // And what test packages has been handled
                         List<TestPackage> handledTestPackages = new ArrayList<TestPackage>(0);
 
@@ -1835,37 +1953,12 @@ public class TestAutomationService extends Thread {
                                 p("Test '" + test.getId() + "' has " + involvedTestPackages.size() + " test packages for requested environment '" + requiredEnvironment + "'");
 
                                 int numberOfAvailableEnvironments = matchingProductSets.size();
-                                int numberOfRequiredEnvironments = involvedTestPackages.size();
-
-                                // Check if test could be splitted across available resource sets
-                                double dR = (double) numberOfRequiredEnvironments / numberOfAvailableEnvironments;
-
-                                // dR could be a rational or even irrational number
-                                // So, here we're rounding up towards the next integer number
-                                // Now nR will be the optimal number of test packages per each of available product sets
-                                int nR = (int) Math.ceil(dR);
-
-                                p("Test '" + test.getId() + "' has got " + numberOfAvailableEnvironments + " available environment sets for " + numberOfRequiredEnvironments + " of required."
-                                    + " That makes " + numberOfRequiredEnvironments + "/" + numberOfAvailableEnvironments + " = " + dR + " of average number of packages per environment set"
-                                    + " or " + nR + " if rounded up");
-
-                                // Split test packages according to discovered optimal splitting coefficient nR
-                                int tsIndex = 0;
-                                List<List<TestPackage>> splittedTestPackageSets = new ArrayList<List<TestPackage>>(0);
-
-                                do {
-                                    List<TestPackage> splittedTestPackageSet = new ArrayList<TestPackage>(0);
-
-                                    for (int t = tsIndex; t < (tsIndex + nR); t++) {
-                                        if (t < involvedTestPackages.size()) {
-                                            splittedTestPackageSet.add(involvedTestPackages.get(t));
-                                        }
-                                    }
 
-                                    splittedTestPackageSets.add(splittedTestPackageSet);
-                                    tsIndex += splittedTestPackageSet.size();
+                                // Split test packages by their durations, so that the longest of splitted tests would be as short as possible
+                                List<List<TestPackage>> splittedTestPackageSets = testPackageDurations.split(test.getId(), involvedTestPackages, numberOfAvailableEnvironments);
 
-                                } while (tsIndex < involvedTestPackages.size());
+                                p("Test '" + test.getId() + "' has got " + numberOfAvailableEnvironments + " available environment sets for " + involvedTestPackages.size() + " of required."
+                                    + " Test packages are splitted into " + splittedTestPackageSets.size() + " sets by their durations");
 
                                 // Finally create a set of splitted test
                                 for (int s = 0; s < splittedTestPackageSets.size(); s++) {
@@ -1896,6 +1989,8 @@ public class TestAutomationService extends Thread {
                                     reservedTestNodes.add(matchingTestNodes.get(s));
                                     // And which product set will be reserved for this test
                                     reservedProductSets.add(matchingProductSets.get(s));
+                                    // And which test packages this test will execute
+                                    reservedTestPackageSets.add(splittedTestPackageSet);
                                 }
                             }
                         }
@@ -1942,6 +2037,9 @@ public class TestAutomationService extends Thread {
                             // Calculate the proper products reservation time, which is the remaining time for the whole test
                             long reservationTimeout = test.getTimeout() - (System.currentTimeMillis() - testMonitor.getTestHandlingStartTime());
 
+                            // Test nodes are notified only when all splitted tests have got their products, so a failed reservation is taken back silently
+                            GangReservation gangReservation = new GangReservation();
+
                             for (int i = 0; i < splittedTests.size(); i++) {
                                 Test splittedTest = splittedTests.get(i);
 
@@ -1953,36 +2051,36 @@ public class TestAutomationService extends Thread {
                                     splittedTest.setSubId("");
                                 }
 
-                                // Get the test node on which this test will be started
-                                TestNode reservedTestNode = reservedTestNodes.get(i);
-                                // Get the product set that will be reserved for this test
-                                List<Product> reservedProductSet = reservedProductSets.get(i);
+                                // The test node on which this test will be started and the product set that will be reserved for this test
+                                gangReservation.add(reservedTestNodes.get(i), splittedTest, reservedProductSets.get(i));
+                            }
 
-                                // Perform operation of reserving products for this test and for calculated remaining time
-                                List<Product> reservedProducts = reservedTestNode.reserveProducts(splittedTest, reservedProductSet, reservationTimeout);
+                            // Perform operation of reserving products for all splitted tests and for calculated remaining time
+                            if (gangReservation.reserve(reservationTimeout)) {
+                                for (int i = 0; i < splittedTests.size(); i++) {
+                                    Test splittedTest = splittedTests.get(i);
+                                    TestNode reservedTestNode = reservedTestNodes.get(i);
+                                    List<Product> reservedProducts = gangReservation.getReservedProducts(i);
 
-                                // Ensure that reserving was fine
-                                if (!reservedProducts.isEmpty() && reservedProducts.size() == reservedProductSet.size()) {
                                     // If product reserving was fine, we can create a test handler
                                     splittedTest.setReservedProducts(reservedProducts);
-                                    for(Product p : reservedProducts) {
-                                    	this.createMessage( "Usage_"+p.getRole()+"_"+p.getRMCode()+"_"+p.getSn(), "Product:" + p.toString()+" have been reserved and used by "+splittedTest.getId() );
-                                    }
                                     TestHandler testHandler = new TestHandler(self, testMonitor, splittedTest, reservedTestNode, reservedProducts);
+                                    testHandler.setTestPackages(reservedTestPackageSets.get(i));
+
+                                    // Remember when this test is predicted to release its products, if its test packages were executed before
+                                    long predictedDuration = testPackageDurations.getDuration(test.getId(), reservedTestPackageSets.get(i));
+
+                                    if (predictedDuration >= 0L) {
+                                        backfillSchedule.setPredictedEndTime(splittedTest.getRuntimeId(), System.currentTimeMillis() + predictedDuration);
+                                    }
+
                                     testHandlers.add(testHandler);
-                                    // Notify test node about the test it will run
-                                    reservedTestNode.increaseNumberOfRunningTests(splittedTest);
                                     p("Test '" + test.getId() + "' will start a splitted test '" + splittedTest.getRuntimeId() + "'");
-                                } else {
-                                    // Otherwise stop allocating splitted tests
-                                    p("Test '" + test.getId() + "' got an error while tried to reserve products from the test node " + reservedTestNode.getHostnameAndPort());
-                                    if (reservedProducts == null) {
-                                        p("Test '" + test.getId() + "' has got NULL instead of the list of reserved products");
-                                    } else {
-                                        p("Test '" + test.getId() + "' has got " + reservedProducts.size() + " reserved products out of " + reservedProductSet.size() + " required");
-                                    }
-                                    break;
                                 }
+                            } else {
+                                int indexOfFailure = gangReservation.getIndexOfFailure();
+                                p("Test '" + test.getId() + "' got an error while tried to reserve " + reservedProductSets.get(indexOfFailure).size()
+                                    + " products from the test node " + reservedTestNodes.get(indexOfFailure).getHostnameAndPort());
                             }
 
                             // Ensure that each of splitted tests has got a test handler
@@ -1992,8 +2090,18 @@ public class TestAutomationService extends Thread {
                                     p("A test handler '" + testHandler.getName() + "' for the test '" + test.getId() + "'");
                                 }*/
 
+                                // All reservations are done, so commit them by notifying test nodes about reserved products and the tests they will run
+                                gangReservation.commit();
+
+                                for (TestHandler testHandler : testHandlers) {
+                                    for(Product p : testHandler.getReservedProducts()) {
+                                    	this.createMessage( "Usage_"+p.getRole()+"_"+p.getRMCode()+"_"+p.getSn(), "Product:" + p.toString()+" have been reserved and used by "+testHandler.getTest().getId() );
+                                    }
+                                }
+
                                 // Notify test monitor about created test handlers
                                 testMonitor.addTestHandlers(testHandlers);
+                                allocationLatency.record(System.currentTimeMillis() - testMonitor.getTestHandlingStartTime());
 
                                 // Remove splitted packages from the test
                                 List<TestPackage> testPackages = test.getTestPackages();
@@ -2031,18 +2139,8 @@ public class TestAutomationService extends Thread {
                                 }
 
                             } else {
-                                // Something went wrong, so all product sets should be released
-                                p("Test '" + test.getId() + "' has got a problem during resevation of product sets. All involved product sets will be now automatically released...");
-
-                                for (TestHandler testHandler : testHandlers) {
-                                    TestNode reservedTestNode = testHandler.getReservedTestNode();
-                                    List<Product> reservedProducts = testHandler.getReservedProducts();
-
-                                    if (reservedTestNode != null) {
-                                        reservedTestNode.freeProducts(reservedProducts);
-                                        reservedTestNode.decreaseNumberOfRunningTests(testHandler.getTest(), true);
-                                    }
-                                }
+                                // Something went wrong, and all product sets were already taken back without any notifications
+                                p("Test '" + test.getId() + "' has got a problem during resevation of product sets. All involved product sets were automatically released");
 
                                 // Check test timeouts
                                 if ((System.currentTimeMillis() - testMonitor.getTestHandlingStartTime()) > testResourcesExpectationTimeout) {
@@ -2078,6 +2176,10 @@ public class TestAutomationService extends Thread {
                             testMonitor.stopTest("Test '" + testMonitor.getTest().getId() + "' has got expiration of its timeout"
                                                     + " before suitable test resources were available");
                             resolvedTestingResourceRequests.add(testMonitor);
+                        } else if (isBackfillScheduling && !backfillSchedule.hasReservation() && !resolvedTestingResourceRequests.contains(testMonitor)) {
+                            // Keep products for this test as soon as they are predicted to be free,
+                            // so that the tests behind it could use them only until then
+                            reserveFutureProducts(testMonitor);
                         }
                     }
                 } else if (target == Test.Target.NOSE) {
@@ -2124,6 +2226,7 @@ public class TestAutomationService extends Thread {
 
                         // Notify test monitor about successful test allocation
                         testMonitor.addTestHandlers(testHandlers);
+                        allocationLatency.record(System.currentTimeMillis() - testMonitor.getTestHandlingStartTime());
 
                         // Remove test monitor from the list of resouce requesters
                         resolvedTestingResourceRequests.add(testMonitor);
@@ -2187,10 +2290,17 @@ public class TestAutomationService extends Thread {
     
     /**
      * Resolves all current requests for test restarts.
+     *
+     * @param isPeriodicResolving True if this is a periodic attempt or false if it was triggered by some event
      */
-    private void resolveRequestsForTestRestarts() {
+    private void resolveRequestsForTestRestarts(boolean isPeriodicResolving) {
         if (!testMonitorsWaitingForTestRestarts.isEmpty()) {
             if (configuration == null || configuration.isMaintenanceMode()) {
+                if (!isPeriodicResolving) {
+                    // Waiting tests are notified only once per period, not on each event
+                    return;
+                }
+
                 // Notify test monitors about maintenance mode
                 String notification = "Test Automation Service at " + serviceHostname + ":" + servicePort + " is currently in the maintenace mode."
                                         +" No tests will be restarted until maintenance mode will be switched off...";
@@ -2210,11 +2320,8 @@ public class TestAutomationService extends Thread {
 
             p("Trying to resolve all current requests for test restarts...");
 
-            // Sort test nodes according to their workloads
-            // Test nodes will less number of executed tests will appear first
-            List<TestNode> tempTestNodes = new ArrayList<TestNode>(testNodes);
-            Collections.sort(tempTestNodes);
-            testNodes = new ConcurrentLinkedQueue<TestNode>(tempTestNodes);
+            // Test nodes are taken in the order of their workloads, kept up to date by the test nodes themselves,
+            // so test nodes with less number of executed tests will appear first
 
             List<TestMonitor> resolvedTestRestartRequests = new ArrayList<TestMonitor>(0);
 
@@ -2237,18 +2344,11 @@ public class TestAutomationService extends Thread {
                     //List<List<Pattern>> patternsForRequiredEnvironments = testMonitor.getPatternsForRequiredEnvironments();
                     List<List<Pattern>> patternsForRequiredEnvironments = new ArrayList<List<Pattern>>(0);
                     
-                    // Create lists of regular expressions describing all required environments
+                    // Take patterns describing all required environments from the cache, since restarts are tried over and over again
                     for (String environment : requiredEnvironments) {
-                        List<String> regularExpressions = Util.createRegularExpressions(environment);
-                        if (regularExpressions != null && !regularExpressions.isEmpty()) {
-
-                            // Turn regular expressions into patterns
-                            List<Pattern> patterns = new ArrayList<Pattern>(0);
-
-                            for (String regularExpression : regularExpressions) {
-                                patterns.add(Pattern.compile(regularExpression));
-                            }
+                        List<Pattern> patterns = requirementCache.get(environment).getPatterns();
 
+                        if (!patterns.isEmpty()) {
                             patternsForRequiredEnvironments.add(patterns);
                         }
                     }
@@ -2276,7 +2376,7 @@ public class TestAutomationService extends Thread {
                         List<TestNode> availableTestNodes = new ArrayList<TestNode>(0);
                         List<List<Product>> availableFreeProducts = new ArrayList<List<Product>>(0);
 
-                        for (TestNode testNode : testNodes) {
+                        for (TestNode testNode : testNodeLoadIndex.getElements()) {
                             if (!testNode.isMaintenanceMode()) {
                                 long capacity = maximalNumberOfTestsPerNode - testNode.getNumberOfRunningTests();
 
@@ -2304,6 +2404,9 @@ public class TestAutomationService extends Thread {
                                 List<Pattern> patterns = patternsForRequiredEnvironments.get(i);
                                 String requiredEnvironment = requiredEnvironments.get(i);
 
+                                // Get required product patterns compiled for searches in the product indexes of test nodes
+                                List<ProductIndex.Requirement> requirements = requirementCache.get(requiredEnvironment).getRequirements();
+
                                 p("Test '" + testToBeRestarted.getRuntimeId() + "' has requested a product set pattern #" + (i + 1) + "/" + patternsForRequiredEnvironments.size() + ": '" + requiredEnvironment + "'");
 
                                 // Right now a single environment set must be allocated from the same test node
@@ -2332,10 +2435,6 @@ public class TestAutomationService extends Thread {
                                 List<TestNode> matchingTestNodes = new ArrayList<TestNode>(0);
                                 List<List<Product>> matchingProductSets = new ArrayList<List<Product>>(0);
 
-                                // Sort available test nodes according to their current workloads,
-                                // so that less buzy test nodes will appear first
-                                Collections.sort(availableTestNodes);
-
                                 // Go through all capable and available test nodes
                                 for (int tn = 0; tn < availableTestNodes.size(); tn++) {
                                     TestNode testNode = availableTestNodes.get(tn);
@@ -2343,78 +2442,67 @@ public class TestAutomationService extends Thread {
 
                                     // Each pattern stands for a single required product or some complementary physical device
                                     if (freeProducts.size() >= patterns.size()) {
-                                        // Get current capacity once more
+                                        // Find products matching each of required product patterns
+                                        List<Set<String>> matchingProducts = new ArrayList<Set<String>>(requirements.size());
+
+                                        for (ProductIndex.Requirement requirement : requirements) {
+                                            matchingProducts.add(testNode.getMatchingProducts(requirement));
+                                        }
+
+                                        // Get current capacity once more
                                         long capacity = maximalNumberOfTestsPerNode - testNode.getNumberOfRunningTests();
 
-                                        do {
-                                            // Try to find a matching set of all required products or complementary physical devices
-                                            List<Product> currentMatchingProductSet = new ArrayList<Product>(0);
-
-                                            // Check each of required product patterns
-                                            for (int j = 0; j < patterns.size(); j++) {
-                                                Pattern pattern = patterns.get(j);
-
-                                                for (Product product : freeProducts) {
-                                                    if (pattern.matcher(product.getNameValuePairs()).matches()) {
-                                                        // We've got a product which matches required pattern
-                                                        // Now we must ensure that product isn't already taken by some other matching set
-                                                        boolean canAdd = true;
-
-                                                        for (List<List<Product>> finalProductSetMatch : finalProductSetMatches) {
-                                                            for (List<Product> finalProductSet : finalProductSetMatch) {
-                                                                if (finalProductSet.contains(product)) {
-                                                                    // This product is already taken by some product set
-                                                                    canAdd = false;
-                                                                    break;
-                                                                }
-                                                            }
-                                                        }
-
-                                                        if (canAdd) {
-                                                            // If this product isn't yet taken, ensure that we don't have any dublicates
-                                                            if (!currentMatchingProductSet.contains(product)) {
-                                                                currentMatchingProductSet.add(product);
-                                                                // A match for current pattern is found, now move to the next pattern
-                                                                break;
-                                                            }
-                                                        }
-                                                    }
-                                                }
-                                            }
+                                        // Products already taken by other product sets of the test can't be used again
+                                        List<Product> untakenProducts = new ArrayList<Product>(freeProducts.size());
 
-                                            if (currentMatchingProductSet.size() == patterns.size()) {
-                                                // Current product set has got maches for all required patterns
+                                        for (Product product : freeProducts) {
+                                            boolean isTaken = false;
 
-                                                // Remove matching products from the list of free products
-                                                for (Product match : currentMatchingProductSet) {
-                                                    if (freeProducts.contains(match)) {
-                                                        freeProducts.remove(match);
+                                            for (List<List<Product>> finalProductSetMatch : finalProductSetMatches) {
+                                                for (List<Product> finalProductSet : finalProductSetMatch) {
+                                                    if (finalProductSet.contains(product)) {
+                                                        // This product is already taken by some product set
+                                                        isTaken = true;
+                                                        break;
                                                     }
                                                 }
+                                            }
 
-                                                // Add current match to the list of final matches
-                                                matchingProductSets.add(currentMatchingProductSet);
-                                                // Also remember on which test node this product set is available
-                                                matchingTestNodes.add(testNode);
-
-                                                // A single matching environment set means a single test: either the whole test or a splitted one
-                                                totalNumberOfAvailableEnvironments++;
-                                                capacity--;
-
-                                                if (totalNumberOfAvailableEnvironments >= maximalNumberOfRequestedEnvironments) {
-                                                    // We've discovered just enough of required product sets
-                                                    p("Test '" + testToBeRestarted.getRuntimeId() + "' has got " + totalNumberOfAvailableEnvironments
-                                                        + " (enough) product sets for required product set pattern #" + (i + 1) + "/" + patternsForRequiredEnvironments.size()
-                                                        + ": '" + requiredEnvironment + "' on test node " + testNode.getHostnameAndPort());
-                                                    break;
-                                                }
-                                            } else {
-                                                // Move to the next test node
-                                                p("Test '" + testToBeRestarted.getRuntimeId() + "' couldn't get enough matches for required environment '"
-                                                    + requiredEnvironment + "' on test node " + testNode.getHostnameAndPort());
-                                                break;
+                                            if (!isTaken) {
+                                                untakenProducts.add(product);
                                             }
-                                        } while (capacity > 0 && freeProducts.size() >= patterns.size());
+                                        }
+
+                                        // Try to find as many sets of all required products or complementary physical devices as the test node can run at once,
+                                        // by matching all of them together instead of taking the first matching product for each of the patterns
+                                        long maximalNumberOfProductSets = Math.min(Math.max(capacity, 1L), maximalNumberOfRequestedEnvironments - totalNumberOfAvailableEnvironments);
+                                        List<List<Product>> currentMatchingProductSets = new ProductSetMatcher(matchingProducts, untakenProducts).findProductSets(maximalNumberOfProductSets);
+
+                                        for (List<Product> currentMatchingProductSet : currentMatchingProductSets) {
+                                            // Current product set has got maches for all required patterns
+
+                                            // Remove matching products from the list of free products
+                                            freeProducts.removeAll(currentMatchingProductSet);
+
+                                            // Add current match to the list of final matches
+                                            matchingProductSets.add(currentMatchingProductSet);
+                                            // Also remember on which test node this product set is available
+                                            matchingTestNodes.add(testNode);
+
+                                            // A single matching environment set means a single test: either the whole test or a splitted one
+                                            totalNumberOfAvailableEnvironments++;
+                                        }
+
+                                        if (totalNumberOfAvailableEnvironments >= maximalNumberOfRequestedEnvironments) {
+                                            // We've discovered just enough of required product sets
+                                            p("Test '" + testToBeRestarted.getRuntimeId() + "' has got " + totalNumberOfAvailableEnvironments
+                                                + " (enough) product sets for required product set pattern #" + (i + 1) + "/" + patternsForRequiredEnvironments.size()
+                                                + ": '" + requiredEnvironment + "' on test node " + testNode.getHostnameAndPort());
+                                        } else {
+                                            // Move to the next test node
+                                            p("Test '" + testToBeRestarted.getRuntimeId() + "' got " + currentMatchingProductSets.size() + " product sets and couldn't get more matches for required environment '"
+                                                + requiredEnvironment + "' on test node " + testNode.getHostnameAndPort());
+                                        }
                                     } else {
                                         p("Test '" + testToBeRestarted.getRuntimeId() + "' couldn't get enough of products from the test node " + testNode.getHostnameAndPort()
                                             + " - Test node has " + freeProducts.size() + " free products and " + patterns.size() + " were required at minimum");
@@ -2458,7 +2546,7 @@ public class TestAutomationService extends Thread {
                         }
                     } else if (target == Test.Target.NOSE) {
                         // Nose target doesn't require any physical products or complementary physical devices, but just test nodes
-                        for (TestNode testNode : testNodes) {
+                        for (TestNode testNode : testNodeLoadIndex.getElements()) {
                             if (!testNode.isMaintenanceMode()) {
                                 long capacity = maximalNumberOfTestsPerNode - testNode.getNumberOfRunningTests();
 
@@ -2737,6 +2825,76 @@ public class TestAutomationService extends Thread {
         return configuration;
     }
 
+    /**
+     * Returns shared runtime of the Test Automation Service entities.
+     *
+     * @return Shared runtime of the Test Automation Service entities
+     */
+    public ActorRuntime getRuntime() {
+        return runtime;
+    }
+
+    /**
+     * Returns runtime sending messages to test nodes and remote clients.
+     *
+     * @return Runtime sending messages to test nodes and remote clients
+     */
+    public ActorRuntime getIORuntime() {
+        return ioRuntime;
+    }
+
+    /**
+     * Returns timing wheel keeping timeouts of the Test Automation Service entities.
+     *
+     * @return Timing wheel keeping timeouts of the Test Automation Service entities
+     */
+    public TimingWheel getTimingWheel() {
+        return timingWheel;
+    }
+
+    /**
+     * Makes the main loop try to resolve product requests right away, instead of waiting for the next periodic attempt.
+     * Should be called each time when products or test nodes are released, or new requests are issued.
+     */
+    public void resolveProductRequestsAtOnce() {
+        synchronized (productRequestResolvingLock) {
+            isProductRequestResolvingRequested = true;
+            productRequestResolvingLock.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until product requests should be resolved, either on request or when the next periodic attempt is due.
+     *
+     * @return True if periodic attempt is due or false otherwise
+     * @throws InterruptedException If waiting was interrupted
+     */
+    private boolean waitForProductRequestResolving() throws InterruptedException {
+        boolean isRequested = false;
+
+        synchronized (productRequestResolvingLock) {
+            long timeLeft = timeOfLastProductRequestResolvings + Constant.FIFTEEN_SECONDS - System.currentTimeMillis();
+
+            while (!isProductRequestResolvingRequested && timeLeft > 0L) {
+                productRequestResolvingLock.wait(timeLeft);
+                timeLeft = timeOfLastProductRequestResolvings + Constant.FIFTEEN_SECONDS - System.currentTimeMillis();
+            }
+
+            isRequested = isProductRequestResolvingRequested;
+        }
+
+        if (isRequested) {
+            // Let the requests coming one after another to be resolved together
+            sleep(PRODUCT_REQUEST_RESOLVING_DELAY);
+
+            synchronized (productRequestResolvingLock) {
+                isProductRequestResolvingRequested = false;
+            }
+        }
+
+        return (System.currentTimeMillis() - timeOfLastProductRequestResolvings) >= Constant.FIFTEEN_SECONDS;
+    }
+
     /**
      * Returns current statistics from the Test Automation Service.
      *
@@ -2746,6 +2904,520 @@ public class TestAutomationService extends Thread {
         return statistics;
     }
 
+    /**
+     * Returns durations of executed test packages.
+     *
+     * @return Durations of executed test packages
+     */
+    public TestPackageDurations getTestPackageDurations() {
+        return testPackageDurations;
+    }
+
+    /**
+     * Returns products kept for waiting tests and predicted finishing times of running tests.
+     *
+     * @return Backfill schedule of the Test Automation Service
+     */
+    public BackfillSchedule getBackfillSchedule() {
+        return backfillSchedule;
+    }
+
+    /**
+     * Returns compiled product requirements of recently used environment specifications.
+     *
+     * @return Requirement cache of the Test Automation Service
+     */
+    public RequirementCache getRequirementCache() {
+        return requirementCache;
+    }
+
+    /**
+     * Returns test nodes ordered by their workloads.
+     *
+     * @return Load index of test nodes
+     */
+    public LoadIndex<TestNode> getTestNodeLoadIndex() {
+        return testNodeLoadIndex;
+    }
+
+    /**
+     * Returns predicted duration of a waiting test, which is the known duration of all its test packages
+     * or the remaining time of the test, whichever is shorter.
+     *
+     * @param testMonitor Monitor of the waiting test
+     * @return Predicted duration of the test in milliseconds
+     */
+    private long getPredictedDuration(TestMonitor testMonitor) {
+        Test test = testMonitor.getTest();
+        long predictedDuration = Math.max(test.getTimeout() - (System.currentTimeMillis() - testMonitor.getTestHandlingStartTime()), 0L);
+
+        List<TestPackage> testPackages = new ArrayList<TestPackage>(test.getTestPackages());
+
+        if (testPackages.isEmpty()) {
+            // Tests without packages are executed as a single virtual package
+            testPackages.add(new TestPackage(test.getId()));
+        }
+
+        long knownDuration = testPackageDurations.getDuration(test.getId(), testPackages);
+
+        if (knownDuration >= 0L && knownDuration < predictedDuration) {
+            predictedDuration = knownDuration;
+        }
+
+        return predictedDuration;
+    }
+
+    /**
+     * Searches the test farm for product sets matching the environments required by specified test.
+     * Nothing is reserved here, so the same search could be done for the tests of different shards in parallel.
+     *
+     * @param testMonitor Monitor of the waiting test
+     * @param plannedProducts IMEI codes of the products already planned for other tests, which couldn't be taken again
+     * @param plannedTests Numbers of other tests already planned on the test nodes
+     * @return Found product sets, for each of found environments
+     */
+    private AllocationPlan findProductSets(TestMonitor testMonitor, Set<String> plannedProducts, Map<TestNode, Long> plannedTests) {
+        Test test = testMonitor.getTest();
+        List<String> requiredEnvironments = testMonitor.getRequiredEnvironments();
+        List<List<Pattern>> patternsForRequiredEnvironments = testMonitor.getPatternsForRequiredEnvironments();
+        long maximalNumberOfTestsPerNode = configuration.getMaximalNumberOfTestsPerNode();
+        boolean isGangReservation = configuration.isGangReservation();
+
+        List<List<TestNode>> finalTestNodeMatches = new ArrayList<List<TestNode>>(0);
+        List<List<List<Product>>> finalProductSetMatches = new ArrayList<List<List<Product>>>(0);
+
+        // Products of the found product sets are held softly until the test is launched, so that the same search could take them back
+        Set<Product> softlyReservedProducts = new HashSet<Product>();
+
+        // Find out all test nodes which has some free products
+        List<TestNode> availableTestNodes = new ArrayList<TestNode>(0);
+        List<List<Product>> availableFreeProducts = new ArrayList<List<Product>>(0);
+
+        // Products kept for some earlier waiting test could be used only if this test is predicted to release them in time
+        long predictedEndTime = backfillSchedule.hasReservation() ? System.currentTimeMillis() + getPredictedDuration(testMonitor) : 0L;
+
+        for (TestNode testNode : testNodeLoadIndex.getElements()) {
+            if (!testNode.isMaintenanceMode()) {
+                long capacity = maximalNumberOfTestsPerNode - testNode.getNumberOfRunningTests() - getNumberOfPlannedTests(testNode, plannedTests);
+
+                if (capacity > 0) {
+                    // This test node is able to execute some more tests
+                    List<Product> freeProducts = new ArrayList<Product>(0);
+
+                    for (Product product : testNode.getFreeProducts()) {
+                        if (!plannedProducts.contains(product.getIMEI()) && backfillSchedule.isAvailable(product, predictedEndTime)) {
+                            freeProducts.add(product);
+                        }
+                    }
+
+                    if (!freeProducts.isEmpty()) {
+                        // This test node has some free products
+                        availableTestNodes.add(testNode);
+                        availableFreeProducts.add(freeProducts);
+                    }
+                }
+            } else {
+                p("Test node " + testNode.getHostnameAndPort() + " is in the maintenance mode and cannot be used");
+            }
+        }
+
+        p("Test farm has " + availableTestNodes.size() + " capable test nodes");
+
+        // Test farm has some capable test nodes
+        if (!availableTestNodes.isEmpty()) {
+            // Try to search for each of environments required by the test
+            for (int i = 0; i < patternsForRequiredEnvironments.size(); i++) {
+                List<Pattern> patterns = patternsForRequiredEnvironments.get(i);
+                String requiredEnvironment = requiredEnvironments.get(i);
+
+                // Get required product patterns compiled for searches in the product indexes of test nodes
+                List<ProductIndex.Requirement> requirements = requirementCache.get(requiredEnvironment).getRequirements();
+
+                p("Test '" + test.getId() + "' has requested a product set pattern #" + (i + 1) + "/" + patternsForRequiredEnvironments.size() + ": '" + requiredEnvironment + "'");
+
+                // Right now a single environment set must be allocated from the same test node
+                // But since the same test may require many different environment sets,
+                // the same test could be splitted across many different test nodes
+
+                // Find out the number of test packages requiring current environment
+                int maximalNumberOfRequestedEnvironments = 0;
+                int totalNumberOfAvailableEnvironments = 0;
+
+                if (test.getNumberOfTestPackages() > 0) {
+                    List<TestPackage> testPackages = test.getTestPackages();
+                    for (TestPackage testPackage : testPackages) {
+                        if (testPackage.getRequiredEnvironment().equalsIgnoreCase(requiredEnvironment)) {
+                            // One more package has requested current environment
+                            maximalNumberOfRequestedEnvironments++;
+                        }
+                    }
+                } else {
+                    maximalNumberOfRequestedEnvironments = 1; // One and the same environment for the whole test
+                }
+
+                p("Test '" + test.getId() + "' has requested environment '" + requiredEnvironment + "' in " + maximalNumberOfRequestedEnvironments + " packages");
+
+                // Find test nodes and products sets that match current environment
+                List<TestNode> matchingTestNodes = new ArrayList<TestNode>(0);
+                List<List<Product>> matchingProductSets = new ArrayList<List<Product>>(0);
+
+                // Go through all capable and available test nodes
+                for (int tn = 0; tn < availableTestNodes.size(); tn++) {
+                    TestNode testNode = availableTestNodes.get(tn);
+                    List<Product> freeProducts = availableFreeProducts.get(tn);
+
+                    // Each pattern stands for a single required product or some complementary physical device
+                    if (freeProducts.size() >= patterns.size()) {
+                        // Find products matching each of required product patterns
+                        List<Set<String>> matchingProducts = new ArrayList<Set<String>>(requirements.size());
+
+                        for (ProductIndex.Requirement requirement : requirements) {
+                            matchingProducts.add(testNode.getMatchingProducts(requirement));
+                        }
+
+                        // Get current capacity once more
+                        long capacity = maximalNumberOfTestsPerNode - testNode.getNumberOfRunningTests() - getNumberOfPlannedTests(testNode, plannedTests);
+
+                        // Products already taken by other product sets of the test can't be used again
+                        List<Product> untakenProducts = new ArrayList<Product>(freeProducts.size());
+
+                        for (Product product : freeProducts) {
+                            if (!softlyReservedProducts.contains(product)) {
+                                untakenProducts.add(product);
+                            }
+                        }
+
+                        // Try to find as many sets of all required products or complementary physical devices as the test node can run at once,
+                        // by matching all of them together instead of taking the first matching product for each of the patterns
+                        long maximalNumberOfProductSets = Math.min(Math.max(capacity, 1L), maximalNumberOfRequestedEnvironments - totalNumberOfAvailableEnvironments);
+                        List<List<Product>> currentMatchingProductSets = new ProductSetMatcher(matchingProducts, untakenProducts).findProductSets(maximalNumberOfProductSets);
+
+                        for (List<Product> currentMatchingProductSet : currentMatchingProductSets) {
+                            // Current product set has got maches for all required patterns
+
+                            // Remove matching products from the list of free products and hold them softly
+                            freeProducts.removeAll(currentMatchingProductSet);
+                            softlyReservedProducts.addAll(currentMatchingProductSet);
+
+                            // Add current match to the list of final matches
+                            matchingProductSets.add(currentMatchingProductSet);
+                            // Also remember on which test node this product set is available
+                            matchingTestNodes.add(testNode);
+
+                            // A single matching environment set means a single test: either the whole test or a splitted one
+                            totalNumberOfAvailableEnvironments++;
+                        }
+
+                        if (totalNumberOfAvailableEnvironments >= maximalNumberOfRequestedEnvironments) {
+                            // We've discovered just enough of required product sets
+                            p("Test '" + test.getId() + "' has got " + totalNumberOfAvailableEnvironments
+                                + " (enough) product sets for required product set pattern #" + (i + 1) + "/" + patternsForRequiredEnvironments.size()
+                                + ": '" + requiredEnvironment + "' on test node " + testNode.getHostnameAndPort());
+                        } else {
+                            // Move to the next test node
+                            p("Test '" + test.getId() + "' got " + currentMatchingProductSets.size() + " product sets and couldn't get more matches for required environment '"
+                                + requiredEnvironment + "' on test node " + testNode.getHostnameAndPort());
+                        }
+                    } else {
+                        p("Test '" + test.getId() + "' couldn't get enough of products from the test node " + testNode.getHostnameAndPort()
+                            + " - Test node has " + freeProducts.size() + " free products and " + patterns.size() + " were required at minimum");
+                    }
+
+                    if (totalNumberOfAvailableEnvironments >= maximalNumberOfRequestedEnvironments) {
+                        // We've discovered just enough of required product sets
+                        p("Test '" + test.getId() + "' got " + totalNumberOfAvailableEnvironments + " (enough) required product sets."
+                            + " Stop scanning test farm for a required product set pattern #" + (i + 1) + "/" + patternsForRequiredEnvironments.size()
+                            + ": '" + requiredEnvironment + "'");
+                        break;
+                    }
+                }
+
+                // Store discovered product sets and the corresponding test nodes
+                p("Test '" + test.getId() + "' finally got " + totalNumberOfAvailableEnvironments + " available product sets out of "
+                    + maximalNumberOfRequestedEnvironments + " requested, concerning the product set pattern #" + (i + 1) + "/" + patternsForRequiredEnvironments.size()
+                    + ": '" + requiredEnvironment + "'");
+
+                if (totalNumberOfAvailableEnvironments > 0) {
+                    // We've discovered at least one environment for the test
+                    // Store matches for required environment
+                    finalTestNodeMatches.add(matchingTestNodes);
+                    finalProductSetMatches.add(matchingProductSets);
+                } else {
+                    // Nothing was discovered at this time
+
+                    if (isGangReservation && patternsForRequiredEnvironments.size() > 1) {
+                        // All required environments are reserved together or none of them, so the rest of them are not needed
+                        p("Test '" + test.getId() + "' didn't get any matches for required environment '" + requiredEnvironment
+                            + "' and won't take any of other environments without it. Stop scanning the test farm...");
+                        break;
+                    }
+
+                    if (!finalProductSetMatches.isEmpty()) {
+                        // At least test farm has something to offer
+                        p("Test '" + test.getId() + "' didn't get any matches for required environment '" + requiredEnvironment + "'. Stop scanning the test farm...");
+                        // Stop any other discoveries
+                        break;
+                    }
+
+                    // Otherwise just continue searches till at least something will be discovered
+                }
+            }
+
+            if (isGangReservation && !finalProductSetMatches.isEmpty() && finalProductSetMatches.size() < patternsForRequiredEnvironments.size()) {
+                // Partially found environments would only keep products away from other tests, so take them back
+                p("Test '" + test.getId() + "' got product sets only for " + finalProductSetMatches.size() + " of " + patternsForRequiredEnvironments.size()
+                    + " required environments. Releasing " + softlyReservedProducts.size() + " softly reserved products...");
+
+                finalTestNodeMatches.clear();
+                finalProductSetMatches.clear();
+                softlyReservedProducts.clear();
+            }
+        }
+
+        return new AllocationPlan(!availableTestNodes.isEmpty(), finalTestNodeMatches, finalProductSetMatches);
+    }
+
+    /**
+     * Returns the number of tests planned on specified test node.
+     *
+     * @param testNode Test node
+     * @param plannedTests Numbers of tests planned on the test nodes
+     * @return Number of tests planned on the test node
+     */
+    private long getNumberOfPlannedTests(TestNode testNode, Map<TestNode, Long> plannedTests) {
+        Long numberOfPlannedTests = plannedTests.get(testNode);
+        return numberOfPlannedTests != null ? numberOfPlannedTests.longValue() : 0L;
+    }
+
+    /**
+     * Searches product sets for the waiting tests of different RM codes in parallel.
+     * Tests of each shard are searched one after another in their waiting order, as if all the earlier tests of the shard were launched,
+     * while cross-shard tests are left to the serial allocation.
+     * Search is done only if there are several shards and several processors to share them.
+     * Plans of the shards which are not searched in time are dropped, and their tests are left to the serial allocation.
+     *
+     * @return Allocation plans of the sharded tests, or an empty map if nothing was searched in parallel
+     */
+    private Map<TestMonitor, AllocationPlan> planAllocations() {
+        final Map<TestMonitor, AllocationPlan> allocationPlans = new ConcurrentHashMap<TestMonitor, AllocationPlan>();
+
+        if (!configuration.isShardedAllocation() || Runtime.getRuntime().availableProcessors() < 2) {
+            return allocationPlans;
+        }
+
+        AllocationShards<TestMonitor> allocationShards = new AllocationShards<TestMonitor>();
+
+        for (TestMonitor testMonitor : testMonitorsWaitingForTestingResources) {
+            if (testMonitor.getTest().getTarget() == Test.Target.FLASH) {
+                List<ProductIndex.Requirement> requirements = new ArrayList<ProductIndex.Requirement>(0);
+
+                for (String requiredEnvironment : testMonitor.getRequiredEnvironments()) {
+                    requirements.addAll(requirementCache.get(requiredEnvironment).getRequirements());
+                }
+
+                if (!requirements.isEmpty()) {
+                    allocationShards.add(testMonitor, requirements);
+                }
+            }
+        }
+
+        if (allocationShards.getNumberOfShards() < 2) {
+            return allocationPlans;
+        }
+
+        p("Searching product sets for " + allocationShards.getNumberOfShards() + " shards of waiting tests in parallel, "
+            + allocationShards.getCrossShardRequests().size() + " cross-shard tests are left for the serial allocation");
+
+        List<List<TestMonitor>> shards = allocationShards.getShards();
+        final CountDownLatch finishedShards = new CountDownLatch(shards.size() - 1);
+        final AtomicBoolean isWaitingForShards = new AtomicBoolean(true);
+
+        for (int i = 1; i < shards.size(); i++) {
+            final List<TestMonitor> shard = shards.get(i);
+
+            allocationRuntime.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Map<TestMonitor, AllocationPlan> shardAllocationPlans = new HashMap<TestMonitor, AllocationPlan>();
+                        planShardAllocations(shard, shardAllocationPlans);
+
+                        // Plans of a shard are taken all at once, and only while the service is still waiting for them
+                        synchronized (isWaitingForShards) {
+                            if (isWaitingForShards.get()) {
+                                allocationPlans.putAll(shardAllocationPlans);
+                            }
+                        }
+                    } finally {
+                        finishedShards.countDown();
+                    }
+                }
+            });
+        }
+
+        // The first shard is searched by the service itself
+        planShardAllocations(shards.get(0), allocationPlans);
+
+        boolean isInterrupted = false;
+
+        try {
+            if (!finishedShards.await(SHARDED_ALLOCATION_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                p("Searches of product sets for " + finishedShards.getCount() + " shards of waiting tests were not finished in "
+                    + Util.convert(SHARDED_ALLOCATION_TIMEOUT) + ", their tests are left for the serial allocation");
+            }
+        } catch (InterruptedException e) {
+            p("Got interrupted while waiting for the searches of product sets in parallel");
+            Thread.currentThread().interrupt();
+            isInterrupted = true;
+        }
+
+        // Shards finishing from now on are dropped
+        synchronized (isWaitingForShards) {
+            isWaitingForShards.set(false);
+        }
+
+        if (isInterrupted) {
+            allocationPlans.clear();
+        }
+
+        return allocationPlans;
+    }
+
+    /**
+     * Searches product sets for the waiting tests of a single shard, one after another.
+     *
+     * @param shard Waiting tests of the shard in their waiting order
+     * @param allocationPlans Allocation plans of the tests to be filled
+     */
+    private void planShardAllocations(List<TestMonitor> shard, Map<TestMonitor, AllocationPlan> allocationPlans) {
+        Set<String> plannedProducts = new HashSet<String>();
+        Map<TestNode, Long> plannedTests = new HashMap<TestNode, Long>();
+
+        for (TestMonitor testMonitor : shard) {
+            try {
+                AllocationPlan allocationPlan = findProductSets(testMonitor, plannedProducts, plannedTests);
+                List<List<TestNode>> testNodeMatches = allocationPlan.getTestNodeMatches();
+                List<List<List<Product>>> productSetMatches = allocationPlan.getProductSetMatches();
+
+                // Later tests of the shard are searched as if this one was already launched
+                for (int i = 0; i < productSetMatches.size(); i++) {
+                    for (int j = 0; j < productSetMatches.get(i).size(); j++) {
+                        TestNode testNode = testNodeMatches.get(i).get(j);
+
+                        for (Product product : productSetMatches.get(i).get(j)) {
+                            plannedProducts.add(product.getIMEI());
+                        }
+
+                        plannedTests.put(testNode, getNumberOfPlannedTests(testNode, plannedTests) + 1L);
+                    }
+                }
+
+                allocationPlans.put(testMonitor, allocationPlan);
+
+            } catch (Exception e) {
+                // Test will be searched once again by the serial allocation
+                p("Got troubles while tried to search product sets for the test '" + testMonitor.getTest().getId() + "' in parallel: " + e.getClass() + " " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Checks whenever allocation plan made in parallel could still be used by the serial allocation.
+     * Test nodes must still have capacity for the planned tests, and products must still be free
+     * and not kept for the tests which have got their products kept since the plan was made.
+     *
+     * @param testMonitor Monitor of the waiting test
+     * @param allocationPlan Allocation plan of the test
+     * @return True if plan could be used as it is, or false if test farm should be searched once again
+     */
+    private boolean isAllocationPlanValid(TestMonitor testMonitor, AllocationPlan allocationPlan) {
+        if (!allocationPlan.hasCapableTestNodes()) {
+            // Only the current test farm could tell to stop the allocation
+            return false;
+        }
+
+        long maximalNumberOfTestsPerNode = configuration.getMaximalNumberOfTestsPerNode();
+        long predictedEndTime = backfillSchedule.hasReservation() ? System.currentTimeMillis() + getPredictedDuration(testMonitor) : 0L;
+        Map<TestNode, Long> plannedTests = new HashMap<TestNode, Long>();
+
+        List<List<TestNode>> testNodeMatches = allocationPlan.getTestNodeMatches();
+        List<List<List<Product>>> productSetMatches = allocationPlan.getProductSetMatches();
+
+        for (int i = 0; i < productSetMatches.size(); i++) {
+            for (int j = 0; j < productSetMatches.get(i).size(); j++) {
+                TestNode testNode = testNodeMatches.get(i).get(j);
+                long numberOfPlannedTests = getNumberOfPlannedTests(testNode, plannedTests) + 1L;
+
+                if (testNode.isMaintenanceMode() || testNode.getNumberOfRunningTests() + numberOfPlannedTests > maximalNumberOfTestsPerNode) {
+                    return false;
+                }
+
+                plannedTests.put(testNode, numberOfPlannedTests);
+
+                for (Product product : productSetMatches.get(i).get(j)) {
+                    if (!testNode.isFreeProduct(product.getIMEI()) || !backfillSchedule.isAvailable(product, predictedEndTime)) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Keeps the set of products, which is predicted to be free as soon as possible, for a waiting test requiring several products at once.
+     * Products are kept for the first of required environments having several product patterns.
+     *
+     * @param testMonitor Monitor of the waiting test
+     */
+    private void reserveFutureProducts(TestMonitor testMonitor) {
+        Test test = testMonitor.getTest();
+        long currentTime = System.currentTimeMillis();
+
+        for (String requiredEnvironment : testMonitor.getRequiredEnvironments()) {
+            List<ProductIndex.Requirement> requirements = requirementCache.get(requiredEnvironment).getRequirements();
+
+            if (requirements.size() < 2) {
+                // Single products are released often enough
+                continue;
+            }
+
+            TestNode earliestTestNode = null;
+            List<Product> earliestProductSet = null;
+            long earliestStartTime = Long.MAX_VALUE;
+
+            for (TestNode testNode : testNodes) {
+                if (!testNode.isMaintenanceMode()) {
+                    List<Set<String>> matchingProducts = new ArrayList<Set<String>>(requirements.size());
+
+                    for (ProductIndex.Requirement requirement : requirements) {
+                        matchingProducts.add(testNode.getMatchingProducts(requirement));
+                    }
+
+                    List<Product> productSet = backfillSchedule.findEarliestProductSet(matchingProducts, new ArrayList<Product>(testNode.getProducts()), currentTime);
+
+                    if (productSet != null) {
+                        long startTime = backfillSchedule.getPredictedStartTime(productSet, currentTime);
+
+                        if (startTime < earliestStartTime) {
+                            earliestTestNode = testNode;
+                            earliestProductSet = productSet;
+                            earliestStartTime = startTime;
+                        }
+                    }
+                }
+            }
+
+            if (earliestProductSet != null) {
+                backfillSchedule.reserve(test.getId(), earliestProductSet, earliestStartTime);
+                p("Test '" + test.getId() + "' has got " + earliestProductSet.size() + " products kept on test node " + earliestTestNode.getHostnameAndPort()
+                    + " since " + Util.convert(earliestStartTime - currentTime) + " from now. Only shorter tests will be backfilled into them meanwhile");
+                return;
+            }
+        }
+    }
+
     /**
      * Returns current status of the whole Test Automation Service in textual form.
      *
@@ -2907,14 +3579,22 @@ public class TestAutomationService extends Thread {
             } else {
                 status.append("<tr><td>\n<blockquote>\n");
 
-                for (TestMonitor current : testMonitorsWaitingForTestingResources) {
+                // Tests are listed in the order they will get testing resources
+                List<TestMonitor> queue = testMonitorsWaitingForTestingResources.getQueue();
+
+                for (int position = 0; position < queue.size(); position++) {
+                    TestMonitor current = queue.get(position);
                     Test currentTest = current.getTest();
 
+                    status.append((position + 1) + ". ");
+
                     if (!currentTest.getURL().isEmpty()) {
-                        status.append("<a href=\"" + currentTest.getURL() + "\" target=\"_blank\">" + currentTest.getId() + "</a><br/>\n");
+                        status.append("<a href=\"" + currentTest.getURL() + "\" target=\"_blank\">" + currentTest.getId() + "</a>");
                     } else {
-                        status.append("<b>" + currentTest.getId() + "</b><br/>\n");
+                        status.append("<b>" + currentTest.getId() + "</b>");
                     }
+
+                    status.append(" from " + FairShareSchedulingPolicy.getClient(current) + ", priority " + currentTest.getPriority() + "<br/>\n");
                 }
 
                 status.append("\n</blockquote>\n</td></tr>\n\n");
@@ -2922,6 +3602,46 @@ public class TestAutomationService extends Thread {
 
             status.append("<tr><td>&nbsp;</td></tr>\n\n");
 
+            // Tell how device time was shared between remote clients
+            status.append("<tr><td>Device hours used by remote clients (" + testMonitorsWaitingForTestingResources.getName() + " scheduling):</td></tr>\n\n");
+
+            Map<String, Long> totalDeviceTimes = deviceTimeUsage.getTotalDeviceTimes();
+            long totalDeviceTime = 0L;
+
+            for (Long clientDeviceTime : totalDeviceTimes.values()) {
+                totalDeviceTime += clientDeviceTime.longValue();
+            }
+
+            if (totalDeviceTime <= 0L) {
+                status.append("<tr><td>\n<blockquote>\n<b>None</b>\n</blockquote>\n</td></tr>\n\n");
+            } else {
+                status.append("<tr><td>\n<blockquote>\n");
+
+                for (Map.Entry<String, Long> clientDeviceTime : totalDeviceTimes.entrySet()) {
+                    status.append(clientDeviceTime.getKey() + ": " + String.format("%.2f", (double) clientDeviceTime.getValue() / Constant.ONE_HOUR) + " device hours ("
+                        + (100L * clientDeviceTime.getValue() / totalDeviceTime) + "%)<br/>\n");
+                }
+
+                status.append("\n</blockquote>\n</td></tr>\n\n");
+            }
+
+            status.append("<tr><td>&nbsp;</td></tr>\n\n");
+
+            // Tell how quickly waiting tests get their products
+            status.append("<tr><td>Time to allocation of " + allocationLatency.getNumberOfAllocations() + " allocated tests: average "
+                + Util.convert(allocationLatency.getAverageTime()) + ", maximal " + Util.convert(allocationLatency.getMaximalTime())
+                + "; recent median " + Util.convert(allocationLatency.getRecentPercentile(50))
+                + ", recent 95th percentile " + Util.convert(allocationLatency.getRecentPercentile(95)) + "</td></tr>\n\n");
+
+            status.append("<tr><td>&nbsp;</td></tr>\n\n");
+
+            // Tell how well compiled product requirements are reused
+            status.append("<tr><td>Compiled environment specifications: " + requirementCache.size() + " of " + requirementCache.getCapacity()
+                + ", hit rate " + String.format("%.1f", 100.0 * requirementCache.getHitRate()) + "% (" + requirementCache.getNumberOfHits() + " hits, "
+                + requirementCache.getNumberOfMisses() + " misses, " + requirementCache.getNumberOfEvictions() + " evictions)</td></tr>\n\n");
+
+            status.append("<tr><td>&nbsp;</td></tr>\n\n");
+
             // Show utilization statistics
             long currentTime = System.currentTimeMillis();
 
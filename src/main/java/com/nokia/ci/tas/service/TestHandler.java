@@ -11,9 +11,12 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 
 import java.util.logging.Logger;
 
+import com.nokia.ci.tas.commons.Actor;
 import com.nokia.ci.tas.commons.Constant;
 import com.nokia.ci.tas.commons.Product;
 import com.nokia.ci.tas.commons.Test;
+import com.nokia.ci.tas.commons.TestPackage;
+import com.nokia.ci.tas.commons.TimingWheel;
 import com.nokia.ci.tas.commons.Util;
 
 import com.nokia.ci.tas.commons.message.Message;
@@ -24,7 +27,7 @@ import com.nokia.ci.tas.commons.statistics.Statistics;
 /**
  * Handler of a single Test performed by the Testing Automation Service.
  */
-public class TestHandler extends Thread {
+public class TestHandler extends Actor<Message> {
 
     /**
      * Current instance of the Test Automation Service.
@@ -56,11 +59,6 @@ public class TestHandler extends Thread {
      */
     private TestNode reservedTestNode;
 
-    /**
-     * Message pool for enabling asynchronous messaging.
-     */
-    private ConcurrentLinkedQueue<Message> messagePool;
-
     /**
      * Path to test workspace on the side of Test Automation Service.
      */
@@ -86,6 +84,16 @@ public class TestHandler extends Thread {
      */
     private boolean isRunning = true;
 
+    /**
+     * Tells whenever test handler is still waiting for test's start on the test node.
+     */
+    private boolean isWaitingForTestStart = true;
+
+    /**
+     * Tells whenever test has successfully finished on the test node.
+     */
+    private boolean isTestFinished = false;
+
     /**
      * Tells whenever test is failed or not.
      */
@@ -111,11 +119,41 @@ public class TestHandler extends Thread {
      */
     private long testHandlingStartedAt = 0L;
 
+    /**
+     * Timeout of the test registered in the timing wheel.
+     */
+    private TimingWheel.Timeout testTimeout = null;
+
+    /**
+     * Tells whenever the test timeout has expired.
+     */
+    private volatile boolean isTestExpired = false;
+
     /**
      * Moment of time when test execution has actually started on the test node.
      */
     private long testExecutionOnTestNodeStartedAt = 0L;
 
+    /**
+     * Test packages executed by the test or null if they are unknown.
+     */
+    private List<TestPackage> testPackages = null;
+
+    /**
+     * Number of devices used by the test, which is at least one even if test is using only the test node.
+     */
+    private long numberOfDevices = 0L;
+
+    /**
+     * Device time the issuer of the test was charged with when test was launched, in milliseconds.
+     */
+    private long chargedDeviceTime = 0L;
+
+    /**
+     * Moment of time when the issuer of the test was charged with expected device time.
+     */
+    private long chargedAt = 0L;
+
     /**
      * Current configuration of the Test Automation Service.
      */
@@ -148,7 +186,7 @@ public class TestHandler extends Thread {
                        TestNode reservedTestNode,
                        List<Product> reservedProducts) {
 
-        super(test.getRuntimeId()); // Test handlers are always associated with test's runtime ids
+        super(test.getRuntimeId(), testAutomationService.getRuntime()); // Test handlers are always associated with test's runtime ids
 
         this.testAutomationService = testAutomationService;
         this.testMonitor = testMonitor;
@@ -158,16 +196,12 @@ public class TestHandler extends Thread {
         this.configuration = testAutomationService.getConfiguration();
         this.remoteClient = testMonitor.getRemoteClient();
 
-        messagePool = new ConcurrentLinkedQueue();
-
         listOfFilesToBeReceived = new ConcurrentLinkedQueue();
         listOfFilesToBeSend = new ConcurrentLinkedQueue();
 
         // Extract the following parameters to eliminate unnecessary method calls
         testAutomationServiceHostname = testAutomationService.getHostname();
         testAutomationServicePort = testAutomationService.getPort();
-
-        setPriority(MIN_PRIORITY); // Always run with minimal priority
     }
 
     /**
@@ -198,10 +232,34 @@ public class TestHandler extends Thread {
     }
 
     /**
-     * Run is implementation of a normal test handling on the side of Test Automation Service.
+     * Specifies test packages executed by the test, so that their durations could be updated when test is finished.
+     *
+     * @param testPackages Test packages executed by the test
+     */
+    public synchronized void setTestPackages(List<TestPackage> testPackages) {
+        this.testPackages = testPackages;
+    }
+
+    /**
+     * Charges the issuer of the test with device time the test is expected to use,
+     * which is the number of used devices multiplied by the remaining time of the test.
+     * The charge is corrected to the actual device time when test is finished.
+     */
+    public synchronized void chargeExpectedDeviceTime() {
+        chargedAt = System.currentTimeMillis();
+        numberOfDevices = Math.max(reservedProducts != null ? reservedProducts.size() : 0, 1);
+
+        long remainingTime = test.getTimeout() - (chargedAt - testMonitor.getTestHandlingStartTime());
+        chargedDeviceTime = numberOfDevices * Math.max(remainingTime, Constant.ONE_MINUTE);
+
+        testAutomationService.getDeviceTimeUsage().charge(FairShareSchedulingPolicy.getClient(testMonitor), chargedDeviceTime);
+    }
+
+    /**
+     * Starts handling of the test and sends a "start test" message to the test node.
      */
     @Override
-    public void run() {
+    protected void started() {
         p("Started handling test '" + test.getRuntimeId() + "':\n" + test.toString());
 
         // Always ensure test timeout
@@ -213,6 +271,15 @@ public class TestHandler extends Thread {
         // Always get synchronized with the test monitor about the time when test handling has started
         testHandlingStartedAt = testMonitor.getTestHandlingStartTime();
 
+        // Handler is woken up by messages from the test node or by expiration of the test timeout
+        testTimeout = testAutomationService.getTimingWheel().scheduleAt(new Runnable() {
+            @Override
+            public void run() {
+                isTestExpired = true;
+                wakeUp();
+            }
+        }, testHandlingStartedAt + test.getTimeout() + Constant.MILLISECOND);
+
         statisticsFile = testAutomationService.createStatisticsFile(test);
 
         if (statisticsFile != null) {
@@ -264,62 +331,6 @@ public class TestHandler extends Thread {
                     }
                 }
 
-                // Wait for any responses from the test node
-                while (isRunning) {
-                    try {
-                        if (!messagePool.isEmpty()) {
-                            Message message = messagePool.poll(); // Always get the first message
-
-                            if (message instanceof TestOperation) {
-                                TestOperation testOperation = (TestOperation) message;
-                                Test receivedTestUpdate = testOperation.getTest();
-
-                                if (receivedTestUpdate != null) {
-                                    if (receivedTestUpdate.getStatus() == Test.Status.STARTED) {
-                                        // Remember the time when test has started on the test node
-                                        testExecutionOnTestNodeStartedAt = System.currentTimeMillis();
-                                        test.setStartTime(testExecutionOnTestNodeStartedAt);
-                                        test.setStatus(Test.Status.STARTED, "");
-                                        isRunning = true;
-
-                                        p("Test '" + test.getRuntimeId() + "' has started on test node " + reservedTestNode.getHostnameAndPort());
-                                        testMonitor.notifyMonitorAboutStartedTest(test);
-
-                                        writeStatistics(Statistics.TEST_START_TIME_LABEL + Statistics.STATISTICS_LABEL_AND_TIME_SEPARATOR + testExecutionOnTestNodeStartedAt);
-                                        writeStatistics(Statistics.TEST_STARTUP_LABEL + reservedTestNode.getHostnameAndPort());
-                                    } else if (receivedTestUpdate.getStatus() == Test.Status.FAILED) {
-                                        isRunning = false;
-                                        testHasFailed = true;
-                                        reasonOfTestFailure = receivedTestUpdate.getStatusDetails();
-                                        test.setStatus(Test.Status.FAILED, reasonOfTestFailure);
-                                        p(reasonOfTestFailure);
-                                        writeStatistics(System.currentTimeMillis(), reasonOfTestFailure);
-                                    } else {
-                                        p("Got an unsupported message: " + message);
-                                    }
-                                }
-                            }
-
-                            break;
-                        }
-
-                        // Check timeout
-                        if (test.isExpired(testHandlingStartedAt)) {
-                            isRunning = false;
-                            testHasFailed = true;
-                            reasonOfTestFailure = "Got expiration of test's timeout (" + Util.convert(test.getTimeout())
-                                                  + ") during waiting for notification about test's start on the test node " + reservedTestNode.getHostnameAndPort();
-                            test.setStatus(Test.Status.FAILED, reasonOfTestFailure);
-                            p(reasonOfTestFailure);
-                        }
-
-                        sleep(Constant.ONE_SECOND); // Wait for any updates
-
-                    } catch (Exception e) {
-                        p("Got troubles while trying to start executing test '" + test.getRuntimeId() + "' on the test node " + reservedTestNode.getHostnameAndPort());
-                        e.printStackTrace();
-                    }
-                }
             } else {
                 // Fail the test
                 isRunning = false;
@@ -332,59 +343,151 @@ public class TestHandler extends Thread {
                 p(reasonOfTestFailure);
             }
         }
+    }
+
+    /**
+     * Run is implementation of a normal test handling on the side of Test Automation Service.
+     * Waits for "test started" or "test failed" messages, then for "test finished" or "test failed" messages,
+     * and finishes test handling when test is either finished or failed.
+     *
+     * @return True if test handler should continue working or false otherwise
+     */
+    @Override
+    protected boolean act() {
+        // 1. Wait for "test started" or "test failed" messages
+        if (isRunning && isWaitingForTestStart) {
+            try {
+                waitForTestStart();
+            } catch (Exception e) {
+                p("Got troubles while trying to start executing test '" + test.getRuntimeId() + "' on the test node " + reservedTestNode.getHostnameAndPort());
+                e.printStackTrace();
+            }
+        }
 
         // 2. If test was successfully started, wait until test executor on test node will send us a "test finished" or "test failed" messages
-        if (isRunning) {
-            // Wait for any responses from the test node
-            while (isRunning) {
-                try {
-                    if (!messagePool.isEmpty()) {
-                        Message message = messagePool.poll(); // Always get the first message
-
-                        if (message instanceof TestOperation) {
-                            TestOperation testOperation = (TestOperation) message;
-                            Test receivedTestUpdate = testOperation.getTest();
-
-                            if (receivedTestUpdate != null) {
-                                if (receivedTestUpdate.getStatus() == Test.Status.FINISHED) {
-                                    test.setStatus(Test.Status.FINISHED, "");
-                                    isRunning = true;
-                                    // Move to the next step
-                                    break;
-                                } else if (receivedTestUpdate.getStatus() == Test.Status.FAILED) {
-                                    isRunning = false;
-                                    testHasFailed = true;
-                                    reasonOfTestFailure = receivedTestUpdate.getStatusDetails();
-                                    test.setStatus(Test.Status.FAILED, reasonOfTestFailure);
-                                    p(reasonOfTestFailure);
-                                    // Move to the next step
-                                    break;
-                                } else {
-                                    p("Got an unsupported message: " + message);
-                                }
-                            }
-                        }
-                    }
+        if (isRunning && !isWaitingForTestStart && !isTestFinished) {
+            try {
+                waitForTestResults();
+            } catch (Exception e) {
+                p("Got troubles while trying to wait for test's '" + test.getRuntimeId() + "' results from the test node " + reservedTestNode.getHostnameAndPort());
+                e.printStackTrace();
+            }
+        }
 
-                    // Check timeout
-                    if (test.isExpired(testHandlingStartedAt)) {
+        if (isRunning && !isTestFinished) {
+            return true;
+        }
+
+        finishTest();
+
+        return false;
+    }
+
+    /**
+     * Handles a response to the "start test" message and checks test timeout.
+     */
+    private void waitForTestStart() {
+        Message message = nextMessage(); // Always get the first message
+
+        if (message != null) {
+            if (message instanceof TestOperation) {
+                TestOperation testOperation = (TestOperation) message;
+                Test receivedTestUpdate = testOperation.getTest();
+
+                if (receivedTestUpdate != null) {
+                    if (receivedTestUpdate.getStatus() == Test.Status.STARTED) {
+                        // Remember the time when test has started on the test node
+                        testExecutionOnTestNodeStartedAt = System.currentTimeMillis();
+                        test.setStartTime(testExecutionOnTestNodeStartedAt);
+                        test.setStatus(Test.Status.STARTED, "");
+                        isRunning = true;
+
+                        p("Test '" + test.getRuntimeId() + "' has started on test node " + reservedTestNode.getHostnameAndPort());
+                        testMonitor.notifyMonitorAboutStartedTest(test);
+
+                        writeStatistics(Statistics.TEST_START_TIME_LABEL + Statistics.STATISTICS_LABEL_AND_TIME_SEPARATOR + testExecutionOnTestNodeStartedAt);
+                        writeStatistics(Statistics.TEST_STARTUP_LABEL + reservedTestNode.getHostnameAndPort());
+                    } else if (receivedTestUpdate.getStatus() == Test.Status.FAILED) {
                         isRunning = false;
                         testHasFailed = true;
-                        reasonOfTestFailure = "Got expiration of test's timeout (" + Util.convert(test.getTimeout())
-                                              + ") during test execution on the test node " + reservedTestNode.getHostnameAndPort();
+                        reasonOfTestFailure = receivedTestUpdate.getStatusDetails();
                         test.setStatus(Test.Status.FAILED, reasonOfTestFailure);
                         p(reasonOfTestFailure);
+                        writeStatistics(System.currentTimeMillis(), reasonOfTestFailure);
+                    } else {
+                        p("Got an unsupported message: " + message);
                     }
+                }
+            }
 
-                    sleep(Constant.ONE_SECOND); // Wait for updates
+            isWaitingForTestStart = false;
+            return;
+        }
+
+        // Check timeout
+        if (isTestExpired) {
+            isRunning = false;
+            testHasFailed = true;
+            reasonOfTestFailure = "Got expiration of test's timeout (" + Util.convert(test.getTimeout())
+                                  + ") during waiting for notification about test's start on the test node " + reservedTestNode.getHostnameAndPort();
+            test.setStatus(Test.Status.FAILED, reasonOfTestFailure);
+            p(reasonOfTestFailure);
+        }
+    }
+
+    /**
+     * Handles results of the test received from the test node and checks test timeout.
+     */
+    private void waitForTestResults() {
+        Message message = null;
+
+        while ((message = nextMessage()) != null) {
+            if (message instanceof TestOperation) {
+                TestOperation testOperation = (TestOperation) message;
+                Test receivedTestUpdate = testOperation.getTest();
 
-                } catch (Exception e) {
-                    p("Got troubles while trying to wait for test's '" + test.getRuntimeId() + "' results from the test node " + reservedTestNode.getHostnameAndPort());
-                    e.printStackTrace();
+                if (receivedTestUpdate != null) {
+                    if (receivedTestUpdate.getStatus() == Test.Status.FINISHED) {
+                        test.setStatus(Test.Status.FINISHED, "");
+                        isRunning = true;
+                        isTestFinished = true;
+                        // Move to the next step
+                        return;
+                    } else if (receivedTestUpdate.getStatus() == Test.Status.FAILED) {
+                        isRunning = false;
+                        testHasFailed = true;
+                        reasonOfTestFailure = receivedTestUpdate.getStatusDetails();
+                        test.setStatus(Test.Status.FAILED, reasonOfTestFailure);
+                        p(reasonOfTestFailure);
+                        // Move to the next step
+                        return;
+                    } else {
+                        p("Got an unsupported message: " + message);
+                    }
                 }
             }
         }
 
+        // Check timeout
+        if (isTestExpired) {
+            isRunning = false;
+            testHasFailed = true;
+            reasonOfTestFailure = "Got expiration of test's timeout (" + Util.convert(test.getTimeout())
+                                  + ") during test execution on the test node " + reservedTestNode.getHostnameAndPort();
+            test.setStatus(Test.Status.FAILED, reasonOfTestFailure);
+            p(reasonOfTestFailure);
+        }
+    }
+
+    /**
+     * Releases test resources and notifies test monitor about finished or failed test.
+     */
+    private void finishTest() {
+        testTimeout.cancel();
+
+        // Test isn't predicted to keep its products anymore
+        testAutomationService.getBackfillSchedule().removePredictedEndTime(test.getRuntimeId());
+
         // At this point test is either finished or failed
         p("Handler of the test '" + test.getRuntimeId() + "' is finishing its work");
 
@@ -419,6 +522,11 @@ public class TestHandler extends Thread {
         } else {
             writeStatistics(Statistics.TEST_SUCCESS_LABEL + reservedTestNode.getHostnameAndPort());
 
+            // Remember how long executed test packages took
+            if (testPackages != null && testExecutionOnTestNodeStartedAt > 0L) {
+                testAutomationService.getTestPackageDurations().update(test.getId(), testPackages, System.currentTimeMillis() - testExecutionOnTestNodeStartedAt);
+            }
+
             // Free any reserved products if releasing mode was automatic
             if (test.getProductReleasingMode() == Test.ProductReleasingMode.MANUALLY_RELEASE_RESERVED_PRODUCTS) {
                 p("Skipping automatic releasing of reserved products, since test's product releasing mode was MANUAL");
@@ -442,6 +550,12 @@ public class TestHandler extends Thread {
             notifyAboutFinishedTest();
         }
 
+        // Correct the charged device time to the actual one
+        if (chargedAt > 0L) {
+            long usedDeviceTime = numberOfDevices * (System.currentTimeMillis() - chargedAt);
+            testAutomationService.getDeviceTimeUsage().charge(FairShareSchedulingPolicy.getClient(testMonitor), usedDeviceTime - chargedDeviceTime);
+        }
+
         // One running test less
         if (reservedTestNode != null) {
             reservedTestNode.decreaseNumberOfRunningTests(test, testHasFailed);
@@ -510,7 +624,7 @@ public class TestHandler extends Thread {
         listOfFilesToBeReceived.clear();
         listOfFilesToBeSend.clear();
 
-        notify();
+        wakeUp();
     }
 
     /**
@@ -518,13 +632,12 @@ public class TestHandler extends Thread {
      *
      * @param message A message to be handled
      */
-    public synchronized void handle(Message message) {
-        if (messagePool.add(message)) {
+    public void handle(Message message) {
+        if (tell(message)) {
             p("Test Handler for '" + getName() + "' got a message to handle:\n" + message);
         } else {
             p("Error: Couldn't add a message for handling:\n" + message);
         }
-        notify();
     }
 
     /**
@@ -600,7 +713,7 @@ public class TestHandler extends Thread {
      * @return True if test has expired or false otherwise
      */
     public boolean isTestExpired() {
-        return test.isExpired(testHandlingStartedAt);
+        return isTestExpired;
     }
 
     /**
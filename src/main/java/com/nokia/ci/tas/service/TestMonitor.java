@@ -8,18 +8,18 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
-
 import java.util.regex.Pattern;
 
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
+import com.nokia.ci.tas.commons.Actor;
 import com.nokia.ci.tas.commons.Constant;
 import com.nokia.ci.tas.commons.Product;
 import com.nokia.ci.tas.commons.Test;
 import com.nokia.ci.tas.commons.TestAutomationServiceListener;
 import com.nokia.ci.tas.commons.TestPackage;
+import com.nokia.ci.tas.commons.TimingWheel;
 import com.nokia.ci.tas.commons.Util;
 
 import com.nokia.ci.tas.commons.message.Message;
@@ -28,7 +28,7 @@ import com.nokia.ci.tas.commons.message.TestOperation;
 /**
  * Monitor of a single test performed by the Test Automation Service.
  */
-public class TestMonitor extends Thread {
+public class TestMonitor extends Actor<Message> {
 
     /**
      * Current instance of the Test Automation Service.
@@ -45,11 +45,6 @@ public class TestMonitor extends Thread {
      */
     private TestAutomationServiceListener listener;
 
-    /**
-     * Message pool for asynchronous messaging.
-     */
-    private ConcurrentLinkedQueue<Message> messagePool;
-
     /**
      * A list of tests to be restarted.
      */
@@ -72,6 +67,16 @@ public class TestMonitor extends Thread {
      */
     private boolean isRunning = true;
 
+    /**
+     * Tells whenever test monitor is ensuring the minimal duration for test executions before finishing its work.
+     */
+    private boolean isFinishing = false;
+
+    /**
+     * A moment of time when the minimal duration for test executions should be checked again.
+     */
+    private long timeOfNextMinimalDurationCheck = 0L;
+
     /**
      * Tells whenever the test has failed or not.
      */
@@ -97,6 +102,21 @@ public class TestMonitor extends Thread {
      */
     private long testHandlingStartedAt = 0L;
 
+    /**
+     * Timeout of the test registered in the timing wheel.
+     */
+    private TimingWheel.Timeout testTimeout = null;
+
+    /**
+     * Timeout of expectations for test resources registered in the timing wheel.
+     */
+    private TimingWheel.Timeout testResourcesExpectationTimeout = null;
+
+    /**
+     * Tells whenever the test timeout has expired.
+     */
+    private volatile boolean isTestExpired = false;
+
     /**
      * Current configuration of the Test Automation Service.
      */
@@ -179,7 +199,7 @@ public class TestMonitor extends Thread {
                        TestAutomationServiceListener listener,
                        boolean isRemoteListener) {
 
-        super(test.getId()); // Test monitor's name will be the same as test's id
+        super(test.getId(), testAutomationService.getRuntime()); // Test monitor's name will be the same as test's id
 
         this.testAutomationService = testAutomationService;
         this.test = test;
@@ -187,8 +207,6 @@ public class TestMonitor extends Thread {
         this.isRemoteListener = isRemoteListener;
         this.configuration = testAutomationService.getConfiguration();
 
-        messagePool = new ConcurrentLinkedQueue();
-
         nameValueGroupsForRequiredProducts = new ArrayList<String>(0);
         testHandlers = new ArrayList<TestHandler>(0);
 
@@ -205,15 +223,13 @@ public class TestMonitor extends Thread {
         timeOfLastListenerNotification = System.currentTimeMillis();
 
         extractEnvironmentRequirements();
-
-        setPriority(Thread.MIN_PRIORITY); // Always run with minimal priority
     }
 
     /**
-     * Implementation of the monitor's workflow.
+     * Prepares monitoring of the test.
      */
     @Override
-    public void run() {
+    protected void started() {
         // Remember the moment when test handling has started
         testHandlingStartedAt = System.currentTimeMillis();
 
@@ -239,182 +255,262 @@ public class TestMonitor extends Thread {
             }
 
             maximalNumberOfRetriesForFailedTest = configuration.getMaximalNumberOfRetriesForFailedTest();
+
+            // Let the Test Automation Service know as soon as the test has waited for its resources for too long
+            testResourcesExpectationTimeout = testAutomationService.getTimingWheel().scheduleAt(new Runnable() {
+                @Override
+                public void run() {
+                    testAutomationService.resolveProductRequestsAtOnce();
+                }
+            }, testHandlingStartedAt + configuration.getTestResourcesExpectationTimeout());
         }
 
+        scheduleTestTimeout();
+
         p("Entering the main loop...");
 
-        while (isRunning) {
-            try {
-                // Check if any message has arrived
-                if (!messagePool.isEmpty()) {
-                    Message message = messagePool.poll(); // Always get the first message
-
-                    if (message != null) {
-                        p("Got a message for processing: " + message);
-
-                        if (message instanceof TestOperation) {
-                            TestOperation testOperation = (TestOperation) message;
-                            Test updatedTest = testOperation.getTest();
-
-                            if (updatedTest != null) {
-                                // Forward test operation message to the corresponding test handler
-                                String testRuntimeId = updatedTest.getRuntimeId();
-
-                                // Each handler is identified by test's runtime id
-                                for (TestHandler testHandler : testHandlers) {
-                                    if (testHandler.getName().equals(testRuntimeId)) {
-                                        testHandler.handle(message);
-                                        p("Message forwarded to " + testHandler.getName());
-                                        break;
-                                    }
-                                }
-                            }
-                        } else {
-                            p("Got an unsupported message: " + message);
+        // Expiration of the test timeout wakes the monitor up, so periodic checks are needed only for notifications
+        wakeUpEvery(Constant.ONE_MINUTE);
+    }
+
+    /**
+     * Registers timeout of the monitored test in the timing wheel, replacing a previously registered one.
+     */
+    private synchronized void scheduleTestTimeout() {
+        if (testTimeout != null) {
+            testTimeout.cancel();
+        }
+
+        testTimeout = testAutomationService.getTimingWheel().scheduleAt(new Runnable() {
+            @Override
+            public void run() {
+                isTestExpired = true;
+                wakeUp();
+            }
+        }, testHandlingStartedAt + test.getTimeout() + Constant.MILLISECOND);
+    }
+
+    /**
+     * Implementation of the monitor's workflow.
+     * Monitors the test while it is running, and then ensures the minimal duration for test executions before finishing.
+     *
+     * @return True if monitor should continue working or false otherwise
+     */
+    @Override
+    protected boolean act() {
+        if (!isFinishing) {
+            if (isRunning) {
+                try {
+                    monitorTest();
+                } catch (Exception e) {
+                    p("Got troubles while trying to wait for test's '" + test.getId() + "' results");
+                    e.printStackTrace();
+                }
+            }
+
+            if (isRunning) {
+                return true;
+            }
+
+            isFinishing = true;
+
+            notifyListener("Monitor of the test '" + test.getId() + "' is finishing its work. Ensuring the minimal duration for test executions ("
+                + Util.convert(minimalExecutionTimeForTest) + ") in order to prevent any corrupted products in the test farm...");
+
+            if (testHandlers.isEmpty()) {
+                notifyListener("Has no running test handlers, checking for minimal duration of test executions will be skipped");
+            }
+        }
+
+        // Ensure the minimal execution times for test handlers, but don't keep the worker waiting for them
+        if (System.currentTimeMillis() < timeOfNextMinimalDurationCheck) {
+            return true;
+        }
+
+        try {
+            if (mustWaitForTestsEnd()) {
+                timeOfNextMinimalDurationCheck = System.currentTimeMillis() + Constant.FIFTEEN_SECONDS;
+                wakeUpAfter(Constant.FIFTEEN_SECONDS);
+                return true;
+            }
+        } catch (Exception e) {
+            p("Got troubles while tried to ensure the minimal execution time for the test '" + test.getId() + "'");
+            e.printStackTrace();
+        }
+
+        finishMonitoring();
+
+        return false;
+    }
+
+    /**
+     * Handles all arrived messages and checks the state of the test.
+     */
+    private void monitorTest() {
+        Message message = null;
+
+        // Check if any message has arrived
+        while ((message = nextMessage()) != null) {
+            p("Got a message for processing: " + message);
+
+            if (message instanceof TestOperation) {
+                TestOperation testOperation = (TestOperation) message;
+                Test updatedTest = testOperation.getTest();
+
+                if (updatedTest != null) {
+                    // Forward test operation message to the corresponding test handler
+                    String testRuntimeId = updatedTest.getRuntimeId();
+
+                    // Each handler is identified by test's runtime id
+                    for (TestHandler testHandler : testHandlers) {
+                        if (testHandler.getName().equals(testRuntimeId)) {
+                            testHandler.handle(message);
+                            p("Message forwarded to " + testHandler.getName());
+                            break;
                         }
                     }
                 }
+            } else {
+                p("Got an unsupported message: " + message);
+            }
+        }
 
-                // Check test timeout
-                if (test.isExpired(testHandlingStartedAt)) {
-                    isRunning = false;
-                    testHasFailed = true;
-                    reasonOfTestFailure = "Got expiration of test's timeout (" + Util.convert(test.getTimeout()) + ") during test execution";
-                    test.setStatus(Test.Status.FAILED, reasonOfTestFailure);
-                    notifyListener(reasonOfTestFailure);
+        // Check test timeout
+        if (isTestExpired) {
+            isRunning = false;
+            testHasFailed = true;
+            reasonOfTestFailure = "Got expiration of test's timeout (" + Util.convert(test.getTimeout()) + ") during test execution";
+            test.setStatus(Test.Status.FAILED, reasonOfTestFailure);
+            notifyListener(reasonOfTestFailure);
 
-                    break;
-                } else {
-                    if ((System.currentTimeMillis() - timeOfLastListenerNotification) > Constant.FIVE_MINUTES) {
+            return;
+        } else {
+            if ((System.currentTimeMillis() - timeOfLastListenerNotification) > Constant.FIVE_MINUTES) {
 
-                        long currenTime = System.currentTimeMillis();
-                        long remainingTime = test.getTimeout() - (currenTime - testHandlingStartedAt);
-                        timeOfLastListenerNotification = System.currentTimeMillis();
+                long currenTime = System.currentTimeMillis();
+                long remainingTime = test.getTimeout() - (currenTime - testHandlingStartedAt);
+                timeOfLastListenerNotification = System.currentTimeMillis();
 
-                        if (isReservingTestResources) {
-                            // Notify listener about waiting for test resources
-                            if (remainingTime > 0L) {
-                                notifyListener("Still waiting for required testing resources from the farm."
-                                    + " The remaining timeout is " + Util.convert(remainingTime));
-                            }
-                        } else {
-                            // Notify listener about executing tests
-                            if (remainingTime > 0L) {
-                                StringBuffer notification = new StringBuffer("Test '" + test.getId() + "'");
+                if (isReservingTestResources) {
+                    // Notify listener about waiting for test resources
+                    if (remainingTime > 0L) {
+                        int queuePosition = testAutomationService.getQueuePosition(this);
 
-                                if (!testHandlers.isEmpty()) {
-                                    
-                                    notification.append(" has " + testHandlers.size());
+                        notifyListener("Still waiting for required testing resources from the farm."
+                            + (queuePosition > 0 ? " Position in queue is " + queuePosition + "." : "")
+                            + " The remaining timeout is " + Util.convert(remainingTime));
+                    }
+                } else {
+                    // Notify listener about executing tests
+                    if (remainingTime > 0L) {
+                        StringBuffer notification = new StringBuffer("Test '" + test.getId() + "'");
+
+                        if (!testHandlers.isEmpty()) {
+                            
+                            notification.append(" has " + testHandlers.size());
+
+                            if (testHandlers.size() > 1) {
+                                notification.append(" test handlers under execution:");
+                            } else {
+                                notification.append(" test handler under execution:");
+                            }
 
-                                    if (testHandlers.size() > 1) {
-                                        notification.append(" test handlers under execution:");
-                                    } else {
-                                        notification.append(" test handler under execution:");
-                                    }
+                            for (TestHandler handler : testHandlers) {
+                                notification.append(" '" + handler.getName() + "'");
+                            }
 
-                                    for (TestHandler handler : testHandlers) {
-                                        notification.append(" '" + handler.getName() + "'");
-                                    }
+                            notification.append(" The remaining timeout is " + Util.convert(remainingTime));
+                        } else {
+                            // There are some tests to be restarted
+                            if (!testsToBeRestarted.isEmpty()) {
+                                // Compose a summary message about current test executions
+                                notification.append(" is trying to restart " + testsToBeRestarted.size());
 
-                                    notification.append(" The remaining timeout is " + Util.convert(remainingTime));
+                                if (testsToBeRestarted.size() > 1) {
+                                    notification.append(" sub-tests:");
                                 } else {
-                                    // There are some tests to be restarted
-                                    if (!testsToBeRestarted.isEmpty()) {
-                                        // Compose a summary message about current test executions
-                                        notification.append(" is trying to restart " + testsToBeRestarted.size());
-
-                                        if (testsToBeRestarted.size() > 1) {
-                                            notification.append(" sub-tests:");
-                                        } else {
-                                            notification.append(" sub-test:");
-                                        }
-
-                                        for (Test testToBeRestarted : testsToBeRestarted) {
-                                            notification.append(" '" + testToBeRestarted.getRuntimeId() + "'");
-                                        }
-
-                                        notification.append(" The remaining timeout is " + Util.convert(remainingTime));
-                                    } else {
-                                        // There are no more handlers and there are no more tests to be restarted
-                                        notification.append(" has no more test handlers under execution and no more tests to be restarted. Stopping work...");
-                                        isRunning = false;
-                                    }
+                                    notification.append(" sub-test:");
                                 }
 
-                                notifyListener(notification.toString());
+                                for (Test testToBeRestarted : testsToBeRestarted) {
+                                    notification.append(" '" + testToBeRestarted.getRuntimeId() + "'");
+                                }
+
+                                notification.append(" The remaining timeout is " + Util.convert(remainingTime));
+                            } else {
+                                // There are no more handlers and there are no more tests to be restarted
+                                notification.append(" has no more test handlers under execution and no more tests to be restarted. Stopping work...");
+                                isRunning = false;
                             }
                         }
+
+                        notifyListener(notification.toString());
                     }
                 }
+            }
+        }
 
-                if (testHasFailed) {
-                    p("Stopping monitor of the test '" + test.getId() + "' because: " + reasonOfTestFailure);
-                    break;
-                }
+        if (testHasFailed) {
+            p("Stopping monitor of the test '" + test.getId() + "' because: " + reasonOfTestFailure);
+            isRunning = false;
+        }
+    }
 
-                sleep(Constant.MILLISECOND); // Wait for any updates
+    /**
+     * Stops test handlers which have been executing for the minimal duration.
+     *
+     * @return True if some test handlers cannot be stopped yet or false otherwise
+     */
+    private boolean mustWaitForTestsEnd() {
+        List<TestHandler> runningTestHandlers = null;
 
-            } catch (Exception e) {
-                p("Got troubles while trying to wait for test's '" + test.getId() + "' results");
-                e.printStackTrace();
-            }
+        synchronized (this) {
+            runningTestHandlers = new ArrayList<TestHandler>(testHandlers);
         }
 
-        notifyListener("Monitor of the test '" + test.getId() + "' is finishing its work. Ensuring the minimal duration for test executions ("
-            + Util.convert(minimalExecutionTimeForTest) + ") in order to prevent any corrupted products in the test farm...");
+        boolean mustWaitForTestsEnd = false;
+        long currentTime = System.currentTimeMillis();
 
-        // Ensure the minimal execution times for test handlers
-        try {
-            if (!testHandlers.isEmpty()) {
-                boolean mustWaitForTestsEnd = false;
+        for (TestHandler testHandler : runningTestHandlers) {
+            long testExecutionStartTime = testHandler.getTestExecutionStartTime();
 
-                do {
-                    mustWaitForTestsEnd = false;
-                    long currentTime = System.currentTimeMillis();
+            if (testExecutionStartTime <= 0L) {
+                // Test hasn't been started on a test node, use the time when the whole test handling was started
+                testExecutionStartTime = testHandlingStartedAt;
+                notifyListener("Test '" + testHandler.getName() + "' seems to be not able to start executions on its test node");
+            }
 
-                    for (TestHandler testHandler : testHandlers) {
-                        long testExecutionStartTime = testHandler.getTestExecutionStartTime();
+            long testExecutionDuration = currentTime - testExecutionStartTime;
 
-                        if (testExecutionStartTime <= 0L) {
-                            // Test hasn't been started on a test node, use the time when the whole test handling was started
-                            testExecutionStartTime = testHandlingStartedAt;
-                            notifyListener("Test '" + testHandler.getName() + "' seems to be not able to start executions on its test node");
-                        }
+            if (testExecutionDuration >= minimalExecutionTimeForTest) {
+                notifyListener("Test '" + testHandler.getName() + "' has been executing for more than "
+                    + Util.convert(testExecutionDuration) + " and can be stopped...");
+                testHandler.stopTest(reasonOfTestFailure);
+            } else {
+                mustWaitForTestsEnd = true;
 
-                        long testExecutionDuration = currentTime - testExecutionStartTime;
+                notifyListener("Test '" + testHandler.getName() + "' has been executing for "
+                    + Util.convert(testExecutionDuration) + " and cannot be stopped immediately."
+                    + " Will continue test executions for at least " + Util.convert(minimalExecutionTimeForTest)
+                    + " in order to prevent any corrupted products in the test farm...");
 
-                        if (testExecutionDuration >= minimalExecutionTimeForTest) {
-                            notifyListener("Test '" + testHandler.getName() + "' has been executing for more than "
-                                + Util.convert(testExecutionDuration) + " and can be stopped...");
-                            testHandler.stopTest(reasonOfTestFailure);
-                        } else {
-                            mustWaitForTestsEnd = true;
+                // Don't stop here, since there might be other test handlers which could be stopped immediately
+            }
+        }
 
-                            notifyListener("Test '" + testHandler.getName() + "' has been executing for "
-                                + Util.convert(testExecutionDuration) + " and cannot be stopped immediately."
-                                + " Will continue test executions for at least " + Util.convert(minimalExecutionTimeForTest)
-                                + " in order to prevent any corrupted products in the test farm...");
+        return mustWaitForTestsEnd;
+    }
 
-                            // Don't stop here, since there might be other test handlers which could be stopped immediately
-                        }
-                    }
+    /**
+     * Notifies listener about the results of the test and removes this monitor from the Test Automation Service.
+     */
+    private void finishMonitoring() {
+        synchronized (this) {
+            testTimeout.cancel();
 
-                    if (mustWaitForTestsEnd) {
-                        try {
-                            sleep(Constant.FIFTEEN_SECONDS);
-                        } catch (Exception e) {
-                            p("Got troubles while tried to ensure the minimal duration of test executions (" + Util.convert(minimalExecutionTimeForTest) + ")");
-                            e.printStackTrace();
-                        }
-                    }
-                } while (mustWaitForTestsEnd);
-            } else {
-                notifyListener("Has no running test handlers, checking for minimal duration of test executions will be skipped");
+            if (testResourcesExpectationTimeout != null) {
+                testResourcesExpectationTimeout.cancel();
             }
-
-        } catch (Exception e) {
-            p("Got troubles while tried to ensure the minimal execution time for the test '" + test.getId() + "'");
-            e.printStackTrace();
         }
 
         notifyListener("Stopping monitor of the test '" + test.getId() + "'. The whole test handling took " + Util.convert(System.currentTimeMillis() - testHandlingStartedAt));
@@ -596,7 +692,7 @@ public class TestMonitor extends Thread {
         reasonOfTestFailure = reason;
         test.setStatus(Test.Status.FAILED, reasonOfTestFailure);
         
-        notify();
+        wakeUp();
     }
 
     /**
@@ -604,14 +700,12 @@ public class TestMonitor extends Thread {
      *
      * @param message A message to be handled
      */
-    public synchronized void handle(Message message) {
-        if (messagePool.add(message)) {
+    public void handle(Message message) {
+        if (tell(message)) {
             //p("Test monitor for '" + getName() + "' got a message to handle:\n" + message);
         } else {
             p("Error: Test monitor for '" + getName() + "' couldn't add a message for handling:\n" + message);
         }
-
-        notify();
     }
 
     /**
@@ -723,7 +817,7 @@ public class TestMonitor extends Thread {
      * @return True if test has expired or false otherwise
      */
     public boolean isTestExpired() {
-        return test.isExpired(testHandlingStartedAt);
+        return isTestExpired;
     }
 
     /**
@@ -774,10 +868,11 @@ public class TestMonitor extends Thread {
 
         for (TestHandler testHandler : addedHandlers) {
             p("Launching test handler '" + testHandler.getName() + "'");
+            testHandler.chargeExpectedDeviceTime();
             testHandler.start();
         }
 
-        notify();
+        wakeUp();
     }
 
     /**
@@ -807,9 +902,14 @@ public class TestMonitor extends Thread {
         if (update != null) {
             test = update;
             extractEnvironmentRequirements();
+
+            // Updated test may have another timeout
+            if (testTimeout != null) {
+                scheduleTestTimeout();
+            }
         }
 
-        notify();
+        wakeUp();
     }
 
     /**
@@ -970,7 +1070,7 @@ public class TestMonitor extends Thread {
             notifyListener(message.toString());
         }
 
-        notify();
+        wakeUp();
     }
 
     /**
@@ -979,7 +1079,7 @@ public class TestMonitor extends Thread {
     public synchronized void shutdown() {
         p("Got a request to shutdown...");
         isRunning = false;
-        notify();
+        wakeUp();
     }
 
     /**
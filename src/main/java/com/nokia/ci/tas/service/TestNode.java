@@ -1,29 +1,29 @@
 package com.nokia.ci.tas.service;
 
-import java.io.OutputStream;
-
-import java.net.InetAddress;
-import java.net.Socket;
-
 import java.text.SimpleDateFormat;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
+import com.nokia.ci.tas.commons.Actor;
 import com.nokia.ci.tas.commons.Constant;
-import com.nokia.ci.tas.commons.MonitorUtils;
+import com.nokia.ci.tas.commons.PersistentConnection;
 import com.nokia.ci.tas.commons.Product;
+import com.nokia.ci.tas.commons.ProductSync;
 import com.nokia.ci.tas.commons.Test;
 import com.nokia.ci.tas.commons.TestNodeDescription;
+import com.nokia.ci.tas.commons.TimingWheel;
 import com.nokia.ci.tas.commons.Util;
 
 import com.nokia.ci.tas.commons.message.Message;
@@ -36,7 +36,7 @@ import com.nokia.ci.tas.commons.statistics.TestEntry;
 /**
  * Represents a single Test Node in the Testing Automation Service.
  */
-public class TestNode extends Thread implements Comparable<TestNode> {
+public class TestNode extends Actor<Message> implements Comparable<TestNode>, ProductReserver {
 
     /**
      * Constant value indicating that some test cannot be executed by this test node.
@@ -70,15 +70,40 @@ public class TestNode extends Thread implements Comparable<TestNode> {
     private TestNodeDescription description;
 
     /**
-     * A pool of messages to be handled by this node.
+     * Persistent connection used for sending all messages to the test node.
+     */
+    private PersistentConnection connection;
+
+    /**
+     * Writer sending all messages to the test node on the peer I/O runtime.
      */
-    private ConcurrentLinkedQueue<Message> messagePool;
+    private ConnectionWriter writer;
 
     /**
      * A list of products available on this node.
      */
     private CopyOnWriteArrayList<Product> products;
 
+    /**
+     * Products available on this node by their IMEI codes.
+     */
+    private ConcurrentHashMap<String, Product> productsByIMEI;
+
+    /**
+     * Positions of the available products in the list of products, stored by IMEI codes and guarded by the test node.
+     */
+    private HashMap<String, Integer> productPositions;
+
+    /**
+     * Reservation claims of the products available on this node.
+     */
+    private ProductClaims productClaims;
+
+    /**
+     * Inverted index of the products available on this node.
+     */
+    private ProductIndex productIndex;
+
     /**
      * A list of temporarly disconnected products.
      */
@@ -94,6 +119,16 @@ public class TestNode extends Thread implements Comparable<TestNode> {
      */
     private CopyOnWriteArrayList<Product> manuallyReservedProducts;
 
+    /**
+     * Reservation timeouts of the busy products registered in the timing wheel, stored by IMEI codes.
+     */
+    private HashMap<String, TimingWheel.Timeout> reservationTimeouts;
+
+    /**
+     * Disconnection timeouts of the temporarly disconnected products registered in the timing wheel, stored by IMEI codes.
+     */
+    private HashMap<String, TimingWheel.Timeout> disconnectionTimeouts;
+
     /**
      * Variable which keeps this test node running on the side of Test Automation Service.
      */
@@ -109,6 +144,11 @@ public class TestNode extends Thread implements Comparable<TestNode> {
      */
     private long lastNotificationTime = 0L;
 
+    /**
+     * Keeps track of product statuses synchronized with the test node.
+     */
+    private ProductSync productSync;
+
     /**
      * Local reference to the current Test Automation Service instance.
      */
@@ -174,6 +214,11 @@ public class TestNode extends Thread implements Comparable<TestNode> {
      */
     private boolean isMaintenanceMode = false;
 
+    /**
+     * Current workload of this test node, which is the number of executed and running tests per product.
+     */
+    private volatile double load = 0.0;
+
     /**
      * Instance of the Test Automation Service's global logger.
      */
@@ -188,7 +233,7 @@ public class TestNode extends Thread implements Comparable<TestNode> {
      */
     public TestNode(TestAutomationService testAutomationService, String hostname, int port) {
 
-        super(hostname + port); // Use hostname and port as a name of the thread
+        super(hostname + port, testAutomationService.getRuntime()); // Use hostname and port as a name of the test node
 
         this.testAutomationService = testAutomationService;
         this.hostname = hostname;
@@ -198,20 +243,26 @@ public class TestNode extends Thread implements Comparable<TestNode> {
         this.configuration = testAutomationService.getConfiguration();
         this.statistics = testAutomationService.getStatistics();
 
-        messagePool = new ConcurrentLinkedQueue();
+        connection = new PersistentConnection(hostname, port);
+        writer = new ConnectionWriter(this, testAutomationService.getIORuntime(), connection);
 
         products = new CopyOnWriteArrayList();
+        productsByIMEI = new ConcurrentHashMap<String, Product>();
+        productPositions = new HashMap<String, Integer>();
+        productClaims = new ProductClaims();
+        productIndex = new ProductIndex();
         temporarlyDisconnectedProducts = new CopyOnWriteArrayList();
         permanentlyDisconnectedProducts = new CopyOnWriteArrayList();
         manuallyReservedProducts = new CopyOnWriteArrayList();
+        reservationTimeouts = new HashMap<String, TimingWheel.Timeout>(0);
+        disconnectionTimeouts = new HashMap<String, TimingWheel.Timeout>(0);
         runningTests = new CopyOnWriteArrayList();
 
         timestampFormat = new SimpleDateFormat(Constant.TIMESTAMP_FORMAT);
 
         // Creation of a test node means that it is online
         lastNotificationTime = System.currentTimeMillis();
-
-        setPriority(Thread.MIN_PRIORITY); // Always run with minimal priority
+        productSync = new ProductSync(ProductSync.Part.STATUS);
     }
 
     /**
@@ -251,6 +302,15 @@ public class TestNode extends Thread implements Comparable<TestNode> {
     public TestNodeDescription getDescription() {
         return description;
     }
+
+    /**
+     * Enables or disables sending of messages to this test node in the binary encoding.
+     *
+     * @param isBinaryEncodingEnabled True if test node has told it reads binary messages or false otherwise
+     */
+    public void setBinaryEncodingEnabled(boolean isBinaryEncodingEnabled) {
+        connection.setBinaryEncodingEnabled(isBinaryEncodingEnabled);
+    }
     /**
      * Returns a hostname and port associated with this test node
      * in canonical form "hostname:port".
@@ -298,303 +358,143 @@ public class TestNode extends Thread implements Comparable<TestNode> {
     }
 
     /**
-     * Test node's main routine.
+     * Starts periodic checks of the test node.
      */
     @Override
-    public void run() {
+    protected void started() {
         p("Started working");
+        writer.start();
+        wakeUpEvery(Constant.ONE_SECOND);
+    }
 
-        while (isRunning) {
-            try {
-                if (!messagePool.isEmpty()) {
-                    // Try to handle messaging
-                    Message message = messagePool.poll(); // Always get the first message
-
-                    if (message != null) {
-                        for (int i = 0; i < Constant.NUMBER_OF_RETRIES; i++) {
-                            p("Trying to send a message to the test node " + hostname + ":" + port);
-
-                            Socket socket = null;
-                            OutputStream output = null;
+    /**
+     * Hands all waiting messages over to the writer of the test node and performs periodic checks.
+     *
+     * @return True if test node should continue working or false otherwise
+     */
+    @Override
+    protected boolean act() {
+        // Hand all waiting messages over to the writer, so the worker never waits for the network
+        Message message = nextMessage();
 
-                            try {
-                                socket = new Socket(InetAddress.getByName(hostname), port);
-                                output = socket.getOutputStream();
+        while (message != null) {
+            writer.tell(message);
+            message = nextMessage();
+        }
 
-                                // Send a message and close connection immediately
-                                output.write(message.toXML().getBytes("UTF-8"));
-                                output.flush();
+        if (writer.isFailed()) {
+            // This test node has some serious network problems
+            p("Couldn't send messages or check connection to the test node " + getHostnameAndPort());
+            p("Stopping the test node " + getHostnameAndPort());
 
-                                output.close();
-                                socket.close();
+            isDisconnected = true;
+            isRunning = false;
+        }
 
-                                // Message was successfully send
-                                break; // Stop any other tries
+        if (!isRunning) {
+            return false;
+        }
 
-                            } catch (Exception e) {
-                                p("Got a problem during sending a message to the test node " + hostname + ":" + port + " - " + e.getClass() + " " + e.getMessage());
+        // Update a list of products on remote side
+        if ((System.currentTimeMillis() - lastNotificationTime) > Constant.ONE_MINUTE) {
+            // A writer still busy with sending or re-sending of messages is checking the connection already
+            if (writer.isIdle()) {
+                if (!products.isEmpty()) {
+                    // Send changed products and a digest of all the products to the test node in a single message
+                    ProductOperation syncProductOperation = productSync.createSync(products);
+                    syncProductOperation.setSender(testAutomationServiceHostname, testAutomationServicePort);
+                    syncProductOperation.setReceiver(hostname, port);
+
+                    writer.check(syncProductOperation);
+                } else {
+                    // Ensure that test node is still alive
+                    writer.check(null);
+                }
+            }
 
-                                if (i >= (Constant.NUMBER_OF_RETRIES - 1)) {
-                                    // This test node has some serious network problems
-                                    p("Has tried to send message for the maximal number of retries (" + Constant.NUMBER_OF_RETRIES + ")");
-                                    p("Stopping the test node " + hostname + ":" + port);
+            // Print all currently available products
+            StringBuffer currentStatus = new StringBuffer();
 
-                                    isRunning = false;
-                                    isDisconnected = true;
+            if (products.isEmpty()) {
+                currentStatus.append("Currently hasn't any connected products");
+            } else {
+                currentStatus.append("Currently has " + products.size() + " connected products:");
 
-                                    break;
-                                } else {
-                                    p("Will try to re-send message after " + Util.convert(Constant.THIRTY_SECONDS));
-                                    sleep(Constant.THIRTY_SECONDS);
-                                }
-                            } finally {
-                                // Always ensure that output stream is closed
-                                if (output != null) {
-                                    try {
-                                        output.close();
-                                    } catch (Exception e) {
-                                        p("Got troubles during closing outcoming connection to the test node " + hostname + ":" + port
-                                            + " - " + e.getClass() + " " + e.getMessage());
-                                    }
-                                }
+                for (Product product : products) {
+                    currentStatus.append("\n Has a product of type " + product.getRMCode()
+                        + " and with IMEI " + product.getIMEI()
+                        + " (SN:'" + product.getSn() + "')"
+                        + " in status " + product.getStatus());
 
-                                // Always ensure that connection is closed
-                                if (socket != null && !socket.isClosed()) {
-                                    try {
-                                        socket.close();
-                                    } catch (Exception e) {
-                                        p("Got troubles during closing outcoming connection to the test node " + hostname + ":" + port
-                                            + " - " + e.getClass() + " - " + e.getMessage());
-                                        e.printStackTrace();
-                                    }
-                                }
-                            }
-                        }
+                    if (product.getStatus() == Product.Status.BUSY) {
+                        currentStatus.append(" - " + product.getStatusDetails());
+                        currentStatus.append(", reserved at " + timestampFormat.format(new Date(product.getReservationTime())));
+                        currentStatus.append(", for at least " + Util.convert(product.getReservationTimeout()));
                     }
                 }
+            }
 
-                // Update a list of products on remote side
-                if ((System.currentTimeMillis() - lastNotificationTime) > Constant.ONE_MINUTE) {
-                    if (!products.isEmpty()) {
-                        // Send product updates to the test node
-                        for (Product product : products) {
-                            Socket socket = null;
-                            OutputStream output = null;
-
-                            try {
-                                ProductOperation updateProductOperation = new ProductOperation(ProductOperation.Id.UPDATE, product);
-                                updateProductOperation.setSender(testAutomationServiceHostname, testAutomationServicePort);
-                                updateProductOperation.setReceiver(hostname, port);
-
-                                socket = new Socket(InetAddress.getByName(hostname), port);
-                                output = socket.getOutputStream();
-
-                                // Send a message and close connection immediately
-                                output.write(updateProductOperation.toXML().getBytes("UTF-8"));
-                                output.flush();
-
-                                output.close();
-                                socket.close();
-
-                                // If we don't get any exceptions at this point, it means that test node is still online
+            p(currentStatus.toString());
 
-                            } catch (Exception e) {
-                                p("Got a problem during connection check between Test Automation Service and test node "
-                                        + getHostnameAndPort() + ": " + e.getClass() + " " + e.getMessage()+",stack="+MonitorUtils.getStack( e ));
-                                isDisconnected = true;
-                                isRunning = false;
+            // Print all temporarly disconnected products, their disconnection timeouts are handled by the timing wheel
+            currentStatus = new StringBuffer();
 
-                                break;
-                            } finally {
-                                // Always ensure that output stream is closed
-                                if (output != null) {
-                                    try {
-                                        output.close();
-                                    } catch (Exception e) {
-                                        p("Got troubles during closing outcoming connection to the test node " + hostname + ":" + port
-                                            + " - " + e.getClass() + " " + e.getMessage());
-                                    }
-                                }
+            if (temporarlyDisconnectedProducts.isEmpty()) {
+                currentStatus.append("Currently hasn't any temporarly disconnected products");
+            } else {
+                currentStatus.append("Current temporarly disconnected products:");
 
-                                // Always ensure that connection is closed
-                                if (socket != null && !socket.isClosed()) {
-                                    try {
-                                        socket.close();
-                                    } catch (Exception e) {
-                                        p("Got troubles during closing outcoming connection to the test node " + hostname + ":" + port
-                                            + " - " + e.getClass() + " - " + e.getMessage());
-                                        e.printStackTrace();
-                                    }
-                                }
-                            }
-                        }
-                    } else {
-                        // Ensure that test node is still alive
-                        Socket socket = null;
-                        OutputStream output = null;
-
-                        try {
-                            socket = new Socket(InetAddress.getByName(hostname), port);
-                            output = socket.getOutputStream();
-
-                            // Close connection immediately
-                            output.close();
-                            socket.close();
-
-                            // If we don't get any exceptions at this point, it means that test node is still online
-
-                        } catch (Exception e) {
-                            p("Got a problem during connection check between Test Automation Service and test node "
-                                    + getHostnameAndPort() + ": " + e.getClass() + " " + e.getMessage() +",stack="+MonitorUtils.getStack( e ));
-
-                            isDisconnected = true;
-                            isRunning = false;
-                            break;
-                        } finally {
-                            // Always ensure that output stream is closed
-                            if (output != null) {
-                                try {
-                                    output.close();
-                                } catch (Exception e) {
-                                    p("Got troubles during closing outcoming connection to the test node " + hostname + ":" + port
-                                        + " - " + e.getClass() + " " + e.getMessage());
-                                }
-                            }
+                for (Product product : temporarlyDisconnectedProducts) {
+                    currentStatus.append("\n Has a temporarly disconnected product of type " + product.getRMCode()
+                        + " and with IMEI " + product.getIMEI()
+                        + " (SN:'" + product.getSn() + "')"
+                        + " in status " + product.getStatus());
 
-                            // Always ensure that connection is closed
-                            if (socket != null && !socket.isClosed()) {
-                                try {
-                                    socket.close();
-                                } catch (Exception e) {
-                                    p("Got troubles during closing outcoming connection to the test node " + hostname + ":" + port
-                                        + " - " + e.getClass() + " - " + e.getMessage());
-                                    e.printStackTrace();
-                                }
-                            }
-                        }
-                    }
+                    if (product.getStatus() == Product.Status.BUSY) {
+                        currentStatus.append(" - " + product.getStatusDetails());
+                        currentStatus.append(", disconnected at " + timestampFormat.format(new Date(product.getDisconnectionTime())));
 
-                    // Print all currently available products
-                    StringBuffer currentStatus = new StringBuffer();
+                        Test productReservedTest = getRunningTest(product.getStatusDetails());
 
-                    if (products.isEmpty()) {
-                        currentStatus.append("Currently hasn't any connected products");
-                    } else {
-                        currentStatus.append("Currently has " + products.size() + " connected products:");
-
-                        for (Product product : products) {
-                            currentStatus.append("\n Has a product of type " + product.getRMCode()
-                                + " and with IMEI " + product.getIMEI()
-                                + " (SN:'" + product.getSn() + "')"
-                                + " in status " + product.getStatus());
-
-                            if (product.getStatus() == Product.Status.BUSY) {
-                                currentStatus.append(" - " + product.getStatusDetails());
-                                currentStatus.append(", reserved at " + timestampFormat.format(new Date(product.getReservationTime())));
-                                currentStatus.append(", for at least " + Util.convert(product.getReservationTimeout()));
-                            }
-                        }
-                    }
-
-                    p(currentStatus.toString());
-
-                    // Check all temporarly disconnected products
-                    List<Product> expiredProducts = new ArrayList<Product>(0);
-
-                    currentStatus = new StringBuffer();
-
-                    if (temporarlyDisconnectedProducts.isEmpty()) {
-                        currentStatus.append("Currently hasn't any temporarly disconnected products");
-                    } else {
-                        currentStatus.append("Current temporarly disconnected products:");
-
-                        for (int i = 0; i < temporarlyDisconnectedProducts.size(); i++) {
-                            Product product = temporarlyDisconnectedProducts.get(i);
-
-                            currentStatus.append("\n Has a temporarly disconnected product of type " + product.getRMCode()
-                                + " and with IMEI " + product.getIMEI()
-                                + " (SN:'" + product.getSn() + "')"
-                                + " in status " + product.getStatus());
-
-                            if (product.getStatus() == Product.Status.BUSY) {
-                                currentStatus.append(" - " + product.getStatusDetails());
-                                currentStatus.append(", disconnected at " + timestampFormat.format(new Date(product.getDisconnectionTime())));
-
-                                TestMonitor testMonitor = null;
-                                Test productReservedTest = null;
-
-                                for (Test runningTest : runningTests) {
-                                    if (runningTest.getRuntimeId().equals(product.getStatusDetails())) {
-                                        // Got a running test which is responsible for this product
-                                        // Note, test monitor is always associated with test's original id
-                                        testMonitor = testAutomationService.getTestMonitor(runningTest.getId());
-                                        productReservedTest = runningTest;
-                                        break;
-                                    }
-                                }
-
-                                if (testMonitor != null) {
-                                    long productDisconnectionTimeout = productReservedTest.getProductDisconnectionTimeout();
-                                    currentStatus.append(", for maximal timeout of " + Util.convert(productDisconnectionTimeout));
-
-                                    if ((System.currentTimeMillis() - product.getDisconnectionTime()) > productDisconnectionTimeout) {
-                                        // Got expiration of timeout for a disconnected product
-                                        p("Got an expiration of product disconnection timeout during the test '" + productReservedTest.getRuntimeId() + "'");
-
-                                        // Remove this product from the list of temporarly removed devices
-                                        expiredProducts.add(product);
-                                        String reasonOfTestFailure = "Product of type " + product.getRMCode() + " and with IMEI " + product.getIMEI();
-                                        reasonOfTestFailure += " (SN:'" + product.getSn() + "')";
-                                        reasonOfTestFailure += " has got expiration of disconnection timeout (" + Util.convert(productDisconnectionTimeout) + ")";
-
-                                        testMonitor.notifyMonitorAboutFailedTest(productReservedTest, reasonOfTestFailure);
-
-                                        // Consider this product as a permanently disconnected one
-                                        addToPermanentlyDisconnectedProducts(product);
-                                    }
-                                } else {
-                                    // No monitor for specified test. The product should be set as free immediately
-                                    // But right now we are skipping such releasing, just to see who has misbehaved on this test node
-                                }
-                            }
+                        if (productReservedTest != null) {
+                            currentStatus.append(", for maximal timeout of " + Util.convert(productReservedTest.getProductDisconnectionTimeout()));
                         }
                     }
+                }
+            }
 
-                    p(currentStatus.toString());
+            p(currentStatus.toString());
 
-                    if (!expiredProducts.isEmpty()) {
-                        for (Product expiredProduct : expiredProducts) {
-                            int index = hasTemporarlyDisconnectedProductWithIMEI(expiredProduct.getIMEI());
+            lastNotificationTime = System.currentTimeMillis();
+        }
 
-                            if (index != -1) {
-                                temporarlyDisconnectedProducts.remove(index);
-                                p("A product of type " + expiredProduct.getRMCode()
-                                    + " and with IMEI " + expiredProduct.getIMEI()
-                                    + " (FUSE connection name '" + expiredProduct.getFuseConnectionName() + "')"
-                                    + " was removed from the list of temporarly disconnected products due to disconnection timeout expiration");
-                            }
-                        }
-                    }
+        // Update status page each 15 seconds
+        if ((System.currentTimeMillis() - timeOfLastStatusUpdate) > Constant.FIFTEEN_SECONDS) {
+            timeOfLastStatusUpdate = System.currentTimeMillis();
+            updateCurrentStatus();
+        }
 
-                    lastNotificationTime = System.currentTimeMillis();
-                }
+        return isRunning;
+    }
 
-                // Update status page each 15 seconds
-                if ((System.currentTimeMillis() - timeOfLastStatusUpdate) > Constant.FIFTEEN_SECONDS) {
-                    timeOfLastStatusUpdate = System.currentTimeMillis();
-                    updateCurrentStatus();
-                }
+    /**
+     * Closes connection to the test node and removes a disconnected test node from the Test Automation Service.
+     */
+    @Override
+    protected void ended() {
+        writer.close();
 
-                sleep(Constant.MILLISECOND); // Wait for updates
+        synchronized (this) {
+            for (TimingWheel.Timeout timeout : reservationTimeouts.values()) {
+                timeout.cancel();
             }
-            catch (InterruptedException e) {
-                p("Test node was interrupted internally on the side of Test Automation Service. Stop working");
-                //e.printStackTrace();
 
-                isDisconnected = true;
-                isRunning = false;
-                break;
+            for (TimingWheel.Timeout timeout : disconnectionTimeouts.values()) {
+                timeout.cancel();
             }
+
+            reservationTimeouts.clear();
+            disconnectionTimeouts.clear();
         }
 
         if (isDisconnected) {
@@ -611,27 +511,36 @@ public class TestNode extends Thread implements Comparable<TestNode> {
      *
      * @param message Message to be send
      */
-    public synchronized void handle(Message message) {
-        if (messagePool.add(message)) {
+    public void handle(Message message) {
+        if (tell(message)) {
             //p("Got a message to handle:\n" + message);
         } else {
             p("Error: Couldn't add a message for handling:\n" + message);
         }
+    }
 
-        notify();
+    /**
+     * Returns IMEI codes of the products available to this test node and matching specified requirement.
+     *
+     * @param requirement Requirement for a product
+     * @return IMEI codes of matching products
+     */
+    public Set<String> getMatchingProducts(ProductIndex.Requirement requirement) {
+        return productIndex.getMatchingProducts(requirement);
     }
 
     /**
      * Returns a list of currently free products, available to this test node.
      * If there will be no free products at all, an empty list will be returned.
+     * Products claimed by reservations in progress are not free anymore, so no locks are taken here.
      *
      * @return A list of currently free products, available to this test node
      */
-    public synchronized List<Product> getFreeProducts() {
+    public List<Product> getFreeProducts() {
         List<Product> freeProducts = new ArrayList<Product>(0);
 
         for (Product product : products) {
-            if (product.isFree()) {
+            if (product.isFree() && !productClaims.isClaimed(product.getIMEI())) {
                 freeProducts.add(product);
             }
         }
@@ -639,6 +548,17 @@ public class TestNode extends Thread implements Comparable<TestNode> {
         return freeProducts;
     }
 
+    /**
+     * Tells whenever a product with specified IMEI code is available to this test node and currently free.
+     *
+     * @param imei IMEI code of the product
+     * @return True if product is available and free, or false otherwise
+     */
+    public boolean isFreeProduct(String imei) {
+        Product product = productsByIMEI.get(imei);
+        return product != null && product.isFree() && !productClaims.isClaimed(imei);
+    }
+
     /**
      * Reserves specified list of products for specified test.
      * All necessary checks will be performed during this reservations,
@@ -651,81 +571,246 @@ public class TestNode extends Thread implements Comparable<TestNode> {
      * @param reservationTimeout Duration of products reservation in milliseconds
      * @return A list of successfully reserved products, or empty list in case of any reservation failure
      */
-    public synchronized List<Product> reserveProducts(Test test, List<Product> selectedProducts, long reservationTimeout) {
-        boolean success = true;
+    public List<Product> reserveProducts(Test test, List<Product> selectedProducts, long reservationTimeout) {
+        return reserveProducts(test, selectedProducts, reservationTimeout, true);
+    }
+
+    /**
+     * Reserves specified list of products for specified test, optionally without notifying the test node.
+     * Products reserved without notifications must be either announced by notifyAboutReservedProducts() method
+     * or taken back by cancelReservations() method.
+     *
+     * All selected products are claimed at first by compare-and-set on their version stamps, so concurrent reservations
+     * of the same products fail at once without waiting for each other. Only claimed products are then set as busy
+     * under a short lock of this test node, and the test node is notified after that, outside of any lock.
+     * In case of any failure already claimed products are released, so the test node hears nothing about failed reservations.
+     *
+     * @param test Product reserving test
+     * @param selectedProducts A list of products to be reserved
+     * @param reservationTimeout Duration of products reservation in milliseconds
+     * @param isNotifying True if test node should be notified about each reserved product at once
+     * @return A list of successfully reserved products, or empty list in case of any reservation failure
+     */
+    public List<Product> reserveProducts(Test test, List<Product> selectedProducts, long reservationTimeout, boolean isNotifying) {
         long currentTime = System.currentTimeMillis();
-        List<Product> reservedProducts = new ArrayList<Product>(0);
 
         // Reservation timeout couldn't be negative, zero or longer than test's timeout
         if (reservationTimeout <= 0L || reservationTimeout > test.getTimeout()) {
             reservationTimeout = test.getTimeout();
         }
 
+        // Products which are not available to this test node are simply skipped
+        List<String> claimedIMEIs = new ArrayList<String>(selectedProducts.size());
+
         for (Product selectedProduct : selectedProducts) {
-            int index = hasProductWithIMEI(selectedProduct.getIMEI());
+            String imei = selectedProduct.getIMEI();
 
-            if (index != -1) {
-                Product product = products.get(index);
+            if (productsByIMEI.containsKey(imei) && !claimedIMEIs.contains(imei)) {
+                claimedIMEIs.add(imei);
+            }
+        }
 
-                if (product.isFree()) {
-                    product.setStatus(Product.Status.BUSY, test.getRuntimeId());
-                    product.setReservation(currentTime, reservationTimeout);
+        if (!productClaims.claimAll(claimedIMEIs)) {
+            p("Some of products selected for the test '" + test.getRuntimeId() + "' were already claimed by another reservation. Stoping product reservations");
+
+            // Return an empty list as a failure indication
+            return new ArrayList<Product>(0);
+        }
 
-                    products.set(index, product);
+        List<Product> reservedProducts = new ArrayList<Product>(claimedIMEIs.size());
 
-                    reservedProducts.add(product);
+        synchronized (this) {
+            for (String imei : claimedIMEIs) {
+                Product product = productsByIMEI.get(imei);
 
-                    if (test.getProductReleasingMode() == Test.ProductReleasingMode.MANUALLY_RELEASE_RESERVED_PRODUCTS) {
-                        // Check if we need to add this product to the list of manually reserved products
-                        if (!manuallyReservedProducts.contains(product)) {
-                            manuallyReservedProducts.add(product);
-                            p("Product with IMEI " + product.getIMEI()
-                                + " and of type " + product.getRMCode()
-                                + " (SN:'" + product.getSn() + "')"
-                                + " was added to the list of manually reserved products up on request from the test '" + test.getRuntimeId() + "'");
-                        }
+                if (product == null || !product.isFree()) {
+                    p("Product with IMEI " + imei
+                        + " wasn't free at reservation. Stoping product reservations");
+
+                    p("Automatically releasing already reserved products due to occured status mismatch error...");
+
+                    // Test node hasn't heard about these reservations yet, so simply take them back
+                    for (Product reservedProduct : reservedProducts) {
+                        resetReservation(reservedProduct);
                     }
 
-                    p("Product with IMEI " + product.getIMEI()
-                        + " and of type " + product.getRMCode()
-                        + " (SN:'" + product.getSn() + "')"
-                        + " is now reserved for the test '" + product.getStatusDetails()
-                        + "' as " + product.getRole() + " product");
+                    for (String claimedIMEI : claimedIMEIs) {
+                        productClaims.release(claimedIMEI);
+                    }
 
-                    // Notify test node about product reservation
-                    ProductOperation updateProductOperation = new ProductOperation(ProductOperation.Id.UPDATE, product);
-                    updateProductOperation.setSender(product.getTestAutomationServiceHostname(), product.getTestAutomationServicePort());
-                    updateProductOperation.setReceiver(hostname, port); // Test node
+                    // Return an empty list as a failure indication
+                    return new ArrayList<Product>(0);
+                }
 
-                    handle(updateProductOperation);
-                } else {
-                    p("Product with IMEI " + product.getIMEI()
-                        + " and of type " + product.getRMCode()
-                        + " (SN:'" + product.getSn() + "')"
-                        + " wasn't free at reservation. Stoping product reservations");
-                    success = false;
-                    break;
+                product.setStatus(Product.Status.BUSY, test.getRuntimeId());
+                product.setReservation(currentTime, reservationTimeout);
+
+                productIndex.update(product);
+                scheduleReservationTimeout(product);
+
+                reservedProducts.add(product);
+
+                if (test.getProductReleasingMode() == Test.ProductReleasingMode.MANUALLY_RELEASE_RESERVED_PRODUCTS) {
+                    // Check if we need to add this product to the list of manually reserved products
+                    if (!manuallyReservedProducts.contains(product)) {
+                        manuallyReservedProducts.add(product);
+                        p("Product with IMEI " + product.getIMEI()
+                            + " and of type " + product.getRMCode()
+                            + " (SN:'" + product.getSn() + "')"
+                            + " was added to the list of manually reserved products up on request from the test '" + test.getRuntimeId() + "'");
+                    }
                 }
             }
         }
 
-        if (!success) {
-            p("Automatically releasing already reserved products due to occured status mismatch error...");
-            // Automatically release reserved products
-            freeProducts(reservedProducts);
-            // Return an empty list as a failure indication
-            return new ArrayList<Product>(0);
+        for (Product product : reservedProducts) {
+            p("Product with IMEI " + product.getIMEI()
+                + " and of type " + product.getRMCode()
+                + " (SN:'" + product.getSn() + "')"
+                + " is now reserved for the test '" + test.getRuntimeId()
+                + "' as " + product.getRole() + " product");
+
+            if (isNotifying) {
+                // Notify test node about product reservation
+                notifyAboutReservedProduct(product);
+            }
         }
 
         return reservedProducts;
     }
 
+    /**
+     * Notifies the test node about products reserved without notifications, once all reservations of the test are done.
+     *
+     * @param reservedProducts A list of products reserved without notifications
+     */
+    public void notifyAboutReservedProducts(List<Product> reservedProducts) {
+        for (Product reservedProduct : reservedProducts) {
+            notifyAboutReservedProduct(reservedProduct);
+        }
+    }
+
+    /**
+     * Takes back reservations of specified products made without notifications.
+     * Unlike releasing, nothing is send to the test node, since it hasn't heard about these reservations.
+     *
+     * @param reservedProducts A list of products reserved without notifications
+     */
+    public synchronized void cancelReservations(List<Product> reservedProducts) {
+        for (Product reservedProduct : reservedProducts) {
+            String imei = reservedProduct.getIMEI();
+            Product product = productsByIMEI.get(imei);
+
+            cancelTimeout(reservationTimeouts, imei);
+
+            if (product != null) {
+                resetReservation(product);
+                productClaims.release(imei);
+
+                p("Product with IMEI " + product.getIMEI()
+                    + " and of type " + product.getRMCode()
+                    + " (SN:'" + product.getSn() + "')"
+                    + " has got its reservation cancelled");
+            } else {
+                removeFromManuallyReservedProducts(imei);
+            }
+        }
+    }
+
+    /**
+     * Sets a product reserved without notifications back as a free one.
+     * Product claim is not touched here.
+     *
+     * @param product A product reserved without notifications
+     */
+    private synchronized void resetReservation(Product product) {
+        cancelTimeout(reservationTimeouts, product.getIMEI());
+
+        product.setStatus(Product.Status.FREE, "");
+        product.setReservation(0, configuration.getTestDefaultTimeout());
+        productIndex.update(product);
+
+        removeFromManuallyReservedProducts(product.getIMEI());
+    }
+
+    /**
+     * Removes a product with specified IMEI code from the list of manually reserved products, if it is there.
+     *
+     * @param imei IMEI code of the product
+     */
+    private void removeFromManuallyReservedProducts(String imei) {
+        for (Product manuallyReservedProduct : manuallyReservedProducts) {
+            if (manuallyReservedProduct.getIMEI().equals(imei)) {
+                manuallyReservedProducts.remove(manuallyReservedProduct);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Notifies the test node about a reserved product.
+     *
+     * @param product Reserved product
+     */
+    private void notifyAboutReservedProduct(Product product) {
+        ProductOperation updateProductOperation = new ProductOperation(ProductOperation.Id.UPDATE, product);
+        updateProductOperation.setSender(product.getTestAutomationServiceHostname(), product.getTestAutomationServicePort());
+        updateProductOperation.setReceiver(hostname, port); // Test node
+
+        handle(updateProductOperation);
+    }
+
     /**
      * Handles specified operation on a product.
      *
      * @param productOperation Operation on a product
      */
     public synchronized void handleProductOperation(ProductOperation productOperation) {
+        if (productOperation.getId() == ProductOperation.Id.SYNC) {
+            if (productSync.accept(productOperation)) {
+                List<Product> syncedProducts = productOperation.getProducts();
+
+                for (Product syncedProduct : syncedProducts) {
+                    updateProduct(syncedProduct);
+                }
+
+                if (productOperation.isFullSync()) {
+                    // All the products not mentioned in a full sync are not connected to the test node anymore
+                    for (Product product : products) {
+                        boolean isSynced = false;
+
+                        for (Product syncedProduct : syncedProducts) {
+                            if (product.getIMEI().equals(syncedProduct.getIMEI())) {
+                                isSynced = true;
+                                break;
+                            }
+                        }
+
+                        if (!isSynced) {
+                            removeProduct(product);
+                        }
+                    }
+                } else if (!ProductSync.matches(productOperation, products, ProductSync.Part.DESCRIPTION)) {
+                    p("Products are different from the ones on the test node, requesting a full product sync...");
+
+                    ProductOperation resyncProductOperation = new ProductOperation(ProductOperation.Id.RESYNC, null);
+                    resyncProductOperation.setSender(testAutomationServiceHostname, testAutomationServicePort);
+                    resyncProductOperation.setReceiver(hostname, port);
+                    handle(resyncProductOperation);
+                }
+            } else {
+                p("Ignoring a stale product sync with sequence number " + productOperation.getSequenceNumber());
+            }
+
+            return;
+        } else if (productOperation.getId() == ProductOperation.Id.RESYNC) {
+            p("Test node has requested a full product sync");
+            productSync.requestFullSync();
+            lastNotificationTime = 0L;
+            wakeUp();
+            return;
+        }
+
         Product product = productOperation.getProduct();
         if (product != null) {
             switch (productOperation.getId()) {
@@ -765,47 +850,6 @@ public class TestNode extends Thread implements Comparable<TestNode> {
                 // Update specified product
                 Product originalProduct = products.get(index);
 
-                if (originalProduct.getStatus() == Product.Status.BUSY) {
-                    // Product is busy, check reservation timeouts
-                    if ((System.currentTimeMillis() - originalProduct.getReservationTime()) > originalProduct.getReservationTimeout()) {
-
-                        TestMonitor testMonitor = null;
-                        Test productReservingTest = null;
-
-                        for (Test runningTest : runningTests) {
-                            if (runningTest.getRuntimeId().equals(product.getStatusDetails())) {
-                                // Got a running test which is responsible for this product
-                                // Note, test monitor is always associated with test's original id
-                                testMonitor = testAutomationService.getTestMonitor(runningTest.getId());
-                                productReservingTest = runningTest;
-                                break;
-                            }
-                        }
-
-                        if (testMonitor != null) {
-                            String reasonOfTestFailure = "Reserved product with IMEI " + originalProduct.getIMEI()
-                                                             + " and of type " + originalProduct.getRMCode()
-                                                             + " (SN:'" + product.getSn() + "')"
-                                                             + " has got expiration of reservation timeout: "
-                                                             + Util.convert(originalProduct.getReservationTimeout());
-
-                            testMonitor.notifyMonitorAboutFailedTest(productReservingTest, reasonOfTestFailure);
-
-                            // Test monitor will release corresponding products
-                        } else {
-                            originalProduct.setStatus(Product.Status.FREE, "");
-                            originalProduct.setReservation(0, configuration.getTestDefaultTimeout());
-                            originalProduct.setDisconnectionTime(0L);
-
-                            p("Product with IMEI " + originalProduct.getIMEI()
-                                        + " and of type " + originalProduct.getRMCode()
-                                        + " (SN:'" + product.getSn() + "')"
-                                        + " is set as " + originalProduct.getStatus()
-                                        + " due to expiration of reservation timeout");
-                        }
-                    }
-                }
-
                 // Store any changes
                 product.setStatus(originalProduct.getStatus());
                 product.setStatusDetails(originalProduct.getStatusDetails());
@@ -814,6 +858,8 @@ public class TestNode extends Thread implements Comparable<TestNode> {
                 product.setDisconnectionTime(originalProduct.getDisconnectionTime());
 
                 products.set(index, product);
+                productsByIMEI.put(imei, product);
+                productIndex.update(product);
 
                 //p("Product of type " + product.getRMCode() + " and with IMEI " + product.getIMEI() + " was successfully updated on this test node");
             } else {
@@ -836,9 +882,7 @@ public class TestNode extends Thread implements Comparable<TestNode> {
         String imei = product.getIMEI();
 
         if (imei != null && !imei.isEmpty()) {
-            int index = hasProductWithIMEI(product.getIMEI());
-
-            if (index == -1) {
+            if (!productsByIMEI.containsKey(imei)) {
                 // Check if specified product was on the list of temporarly disconnected devices
                 int disconnectedProductIndex = hasTemporarlyDisconnectedProductWithIMEI(imei);
 
@@ -884,8 +928,13 @@ public class TestNode extends Thread implements Comparable<TestNode> {
 
                     // Add as updated and re-connected product
                     temporarlyDisconnectedProduct.setDisconnectionTime(0L);
+                    cancelTimeout(disconnectionTimeouts, imei);
 
+                    productPositions.put(imei, products.size());
                     products.add(temporarlyDisconnectedProduct);
+                    productsByIMEI.put(imei, temporarlyDisconnectedProduct);
+                    updateClaim(temporarlyDisconnectedProduct);
+                    productIndex.update(temporarlyDisconnectedProduct);
                     p("Product of type " + product.getRMCode()
                         + " and with IMEI " + product.getIMEI()
                         + " (SN:'" + product.getSn() + "')"
@@ -912,7 +961,11 @@ public class TestNode extends Thread implements Comparable<TestNode> {
                     product.setReservation(0L, configuration.getTestDefaultTimeout());
                     product.setDisconnectionTime(0L);
 
+                    productPositions.put(imei, products.size());
                     products.add(product);
+                    productsByIMEI.put(imei, product);
+                    updateClaim(product);
+                    productIndex.update(product);
                     p("Product of type " + product.getRMCode()
                         + " and with IMEI " + product.getIMEI()
                         + " (SN:'" + product.getSn() + "')"
@@ -928,6 +981,11 @@ public class TestNode extends Thread implements Comparable<TestNode> {
 
             // Check also against permanently disconnected products
             removeFromPermanentlyDisconnectedProducts(product);
+
+            updateLoad();
+
+            // Product might be required by some waiting test
+            testAutomationService.resolveProductRequestsAtOnce();
         }
     }
 
@@ -967,6 +1025,7 @@ public class TestNode extends Thread implements Comparable<TestNode> {
 
                         // Add this product to the list of temporarly disconnected devices
                         temporarlyDisconnectedProducts.add(originalProduct);
+                        scheduleDisconnectionTimeout(originalProduct);
 
                         p("A product of type " + product.getRMCode()
                             + " and with IMEI " + product.getIMEI()
@@ -978,8 +1037,17 @@ public class TestNode extends Thread implements Comparable<TestNode> {
                     addToPermanentlyDisconnectedProducts(product);
                 }
 
-                // Remove specified product
+                // Remove specified product and shift positions of the following ones
                 products.remove(index);
+                productsByIMEI.remove(imei);
+                productPositions.remove(imei);
+
+                for (int i = index; i < products.size(); i++) {
+                    productPositions.put(products.get(i).getIMEI(), i);
+                }
+
+                productClaims.remove(imei);
+                productIndex.remove(imei);
 
                 p("Product of type " + product.getRMCode()
                     + " and with IMEI " + product.getIMEI()
@@ -991,7 +1059,200 @@ public class TestNode extends Thread implements Comparable<TestNode> {
                     + " (SN:'" + product.getSn() + "')"
                     + " is already not presented on this test node");
             }
+
+            updateLoad();
+        }
+    }
+
+    /**
+     * Registers reservation timeout of specified product in the timing wheel, replacing a previously registered one.
+     *
+     * @param product Reserved product
+     */
+    private synchronized void scheduleReservationTimeout(Product product) {
+        final String imei = product.getIMEI();
+        final long reservationTime = product.getReservationTime();
+
+        cancelTimeout(reservationTimeouts, imei);
+
+        reservationTimeouts.put(imei, testAutomationService.getTimingWheel().scheduleAt(new Runnable() {
+            @Override
+            public void run() {
+                handleExpiredReservation(imei, reservationTime);
+            }
+        }, reservationTime + product.getReservationTimeout() + Constant.MILLISECOND));
+    }
+
+    /**
+     * Handles expiration of the reservation timeout of a product.
+     * Products being disconnected at that moment are checked against their reservation timeouts up on re-connection.
+     *
+     * @param imei IMEI code of the product
+     * @param reservationTime Moment of time when the product was reserved
+     */
+    private synchronized void handleExpiredReservation(String imei, long reservationTime) {
+        Product originalProduct = productsByIMEI.get(imei);
+
+        if (originalProduct == null) {
+            return;
+        }
+
+        // Ensure that product wasn't released or reserved again in the meantime
+        if (originalProduct.getStatus() != Product.Status.BUSY || originalProduct.getReservationTime() != reservationTime) {
+            return;
+        }
+
+        reservationTimeouts.remove(imei);
+
+        Test productReservingTest = getRunningTest(originalProduct.getStatusDetails());
+        TestMonitor testMonitor = null;
+
+        if (productReservingTest != null) {
+            // Note, test monitor is always associated with test's original id
+            testMonitor = testAutomationService.getTestMonitor(productReservingTest.getId());
+        }
+
+        if (testMonitor != null) {
+            String reasonOfTestFailure = "Reserved product with IMEI " + originalProduct.getIMEI()
+                                             + " and of type " + originalProduct.getRMCode()
+                                             + " (SN:'" + originalProduct.getSn() + "')"
+                                             + " has got expiration of reservation timeout: "
+                                             + Util.convert(originalProduct.getReservationTimeout());
+
+            testMonitor.notifyMonitorAboutFailedTest(productReservingTest, reasonOfTestFailure);
+
+            // Test monitor will release corresponding products
+        } else {
+            originalProduct.setStatus(Product.Status.FREE, "");
+            originalProduct.setReservation(0, configuration.getTestDefaultTimeout());
+            originalProduct.setDisconnectionTime(0L);
+            productClaims.release(imei);
+            productIndex.update(originalProduct);
+
+            p("Product with IMEI " + originalProduct.getIMEI()
+                        + " and of type " + originalProduct.getRMCode()
+                        + " (SN:'" + originalProduct.getSn() + "')"
+                        + " is set as " + originalProduct.getStatus()
+                        + " due to expiration of reservation timeout");
+
+            testAutomationService.resolveProductRequestsAtOnce();
+        }
+    }
+
+    /**
+     * Registers disconnection timeout of specified temporarly disconnected product in the timing wheel.
+     *
+     * @param product Temporarly disconnected product
+     */
+    private synchronized void scheduleDisconnectionTimeout(Product product) {
+        Test productReservedTest = getRunningTest(product.getStatusDetails());
+
+        if (productReservedTest == null) {
+            // No test for this product. The product should be set as free immediately
+            // But right now we are skipping such releasing, just to see who has misbehaved on this test node
+            return;
+        }
+
+        final String imei = product.getIMEI();
+        final long disconnectionTime = product.getDisconnectionTime();
+
+        cancelTimeout(disconnectionTimeouts, imei);
+
+        disconnectionTimeouts.put(imei, testAutomationService.getTimingWheel().scheduleAt(new Runnable() {
+            @Override
+            public void run() {
+                handleExpiredDisconnection(imei, disconnectionTime);
+            }
+        }, disconnectionTime + productReservedTest.getProductDisconnectionTimeout() + Constant.MILLISECOND));
+    }
+
+    /**
+     * Handles expiration of the disconnection timeout of a temporarly disconnected product.
+     *
+     * @param imei IMEI code of the product
+     * @param disconnectionTime Moment of time when the product was disconnected
+     */
+    private synchronized void handleExpiredDisconnection(String imei, long disconnectionTime) {
+        int index = hasTemporarlyDisconnectedProductWithIMEI(imei);
+
+        if (index == -1) {
+            return;
+        }
+
+        Product product = temporarlyDisconnectedProducts.get(index);
+
+        // Ensure that product wasn't re-connected and disconnected again in the meantime
+        if (product.getStatus() != Product.Status.BUSY || product.getDisconnectionTime() != disconnectionTime) {
+            return;
+        }
+
+        disconnectionTimeouts.remove(imei);
+
+        Test productReservedTest = getRunningTest(product.getStatusDetails());
+        TestMonitor testMonitor = null;
+
+        if (productReservedTest != null) {
+            // Note, test monitor is always associated with test's original id
+            testMonitor = testAutomationService.getTestMonitor(productReservedTest.getId());
+        }
+
+        if (testMonitor != null) {
+            long productDisconnectionTimeout = productReservedTest.getProductDisconnectionTimeout();
+
+            // Got expiration of timeout for a disconnected product
+            p("Got an expiration of product disconnection timeout during the test '" + productReservedTest.getRuntimeId() + "'");
+
+            String reasonOfTestFailure = "Product of type " + product.getRMCode() + " and with IMEI " + product.getIMEI();
+            reasonOfTestFailure += " (SN:'" + product.getSn() + "')";
+            reasonOfTestFailure += " has got expiration of disconnection timeout (" + Util.convert(productDisconnectionTimeout) + ")";
+
+            testMonitor.notifyMonitorAboutFailedTest(productReservedTest, reasonOfTestFailure);
+
+            // Consider this product as a permanently disconnected one
+            addToPermanentlyDisconnectedProducts(product);
+
+            // Remove this product from the list of temporarly removed devices
+            temporarlyDisconnectedProducts.remove(index);
+
+            p("A product of type " + product.getRMCode()
+                + " and with IMEI " + product.getIMEI()
+                + " (FUSE connection name '" + product.getFuseConnectionName() + "')"
+                + " was removed from the list of temporarly disconnected products due to disconnection timeout expiration");
+        } else {
+            // No monitor for specified test. The product should be set as free immediately
+            // But right now we are skipping such releasing, just to see who has misbehaved on this test node
+        }
+    }
+
+    /**
+     * Cancels a timeout of the product with specified IMEI code, if such timeout is registered.
+     *
+     * @param timeouts Registered timeouts stored by IMEI codes
+     * @param imei IMEI code of the product
+     */
+    private void cancelTimeout(HashMap<String, TimingWheel.Timeout> timeouts, String imei) {
+        TimingWheel.Timeout timeout = timeouts.remove(imei);
+
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Returns a running test with specified runtime id or null if such test is not running on this test node.
+     *
+     * @param runtimeId Runtime id of the test
+     * @return A running test with specified runtime id or null if such test is not running on this test node
+     */
+    private Test getRunningTest(String runtimeId) {
+        for (Test runningTest : runningTests) {
+            if (runningTest.getRuntimeId().equals(runtimeId)) {
+                // Got a running test which is responsible for this product
+                return runningTest;
+            }
         }
+
+        return null;
     }
 
     /**
@@ -1000,18 +1261,22 @@ public class TestNode extends Thread implements Comparable<TestNode> {
      * @param imei IMEI code to be searched for
      * @return An index of the product with specified IMEI code or -1 if such product is not presented
      */
-    protected int hasProductWithIMEI(String imei) {
-        int index = -1;
+    protected synchronized int hasProductWithIMEI(String imei) {
+        Integer index = productPositions.get(imei);
+        return index != null ? index.intValue() : -1;
+    }
 
-        for (int i = 0; i < products.size(); i++) {
-            Product product = products.get(i);
-            if (product.getIMEI().equals(imei)) {
-                index = i;
-                break;
-            }
+    /**
+     * Keeps the claim of specified product in line with its status, like for just added or re-connected products.
+     *
+     * @param product A product available on this test node
+     */
+    private void updateClaim(Product product) {
+        if (product.isFree()) {
+            productClaims.release(product.getIMEI());
+        } else {
+            productClaims.claim(product.getIMEI());
         }
-
-        return index;
     }
 
     /**
@@ -1046,13 +1311,11 @@ public class TestNode extends Thread implements Comparable<TestNode> {
     protected boolean holdsProduct(String imei) {
 
         if (imei != null && !imei.isEmpty()) {
-            int index = hasProductWithIMEI(imei);
-
-            if (index != -1) {
+            if (productsByIMEI.containsKey(imei)) {
                 return true;
             }
 
-            index = hasTemporarlyDisconnectedProductWithIMEI(imei);
+            int index = hasTemporarlyDisconnectedProductWithIMEI(imei);
 
             if (index != -1) {
                 return true;
@@ -1096,6 +1359,7 @@ public class TestNode extends Thread implements Comparable<TestNode> {
         if (canAdd) {
             p("Adding test '" + test.getRuntimeId() + "' to the list of running tests");
             runningTests.add(test);
+            updateLoad();
         } else {
             p("Cannot add test '" + test.getRuntimeId() + "' to the list of running tests");
         }
@@ -1125,6 +1389,38 @@ public class TestNode extends Thread implements Comparable<TestNode> {
                 break;
             }
         }
+
+        updateLoad();
+
+        // Test node is able to execute one more test
+        testAutomationService.resolveProductRequestsAtOnce();
+    }
+
+    /**
+     * Returns current workload of this test node, which is the number of executed and running tests per product.
+     *
+     * @return Current workload of this test node
+     */
+    public double getLoad() {
+        return load;
+    }
+
+    /**
+     * Calculates current workload of this test node and updates it in the load index of test nodes.
+     * Must be called on each change of the number of executed or running tests, or the number of products.
+     */
+    private synchronized void updateLoad() {
+        long numberOfTests = totalNumberOfExecutedTests + runningTests.size();
+        long numberOfProducts = products.size();
+
+        // Prevent division by zero and perform comparision on total number of tests
+        if (numberOfProducts <= 0) {
+            numberOfProducts = 1;
+        }
+
+        load = (double) numberOfTests / numberOfProducts;
+
+        testAutomationService.getTestNodeLoadIndex().update(this, load);
     }
 
     /**
@@ -1167,18 +1463,27 @@ public class TestNode extends Thread implements Comparable<TestNode> {
         String imei = product.getIMEI();
 
         if (imei != null && !imei.isEmpty()) {
-            // Try to find this product from the list of available devices
-            int index = hasProductWithIMEI(imei);
+            Product originalProduct = null;
 
-            if (index != -1) {
-                Product originalProduct = products.get(index);
+            synchronized (this) {
+                // No one is interested in timeouts of this product anymore
+                cancelTimeout(reservationTimeouts, imei);
+                cancelTimeout(disconnectionTimeouts, imei);
+
+                // Try to find this product from the list of available devices
+                originalProduct = productsByIMEI.get(imei);
 
-                originalProduct.setStatus(Product.Status.FREE, "");
-                originalProduct.setReservation(0, configuration.getTestDefaultTimeout());
-                originalProduct.setDisconnectionTime(0L);
+                if (originalProduct != null) {
+                    originalProduct.setStatus(Product.Status.FREE, "");
+                    originalProduct.setReservation(0, configuration.getTestDefaultTimeout());
+                    originalProduct.setDisconnectionTime(0L);
 
-                products.set(index, originalProduct);
+                    productClaims.release(imei);
+                    productIndex.update(originalProduct);
+                }
+            }
 
+            if (originalProduct != null) {
                 p("Product with IMEI " + originalProduct.getIMEI()
                             + " and of type " + originalProduct.getRMCode()
                             + " (SN:'" + product.getSn() + "')"
@@ -1225,6 +1530,9 @@ public class TestNode extends Thread implements Comparable<TestNode> {
                     break;
                 }
             }
+
+            // Released product might be required by some waiting test
+            testAutomationService.resolveProductRequestsAtOnce();
         }
     }
 
@@ -1349,6 +1657,7 @@ public class TestNode extends Thread implements Comparable<TestNode> {
     protected synchronized void shutdown() {
         p("Got a request to shutdown. Stop working...");
         isRunning = false;
+        wakeUp();
     }
 
     /**
@@ -1386,6 +1695,10 @@ public class TestNode extends Thread implements Comparable<TestNode> {
     protected void setMaintenanceMode(boolean isMaintenanceMode) {
         this.isMaintenanceMode = isMaintenanceMode;
         updateCurrentStatus();
+
+        if (!isMaintenanceMode) {
+            testAutomationService.resolveProductRequestsAtOnce();
+        }
     }
 
     /**
@@ -2197,25 +2510,8 @@ public class TestNode extends Thread implements Comparable<TestNode> {
     @Override
     public int compareTo(TestNode testNode) {
 
-        long otherNumberOfTests = testNode.getTotalNumberOfExecutedTests() + testNode.getNumberOfRunningTests();
-        long otherNumberOfProducts = testNode.getNumberOfProducts();
-
-        // Prevent division by zero and perform comparision on total number of tests
-        if (otherNumberOfProducts <= 0) {
-            otherNumberOfProducts = 1;
-        }
-
-        double otherLoad = (double) otherNumberOfTests / otherNumberOfProducts;
-
-        long numberOfTests = totalNumberOfExecutedTests + runningTests.size();
-        long numberOfProducts = products.size();
-
-        // Prevent division by zero and perform comparision on total number of tests
-        if (numberOfProducts <= 0) {
-            numberOfProducts = 1;
-        }
-
-        double load = (double) numberOfTests / numberOfProducts;
+        // Loads are kept up to date on each change, so comparison doesn't need any locks
+        double otherLoad = testNode.getLoad();
 
         if (load < otherLoad) {
             // This test node was "less" loaded
@@ -0,0 +1,361 @@
+package com.nokia.ci.tas.service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.PrintWriter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.nokia.ci.tas.commons.TestPackage;
+
+/**
+ * Keeps the history of how long test packages were executed and splits test packages across product sets by their durations.
+ *
+ * Durations are kept per test id and test package id, and are updated each time a splitted test is successfully finished.
+ * Since a splitted test executes several packages at once, its execution time is shared between its packages
+ * in proportion to their previously known or estimated durations. Packages without any history are estimated
+ * as an average package of the same test, or all equally if the test has no history at all.
+ *
+ * Packages are split by the longest processing time first rule: the longest package goes to the least loaded product set,
+ * which keeps the longest of the splitted tests, and so the whole test, as short as possible.
+ */
+public class TestPackageDurations {
+
+    /**
+     * Separator of the fields in the history file.
+     */
+    private static final String SEPARATOR = "\t";
+
+    /**
+     * Estimated duration of a test package when its test has no history at all.
+     */
+    private static final long DEFAULT_DURATION = 1L;
+
+    /**
+     * File keeping the history between restarts of the Test Automation Service or null if history is kept only in memory.
+     */
+    private File file;
+
+    /**
+     * Known durations of test packages in milliseconds, by test ids and test package ids.
+     */
+    private Map<String, Map<String, Long>> durations = new HashMap<String, Map<String, Long>>();
+
+    /**
+     * Instance of the Test Automation Service's global logger.
+     */
+    private Logger logger = Logger.getLogger(TestAutomationService.GLOBAL_LOGGER_NAME);
+
+    /**
+     * Constructor.
+     *
+     * @param file File keeping the history or null if history should be kept only in memory
+     */
+    public TestPackageDurations(File file) {
+        this.file = file;
+        load();
+    }
+
+    /**
+     * Returns known duration of specified test package.
+     *
+     * @param testId Id of the test
+     * @param testPackage Test package
+     * @return Known duration of test package in milliseconds or -1 if test package has no history
+     */
+    public synchronized long getDuration(String testId, TestPackage testPackage) {
+        Map<String, Long> testDurations = durations.get(testId);
+
+        if (testDurations != null) {
+            Long duration = testDurations.get(testPackage.getId());
+
+            if (duration != null) {
+                return duration.longValue();
+            }
+        }
+
+        return -1L;
+    }
+
+    /**
+     * Returns known duration of specified test packages executed one after another.
+     *
+     * @param testId Id of the test
+     * @param testPackages Test packages
+     * @return Known duration of test packages in milliseconds or -1 if any of test packages has no history
+     */
+    public synchronized long getDuration(String testId, List<TestPackage> testPackages) {
+        if (testPackages == null || testPackages.isEmpty()) {
+            return -1L;
+        }
+
+        long totalDuration = 0L;
+
+        for (TestPackage testPackage : testPackages) {
+            long duration = getDuration(testId, testPackage);
+
+            if (duration < 0L) {
+                return -1L;
+            }
+
+            totalDuration += duration;
+        }
+
+        return totalDuration;
+    }
+
+    /**
+     * Splits test packages into specified number of sets, so that the longest set would be as short as possible.
+     * Packages inside each set keep their original order.
+     *
+     * @param testId Id of the test
+     * @param testPackages Test packages to be splitted
+     * @param numberOfSets Number of available product sets
+     * @return Non-empty sets of test packages, not more than the number of available product sets
+     */
+    public synchronized List<List<TestPackage>> split(String testId, final List<TestPackage> testPackages, int numberOfSets) {
+        final long[] estimatedDurations = estimate(testId, testPackages);
+        int numberOfSplittedSets = Math.max(Math.min(numberOfSets, testPackages.size()), 1);
+
+        List<Integer> order = new ArrayList<Integer>(testPackages.size());
+
+        for (int t = 0; t < testPackages.size(); t++) {
+            order.add(t);
+        }
+
+        // Longest packages first, packages of equal durations in their original order
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer first, Integer second) {
+                long difference = estimatedDurations[second] - estimatedDurations[first];
+
+                if (difference != 0L) {
+                    return difference > 0L ? 1 : -1;
+                }
+
+                return first.compareTo(second);
+            }
+        });
+
+        long[] loads = new long[numberOfSplittedSets];
+        List<List<Integer>> splittedIndexes = new ArrayList<List<Integer>>(numberOfSplittedSets);
+
+        for (int s = 0; s < numberOfSplittedSets; s++) {
+            splittedIndexes.add(new ArrayList<Integer>(0));
+        }
+
+        for (Integer t : order) {
+            // Put each package to the least loaded set
+            int leastLoaded = 0;
+
+            for (int s = 1; s < numberOfSplittedSets; s++) {
+                if (loads[s] < loads[leastLoaded]) {
+                    leastLoaded = s;
+                }
+            }
+
+            loads[leastLoaded] += estimatedDurations[t];
+            splittedIndexes.get(leastLoaded).add(t);
+        }
+
+        List<List<TestPackage>> splittedTestPackageSets = new ArrayList<List<TestPackage>>(numberOfSplittedSets);
+
+        for (List<Integer> indexes : splittedIndexes) {
+            Collections.sort(indexes);
+
+            List<TestPackage> splittedTestPackageSet = new ArrayList<TestPackage>(indexes.size());
+
+            for (Integer t : indexes) {
+                splittedTestPackageSet.add(testPackages.get(t));
+            }
+
+            splittedTestPackageSets.add(splittedTestPackageSet);
+        }
+
+        return splittedTestPackageSets;
+    }
+
+    /**
+     * Updates durations of test packages executed together by a successfully finished test.
+     *
+     * @param testId Id of the test
+     * @param testPackages Test packages executed by the test
+     * @param executionTime Execution time of the test in milliseconds
+     */
+    public synchronized void update(String testId, List<TestPackage> testPackages, long executionTime) {
+        if (testPackages == null || testPackages.isEmpty() || executionTime <= 0L) {
+            return;
+        }
+
+        long[] estimatedDurations = estimate(testId, testPackages);
+        long totalDuration = 0L;
+
+        for (long estimatedDuration : estimatedDurations) {
+            totalDuration += estimatedDuration;
+        }
+
+        Map<String, Long> testDurations = durations.get(testId);
+
+        if (testDurations == null) {
+            testDurations = new HashMap<String, Long>();
+            durations.put(testId, testDurations);
+        }
+
+        for (int t = 0; t < testPackages.size(); t++) {
+            // Share execution time in proportion to estimated durations
+            long duration = Math.max((long) ((double) executionTime * estimatedDurations[t] / totalDuration), 1L);
+            Long knownDuration = testDurations.get(testPackages.get(t).getId());
+
+            if (knownDuration != null) {
+                // Smooth out single unusually short or long executions
+                duration = (knownDuration.longValue() + duration) / 2L;
+            }
+
+            testDurations.put(testPackages.get(t).getId(), duration);
+        }
+
+        save();
+    }
+
+    /**
+     * Estimates durations of specified test packages.
+     *
+     * @param testId Id of the test
+     * @param testPackages Test packages
+     * @return Known or estimated durations of test packages in milliseconds
+     */
+    private long[] estimate(String testId, List<TestPackage> testPackages) {
+        long[] estimatedDurations = new long[testPackages.size()];
+        Map<String, Long> testDurations = durations.get(testId);
+        long averageDuration = DEFAULT_DURATION;
+
+        if (testDurations != null && !testDurations.isEmpty()) {
+            long totalDuration = 0L;
+
+            for (Long duration : testDurations.values()) {
+                totalDuration += duration.longValue();
+            }
+
+            averageDuration = Math.max(totalDuration / testDurations.size(), DEFAULT_DURATION);
+        }
+
+        for (int t = 0; t < testPackages.size(); t++) {
+            Long duration = testDurations != null ? testDurations.get(testPackages.get(t).getId()) : null;
+            estimatedDurations[t] = duration != null ? duration.longValue() : averageDuration;
+        }
+
+        return estimatedDurations;
+    }
+
+    /**
+     * Reads the history from the file, if it exists.
+     */
+    private void load() {
+        if (file == null || !file.exists()) {
+            return;
+        }
+
+        BufferedReader reader = null;
+
+        try {
+            reader = new BufferedReader(new FileReader(file));
+
+            String line = null;
+
+            while ((line = reader.readLine()) != null) {
+                // Each line is: duration, test id and test package id
+                String[] fields = line.split(SEPARATOR, 3);
+
+                if (fields.length == 3) {
+                    try {
+                        Map<String, Long> testDurations = durations.get(fields[1]);
+
+                        if (testDurations == null) {
+                            testDurations = new HashMap<String, Long>();
+                            durations.put(fields[1], testDurations);
+                        }
+
+                        testDurations.put(fields[2], Long.parseLong(fields[0]));
+                    } catch (NumberFormatException e) {
+                        p("Skipping a malformed line: " + line);
+                    }
+                }
+            }
+
+            p("Has read durations of test packages for " + durations.size() + " tests from " + file.getAbsolutePath());
+
+        } catch (Exception e) {
+            p("Got troubles while tried to read durations of test packages: " + e.getClass() + " - " + e.getMessage());
+        } finally {
+            // Try to close reader by all means
+            try {
+                if (reader != null) {
+                    reader.close();
+                }
+            } catch (Exception e) {
+                p("Got troubles while tried to close durations file reader: " + e.getClass() + " - " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes the history to the file.
+     */
+    private void save() {
+        if (file == null) {
+            return;
+        }
+
+        PrintWriter writer = null;
+
+        try {
+            writer = new PrintWriter(file);
+
+            for (Map.Entry<String, Map<String, Long>> testDurations : durations.entrySet()) {
+                for (Map.Entry<String, Long> duration : testDurations.getValue().entrySet()) {
+                    // Ids broken into several lines or fields couldn't be read back
+                    if (isMalformed(testDurations.getKey()) || isMalformed(duration.getKey())) {
+                        continue;
+                    }
+
+                    writer.append(duration.getValue() + SEPARATOR + testDurations.getKey() + SEPARATOR + duration.getKey() + "\n");
+                }
+            }
+
+        } catch (Exception e) {
+            p("Got troubles while tried to write durations of test packages: " + e.getClass() + " - " + e.getMessage());
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+
+    /**
+     * Tells whenever specified id can't be written to the history file.
+     *
+     * @param id Id of a test or a test package
+     * @return True if id contains a separator or a line break, or false otherwise
+     */
+    private boolean isMalformed(String id) {
+        return id.contains(SEPARATOR) || id.contains("\n") || id.contains("\r");
+    }
+
+    /**
+     * Prints specified text to debug output stream.
+     *
+     * @param text A text to be printed to debug output stream
+     */
+    private void p(String text) {
+        logger.log(Level.ALL, "Test package durations: " + text);
+    }
+}
@@ -0,0 +1,85 @@
+package com.nokia.ci.tas.service;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Policy deciding in which order the tests waiting for testing resources are allocated.
+ *
+ * A policy keeps the monitors of waiting tests and is iterated by the allocator in the order
+ * in which tests should get testing resources. Policies are safe to be used from several threads
+ * and their iterators never fail because of concurrent changes.
+ */
+public interface TestSchedulingPolicy extends Iterable<TestMonitor> {
+
+    /**
+     * Name of the first come, first served policy.
+     */
+    public static final String FIFO = "fifo";
+
+    /**
+     * Name of the fair share policy.
+     */
+    public static final String FAIR_SHARE = "fair-share";
+
+    /**
+     * Returns the name of this policy.
+     *
+     * @return Name of the policy
+     */
+    public String getName();
+
+    /**
+     * Adds a monitor of the test waiting for testing resources.
+     *
+     * @param testMonitor Monitor of the waiting test
+     * @return True if monitor was added or false if it was already waiting
+     */
+    public boolean add(TestMonitor testMonitor);
+
+    /**
+     * Removes a monitor of the test which is not waiting for testing resources anymore.
+     *
+     * @param testMonitor Monitor of the test
+     * @return True if monitor was removed or false if it wasn't waiting
+     */
+    public boolean remove(TestMonitor testMonitor);
+
+    /**
+     * Tells whenever specified test monitor is waiting for testing resources.
+     *
+     * @param testMonitor Monitor of the test
+     * @return True if monitor is waiting or false otherwise
+     */
+    public boolean contains(TestMonitor testMonitor);
+
+    /**
+     * Tells whenever there are no waiting tests.
+     *
+     * @return True if there are no waiting tests or false otherwise
+     */
+    public boolean isEmpty();
+
+    /**
+     * Returns the number of waiting tests.
+     *
+     * @return Number of waiting tests
+     */
+    public int size();
+
+    /**
+     * Returns waiting tests in the order they should get testing resources.
+     * Order may depend on the device time charged to remote clients during the iteration.
+     *
+     * @return Iterator over the monitors of waiting tests
+     */
+    @Override
+    public Iterator<TestMonitor> iterator();
+
+    /**
+     * Returns a snapshot of waiting tests in the order they would get testing resources right now.
+     *
+     * @return Monitors of waiting tests, the first one having the first position in queue
+     */
+    public List<TestMonitor> getQueue();
+}
@@ -0,0 +1,82 @@
+package com.nokia.ci.tas;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.nokia.ci.tas.commons.Actor;
+import com.nokia.ci.tas.commons.ActorRuntime;
+
+/**
+ * Measures how fast messages are delivered to many actors sharing a bounded pool of threads,
+ * and how soon an idle actor wakes up after a message arrives.
+ *
+ * Usage: ActorRuntimeBenchmark [number of actors] [messages per actor]
+ */
+public class ActorRuntimeBenchmark {
+
+	/**
+	 * @param args
+	 */
+	public static void main( String[] args ) throws Exception {
+		int numberOfActors = args.length > 0 ? Integer.parseInt( args[0] ) : 300;
+		int messagesPerActor = args.length > 1 ? Integer.parseInt( args[1] ) : 1000;
+
+		ActorRuntime runtime = new ActorRuntime( "Test", 4 );
+
+		CountDownLatch delivered = new CountDownLatch( numberOfActors * messagesPerActor );
+		List<CountingActor> actors = new ArrayList<CountingActor>();
+		for ( int i = 0; i < numberOfActors; i++ ) {
+			CountingActor actor = new CountingActor( "actor_" + i, runtime, delivered );
+			actor.start();
+			actors.add( actor );
+		}
+
+		long startedAt = System.currentTimeMillis();
+		for ( int j = 0; j < messagesPerActor; j++ ) {
+			for ( CountingActor actor : actors ) {
+				actor.tell( Integer.valueOf( j ) );
+			}
+		}
+
+		delivered.await();
+		long duration = System.currentTimeMillis() - startedAt;
+
+		// An idle actor is woken up right after a message arrives
+		CountingActor idle = actors.get( 0 );
+		Thread.sleep( 100 );
+		long wokenUpAt = System.nanoTime();
+		idle.tell( Integer.valueOf( messagesPerActor ) );
+		while ( idle.count.get() <= messagesPerActor ) {
+			Thread.yield();
+		}
+		long latency = ( System.nanoTime() - wokenUpAt ) / 1000L;
+
+		System.out.println( "Actors: " + numberOfActors + ", threads: " + runtime.getNumberOfThreads() + ", delivered "
+			+ ( numberOfActors * messagesPerActor ) + " messages in " + duration + " ms, wake up latency " + latency + " us" );
+
+		runtime.shutdown();
+	}
+
+	private static class CountingActor extends Actor<Integer> {
+
+		private AtomicInteger count = new AtomicInteger();
+		private CountDownLatch delivered;
+
+		CountingActor( String name, ActorRuntime runtime, CountDownLatch delivered ) {
+			super( name, runtime );
+			this.delivered = delivered;
+		}
+
+		@Override
+		protected boolean act() {
+			while ( nextMessage() != null ) {
+				count.incrementAndGet();
+				delivered.countDown();
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package com.nokia.ci.tas;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import com.nokia.ci.tas.commons.Actor;
+import com.nokia.ci.tas.commons.ActorRuntime;
+
+/**
+ * Checks that actors handle their messages one at a time on a bounded number of threads,
+ * wake up right after a message arrives and end their work.
+ */
+public class ActorRuntimeTest extends TestCase {
+
+	private static final int NUMBER_OF_THREADS = 4;
+
+	private ActorRuntime runtime;
+
+	protected void setUp() throws Exception {
+		runtime = new ActorRuntime( "Test", NUMBER_OF_THREADS );
+	}
+
+	protected void tearDown() throws Exception {
+		runtime.shutdown();
+	}
+
+	public void testMessagesAreHandledInOrder() throws Exception {
+		int numberOfActors = 50;
+		int messagesPerActor = 200;
+		int threadsBefore = Thread.activeCount();
+
+		CountDownLatch delivered = new CountDownLatch( numberOfActors * messagesPerActor );
+		List<CountingActor> actors = new ArrayList<CountingActor>();
+		for ( int i = 0; i < numberOfActors; i++ ) {
+			CountingActor actor = new CountingActor( "actor_" + i, runtime, delivered );
+			actor.start();
+			actors.add( actor );
+		}
+
+		for ( int j = 0; j < messagesPerActor; j++ ) {
+			for ( CountingActor actor : actors ) {
+				actor.tell( Integer.valueOf( j ) );
+			}
+		}
+
+		assertTrue( "all messages are delivered", delivered.await( 30L, TimeUnit.SECONDS ) );
+
+		for ( CountingActor actor : actors ) {
+			assertTrue( "messages are handled in order", actor.isInOrder );
+			assertEquals( "actor is never run on two threads at once", 1, actor.maximalConcurrency.get() );
+		}
+		assertTrue( "number of worker threads is bounded", runtime.getNumberOfThreads() <= NUMBER_OF_THREADS );
+		assertTrue( "number of threads doesn't grow with the number of actors", Thread.activeCount() <= threadsBefore + NUMBER_OF_THREADS + 1 );
+	}
+
+	public void testIdleActorIsWokenUpAndEnds() throws Exception {
+		CountingActor idle = new CountingActor( "idle", runtime, new CountDownLatch( 1 ) );
+		idle.start();
+		Thread.sleep( 100 );
+
+		idle.tell( Integer.valueOf( 0 ) );
+		long waitingStartedAt = System.currentTimeMillis();
+		while ( idle.count.get() == 0 && System.currentTimeMillis() - waitingStartedAt < 5000L ) {
+			Thread.sleep( 1 );
+		}
+		assertEquals( "idle actor is woken up by a message", 1, idle.count.get() );
+
+		idle.tell( Integer.valueOf( -1 ) );
+		waitingStartedAt = System.currentTimeMillis();
+		while ( !idle.isEnded() && System.currentTimeMillis() - waitingStartedAt < 5000L ) {
+			Thread.sleep( 1 );
+		}
+		assertTrue( "actor ends its work", idle.isEnded() && idle.hasEnded );
+	}
+
+	private static class CountingActor extends Actor<Integer> {
+
+		private AtomicInteger count = new AtomicInteger();
+		private AtomicInteger concurrency = new AtomicInteger();
+		private AtomicInteger maximalConcurrency = new AtomicInteger();
+		private CountDownLatch delivered;
+		private volatile boolean isInOrder = true;
+		private volatile boolean hasEnded = false;
+
+		CountingActor( String name, ActorRuntime runtime, CountDownLatch delivered ) {
+			super( name, runtime );
+			this.delivered = delivered;
+		}
+
+		@Override
+		protected boolean act() {
+			int current = concurrency.incrementAndGet();
+			if ( current > maximalConcurrency.get() )
+				maximalConcurrency.set( current );
+
+			try {
+				Integer message = null;
+				while ( ( message = nextMessage() ) != null ) {
+					if ( message.intValue() < 0 )
+						return false;
+					if ( message.intValue() != count.get() )
+						isInOrder = false;
+					count.incrementAndGet();
+					delivered.countDown();
+				}
+				return true;
+			} finally {
+				concurrency.decrementAndGet();
+			}
+		}
+
+		@Override
+		protected void ended() {
+			hasEnded = true;
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package com.nokia.ci.tas;
+
+import junit.framework.TestCase;
+
+import com.nokia.ci.tas.service.AllocationLatency;
+
+/**
+ * Checks that time to allocation is summed up over all allocations and its percentiles are taken from the most recent ones.
+ */
+public class AllocationLatencyTest extends TestCase {
+
+	public void testNothingAllocated() {
+		AllocationLatency latency = new AllocationLatency( 10 );
+
+		assertEquals( "no allocations", 0L, latency.getNumberOfAllocations() );
+		assertEquals( "no average", 0L, latency.getAverageTime() );
+		assertEquals( "no percentile", 0L, latency.getRecentPercentile( 95 ) );
+	}
+
+	public void testPercentilesOfRecentAllocations() {
+		AllocationLatency latency = new AllocationLatency( 100 );
+
+		for ( int i = 1; i <= 100; i++ ) {
+			latency.record( i * 1000L );
+		}
+
+		assertEquals( "all allocations are counted", 100L, latency.getNumberOfAllocations() );
+		assertEquals( "average", 50500L, latency.getAverageTime() );
+		assertEquals( "maximum", 100000L, latency.getMaximalTime() );
+		assertEquals( "median", 50000L, latency.getRecentPercentile( 50 ) );
+		assertEquals( "95th percentile", 95000L, latency.getRecentPercentile( 95 ) );
+	}
+
+	public void testOlderAllocationsFadeOutOfPercentiles() {
+		AllocationLatency latency = new AllocationLatency( 10 );
+
+		for ( int i = 0; i < 10; i++ ) {
+			latency.record( 60000L );
+		}
+		for ( int i = 0; i < 10; i++ ) {
+			latency.record( 1000L );
+		}
+
+		assertEquals( "percentiles are taken from recent allocations", 1000L, latency.getRecentPercentile( 95 ) );
+		assertEquals( "maximum is kept over all allocations", 60000L, latency.getMaximalTime() );
+		assertEquals( "average is kept over all allocations", 30500L, latency.getAverageTime() );
+	}
+}
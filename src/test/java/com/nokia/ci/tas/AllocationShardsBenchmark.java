@@ -0,0 +1,145 @@
+package com.nokia.ci.tas;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+import com.nokia.ci.tas.commons.Product;
+import com.nokia.ci.tas.commons.Util;
+import com.nokia.ci.tas.service.AllocationShards;
+import com.nokia.ci.tas.service.ProductIndex;
+import com.nokia.ci.tas.service.ProductSetMatcher;
+
+/**
+ * Compares the time of searching product sets for all sharded requests one after another with searching the shards in parallel.
+ *
+ * Usage: AllocationShardsBenchmark [number of requests]
+ */
+public class AllocationShardsBenchmark {
+
+	private static final int NUMBER_OF_RM_CODES = 16;
+	private static final int NUMBER_OF_PRODUCTS = 4000;
+
+	/**
+	 * @param args
+	 */
+	public static void main( String[] args ) throws Exception {
+		int numberOfRequests = args.length > 0 ? Integer.parseInt( args[0] ) : 2000;
+
+		Random random = new Random( 1L );
+		final ProductIndex index = new ProductIndex();
+		final List<Product> products = new ArrayList<Product>();
+
+		for ( int p = 0; p < NUMBER_OF_PRODUCTS; p++ ) {
+			Product product = createProduct( "" + ( 100000 + p ), "rm-" + random.nextInt( NUMBER_OF_RM_CODES ) );
+			products.add( product );
+			index.update( product );
+		}
+
+		// Each request requires two or three products of the same RM code, with a few requests mixing RM codes
+		final List<List<ProductIndex.Requirement>> requests = new ArrayList<List<ProductIndex.Requirement>>();
+
+		for ( int r = 0; r < numberOfRequests; r++ ) {
+			String rmCode = "rm-" + random.nextInt( NUMBER_OF_RM_CODES );
+			String environment = "";
+
+			for ( int p = 2 + random.nextInt( 2 ); p > 0; p-- ) {
+				String productRMCode = random.nextInt( 20 ) == 0 ? "rm-" + random.nextInt( NUMBER_OF_RM_CODES ) : rmCode;
+				environment += "(rm-code:" + productRMCode + ";)";
+			}
+
+			requests.add( compile( environment ) );
+		}
+
+		AllocationShards<Integer> shards = new AllocationShards<Integer>();
+		for ( int r = 0; r < requests.size(); r++ ) {
+			shards.add( r, requests.get( r ) );
+		}
+
+		// Serial search of all sharded requests
+		Map<Integer, List<Product>> serialSets = new HashMap<Integer, List<Product>>();
+		long startedAt = System.nanoTime();
+		for ( List<Integer> shard : shards.getShards() ) {
+			search( shard, requests, index, products, serialSets );
+		}
+		long serialTime = System.nanoTime() - startedAt;
+
+		// Parallel search of the shards
+		int numberOfThreads = Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = Executors.newFixedThreadPool( numberOfThreads );
+		final Map<Integer, List<Product>> parallelSets = new ConcurrentHashMap<Integer, List<Product>>();
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+
+		startedAt = System.nanoTime();
+		for ( final List<Integer> shard : shards.getShards() ) {
+			futures.add( executor.submit( new Runnable() {
+				public void run() {
+					search( shard, requests, index, products, parallelSets );
+				}
+			} ) );
+		}
+		for ( Future<?> future : futures ) {
+			future.get();
+		}
+		long parallelTime = System.nanoTime() - startedAt;
+		executor.shutdown();
+
+		System.out.println( "Requests: " + numberOfRequests + ", shards: " + shards.getNumberOfShards() + ", cross-shard requests: "
+			+ shards.getCrossShardRequests().size() + ", served: " + parallelSets.size() + ( serialSets.equals( parallelSets ) ? "" : " (different sets)" )
+			+ ", serial search took " + ( serialTime / 1000000L ) + " ms and parallel search on " + numberOfThreads + " threads took " + ( parallelTime / 1000000L ) + " ms" );
+	}
+
+	/**
+	 * Searches a product set for each request of a shard, as if each found set was reserved at once.
+	 */
+	private static void search( List<Integer> shard, List<List<ProductIndex.Requirement>> requests, ProductIndex index, List<Product> products,
+			Map<Integer, List<Product>> productSets ) {
+		Set<Product> takenProducts = new HashSet<Product>();
+
+		for ( Integer request : shard ) {
+			List<Set<String>> matchingProducts = new ArrayList<Set<String>>();
+			for ( ProductIndex.Requirement requirement : requests.get( request ) ) {
+				matchingProducts.add( index.getMatchingProducts( requirement ) );
+			}
+
+			List<Product> freeProducts = new ArrayList<Product>();
+			for ( Product product : products ) {
+				if ( !takenProducts.contains( product ) )
+					freeProducts.add( product );
+			}
+
+			List<List<Product>> found = new ProductSetMatcher( matchingProducts, freeProducts ).findProductSets( 1L );
+
+			if ( !found.isEmpty() ) {
+				takenProducts.addAll( found.get( 0 ) );
+				productSets.put( request, found.get( 0 ) );
+			}
+		}
+	}
+
+	private static List<ProductIndex.Requirement> compile( String environment ) {
+		List<ProductIndex.Requirement> requirements = new ArrayList<ProductIndex.Requirement>();
+		for ( String expression : Util.createRegularExpressions( environment ) ) {
+			requirements.add( ProductIndex.Requirement.compile( Pattern.compile( expression ) ) );
+		}
+		return requirements;
+	}
+
+	private static Product createProduct( String imei, String rmCode ) {
+		Product product = new Product();
+		product.setIMEI( imei );
+		product.setRMCode( rmCode );
+		product.setStatus( Product.Status.FREE, "" );
+		return product;
+	}
+
+}
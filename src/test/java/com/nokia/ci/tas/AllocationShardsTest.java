@@ -0,0 +1,168 @@
+package com.nokia.ci.tas;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+import com.nokia.ci.tas.commons.Product;
+import com.nokia.ci.tas.commons.Util;
+import com.nokia.ci.tas.service.AllocationShards;
+import com.nokia.ci.tas.service.ProductIndex;
+import com.nokia.ci.tas.service.ProductSetMatcher;
+
+/**
+ * Checks that waiting requests are sharded only by the RM codes all their products share,
+ * and that searching the shards in parallel gives each request the same product set as searching them one after another.
+ */
+public class AllocationShardsTest extends TestCase {
+
+	private static final int NUMBER_OF_RM_CODES = 16;
+	private static final int NUMBER_OF_PRODUCTS = 600;
+
+	public void testParallelSearch() throws Exception {
+		int numberOfRequests = 300;
+		Random random = new Random( 1L );
+		final ProductIndex index = new ProductIndex();
+		final List<Product> products = new ArrayList<Product>();
+
+		for ( int p = 0; p < NUMBER_OF_PRODUCTS; p++ ) {
+			Product product = createProduct( "" + ( 100000 + p ), "rm-" + random.nextInt( NUMBER_OF_RM_CODES ) );
+			products.add( product );
+			index.update( product );
+		}
+
+		// Each request requires two or three products of the same RM code, with a few requests mixing RM codes
+		final List<List<ProductIndex.Requirement>> requests = new ArrayList<List<ProductIndex.Requirement>>();
+
+		for ( int r = 0; r < numberOfRequests; r++ ) {
+			String rmCode = "rm-" + random.nextInt( NUMBER_OF_RM_CODES );
+			String environment = "";
+
+			for ( int p = 2 + random.nextInt( 2 ); p > 0; p-- ) {
+				String productRMCode = random.nextInt( 20 ) == 0 ? "rm-" + random.nextInt( NUMBER_OF_RM_CODES ) : rmCode;
+				environment += "(rm-code:" + productRMCode + ";)";
+			}
+
+			requests.add( compile( environment ) );
+		}
+
+		AllocationShards<Integer> shards = new AllocationShards<Integer>();
+		for ( int r = 0; r < requests.size(); r++ ) {
+			shards.add( r, requests.get( r ) );
+		}
+
+		// Serial search of all sharded requests
+		Map<Integer, List<Product>> serialSets = new HashMap<Integer, List<Product>>();
+		for ( List<Integer> shard : shards.getShards() ) {
+			search( shard, requests, index, products, serialSets );
+		}
+
+		// Parallel search of the shards
+		ExecutorService executor = Executors.newFixedThreadPool( 4 );
+		final Map<Integer, List<Product>> parallelSets = new ConcurrentHashMap<Integer, List<Product>>();
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+
+		for ( final List<Integer> shard : shards.getShards() ) {
+			futures.add( executor.submit( new Runnable() {
+				public void run() {
+					search( shard, requests, index, products, parallelSets );
+				}
+			} ) );
+		}
+		for ( Future<?> future : futures ) {
+			future.get();
+		}
+		executor.shutdown();
+
+		assertTrue( "some requests are served", !parallelSets.isEmpty() );
+		assertEquals( "shards searched in parallel give the same product sets", serialSets, parallelSets );
+
+		Set<String> takenIMEIs = new HashSet<String>();
+		for ( List<Product> productSet : parallelSets.values() ) {
+			for ( Product product : productSet ) {
+				assertTrue( "no product is given to two requests of different shards", takenIMEIs.add( product.getIMEI() ) );
+			}
+		}
+	}
+
+	public void testShards() {
+		assertEquals( "products of the same RM code share a shard", "rm-1",
+			AllocationShards.getShardKey( compile( "(rm-code:rm-1;)(rm-code:RM-1;role:remote;)" ) ) );
+		assertNull( "several RM codes are cross-shard", AllocationShards.getShardKey( compile( "(rm-code:rm-1;)(rm-code:rm-2;)" ) ) );
+		assertNull( "products without RM codes are cross-shard", AllocationShards.getShardKey( compile( "(rm-code:rm-1;)(hardware-type:x;)" ) ) );
+
+		ProductIndex.Requirement requirement = compile( "rm-code:rm-1;tas-hostname:h;" ).get( 0 );
+		assertEquals( "required values are found", "rm-1", requirement.getValue( "rm-code" ) );
+		assertEquals( "required values are found", "h", requirement.getValue( "tas-hostname" ) );
+		assertNull( "longer parameter names are not mixed up", requirement.getValue( "hostname" ) );
+		assertNull( "irregular requirements have no values",
+			ProductIndex.Requirement.compile( Pattern.compile( "rm-code:rm-[12];" ) ).getValue( "rm-code" ) );
+
+		AllocationShards<String> shards = new AllocationShards<String>();
+		shards.add( "first", compile( "rm-code:rm-2;" ) );
+		shards.add( "second", compile( "rm-code:rm-1;" ) );
+		shards.add( "third", compile( "(rm-code:rm-1;)(rm-code:rm-2;)" ) );
+		shards.add( "fourth", compile( "rm-code:rm-2;" ) );
+
+		assertEquals( "requests of the same RM code share a shard", 2, shards.getNumberOfShards() );
+		assertEquals( "shards keep the order of requests", "[first, fourth]", shards.getShards().get( 0 ).toString() );
+		assertEquals( "shards keep the order of requests", "[second]", shards.getShards().get( 1 ).toString() );
+		assertEquals( "cross-shard requests are kept apart", "[third]", shards.getCrossShardRequests().toString() );
+	}
+
+	/**
+	 * Searches a product set for each request of a shard, as if each found set was reserved at once.
+	 */
+	private static void search( List<Integer> shard, List<List<ProductIndex.Requirement>> requests, ProductIndex index, List<Product> products,
+			Map<Integer, List<Product>> productSets ) {
+		Set<Product> takenProducts = new HashSet<Product>();
+
+		for ( Integer request : shard ) {
+			List<Set<String>> matchingProducts = new ArrayList<Set<String>>();
+			for ( ProductIndex.Requirement requirement : requests.get( request ) ) {
+				matchingProducts.add( index.getMatchingProducts( requirement ) );
+			}
+
+			List<Product> freeProducts = new ArrayList<Product>();
+			for ( Product product : products ) {
+				if ( !takenProducts.contains( product ) )
+					freeProducts.add( product );
+			}
+
+			List<List<Product>> found = new ProductSetMatcher( matchingProducts, freeProducts ).findProductSets( 1L );
+
+			if ( !found.isEmpty() ) {
+				takenProducts.addAll( found.get( 0 ) );
+				productSets.put( request, found.get( 0 ) );
+			}
+		}
+	}
+
+	private static List<ProductIndex.Requirement> compile( String environment ) {
+		List<ProductIndex.Requirement> requirements = new ArrayList<ProductIndex.Requirement>();
+		for ( String expression : Util.createRegularExpressions( environment ) ) {
+			requirements.add( ProductIndex.Requirement.compile( Pattern.compile( expression ) ) );
+		}
+		return requirements;
+	}
+
+	private static Product createProduct( String imei, String rmCode ) {
+		Product product = new Product();
+		product.setIMEI( imei );
+		product.setRMCode( rmCode );
+		product.setStatus( Product.Status.FREE, "" );
+		return product;
+	}
+
+}
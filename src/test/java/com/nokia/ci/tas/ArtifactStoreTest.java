@@ -0,0 +1,114 @@
+package com.nokia.ci.tas;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.nokia.ci.tas.commons.ContentHash;
+import com.nokia.ci.tas.communicator.ArtifactStore;
+
+/**
+ * Checks storing and restoring of artifacts by their content hashes, eviction of the least recently used artifacts
+ * and keeping of the store over restarts of the communicator.
+ */
+public class ArtifactStoreTest extends TestCase {
+
+	private File root;
+	private File storeDirectory;
+	private File workspace1;
+	private File workspace2;
+
+	protected void setUp() throws Exception {
+		root = File.createTempFile( "artifact_store", "" );
+		root.delete();
+		root.mkdirs();
+
+		storeDirectory = new File( root, "artifacts" );
+		workspace1 = new File( root, "workspace1" );
+		workspace2 = new File( root, "workspace2" );
+		workspace1.mkdirs();
+		workspace2.mkdirs();
+	}
+
+	protected void tearDown() throws Exception {
+		deleteRecursively( root );
+	}
+
+	public void testContentHash() throws Exception {
+		File image = createFile( new File( workspace1, "flash_image.bin" ), 3, 1L );
+		File tests = createFile( new File( workspace1, "tests.zip" ), 2, 2L );
+
+		String imageHash = ContentHash.of( image );
+		assertEquals( "content hash is a hexadecimal SHA-256", 64, imageHash.length() );
+		assertEquals( "content hash is stable", imageHash, ContentHash.of( image ) );
+		assertFalse( "different contents have different hashes", imageHash.equals( ContentHash.of( tests ) ) );
+	}
+
+	public void testStoreAndRestore() throws Exception {
+		File image = createFile( new File( workspace1, "flash_image.bin" ), 3, 1L );
+		File tests = createFile( new File( workspace1, "tests.zip" ), 2, 2L );
+		File other = createFile( new File( workspace1, "other.bin" ), 2, 3L );
+		String imageHash = ContentHash.of( image );
+
+		// Quota of 5 MB
+		ArtifactStore store = new ArtifactStore( storeDirectory, 5L * 1048576L );
+		assertNull( "nothing is known before storing", store.getContentHash( "client", "flash_image.bin" ) );
+		assertTrue( "artifact is stored", store.store( image, imageHash, "client", "flash_image.bin" ) );
+		assertTrue( "second artifact is stored", store.store( tests, ContentHash.of( tests ), "client", "tests.zip" ) );
+		assertEquals( "hash of stored artifact is known", imageHash, store.getContentHash( "client", "flash_image.bin" ) );
+		assertNull( "hashes are known per client", store.getContentHash( "another_client", "flash_image.bin" ) );
+
+		File restored = new File( workspace2, "flash_image.bin" );
+		assertTrue( "artifact is restored", store.restore( imageHash, restored ) );
+		assertEquals( "restored artifact has the same content", imageHash, ContentHash.calculate( restored ) );
+
+		// The image was used after the tests, so tests are the least recently used
+		assertTrue( "third artifact is stored", store.store( other, ContentHash.of( other ), "client", "other.bin" ) );
+		assertNull( "the least recently used artifact is evicted", store.getContentHash( "client", "tests.zip" ) );
+		assertNotNull( "recently used artifact is kept", store.getContentHash( "client", "flash_image.bin" ) );
+		assertFalse( "evicted artifact cannot be restored", store.restore( ContentHash.of( tests ), new File( workspace2, "tests.zip" ) ) );
+
+		// Deleting the workspace doesn't affect the store
+		image.delete();
+		restored.delete();
+
+		ArtifactStore reopened = new ArtifactStore( storeDirectory, 5L * 1048576L );
+		assertEquals( "store is kept over restarts", imageHash, reopened.getContentHash( "client", "flash_image.bin" ) );
+		assertTrue( "artifact is restored after restart", reopened.restore( imageHash, restored ) );
+		assertEquals( "artifact restored after restart has the same content", imageHash, ContentHash.calculate( restored ) );
+	}
+
+	public void testDisabledStore() throws Exception {
+		File other = createFile( new File( workspace1, "other.bin" ), 2, 3L );
+
+		ArtifactStore disabled = new ArtifactStore( new File( root, "disabled" ), 0L );
+		assertFalse( "disabled store keeps nothing", disabled.store( other, ContentHash.of( other ), "client", "other.bin" ) );
+	}
+
+	private static File createFile( File file, int sizeInMegabytes, long seed ) throws Exception {
+		byte[] buffer = new byte[1048576];
+		Random random = new Random( seed );
+		FileOutputStream output = new FileOutputStream( file );
+		try {
+			for ( int i = 0; i < sizeInMegabytes; i++ ) {
+				random.nextBytes( buffer );
+				output.write( buffer );
+			}
+		} finally {
+			output.close();
+		}
+		return file;
+	}
+
+	private static void deleteRecursively( File file ) {
+		File[] files = file.listFiles();
+		if ( files != null ) {
+			for ( File child : files ) {
+				deleteRecursively( child );
+			}
+		}
+		file.delete();
+	}
+}
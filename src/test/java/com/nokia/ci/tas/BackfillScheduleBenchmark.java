@@ -0,0 +1,148 @@
+package com.nokia.ci.tas;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.nokia.ci.tas.commons.Constant;
+import com.nokia.ci.tas.commons.Product;
+import com.nokia.ci.tas.service.BackfillSchedule;
+
+/**
+ * Simulates a test farm in which single product tests are mixed with tests requiring several products at once.
+ * Compares the moments when wide tests are started and when all tests are finished, with taking any test
+ * which fits into free products, with strict first come first served, and with backfilling.
+ *
+ * Usage: BackfillScheduleBenchmark [number of rounds]
+ */
+public class BackfillScheduleBenchmark {
+
+	private static final int GREEDY = 0;
+	private static final int FIFO = 1;
+	private static final int BACKFILL = 2;
+
+	private static final String[] MODES = { "taking any fitting test", "first come first served", "backfilling" };
+
+	/**
+	 * @param args
+	 */
+	public static void main( String[] args ) throws Exception {
+		int numberOfRounds = args.length > 0 ? Integer.parseInt( args[0] ) : 200;
+
+		long[] wideTestWaitingTimes = new long[MODES.length];
+		long[] finishingTimes = new long[MODES.length];
+
+		for ( int round = 0; round < numberOfRounds; round++ ) {
+			for ( int mode = 0; mode < MODES.length; mode++ ) {
+				long[] result = simulate( new Random( round ), mode );
+				wideTestWaitingTimes[mode] += result[0];
+				finishingTimes[mode] += result[1];
+			}
+		}
+
+		System.out.println( "Rounds: " + numberOfRounds );
+
+		for ( int mode = 0; mode < MODES.length; mode++ ) {
+			System.out.println( "With " + MODES[mode] + " wide tests waited " + ( wideTestWaitingTimes[mode] / numberOfRounds / Constant.ONE_MINUTE )
+				+ " minutes and all tests were finished in " + ( finishingTimes[mode] / numberOfRounds / Constant.ONE_MINUTE ) + " minutes on average" );
+		}
+	}
+
+	/**
+	 * Simulates a single test node with minute steps.
+	 *
+	 * @return Total waiting time of wide tests and the moment when all tests were finished
+	 */
+	private static long[] simulate( Random random, int mode ) {
+		BackfillSchedule schedule = new BackfillSchedule();
+		int numberOfProducts = 4 + random.nextInt( 5 );
+		List<Product> products = new ArrayList<Product>();
+		Set<String> allProducts = new HashSet<String>();
+		long[] endTimes = new long[numberOfProducts];
+
+		for ( int p = 0; p < numberOfProducts; p++ ) {
+			products.add( createProduct( "product" + p ) );
+			allProducts.add( "product" + p );
+		}
+
+		// Tests are issued at once, each of them needs some number of products for some duration
+		int numberOfTests = 10 + random.nextInt( 30 );
+		List<int[]> waitingTests = new ArrayList<int[]>();
+
+		for ( int t = 0; t < numberOfTests; t++ ) {
+			int width = random.nextInt( 5 ) == 0 ? 2 + random.nextInt( numberOfProducts - 1 ) : 1;
+			int duration = 5 + random.nextInt( 60 );
+			waitingTests.add( new int[] { t, width, duration } );
+		}
+
+		long wideTestWaitingTime = 0L;
+		long finishedAt = 0L;
+		long timeout = 10L * Constant.ONE_HOUR;
+
+		for ( long now = 0L; !waitingTests.isEmpty(); now += Constant.ONE_MINUTE ) {
+			// Release products of finished tests
+			for ( int p = 0; p < numberOfProducts; p++ ) {
+				Product product = products.get( p );
+
+				if ( !product.isFree() && endTimes[p] <= now ) {
+					schedule.removePredictedEndTime( product.getStatusDetails() );
+					product.setStatus( Product.Status.FREE, "" );
+				}
+			}
+
+			schedule.clearReservation();
+
+			for ( int w = 0; w < waitingTests.size(); w++ ) {
+				int[] test = waitingTests.get( w );
+				long endTime = now + test[2] * Constant.ONE_MINUTE;
+				List<Product> freeProducts = new ArrayList<Product>();
+
+				for ( Product product : products ) {
+					if ( product.isFree() && schedule.isAvailable( product, endTime ) ) {
+						freeProducts.add( product );
+					}
+				}
+
+				if ( freeProducts.size() >= test[1] ) {
+					for ( int p = 0; p < test[1]; p++ ) {
+						Product product = freeProducts.get( p );
+						product.setStatus( Product.Status.BUSY, "test" + test[0] );
+						product.setReservation( now, timeout );
+						endTimes[products.indexOf( product )] = endTime;
+					}
+
+					schedule.setPredictedEndTime( "test" + test[0], endTime );
+					finishedAt = Math.max( finishedAt, endTime );
+
+					if ( test[1] > 1 ) {
+						wideTestWaitingTime += now;
+					}
+
+					waitingTests.remove( w-- );
+				} else if ( mode == FIFO ) {
+					break;
+				} else if ( mode == BACKFILL && test[1] > 1 && !schedule.hasReservation() ) {
+					List<Set<String>> matchingProducts = new ArrayList<Set<String>>();
+
+					for ( int p = 0; p < test[1]; p++ ) {
+						matchingProducts.add( allProducts );
+					}
+
+					List<Product> productSet = schedule.findEarliestProductSet( matchingProducts, products, now );
+					schedule.reserve( "test" + test[0], productSet, schedule.getPredictedStartTime( productSet, now ) );
+				}
+			}
+		}
+
+		return new long[] { wideTestWaitingTime, finishedAt };
+	}
+
+	private static Product createProduct( String imei ) {
+		Product product = new Product( "rm-100", imei );
+		product.setStatus( Product.Status.FREE );
+		return product;
+	}
+
+}
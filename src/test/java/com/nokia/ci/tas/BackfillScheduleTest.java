@@ -0,0 +1,194 @@
+package com.nokia.ci.tas;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import com.nokia.ci.tas.commons.Constant;
+import com.nokia.ci.tas.commons.Product;
+import com.nokia.ci.tas.service.BackfillSchedule;
+
+/**
+ * Checks predictions of product releases and kept products, and that in a simulated test farm mixing single product tests
+ * with tests requiring several products at once backfilling neither starves the wide tests nor leaves products idle.
+ */
+public class BackfillScheduleTest extends TestCase {
+
+	private static final int GREEDY = 0;
+	private static final int FIFO = 1;
+	private static final int BACKFILL = 2;
+
+	public void testBackfilling() {
+		int numberOfRounds = 50;
+		long[] wideTestWaitingTimes = new long[3];
+		long[] finishingTimes = new long[3];
+
+		for ( int round = 0; round < numberOfRounds; round++ ) {
+			for ( int mode = GREEDY; mode <= BACKFILL; mode++ ) {
+				long[] result = simulate( new Random( round ), mode );
+				wideTestWaitingTimes[mode] += result[0];
+				finishingTimes[mode] += result[1];
+			}
+		}
+
+		assertTrue( "wide tests are not starved by backfilling", wideTestWaitingTimes[BACKFILL] <= wideTestWaitingTimes[GREEDY] );
+		assertTrue( "backfilling uses idle products", finishingTimes[BACKFILL] <= finishingTimes[FIFO] );
+	}
+
+	public void testPredictions() {
+		BackfillSchedule schedule = new BackfillSchedule();
+		long now = 1000000L;
+
+		Product free = createProduct( "free" );
+		Product busy = createProduct( "busy" );
+		busy.setStatus( Product.Status.BUSY, "test_1" );
+		busy.setReservation( now - 100L, 1000L );
+		Product disabled = createProduct( "disabled" );
+		disabled.setStatus( Product.Status.DISABLED );
+
+		assertEquals( "free product is free right now", now, schedule.getPredictedFreeTime( free, now ) );
+		assertEquals( "busy product is released at the end of its reservation at the latest", now + 900L, schedule.getPredictedFreeTime( busy, now ) );
+		assertEquals( "disabled product is never predicted to be free", Long.MAX_VALUE, schedule.getPredictedFreeTime( disabled, now ) );
+
+		schedule.setPredictedEndTime( "test_1", now + 300L );
+		assertEquals( "busy product is released when its test is predicted to finish", now + 300L, schedule.getPredictedFreeTime( busy, now ) );
+
+		schedule.setPredictedEndTime( "test_1", now + 5000L );
+		assertEquals( "prediction never exceeds the reservation", now + 900L, schedule.getPredictedFreeTime( busy, now ) );
+
+		schedule.removePredictedEndTime( "test_1" );
+		assertEquals( "finished test is forgotten", now + 900L, schedule.getPredictedFreeTime( busy, now ) );
+
+		// Pattern #1 matches "a" products, pattern #2 matches "b" products
+		Product a1 = createBusyProduct( "a1", now, 100L );
+		Product a2 = createProduct( "a2" );
+		Product b1 = createBusyProduct( "b1", now, 50L );
+		Product b2 = createBusyProduct( "b2", now, 200L );
+		List<Set<String>> matchingProducts = new ArrayList<Set<String>>();
+		matchingProducts.add( new HashSet<String>( Arrays.asList( "a1", "a2" ) ) );
+		matchingProducts.add( new HashSet<String>( Arrays.asList( "b1", "b2" ) ) );
+
+		List<Product> earliest = schedule.findEarliestProductSet( matchingProducts, Arrays.asList( b2, a1, b1, a2 ), now );
+		assertTrue( "set released the soonest is found", earliest != null && earliest.size() == 2 && earliest.contains( a2 ) && earliest.contains( b1 ) );
+		assertEquals( "set is free when its last product is free", now + 50L, schedule.getPredictedStartTime( earliest, now ) );
+		assertNull( "no set is found without matching products", schedule.findEarliestProductSet( matchingProducts, Arrays.asList( a1, a2 ), now ) );
+
+		assertFalse( "nothing is kept at first", schedule.hasReservation() );
+		schedule.reserve( "wide", earliest, now + 50L );
+		assertTrue( "products are kept for the test", schedule.hasReservation() && "wide".equals( schedule.getReservingTestId() ) );
+		assertTrue( "test finishing before the window can use kept product", schedule.isAvailable( a2, now + 50L ) );
+		assertFalse( "test finishing after the window can't use kept product", schedule.isAvailable( a2, now + 51L ) );
+		assertTrue( "products which are not kept can be used by any test", schedule.isAvailable( a1, now + 1000L ) );
+
+		schedule.clearReservation();
+		assertTrue( "cleared products can be used by any test", !schedule.hasReservation() && schedule.isAvailable( a2, now + 1000L ) );
+	}
+
+	/**
+	 * Simulates a single test node with minute steps.
+	 *
+	 * @return Total waiting time of wide tests and the moment when all tests were finished
+	 */
+	private static long[] simulate( Random random, int mode ) {
+		BackfillSchedule schedule = new BackfillSchedule();
+		int numberOfProducts = 4 + random.nextInt( 5 );
+		List<Product> products = new ArrayList<Product>();
+		Set<String> allProducts = new HashSet<String>();
+		long[] endTimes = new long[numberOfProducts];
+
+		for ( int p = 0; p < numberOfProducts; p++ ) {
+			products.add( createProduct( "product" + p ) );
+			allProducts.add( "product" + p );
+		}
+
+		// Tests are issued at once, each of them needs some number of products for some duration
+		int numberOfTests = 10 + random.nextInt( 30 );
+		List<int[]> waitingTests = new ArrayList<int[]>();
+
+		for ( int t = 0; t < numberOfTests; t++ ) {
+			int width = random.nextInt( 5 ) == 0 ? 2 + random.nextInt( numberOfProducts - 1 ) : 1;
+			int duration = 5 + random.nextInt( 60 );
+			waitingTests.add( new int[] { t, width, duration } );
+		}
+
+		long wideTestWaitingTime = 0L;
+		long finishedAt = 0L;
+		long timeout = 10L * Constant.ONE_HOUR;
+
+		for ( long now = 0L; !waitingTests.isEmpty(); now += Constant.ONE_MINUTE ) {
+			// Release products of finished tests
+			for ( int p = 0; p < numberOfProducts; p++ ) {
+				Product product = products.get( p );
+
+				if ( !product.isFree() && endTimes[p] <= now ) {
+					schedule.removePredictedEndTime( product.getStatusDetails() );
+					product.setStatus( Product.Status.FREE, "" );
+				}
+			}
+
+			schedule.clearReservation();
+
+			for ( int w = 0; w < waitingTests.size(); w++ ) {
+				int[] test = waitingTests.get( w );
+				long endTime = now + test[2] * Constant.ONE_MINUTE;
+				List<Product> freeProducts = new ArrayList<Product>();
+
+				for ( Product product : products ) {
+					if ( product.isFree() && schedule.isAvailable( product, endTime ) ) {
+						freeProducts.add( product );
+					}
+				}
+
+				if ( freeProducts.size() >= test[1] ) {
+					for ( int p = 0; p < test[1]; p++ ) {
+						Product product = freeProducts.get( p );
+						product.setStatus( Product.Status.BUSY, "test" + test[0] );
+						product.setReservation( now, timeout );
+						endTimes[products.indexOf( product )] = endTime;
+					}
+
+					schedule.setPredictedEndTime( "test" + test[0], endTime );
+					finishedAt = Math.max( finishedAt, endTime );
+
+					if ( test[1] > 1 ) {
+						wideTestWaitingTime += now;
+					}
+
+					waitingTests.remove( w-- );
+				} else if ( mode == FIFO ) {
+					break;
+				} else if ( mode == BACKFILL && test[1] > 1 && !schedule.hasReservation() ) {
+					List<Set<String>> matchingProducts = new ArrayList<Set<String>>();
+
+					for ( int p = 0; p < test[1]; p++ ) {
+						matchingProducts.add( allProducts );
+					}
+
+					List<Product> productSet = schedule.findEarliestProductSet( matchingProducts, products, now );
+					schedule.reserve( "test" + test[0], productSet, schedule.getPredictedStartTime( productSet, now ) );
+				}
+			}
+		}
+
+		return new long[] { wideTestWaitingTime, finishedAt };
+	}
+
+	private static Product createProduct( String imei ) {
+		Product product = new Product( "rm-100", imei );
+		product.setStatus( Product.Status.FREE );
+		return product;
+	}
+
+	private static Product createBusyProduct( String imei, long now, long remainingTime ) {
+		Product product = createProduct( imei );
+		product.setStatus( Product.Status.BUSY, "test_" + imei );
+		product.setReservation( now, remainingTime );
+		return product;
+	}
+
+}
@@ -0,0 +1,149 @@
+package com.nokia.ci.tas;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.nokia.ci.tas.commons.BinaryMessageCodec;
+import com.nokia.ci.tas.commons.Converter;
+import com.nokia.ci.tas.commons.Product;
+import com.nokia.ci.tas.commons.Test;
+import com.nokia.ci.tas.commons.TestPackage;
+import com.nokia.ci.tas.commons.message.Message;
+import com.nokia.ci.tas.commons.message.ProductOperation;
+import com.nokia.ci.tas.commons.message.TestOperation;
+
+/**
+ * Compares XML and binary encodings of messages by encoded size and by encoding and decoding throughput.
+ * Correctness of the binary encoding is checked by BinaryMessageCodecTest.
+ *
+ * Usage: BinaryEncodingBenchmark [number of messages]
+ */
+public class BinaryEncodingBenchmark {
+
+	/**
+	 * @param args
+	 */
+	public static void main( String[] args ) throws Exception {
+		int numberOfMessages = args.length > 0 ? Integer.parseInt( args[0] ) : 20000;
+
+		Test test = createTest( 40, 8 );
+
+		Message[] messages = new Message[] {
+			new TestOperation( TestOperation.Id.UPDATE, test ),
+			createProductOperation( test ) };
+
+		System.out.println( "Messages: " + numberOfMessages );
+
+		for ( Message message : messages ) {
+			message.setSender( "tas.example.com", 33333 );
+			message.setReceiver( "node.example.com", 15000 );
+
+			byte[] xml = message.toXML().getBytes( "UTF-8" );
+			byte[] binary = BinaryMessageCodec.encode( message );
+
+			// Warm up
+			encodeXML( message, numberOfMessages / 10 );
+			encodeBinary( message, numberOfMessages / 10 );
+			decode( xml, numberOfMessages / 10 );
+			decode( binary, numberOfMessages / 10 );
+
+			System.out.println( message.getClass().getSimpleName() + ": XML " + xml.length + " bytes, binary " + binary.length + " bytes ("
+					+ ( 100 * binary.length / xml.length ) + "%)" );
+			print( "  Encoding XML   ", numberOfMessages, encodeXML( message, numberOfMessages ) );
+			print( "  Encoding binary", numberOfMessages, encodeBinary( message, numberOfMessages ) );
+			print( "  Decoding XML   ", numberOfMessages, decode( xml, numberOfMessages ) );
+			print( "  Decoding binary", numberOfMessages, decode( binary, numberOfMessages ) );
+		}
+	}
+
+	private static long encodeXML( Message message, int numberOfMessages ) throws Exception {
+		long bytes = 0L;
+		long startedAt = System.nanoTime();
+		for ( int i = 0; i < numberOfMessages; i++ ) {
+			bytes += message.toXML().getBytes( "UTF-8" ).length;
+		}
+		long time = System.nanoTime() - startedAt;
+		if ( bytes == 0L )
+			throw new IllegalStateException( "Nothing encoded" );
+		return time;
+	}
+
+	private static long encodeBinary( Message message, int numberOfMessages ) throws Exception {
+		long bytes = 0L;
+		long startedAt = System.nanoTime();
+		for ( int i = 0; i < numberOfMessages; i++ ) {
+			bytes += BinaryMessageCodec.encode( message ).length;
+		}
+		long time = System.nanoTime() - startedAt;
+		if ( bytes == 0L )
+			throw new IllegalStateException( "Nothing encoded" );
+		return time;
+	}
+
+	private static long decode( byte[] data, int numberOfMessages ) {
+		Converter converter = new Converter();
+		long startedAt = System.nanoTime();
+		for ( int i = 0; i < numberOfMessages; i++ ) {
+			if ( converter.handle( new ByteArrayInputStream( data ) ) == null )
+				throw new IllegalStateException( "Message is not decoded" );
+		}
+		return System.nanoTime() - startedAt;
+	}
+
+	private static void print( String name, int numberOfMessages, long time ) {
+		double seconds = time / 1000000000.0;
+		System.out.println( name + ": " + (long) ( numberOfMessages / seconds ) + " messages/s, " + ( time / numberOfMessages ) + " ns/message" );
+	}
+
+	private static Test createTest( int numberOfArtifacts, int numberOfProducts ) {
+		Test test = new Test( "benchmark_test_1" );
+		test.setURL( "http://ci.example.com/job/benchmark/1" );
+		test.setWorkspacePath( "/home/ci/workspace/benchmark" );
+		test.setTimeout( 3600000L );
+		test.setStartTime( 1300000000000L );
+		test.setExecutorApplication( "executor.jar" );
+		test.setExecutorScript( "run_tests.py" );
+		test.setResultsFilename( "results.zip" );
+		test.setStatus( Test.Status.STARTED, "Running on node.example.com" );
+		test.setRequiredEnvironment( "flash" );
+		for ( int i = 0; i < numberOfArtifacts; i++ ) {
+			test.addArtifact( "artifacts/package_" + i + "/flash_image_" + i + ".bin" );
+		}
+		test.addexecutorEnvparam( "BUILD_ID", "1234" );
+		List<String> files = new ArrayList<String>();
+		files.add( "tests_1.zip" );
+		files.add( "tests_2.zip" );
+		test.addTestPackage( new TestPackage( "package_1", files, "flash" ) );
+		List<Product> required = new ArrayList<Product>();
+		List<Product> reserved = new ArrayList<Product>();
+		for ( int i = 0; i < numberOfProducts; i++ ) {
+			required.add( createProduct( "0044001122334" + ( 10 + i ) ) );
+			reserved.add( createProduct( "0044001122334" + ( 10 + i ) ) );
+		}
+		test.setRequiredProducts( required );
+		test.setReservedProducts( reserved );
+		return test;
+	}
+
+	private static ProductOperation createProductOperation( Test test ) {
+		ProductOperation message = new ProductOperation( ProductOperation.Id.UPDATE, createProduct( "004400112233445" ) );
+		message.setTest( test );
+		return message;
+	}
+
+	private static Product createProduct( String imei ) {
+		Product product = new Product();
+		product.setIMEI( imei );
+		product.setRMCode( "RM-999" );
+		product.setHardwareType( "0205" );
+		product.setHostname( "node.example.com" );
+		product.setIPAddress( "10.0.0.15" );
+		product.setPort( "15000" );
+		product.setStatus( Product.Status.BUSY, "Reserved for benchmark_test_1" );
+		product.setReservation( 1300000000000L, 3600000L );
+		product.setTestAutomationService( "tas.example.com", 33333 );
+		product.setSIM1PhoneNumber( "+358401234567" );
+		return product;
+	}
+}
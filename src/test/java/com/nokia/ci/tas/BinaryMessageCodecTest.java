@@ -0,0 +1,227 @@
+package com.nokia.ci.tas;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.nokia.ci.tas.commons.BinaryMessageCodec;
+import com.nokia.ci.tas.commons.Converter;
+import com.nokia.ci.tas.commons.FileDescription;
+import com.nokia.ci.tas.commons.Product;
+import com.nokia.ci.tas.commons.SimCard;
+import com.nokia.ci.tas.commons.Test;
+import com.nokia.ci.tas.commons.TestNodeDescription;
+import com.nokia.ci.tas.commons.TestPackage;
+import com.nokia.ci.tas.commons.message.FileOperation;
+import com.nokia.ci.tas.commons.message.Message;
+import com.nokia.ci.tas.commons.message.ProductOperation;
+import com.nokia.ci.tas.commons.message.RegistryOperation;
+import com.nokia.ci.tas.commons.message.TestOperation;
+import com.nokia.ci.tas.commons.message.TextMessage;
+
+/**
+ * Checks that all message types are decoded from the binary encoding into the same messages,
+ * with their optional fields present or absent, and that frames of unknown versions are rejected.
+ */
+public class BinaryMessageCodecTest extends TestCase {
+
+	public void testTestOperationWithAllFields() throws Exception {
+		assertRoundTrip( new TestOperation( TestOperation.Id.UPDATE, createTest() ) );
+	}
+
+	public void testTestOperationWithoutOptionalFields() throws Exception {
+		assertRoundTrip( new TestOperation( TestOperation.Id.START, new Test( "bare_test" ) ) );
+		assertRoundTrip( new TestOperation( TestOperation.Id.STOP, null ) );
+	}
+
+	public void testProductOperationWithAllFields() throws Exception {
+		ProductOperation message = new ProductOperation( ProductOperation.Id.UPDATE, createProduct( "004400112233445", true ) );
+		message.setTest( createTest() );
+		assertRoundTrip( message );
+	}
+
+	public void testProductOperationWithoutOptionalFields() throws Exception {
+		Product product = new Product();
+		product.setIMEI( "004400112233445" );
+		assertRoundTrip( new ProductOperation( ProductOperation.Id.UPDATE, product ) );
+		assertRoundTrip( new ProductOperation( ProductOperation.Id.UPDATE, null ) );
+	}
+
+	public void testProductSync() throws Exception {
+		List<Product> products = new ArrayList<Product>();
+		for ( int i = 0; i < 20; i++ ) {
+			products.add( createProduct( "0044001122334" + ( 10 + i ), i % 2 == 0 ) );
+		}
+		ProductOperation message = new ProductOperation( products, 1234567890123L );
+		message.setFullSync( false );
+		message.setNumberOfProducts( 22 );
+		message.setDigest( -8070450532247928832L );
+		assertRoundTrip( message );
+
+		// Product sync should come out of XML the same way as well
+		Object converted = new Converter().handle( new ByteArrayInputStream( message.toXML().getBytes( "UTF-8" ) ) );
+		assertTrue( converted instanceof ProductOperation );
+		assertEquals( message.toXML(), ( (ProductOperation) converted ).toXML() );
+
+		assertRoundTrip( new ProductOperation( new ArrayList<Product>(), 0L ) );
+	}
+
+	public void testFileOperationWithAllFields() throws Exception {
+		FileDescription fileDescription = createFileDescription();
+		fileDescription.setOffset( 4096L );
+		fileDescription.setLength( 8192L );
+		fileDescription.setChunkSize( 4096L );
+		fileDescription.addChunkChecksum( "1a2b3c4d" );
+		fileDescription.addChunkChecksum( "5e6f7a8b" );
+		fileDescription.setContentHash( "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08" );
+		assertRoundTrip( new FileOperation( FileOperation.Id.GET, createTest(), fileDescription ) );
+	}
+
+	public void testFileOperationWithoutOptionalFields() throws Exception {
+		assertRoundTrip( new FileOperation( FileOperation.Id.STORED, createTest(), createFileDescription() ) );
+		assertRoundTrip( new FileOperation( FileOperation.Id.ABORT, null, null ) );
+	}
+
+	public void testRegistryOperationWithAllFields() throws Exception {
+		TestNodeDescription testNodeDescription = new TestNodeDescription();
+		testNodeDescription.setHostnameAndPort( "node.example.com", 15000 );
+		testNodeDescription.setDescription( "Node with тест products" );
+		testNodeDescription.setTestAutomationSoftwareVersion( "1.0" );
+		RegistryOperation message = new RegistryOperation( RegistryOperation.Id.REGISTER, RegistryOperation.Remote.TEST_NODE );
+		message.setTestNodeDescription( testNodeDescription );
+		message.setEncoding( RegistryOperation.Encoding.BINARY );
+		assertRoundTrip( message );
+	}
+
+	public void testRegistryOperationWithoutOptionalFields() throws Exception {
+		assertRoundTrip( new RegistryOperation( RegistryOperation.Id.DEREGISTER, RegistryOperation.Remote.CLIENT ) );
+	}
+
+	public void testTextMessage() throws Exception {
+		assertRoundTrip( new TextMessage( createTest(), "Test has started\nAll products are reserved on тест 測試 😀\n" ) );
+		assertRoundTrip( new TextMessage( null, "" ) );
+	}
+
+	public void testDataAfterMessageIsLeftInStream() throws Exception {
+		Message message = new TestOperation( TestOperation.Id.UPDATE, createTest() );
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		data.write( BinaryMessageCodec.encode( message ) );
+		data.write( new byte[] { 1, 2, 3 } );
+
+		InputStream inputStream = new ByteArrayInputStream( data.toByteArray() );
+		assertEquals( message.toXML(), BinaryMessageCodec.decode( inputStream ).toXML() );
+		assertEquals( 1, inputStream.read() );
+		assertEquals( 2, inputStream.read() );
+		assertEquals( 3, inputStream.read() );
+		assertEquals( -1, inputStream.read() );
+	}
+
+	public void testUnknownVersionIsRejected() throws Exception {
+		byte[] data = BinaryMessageCodec.encode( new TestOperation( TestOperation.Id.UPDATE, createTest() ) );
+		data[1] = (byte) ( BinaryMessageCodec.VERSION + 1 );
+
+		try {
+			BinaryMessageCodec.decode( new ByteArrayInputStream( data ) );
+			fail( "frame of an unknown version is decoded" );
+		} catch ( IOException e ) {
+			assertTrue( e.getMessage(), e.getMessage().indexOf( "version" ) >= 0 );
+		}
+
+		// Converter ignores messages which cannot be read, just like broken XML
+		assertNull( new Converter().handle( new ByteArrayInputStream( data ) ) );
+	}
+
+	public void testInvalidLengthIsRejected() throws Exception {
+		byte[] data = BinaryMessageCodec.encode( new TextMessage( null, "text\n" ) );
+		data[2] = (byte) 0x7F;
+
+		try {
+			BinaryMessageCodec.decode( new ByteArrayInputStream( data ) );
+			fail( "frame longer than the maximal message size is decoded" );
+		} catch ( IOException e ) {
+			// Expected
+		}
+	}
+
+	private static void assertRoundTrip( Message message ) throws Exception {
+		message.setSender( "tas.example.com", 33333 );
+		message.setReceiver( "node.example.com", 15000 );
+
+		byte[] data = BinaryMessageCodec.encode( message );
+		assertTrue( BinaryMessageCodec.isBinary( data[0] & 0xFF ) );
+
+		Message decoded = BinaryMessageCodec.decode( new ByteArrayInputStream( data ) );
+		assertEquals( message.getClass(), decoded.getClass() );
+		assertEquals( message.toXML(), decoded.toXML() );
+
+		// The same message should come out of the converter, which tells binary messages from XML
+		Object converted = new Converter().handle( new ByteArrayInputStream( data ) );
+		assertNotNull( converted );
+		assertEquals( message.getClass(), converted.getClass() );
+		assertEquals( message.toXML(), ( (Message) converted ).toXML() );
+	}
+
+	private static Test createTest() {
+		Test test = new Test( "binary_test_1" );
+		test.setURL( "http://ci.example.com/job/binary/1" );
+		test.setWorkspacePath( "/home/ci/workspace/binary" );
+		test.setTimeout( 3600000L );
+		test.setStartTime( 1300000000000L );
+		test.setExecutorApplication( "executor.jar" );
+		test.setExecutorScript( "run_tests.py" );
+		test.setResultsFilename( "results.zip" );
+		test.setStatus( Test.Status.STARTED, "Running on node.example.com" );
+		test.setRequiredEnvironment( "flash" );
+		test.setPriority( 3 );
+		for ( int i = 0; i < 5; i++ ) {
+			test.addArtifact( "artifacts/package_" + i + "/flash_image_" + i + ".bin" );
+		}
+		test.addexecutorEnvparam( "BUILD_ID", "1234" );
+		List<String> files = new ArrayList<String>();
+		files.add( "tests_1.zip" );
+		files.add( "tests_2.zip" );
+		test.addTestPackage( new TestPackage( "package_1", files, "flash" ) );
+		List<Product> required = new ArrayList<Product>();
+		List<Product> reserved = new ArrayList<Product>();
+		for ( int i = 0; i < 3; i++ ) {
+			required.add( createProduct( "0044001122334" + ( 10 + i ), false ) );
+			reserved.add( createProduct( "0044001122334" + ( 10 + i ), true ) );
+		}
+		test.setRequiredProducts( required );
+		test.setReservedProducts( reserved );
+		return test;
+	}
+
+	private static Product createProduct( String imei, boolean withSimCard ) {
+		Product product = new Product();
+		product.setIMEI( imei );
+		product.setRMCode( "RM-999" );
+		product.setHardwareType( "0205" );
+		product.setHostname( "node.example.com" );
+		product.setIPAddress( "10.0.0.15" );
+		product.setPort( "15000" );
+		product.setStatus( Product.Status.BUSY, "Reserved for binary_test_1" );
+		product.setReservation( 1300000000000L, 3600000L );
+		product.setTestAutomationService( "tas.example.com", 33333 );
+		if ( withSimCard ) {
+			SimCard simCard = new SimCard( SimCard.XML_ELEMENT_SIM_CARD_1 );
+			simCard.setPhoneNumber( "+358401234567" );
+			simCard.setIMSI( "244123456789012" );
+			product.setSim1( simCard );
+		}
+		return product;
+	}
+
+	private static FileDescription createFileDescription() {
+		FileDescription fileDescription = new FileDescription();
+		fileDescription.setFileName( "flash_image_1.bin" );
+		fileDescription.setFilePath( "/home/ci/workspace/binary/artifacts" );
+		fileDescription.setFileSize( 123456789L );
+		return fileDescription;
+	}
+}
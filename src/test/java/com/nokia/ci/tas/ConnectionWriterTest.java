@@ -0,0 +1,106 @@
+package com.nokia.ci.tas;
+
+import java.net.ServerSocket;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import com.nokia.ci.tas.commons.Actor;
+import com.nokia.ci.tas.commons.ActorRuntime;
+import com.nokia.ci.tas.commons.PersistentConnection;
+import com.nokia.ci.tas.service.ConnectionWriter;
+
+/**
+ * Checks that connection writers wait for unresponsive peers on their own runtime,
+ * so their owners keep working, and that a failed connection check wakes the owner up.
+ */
+public class ConnectionWriterTest extends TestCase {
+
+	private ActorRuntime runtime;
+	private ActorRuntime ioRuntime;
+
+	protected void setUp() throws Exception {
+		runtime = new ActorRuntime( "Test", 1 );
+		ioRuntime = new ActorRuntime( "Test I/O", 1 );
+	}
+
+	protected void tearDown() throws Exception {
+		runtime.shutdown();
+		ioRuntime.shutdown();
+	}
+
+	public void testFailedCheckWakesOwnerUp() throws Exception {
+		// Take a free port and close it, so nobody is listening there
+		ServerSocket serverSocket = new ServerSocket( 0 );
+		int port = serverSocket.getLocalPort();
+		serverSocket.close();
+
+		CountingActor owner = new CountingActor( runtime );
+		ConnectionWriter writer = new ConnectionWriter( owner, ioRuntime, new PersistentConnection( "localhost", port ) );
+		writer.start();
+		assertTrue( "new writer is idle", writer.isIdle() );
+
+		writer.check( null );
+		waitFor( writer, 10000L );
+
+		assertTrue( "check of a closed port fails", writer.isFailed() );
+		assertTrue( "failed writer ends its work", writer.isEnded() );
+		assertTrue( "owner is woken up", owner.count.get() > 0 );
+	}
+
+	public void testUnresponsivePeerDoesNotHoldOwner() throws Exception {
+		// Peer accepts connections, but never answers the handshake
+		ServerSocket serverSocket = new ServerSocket( 0 );
+		try {
+			CountingActor owner = new CountingActor( runtime );
+			ConnectionWriter writer = new ConnectionWriter( owner, ioRuntime, new PersistentConnection( "localhost", serverSocket.getLocalPort() ) );
+			writer.start();
+			writer.check( null );
+			Thread.sleep( 100 );
+			assertFalse( "writer is busy with the check", writer.isIdle() );
+
+			long startedAt = System.currentTimeMillis();
+			owner.wakeUp();
+			while ( owner.count.get() == 0 && System.currentTimeMillis() - startedAt < 5000L ) {
+				Thread.sleep( 1 );
+			}
+			assertTrue( "owner is run while the writer waits for the peer", owner.count.get() > 0 );
+			assertTrue( "owner is run at once", System.currentTimeMillis() - startedAt < 1000L );
+
+			// Handshake times out and the peer is taken for a legacy one
+			startedAt = System.currentTimeMillis();
+			while ( !writer.isIdle() && System.currentTimeMillis() - startedAt < 30000L ) {
+				Thread.sleep( 10 );
+			}
+			assertTrue( "writer finishes the check on its own runtime", writer.isIdle() );
+			writer.close();
+			waitFor( writer, 5000L );
+			assertTrue( "closed writer ends its work", writer.isEnded() );
+		} finally {
+			serverSocket.close();
+		}
+	}
+
+	private static void waitFor( ConnectionWriter writer, long timeout ) throws Exception {
+		long startedAt = System.currentTimeMillis();
+		while ( !writer.isEnded() && System.currentTimeMillis() - startedAt < timeout ) {
+			Thread.sleep( 10 );
+		}
+	}
+
+	private static class CountingActor extends Actor<Object> {
+
+		private AtomicInteger count = new AtomicInteger( 0 );
+
+		CountingActor( ActorRuntime runtime ) {
+			super( "owner", runtime );
+		}
+
+		@Override
+		protected boolean act() {
+			count.incrementAndGet();
+			return true;
+		}
+	}
+}
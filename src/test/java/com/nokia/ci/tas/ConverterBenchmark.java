@@ -0,0 +1,209 @@
+package com.nokia.ci.tas;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import com.nokia.ci.tas.commons.Converter;
+import com.nokia.ci.tas.commons.MessageInputStream;
+import com.nokia.ci.tas.commons.Product;
+import com.nokia.ci.tas.commons.Test;
+import com.nokia.ci.tas.commons.message.ProductOperation;
+import com.nokia.ci.tas.commons.message.TestOperation;
+
+/**
+ * Measures parsing of typical test and product messages.
+ *
+ * Line reading is compared between the old byte-after-byte way and the buffered message stream.
+ * Parsing from several threads is compared between one lock around all the parsing (like the old synchronized converter)
+ * and independent parsing done by each thread.
+ *
+ * Usage: ConverterBenchmark [number of messages] [number of threads]
+ */
+public class ConverterBenchmark {
+
+	/**
+	 * @param args
+	 */
+	public static void main( String[] args ) throws Exception {
+		int numberOfMessages = args.length > 0 ? Integer.parseInt( args[0] ) : 20000;
+		int numberOfThreads = args.length > 1 ? Integer.parseInt( args[1] ) : 4;
+
+		byte[][] payloads = new byte[][] { createTestOperation().toXML().getBytes( "UTF-8" ), createProductOperation().toXML().getBytes( "UTF-8" ) };
+
+		// Check that both payloads are actually parsed back
+		for ( byte[] payload : payloads ) {
+			if ( new Converter().handle( new ByteArrayInputStream( payload ) ) == null ) {
+				throw new IllegalStateException( "Payload is not parsed:\n" + new String( payload, "UTF-8" ) );
+			}
+		}
+
+		// Warm up
+		readLinesByteAfterByte( payloads, numberOfMessages / 10 );
+		readLinesBuffered( payloads, numberOfMessages / 10 );
+		parse( payloads, numberOfMessages / 10, numberOfThreads, true );
+		parse( payloads, numberOfMessages / 10, numberOfThreads, false );
+
+		System.out.println( "Messages: " + numberOfMessages + ", threads: " + numberOfThreads );
+		System.out.println( "Test operation: " + payloads[0].length + " bytes, product operation: " + payloads[1].length + " bytes" );
+		print( "Lines read byte after byte  ", numberOfMessages, readLinesByteAfterByte( payloads, numberOfMessages ) );
+		print( "Lines read from buffer      ", numberOfMessages, readLinesBuffered( payloads, numberOfMessages ) );
+		print( "Parsing, single thread      ", numberOfMessages, parse( payloads, numberOfMessages, 1, false ) );
+		print( "Parsing, all threads locked ", numberOfMessages, parse( payloads, numberOfMessages, numberOfThreads, true ) );
+		print( "Parsing, threads independent", numberOfMessages, parse( payloads, numberOfMessages, numberOfThreads, false ) );
+	}
+
+	private static long readLinesByteAfterByte( byte[][] payloads, int numberOfMessages ) throws IOException {
+		long lines = 0L;
+		long startedAt = System.nanoTime();
+		for ( int i = 0; i < numberOfMessages; i++ ) {
+			InputStream inputStream = new UnbufferedInputStream( payloads[i % payloads.length] );
+			int ch = -1;
+			StringBuffer buffer = new StringBuffer();
+			do {
+				ch = inputStream.read();
+				if ( ch != '\n' && ch != -1 ) {
+					buffer.append( Character.toChars( ch ) );
+				} else {
+					buffer.trimToSize();
+					lines += buffer.toString().length() > 0 ? 1 : 0;
+					buffer = new StringBuffer();
+				}
+			} while ( ch != -1 );
+		}
+		long time = System.nanoTime() - startedAt;
+		if ( lines == 0L )
+			throw new IllegalStateException( "No lines read" );
+		return time;
+	}
+
+	private static long readLinesBuffered( byte[][] payloads, int numberOfMessages ) throws IOException {
+		long lines = 0L;
+		long startedAt = System.nanoTime();
+		for ( int i = 0; i < numberOfMessages; i++ ) {
+			MessageInputStream inputStream = new MessageInputStream( new UnbufferedInputStream( payloads[i % payloads.length] ) );
+			String line = null;
+			while ( ( line = inputStream.readLine() ) != null ) {
+				lines += line.length() > 0 ? 1 : 0;
+			}
+		}
+		long time = System.nanoTime() - startedAt;
+		if ( lines == 0L )
+			throw new IllegalStateException( "No lines read" );
+		return time;
+	}
+
+	private static long parse( final byte[][] payloads, final int numberOfMessages, final int numberOfThreads, final boolean isLocked ) throws InterruptedException {
+		final Object lock = new Object();
+		final CountDownLatch start = new CountDownLatch( 1 );
+		final CountDownLatch finish = new CountDownLatch( numberOfThreads );
+		final Converter converter = new Converter();
+
+		for ( int t = 0; t < numberOfThreads; t++ ) {
+			final int first = t;
+			Thread worker = new Thread() {
+				public void run() {
+					try {
+						start.await();
+						for ( int i = first; i < numberOfMessages; i += numberOfThreads ) {
+							InputStream inputStream = new UnbufferedInputStream( payloads[i % payloads.length] );
+							Object message = null;
+							if ( isLocked ) {
+								synchronized ( lock ) {
+									message = converter.handle( inputStream );
+								}
+							} else {
+								message = converter.handle( inputStream );
+							}
+							if ( message == null )
+								throw new IllegalStateException( "Message is not parsed" );
+						}
+					} catch ( InterruptedException e ) {
+						// Stop
+					} finally {
+						finish.countDown();
+					}
+				}
+			};
+			worker.start();
+		}
+
+		long startedAt = System.nanoTime();
+		start.countDown();
+		finish.await();
+		return System.nanoTime() - startedAt;
+	}
+
+	private static void print( String name, int numberOfMessages, long time ) {
+		double seconds = time / 1000000000.0;
+		System.out.println( name + ": " + (long) ( numberOfMessages / seconds ) + " messages/s, " + ( time / numberOfMessages ) + " ns/message" );
+	}
+
+	private static TestOperation createTestOperation() {
+		Test test = new Test( "benchmark_test_1" );
+		test.setURL( "http://ci.example.com/job/benchmark/1" );
+		test.setWorkspacePath( "/home/ci/workspace/benchmark" );
+		test.setTimeout( 3600000L );
+		test.setExecutorApplication( "executor.jar" );
+		test.setExecutorScript( "run_tests.py" );
+		test.setResultsFilename( "results.zip" );
+		for ( int i = 0; i < 10; i++ ) {
+			test.addArtifact( "artifact_" + i + ".zip" );
+			test.addexecutorEnvparam( "PARAMETER_" + i, "value_" + i );
+		}
+		List<Product> products = new ArrayList<Product>();
+		products.add( createProduct( "004400112233445" ) );
+		products.add( createProduct( "004400112233446" ) );
+		test.setRequiredProducts( products );
+
+		TestOperation message = new TestOperation( TestOperation.Id.START, test );
+		message.setSender( "localhost", 12345 );
+		message.setReceiver( "localhost", 33333 );
+		return message;
+	}
+
+	private static ProductOperation createProductOperation() {
+		ProductOperation message = new ProductOperation( ProductOperation.Id.UPDATE, createProduct( "004400112233445" ) );
+		message.setSender( "localhost", 15000 );
+		message.setReceiver( "localhost", 33333 );
+		return message;
+	}
+
+	private static Product createProduct( String imei ) {
+		Product product = new Product();
+		product.setIMEI( imei );
+		product.setRMCode( "RM-999" );
+		product.setHostname( "localhost" );
+		product.setPort( "15000" );
+		product.setStatus( Product.Status.FREE, "" );
+		return product;
+	}
+
+	/**
+	 * Byte array stream without synchronization, just like a socket stream read in bulk.
+	 */
+	private static class UnbufferedInputStream extends InputStream {
+		private final byte[] data;
+		private int position = 0;
+
+		UnbufferedInputStream( byte[] data ) {
+			this.data = data;
+		}
+
+		public int read() {
+			return position < data.length ? data[position++] & 0xFF : -1;
+		}
+
+		public int read( byte[] bytes, int offset, int length ) {
+			if ( position >= data.length )
+				return -1;
+			int number = Math.min( length, data.length - position );
+			System.arraycopy( data, position, bytes, offset, number );
+			position += number;
+			return number;
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package com.nokia.ci.tas;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.nokia.ci.tas.commons.Constant;
+import com.nokia.ci.tas.service.DeviceTimeUsage;
+import com.nokia.ci.tas.service.FairShareQueue;
+
+/**
+ * Checks that the fair share queue of the fair share scheduling policy interleaves remote clients,
+ * orders tests of a client by priorities and aging, and that used device time fades out with its half-life.
+ */
+public class FairShareQueueTest extends TestCase {
+
+	private static final long HALF_LIFE = Constant.ONE_HOUR;
+	private static final long AGING_PERIOD = 10L * Constant.ONE_MINUTE;
+
+	private DeviceTimeUsage usage;
+	private FairShareQueue<String> queue;
+
+	protected void setUp() throws Exception {
+		usage = new DeviceTimeUsage( HALF_LIFE );
+		queue = new FairShareQueue<String>( usage, AGING_PERIOD );
+	}
+
+	public void testClientsInterleave() {
+		long now = System.currentTimeMillis();
+
+		for ( int t = 0; t < 200; t++ ) {
+			queue.add( "heavy_" + t, "heavy:1", 0, now );
+		}
+		queue.add( "light_0", "light:1", 0, now );
+
+		// Each allocated test is charged with its device time, as the test handlers do
+		List<String> order = new ArrayList<String>();
+		for ( String element : queue ) {
+			order.add( element );
+			usage.charge( element.startsWith( "heavy" ) ? "heavy:1" : "light:1", 10L * Constant.ONE_MINUTE );
+		}
+
+		assertEquals( "all tests are taken", 201, order.size() );
+		assertTrue( "single test of a client doesn't wait for all tests of another client", order.indexOf( "light_0" ) <= 1 );
+		for ( int t = 1; t < 200; t++ ) {
+			assertTrue( "tests of a client keep their order", order.indexOf( "heavy_" + ( t - 1 ) ) < order.indexOf( "heavy_" + t ) );
+		}
+	}
+
+	public void testHigherPriorityGoesFirst() {
+		long now = System.currentTimeMillis();
+
+		queue.add( "low", "client:1", 0, now );
+		queue.add( "normal", "client:1", 1, now );
+		queue.add( "high", "client:1", 2, now );
+
+		assertEquals( "higher priority goes first", list( "high", "normal", "low" ), list( queue ) );
+	}
+
+	public void testAgedTestOvertakes() {
+		long now = System.currentTimeMillis();
+
+		queue.add( "aged", "client:1", 0, now - 3L * AGING_PERIOD );
+		queue.add( "young", "client:1", 0, now - AGING_PERIOD );
+		queue.add( "new", "client:1", 2, now );
+
+		assertEquals( "test waiting for more aging periods than its priority is lower overtakes", list( "aged", "new", "young" ), list( queue ) );
+
+		assertTrue( "aged test is removed", queue.remove( "aged" ) );
+		assertFalse( "aged test is removed once", queue.remove( "aged" ) );
+		assertEquals( "removed test is not taken", list( "new", "young" ), list( queue ) );
+	}
+
+	public void testDecayHalvesUsage() {
+		long chargedAt = System.currentTimeMillis();
+		usage.charge( "client:1", 1000000L );
+
+		assertEquals( "usage is not decayed at once", 1000000.0, usage.getRecentDeviceTime( "client:1", chargedAt ), 1000.0 );
+		assertEquals( "decay halves usage after one half-life", 500000.0, usage.getRecentDeviceTime( "client:1", chargedAt + HALF_LIFE ), 1000.0 );
+		assertEquals( "decay quarters usage after two half-lives", 250000.0, usage.getRecentDeviceTime( "client:1", chargedAt + 2L * HALF_LIFE ), 1000.0 );
+		assertEquals( "total usage doesn't decay", 1000000L, usage.getTotalDeviceTime( "client:1" ) );
+		assertEquals( "unknown client has no usage", 0.0, usage.getRecentDeviceTime( "client:2", chargedAt ), 0.0 );
+	}
+
+	private static List<String> list( Iterable<String> elements ) {
+		List<String> list = new ArrayList<String>();
+		for ( String element : elements ) {
+			list.add( element );
+		}
+		return list;
+	}
+
+	private static List<String> list( String... elements ) {
+		List<String> list = new ArrayList<String>();
+		for ( String element : elements ) {
+			list.add( element );
+		}
+		return list;
+	}
+}
@@ -0,0 +1,64 @@
+package com.nokia.ci.tas;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.nokia.ci.tas.commons.FileDescription;
+import com.nokia.ci.tas.commons.Test;
+import com.nokia.ci.tas.commons.message.FileOperation;
+import com.nokia.ci.tas.communicator.FileCache;
+import com.nokia.ci.tas.communicator.FileCacheEntry;
+
+/**
+ * Measures how long the lookups of the file cache take when the cache is filled with artifacts of many tests.
+ *
+ * Usage: FileCacheBenchmark [number of tests] [artifacts per test]
+ */
+public class FileCacheBenchmark {
+
+	/**
+	 * @param args
+	 */
+	public static void main( String[] args ) throws Exception {
+		int numberOfTests = args.length > 0 ? Integer.parseInt( args[0] ) : 500;
+		int artifactsPerTest = args.length > 1 ? Integer.parseInt( args[1] ) : 20;
+
+		FileCache fileCache = new FileCache();
+		List<FileCacheEntry> entries = new ArrayList<FileCacheEntry>();
+
+		for ( int i = 0; i < numberOfTests; i++ ) {
+			Test test = new Test( "test_" + i );
+			for ( int j = 0; j < artifactsPerTest; j++ ) {
+				FileCacheEntry entry = createEntry( test, "artifact_" + j + ".bin", "/ws/" + i );
+				fileCache.add( entry );
+				entries.add( entry );
+			}
+		}
+
+		long startedAt = System.currentTimeMillis();
+		int numberOfTakenEntries = 0;
+		int numberOfFoundEntries = 0;
+
+		for ( FileCacheEntry entry : entries ) {
+			if ( fileCache.getEntry( entry.getAbsoluteFilePath() ) == entry )
+				numberOfFoundEntries++;
+			fileCache.getUntransferredEntries( entry.getTest(), entry.getFileName() );
+
+			FileCacheEntry taken = fileCache.takeUnrequestedEntry();
+			taken.setIsRequested( true );
+			fileCache.update( taken );
+			numberOfTakenEntries++;
+		}
+
+		System.out.println( "Entries: " + fileCache.size() + ", found " + numberOfFoundEntries + ", looked up, taken and updated "
+			+ numberOfTakenEntries + " entries in " + ( System.currentTimeMillis() - startedAt ) + " ms" );
+	}
+
+	private static FileCacheEntry createEntry( Test test, String fileName, String workspace ) {
+		FileDescription fileDescription = new FileDescription();
+		fileDescription.setFileName( fileName );
+		FileOperation request = new FileOperation( FileOperation.Id.GET, test, fileDescription );
+		request.setReceiver( "client", 15000 );
+		return new FileCacheEntry( fileName, test, workspace + "/" + fileName, request );
+	}
+}
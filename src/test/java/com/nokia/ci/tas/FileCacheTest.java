@@ -0,0 +1,106 @@
+package com.nokia.ci.tas;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.nokia.ci.tas.commons.FileDescription;
+import com.nokia.ci.tas.commons.Test;
+import com.nokia.ci.tas.commons.message.FileOperation;
+import com.nokia.ci.tas.communicator.FileCache;
+import com.nokia.ci.tas.communicator.FileCacheEntry;
+
+/**
+ * Checks lookups and the queue of unrequested entries of the file cache.
+ */
+public class FileCacheTest extends TestCase {
+
+	public void testEntries() {
+		FileCache fileCache = new FileCache();
+		Test test = new Test( "test_1" );
+		Test subTest = new Test( "test_1" );
+		subTest.setSubId( "_2" );
+
+		FileCacheEntry a = createEntry( test, "a.bin", "/ws/1" );
+		FileCacheEntry b = createEntry( test, "b.bin", "/ws/1" );
+		FileCacheEntry c = createEntry( test, "c.bin", "/ws/1" );
+		FileCacheEntry aCopy = createEntry( subTest, "a.bin", "/ws/2" );
+
+		fileCache.add( a );
+		fileCache.add( b );
+		fileCache.add( c );
+		fileCache.add( aCopy );
+
+		assertSame( "entry is found by path", b, fileCache.getEntry( "/ws/1/b.bin" ) );
+		assertNull( "missing entry is not found", fileCache.getEntry( "/ws/3/b.bin" ) );
+		assertEquals( "the same file of the same test is found in all workspaces", 2, fileCache.getUntransferredEntries( test, "a.bin" ).size() );
+
+		assertSame( "entries are taken in order", a, fileCache.takeUnrequestedEntry() );
+		assertSame( "entries are taken in order", b, fileCache.takeUnrequestedEntry() );
+
+		// Entry b couldn't be requested right now, so it is given back
+		List<FileCacheEntry> waiting = new ArrayList<FileCacheEntry>();
+		waiting.add( b );
+		fileCache.returnUnrequestedEntries( waiting );
+
+		a.setIsRequested( true );
+		a.setIsTransferred( true );
+		fileCache.update( a );
+		assertEquals( "transferred entry is not returned as untransferred", 1, fileCache.getUntransferredEntries( test, "a.bin" ).size() );
+
+		// Copied from another workspace, so it doesn't have to be requested anymore
+		aCopy.setIsRequested( true );
+		fileCache.update( aCopy );
+
+		assertSame( "given back entry is taken first", b, fileCache.takeUnrequestedEntry() );
+
+		fileCache.removeEntryFor( c.getAbsoluteFilePath() );
+		assertNull( "removed entry is not found", fileCache.getEntry( c.getAbsoluteFilePath() ) );
+		assertFalse( "removed and requested entries are not taken", fileCache.hasUnrequestedEntries() );
+		assertNull( "nothing is left to take", fileCache.takeUnrequestedEntry() );
+
+		FileCacheEntry replacement = createEntry( test, "b.bin", "/ws/1" );
+		fileCache.add( replacement );
+		assertSame( "entry with the same path is replaced", replacement, fileCache.getEntry( "/ws/1/b.bin" ) );
+		assertEquals( "replaced entry is not indexed anymore", 1, fileCache.getUntransferredEntries( test, "b.bin" ).size() );
+
+		assertEquals( "all entries of a test are removed", 2, fileCache.removeEntriesOf( test ).size() );
+		assertEquals( "entries of other tests are kept", 1, fileCache.size() );
+		assertSame( "entry of another test is still found", aCopy, fileCache.getEntry( aCopy.getAbsoluteFilePath() ) );
+	}
+
+	public void testManyEntries() {
+		FileCache fileCache = new FileCache();
+		List<FileCacheEntry> entries = new ArrayList<FileCacheEntry>();
+
+		for ( int i = 0; i < 20; i++ ) {
+			Test test = new Test( "test_" + i );
+			for ( int j = 0; j < 5; j++ ) {
+				FileCacheEntry entry = createEntry( test, "artifact_" + j + ".bin", "/ws/" + i );
+				fileCache.add( entry );
+				entries.add( entry );
+			}
+		}
+
+		for ( FileCacheEntry entry : entries ) {
+			assertSame( "entry is found by its path", entry, fileCache.getEntry( entry.getAbsoluteFilePath() ) );
+			assertEquals( "entry is found by its test and name", 1, fileCache.getUntransferredEntries( entry.getTest(), entry.getFileName() ).size() );
+
+			FileCacheEntry taken = fileCache.takeUnrequestedEntry();
+			assertSame( "entries are taken in the order of adding", entry, taken );
+			taken.setIsRequested( true );
+			fileCache.update( taken );
+		}
+
+		assertFalse( "all entries are requested", fileCache.hasUnrequestedEntries() );
+	}
+
+	private static FileCacheEntry createEntry( Test test, String fileName, String workspace ) {
+		FileDescription fileDescription = new FileDescription();
+		fileDescription.setFileName( fileName );
+		FileOperation request = new FileOperation( FileOperation.Id.GET, test, fileDescription );
+		request.setReceiver( "client", 15000 );
+		return new FileCacheEntry( fileName, test, workspace + "/" + fileName, request );
+	}
+}
@@ -0,0 +1,242 @@
+package com.nokia.ci.tas;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.nokia.ci.tas.commons.BinaryMessageCodec;
+import com.nokia.ci.tas.commons.Constant;
+import com.nokia.ci.tas.commons.Converter;
+import com.nokia.ci.tas.commons.FileChunks;
+import com.nokia.ci.tas.commons.FileDescription;
+import com.nokia.ci.tas.commons.FileTransfer;
+import com.nokia.ci.tas.commons.Test;
+import com.nokia.ci.tas.commons.message.FileOperation;
+
+/**
+ * Checks that received chunks are verified, that only the first missing or corrupted range is requested again,
+ * and that receiving is given up once ranges stop adding verified chunks.
+ */
+public class FileChunksTest extends TestCase {
+
+	private static final long CHUNK_SIZE = 1024L;
+
+	private File sentFile;
+	private File receivedFile;
+	private RandomAccessFile sent;
+	private RandomAccessFile received;
+
+	protected void setUp() throws Exception {
+		sentFile = File.createTempFile( "sent", ".bin" );
+		receivedFile = File.createTempFile( "received", ".bin" );
+		sent = new RandomAccessFile( sentFile, "rw" );
+		received = new RandomAccessFile( receivedFile, "rw" );
+	}
+
+	protected void tearDown() throws Exception {
+		sent.close();
+		received.close();
+		sentFile.delete();
+		receivedFile.delete();
+	}
+
+	public void testMissingAndCorruptedChunksAreRequested() throws Exception {
+		// Four full chunks and a short one
+		byte[] data = createData( 4 * CHUNK_SIZE + 100 );
+		sent.write( data );
+		FileDescription fileDescription = describe( data.length, 0L, FileDescription.UNTIL_END_OF_FILE );
+
+		FileChunks fileChunks = new FileChunks( fileDescription );
+		assertEquals( 5, fileChunks.getNumberOfChunks() );
+		assertFalse( "whole file is not continued", fileChunks.isContinuedBy( fileDescription ) );
+
+		// The second chunk is corrupted and the last two ones are lost
+		byte[] receivedData = data.clone();
+		receivedData[(int) CHUNK_SIZE + 10] ^= 1;
+		received.write( receivedData, 0, (int) ( 3 * CHUNK_SIZE ) );
+
+		assertEquals( 2, fileChunks.verify( received.getChannel(), fileDescription ) );
+		assertFalse( fileChunks.isComplete() );
+		assertEquals( 2, fileChunks.getNumberOfVerifiedChunks() );
+
+		// Only the corrupted chunk is requested, since the next one is already verified
+		FileDescription missingRange = fileChunks.describeMissingRange( "file.bin" );
+		assertEquals( "file.bin", missingRange.getFileName() );
+		assertEquals( CHUNK_SIZE, missingRange.getOffset() );
+		assertEquals( CHUNK_SIZE, missingRange.getLength() );
+		assertEquals( data.length, missingRange.getFileSize() );
+		assertEquals( CHUNK_SIZE, missingRange.getChunkSize() );
+
+		receive( data, describe( data.length, missingRange.getOffset(), missingRange.getLength() ) );
+		assertEquals( 1, fileChunks.verify( received.getChannel(), describe( data.length, missingRange.getOffset(), missingRange.getLength() ) ) );
+
+		// Then the lost chunks up to the end of the file, including the short one
+		missingRange = fileChunks.describeMissingRange( "file.bin" );
+		assertEquals( 3 * CHUNK_SIZE, missingRange.getOffset() );
+		assertEquals( CHUNK_SIZE + 100, missingRange.getLength() );
+
+		FileDescription range = describe( data.length, missingRange.getOffset(), missingRange.getLength() );
+		assertTrue( "range continues the file", fileChunks.isContinuedBy( range ) );
+		receive( data, range );
+		assertEquals( 2, fileChunks.verify( received.getChannel(), range ) );
+		assertTrue( fileChunks.isComplete() );
+		assertEquals( "5 of 5 chunks verified", fileChunks.toString() );
+	}
+
+	public void testMissingRangeIsServedByRangedGet() throws Exception {
+		// Sender always uses chunks of Constant.FILE_TRANSFER_CHUNK_SIZE bytes
+		long chunkSize = Constant.FILE_TRANSFER_CHUNK_SIZE;
+		long fileSize = 3 * chunkSize + 1000L;
+		sent.setLength( fileSize );
+		sent.seek( chunkSize + 5L );
+		sent.write( createData( 1000 ) );
+
+		FileDescription wholeFile = new FileDescription();
+		wholeFile.setFileName( "file.bin" );
+		assertEquals( fileSize, FileTransfer.prepareChunkedTransfer( sent.getChannel(), wholeFile ) );
+		assertEquals( 4, wholeFile.getChunkChecksums().size() );
+
+		// Receiver got everything except of the second chunk
+		FileChunks fileChunks = new FileChunks( wholeFile );
+		received.setLength( fileSize );
+		assertEquals( 3, fileChunks.verify( received.getChannel(), wholeFile ) );
+
+		// The first missing range goes to the sender as a GET request and comes back aligned to the chunks
+		FileDescription request = fileChunks.describeMissingRange( "file.bin" );
+		FileOperation reply = roundTrip( new FileOperation( FileOperation.Id.GET, new Test( "test" ), request ) );
+		FileDescription range = reply.getFileDescription();
+		assertEquals( chunkSize, FileTransfer.prepareChunkedTransfer( sent.getChannel(), range ) );
+		assertEquals( chunkSize, range.getOffset() );
+		assertEquals( chunkSize, range.getLength() );
+		assertEquals( 1, range.getChunkChecksums().size() );
+		assertEquals( wholeFile.getChunkChecksums().get( 1 ), range.getChunkChecksums().get( 0 ) );
+		assertTrue( fileChunks.isContinuedBy( range ) );
+
+		copy( sent.getChannel(), received.getChannel(), range.getOffset(), range.getLength() );
+		assertEquals( 1, fileChunks.verify( received.getChannel(), range ) );
+		assertTrue( fileChunks.isComplete() );
+	}
+
+	public void testReceivingIsAbandonedWithoutProgress() throws Exception {
+		byte[] data = createData( 3 * CHUNK_SIZE );
+		sent.write( data );
+		FileDescription fileDescription = describe( data.length, 0L, FileDescription.UNTIL_END_OF_FILE );
+		FileChunks fileChunks = new FileChunks( fileDescription );
+
+		// The first chunk arrives, but the rest is always corrupted
+		byte[] receivedData = data.clone();
+		receivedData[(int) CHUNK_SIZE] ^= 1;
+		receivedData[(int) ( 2 * CHUNK_SIZE )] ^= 1;
+		received.write( receivedData );
+		assertEquals( 1, fileChunks.verify( received.getChannel(), fileDescription ) );
+		assertEquals( 0, fileChunks.getNumberOfAttemptsWithoutProgress() );
+
+		FileDescription range = describe( data.length, CHUNK_SIZE, 2 * CHUNK_SIZE );
+
+		for ( int i = 1; i < Constant.NUMBER_OF_RETRIES; i++ ) {
+			assertEquals( 0, fileChunks.verify( received.getChannel(), range ) );
+			assertEquals( i, fileChunks.getNumberOfAttemptsWithoutProgress() );
+			assertFalse( "still retrying after " + i + " attempts", fileChunks.isAbandoned() );
+		}
+
+		// A range which adds something starts counting from scratch
+		received.seek( CHUNK_SIZE );
+		received.write( data, (int) CHUNK_SIZE, (int) CHUNK_SIZE );
+		assertEquals( 1, fileChunks.verify( received.getChannel(), range ) );
+		assertEquals( 0, fileChunks.getNumberOfAttemptsWithoutProgress() );
+
+		range = describe( data.length, 2 * CHUNK_SIZE, CHUNK_SIZE );
+
+		for ( int i = 0; i < Constant.NUMBER_OF_RETRIES; i++ ) {
+			assertFalse( fileChunks.isAbandoned() );
+			assertEquals( 0, fileChunks.verify( received.getChannel(), range ) );
+		}
+
+		assertTrue( "abandoned after " + Constant.NUMBER_OF_RETRIES + " useless ranges", fileChunks.isAbandoned() );
+		assertFalse( fileChunks.isComplete() );
+	}
+
+	public void testChunkedDescriptionSurvivesXMLAndBinaryEncodings() throws Exception {
+		FileDescription fileDescription = new FileDescription();
+		fileDescription.setFileName( "flash_image.bin" );
+		fileDescription.setFilePath( "/home/ci/workspace/artifacts" );
+		fileDescription.setFileSize( 3 * CHUNK_SIZE + 100 );
+		fileDescription.setOffset( CHUNK_SIZE );
+		fileDescription.setLength( 2 * CHUNK_SIZE + 100 );
+		fileDescription.setChunkSize( CHUNK_SIZE );
+		fileDescription.addChunkChecksum( "1a2b3c4d" );
+		fileDescription.addChunkChecksum( "5e6f7a8b" );
+		fileDescription.addChunkChecksum( "9c0d1e2f" );
+		fileDescription.setContentHash( "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08" );
+
+		FileOperation message = new FileOperation( FileOperation.Id.PUT, new Test( "test" ), fileDescription );
+		message.setSender( "tas.example.com", 33333 );
+		message.setReceiver( "node.example.com", 15000 );
+
+		FileOperation fromXML = roundTrip( message );
+		FileOperation fromBinary = (FileOperation) BinaryMessageCodec.decode( new ByteArrayInputStream( BinaryMessageCodec.encode( message ) ) );
+
+		for ( FileOperation decoded : new FileOperation[] { fromXML, fromBinary } ) {
+			FileDescription decodedDescription = decoded.getFileDescription();
+			assertTrue( decodedDescription.isChunked() );
+			assertEquals( CHUNK_SIZE, decodedDescription.getChunkSize() );
+			assertEquals( fileDescription.getChunkChecksums(), decodedDescription.getChunkChecksums() );
+			assertEquals( fileDescription.getContentHash(), decodedDescription.getContentHash() );
+			assertEquals( CHUNK_SIZE, decodedDescription.getOffset() );
+			assertEquals( 2 * CHUNK_SIZE + 100, decodedDescription.getLength() );
+			assertEquals( fileDescription.toXML(), decodedDescription.toXML() );
+
+			FileChunks fileChunks = new FileChunks( decodedDescription );
+			assertEquals( 4, fileChunks.getNumberOfChunks() );
+			assertEquals( fileDescription.getContentHash(), fileChunks.getContentHash() );
+		}
+
+		// Descriptions without chunks stay without them
+		FileDescription plain = new FileDescription();
+		plain.setFileName( "results.zip" );
+		plain.setFileSize( 100L );
+		FileOperation plainMessage = roundTrip( new FileOperation( FileOperation.Id.PUT, new Test( "test" ), plain ) );
+		assertFalse( plainMessage.getFileDescription().isChunked() );
+		assertNull( plainMessage.getFileDescription().getContentHash() );
+	}
+
+	private FileDescription describe( long fileSize, long offset, long length ) throws Exception {
+		long end = length == FileDescription.UNTIL_END_OF_FILE ? fileSize : offset + length;
+		FileDescription fileDescription = new FileDescription();
+		fileDescription.setFileName( "file.bin" );
+		fileDescription.setFileSize( fileSize );
+		fileDescription.setOffset( offset );
+		fileDescription.setLength( length );
+		fileDescription.setChunkSize( CHUNK_SIZE );
+		fileDescription.setChunkChecksums( FileTransfer.calculateChecksums( sent.getChannel(), offset, end - offset, CHUNK_SIZE ) );
+		return fileDescription;
+	}
+
+	private void receive( byte[] data, FileDescription range ) throws Exception {
+		received.seek( range.getOffset() );
+		received.write( data, (int) range.getOffset(), (int) range.getLength() );
+	}
+
+	private static void copy( FileChannel source, FileChannel destination, long offset, long length ) throws Exception {
+		ByteBuffer buffer = ByteBuffer.allocate( (int) length );
+		while ( buffer.hasRemaining() && source.read( buffer, offset + buffer.position() ) > 0 ) {
+		}
+		buffer.flip();
+		destination.write( buffer, offset );
+	}
+
+	private static FileOperation roundTrip( FileOperation message ) throws Exception {
+		return (FileOperation) new Converter().handle( new ByteArrayInputStream( message.toXML().getBytes( "UTF-8" ) ) );
+	}
+
+	private static byte[] createData( long size ) {
+		byte[] data = new byte[(int) size];
+		new Random( size ).nextBytes( data );
+		return data;
+	}
+}
@@ -0,0 +1,306 @@
+package com.nokia.ci.tas;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Random;
+
+import com.nokia.ci.tas.commons.Constant;
+import com.nokia.ci.tas.commons.FileTransfer;
+import com.nokia.ci.tas.commons.MessageInputStream;
+
+/**
+ * Measures file transfers over a loopback connection in both directions.
+ *
+ * Sending (file to connection) and receiving (connection to file) are compared between
+ * the old way of copying through a small buffer flushed after every chunk, the large buffer fallback,
+ * and the channel transfers (file channel transfer for sending, channel reads into a direct buffer for receiving).
+ * Each transfer reports its throughput and the process CPU time spent per gigabyte.
+ * Received files are checked to be equal to the send ones.
+ *
+ * Usage: FileTransferBenchmark [file size in megabytes] [number of rounds]
+ */
+public class FileTransferBenchmark {
+
+	/**
+	 * Header send before file data, just like a file transfer message.
+	 */
+	private static final byte[] HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<message></message>\n".getBytes();
+
+	/**
+	 * @param args
+	 */
+	public static void main( String[] args ) throws Exception {
+		int sizeInMegabytes = args.length > 0 ? Integer.parseInt( args[0] ) : 256;
+		int numberOfRounds = args.length > 1 ? Integer.parseInt( args[1] ) : 3;
+
+		File source = File.createTempFile( "transfer_source", ".bin" );
+		File destination = File.createTempFile( "transfer_destination", ".bin" );
+		source.deleteOnExit();
+		destination.deleteOnExit();
+
+		createFile( source, sizeInMegabytes * 1048576L );
+
+		System.out.println( "File size: " + sizeInMegabytes + " MB, rounds: " + numberOfRounds + ", buffer: "
+				+ ( FileTransfer.getBufferSize() / 1024 ) + " KB" );
+
+		for ( int round = 0; round <= numberOfRounds; round++ ) {
+			// The first round is a warm up
+			boolean isPrinted = round > 0;
+			if ( isPrinted )
+				System.out.println( "Round " + round + ":" );
+
+			measure( "  Send, 4 KB chunks flushed     ", source, null, new Sending( false, false ), isPrinted );
+			measure( "  Send, large buffer            ", source, null, new Sending( false, true ), isPrinted );
+			measure( "  Send, channel transfer        ", source, null, new Sending( true, false ), isPrinted );
+			measure( "  Receive, 4 KB chunks flushed  ", source, destination, new Receiving( false, false ), isPrinted );
+			measure( "  Receive, large buffer         ", source, destination, new Receiving( false, true ), isPrinted );
+			measure( "  Receive, channel direct buffer", source, destination, new Receiving( true, false ), isPrinted );
+		}
+	}
+
+	/**
+	 * A transfer between a file and one end of a loopback connection.
+	 */
+	private static abstract class Transfer {
+		final boolean isChannel;
+		final boolean isLargeBuffer;
+
+		Transfer( boolean isChannel, boolean isLargeBuffer ) {
+			this.isChannel = isChannel;
+			this.isLargeBuffer = isLargeBuffer;
+		}
+
+		/**
+		 * Performs the measured transfer.
+		 *
+		 * @return Number of transferred bytes
+		 */
+		abstract long run( File source, File destination, ServerSocket listener ) throws Exception;
+	}
+
+	/**
+	 * Sends a file over connection, while another thread drains the connection.
+	 */
+	private static class Sending extends Transfer {
+		Sending( boolean isChannel, boolean isLargeBuffer ) {
+			super( isChannel, isLargeBuffer );
+		}
+
+		long run( File source, File destination, ServerSocket listener ) throws Exception {
+			Drain drain = new Drain( listener );
+			drain.start();
+
+			Socket socket = isChannel ? FileTransfer.openSocket( "localhost", listener.getLocalPort() ) : new Socket( "localhost", listener.getLocalPort() );
+			FileInputStream file = new FileInputStream( source );
+			long numberOfBytes = 0L;
+			try {
+				OutputStream output = socket.getOutputStream();
+				output.write( HEADER );
+				output.flush();
+				if ( isChannel ) {
+					numberOfBytes = FileTransfer.send( file, socket );
+				} else if ( isLargeBuffer ) {
+					numberOfBytes = FileTransfer.copy( file, output );
+				} else {
+					numberOfBytes = copyInSmallChunks( file, output );
+				}
+			} finally {
+				file.close();
+				socket.close();
+			}
+			drain.join();
+
+			if ( drain.numberOfBytes != numberOfBytes + HEADER.length )
+				throw new IllegalStateException( "Send " + numberOfBytes + " bytes, but received " + drain.numberOfBytes );
+			return numberOfBytes;
+		}
+	}
+
+	/**
+	 * Receives a file from connection, while another thread sends the data.
+	 */
+	private static class Receiving extends Transfer {
+		Receiving( boolean isChannel, boolean isLargeBuffer ) {
+			super( isChannel, isLargeBuffer );
+		}
+
+		long run( File source, File destination, ServerSocket listener ) throws Exception {
+			Source sender = new Source( listener.getLocalPort(), source );
+			sender.start();
+
+			Socket connection = listener.accept();
+			FileOutputStream file = new FileOutputStream( destination );
+			long numberOfBytes = 0L;
+			try {
+				MessageInputStream input = isChannel ? new MessageInputStream( connection.getInputStream(), connection.getChannel() ) : new MessageInputStream( connection.getInputStream() );
+				input.readLine();
+				input.readLine();
+				if ( isChannel ) {
+					numberOfBytes = FileTransfer.receive( input, file );
+				} else if ( isLargeBuffer ) {
+					numberOfBytes = FileTransfer.copy( input, file );
+				} else {
+					numberOfBytes = copyInSmallChunks( input, file );
+				}
+			} finally {
+				file.close();
+				connection.close();
+			}
+			sender.join();
+
+			if ( sender.failure != null )
+				throw sender.failure;
+			if ( numberOfBytes != source.length() || destination.length() != source.length() )
+				throw new IllegalStateException( "Received " + numberOfBytes + " bytes out of " + source.length() );
+			return numberOfBytes;
+		}
+	}
+
+	/**
+	 * Accepts a single connection and reads everything from it.
+	 */
+	private static class Drain extends Thread {
+		private final ServerSocket listener;
+		volatile long numberOfBytes = 0L;
+
+		Drain( ServerSocket listener ) {
+			this.listener = listener;
+		}
+
+		public void run() {
+			try {
+				Socket connection = listener.accept();
+				InputStream input = connection.getInputStream();
+				byte[] buffer = new byte[1048576];
+				int number = 0;
+				long total = 0L;
+				while ( ( number = input.read( buffer ) ) > 0 ) {
+					total += number;
+				}
+				numberOfBytes = total;
+				connection.close();
+			} catch ( Exception e ) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Connects to the listener and sends the header followed by a file.
+	 */
+	private static class Source extends Thread {
+		private final int port;
+		private final File file;
+		volatile Exception failure;
+
+		Source( int port, File file ) {
+			this.port = port;
+			this.file = file;
+		}
+
+		public void run() {
+			try {
+				Socket socket = FileTransfer.openSocket( "localhost", port );
+				FileInputStream input = new FileInputStream( file );
+				socket.getOutputStream().write( HEADER );
+				FileTransfer.send( input, socket );
+				input.close();
+				socket.close();
+			} catch ( Exception e ) {
+				failure = e;
+			}
+		}
+	}
+
+	private static void measure( String name, File source, File destination, Transfer transfer, boolean isPrinted ) throws Exception {
+		ServerSocket listener = FileTransfer.openServerSocket( 0 );
+		try {
+			long cpuTime = getProcessCpuTime();
+			long startedAt = System.nanoTime();
+			long numberOfBytes = transfer.run( source, destination, listener );
+			long time = System.nanoTime() - startedAt;
+			cpuTime = getProcessCpuTime() - cpuTime;
+
+			if ( destination != null )
+				compare( source, destination );
+
+			if ( isPrinted ) {
+				double seconds = time / 1000000000.0;
+				double gigabytes = numberOfBytes / 1073741824.0;
+				System.out.println( name + ": " + (long) ( numberOfBytes / 1048576.0 / seconds ) + " MB/s, "
+						+ ( cpuTime < 0L ? "unknown" : ( (long) ( cpuTime / 1000000.0 / gigabytes ) + " ms" ) ) + " of CPU per GB" );
+			}
+		} finally {
+			listener.close();
+		}
+	}
+
+	private static long copyInSmallChunks( InputStream input, OutputStream output ) throws Exception {
+		byte[] buffer = new byte[Constant.DEFAULT_BUFFER_SIZE];
+		long numberOfBytes = 0L;
+		int number = 0;
+		while ( ( number = input.read( buffer ) ) > 0 ) {
+			output.write( buffer, 0, number );
+			output.flush();
+			numberOfBytes += number;
+		}
+		return numberOfBytes;
+	}
+
+	private static void createFile( File file, long size ) throws Exception {
+		byte[] buffer = new byte[1048576];
+		new Random( 27182L ).nextBytes( buffer );
+		FileOutputStream output = new FileOutputStream( file );
+		try {
+			for ( long written = 0L; written < size; written += buffer.length ) {
+				output.write( buffer, 0, (int) Math.min( buffer.length, size - written ) );
+			}
+		} finally {
+			output.close();
+		}
+	}
+
+	private static void compare( File first, File second ) throws Exception {
+		InputStream a = new FileInputStream( first );
+		InputStream b = new FileInputStream( second );
+		try {
+			byte[] x = new byte[1048576];
+			byte[] y = new byte[1048576];
+			int number = 0;
+			while ( ( number = a.read( x ) ) > 0 ) {
+				int offset = 0;
+				while ( offset < number ) {
+					int read = b.read( y, offset, number - offset );
+					if ( read <= 0 )
+						throw new IllegalStateException( "Received file is shorter than the send one" );
+					offset += read;
+				}
+				for ( int i = 0; i < number; i++ ) {
+					if ( x[i] != y[i] )
+						throw new IllegalStateException( "Received file differs from the send one" );
+				}
+			}
+			if ( b.read() != -1 )
+				throw new IllegalStateException( "Received file is longer than the send one" );
+		} finally {
+			a.close();
+			b.close();
+		}
+	}
+
+	/**
+	 * Returns CPU time used by the whole process or -1 if it is not available on this platform.
+	 */
+	private static long getProcessCpuTime() {
+		Object bean = ManagementFactory.getOperatingSystemMXBean();
+		if ( bean instanceof com.sun.management.OperatingSystemMXBean )
+			return ( (com.sun.management.OperatingSystemMXBean) bean ).getProcessCpuTime();
+		return -1L;
+	}
+}
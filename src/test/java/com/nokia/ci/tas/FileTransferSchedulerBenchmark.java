@@ -0,0 +1,85 @@
+package com.nokia.ci.tas;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.nokia.ci.tas.commons.FileDescription;
+import com.nokia.ci.tas.commons.Test;
+import com.nokia.ci.tas.commons.message.FileOperation;
+import com.nokia.ci.tas.communicator.FileCacheEntry;
+import com.nokia.ci.tas.communicator.FileTransferScheduler;
+
+/**
+ * Measures how long it takes to deliver all artifacts of a test with different limits of parallel file transfers,
+ * when every transfer costs a round trip to the client and a fixed time of sending data.
+ *
+ * Usage: FileTransferSchedulerBenchmark [number of artifacts] [milliseconds per transfer]
+ */
+public class FileTransferSchedulerBenchmark {
+
+	/**
+	 * @param args
+	 */
+	public static void main( String[] args ) throws Exception {
+		int numberOfArtifacts = args.length > 0 ? Integer.parseInt( args[0] ) : 20;
+		long timePerTransfer = args.length > 1 ? Long.parseLong( args[1] ) : 50L;
+
+		System.out.println( "Artifacts: " + numberOfArtifacts + ", " + timePerTransfer + " ms per transfer" );
+		System.out.println( "  One transfer at a time: " + deliver( numberOfArtifacts, timePerTransfer, 1, 1 ) + " ms" );
+		System.out.println( "  4 transfers per client: " + deliver( numberOfArtifacts, timePerTransfer, 4, 8 ) + " ms" );
+		System.out.println( "  8 transfers per client: " + deliver( numberOfArtifacts, timePerTransfer, 8, 8 ) + " ms" );
+	}
+
+	/**
+	 * Delivers all artifacts of a test through the scheduler, the way sender and receivers of the communicator do,
+	 * and returns the time in milliseconds it took until the last artifact has arrived.
+	 */
+	private static long deliver( int numberOfArtifacts, final long timePerTransfer, int perClient, int total ) throws Exception {
+		final FileTransferScheduler scheduler = new FileTransferScheduler( perClient, total );
+		final List<FileCacheEntry> unrequested = new ArrayList<FileCacheEntry>();
+		final int[] numberOfReceivedFiles = new int[] { 0 };
+		Test test = new Test( "test_1" );
+
+		for ( int i = 0; i < numberOfArtifacts; i++ ) {
+			unrequested.add( createEntry( test, "artifact_" + i + ".bin", "/ws/1", "client-a" ) );
+		}
+
+		long startedAt = System.currentTimeMillis();
+
+		synchronized ( numberOfReceivedFiles ) {
+			while ( numberOfReceivedFiles[0] < numberOfArtifacts ) {
+				for ( int i = 0; i < unrequested.size(); i++ ) {
+					final FileCacheEntry entry = unrequested.get( i );
+					if ( scheduler.start( entry ) ) {
+						unrequested.remove( i-- );
+						new Thread() {
+							public void run() {
+								try {
+									sleep( timePerTransfer );
+								} catch ( InterruptedException e ) {
+									// Ignore
+								}
+								scheduler.finish( entry.getAbsoluteFilePath() );
+								synchronized ( numberOfReceivedFiles ) {
+									numberOfReceivedFiles[0]++;
+									numberOfReceivedFiles.notify();
+								}
+							}
+						}.start();
+					}
+				}
+				numberOfReceivedFiles.wait();
+			}
+		}
+
+		return System.currentTimeMillis() - startedAt;
+	}
+
+	private static FileCacheEntry createEntry( Test test, String fileName, String workspace, String client ) {
+		FileDescription fileDescription = new FileDescription();
+		fileDescription.setFileName( fileName );
+		FileOperation request = new FileOperation( FileOperation.Id.GET, test, fileDescription );
+		request.setReceiver( client, 15000 );
+		return new FileCacheEntry( fileName, test, workspace + "/" + fileName, request );
+	}
+}
@@ -0,0 +1,54 @@
+package com.nokia.ci.tas;
+
+import junit.framework.TestCase;
+
+import com.nokia.ci.tas.commons.FileDescription;
+import com.nokia.ci.tas.commons.Test;
+import com.nokia.ci.tas.commons.message.FileOperation;
+import com.nokia.ci.tas.communicator.FileCacheEntry;
+import com.nokia.ci.tas.communicator.FileTransferScheduler;
+
+/**
+ * Checks the per client and total limits of parallel file transfers.
+ */
+public class FileTransferSchedulerTest extends TestCase {
+
+	public void testLimits() {
+		FileTransferScheduler scheduler = new FileTransferScheduler( 2, 3 );
+		Test test = new Test( "test_1" );
+		Test otherTest = new Test( "test_2" );
+
+		FileCacheEntry a1 = createEntry( test, "a1.bin", "/ws/1", "client-a" );
+		FileCacheEntry a2 = createEntry( test, "a2.bin", "/ws/1", "client-a" );
+		FileCacheEntry a3 = createEntry( test, "a3.bin", "/ws/1", "client-a" );
+		FileCacheEntry b1 = createEntry( otherTest, "b1.bin", "/ws/2", "client-b" );
+		FileCacheEntry b2 = createEntry( otherTest, "b2.bin", "/ws/2", "client-b" );
+		FileCacheEntry a1Copy = createEntry( test, "a1.bin", "/ws/3", "client-a" );
+
+		assertTrue( "first transfer from a client is started", scheduler.start( a1 ) );
+		assertFalse( "the same file is not transferred twice", scheduler.start( a1 ) );
+		assertFalse( "the same file of the same test is not transferred into another workspace", scheduler.start( a1Copy ) );
+		assertTrue( "second transfer from a client is started", scheduler.start( a2 ) );
+		assertFalse( "third transfer from a client waits", scheduler.start( a3 ) );
+		assertTrue( "transfer from another client is started", scheduler.start( b1 ) );
+		assertFalse( "total limit is reached", scheduler.hasFreeSlots() );
+		assertFalse( "transfer waits for the total limit", scheduler.start( b2 ) );
+		assertTrue( "transfer is finished", scheduler.finish( a1.getAbsoluteFilePath() ) );
+		assertFalse( "transfer is finished only once", scheduler.finish( a1.getAbsoluteFilePath() ) );
+		assertEquals( "slot of the client is given back", 1, scheduler.getNumberOfTransfers( "client-a:15000" ) );
+		assertTrue( "waiting transfer from the client is started", scheduler.start( a3 ) );
+		assertTrue( "transfer from another client is finished", scheduler.finish( b1.getAbsoluteFilePath() ) );
+		assertTrue( "waiting transfer from another client is started", scheduler.start( b2 ) );
+		assertTrue( "active transfers are not expired", scheduler.expire( 60000L ).isEmpty() );
+		assertEquals( "inactive transfers are expired", 3, scheduler.expire( -1L ).size() );
+		assertEquals( "expired transfers give back their slots", 0, scheduler.getNumberOfTransfers() );
+	}
+
+	private static FileCacheEntry createEntry( Test test, String fileName, String workspace, String client ) {
+		FileDescription fileDescription = new FileDescription();
+		fileDescription.setFileName( fileName );
+		FileOperation request = new FileOperation( FileOperation.Id.GET, test, fileDescription );
+		request.setReceiver( client, 15000 );
+		return new FileCacheEntry( fileName, test, workspace + "/" + fileName, request );
+	}
+}
@@ -0,0 +1,255 @@
+package com.nokia.ci.tas;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.nokia.ci.tas.commons.Converter;
+import com.nokia.ci.tas.commons.FileDescription;
+import com.nokia.ci.tas.commons.FileTransfer;
+import com.nokia.ci.tas.commons.MessageInputStream;
+import com.nokia.ci.tas.commons.Test;
+import com.nokia.ci.tas.commons.message.FileOperation;
+
+/**
+ * Checks over the loopback interface that files are received byte to byte the same,
+ * whenever they are send with transferTo() or through streams,
+ * and received through a direct buffer or through streams.
+ */
+public class FileTransferTest extends TestCase {
+
+	private static final int FILE_SIZE = 3 * 1024 * 1024 + 123;
+
+	private ServerSocketChannel serverChannel;
+	private File sentFile;
+	private File receivedFile;
+	private byte[] data;
+	private int bufferSize;
+
+	protected void setUp() throws Exception {
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.socket().bind( new InetSocketAddress( "localhost", 0 ) );
+
+		data = new byte[FILE_SIZE];
+		new Random( 42 ).nextBytes( data );
+
+		sentFile = File.createTempFile( "sent", ".bin" );
+		receivedFile = File.createTempFile( "received", ".bin" );
+
+		FileOutputStream output = new FileOutputStream( sentFile );
+		output.write( data );
+		output.close();
+
+		bufferSize = FileTransfer.getBufferSize();
+	}
+
+	protected void tearDown() throws Exception {
+		FileTransfer.setBufferSize( bufferSize );
+		serverChannel.close();
+		sentFile.delete();
+		receivedFile.delete();
+	}
+
+	public void testSendingWithTransferTo() throws Exception {
+		Socket socket = FileTransfer.openSocket( "localhost", serverChannel.socket().getLocalPort() );
+		assertNotNull( "socket opened for file transfers has a channel", socket.getChannel() );
+		SocketChannel accepted = serverChannel.accept();
+
+		Reader reader = new Reader( accepted.socket().getInputStream() );
+		reader.start();
+
+		FileInputStream file = new FileInputStream( sentFile );
+		assertEquals( FILE_SIZE, FileTransfer.send( file, socket ) );
+		file.close();
+		socket.close();
+
+		reader.join( 30000L );
+		accepted.close();
+		assertTrue( "received bytes are the same", Arrays.equals( data, reader.getData() ) );
+	}
+
+	public void testSendingRangeWithTransferTo() throws Exception {
+		Socket socket = FileTransfer.openSocket( "localhost", serverChannel.socket().getLocalPort() );
+		SocketChannel accepted = serverChannel.accept();
+
+		Reader reader = new Reader( accepted.socket().getInputStream() );
+		reader.start();
+
+		FileInputStream file = new FileInputStream( sentFile );
+		assertEquals( 1000000L, FileTransfer.send( file, socket, 12345L, 1000000L ) );
+		file.close();
+		socket.close();
+
+		reader.join( 30000L );
+		accepted.close();
+		assertTrue( Arrays.equals( Arrays.copyOfRange( data, 12345, 12345 + 1000000 ), reader.getData() ) );
+	}
+
+	public void testSendingOverStreamWithoutChannel() throws Exception {
+		Socket socket = new Socket( "localhost", serverChannel.socket().getLocalPort() );
+		assertNull( socket.getChannel() );
+		SocketChannel accepted = serverChannel.accept();
+
+		Reader reader = new Reader( accepted.socket().getInputStream() );
+		reader.start();
+
+		FileInputStream file = new FileInputStream( sentFile );
+		assertEquals( 200L, FileTransfer.send( file, socket, FILE_SIZE - 200L, 200L ) );
+		file.close();
+		socket.close();
+
+		reader.join( 30000L );
+		accepted.close();
+		assertTrue( Arrays.equals( Arrays.copyOfRange( data, FILE_SIZE - 200, FILE_SIZE ), reader.getData() ) );
+	}
+
+	public void testReceivingThroughDirectBuffer() throws Exception {
+		// Small buffers make the direct buffer fill up many times
+		FileTransfer.setBufferSize( 1000 );
+
+		FileOperation message = createMessage();
+		Socket socket = new Socket( "localhost", serverChannel.socket().getLocalPort() );
+		SocketChannel accepted = serverChannel.accept();
+
+		Writer writer = new Writer( socket, message.toXML().getBytes( "UTF-8" ), data );
+		writer.start();
+
+		// Receiver gets the message and the beginning of the file into the same buffer
+		MessageInputStream input = new MessageInputStream( accepted.socket().getInputStream(), accepted );
+		Object received = new Converter().handle( input );
+		assertTrue( received instanceof FileOperation );
+		assertEquals( message.getFileDescription().toXML(), ( (FileOperation) received ).getFileDescription().toXML() );
+
+		FileOutputStream file = new FileOutputStream( receivedFile );
+		assertEquals( FILE_SIZE, FileTransfer.receive( input, file ) );
+		file.close();
+
+		writer.join( 30000L );
+		accepted.close();
+		assertTrue( "buffered bytes are handed over before the rest", Arrays.equals( data, readFile( receivedFile ) ) );
+	}
+
+	public void testReceivingWhenStreamHasEndedInBuffer() throws Exception {
+		// The whole file fits into the buffer of the message stream together with the message
+		byte[] smallFile = Arrays.copyOf( data, 100 );
+		FileOperation message = createMessage();
+		Socket socket = new Socket( "localhost", serverChannel.socket().getLocalPort() );
+		SocketChannel accepted = serverChannel.accept();
+
+		Writer writer = new Writer( socket, message.toXML().getBytes( "UTF-8" ), smallFile );
+		writer.start();
+		writer.join( 30000L );
+
+		MessageInputStream input = new MessageInputStream( accepted.socket().getInputStream(), accepted );
+		assertTrue( new Converter().handle( input ) instanceof FileOperation );
+
+		FileOutputStream file = new FileOutputStream( receivedFile );
+		assertEquals( 100L, FileTransfer.receive( input, file ) );
+		file.close();
+
+		accepted.close();
+		assertTrue( Arrays.equals( smallFile, readFile( receivedFile ) ) );
+	}
+
+	public void testReceivingFromListenerStreams() throws Exception {
+		FileOperation message = createMessage();
+		ByteArrayOutputStream frame = new ByteArrayOutputStream();
+		frame.write( message.toXML().getBytes( "UTF-8" ) );
+		frame.write( data );
+
+		// Streams handed over by the listeners of persistent connections have no channels
+		MessageInputStream input = MessageInputStream.wrap( new ByteArrayInputStream( frame.toByteArray() ) );
+		assertNull( input.getChannel() );
+		assertTrue( new Converter().handle( input ) instanceof FileOperation );
+
+		FileOutputStream file = new FileOutputStream( receivedFile );
+		assertEquals( FILE_SIZE, FileTransfer.receive( input, file ) );
+		file.close();
+		assertTrue( "buffered bytes are read before the rest", Arrays.equals( data, readFile( receivedFile ) ) );
+
+		// Plain streams are copied as they are
+		file = new FileOutputStream( receivedFile );
+		assertEquals( FILE_SIZE, FileTransfer.receive( new ByteArrayInputStream( data ), file ) );
+		file.close();
+		assertTrue( Arrays.equals( data, readFile( receivedFile ) ) );
+	}
+
+	private static FileOperation createMessage() {
+		FileDescription fileDescription = new FileDescription();
+		fileDescription.setFileName( "file.bin" );
+		fileDescription.setFileSize( FILE_SIZE );
+		FileOperation message = new FileOperation( FileOperation.Id.PUT, new Test( "test" ), fileDescription );
+		message.setSender( "localhost", 33333 );
+		message.setReceiver( "localhost", 15000 );
+		return message;
+	}
+
+	private static byte[] readFile( File file ) throws Exception {
+		FileInputStream input = new FileInputStream( file );
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		FileTransfer.copy( input, output );
+		input.close();
+		return output.toByteArray();
+	}
+
+	private static class Reader extends Thread {
+
+		private InputStream input;
+		private ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+		Reader( InputStream input ) {
+			this.input = input;
+			setDaemon( true );
+		}
+
+		public void run() {
+			try {
+				FileTransfer.copy( input, output );
+			} catch ( Exception e ) {
+				// Received data will be incomplete
+			}
+		}
+
+		byte[] getData() {
+			return output.toByteArray();
+		}
+	}
+
+	private static class Writer extends Thread {
+
+		private Socket socket;
+		private byte[] message;
+		private byte[] file;
+
+		Writer( Socket socket, byte[] message, byte[] file ) {
+			this.socket = socket;
+			this.message = message;
+			this.file = file;
+			setDaemon( true );
+		}
+
+		public void run() {
+			try {
+				OutputStream output = socket.getOutputStream();
+				output.write( message );
+				output.write( file );
+				output.flush();
+				socket.close();
+			} catch ( Exception e ) {
+				// Received data will be incomplete
+			}
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package com.nokia.ci.tas;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.nokia.ci.tas.commons.Product;
+import com.nokia.ci.tas.commons.Test;
+import com.nokia.ci.tas.service.GangReservation;
+import com.nokia.ci.tas.service.ProductClaims;
+import com.nokia.ci.tas.service.ProductReserver;
+
+/**
+ * Checks that product sets of all environments required by a test are reserved together or none of them,
+ * and that a rolled back reservation is never announced to the test nodes.
+ */
+public class GangReservationTest extends TestCase {
+
+	private ProductClaims claims;
+	private Node firstNode;
+	private Node secondNode;
+	private List<Product> firstSet;
+	private List<Product> secondSet;
+
+	protected void setUp() throws Exception {
+		claims = new ProductClaims();
+		firstNode = new Node( claims );
+		secondNode = new Node( claims );
+		firstSet = Arrays.asList( new Product( "RM-1", "351000000010001" ), new Product( "RM-2", "351000000010002" ) );
+		secondSet = Arrays.asList( new Product( "RM-1", "351000000020001" ), new Product( "RM-3", "351000000020002" ) );
+	}
+
+	public void testAllEnvironmentsAreReservedAndCommitted() throws Exception {
+		GangReservation gangReservation = new GangReservation();
+		gangReservation.add( firstNode, new Test( "test_1" ), firstSet );
+		gangReservation.add( secondNode, new Test( "test_2" ), secondSet );
+
+		assertTrue( gangReservation.reserve( 60000L ) );
+		assertEquals( -1, gangReservation.getIndexOfFailure() );
+		assertEquals( firstSet, gangReservation.getReservedProducts( 0 ) );
+		assertEquals( secondSet, gangReservation.getReservedProducts( 1 ) );
+		assertAllClaimed( firstSet, true );
+		assertAllClaimed( secondSet, true );
+
+		assertEquals( "products are reserved silently", 0, firstNode.notifiedProducts.size() + secondNode.notifiedProducts.size() );
+		assertEquals( "tests are not running before commit", 0, firstNode.runningTests + secondNode.runningTests );
+
+		gangReservation.commit();
+		assertEquals( firstSet, firstNode.notifiedProducts );
+		assertEquals( secondSet, secondNode.notifiedProducts );
+		assertEquals( 1, firstNode.runningTests );
+		assertEquals( 1, secondNode.runningTests );
+	}
+
+	public void testFailedSecondEnvironmentRollsBackTheFirstOne() throws Exception {
+		// Another test has already claimed one of the products selected for the second environment
+		assertTrue( claims.claim( "351000000020002" ) );
+
+		GangReservation gangReservation = new GangReservation();
+		gangReservation.add( firstNode, new Test( "test_1" ), firstSet );
+		gangReservation.add( secondNode, new Test( "test_2" ), secondSet );
+
+		assertFalse( gangReservation.reserve( 60000L ) );
+		assertEquals( 1, gangReservation.getIndexOfFailure() );
+		assertEquals( "the first environment was reserved before the failure", 1, firstNode.numberOfReservations );
+
+		// Nothing of the gang is left claimed, except the product of the other test
+		assertAllClaimed( firstSet, false );
+		assertFalse( claims.isClaimed( "351000000020001" ) );
+		assertTrue( claims.isClaimed( "351000000020002" ) );
+		assertEquals( firstSet, firstNode.cancelledProducts );
+
+		// Test nodes heard nothing and are running nothing
+		gangReservation.commit();
+		assertTrue( firstNode.notifiedProducts.isEmpty() );
+		assertTrue( secondNode.notifiedProducts.isEmpty() );
+		assertEquals( 0, firstNode.runningTests );
+		assertEquals( 0, secondNode.runningTests );
+	}
+
+	public void testPartialReservationOfEnvironmentIsTakenBack() throws Exception {
+		// The second node is able to reserve only a part of the selected products
+		secondNode.numberOfLostProducts = 1;
+
+		GangReservation gangReservation = new GangReservation();
+		gangReservation.add( firstNode, new Test( "test_1" ), firstSet );
+		gangReservation.add( secondNode, new Test( "test_2" ), secondSet );
+		gangReservation.add( firstNode, new Test( "test_3" ), Arrays.asList( new Product( "RM-4", "351000000010003" ) ) );
+
+		assertFalse( gangReservation.reserve( 60000L ) );
+		assertEquals( 1, gangReservation.getIndexOfFailure() );
+		assertEquals( "the third environment is not tried", 1, firstNode.numberOfReservations );
+		assertAllClaimed( firstSet, false );
+		assertAllClaimed( secondSet, false );
+		assertFalse( claims.isClaimed( "351000000010003" ) );
+		assertEquals( 0, firstNode.runningTests + secondNode.runningTests );
+	}
+
+	private void assertAllClaimed( List<Product> products, boolean isClaimed ) {
+		for ( Product product : products ) {
+			assertEquals( product.getIMEI(), isClaimed, claims.isClaimed( product.getIMEI() ) );
+		}
+	}
+
+	/**
+	 * Test node which reserves its products by claims only, like the real one does before setting products busy.
+	 */
+	private static class Node implements ProductReserver {
+
+		private ProductClaims claims;
+		private List<Product> notifiedProducts = new ArrayList<Product>();
+		private List<Product> cancelledProducts = new ArrayList<Product>();
+		private int runningTests = 0;
+		private int numberOfReservations = 0;
+		private int numberOfLostProducts = 0;
+
+		Node( ProductClaims claims ) {
+			this.claims = claims;
+		}
+
+		public List<Product> reserveProducts( Test test, List<Product> selectedProducts, long reservationTimeout, boolean isNotifying ) {
+			assertFalse( "gang reservation is always silent", isNotifying );
+			numberOfReservations++;
+
+			List<Product> availableProducts = selectedProducts.subList( 0, selectedProducts.size() - numberOfLostProducts );
+			List<String> imeis = new ArrayList<String>();
+
+			for ( Product product : availableProducts ) {
+				imeis.add( product.getIMEI() );
+			}
+
+			if ( !claims.claimAll( imeis ) ) {
+				return new ArrayList<Product>( 0 );
+			}
+
+			return new ArrayList<Product>( availableProducts );
+		}
+
+		public void notifyAboutReservedProducts( List<Product> reservedProducts ) {
+			notifiedProducts.addAll( reservedProducts );
+		}
+
+		public void cancelReservations( List<Product> reservedProducts ) {
+			for ( Product product : reservedProducts ) {
+				claims.release( product.getIMEI() );
+			}
+
+			cancelledProducts.addAll( reservedProducts );
+		}
+
+		public void increaseNumberOfRunningTests( Test test ) {
+			runningTests++;
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package com.nokia.ci.tas;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.nokia.ci.tas.commons.PersistentConnection;
+import com.nokia.ci.tas.service.IncomingConnection;
+
+/**
+ * Checks that connections accepted by the service are routed by their first line
+ * and that frames of persistent connections are cut out of the received data.
+ */
+public class IncomingConnectionTest extends TestCase {
+
+	public void testXMLMessageIsResolved() throws Exception {
+		String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<message>\n";
+		IncomingConnection connection = receive( xml );
+
+		assertTrue( connection.resolveKind() );
+		assertEquals( IncomingConnection.KIND_XML, connection.getKind() );
+		assertEquals( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>", connection.getFirstLine() );
+		assertEquals( "the whole message is kept for decoding", xml, new String( connection.getData(), "UTF-8" ) );
+	}
+
+	public void testEmptyFirstLineIsResolvedAsXML() throws Exception {
+		IncomingConnection connection = receive( "\n" );
+
+		assertTrue( connection.resolveKind() );
+		assertEquals( IncomingConnection.KIND_XML, connection.getKind() );
+		assertEquals( "", connection.getFirstLine() );
+	}
+
+	public void testHTTPRequestIsResolved() throws Exception {
+		IncomingConnection connection = receive( "GET /status HTTP/1.1\r\nHost: tas.example.com\r\n" );
+
+		assertTrue( connection.resolveKind() );
+		assertEquals( IncomingConnection.KIND_HTTP, connection.getKind() );
+		assertEquals( "GET /status HTTP/1.1", connection.getFirstLine().trim() );
+	}
+
+	public void testPersistentHeaderIsResolved() throws Exception {
+		IncomingConnection connection = receive( PersistentConnection.HEADER + "\n" );
+
+		assertTrue( connection.resolveKind() );
+		assertEquals( IncomingConnection.KIND_PERSISTENT, connection.getKind() );
+		assertEquals( "header line is not taken for a frame", 0, connection.getSize() );
+		assertNull( connection.nextFrame() );
+	}
+
+	public void testUnsupportedRequestIsResolved() throws Exception {
+		IncomingConnection connection = receive( "HELLO\n" );
+
+		assertTrue( connection.resolveKind() );
+		assertEquals( IncomingConnection.KIND_UNSUPPORTED, connection.getKind() );
+	}
+
+	public void testIncompleteFirstLineIsNotResolved() throws Exception {
+		IncomingConnection connection = receive( PersistentConnection.HEADER.substring( 0, 10 ) );
+
+		assertFalse( connection.resolveKind() );
+		assertEquals( IncomingConnection.KIND_UNKNOWN, connection.getKind() );
+
+		append( connection, PersistentConnection.HEADER.substring( 10 ) + "\n" );
+		assertTrue( connection.resolveKind() );
+		assertEquals( IncomingConnection.KIND_PERSISTENT, connection.getKind() );
+	}
+
+	public void testFramesAreCutOutOfReceivedData() throws Exception {
+		byte[] first = "<?xml version=\"1.0\"?>\n<message>first</message>".getBytes( "UTF-8" );
+		byte[] second = new byte[20000];
+		Arrays.fill( second, (byte) 'x' );
+
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		data.write( ( PersistentConnection.HEADER + "\n" ).getBytes( "UTF-8" ) );
+		writeFrame( data, first );
+		writeFrame( data, new byte[0] );
+		writeFrame( data, second );
+		byte[] bytes = data.toByteArray();
+
+		// Frames arrive in pieces of different sizes
+		IncomingConnection connection = new IncomingConnection( null );
+		int position = 0;
+		int pieceSize = 1;
+
+		while ( position < bytes.length && !connection.resolveKind() ) {
+			connection.append( bytes, position, 1 );
+			position++;
+		}
+
+		assertEquals( IncomingConnection.KIND_PERSISTENT, connection.getKind() );
+		assertNull( "nothing is received after the header", connection.nextFrame() );
+
+		List<byte[]> frames = new ArrayList<byte[]>();
+
+		while ( position < bytes.length ) {
+			int length = Math.min( pieceSize, bytes.length - position );
+			connection.append( bytes, position, length );
+			position += length;
+			pieceSize = pieceSize * 3 + 1;
+
+			byte[] frame = connection.nextFrame();
+			while ( frame != null ) {
+				frames.add( frame );
+				frame = connection.nextFrame();
+			}
+		}
+
+		assertEquals( 3, frames.size() );
+		assertTrue( Arrays.equals( first, frames.get( 0 ) ) );
+		assertEquals( "connection check", 0, frames.get( 1 ).length );
+		assertTrue( Arrays.equals( second, frames.get( 2 ) ) );
+		assertEquals( 0, connection.getSize() );
+	}
+
+	public void testFrameOfUnsupportedLengthIsRejected() throws Exception {
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		data.write( ( PersistentConnection.HEADER + "\n" ).getBytes( "UTF-8" ) );
+		new DataOutputStream( data ).writeInt( PersistentConnection.MAXIMAL_FRAME_SIZE + 1 );
+
+		IncomingConnection connection = new IncomingConnection( null );
+		connection.append( data.toByteArray(), 0, data.size() );
+		assertTrue( connection.resolveKind() );
+
+		try {
+			connection.nextFrame();
+			fail( "too large frame is accepted" );
+		} catch ( IOException e ) {
+			// Expected
+		}
+	}
+
+	public void testRepliesAreWrittenInOrder() throws Exception {
+		ServerSocketChannel serverChannel = ServerSocketChannel.open();
+		serverChannel.socket().bind( new InetSocketAddress( "localhost", 0 ) );
+		Socket peer = new Socket( "localhost", serverChannel.socket().getLocalPort() );
+		SocketChannel channel = serverChannel.accept();
+
+		try {
+			channel.configureBlocking( false );
+			IncomingConnection connection = new IncomingConnection( channel );
+			assertTrue( "nothing to write", connection.writeOutput() );
+
+			connection.queueOutput( ( PersistentConnection.HEADER + "\n" ).getBytes( "UTF-8" ) );
+			connection.queueOutput( new byte[] { (byte) PersistentConnection.ACKNOWLEDGEMENT } );
+			connection.queueOutput( new byte[] { (byte) PersistentConnection.ACKNOWLEDGEMENT } );
+			assertTrue( connection.writeOutput() );
+
+			InputStream input = peer.getInputStream();
+			assertEquals( PersistentConnection.HEADER, PersistentConnection.readLine( input ) );
+			assertEquals( PersistentConnection.ACKNOWLEDGEMENT, input.read() );
+			assertEquals( PersistentConnection.ACKNOWLEDGEMENT, input.read() );
+		} finally {
+			peer.close();
+			channel.close();
+			serverChannel.close();
+		}
+	}
+
+	private static IncomingConnection receive( String text ) throws Exception {
+		IncomingConnection connection = new IncomingConnection( null );
+		append( connection, text );
+		return connection;
+	}
+
+	private static void append( IncomingConnection connection, String text ) throws Exception {
+		byte[] bytes = text.getBytes( "UTF-8" );
+		connection.append( bytes, 0, bytes.length );
+	}
+
+	private static void writeFrame( ByteArrayOutputStream data, byte[] frame ) throws IOException {
+		DataOutputStream output = new DataOutputStream( data );
+		output.writeInt( frame.length );
+		output.write( frame );
+		output.flush();
+	}
+}
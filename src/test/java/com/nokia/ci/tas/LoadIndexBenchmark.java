@@ -0,0 +1,106 @@
+package com.nokia.ci.tas;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import com.nokia.ci.tas.service.LoadIndex;
+
+/**
+ * Compares the time of allocation cycles sorting test nodes by their synchronized getters with reading the load index.
+ *
+ * Usage: LoadIndexBenchmark [number of cycles]
+ */
+public class LoadIndexBenchmark {
+
+	/**
+	 * Imitates the way test nodes used to be compared, taking locks and dividing on each comparison.
+	 */
+	private static class Node implements Comparable<Node> {
+		private long numberOfExecutedTests;
+		private long numberOfRunningTests;
+		private long numberOfProducts;
+		private final int sequenceNumber;
+
+		Node( int sequenceNumber, long numberOfProducts ) {
+			this.sequenceNumber = sequenceNumber;
+			this.numberOfProducts = numberOfProducts;
+		}
+
+		synchronized long getNumberOfTests() {
+			return numberOfExecutedTests + numberOfRunningTests;
+		}
+
+		synchronized long getNumberOfProducts() {
+			return numberOfProducts;
+		}
+
+		synchronized double getLoad() {
+			return ( double ) ( numberOfExecutedTests + numberOfRunningTests ) / Math.max( numberOfProducts, 1L );
+		}
+
+		@Override
+		public int compareTo( Node node ) {
+			double load = ( double ) getNumberOfTests() / Math.max( getNumberOfProducts(), 1L );
+			double otherLoad = ( double ) node.getNumberOfTests() / Math.max( node.getNumberOfProducts(), 1L );
+			return Double.compare( load, otherLoad );
+		}
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main( String[] args ) throws Exception {
+		int numberOfCycles = args.length > 0 ? Integer.parseInt( args[0] ) : 5000;
+
+		Random random = new Random( 1L );
+		List<Node> nodes = new ArrayList<Node>();
+		LoadIndex<Node> index = new LoadIndex<Node>();
+
+		for ( int n = 0; n < 300; n++ ) {
+			Node node = new Node( n, 1 + random.nextInt( 20 ) );
+			nodes.add( node );
+			index.add( node, node.getLoad() );
+		}
+
+		long sortingTime = 0L;
+		long indexingTime = 0L;
+		long checksum = 0L;
+
+		for ( int cycle = 0; cycle < numberOfCycles; cycle++ ) {
+			// A few tests are started and finished between the cycles
+			for ( int change = 0; change < 3; change++ ) {
+				Node node = nodes.get( random.nextInt( nodes.size() ) );
+
+				synchronized ( node ) {
+					if ( node.numberOfRunningTests > 0 && random.nextBoolean() ) {
+						node.numberOfRunningTests--;
+						node.numberOfExecutedTests++;
+					} else {
+						node.numberOfRunningTests++;
+					}
+				}
+
+				long startedAt = System.nanoTime();
+				index.update( node, node.getLoad() );
+				indexingTime += System.nanoTime() - startedAt;
+			}
+
+			// Each allocation cycle takes test nodes in the order of their loads
+			long startedAt = System.nanoTime();
+			List<Node> sorted = new ArrayList<Node>( nodes );
+			Collections.sort( sorted );
+			sortingTime += System.nanoTime() - startedAt;
+
+			startedAt = System.nanoTime();
+			List<Node> indexed = index.getElements();
+			indexingTime += System.nanoTime() - startedAt;
+
+			checksum += indexed.get( 0 ).sequenceNumber;
+		}
+
+		System.out.println( "Cycles: " + numberOfCycles + ", test nodes: " + nodes.size() + ", sorting took " + ( sortingTime / 1000000L )
+			+ " ms and the load index took " + ( indexingTime / 1000000L ) + " ms (" + checksum + ")" );
+	}
+}
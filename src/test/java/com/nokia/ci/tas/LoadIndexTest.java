@@ -0,0 +1,97 @@
+package com.nokia.ci.tas;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.nokia.ci.tas.service.LoadIndex;
+
+/**
+ * Checks that the load index keeps elements in the same order as sorting them by loads.
+ */
+public class LoadIndexTest extends TestCase {
+
+	public void testRandomUpdates() {
+		Random random = new Random( 1L );
+		final Map<String, Double> loads = new HashMap<String, Double>();
+		List<String> elements = new ArrayList<String>();
+		LoadIndex<String> index = new LoadIndex<String>();
+
+		for ( int n = 0; n < 100; n++ ) {
+			String element = "node" + n;
+			double load = random.nextInt( 20 ) / ( double ) ( 1 + random.nextInt( 20 ) );
+			elements.add( element );
+			loads.put( element, load );
+			index.add( element, load );
+		}
+
+		for ( int cycle = 0; cycle < 500; cycle++ ) {
+			String element = elements.get( random.nextInt( elements.size() ) );
+			double load = random.nextInt( 20 ) / ( double ) ( 1 + random.nextInt( 20 ) );
+			loads.put( element, load );
+			index.update( element, load );
+
+			// Stable sorting keeps elements of equal loads in the order of adding
+			List<String> sorted = new ArrayList<String>( elements );
+			Collections.sort( sorted, new Comparator<String>() {
+				public int compare( String first, String second ) {
+					return Double.compare( loads.get( first ), loads.get( second ) );
+				}
+			} );
+
+			List<String> indexed = index.getElements();
+			for ( int n = 0; n < sorted.size(); n++ ) {
+				assertEquals( "index keeps the order of loads", loads.get( sorted.get( n ) ), loads.get( indexed.get( n ) ) );
+			}
+		}
+	}
+
+	public void testOrder() {
+		LoadIndex<String> index = new LoadIndex<String>();
+
+		assertTrue( "index is empty at first", index.getElements().isEmpty() );
+
+		index.add( "first", 1.0 );
+		index.add( "second", 0.5 );
+		index.add( "third", 1.0 );
+		assertEquals( "least loaded elements come first", list( "second", "first", "third" ), index.getElements() );
+
+		List<String> snapshot = index.getElements();
+		assertSame( "unchanged index is read without making a new snapshot", snapshot, index.getElements() );
+
+		assertTrue( "added element is updated", index.update( "second", 2.0 ) );
+		assertEquals( "updated element is moved", list( "first", "third", "second" ), index.getElements() );
+		assertEquals( "earlier snapshot is not changed", list( "second", "first", "third" ), snapshot );
+
+		assertTrue( "updated element is still indexed", index.update( "second", 1.0 ) );
+		assertEquals( "equal loads keep the order of adding", list( "first", "second", "third" ), index.getElements() );
+
+		assertTrue( "element is removed once", index.remove( "first" ) && !index.remove( "first" ) );
+		assertFalse( "removed element is not updated", index.update( "first", 0.0 ) );
+		assertEquals( "removed element is not added back by updates", list( "second", "third" ), index.getElements() );
+		assertTrue( "loads are kept", index.getLoad( "third" ) == 1.0 && index.getLoad( "first" ) == -1.0 && index.size() == 2 );
+
+		index.add( "third", 0.0 );
+		assertTrue( "adding element twice updates its load", index.size() == 2 && index.getElements().equals( list( "third", "second" ) ) );
+
+		try {
+			index.getElements().clear();
+			fail( "snapshots can't be changed" );
+		} catch ( UnsupportedOperationException e ) {
+			// Expected
+		}
+	}
+
+	private static List<String> list( String... elements ) {
+		List<String> list = new ArrayList<String>();
+		Collections.addAll( list, elements );
+		return list;
+	}
+
+}
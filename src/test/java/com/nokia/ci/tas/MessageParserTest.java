@@ -0,0 +1,336 @@
+package com.nokia.ci.tas;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import com.nokia.ci.tas.commons.Converter;
+import com.nokia.ci.tas.commons.FileDescription;
+import com.nokia.ci.tas.commons.MessageInputStream;
+import com.nokia.ci.tas.commons.MessageParser;
+import com.nokia.ci.tas.commons.Product;
+import com.nokia.ci.tas.commons.SimCard;
+import com.nokia.ci.tas.commons.Test;
+import com.nokia.ci.tas.commons.TestNodeDescription;
+import com.nokia.ci.tas.commons.TestPackage;
+import com.nokia.ci.tas.commons.message.FileOperation;
+import com.nokia.ci.tas.commons.message.Message;
+import com.nokia.ci.tas.commons.message.ProductOperation;
+import com.nokia.ci.tas.commons.message.RegistryOperation;
+import com.nokia.ci.tas.commons.message.TestOperation;
+import com.nokia.ci.tas.commons.message.TextMessage;
+
+/**
+ * Checks that the buffered pull parser builds the same messages as the old byte-after-byte converter,
+ * decodes UTF-8 characters split between reads, leaves the data following a message in the stream
+ * and can be used from several threads at once.
+ */
+public class MessageParserTest extends TestCase {
+
+	public void testTestOperationAsBefore() throws Exception {
+		assertParsedAsBefore( createTestOperation() );
+	}
+
+	public void testProductOperationAsBefore() throws Exception {
+		assertParsedAsBefore( createProductOperation() );
+	}
+
+	public void testFileOperationAsBefore() throws Exception {
+		FileDescription fileDescription = new FileDescription();
+		fileDescription.setFileName( "results.zip" );
+		fileDescription.setFilePath( "/home/ci/workspace/parser_test" );
+		fileDescription.setFileSize( 123456L );
+
+		FileOperation message = new FileOperation( FileOperation.Id.PUT, createTest(), fileDescription );
+		message.setSender( "node.example.com", 15000 );
+		message.setReceiver( "client.example.com", 12345 );
+
+		assertParsedAsBefore( message );
+	}
+
+	public void testRegistryOperationAsBefore() throws Exception {
+		TestNodeDescription testNodeDescription = new TestNodeDescription();
+		testNodeDescription.setHostnameAndPort( "node.example.com", 15000 );
+		testNodeDescription.setDescription( "Test node of the parser test" );
+		testNodeDescription.setTestAutomationSoftwareVersion( "1.0" );
+
+		RegistryOperation message = new RegistryOperation( RegistryOperation.Id.REGISTER, RegistryOperation.Remote.TEST_NODE );
+		message.setTestNodeDescription( testNodeDescription );
+		message.setSender( "node.example.com", 15000 );
+		message.setReceiver( "tas.example.com", 33333 );
+
+		assertParsedAsBefore( message );
+	}
+
+	public void testTextMessageAsBefore() throws Exception {
+		TextMessage message = new TextMessage( createTest(), "Flashing of the product has started\n" );
+		message.setSender( "tas.example.com", 33333 );
+		message.setReceiver( "client.example.com", 12345 );
+
+		assertParsedAsBefore( message );
+	}
+
+	public void testBareTestAndProductAsBefore() throws Exception {
+		byte[] test = createTest().toXML().getBytes( "UTF-8" );
+		assertEquals( "bare test", xml( new LegacyConverter().handle( new ByteArrayInputStream( test ) ) ), xml( parse( test, 4096 ) ) );
+
+		byte[] product = createProduct( "004400112233447" ).toXML().getBytes( "UTF-8" );
+		assertEquals( "bare product", xml( new LegacyConverter().handle( new ByteArrayInputStream( product ) ) ), xml( parse( product, 4096 ) ) );
+	}
+
+	public void testFieldsAddedLaterAreKept() throws Exception {
+		Test test = createTest();
+		test.setPriority( 5 );
+
+		FileDescription fileDescription = new FileDescription();
+		fileDescription.setFileName( "image.bin" );
+		fileDescription.setFilePath( "/home/ci/workspace/parser_test" );
+		fileDescription.setFileSize( 3L * 1048576L );
+		fileDescription.setChunkSize( 1048576L );
+		fileDescription.addChunkChecksum( "0a1b2c3d" );
+		fileDescription.addChunkChecksum( "4e5f6a7b" );
+		fileDescription.addChunkChecksum( "8c9d0e1f" );
+		fileDescription.setContentHash( "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef" );
+
+		List<Product> products = new ArrayList<Product>();
+		products.add( createProduct( "004400112233445" ) );
+		products.add( createProduct( "004400112233446" ) );
+
+		Message[] messages = new Message[] {
+			new TestOperation( TestOperation.Id.START, test ),
+			new FileOperation( FileOperation.Id.GET, test, fileDescription ),
+			new ProductOperation( products, 42L ) };
+
+		for ( Message message : messages ) {
+			message.setSender( "tas.example.com", 33333 );
+			message.setReceiver( "node.example.com", 15000 );
+			byte[] payload = message.toXML().getBytes( "UTF-8" );
+			assertEquals( "message is parsed back as it was", message.toXML(), xml( parse( payload, 4096 ) ) );
+		}
+	}
+
+	public void testMultiByteCharactersSplitBetweenReads() throws Exception {
+		// Texts are always send ended with the new-line symbol
+		String text = "Tests on тест 測試 ✓ 😀 products\n";
+		TextMessage message = new TextMessage( createTest(), text );
+		message.setSender( "tas.example.com", 33333 );
+		message.setReceiver( "client.example.com", 12345 );
+		byte[] payload = message.toXML().getBytes( "UTF-8" );
+
+		// Any number of bytes per read splits some of the characters
+		for ( int bytesPerRead = 1; bytesPerRead <= 7; bytesPerRead++ ) {
+			Object parsed = parse( payload, bytesPerRead );
+			assertTrue( "text message is parsed with " + bytesPerRead + " bytes per read", parsed instanceof TextMessage );
+			assertEquals( "text is decoded with " + bytesPerRead + " bytes per read", text, ( (TextMessage) parsed ).getText() );
+		}
+	}
+
+	public void testMultiByteCharactersOnBufferBoundaries() throws Exception {
+		// Lines longer than the initial buffer make it grow or compact right inside of the characters
+		for ( int padding = 0; padding < 4; padding++ ) {
+			StringBuilder text = new StringBuilder();
+			for ( int i = 0; i < padding; i++ ) {
+				text.append( 'x' );
+			}
+			for ( int i = 0; i < 6000; i++ ) {
+				text.append( "т測" );
+			}
+			text.append( '\n' );
+
+			TextMessage message = new TextMessage( createTest(), text.toString() );
+			message.setSender( "tas.example.com", 33333 );
+			message.setReceiver( "client.example.com", 12345 );
+			byte[] payload = message.toXML().getBytes( "UTF-8" );
+
+			Object parsed = parse( payload, 1000 );
+			assertTrue( "long text message is parsed with padding " + padding, parsed instanceof TextMessage );
+			assertEquals( "long text is decoded with padding " + padding, text.toString(), ( (TextMessage) parsed ).getText() );
+		}
+	}
+
+	public void testFileDataIsLeftInStream() throws Exception {
+		FileDescription fileDescription = new FileDescription();
+		fileDescription.setFileName( "results.zip" );
+		fileDescription.setFilePath( "/home/ci/workspace/parser_test" );
+		fileDescription.setFileSize( 10000L );
+
+		FileOperation message = new FileOperation( FileOperation.Id.PUT, createTest(), fileDescription );
+		message.setSender( "node.example.com", 15000 );
+		message.setReceiver( "tas.example.com", 33333 );
+
+		byte[] fileData = new byte[10000];
+		for ( int i = 0; i < fileData.length; i++ ) {
+			fileData[i] = (byte) ( i * 31 );
+		}
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		output.write( message.toXML().getBytes( "UTF-8" ) );
+		output.write( fileData );
+
+		for ( int bytesPerRead : new int[] { 1, 100, 65536 } ) {
+			MessageInputStream inputStream = new MessageInputStream( new ChunkedInputStream( output.toByteArray(), bytesPerRead ) );
+			Object parsed = new MessageParser().parse( inputStream );
+			assertTrue( "file operation is parsed with " + bytesPerRead + " bytes per read", parsed instanceof FileOperation );
+
+			ByteArrayOutputStream rest = new ByteArrayOutputStream();
+			byte[] buffer = new byte[777];
+			int number = 0;
+			while ( ( number = inputStream.read( buffer, 0, buffer.length ) ) != -1 ) {
+				rest.write( buffer, 0, number );
+			}
+			assertTrue( "file data following the message is left in the stream with " + bytesPerRead + " bytes per read",
+				java.util.Arrays.equals( fileData, rest.toByteArray() ) );
+		}
+	}
+
+	public void testParsingFromSeveralThreads() throws Exception {
+		final Message[] messages = new Message[] { createTestOperation(), createProductOperation() };
+		final byte[][] payloads = new byte[messages.length][];
+		final String[] expected = new String[messages.length];
+		for ( int i = 0; i < messages.length; i++ ) {
+			payloads[i] = messages[i].toXML().getBytes( "UTF-8" );
+			expected[i] = messages[i].toXML();
+		}
+
+		final int numberOfThreads = 4;
+		final int messagesPerThread = 500;
+		final Converter converter = new Converter();
+		final AtomicInteger numberOfMismatches = new AtomicInteger( 0 );
+		final CountDownLatch finish = new CountDownLatch( numberOfThreads );
+
+		for ( int t = 0; t < numberOfThreads; t++ ) {
+			final int first = t;
+			new Thread() {
+				public void run() {
+					try {
+						for ( int i = first; i < first + messagesPerThread; i++ ) {
+							Object parsed = converter.handle( new ChunkedInputStream( payloads[i % payloads.length], 64 ) );
+							if ( parsed == null || !expected[i % payloads.length].equals( ( (Message) parsed ).toXML() ) ) {
+								numberOfMismatches.incrementAndGet();
+							}
+						}
+					} finally {
+						finish.countDown();
+					}
+				}
+			}.start();
+		}
+
+		assertTrue( "all threads are done", finish.await( 60L, TimeUnit.SECONDS ) );
+		assertEquals( "messages parsed by a shared converter are not mixed up", 0, numberOfMismatches.get() );
+	}
+
+	private static void assertParsedAsBefore( Message message ) throws Exception {
+		byte[] payload = message.toXML().getBytes( "UTF-8" );
+		String parsedBefore = xml( new LegacyConverter().handle( new ByteArrayInputStream( payload ) ) );
+
+		assertNotNull( "old converter has parsed the " + message.getClass().getSimpleName(), parsedBefore );
+		assertEquals( "new parser builds the same " + message.getClass().getSimpleName(), parsedBefore, xml( parse( payload, 4096 ) ) );
+		assertEquals( "new parser builds the same " + message.getClass().getSimpleName() + " when read byte after byte", parsedBefore, xml( parse( payload, 1 ) ) );
+	}
+
+	private static Object parse( byte[] payload, int bytesPerRead ) {
+		return new Converter().handle( new ChunkedInputStream( payload, bytesPerRead ) );
+	}
+
+	private static String xml( Object parsed ) {
+		if ( parsed instanceof Message ) {
+			return ( (Message) parsed ).toXML();
+		} else if ( parsed instanceof Test ) {
+			return ( (Test) parsed ).toXML();
+		} else if ( parsed instanceof Product ) {
+			return ( (Product) parsed ).toXML();
+		}
+		return null;
+	}
+
+	private static TestOperation createTestOperation() {
+		TestOperation message = new TestOperation( TestOperation.Id.START, createTest() );
+		message.setSender( "client.example.com", 12345 );
+		message.setReceiver( "tas.example.com", 33333 );
+		return message;
+	}
+
+	private static ProductOperation createProductOperation() {
+		ProductOperation message = new ProductOperation( ProductOperation.Id.UPDATE, createProduct( "004400112233445" ) );
+		message.setSender( "node.example.com", 15000 );
+		message.setReceiver( "tas.example.com", 33333 );
+		return message;
+	}
+
+	private static Test createTest() {
+		Test test = new Test( "parser_test_1" );
+		test.setURL( "http://ci.example.com/job/parser/1" );
+		test.setWorkspacePath( "/home/ci/workspace/parser_test" );
+		test.setTimeout( 3600000L );
+		test.setExecutorApplication( "executor.jar" );
+		test.setExecutorScript( "run_tests.py" );
+		test.setResultsFilename( "results.zip" );
+		for ( int i = 0; i < 3; i++ ) {
+			test.addArtifact( "artifact_" + i + ".zip" );
+		}
+
+		List<String> files = new ArrayList<String>();
+		files.add( "package_1.zip" );
+		test.addTestPackage( new TestPackage( "package_1", files, "RM-999" ) );
+
+		List<Product> products = new ArrayList<Product>();
+		products.add( createProduct( "004400112233445" ) );
+		products.add( createProduct( "004400112233446" ) );
+		test.setRequiredProducts( products );
+		return test;
+	}
+
+	private static Product createProduct( String imei ) {
+		Product product = new Product();
+		product.setIMEI( imei );
+		product.setRMCode( "RM-999" );
+		product.setHardwareType( "Phone" );
+		product.setHostname( "node.example.com" );
+		product.setIPAddress( "10.0.0.1" );
+		product.setPort( "15000" );
+		product.setRole( Product.Role.MAIN );
+		product.setStatus( Product.Status.FREE, "" );
+		product.setEnvironment( "RM-999 main" );
+
+		SimCard sim = new SimCard( SimCard.XML_ELEMENT_SIM_CARD_1 );
+		sim.setPhoneNumber( "+358401234567" );
+		sim.setIMSI( "244123456789012" );
+		product.setSim1( sim );
+		return product;
+	}
+
+	/**
+	 * Stream returning at most the specified number of bytes per read, just like a slow socket.
+	 */
+	private static class ChunkedInputStream extends InputStream {
+		private final byte[] data;
+		private final int bytesPerRead;
+		private int position = 0;
+
+		ChunkedInputStream( byte[] data, int bytesPerRead ) {
+			this.data = data;
+			this.bytesPerRead = bytesPerRead;
+		}
+
+		public int read() {
+			return position < data.length ? data[position++] & 0xFF : -1;
+		}
+
+		public int read( byte[] bytes, int offset, int length ) {
+			if ( position >= data.length )
+				return -1;
+			int number = Math.min( Math.min( length, bytesPerRead ), data.length - position );
+			System.arraycopy( data, position, bytes, offset, number );
+			position += number;
+			return number;
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package com.nokia.ci.tas;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.nokia.ci.tas.commons.Converter;
+import com.nokia.ci.tas.commons.PersistentConnection;
+import com.nokia.ci.tas.commons.PersistentConnectionListener;
+import com.nokia.ci.tas.commons.PersistentConnectionReader;
+import com.nokia.ci.tas.commons.Product;
+import com.nokia.ci.tas.commons.message.ProductOperation;
+
+/**
+ * Compares sending of product updates over one socket per message against a single persistent connection.
+ * Prints messages per second and number of opened sockets for both ways.
+ *
+ * Usage: PersistentConnectionBenchmark [number of messages]
+ */
+public class PersistentConnectionBenchmark {
+
+	private static final AtomicLong acceptedSockets = new AtomicLong();
+
+	private static final AtomicLong receivedMessages = new AtomicLong();
+
+	/**
+	 * @param args
+	 */
+	public static void main( String[] args ) throws Exception {
+		int numberOfMessages = args.length > 0 ? Integer.parseInt( args[0] ) : 5000;
+
+		final ServerSocket listener = new ServerSocket( 0 );
+		final Converter converter = new Converter();
+
+		final PersistentConnectionListener persistentListener = new PersistentConnectionListener() {
+			public void messageReceived( InputStream inputStream, PersistentConnectionReader connection ) {
+				if ( converter.handle( inputStream ) != null )
+					receivedMessages.incrementAndGet();
+			}
+		};
+
+		Thread acceptor = new Thread() {
+			public void run() {
+				while ( !listener.isClosed() ) {
+					try {
+						Socket connection = listener.accept();
+						acceptedSockets.incrementAndGet();
+						InputStream inputStream = connection.getInputStream();
+						String firstLine = PersistentConnection.readLine( inputStream );
+						if ( PersistentConnection.HEADER.equals( firstLine ) ) {
+							new PersistentConnectionReader( connection, persistentListener ).start();
+						} else if ( firstLine != null ) {
+							inputStream = new SequenceInputStream( new ByteArrayInputStream( ( firstLine + "\n" ).getBytes( "UTF-8" ) ), inputStream );
+							if ( converter.handle( inputStream ) != null )
+								receivedMessages.incrementAndGet();
+							connection.close();
+						} else {
+							connection.close();
+						}
+					} catch ( Exception e ) {
+						// Listener is closed
+					}
+				}
+			}
+		};
+		acceptor.setDaemon( true );
+		acceptor.start();
+
+		String hostname = InetAddress.getByName( "localhost" ).getHostAddress();
+		int port = listener.getLocalPort();
+
+		ProductOperation message = new ProductOperation( ProductOperation.Id.UPDATE, createProduct() );
+		message.setSender( hostname, 12345 );
+		message.setReceiver( hostname, port );
+
+		// Warm up both paths
+		runSingleUse( hostname, port, message, numberOfMessages / 10 );
+		runPersistent( hostname, port, message, numberOfMessages / 10 );
+
+		long[] singleUse = runSingleUse( hostname, port, message, numberOfMessages );
+		long[] persistent = runPersistent( hostname, port, message, numberOfMessages );
+
+		System.out.println( "Messages: " + numberOfMessages );
+		print( "One socket per message", numberOfMessages, singleUse );
+		print( "Persistent connection ", numberOfMessages, persistent );
+
+		listener.close();
+	}
+
+	private static long[] runSingleUse( String hostname, int port, ProductOperation message, int numberOfMessages ) throws Exception {
+		reset();
+		long startedAt = System.nanoTime();
+		for ( int i = 0; i < numberOfMessages; i++ ) {
+			Socket socket = new Socket( InetAddress.getByName( hostname ), port );
+			OutputStream output = socket.getOutputStream();
+			output.write( message.toXML().getBytes( "UTF-8" ) );
+			output.flush();
+			output.close();
+			socket.close();
+		}
+		waitFor( numberOfMessages );
+		return new long[] { System.nanoTime() - startedAt, acceptedSockets.get() };
+	}
+
+	private static long[] runPersistent( String hostname, int port, ProductOperation message, int numberOfMessages ) throws Exception {
+		reset();
+		PersistentConnection connection = new PersistentConnection( hostname, port );
+		long startedAt = System.nanoTime();
+		for ( int i = 0; i < numberOfMessages; i++ ) {
+			connection.send( message );
+		}
+		waitFor( numberOfMessages );
+		long time = System.nanoTime() - startedAt;
+		connection.close();
+		return new long[] { time, acceptedSockets.get() };
+	}
+
+	private static void reset() {
+		acceptedSockets.set( 0 );
+		receivedMessages.set( 0 );
+	}
+
+	private static void waitFor( int numberOfMessages ) throws InterruptedException {
+		while ( receivedMessages.get() < numberOfMessages ) {
+			Thread.sleep( 1 );
+		}
+	}
+
+	private static void print( String name, int numberOfMessages, long[] result ) {
+		double seconds = result[0] / 1000000000.0;
+		System.out.println( name + ": " + (long) ( numberOfMessages / seconds ) + " messages/s, " + result[1] + " sockets opened" );
+	}
+
+	private static Product createProduct() {
+		Product product = new Product();
+		product.setIMEI( "004400112233445" );
+		product.setRMCode( "RM-999" );
+		product.setHostname( "localhost" );
+		product.setPort( "15000" );
+		product.setStatus( Product.Status.FREE, "" );
+		return product;
+	}
+}
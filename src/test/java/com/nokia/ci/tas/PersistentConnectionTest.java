@@ -0,0 +1,240 @@
+package com.nokia.ci.tas;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.nokia.ci.tas.commons.Converter;
+import com.nokia.ci.tas.commons.PersistentConnection;
+import com.nokia.ci.tas.commons.PersistentConnectionListener;
+import com.nokia.ci.tas.commons.PersistentConnectionReader;
+import com.nokia.ci.tas.commons.Test;
+import com.nokia.ci.tas.commons.message.Message;
+import com.nokia.ci.tas.commons.message.TestOperation;
+import com.nokia.ci.tas.commons.message.TextMessage;
+
+/**
+ * Checks persistent connections over the loopback interface: many frames over a single socket,
+ * falling back to single-use sockets for legacy peers and failing fast while re-connection is postponed.
+ */
+public class PersistentConnectionTest extends TestCase {
+
+	private ServerSocket serverSocket;
+
+	protected void setUp() throws Exception {
+		serverSocket = new ServerSocket( 0 );
+	}
+
+	protected void tearDown() throws Exception {
+		serverSocket.close();
+	}
+
+	public void testSeveralFramesOverOneConnection() throws Exception {
+		CollectingListener listener = new CollectingListener();
+		List<PersistentConnectionReader> readers = acceptPersistentConnections( listener );
+
+		PersistentConnection connection = new PersistentConnection( "localhost", serverSocket.getLocalPort() );
+		connection.check();
+
+		for ( int i = 0; i < 10; i++ ) {
+			connection.send( createMessage( i ) );
+		}
+
+		connection.check();
+
+		// The same socket carries binary frames as well
+		connection.setBinaryEncodingEnabled( true );
+		connection.send( createMessage( 10 ) );
+
+		assertEquals( "single socket is used", 1L, connection.getNumberOfOpenedSockets() );
+		assertEquals( "connection checks are not counted", 11L, connection.getNumberOfSendMessages() );
+
+		// Frames are acknowledged before they are handled
+		listener.waitFor( 11 );
+		assertEquals( 11, listener.messages.size() );
+
+		for ( int i = 0; i < 11; i++ ) {
+			TextMessage message = (TextMessage) listener.messages.get( i );
+			assertEquals( "Message number " + i + "\n", message.getText() );
+		}
+
+		synchronized ( readers ) {
+			assertEquals( 1, readers.size() );
+			assertEquals( 11L, readers.get( 0 ).getNumberOfReceivedMessages() );
+			readers.get( 0 ).stopWorking();
+		}
+
+		// A closed connection is re-established on the next message
+		connection.send( createMessage( 11 ) );
+		assertEquals( 2L, connection.getNumberOfOpenedSockets() );
+		listener.waitFor( 12 );
+		assertEquals( 12, listener.messages.size() );
+
+		connection.close();
+	}
+
+	public void testLegacyPeerGetsSingleUseConnections() throws Exception {
+		final List<String> received = new ArrayList<String>();
+
+		// Legacy peer reads everything until the end of stream and never confirms the header line
+		Thread peer = new Thread() {
+			public void run() {
+				try {
+					for ( int i = 0; i < 3; i++ ) {
+						Socket socket = serverSocket.accept();
+						String data = readAll( socket.getInputStream() );
+						socket.close();
+
+						synchronized ( received ) {
+							received.add( data );
+							received.notifyAll();
+						}
+					}
+				} catch ( IOException e ) {
+					// Server socket is closed
+				}
+			}
+		};
+		peer.setDaemon( true );
+		peer.start();
+
+		PersistentConnection connection = new PersistentConnection( "localhost", serverSocket.getLocalPort() );
+		Message first = createMessage( 1 );
+		Message second = createMessage( 2 );
+		connection.send( first );
+		connection.send( second );
+
+		synchronized ( received ) {
+			long startedAt = System.currentTimeMillis();
+			while ( received.size() < 3 && System.currentTimeMillis() - startedAt < 10000L ) {
+				received.wait( 100L );
+			}
+
+			assertEquals( 3, received.size() );
+			assertEquals( "header line is send only once", PersistentConnection.HEADER + "\n", received.get( 0 ) );
+			assertEquals( "messages are send in XML over their own sockets", first.toXML(), received.get( 1 ) );
+			assertEquals( second.toXML(), received.get( 2 ) );
+		}
+
+		assertEquals( 3L, connection.getNumberOfOpenedSockets() );
+		assertEquals( 2L, connection.getNumberOfSendMessages() );
+	}
+
+	public void testFailsFastWhileReconnectionIsPostponed() throws Exception {
+		int port = serverSocket.getLocalPort();
+		serverSocket.close();
+
+		PersistentConnection connection = new PersistentConnection( "localhost", port );
+
+		try {
+			connection.send( createMessage( 1 ) );
+			fail( "message is send to a closed port" );
+		} catch ( IOException e ) {
+			assertTrue( e.getMessage(), e.getMessage() == null || e.getMessage().indexOf( "postponed" ) < 0 );
+		}
+
+		// Nobody is trying to connect again until the delay is over
+		long startedAt = System.currentTimeMillis();
+
+		for ( int i = 0; i < 100; i++ ) {
+			try {
+				connection.send( createMessage( 2 ) );
+				fail( "message is send while re-connection is postponed" );
+			} catch ( IOException e ) {
+				assertTrue( e.getMessage(), e.getMessage().indexOf( "postponed" ) >= 0 );
+			}
+		}
+
+		assertTrue( "postponed attempts fail at once", System.currentTimeMillis() - startedAt < PersistentConnection.INITIAL_RECONNECTION_DELAY );
+		assertEquals( 0L, connection.getNumberOfOpenedSockets() );
+
+		// Once the peer is back and the delay is over, messages are delivered again
+		serverSocket = new ServerSocket();
+		serverSocket.setReuseAddress( true );
+		serverSocket.bind( new InetSocketAddress( port ) );
+		CollectingListener listener = new CollectingListener();
+		acceptPersistentConnections( listener );
+
+		Thread.sleep( PersistentConnection.INITIAL_RECONNECTION_DELAY + 100L );
+		connection.send( createMessage( 3 ) );
+		listener.waitFor( 1 );
+		assertEquals( "Message number 3\n", ( (TextMessage) listener.messages.get( 0 ) ).getText() );
+		assertEquals( 1L, connection.getNumberOfOpenedSockets() );
+
+		connection.close();
+	}
+
+	private List<PersistentConnectionReader> acceptPersistentConnections( final PersistentConnectionListener listener ) {
+		final List<PersistentConnectionReader> readers = new ArrayList<PersistentConnectionReader>();
+		final ServerSocket acceptingSocket = serverSocket;
+
+		Thread acceptor = new Thread() {
+			public void run() {
+				try {
+					while ( true ) {
+						Socket socket = acceptingSocket.accept();
+						assertEquals( PersistentConnection.HEADER, PersistentConnection.readLine( socket.getInputStream() ) );
+						PersistentConnectionReader reader = new PersistentConnectionReader( socket, listener );
+
+						synchronized ( readers ) {
+							readers.add( reader );
+						}
+
+						reader.start();
+					}
+				} catch ( IOException e ) {
+					// Server socket is closed
+				}
+			}
+		};
+		acceptor.setDaemon( true );
+		acceptor.start();
+
+		return readers;
+	}
+
+	private static Message createMessage( int number ) {
+		TextMessage message = new TextMessage( new Test( "test_" + number ), "Message number " + number + "\n" );
+		message.setSender( "localhost", 33333 );
+		message.setReceiver( "localhost", 15000 );
+		return message;
+	}
+
+	private static String readAll( InputStream inputStream ) throws IOException {
+		StringBuilder data = new StringBuilder();
+		byte[] buffer = new byte[4096];
+		int numberOfBytes;
+		while ( ( numberOfBytes = inputStream.read( buffer ) ) != -1 ) {
+			data.append( new String( buffer, 0, numberOfBytes, "UTF-8" ) );
+		}
+		return data.toString();
+	}
+
+	private static class CollectingListener implements PersistentConnectionListener {
+
+		private List<Object> messages = new ArrayList<Object>();
+		private Converter converter = new Converter();
+
+		public void messageReceived( InputStream inputStream, PersistentConnectionReader connection ) {
+			Object message = converter.handle( inputStream );
+
+			synchronized ( this ) {
+				messages.add( message );
+				notifyAll();
+			}
+		}
+
+		synchronized void waitFor( int numberOfMessages ) throws InterruptedException {
+			long startedAt = System.currentTimeMillis();
+			while ( messages.size() < numberOfMessages && System.currentTimeMillis() - startedAt < 10000L ) {
+				wait( 100L );
+			}
+		}
+	}
+}
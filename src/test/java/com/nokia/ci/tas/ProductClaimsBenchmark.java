@@ -0,0 +1,118 @@
+package com.nokia.ci.tas;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.nokia.ci.tas.service.ProductClaims;
+
+/**
+ * Compares the time of concurrent reservations taking a single lock with claiming products by their version stamps.
+ *
+ * Usage: ProductClaimsBenchmark [number of reservations per thread]
+ */
+public class ProductClaimsBenchmark {
+
+	private static final int NUMBER_OF_THREADS = 4;
+	private static final int NUMBER_OF_PRODUCTS = 64;
+
+	/**
+	 * @param args
+	 */
+	public static void main( String[] args ) throws Exception {
+		final int numberOfReservations = args.length > 0 ? Integer.parseInt( args[0] ) : 200000;
+
+		final List<String> imeis = new ArrayList<String>();
+		for ( int p = 0; p < NUMBER_OF_PRODUCTS; p++ ) {
+			imeis.add( "3510000000" + ( 10000 + p ) );
+		}
+
+		// Reservations taking a lock of the whole test node
+		final Object lock = new Object();
+		final boolean[] reserved = new boolean[NUMBER_OF_PRODUCTS];
+		final AtomicLong lockedReservations = new AtomicLong( 0L );
+
+		long lockingTime = run( new Worker() {
+			public void reserve( int first, int second ) {
+				synchronized ( lock ) {
+					if ( reserved[first] || reserved[second] )
+						return;
+					reserved[first] = true;
+					reserved[second] = true;
+				}
+
+				lockedReservations.incrementAndGet();
+
+				synchronized ( lock ) {
+					reserved[first] = false;
+					reserved[second] = false;
+				}
+			}
+		}, numberOfReservations );
+
+		// Reservations claiming products by compare-and-set
+		final ProductClaims claims = new ProductClaims();
+		final AtomicInteger[] owners = new AtomicInteger[NUMBER_OF_PRODUCTS];
+		for ( int p = 0; p < NUMBER_OF_PRODUCTS; p++ ) {
+			owners[p] = new AtomicInteger( 0 );
+		}
+		final AtomicLong claimedReservations = new AtomicLong( 0L );
+		final AtomicLong doubleOwnerships = new AtomicLong( 0L );
+
+		long claimingTime = run( new Worker() {
+			public void reserve( int first, int second ) {
+				if ( !claims.claimAll( Arrays.asList( imeis.get( first ), imeis.get( second ) ) ) )
+					return;
+
+				if ( owners[first].incrementAndGet() != 1 || owners[second].incrementAndGet() != 1 )
+					doubleOwnerships.incrementAndGet();
+
+				claimedReservations.incrementAndGet();
+
+				owners[first].decrementAndGet();
+				owners[second].decrementAndGet();
+				claims.release( imeis.get( first ) );
+				claims.release( imeis.get( second ) );
+			}
+		}, numberOfReservations );
+
+		System.out.println( "Threads: " + NUMBER_OF_THREADS + ", reservations: " + ( NUMBER_OF_THREADS * numberOfReservations )
+			+ ", locking took " + ( lockingTime / 1000000L ) + " ms (" + lockedReservations.get() + " succeeded) and claiming took "
+			+ ( claimingTime / 1000000L ) + " ms (" + claimedReservations.get() + " succeeded, " + doubleOwnerships.get()
+			+ " products had two owners)" );
+	}
+
+	private interface Worker {
+		void reserve( int first, int second );
+	}
+
+	private static long run( final Worker worker, final int numberOfReservations ) throws Exception {
+		Thread[] threads = new Thread[NUMBER_OF_THREADS];
+
+		for ( int t = 0; t < threads.length; t++ ) {
+			final Random random = new Random( t );
+			threads[t] = new Thread() {
+				public void run() {
+					for ( int r = 0; r < numberOfReservations; r++ ) {
+						int first = random.nextInt( NUMBER_OF_PRODUCTS );
+						int second = ( first + 1 + random.nextInt( NUMBER_OF_PRODUCTS - 1 ) ) % NUMBER_OF_PRODUCTS;
+						worker.reserve( first, second );
+					}
+				}
+			};
+		}
+
+		long startedAt = System.nanoTime();
+		for ( Thread thread : threads ) {
+			thread.start();
+		}
+		for ( Thread thread : threads ) {
+			thread.join();
+		}
+		return System.nanoTime() - startedAt;
+	}
+
+}
@@ -0,0 +1,110 @@
+package com.nokia.ci.tas;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+import com.nokia.ci.tas.service.ProductClaims;
+
+/**
+ * Checks that product claims are all-or-nothing and never give the same product to two owners at once.
+ */
+public class ProductClaimsTest extends TestCase {
+
+	private static final int NUMBER_OF_THREADS = 4;
+	private static final int NUMBER_OF_PRODUCTS = 64;
+
+	public void testConcurrentClaims() throws Exception {
+		final List<String> imeis = new ArrayList<String>();
+		for ( int p = 0; p < NUMBER_OF_PRODUCTS; p++ ) {
+			imeis.add( "3510000000" + ( 10000 + p ) );
+		}
+
+		final ProductClaims claims = new ProductClaims();
+		final AtomicInteger[] owners = new AtomicInteger[NUMBER_OF_PRODUCTS];
+		for ( int p = 0; p < NUMBER_OF_PRODUCTS; p++ ) {
+			owners[p] = new AtomicInteger( 0 );
+		}
+		final AtomicLong claimedReservations = new AtomicLong( 0L );
+		final AtomicLong doubleOwnerships = new AtomicLong( 0L );
+
+		run( new Worker() {
+			public void reserve( int first, int second ) {
+				if ( !claims.claimAll( Arrays.asList( imeis.get( first ), imeis.get( second ) ) ) )
+					return;
+
+				if ( owners[first].incrementAndGet() != 1 || owners[second].incrementAndGet() != 1 )
+					doubleOwnerships.incrementAndGet();
+
+				claimedReservations.incrementAndGet();
+
+				owners[first].decrementAndGet();
+				owners[second].decrementAndGet();
+				claims.release( imeis.get( first ) );
+				claims.release( imeis.get( second ) );
+			}
+		}, 20000 );
+
+		assertEquals( "no product has two owners at once", 0L, doubleOwnerships.get() );
+		assertTrue( "some reservations succeed", claimedReservations.get() > 0L );
+
+		for ( String imei : imeis ) {
+			assertTrue( "all products are free at the end", !claims.isClaimed( imei ) && claims.getStamp( imei ) % 2L == 0L );
+		}
+	}
+
+	public void testClaims() {
+		ProductClaims claims = new ProductClaims();
+
+		assertTrue( "unknown products are free", !claims.isClaimed( "1" ) && claims.getStamp( "1" ) == 0L );
+		assertTrue( "product is claimed once", claims.claim( "1" ) && !claims.claim( "1" ) );
+		assertTrue( "claimed product has an odd stamp", claims.isClaimed( "1" ) && claims.getStamp( "1" ) == 1L );
+
+		assertFalse( "set with a claimed product is not claimed", claims.claimAll( Arrays.asList( "2", "3", "1" ) ) );
+		assertTrue( "partly claimed products are released back", !claims.isClaimed( "2" ) && !claims.isClaimed( "3" ) );
+		assertEquals( "rolled back claim still changes the stamp", 2L, claims.getStamp( "2" ) );
+
+		assertTrue( "product is released once", claims.release( "1" ) && !claims.release( "1" ) );
+		assertTrue( "set of free products is claimed", claims.claimAll( Arrays.asList( "1", "2", "3" ) ) );
+		assertTrue( "stamps grow on each change", claims.getStamp( "1" ) == 3L && claims.getStamp( "2" ) == 3L && claims.getStamp( "3" ) == 3L );
+
+		claims.remove( "1" );
+		assertTrue( "removed product is forgotten", !claims.isClaimed( "1" ) && claims.claim( "1" ) );
+	}
+
+	private interface Worker {
+		void reserve( int first, int second );
+	}
+
+	private static long run( final Worker worker, final int numberOfReservations ) throws Exception {
+		Thread[] threads = new Thread[NUMBER_OF_THREADS];
+
+		for ( int t = 0; t < threads.length; t++ ) {
+			final Random random = new Random( t );
+			threads[t] = new Thread() {
+				public void run() {
+					for ( int r = 0; r < numberOfReservations; r++ ) {
+						int first = random.nextInt( NUMBER_OF_PRODUCTS );
+						int second = ( first + 1 + random.nextInt( NUMBER_OF_PRODUCTS - 1 ) ) % NUMBER_OF_PRODUCTS;
+						worker.reserve( first, second );
+					}
+				}
+			};
+		}
+
+		long startedAt = System.nanoTime();
+		for ( Thread thread : threads ) {
+			thread.start();
+		}
+		for ( Thread thread : threads ) {
+			thread.join();
+		}
+		return System.nanoTime() - startedAt;
+	}
+
+}
@@ -0,0 +1,87 @@
+package com.nokia.ci.tas;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import java.util.regex.Pattern;
+
+import com.nokia.ci.tas.commons.Product;
+import com.nokia.ci.tas.commons.Util;
+import com.nokia.ci.tas.service.ProductIndex;
+
+/**
+ * Compares how long the regular expressions of required environments and the product index take to search through many products.
+ *
+ * Usage: ProductIndexBenchmark [number of products] [number of requirements]
+ */
+public class ProductIndexBenchmark {
+
+	private static final String[] RM_CODES = { "rm-100", "rm-200", "rm-300", "rm-400", "rm-500" };
+	private static final String[] HOSTNAMES = { "node1.example.com", "node2.example.com", "node3.example.com" };
+
+	/**
+	 * @param args
+	 */
+	public static void main( String[] args ) throws Exception {
+		int numberOfProducts = args.length > 0 ? Integer.parseInt( args[0] ) : 3000;
+		int numberOfRequirements = args.length > 1 ? Integer.parseInt( args[1] ) : 200;
+
+		Random random = new Random( 1L );
+		ProductIndex index = new ProductIndex();
+		List<Product> products = new ArrayList<Product>();
+
+		for ( int i = 0; i < numberOfProducts; i++ ) {
+			Product product = new Product();
+			product.setIMEI( "35" + ( 1000000000000L + i ) );
+			product.setRMCode( RM_CODES[random.nextInt( RM_CODES.length )] );
+			product.setStatus( random.nextInt( 3 ) == 0 ? Product.Status.BUSY : Product.Status.FREE, "" );
+			product.setHostname( HOSTNAMES[random.nextInt( HOSTNAMES.length )] );
+			product.setTestAutomationServiceHostname( HOSTNAMES[random.nextInt( HOSTNAMES.length )] );
+			product.setSwVer( "sw." + random.nextInt( 10 ) );
+			product.setSIM1PhoneNumber( "+35840" + random.nextInt( 1000000 ) );
+			product.getSim1().setOperator( "operator" + random.nextInt( 3 ) );
+			if ( random.nextInt( 5 ) == 0 )
+				product.setRole( Product.Role.REMOTE );
+			products.add( product );
+			index.update( product );
+		}
+
+		List<Pattern> patterns = new ArrayList<Pattern>();
+		for ( int i = 0; i < numberOfRequirements; i++ ) {
+			String environment = "rm-code:" + RM_CODES[random.nextInt( RM_CODES.length )] + ";";
+			if ( random.nextBoolean() )
+				environment += "hostname:" + HOSTNAMES[random.nextInt( HOSTNAMES.length )] + ";";
+			if ( random.nextInt( 4 ) == 0 )
+				environment += "sim1-operator:operator" + random.nextInt( 3 ) + ";";
+			if ( random.nextInt( 4 ) == 0 )
+				environment += "role:remote;";
+			patterns.add( Pattern.compile( Util.createRegularExpressions( environment ).get( 0 ) ) );
+		}
+
+		long startedAt = System.nanoTime();
+		long expectedMatches = 0L;
+		for ( Pattern pattern : patterns ) {
+			Set<String> result = new HashSet<String>();
+			for ( Product product : products ) {
+				if ( pattern.matcher( product.getNameValuePairs() ).matches() )
+					result.add( product.getIMEI() );
+			}
+			expectedMatches += result.size();
+		}
+		long regularExpressionsTook = ( System.nanoTime() - startedAt ) / 1000L;
+
+		startedAt = System.nanoTime();
+		long foundMatches = 0L;
+		for ( Pattern pattern : patterns ) {
+			foundMatches += index.getMatchingProducts( ProductIndex.Requirement.compile( pattern ) ).size();
+		}
+		long indexTook = ( System.nanoTime() - startedAt ) / 1000L;
+
+		System.out.println( "Products: " + products.size() + ", requirements: " + patterns.size()
+			+ ", regular expressions took " + regularExpressionsTook + " us (" + expectedMatches + " matches), index took "
+			+ indexTook + " us (" + foundMatches + " matches)" );
+	}
+}
@@ -0,0 +1,157 @@
+package com.nokia.ci.tas;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+import com.nokia.ci.tas.commons.Product;
+import com.nokia.ci.tas.commons.Util;
+import com.nokia.ci.tas.service.ProductIndex;
+
+/**
+ * Checks that the product index finds exactly the same products as the regular expressions of required environments.
+ */
+public class ProductIndexTest extends TestCase {
+
+	private static final String[] RM_CODES = { "rm-100", "rm-200", "rm-300", "rm-400", "rm-500" };
+	private static final String[] HOSTNAMES = { "node1.example.com", "node2.example.com", "node3.example.com" };
+
+	public void testSpecialCases() {
+		ProductIndex index = new ProductIndex();
+		List<Product> products = new ArrayList<Product>();
+
+		Product tasHost = createProduct( "001", "rm-1" );
+		tasHost.setTestAutomationServiceHostname( "host.a" );
+		tasHost.setHostname( "host.b" );
+		products.add( tasHost );
+
+		Product plus = createProduct( "002", "rm-1" );
+		plus.setSIM1PhoneNumber( "+358401234567" );
+		products.add( plus );
+
+		Product newLine = createProduct( "003", "rm-1" );
+		newLine.setEnvironment( "line\nbreak" );
+		products.add( newLine );
+
+		Product embedded = createProduct( "004", "rm-2" );
+		embedded.setEnvironment( "x;imei:005" );
+		products.add( embedded );
+
+		Product remote = createProduct( "005", "rm-2" );
+		remote.setRole( Product.Role.REMOTE );
+		products.add( remote );
+
+		for ( Product product : products ) {
+			index.update( product );
+		}
+
+		String[] environments = {
+			"hostname:host.a;",
+			"hostname:host.b;",
+			"rm-code:rm-1;",
+			"rm-code:rm-1;environment:line\nbreak;",
+			"sim1-phone-number:+358401234567;",
+			"imei:005;",
+			"imei:005;role:remote;",
+			"rm-code:rm-(1|2);",
+			"rm-code:rm-[12];hostname:host.b;",
+			"role:remote;status:free;",
+			"status:busy;"
+		};
+
+		for ( String environment : environments ) {
+			for ( String expression : Util.createRegularExpressions( environment ) ) {
+				Pattern pattern = Pattern.compile( expression );
+				assertEquals( "index finds the same products as " + expression, matchByRegularExpression( pattern, products ),
+					index.getMatchingProducts( ProductIndex.Requirement.compile( pattern ) ) );
+			}
+		}
+
+		tasHost.setStatus( Product.Status.BUSY, "test" );
+		index.update( tasHost );
+		assertFalse( "busy product is not matched", index.getMatchingProducts( compile( "rm-code:rm-1;" ) ).contains( "001" ) );
+
+		index.remove( "002" );
+		assertFalse( "removed product is not matched", index.getMatchingProducts( compile( "rm-code:rm-1;" ) ).contains( "002" ) );
+	}
+
+	public void testRandomRequirements() {
+		Random random = new Random( 1L );
+		ProductIndex index = new ProductIndex();
+		List<Product> products = new ArrayList<Product>();
+
+		for ( int i = 0; i < 600; i++ ) {
+			Product product = createProduct( random, i );
+			products.add( product );
+			index.update( product );
+		}
+
+		// Reserve, free and remove some of the products
+		for ( int i = 0; i < products.size() / 3; i++ ) {
+			Product product = products.get( random.nextInt( products.size() ) );
+			product.setStatus( random.nextBoolean() ? Product.Status.BUSY : Product.Status.FREE, "" );
+			index.update( product );
+		}
+		for ( int i = 0; i < 60; i++ ) {
+			Product product = products.remove( random.nextInt( products.size() ) );
+			index.remove( product.getIMEI() );
+		}
+		assertEquals( "removed products are not indexed", products.size(), index.size() );
+
+		for ( int i = 0; i < 100; i++ ) {
+			Pattern pattern = createRandomPattern( random );
+			assertEquals( "index finds the same products as " + pattern, matchByRegularExpression( pattern, products ),
+				index.getMatchingProducts( ProductIndex.Requirement.compile( pattern ) ) );
+		}
+	}
+
+	private static Pattern createRandomPattern( Random random ) {
+		String environment = "rm-code:" + RM_CODES[random.nextInt( RM_CODES.length )] + ";";
+		if ( random.nextBoolean() )
+			environment += "hostname:" + HOSTNAMES[random.nextInt( HOSTNAMES.length )] + ";";
+		if ( random.nextInt( 4 ) == 0 )
+			environment += "sim1-operator:operator" + random.nextInt( 3 ) + ";";
+		if ( random.nextInt( 4 ) == 0 )
+			environment += "role:remote;";
+		return Pattern.compile( Util.createRegularExpressions( environment ).get( 0 ) );
+	}
+
+	private static ProductIndex.Requirement compile( String environment ) {
+		return ProductIndex.Requirement.compile( Pattern.compile( Util.createRegularExpressions( environment ).get( 0 ) ) );
+	}
+
+	private static Set<String> matchByRegularExpression( Pattern pattern, List<Product> products ) {
+		Set<String> result = new HashSet<String>();
+		for ( Product product : products ) {
+			if ( pattern.matcher( product.getNameValuePairs() ).matches() )
+				result.add( product.getIMEI() );
+		}
+		return result;
+	}
+
+	private static Product createProduct( Random random, int i ) {
+		Product product = createProduct( "35" + ( 1000000000000L + i ), RM_CODES[random.nextInt( RM_CODES.length )] );
+		product.setHostname( HOSTNAMES[random.nextInt( HOSTNAMES.length )] );
+		product.setTestAutomationServiceHostname( HOSTNAMES[random.nextInt( HOSTNAMES.length )] );
+		product.setSwVer( "sw." + random.nextInt( 10 ) );
+		product.setSIM1PhoneNumber( "+35840" + random.nextInt( 1000000 ) );
+		product.getSim1().setOperator( "operator" + random.nextInt( 3 ) );
+		if ( random.nextInt( 5 ) == 0 )
+			product.setRole( Product.Role.REMOTE );
+		return product;
+	}
+
+	private static Product createProduct( String imei, String rmCode ) {
+		Product product = new Product();
+		product.setIMEI( imei );
+		product.setRMCode( rmCode );
+		product.setStatus( Product.Status.FREE, "" );
+		return product;
+	}
+}
@@ -0,0 +1,109 @@
+package com.nokia.ci.tas;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.nokia.ci.tas.commons.Product;
+import com.nokia.ci.tas.service.ProductSetMatcher;
+
+/**
+ * Compares how many product sets the first-fit search and the product set matcher find on random mixed workloads.
+ *
+ * Usage: ProductSetMatcherBenchmark [number of rounds]
+ */
+public class ProductSetMatcherBenchmark {
+
+	private static final String[] RM_CODES = { "rm-100", "rm-200", "rm-300" };
+
+	/**
+	 * @param args
+	 */
+	public static void main( String[] args ) throws Exception {
+		int numberOfRounds = args.length > 0 ? Integer.parseInt( args[0] ) : 2000;
+
+		Random random = new Random( 1L );
+		long greedySets = 0L;
+		long matchedSets = 0L;
+		int improvedRounds = 0;
+		long startedAt = System.nanoTime();
+
+		for ( int round = 0; round < numberOfRounds; round++ ) {
+			List<Product> products = new ArrayList<Product>();
+			int numberOfProducts = 2 + random.nextInt( 10 );
+
+			for ( int i = 0; i < numberOfProducts; i++ ) {
+				products.add( createProduct( "" + i, RM_CODES[random.nextInt( RM_CODES.length )] ) );
+			}
+
+			// Mix generic patterns accepting any product with specific ones accepting a single product type
+			List<Set<String>> matchingProducts = new ArrayList<Set<String>>();
+			int numberOfPatterns = 1 + random.nextInt( 3 );
+
+			for ( int j = 0; j < numberOfPatterns; j++ ) {
+				Set<String> productsMatchingPattern = new HashSet<String>();
+				String rmCode = random.nextBoolean() ? null : RM_CODES[random.nextInt( RM_CODES.length )];
+
+				for ( Product product : products ) {
+					if ( rmCode == null || rmCode.equals( product.getRMCode() ) )
+						productsMatchingPattern.add( product.getIMEI() );
+				}
+				matchingProducts.add( productsMatchingPattern );
+			}
+
+			long maximalNumberOfSets = 1 + random.nextInt( 4 );
+			int greedy = findProductSetsGreedily( matchingProducts, products, maximalNumberOfSets );
+			List<List<Product>> productSets = new ProductSetMatcher( matchingProducts, products ).findProductSets( maximalNumberOfSets );
+
+			greedySets += greedy;
+			matchedSets += productSets.size();
+			if ( productSets.size() > greedy )
+				improvedRounds++;
+		}
+
+		long took = ( System.nanoTime() - startedAt ) / 1000L;
+
+		System.out.println( "Rounds: " + numberOfRounds + ", first-fit search found " + greedySets + " sets, matching found " + matchedSets
+			+ " sets, more sets in " + improvedRounds + " rounds, took " + took + " us" );
+	}
+
+	/**
+	 * Takes the first free product for each of the patterns, as the allocator used to do.
+	 */
+	private static int findProductSetsGreedily( List<Set<String>> matchingProducts, List<Product> products, long maximalNumberOfSets ) {
+		List<Product> freeProducts = new ArrayList<Product>( products );
+		int numberOfSets = 0;
+
+		while ( numberOfSets < maximalNumberOfSets && !matchingProducts.isEmpty() ) {
+			List<Product> productSet = new ArrayList<Product>();
+
+			for ( Set<String> productsMatchingPattern : matchingProducts ) {
+				for ( Product product : freeProducts ) {
+					if ( productsMatchingPattern.contains( product.getIMEI() ) && !productSet.contains( product ) ) {
+						productSet.add( product );
+						break;
+					}
+				}
+			}
+
+			if ( productSet.size() < matchingProducts.size() )
+				break;
+
+			freeProducts.removeAll( productSet );
+			numberOfSets++;
+		}
+
+		return numberOfSets;
+	}
+
+	private static Product createProduct( String imei, String rmCode ) {
+		Product product = new Product();
+		product.setIMEI( imei );
+		product.setRMCode( rmCode );
+		product.setStatus( Product.Status.FREE, "" );
+		return product;
+	}
+
+}
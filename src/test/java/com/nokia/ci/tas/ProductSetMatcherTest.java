@@ -0,0 +1,170 @@
+package com.nokia.ci.tas;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import com.nokia.ci.tas.commons.Product;
+import com.nokia.ci.tas.service.ProductSetMatcher;
+
+/**
+ * Checks that the product set matcher finds sets which the first-fit search misses,
+ * and that found sets are valid and as many as possible.
+ */
+public class ProductSetMatcherTest extends TestCase {
+
+	private static final String[] RM_CODES = { "rm-100", "rm-200", "rm-300" };
+
+	public void testSpecialCases() {
+		Product generic = createProduct( "001", "rm-100" );
+		Product specific = createProduct( "002", "rm-200" );
+		List<Product> products = Arrays.asList( generic, specific );
+
+		// The first pattern accepts any product, the second one only rm-200
+		List<Set<String>> matchingProducts = new ArrayList<Set<String>>();
+		matchingProducts.add( new HashSet<String>( Arrays.asList( "002", "001" ) ) );
+		matchingProducts.add( new HashSet<String>( Arrays.asList( "002" ) ) );
+
+		List<Product> ordered = Arrays.asList( specific, generic );
+		assertEquals( "first-fit search misses the set", 0, findProductSetsGreedily( matchingProducts, ordered, 1L ) );
+
+		List<List<Product>> productSets = new ProductSetMatcher( matchingProducts, ordered ).findProductSets( 1L );
+		assertEquals( "matching finds the set", 1, productSets.size() );
+		assertTrue( "products are ordered as patterns", productSets.get( 0 ).get( 0 ) == generic && productSets.get( 0 ).get( 1 ) == specific );
+
+		assertEquals( "products are never shared between sets", 1, new ProductSetMatcher( matchingProducts, products ).findProductSets( 5L ).size() );
+		assertTrue( "no sets are found when none are wanted", new ProductSetMatcher( matchingProducts, products ).findProductSets( 0L ).isEmpty() );
+		assertTrue( "no sets are found without patterns", new ProductSetMatcher( new ArrayList<Set<String>>(), products ).findProductSets( 1L ).isEmpty() );
+
+		matchingProducts.add( new HashSet<String>( Arrays.asList( "002" ) ) );
+		assertTrue( "incomplete set is not found", new ProductSetMatcher( matchingProducts, products ).findProductSets( 1L ).isEmpty() );
+	}
+
+	public void testRandomWorkloads() {
+		Random random = new Random( 1L );
+
+		for ( int round = 0; round < 500; round++ ) {
+			List<Product> products = new ArrayList<Product>();
+			int numberOfProducts = 2 + random.nextInt( 10 );
+
+			for ( int i = 0; i < numberOfProducts; i++ ) {
+				products.add( createProduct( "" + i, RM_CODES[random.nextInt( RM_CODES.length )] ) );
+			}
+
+			// Mix generic patterns accepting any product with specific ones accepting a single product type
+			List<Set<String>> matchingProducts = new ArrayList<Set<String>>();
+			int numberOfPatterns = 1 + random.nextInt( 3 );
+
+			for ( int j = 0; j < numberOfPatterns; j++ ) {
+				Set<String> productsMatchingPattern = new HashSet<String>();
+				String rmCode = random.nextBoolean() ? null : RM_CODES[random.nextInt( RM_CODES.length )];
+
+				for ( Product product : products ) {
+					if ( rmCode == null || rmCode.equals( product.getRMCode() ) )
+						productsMatchingPattern.add( product.getIMEI() );
+				}
+				matchingProducts.add( productsMatchingPattern );
+			}
+
+			long maximalNumberOfSets = 1 + random.nextInt( 4 );
+			int greedy = findProductSetsGreedily( matchingProducts, products, maximalNumberOfSets );
+			List<List<Product>> productSets = new ProductSetMatcher( matchingProducts, products ).findProductSets( maximalNumberOfSets );
+
+			checkProductSets( productSets, matchingProducts, maximalNumberOfSets );
+			assertTrue( "matching finds at least as many sets as first-fit search", productSets.size() >= greedy );
+			assertEquals( "matching finds the maximal number of sets", findMaximalNumberOfSets( matchingProducts, products, maximalNumberOfSets ),
+				productSets.size() );
+		}
+	}
+
+	private static void checkProductSets( List<List<Product>> productSets, List<Set<String>> matchingProducts, long maximalNumberOfSets ) {
+		Set<Product> taken = new HashSet<Product>();
+
+		assertTrue( "not more sets than wanted are found", productSets.size() <= maximalNumberOfSets );
+
+		for ( List<Product> productSet : productSets ) {
+			assertEquals( "each pattern gets a product", matchingProducts.size(), productSet.size() );
+
+			for ( int j = 0; j < productSet.size(); j++ ) {
+				assertTrue( "product matches its pattern", matchingProducts.get( j ).contains( productSet.get( j ).getIMEI() ) );
+				assertTrue( "product is taken only once", taken.add( productSet.get( j ) ) );
+			}
+		}
+	}
+
+	/**
+	 * Takes the first free product for each of the patterns, as the allocator used to do.
+	 */
+	private static int findProductSetsGreedily( List<Set<String>> matchingProducts, List<Product> products, long maximalNumberOfSets ) {
+		List<Product> freeProducts = new ArrayList<Product>( products );
+		int numberOfSets = 0;
+
+		while ( numberOfSets < maximalNumberOfSets && !matchingProducts.isEmpty() ) {
+			List<Product> productSet = new ArrayList<Product>();
+
+			for ( Set<String> productsMatchingPattern : matchingProducts ) {
+				for ( Product product : freeProducts ) {
+					if ( productsMatchingPattern.contains( product.getIMEI() ) && !productSet.contains( product ) ) {
+						productSet.add( product );
+						break;
+					}
+				}
+			}
+
+			if ( productSet.size() < matchingProducts.size() )
+				break;
+
+			freeProducts.removeAll( productSet );
+			numberOfSets++;
+		}
+
+		return numberOfSets;
+	}
+
+	/**
+	 * Finds the maximal number of sets by trying all the assignments of products to pattern slots.
+	 */
+	private static int findMaximalNumberOfSets( List<Set<String>> matchingProducts, List<Product> products, long maximalNumberOfSets ) {
+		int numberOfSets = 0;
+
+		while ( numberOfSets < maximalNumberOfSets && ( numberOfSets + 1 ) * matchingProducts.size() <= products.size()
+			&& canAssign( matchingProducts, products, ( numberOfSets + 1 ) * matchingProducts.size(), 0, new boolean[products.size()] ) )
+			numberOfSets++;
+
+		return numberOfSets;
+	}
+
+	private static boolean canAssign( List<Set<String>> matchingProducts, List<Product> products, int numberOfSlots, int slot, boolean[] isTaken ) {
+		if ( slot == numberOfSlots )
+			return true;
+
+		Set<String> productsMatchingPattern = matchingProducts.get( slot % matchingProducts.size() );
+
+		for ( int k = 0; k < products.size(); k++ ) {
+			if ( !isTaken[k] && productsMatchingPattern.contains( products.get( k ).getIMEI() ) ) {
+				isTaken[k] = true;
+				boolean canAssign = canAssign( matchingProducts, products, numberOfSlots, slot + 1, isTaken );
+				isTaken[k] = false;
+
+				if ( canAssign )
+					return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static Product createProduct( String imei, String rmCode ) {
+		Product product = new Product();
+		product.setIMEI( imei );
+		product.setRMCode( rmCode );
+		product.setStatus( Product.Status.FREE, "" );
+		return product;
+	}
+
+}
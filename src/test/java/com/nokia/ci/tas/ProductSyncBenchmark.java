@@ -0,0 +1,56 @@
+package com.nokia.ci.tas;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.nokia.ci.tas.commons.BinaryMessageCodec;
+import com.nokia.ci.tas.commons.Product;
+import com.nokia.ci.tas.commons.ProductSync;
+import com.nokia.ci.tas.commons.message.ProductOperation;
+
+/**
+ * Compares encoded sizes of a full product sync and a heartbeat carrying no changed products.
+ *
+ * Usage: ProductSyncBenchmark [number of products]
+ */
+public class ProductSyncBenchmark {
+
+	/**
+	 * @param args
+	 */
+	public static void main( String[] args ) throws Exception {
+		int numberOfProducts = args.length > 0 ? Integer.parseInt( args[0] ) : 40;
+
+		List<Product> products = new ArrayList<Product>();
+		for ( int i = 0; i < numberOfProducts; i++ ) {
+			products.add( createProduct( "0044001122334" + ( 10 + i ) ) );
+		}
+
+		ProductSync communicatorSync = new ProductSync( ProductSync.Part.DESCRIPTION );
+
+		ProductOperation fullSync = communicatorSync.createSync( products );
+		ProductOperation heartbeat = communicatorSync.createSync( products );
+
+		int fullSize = BinaryMessageCodec.encode( prepare( fullSync ) ).length;
+		int heartbeatSize = BinaryMessageCodec.encode( prepare( heartbeat ) ).length;
+		System.out.println( "Products: " + numberOfProducts + ", full sync: " + fullSize + " bytes, heartbeat: " + heartbeatSize + " bytes" );
+	}
+
+	private static ProductOperation prepare( ProductOperation productOperation ) {
+		productOperation.setSender( "node.example.com", 15000 );
+		productOperation.setReceiver( "tas.example.com", 33333 );
+		return productOperation;
+	}
+
+	private static Product createProduct( String imei ) {
+		Product product = new Product( "RM-123", imei );
+		product.setHardwareType( "Phone" );
+		product.setSwVer( "1.0" );
+		product.setHostname( "node.example.com" );
+		product.setIPAddress( "10.0.0.1" );
+		product.setPort( "15000" );
+		product.setStatus( Product.Status.FREE, "" );
+		return product;
+	}
+
+}
@@ -0,0 +1,77 @@
+package com.nokia.ci.tas;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.nokia.ci.tas.commons.Product;
+import com.nokia.ci.tas.commons.ProductSync;
+import com.nokia.ci.tas.commons.message.ProductOperation;
+
+/**
+ * Checks that product syncs carry only changed products and that digests tell whenever both sides have the same products.
+ */
+public class ProductSyncTest extends TestCase {
+
+	public void testSync() {
+		int numberOfProducts = 40;
+
+		List<Product> products = new ArrayList<Product>();
+		List<Product> copies = new ArrayList<Product>();
+		for ( int i = 0; i < numberOfProducts; i++ ) {
+			products.add( createProduct( "0044001122334" + ( 10 + i ) ) );
+			copies.add( createProduct( "0044001122334" + ( 10 + i ) ) );
+		}
+
+		ProductSync communicatorSync = new ProductSync( ProductSync.Part.DESCRIPTION );
+		ProductSync serviceSync = new ProductSync( ProductSync.Part.STATUS );
+
+		ProductOperation fullSync = communicatorSync.createSync( products );
+		assertTrue( "the first sync is a full one", fullSync.isFullSync() );
+		assertEquals( "full sync carries all the products", numberOfProducts, fullSync.getProducts().size() );
+		assertTrue( "full sync is accepted", serviceSync.accept( fullSync ) );
+		assertTrue( "digest matches the same products", ProductSync.matches( fullSync, copies, ProductSync.Part.DESCRIPTION ) );
+
+		ProductOperation heartbeat = communicatorSync.createSync( products );
+		assertFalse( "the next sync is a delta one", heartbeat.isFullSync() );
+		assertTrue( "unchanged products are not send", heartbeat.getProducts().isEmpty() );
+		assertTrue( "heartbeat is accepted", serviceSync.accept( heartbeat ) );
+		assertFalse( "stale sync is not accepted", serviceSync.accept( fullSync ) );
+
+		// Status changes are not part of product descriptions
+		products.get( 0 ).setStatus( Product.Status.BUSY, "Reserved" );
+		assertTrue( "status change is not send by the communicator", communicatorSync.createSync( products ).getProducts().isEmpty() );
+
+		products.get( 1 ).setSwVer( "2.0" );
+		ProductOperation delta = communicatorSync.createSync( products );
+		assertTrue( "only the changed product is send", delta.getProducts().size() == 1 && delta.getProducts().get( 0 ) == products.get( 1 ) );
+		assertFalse( "digest doesn't match before the change is applied", ProductSync.matches( delta, copies, ProductSync.Part.DESCRIPTION ) );
+		copies.get( 1 ).setSwVer( "2.0" );
+		assertTrue( "digest matches after the change is applied", ProductSync.matches( delta, copies, ProductSync.Part.DESCRIPTION ) );
+
+		copies.remove( copies.size() - 1 );
+		assertFalse( "digest doesn't match with a missing product", ProductSync.matches( delta, copies, ProductSync.Part.DESCRIPTION ) );
+
+		ProductOperation statusSync = serviceSync.createSync( products );
+		assertTrue( "service starts with a full sync", statusSync.isFullSync() && statusSync.getProducts().size() == numberOfProducts );
+		products.get( 2 ).setReservation( 1000L, 2000L );
+		ProductOperation statusDelta = serviceSync.createSync( products );
+		assertTrue( "only the changed status is send", statusDelta.getProducts().size() == 1 && statusDelta.getProducts().get( 0 ) == products.get( 2 ) );
+
+		communicatorSync.requestFullSync();
+		assertEquals( "requested full sync carries all the products", numberOfProducts, communicatorSync.createSync( products ).getProducts().size() );
+	}
+
+	private static Product createProduct( String imei ) {
+		Product product = new Product( "RM-123", imei );
+		product.setHardwareType( "Phone" );
+		product.setSwVer( "1.0" );
+		product.setHostname( "node.example.com" );
+		product.setIPAddress( "10.0.0.1" );
+		product.setPort( "15000" );
+		product.setStatus( Product.Status.FREE, "" );
+		return product;
+	}
+
+}
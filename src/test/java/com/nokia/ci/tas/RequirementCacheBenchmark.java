@@ -0,0 +1,84 @@
+package com.nokia.ci.tas;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import com.nokia.ci.tas.commons.Util;
+import com.nokia.ci.tas.service.ProductIndex;
+import com.nokia.ci.tas.service.RequirementCache;
+
+/**
+ * Compares the time of compiling environments of waiting test restarts on each allocation with taking them from the requirement cache.
+ *
+ * Usage: RequirementCacheBenchmark [number of allocations]
+ */
+public class RequirementCacheBenchmark {
+
+	/**
+	 * @param args
+	 */
+	public static void main( String[] args ) throws Exception {
+		int numberOfAllocations = args.length > 0 ? Integer.parseInt( args[0] ) : 200;
+
+		// Environments of tests waiting for restarts, each tried on every allocation
+		List<String> environments = new ArrayList<String>();
+
+		for ( int t = 0; t < 500; t++ ) {
+			environments.add( "(rm-code:rm-" + ( t % 50 ) + ";hostname:host" + ( t % 7 ) + ";)(rm-code:rm-" + ( t % 13 ) + ";role:remote;)" );
+		}
+
+		RequirementCache cache = new RequirementCache( RequirementCache.DEFAULT_CAPACITY );
+		long compiled = 0L;
+		long cached = 0L;
+
+		// Warm up
+		compile( environments );
+		lookUp( cache, environments );
+
+		long startedAt = System.nanoTime();
+		for ( int allocation = 0; allocation < numberOfAllocations; allocation++ ) {
+			compiled += compile( environments );
+		}
+		long compilingTime = System.nanoTime() - startedAt;
+
+		startedAt = System.nanoTime();
+		for ( int allocation = 0; allocation < numberOfAllocations; allocation++ ) {
+			cached += lookUp( cache, environments );
+		}
+		long cachingTime = System.nanoTime() - startedAt;
+
+		System.out.println( "Allocations: " + numberOfAllocations + ", restarts: " + environments.size() + ", compiling took "
+			+ ( compilingTime / 1000000L ) + " ms (" + compiled + " requirements) and cache took " + ( cachingTime / 1000000L ) + " ms ("
+			+ cached + " requirements), hit rate "
+			+ String.format( "%.4f", cache.getHitRate() ) );
+	}
+
+	/**
+	 * Compiles environments as restarts used to do on each allocation.
+	 */
+	private static long compile( List<String> environments ) {
+		long numberOfRequirements = 0L;
+
+		for ( String environment : environments ) {
+			for ( String regularExpression : Util.createRegularExpressions( environment ) ) {
+				Pattern pattern = Pattern.compile( regularExpression );
+				if ( ProductIndex.Requirement.compile( pattern ) != null )
+					numberOfRequirements++;
+			}
+		}
+
+		return numberOfRequirements;
+	}
+
+	private static long lookUp( RequirementCache cache, List<String> environments ) {
+		long numberOfRequirements = 0L;
+
+		for ( String environment : environments ) {
+			numberOfRequirements += cache.get( environment ).getRequirements().size();
+		}
+
+		return numberOfRequirements;
+	}
+
+}
@@ -0,0 +1,72 @@
+package com.nokia.ci.tas;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+import com.nokia.ci.tas.commons.Util;
+import com.nokia.ci.tas.service.ProductIndex;
+import com.nokia.ci.tas.service.RequirementCache;
+
+/**
+ * Checks that cached requirements are the same as freshly compiled ones, and that the cache is bounded and counts its hits.
+ */
+public class RequirementCacheTest extends TestCase {
+
+	public void testSpecialCases() {
+		RequirementCache cache = new RequirementCache( 2 );
+		String first = "(rm-code:rm-1;)(rm-code:rm-2;role:remote;)";
+		String second = "rm-code:rm-3;";
+		String third = "rm-code:rm-4;";
+
+		RequirementCache.CompiledEnvironment compiled = cache.get( first );
+		List<String> regularExpressions = Util.createRegularExpressions( first );
+
+		assertEquals( "each product pattern is compiled", regularExpressions.size(), compiled.getPatterns().size() );
+		assertEquals( "each product pattern has a requirement", regularExpressions.size(), compiled.getRequirements().size() );
+
+		for ( int p = 0; p < regularExpressions.size(); p++ ) {
+			assertEquals( "patterns keep their order", regularExpressions.get( p ), compiled.getPatterns().get( p ).pattern() );
+		}
+
+		assertSame( "the same environment is compiled only once", compiled, cache.get( first ) );
+		assertTrue( "hits and misses are counted", cache.getNumberOfHits() == 1L && cache.getNumberOfMisses() == 1L && cache.getHitRate() == 0.5 );
+
+		assertTrue( "empty environments have no patterns", cache.get( null ).getPatterns().isEmpty() && cache.get( "" ).getRequirements().isEmpty() );
+		assertTrue( "empty environments are cached too", cache.size() == 2 && cache.getNumberOfEvictions() == 0L );
+
+		cache.get( second );
+		cache.get( third );
+		cache.get( second );
+		assertTrue( "cache is bounded", cache.getNumberOfHits() == 3L && cache.size() == 2 && cache.getNumberOfEvictions() == 2L );
+
+		cache.get( first );
+		assertTrue( "least recently used environments are dropped first",
+			cache.getNumberOfMisses() == 5L && cache.get( second ) != null && cache.getNumberOfHits() == 4L );
+
+		try {
+			compiled.getPatterns().clear();
+			fail( "shared patterns can't be changed" );
+		} catch ( UnsupportedOperationException e ) {
+			// Expected
+		}
+	}
+
+	public void testSameRequirementsAsCompiled() {
+		RequirementCache cache = new RequirementCache( RequirementCache.DEFAULT_CAPACITY );
+
+		for ( int t = 0; t < 100; t++ ) {
+			String environment = "(rm-code:rm-" + ( t % 50 ) + ";hostname:host" + ( t % 7 ) + ";)(rm-code:rm-" + ( t % 13 ) + ";role:remote;)";
+			List<String> regularExpressions = Util.createRegularExpressions( environment );
+			List<ProductIndex.Requirement> requirements = cache.get( environment ).getRequirements();
+
+			assertEquals( "each product pattern has a requirement", regularExpressions.size(), requirements.size() );
+			for ( int p = 0; p < regularExpressions.size(); p++ ) {
+				ProductIndex.Requirement expected = ProductIndex.Requirement.compile( Pattern.compile( regularExpressions.get( p ) ) );
+				assertEquals( "cached requirement has the same RM code", expected.getValue( "rm-code" ), requirements.get( p ).getValue( "rm-code" ) );
+				assertEquals( "cached requirement has the same hostname", expected.getValue( "hostname" ), requirements.get( p ).getValue( "hostname" ) );
+			}
+		}
+	}
+}
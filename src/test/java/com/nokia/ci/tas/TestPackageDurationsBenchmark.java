@@ -0,0 +1,86 @@
+package com.nokia.ci.tas;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.nokia.ci.tas.commons.TestPackage;
+import com.nokia.ci.tas.service.TestPackageDurations;
+
+/**
+ * Compares the longest splitted test with splitting test packages by their learned durations and with splitting them into equal chunks.
+ *
+ * Usage: TestPackageDurationsBenchmark [number of tests]
+ */
+public class TestPackageDurationsBenchmark {
+
+	/**
+	 * @param args
+	 */
+	public static void main( String[] args ) throws Exception {
+		int numberOfTests = args.length > 0 ? Integer.parseInt( args[0] ) : 500;
+
+		Random random = new Random( 1L );
+		TestPackageDurations durations = new TestPackageDurations( null );
+		long chunkedMakespan = 0L;
+		long splittedMakespan = 0L;
+
+		for ( int test = 0; test < numberOfTests; test++ ) {
+			String testId = "test" + test;
+			int numberOfPackages = 1 + random.nextInt( 30 );
+			int numberOfSets = 1 + random.nextInt( 8 );
+			List<TestPackage> testPackages = new ArrayList<TestPackage>();
+			long[] realDurations = new long[numberOfPackages];
+
+			for ( int t = 0; t < numberOfPackages; t++ ) {
+				testPackages.add( new TestPackage( "package" + t ) );
+				// Mostly short packages with a few very long ones
+				realDurations[t] = random.nextInt( 10 ) == 0 ? 60000L + random.nextInt( 60000 ) : 1000L + random.nextInt( 10000 );
+			}
+
+			// Execute each package once, so that its duration gets known
+			for ( int t = 0; t < numberOfPackages; t++ ) {
+				durations.update( testId, Arrays.asList( testPackages.get( t ) ), realDurations[t] );
+			}
+
+			List<List<TestPackage>> splitted = durations.split( testId, testPackages, numberOfSets );
+
+			chunkedMakespan += getMakespan( splitIntoChunks( testPackages, numberOfSets ), testPackages, realDurations );
+			splittedMakespan += getMakespan( splitted, testPackages, realDurations );
+		}
+
+		System.out.println( "Tests: " + numberOfTests + ", total time of the longest splitted tests is " + chunkedMakespan + " ms with equal chunks and "
+			+ splittedMakespan + " ms when splitted by durations" );
+	}
+
+	/**
+	 * Splits packages into contiguous chunks of equal size, as the allocator used to do.
+	 */
+	private static List<List<TestPackage>> splitIntoChunks( List<TestPackage> testPackages, int numberOfSets ) {
+		int chunkSize = ( int ) Math.ceil( ( double ) testPackages.size() / numberOfSets );
+		List<List<TestPackage>> splitted = new ArrayList<List<TestPackage>>();
+
+		for ( int t = 0; t < testPackages.size(); t += chunkSize ) {
+			splitted.add( testPackages.subList( t, Math.min( t + chunkSize, testPackages.size() ) ) );
+		}
+
+		return splitted;
+	}
+
+	private static long getMakespan( List<List<TestPackage>> splitted, List<TestPackage> testPackages, long[] realDurations ) {
+		long makespan = 0L;
+
+		for ( List<TestPackage> set : splitted ) {
+			long duration = 0L;
+
+			for ( TestPackage testPackage : set ) {
+				duration += realDurations[testPackages.indexOf( testPackage )];
+			}
+			makespan = Math.max( makespan, duration );
+		}
+
+		return makespan;
+	}
+
+}
@@ -0,0 +1,139 @@
+package com.nokia.ci.tas;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.nokia.ci.tas.commons.TestPackage;
+import com.nokia.ci.tas.service.TestPackageDurations;
+
+/**
+ * Checks that test packages are splitted into valid sets, and that durations are learned and kept between restarts.
+ */
+public class TestPackageDurationsTest extends TestCase {
+
+	public void testSplittedSets() {
+		int numberOfTests = 100;
+		Random random = new Random( 1L );
+		TestPackageDurations durations = new TestPackageDurations( null );
+		long chunkedMakespan = 0L;
+		long splittedMakespan = 0L;
+
+		for ( int test = 0; test < numberOfTests; test++ ) {
+			String testId = "test" + test;
+			int numberOfPackages = 1 + random.nextInt( 30 );
+			int numberOfSets = 1 + random.nextInt( 8 );
+			List<TestPackage> testPackages = new ArrayList<TestPackage>();
+			long[] realDurations = new long[numberOfPackages];
+
+			for ( int t = 0; t < numberOfPackages; t++ ) {
+				testPackages.add( new TestPackage( "package" + t ) );
+				// Mostly short packages with a few very long ones
+				realDurations[t] = random.nextInt( 10 ) == 0 ? 60000L + random.nextInt( 60000 ) : 1000L + random.nextInt( 10000 );
+			}
+
+			List<List<TestPackage>> splitted = durations.split( testId, testPackages, numberOfSets );
+			checkSplitted( splitted, testPackages, numberOfSets );
+
+			// Execute each package once, so that its duration gets known
+			for ( int t = 0; t < numberOfPackages; t++ ) {
+				durations.update( testId, Arrays.asList( testPackages.get( t ) ), realDurations[t] );
+			}
+
+			splitted = durations.split( testId, testPackages, numberOfSets );
+			checkSplitted( splitted, testPackages, numberOfSets );
+
+			chunkedMakespan += getMakespan( splitIntoChunks( testPackages, numberOfSets ), testPackages, realDurations );
+			splittedMakespan += getMakespan( splitted, testPackages, realDurations );
+		}
+
+		assertTrue( "splitting by durations is never worse in total", splittedMakespan <= chunkedMakespan );
+	}
+
+	public void testDurations() throws Exception {
+		File file = File.createTempFile( "test-package-durations", ".dat" );
+		file.deleteOnExit();
+
+		TestPackageDurations durations = new TestPackageDurations( file );
+		TestPackage first = new TestPackage( "first" );
+		TestPackage second = new TestPackage( "second" );
+		TestPackage unknown = new TestPackage( "unknown" );
+
+		assertEquals( "package without history has no duration", -1L, durations.getDuration( "test", first ) );
+
+		durations.update( "test", Arrays.asList( first ), 100L );
+		durations.update( "test", Arrays.asList( second ), 300L );
+		assertEquals( "duration of a single package is its execution time", 100L, durations.getDuration( "test", first ) );
+
+		// Execution time is shared in proportion to known durations and smoothed with them
+		durations.update( "test", Arrays.asList( first, second ), 800L );
+		assertEquals( "execution time is shared by durations", 150L, durations.getDuration( "test", first ) );
+		assertEquals( "execution time is shared by durations", 450L, durations.getDuration( "test", second ) );
+
+		// Unknown package is estimated as an average package of the same test
+		List<List<TestPackage>> splitted = durations.split( "test", Arrays.asList( first, second, unknown ), 2 );
+		assertEquals( "longest package gets its own set", 2, splitted.size() );
+		assertEquals( "longest package gets its own set", Arrays.asList( second ), splitted.get( 0 ) );
+		assertEquals( "longest package gets its own set", Arrays.asList( first, unknown ), splitted.get( 1 ) );
+
+		assertEquals( "not more sets than packages are created", 1, durations.split( "test", Arrays.asList( first ), 5 ).size() );
+
+		durations.update( "test\tid", Arrays.asList( first ), 100L );
+
+		TestPackageDurations restored = new TestPackageDurations( file );
+		assertEquals( "durations are kept between restarts", 150L, restored.getDuration( "test", first ) );
+		assertEquals( "durations are kept between restarts", 450L, restored.getDuration( "test", second ) );
+		assertEquals( "malformed ids are not kept", -1L, restored.getDuration( "test\tid", first ) );
+	}
+
+	private static void checkSplitted( List<List<TestPackage>> splitted, List<TestPackage> testPackages, int numberOfSets ) {
+		List<TestPackage> all = new ArrayList<TestPackage>();
+
+		assertTrue( "not more sets than available are created", splitted.size() <= numberOfSets );
+
+		for ( List<TestPackage> set : splitted ) {
+			assertFalse( "sets are never empty", set.isEmpty() );
+
+			for ( int t = 1; t < set.size(); t++ ) {
+				assertTrue( "packages keep their order", testPackages.indexOf( set.get( t - 1 ) ) < testPackages.indexOf( set.get( t ) ) );
+			}
+			all.addAll( set );
+		}
+
+		assertTrue( "each package is executed exactly once", all.size() == testPackages.size() && all.containsAll( testPackages ) );
+	}
+
+	/**
+	 * Splits packages into contiguous chunks of equal size, as the allocator used to do.
+	 */
+	private static List<List<TestPackage>> splitIntoChunks( List<TestPackage> testPackages, int numberOfSets ) {
+		int chunkSize = ( int ) Math.ceil( ( double ) testPackages.size() / numberOfSets );
+		List<List<TestPackage>> splitted = new ArrayList<List<TestPackage>>();
+
+		for ( int t = 0; t < testPackages.size(); t += chunkSize ) {
+			splitted.add( testPackages.subList( t, Math.min( t + chunkSize, testPackages.size() ) ) );
+		}
+
+		return splitted;
+	}
+
+	private static long getMakespan( List<List<TestPackage>> splitted, List<TestPackage> testPackages, long[] realDurations ) {
+		long makespan = 0L;
+
+		for ( List<TestPackage> set : splitted ) {
+			long duration = 0L;
+
+			for ( TestPackage testPackage : set ) {
+				duration += realDurations[testPackages.indexOf( testPackage )];
+			}
+			makespan = Math.max( makespan, duration );
+		}
+
+		return makespan;
+	}
+
+}
@@ -0,0 +1,106 @@
+package com.nokia.ci.tas;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.nokia.ci.tas.communicator.TestProcessWatcher;
+
+/**
+ * Checks that outputs and exit of a test execution process are collected without blocking,
+ * and that checks of a silent process are backed off.
+ */
+public class TestProcessWatcherTest extends TestCase {
+
+	public void testOutputsAndExitAreCollected() throws Exception {
+		TestProcessWatcher watcher = new TestProcessWatcher( start( "echo first; printf 'second\\r\\n'; echo; printf last; exit 3" ) );
+		List<String> lines = new ArrayList<String>();
+
+		assertTrue( "process has exited", waitForExit( watcher, lines ) );
+		assertEquals( 3, watcher.getExitCode() );
+		assertEquals( 3, lines.size() );
+		assertEquals( "first", lines.get( 0 ) );
+		assertEquals( "carriage return is dropped", "second", lines.get( 1 ) );
+		assertEquals( "line without end is completed on exit", "last", lines.get( 2 ) );
+
+		assertTrue( "exited process stays exited", watcher.check() );
+		assertTrue( watcher.takeOutputLines().isEmpty() );
+	}
+
+	public void testSilentProcessIsCheckedLessOften() throws Exception {
+		TestProcessWatcher watcher = new TestProcessWatcher( start( "sleep 30" ) );
+		assertEquals( TestProcessWatcher.MINIMAL_CHECKING_DELAY, watcher.getCheckingDelay() );
+
+		long checkingDelay = TestProcessWatcher.MINIMAL_CHECKING_DELAY;
+
+		for ( int i = 0; i < 10; i++ ) {
+			assertFalse( watcher.check() );
+			checkingDelay = Math.min( checkingDelay * 2L, TestProcessWatcher.MAXIMAL_CHECKING_DELAY );
+			assertEquals( checkingDelay, watcher.getCheckingDelay() );
+		}
+
+		assertEquals( "delay stops growing", TestProcessWatcher.MAXIMAL_CHECKING_DELAY, watcher.getCheckingDelay() );
+		assertFalse( watcher.hasExited() );
+		assertEquals( -1, watcher.getExitCode() );
+
+		// Stopped test kills the process
+		watcher.destroy();
+		assertTrue( waitForExit( watcher, new ArrayList<String>() ) );
+	}
+
+	public void testOutputsBringChecksBack() throws Exception {
+		Process process = start( "read line; echo \"got $line\"; sleep 30" );
+		TestProcessWatcher watcher = new TestProcessWatcher( process );
+
+		for ( int i = 0; i < 5; i++ ) {
+			assertFalse( watcher.check() );
+		}
+
+		assertTrue( watcher.getCheckingDelay() > TestProcessWatcher.MINIMAL_CHECKING_DELAY );
+
+		OutputStream input = process.getOutputStream();
+		input.write( "hello\n".getBytes( "UTF-8" ) );
+		input.flush();
+
+		List<String> lines = new ArrayList<String>();
+		long startedAt = System.currentTimeMillis();
+
+		while ( lines.isEmpty() && System.currentTimeMillis() - startedAt < 10000L ) {
+			Thread.sleep( 10L );
+			assertFalse( watcher.check() );
+			lines.addAll( watcher.takeOutputLines() );
+		}
+
+		assertEquals( 1, lines.size() );
+		assertEquals( "got hello", lines.get( 0 ) );
+		assertEquals( TestProcessWatcher.MINIMAL_CHECKING_DELAY, watcher.getCheckingDelay() );
+
+		watcher.destroy();
+		assertTrue( waitForExit( watcher, lines ) );
+	}
+
+	private static Process start( String command ) throws Exception {
+		ProcessBuilder processBuilder = new ProcessBuilder( "sh", "-c", command );
+		processBuilder.redirectErrorStream( true );
+		return processBuilder.start();
+	}
+
+	private static boolean waitForExit( TestProcessWatcher watcher, List<String> lines ) throws Exception {
+		long startedAt = System.currentTimeMillis();
+
+		while ( !watcher.check() ) {
+			lines.addAll( watcher.takeOutputLines() );
+
+			if ( System.currentTimeMillis() - startedAt > 10000L ) {
+				return false;
+			}
+
+			Thread.sleep( 10L );
+		}
+
+		lines.addAll( watcher.takeOutputLines() );
+		return true;
+	}
+}
@@ -0,0 +1,127 @@
+package com.nokia.ci.tas;
+
+import junit.framework.TestCase;
+
+import com.nokia.ci.tas.commons.Constant;
+import com.nokia.ci.tas.communicator.TestProgress;
+
+/**
+ * Checks transitions of a test on a testing machine: arrival of its artifacts, launching,
+ * sending of its results with retries and timeout, and stopping at any state.
+ */
+public class TestProgressTest extends TestCase {
+
+	private TestProgress progress;
+
+	protected void setUp() throws Exception {
+		progress = new TestProgress( "node.example.com:15000" );
+	}
+
+	public void testArtifactsArrival() throws Exception {
+		assertNull( "not initialized", progress.getState() );
+
+		progress.expectArtifact( "flash_image.bin" );
+		progress.expectArtifact( "test_script.sh" );
+		progress.receiveArtifacts();
+		assertEquals( TestProgress.State.RECEIVING_ARTIFACTS, progress.getState() );
+		assertFalse( progress.areArtifactsReceived() );
+
+		assertFalse( "unexpected file is ignored", progress.fileReceived( "other.bin", true, 1000L ) );
+		assertTrue( progress.fileReceived( "test_script.sh", true, 2000L ) );
+		assertFalse( "the same file is confirmed only once", progress.fileReceived( "test_script.sh", true, 3000L ) );
+		assertEquals( 1, progress.getFilesToBeReceived().size() );
+		assertEquals( "flash_image.bin", progress.getFilesToBeReceived().get( 0 ) );
+		assertFalse( progress.areArtifactsReceived() );
+
+		assertTrue( progress.fileReceived( "flash_image.bin", true, 4000L ) );
+		assertTrue( progress.areArtifactsReceived() );
+		assertFalse( progress.isFailed() );
+	}
+
+	public void testFailedArtifactFailsTheTest() throws Exception {
+		progress.expectArtifact( "flash_image.bin" );
+		progress.expectArtifact( "test_script.sh" );
+		progress.receiveArtifacts();
+
+		assertTrue( progress.fileReceived( "flash_image.bin", false, 1000L ) );
+		assertTrue( "other artifacts are not waited for", progress.areArtifactsReceived() );
+		assertTrue( progress.isFailed() );
+		assertEquals( "Failed to receive file 'flash_image.bin' on test node node.example.com:15000", progress.getReasonOfFailure() );
+	}
+
+	public void testLaunchIsDelayed() throws Exception {
+		progress.receiveArtifacts();
+		assertFalse( "only waiting tests are launched", progress.isTimeToLaunch( 0L ) );
+
+		progress.waitForLaunch( 15000L );
+		assertEquals( TestProgress.State.WAITING_FOR_LAUNCH, progress.getState() );
+		assertFalse( progress.isTimeToLaunch( 14999L ) );
+		assertTrue( progress.isTimeToLaunch( 15000L ) );
+
+		progress.startRunning();
+		assertEquals( TestProgress.State.RUNNING, progress.getState() );
+		assertFalse( progress.isTimeToLaunch( 20000L ) );
+	}
+
+	public void testResultsSendingTimesOut() throws Exception {
+		progress.startRunning();
+		progress.sendResults( "results.zip", 0L );
+		assertEquals( TestProgress.State.SENDING_RESULTS, progress.getState() );
+		assertFalse( progress.areResultsSend() );
+
+		assertFalse( progress.isResultsSendingTimedOut( Constant.FIFTEEN_MINUTES ) );
+		assertTrue( progress.isResultsSendingTimedOut( Constant.FIFTEEN_MINUTES + 1L ) );
+
+		// Nothing is timed out once results are send
+		assertTrue( progress.fileSend( "results.zip", true, Constant.FIFTEEN_MINUTES + 2L ) );
+		assertTrue( progress.areResultsSend() );
+		assertFalse( progress.hasFailedToSendResults() );
+		assertFalse( progress.isResultsSendingTimedOut( 10 * Constant.FIFTEEN_MINUTES ) );
+		assertFalse( progress.isFailed() );
+	}
+
+	public void testResultsSendingIsRetried() throws Exception {
+		for ( int i = 1; i <= Constant.NUMBER_OF_RETRIES; i++ ) {
+			progress.sendResults( "results.zip", i * 1000L );
+			assertFalse( "failure of the previous attempt is forgotten", progress.hasFailedToSendResults() );
+			assertEquals( i, progress.getNumberOfSendingAttempts() );
+
+			assertFalse( progress.fileSend( "other.zip", false, i * 1000L ) );
+			assertTrue( progress.fileSend( "results.zip", false, i * 1000L ) );
+			assertTrue( progress.areResultsSend() );
+			assertTrue( progress.hasFailedToSendResults() );
+		}
+
+		assertFalse( "no more attempts after " + Constant.NUMBER_OF_RETRIES, progress.canRetrySending() );
+	}
+
+	public void testStopWhileReceivingArtifacts() throws Exception {
+		progress.expectArtifact( "flash_image.bin" );
+		progress.receiveArtifacts();
+
+		progress.stop( "Remote client or network has failed" );
+		assertTrue( progress.areArtifactsReceived() );
+		assertTrue( progress.isFailed() );
+		assertEquals( "Remote client or network has failed", progress.getReasonOfFailure() );
+		assertEquals( "state is left to the executor", TestProgress.State.RECEIVING_ARTIFACTS, progress.getState() );
+
+		progress.finish();
+		assertTrue( progress.isFinished() );
+	}
+
+	public void testStopWithoutReasonIsNotFailure() throws Exception {
+		progress.sendResults( "results.zip", 0L );
+
+		progress.stop( null );
+		assertTrue( progress.areResultsSend() );
+		assertFalse( progress.isResultsSendingTimedOut( 10 * Constant.FIFTEEN_MINUTES ) );
+		assertFalse( progress.isFailed() );
+
+		progress.stop( "" );
+		assertFalse( progress.isFailed() );
+
+		progress.fail( null );
+		assertTrue( progress.isFailed() );
+		assertEquals( Constant.UNSPECIFIED_REASON_OF_FAILURE, progress.getReasonOfFailure() );
+	}
+}
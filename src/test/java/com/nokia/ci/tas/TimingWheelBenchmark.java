@@ -0,0 +1,64 @@
+package com.nokia.ci.tas;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.nokia.ci.tas.commons.ActorRuntime;
+import com.nokia.ci.tas.commons.TimingWheel;
+
+/**
+ * Measures how long registering and cancelling of many timeouts of the timing wheel takes,
+ * and how late the remaining timeouts expire.
+ *
+ * Usage: TimingWheelBenchmark [number of timeouts] [maximal delay in ms]
+ */
+public class TimingWheelBenchmark {
+
+	/**
+	 * @param args
+	 */
+	public static void main( String[] args ) throws Exception {
+		int numberOfTimeouts = args.length > 0 ? Integer.parseInt( args[0] ) : 100000;
+		long maximalDelay = args.length > 1 ? Long.parseLong( args[1] ) : 3000L;
+
+		ActorRuntime runtime = new ActorRuntime( "Test", 4 );
+		TimingWheel timingWheel = new TimingWheel( runtime, 10L );
+
+		final AtomicLong maximalLateness = new AtomicLong();
+		final CountDownLatch expired = new CountDownLatch( numberOfTimeouts / 2 );
+		List<TimingWheel.Timeout> timeouts = new ArrayList<TimingWheel.Timeout>( numberOfTimeouts );
+		Random random = new Random( 1L );
+
+		long startedAt = System.nanoTime();
+		for ( int i = 0; i < numberOfTimeouts; i++ ) {
+			final long deadline = System.currentTimeMillis() + 100L + ( long ) random.nextInt( ( int ) maximalDelay );
+			timeouts.add( timingWheel.scheduleAt( new Runnable() {
+				public void run() {
+					long lateness = System.currentTimeMillis() - deadline;
+					if ( lateness > maximalLateness.get() )
+						maximalLateness.set( lateness );
+					expired.countDown();
+				}
+			}, deadline ) );
+		}
+		long registeredIn = ( System.nanoTime() - startedAt ) / 1000L;
+
+		startedAt = System.nanoTime();
+		for ( int i = 1; i < numberOfTimeouts; i += 2 ) {
+			timeouts.get( i ).cancel();
+		}
+		long cancelledIn = ( System.nanoTime() - startedAt ) / 1000L;
+
+		expired.await();
+
+		System.out.println( "Timeouts: " + numberOfTimeouts + ", registered in " + registeredIn + " us, cancelled half of them in "
+			+ cancelledIn + " us, maximal lateness " + maximalLateness.get() + " ms" );
+
+		timingWheel.shutdown();
+		runtime.shutdown();
+	}
+}
@@ -0,0 +1,98 @@
+package com.nokia.ci.tas;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+import com.nokia.ci.tas.commons.ActorRuntime;
+import com.nokia.ci.tas.commons.TimingWheel;
+
+/**
+ * Checks that timeouts of the timing wheel expire close to their deadlines and never before them,
+ * and that cancelled timeouts never expire.
+ */
+public class TimingWheelTest extends TestCase {
+
+	private static final long TICK_DURATION = 10L;
+
+	private ActorRuntime runtime;
+	private TimingWheel timingWheel;
+
+	protected void setUp() throws Exception {
+		runtime = new ActorRuntime( "Test", 4 );
+		timingWheel = new TimingWheel( runtime, TICK_DURATION );
+	}
+
+	protected void tearDown() throws Exception {
+		timingWheel.shutdown();
+		runtime.shutdown();
+	}
+
+	public void testDeadlines() throws Exception {
+		// Delays crossing the first and the second wheels
+		checkDeadline( 0L );
+		checkDeadline( 250L );
+		checkDeadline( 1500L );
+		checkDeadline( -100L );
+	}
+
+	public void testCancelledTimeoutsNeverExpire() throws Exception {
+		int numberOfTimeouts = 2000;
+		final AtomicInteger numberOfExpired = new AtomicInteger();
+		final AtomicInteger numberOfEarly = new AtomicInteger();
+		final CountDownLatch expired = new CountDownLatch( numberOfTimeouts / 2 );
+		List<TimingWheel.Timeout> timeouts = new ArrayList<TimingWheel.Timeout>( numberOfTimeouts );
+		Random random = new Random( 1L );
+
+		for ( int i = 0; i < numberOfTimeouts; i++ ) {
+			final long deadline = System.currentTimeMillis() + 100L + ( long ) random.nextInt( 500 );
+			timeouts.add( timingWheel.scheduleAt( new Runnable() {
+				public void run() {
+					if ( System.currentTimeMillis() < deadline )
+						numberOfEarly.incrementAndGet();
+					numberOfExpired.incrementAndGet();
+					expired.countDown();
+				}
+			}, deadline ) );
+		}
+
+		for ( int i = 1; i < numberOfTimeouts; i += 2 ) {
+			assertTrue( "pending timeout is cancelled", timeouts.get( i ).cancel() );
+		}
+
+		assertFalse( "timeout is cancelled only once", timeouts.get( 1 ).cancel() );
+
+		assertTrue( "not cancelled timeouts expire", expired.await( 10L, TimeUnit.SECONDS ) );
+		Thread.sleep( 200L );
+
+		assertEquals( "cancelled timeouts never expire", numberOfTimeouts / 2, numberOfExpired.get() );
+		assertEquals( "timeouts never expire before their deadlines", 0, numberOfEarly.get() );
+		assertEquals( "expired and cancelled timeouts are not kept", 0, timingWheel.size() );
+		assertTrue( "expired timeout cannot be cancelled", timeouts.get( 0 ).isExpired() && !timeouts.get( 0 ).cancel() );
+	}
+
+	private void checkDeadline( long delay ) throws Exception {
+		final CountDownLatch expired = new CountDownLatch( 1 );
+		final AtomicLong expiredAt = new AtomicLong();
+		long scheduledAt = System.currentTimeMillis();
+		long deadline = scheduledAt + delay;
+
+		timingWheel.scheduleAt( new Runnable() {
+			public void run() {
+				expiredAt.set( System.currentTimeMillis() );
+				expired.countDown();
+			}
+		}, deadline );
+
+		assertTrue( "timeout expires", expired.await( 10L, TimeUnit.SECONDS ) );
+		assertTrue( "timeout doesn't expire before its deadline", expiredAt.get() >= deadline );
+		assertTrue( "timeout expires close to its deadline", expiredAt.get() - Math.max( deadline, scheduledAt ) <= 2L * TICK_DURATION + 50L );
+	}
+}